@@ -0,0 +1,36 @@
+package com.backend.school_erp.benchmark;
+
+import com.backend.school_erp.DTO.DebitCardReport.BalanceList2DTO;
+import com.backend.school_erp.DTO.DebitCardReport.BalanceListDTO;
+import com.backend.school_erp.service.DebitCardReport.BalanceListService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class-wise (report 1) and student-wise (report 2) balance lists of the current year.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BalanceListBenchmark {
+
+    @Benchmark
+    public List<BalanceListDTO> balanceList1(BenchmarkSchool school) {
+        return school.bean(BalanceListService.class).generateBalanceList1(BenchmarkSchool.SCHOOL_ID, school.academicYear, null);
+    }
+
+    @Benchmark
+    public List<BalanceListDTO> balanceList1OneHead(BenchmarkSchool school) {
+        return school.bean(BalanceListService.class).generateBalanceList1(BenchmarkSchool.SCHOOL_ID, school.academicYear,
+                SyntheticSchool.TUITION_HEADS[0]);
+    }
+
+    @Benchmark
+    public List<BalanceList2DTO> balanceList2(BenchmarkSchool school) {
+        return school.bean(BalanceListService.class).generateBalanceList2(BenchmarkSchool.SCHOOL_ID, school.academicYear, null);
+    }
+}
@@ -0,0 +1,117 @@
+package com.backend.school_erp.benchmark;
+
+import com.backend.school_erp.config.*;
+import com.backend.school_erp.service.Administration.FeeHeadRegistry;
+import com.backend.school_erp.service.AdmissionMaster.StudentDirectory;
+import com.backend.school_erp.service.Collection.TutionReportService;
+import com.backend.school_erp.service.DebitCardReport.BalanceListService;
+import com.backend.school_erp.service.DebitCardReport.DebitCardReportService;
+import com.backend.school_erp.service.DebitCardReport.ReportQueryExecutor;
+import com.backend.school_erp.service.DebitCardReport.ReportResultCache;
+import com.backend.school_erp.service.Export.ReportExportService;
+import com.backend.school_erp.service.Store.StockReportService;
+import com.backend.school_erp.service.Transaction.CollectionRollupService;
+import com.backend.school_erp.service.Transaction.DailyFeeCollectionService;
+import com.backend.school_erp.service.Transaction.DayBookBalanceService;
+import com.backend.school_erp.service.Transaction.FeeBalanceService;
+import com.backend.school_erp.service.Transaction.FeeDemandService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Map;
+
+/**
+ * One synthetic school per benchmark trial, served by the real services.
+ *
+ * The services run in a plain Spring context with only the tenant infrastructure and the
+ * services under test, and the shared tenant pool points at an in-memory H2 database in MySQL
+ * mode instead of RDS. The school is generated once per trial (i.e. once per fork and parameter
+ * combination) and the report caches the services build on first touch (fee_demand, fee_balance,
+ * day_book_balance, collection_rollup) are warmed before measuring, so every iteration measures
+ * the steady state.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkSchool {
+
+    public static final String SCHOOL_ID = "bench_school";
+
+    @Param({"2000"})
+    public int students;
+
+    @Param({"3"})
+    public int years;
+
+    @Param({"300000"})
+    public int collectionRows;
+
+    @Param({"20000"})
+    public int stockRows;
+
+    public String academicYear;
+
+    private AnnotationConfigApplicationContext context;
+    private JdbcTemplate jdbc;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new AnnotationConfigApplicationContext();
+        // The database name doubles as the schema, so DATABASE() matches INFORMATION_SCHEMA.TABLE_SCHEMA like on MySQL
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", Map.of(
+                "tenant.datasource.url", "jdbc:h2:mem:" + SCHOOL_ID + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;" +
+                        "DEFAULT_NULL_ORDERING=HIGH;NON_KEYWORDS=MONTH,YEAR,VALUE;DB_CLOSE_DELAY=-1;" +
+                        "INIT=CREATE SCHEMA IF NOT EXISTS " + SCHOOL_ID + "\\;SET SCHEMA " + SCHOOL_ID,
+                "tenant.datasource.username", "sa",
+                "tenant.datasource.password", "bench",
+                "tenant.datasource.driver-class-name", "org.h2.Driver",
+                // Every iteration measures the report itself, not a cached copy of it
+                "report.cache.max-rows", "0")));
+        context.register(
+                TenantConnectionGate.class, TenantDataSourceRouter.class, TenantTableCatalog.class,
+                TenantSchemaMigrator.class, ReportQueryExecutor.class, ReportResultCache.class, ReportExportService.class,
+                FeeBalanceService.class, FeeDemandService.class, DayBookBalanceService.class,
+                CollectionRollupService.class, FeeHeadRegistry.class, StudentDirectory.class,
+                BalanceListService.class, TutionReportService.class, StockReportService.class,
+                DebitCardReportService.class, DailyFeeCollectionService.class);
+        context.refresh();
+
+        jdbc = bean(TenantDataSourceRouter.class).getJdbcTemplate(SCHOOL_ID);
+        H2Compatibility.prepare(jdbc, bean(TenantSchemaMigrator.class));
+        new SyntheticSchool(jdbc, SCHOOL_ID)
+                .students(students)
+                .years(years)
+                .collectionRows(collectionRows)
+                .stockRows(stockRows)
+                .generate();
+        academicYear = SyntheticSchool.currentYear(years);
+
+        // Projections are built on first touch; build them now so no iteration pays for it
+        bean(TenantTableCatalog.class).invalidate(SCHOOL_ID);
+        for (String year : SyntheticSchool.academicYears(years)) {
+            bean(FeeDemandService.class).ensureYear(jdbc, year);
+            bean(FeeBalanceService.class).ensureYear(jdbc, year);
+            bean(CollectionRollupService.class).ensureYear(jdbc, year);
+        }
+        bean(DayBookBalanceService.class).ensure(jdbc, DayBookBalanceService.DAY_BOOK);
+        bean(DayBookBalanceService.class).ensure(jdbc, DayBookBalanceService.MISC_DAY_BOOK);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (jdbc != null) {
+            jdbc.execute("SHUTDOWN");
+        }
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    public <T> T bean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    public JdbcTemplate jdbc() {
+        return jdbc;
+    }
+}
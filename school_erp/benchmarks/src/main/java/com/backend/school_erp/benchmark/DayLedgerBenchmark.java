@@ -0,0 +1,26 @@
+package com.backend.school_erp.benchmark;
+
+import com.backend.school_erp.DTO.DebitCardReport.LedgerReportDTO;
+import com.backend.school_erp.service.DebitCardReport.DebitCardReportService;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Day ledger of a mid-year day; the opening balance sums every earlier day_book row of the year.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DayLedgerBenchmark {
+
+    @Benchmark
+    public List<LedgerReportDTO> dayLedger(BenchmarkSchool school) {
+        String date = school.academicYear.substring(0, 4) + "-12-15";
+        return school.bean(DebitCardReportService.class).getDayLedger(BenchmarkSchool.SCHOOL_ID, LocalDate.parse(date), school.academicYear, "DAILY");
+    }
+}
@@ -0,0 +1,65 @@
+package com.backend.school_erp.benchmark;
+
+import com.backend.school_erp.DTO.Transaction.DailyFeeCollectionDTO;
+import com.backend.school_erp.entity.Transaction.DailyFeeCollection;
+import com.backend.school_erp.service.Transaction.DailyFeeCollectionService;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Posting one daily fee bill with two fee heads. Every invocation is a new bill, so the
+ * collection tables keep growing during the run, as they do on a collection day.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProcessPaymentBenchmark {
+
+    @State(Scope.Thread)
+    public static class Bills {
+        private final Random random = new Random(7);
+        private int next;
+
+        DailyFeeCollectionDTO nextBill(BenchmarkSchool school) {
+            int student = random.nextInt(school.students);
+            String bill = String.format("B%07d/%s", ++next, Thread.currentThread().getName());
+            return DailyFeeCollectionDTO.builder()
+                    .billNumber(bill)
+                    .admissionNumber(SyntheticSchool.admissionNumber(student))
+                    .studentName(SyntheticSchool.studentName(student))
+                    .fatherName("Father " + (student + 1))
+                    .standard(SyntheticSchool.standardOf(student))
+                    .section(SyntheticSchool.sectionOf(student))
+                    .billDate(LocalDateTime.now())
+                    .paymentMode("Cash")
+                    .operatorName("operator")
+                    .transactionNarrative("Benchmark bill")
+                    .academicYear(school.academicYear)
+                    .feePayments(List.of(
+                            payment(SyntheticSchool.TUITION_HEADS[0], 500.0, 0.0),
+                            payment(SyntheticSchool.TUITION_HEADS[3], 100.0, 50.0)))
+                    .build();
+        }
+
+        private static DailyFeeCollectionDTO.FeePaymentDetailDTO payment(String head, double paid, double concession) {
+            return DailyFeeCollectionDTO.FeePaymentDetailDTO.builder()
+                    .feeHeading(head)
+                    .accountHead(SyntheticSchool.accountHead(head))
+                    .feeType("Tuition")
+                    .paidAmount(paid)
+                    .concessionAmount(concession)
+                    .build();
+        }
+    }
+
+    @Benchmark
+    public DailyFeeCollection processPayment(BenchmarkSchool school, Bills bills) {
+        return school.bean(DailyFeeCollectionService.class).processPayment(BenchmarkSchool.SCHOOL_ID, bills.nextBill(school));
+    }
+}
@@ -0,0 +1,39 @@
+package com.backend.school_erp.benchmark;
+
+import com.backend.school_erp.DTO.Store.StockReportDTO;
+import com.backend.school_erp.service.Store.StockReportService;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stock report in its three shapes: overall, date range and single date.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StockReportBenchmark {
+
+    @Benchmark
+    public List<StockReportDTO> overall(BenchmarkSchool school) {
+        return school.bean(StockReportService.class).generateStockReport(BenchmarkSchool.SCHOOL_ID, null, null, null);
+    }
+
+    @Benchmark
+    public List<StockReportDTO> dateRange(BenchmarkSchool school) {
+        int year = Integer.parseInt(school.academicYear.substring(0, 4));
+        return school.bean(StockReportService.class).generateStockReport(BenchmarkSchool.SCHOOL_ID,
+                LocalDate.of(year, 8, 1), LocalDate.of(year, 8, 31), null);
+    }
+
+    @Benchmark
+    public List<StockReportDTO> singleDate(BenchmarkSchool school) {
+        int year = Integer.parseInt(school.academicYear.substring(0, 4));
+        return school.bean(StockReportService.class).generateStockReport(BenchmarkSchool.SCHOOL_ID,
+                LocalDate.of(year, 8, 15), null, null);
+    }
+}
@@ -0,0 +1,533 @@
+package com.backend.school_erp.benchmark;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Fills one school database with reproducible fake data shaped like a real school.
+ *
+ * For every academic year it writes the {@code admissions_<year>} table and the three per-year
+ * fee tables ({@code tuition_fees_<year>}, {@code hostel_fees_<year>}, {@code transport_fees_<year>}),
+ * then spreads {@code collectionRows} fee collections over the years the way
+ * DailyFeeCollectionService writes them: one {@code daily_fee_collection} and one {@code day_book}
+ * row per collected head, plus the matching {@code dfcpaidamount} / {@code dfcconcession} rows.
+ * The store gets {@code stockRows} purchases and as many issues spread over {@code stockItems} items.
+ *
+ * Everything is drawn from a fixed seed, so the same parameters always produce the same school.
+ * The billing and store tables use the services' own DDL; the admission and fee tables only carry
+ * the columns the benchmarked code reads. fee_demand and fee_balance are left to the services,
+ * which project them from this data on first touch.
+ */
+@Slf4j
+public class SyntheticSchool {
+
+    public static final String[] STANDARDS = {"LKG", "UKG", "I", "II", "III", "IV", "V", "VI", "VII", "VIII", "IX", "X", "XI", "XII"};
+    public static final String[] SECTIONS = {"A", "B", "C"};
+    public static final String[] TUITION_HEADS = {"Term I Fee", "Term II Fee", "Term III Fee", "Book Fee"};
+    public static final String HOSTEL_HEAD = "Hostel Fee";
+    public static final String TRANSPORT_HEAD = "Bus Fee";
+    private static final String[] BOARDING_POINTS = {"Town Bus Stand", "Railway Gate", "Market", "Temple Street", "New Colony"};
+    private static final String[] PAYMENT_MODES = {"Cash", "Cash", "Cash", "UPI", "Bank"};
+    private static final String[] STORE_HEADS = {"Books", "Uniform", "Stationery"};
+
+    private static final Pattern TABLE_NAME = Pattern.compile("CREATE TABLE IF NOT EXISTS (\\w+)");
+    private static final int BATCH_SIZE = 2000;
+    private static final long SEED = 20240601L;
+
+    private final JdbcTemplate jdbc;
+    private final String schoolId;
+    private final Random random = new Random(SEED);
+
+    private int students = 2000;
+    private int years = 3;
+    private int collectionRows = 300_000;
+    private int stockItems = 200;
+    private int stockRows = 20_000;
+
+    public SyntheticSchool(JdbcTemplate jdbc, String schoolId) {
+        this.jdbc = jdbc;
+        this.schoolId = schoolId;
+    }
+
+    public SyntheticSchool students(int students) {
+        this.students = students;
+        return this;
+    }
+
+    public SyntheticSchool years(int years) {
+        this.years = years;
+        return this;
+    }
+
+    public SyntheticSchool collectionRows(int collectionRows) {
+        this.collectionRows = collectionRows;
+        return this;
+    }
+
+    public SyntheticSchool stockItems(int stockItems) {
+        this.stockItems = stockItems;
+        return this;
+    }
+
+    public SyntheticSchool stockRows(int stockRows) {
+        this.stockRows = stockRows;
+        return this;
+    }
+
+    /**
+     * Academic years the school is generated with, oldest first, ending with the current one,
+     * e.g. 2023-2024, 2024-2025, 2025-2026 for three years.
+     */
+    public static List<String> academicYears(int years) {
+        List<String> result = new ArrayList<>();
+        int lastStart = 2025;
+        for (int i = years - 1; i >= 0; i--) {
+            int start = lastStart - i;
+            result.add(start + "-" + (start + 1));
+        }
+        return result;
+    }
+
+    public static String currentYear(int years) {
+        List<String> all = academicYears(years);
+        return all.get(all.size() - 1);
+    }
+
+    public static String admissionNumber(int student) {
+        return String.format("ADM%05d", student + 1);
+    }
+
+    public static String standardOf(int student) {
+        return STANDARDS[student % STANDARDS.length];
+    }
+
+    public static String sectionOf(int student) {
+        return SECTIONS[(student / STANDARDS.length) % SECTIONS.length];
+    }
+
+    public static boolean usesHostel(int student) {
+        return student % 5 == 0;
+    }
+
+    public static boolean usesTransport(int student) {
+        return student % 5 == 1 || student % 5 == 2;
+    }
+
+    public void generate() {
+        long started = System.currentTimeMillis();
+        List<String> academicYears = academicYears(years);
+        for (String academicYear : academicYears) {
+            createYearTables(academicYear);
+            insertStudents(academicYear);
+            insertFees(academicYear);
+        }
+        createBillingTables();
+        insertCollections(academicYears);
+        createStoreTables();
+        insertStore(academicYears);
+        log.info("🏫 Generated school {}: {} students, {} years, {} collection rows, {} stock rows in {} ms",
+                schoolId, students, years, collectionRows, stockRows, System.currentTimeMillis() - started);
+    }
+
+    // --- Students and fees ---
+
+    private void createYearTables(String academicYear) {
+        String year = academicYear.replaceAll("[^a-zA-Z0-9]", "_");
+        createTable("""
+            CREATE TABLE IF NOT EXISTS admissions_%s (
+                id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                admission_number VARCHAR(100) NOT NULL UNIQUE,
+                student_name VARCHAR(255) NOT NULL,
+                father_name VARCHAR(255) NOT NULL,
+                mother_name VARCHAR(255) NOT NULL,
+                boarding_point VARCHAR(100),
+                bus_route_number VARCHAR(100),
+                standard VARCHAR(50) NOT NULL,
+                section VARCHAR(50),
+                emis VARCHAR(100),
+                aadhar_number VARCHAR(20),
+                school_id VARCHAR(50) NOT NULL,
+                academic_year VARCHAR(50) NOT NULL,
+                created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                INDEX idx_admission_number (admission_number)
+            )
+        """.formatted(year));
+        for (String feeType : List.of("tuition", "hostel", "transport")) {
+            createTable("""
+                CREATE TABLE IF NOT EXISTS %s_fees_%s (
+                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    admission_number VARCHAR(100) NOT NULL,
+                    student_name VARCHAR(255),
+                    standard VARCHAR(50),
+                    section VARCHAR(50),
+                    father_name VARCHAR(255),
+                    fee_heading VARCHAR(255) NOT NULL,
+                    account_head VARCHAR(255) NOT NULL,
+                    amount DECIMAL(10,2) NOT NULL,
+                    status VARCHAR(20) DEFAULT 'pending',
+                    boarding_point VARCHAR(100),
+                    academic_year VARCHAR(50) NOT NULL,
+                    school_id VARCHAR(50) NOT NULL,
+                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    INDEX idx_admission_number (admission_number),
+                    INDEX idx_school_year (school_id, academic_year)
+                )
+            """.formatted(feeType, year));
+        }
+    }
+
+    private void insertStudents(String academicYear) {
+        String year = academicYear.replaceAll("[^a-zA-Z0-9]", "_");
+        List<Object[]> rows = new ArrayList<>();
+        for (int s = 0; s < students; s++) {
+            rows.add(new Object[]{
+                    admissionNumber(s), studentName(s), fatherName(s), "Mother " + (s + 1),
+                    usesTransport(s) ? BOARDING_POINTS[s % BOARDING_POINTS.length] : null,
+                    usesTransport(s) ? "R" + (s % 8 + 1) : null,
+                    standardOf(s), sectionOf(s),
+                    String.format("33%010d", s), String.format("9%011d", s),
+                    schoolId, academicYear
+            });
+        }
+        batch("INSERT INTO admissions_" + year + " (admission_number, student_name, father_name, mother_name, boarding_point, " +
+                "bus_route_number, standard, section, emis, aadhar_number, school_id, academic_year) VALUES (?,?,?,?,?,?,?,?,?,?,?,?)", rows);
+    }
+
+    private void insertFees(String academicYear) {
+        String year = academicYear.replaceAll("[^a-zA-Z0-9]", "_");
+        List<Object[]> tuition = new ArrayList<>();
+        List<Object[]> hostel = new ArrayList<>();
+        List<Object[]> transport = new ArrayList<>();
+        for (int s = 0; s < students; s++) {
+            for (String head : TUITION_HEADS) {
+                tuition.add(feeRow(s, head, "Tuition", tuitionAmount(s, head), null, academicYear));
+            }
+            if (usesHostel(s)) {
+                hostel.add(feeRow(s, HOSTEL_HEAD, "Hostel", 24000.0, null, academicYear));
+            }
+            if (usesTransport(s)) {
+                transport.add(feeRow(s, TRANSPORT_HEAD, "Transport", 9000.0,
+                        BOARDING_POINTS[s % BOARDING_POINTS.length], academicYear));
+            }
+        }
+        String columns = " (admission_number, student_name, standard, section, father_name, fee_heading, account_head, amount, " +
+                "boarding_point, academic_year, school_id) VALUES (?,?,?,?,?,?,?,?,?,?,?)";
+        batch("INSERT INTO tuition_fees_" + year + columns, tuition);
+        batch("INSERT INTO hostel_fees_" + year + columns, hostel);
+        batch("INSERT INTO transport_fees_" + year + columns, transport);
+    }
+
+    private Object[] feeRow(int student, String head, String accountHead, double amount, String boardingPoint, String academicYear) {
+        return new Object[]{admissionNumber(student), studentName(student), standardOf(student), sectionOf(student),
+                fatherName(student), head, accountHead, amount, boardingPoint, academicYear, schoolId};
+    }
+
+    public static double tuitionAmount(int student, String head) {
+        double classFactor = 1 + (student % STANDARDS.length) * 0.1;
+        return "Book Fee".equals(head) ? Math.round(1500 * classFactor) : Math.round(8000 * classFactor);
+    }
+
+    // --- Collections ---
+
+    // Same DDL as DailyFeeCollectionService, so the service's CREATE TABLE IF NOT EXISTS finds them in place
+    private void createBillingTables() {
+        createTable("""
+            CREATE TABLE IF NOT EXISTS daily_fee_collection (
+                id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                bill_number VARCHAR(100) NOT NULL,
+                admission_number VARCHAR(50) NOT NULL,
+                student_name VARCHAR(255) NOT NULL,
+                father_name VARCHAR(255),
+                standard VARCHAR(50),
+                section VARCHAR(50),
+                emis_no VARCHAR(50),
+                aadhar_no VARCHAR(50),
+                boarding_point VARCHAR(255),
+                bill_date TIMESTAMP NOT NULL,
+                fee_head VARCHAR(255) NOT NULL,
+                account_head VARCHAR(255) NOT NULL,
+                paid_amount DECIMAL(12,2) DEFAULT 0.00,
+                concession_amount DECIMAL(12,2) DEFAULT 0.00,
+                net_paid_amount DECIMAL(12,2) DEFAULT 0.00,
+                payment_mode VARCHAR(50) NOT NULL,
+                payment_number VARCHAR(100),
+                operator_name VARCHAR(255) NOT NULL,
+                transaction_narrative TEXT,
+                transaction_date TIMESTAMP,
+                route_number VARCHAR(100),
+                school_id VARCHAR(50) NOT NULL,
+                academic_year VARCHAR(50) NOT NULL,
+                created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                UNIQUE KEY uk_bill_fee_admission (bill_number, fee_head, admission_number),
+                INDEX idx_bill_number (bill_number),
+                INDEX idx_admission_number (admission_number),
+                INDEX idx_school_academic (school_id, academic_year),
+                INDEX idx_bill_date (bill_date),
+                INDEX idx_fee_head (fee_head),
+                INDEX idx_student_name (student_name)
+            )
+        """);
+        for (String table : List.of("dfcpaidamount", "dfcconcession")) {
+            String amountColumn = table.equals("dfcpaidamount") ? "amount" : "concession_amount";
+            createTable("""
+                CREATE TABLE IF NOT EXISTS %s (
+                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    bill_number VARCHAR(100) NOT NULL,
+                    admission_number VARCHAR(50) NOT NULL,
+                    %s DECIMAL(12,2) NOT NULL,
+                    student_name VARCHAR(255) NOT NULL,
+                    father_name VARCHAR(255),
+                    standard VARCHAR(50),
+                    section VARCHAR(50),
+                    school_id VARCHAR(50) NOT NULL,
+                    aadhar_no VARCHAR(50),
+                    academic_year VARCHAR(50) NOT NULL,
+                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    INDEX idx_bill_number (bill_number),
+                    INDEX idx_admission_number (admission_number),
+                    INDEX idx_school_year (school_id, academic_year),
+                    INDEX idx_student_name (student_name)
+                )
+            """.formatted(table, amountColumn));
+        }
+        createTable("""
+            CREATE TABLE IF NOT EXISTS day_book (
+                id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                br_number VARCHAR(100) NOT NULL,
+                admission_number VARCHAR(50) NOT NULL,
+                name VARCHAR(255) NOT NULL,
+                br_date TIMESTAMP NOT NULL,
+                description VARCHAR(500),
+                ledger VARCHAR(255),
+                credit DECIMAL(12,2) DEFAULT 0.00,
+                debit DECIMAL(12,2) DEFAULT 0.00,
+                mode VARCHAR(50) NOT NULL,
+                operator_name VARCHAR(255) NOT NULL,
+                school_id VARCHAR(50) NOT NULL,
+                academic_year VARCHAR(50) NOT NULL,
+                created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                INDEX idx_br_number (br_number),
+                INDEX idx_admission_number (admission_number),
+                INDEX idx_school_academic (school_id, academic_year),
+                INDEX idx_br_date (br_date),
+                INDEX idx_name (name),
+                INDEX idx_ledger (ledger)
+            )
+        """);
+    }
+
+    private void insertCollections(List<String> academicYears) {
+        List<Object[]> collections = new ArrayList<>();
+        List<Object[]> paid = new ArrayList<>();
+        List<Object[]> concessions = new ArrayList<>();
+        List<Object[]> dayBook = new ArrayList<>();
+
+        int perYear = collectionRows / academicYears.size();
+        // Installments per fee head, so a year's payments add up to roughly 80% of its demand
+        double installments = Math.max(1.0, (double) perYear / students / 5);
+        int written = 0;
+        for (String academicYear : academicYears) {
+            LocalDate yearStart = LocalDate.of(Integer.parseInt(academicYear.substring(0, 4)), 6, 1);
+            int billNumber = 0;
+            int yearRows = 0;
+            while (yearRows < perYear) {
+                int s = random.nextInt(students);
+                LocalDateTime billDate = yearStart.plusDays(random.nextInt(300)).atTime(9 + random.nextInt(8), random.nextInt(60));
+                String bill = String.format("%04d/%s", ++billNumber, academicYear.substring(2, 4) + "-" + academicYear.substring(7, 9));
+                String mode = PAYMENT_MODES[random.nextInt(PAYMENT_MODES.length)];
+
+                for (String head : billHeads(s)) {
+                    if (yearRows >= perYear) {
+                        break;
+                    }
+                    double fee = headAmount(s, head);
+                    double paidAmount = Math.round(fee / installments * (0.5 + random.nextDouble() * 0.6));
+                    double concession = random.nextInt(10) == 0 ? Math.round(fee * 0.05) : 0.0;
+                    collections.add(new Object[]{
+                            bill, admissionNumber(s), studentName(s), fatherName(s), standardOf(s), sectionOf(s),
+                            String.format("33%010d", s), String.format("9%011d", s),
+                            usesTransport(s) ? BOARDING_POINTS[s % BOARDING_POINTS.length] : null,
+                            Timestamp.valueOf(billDate), head, accountHead(head), paidAmount, concession, paidAmount + concession,
+                            mode, mode.equals("Cash") ? null : "TXN" + billNumber, "operator", "Fee collection",
+                            Timestamp.valueOf(billDate), usesTransport(s) ? "R" + (s % 8 + 1) : null, schoolId, academicYear
+                    });
+                    if (paidAmount > 0) {
+                        paid.add(new Object[]{bill, admissionNumber(s), paidAmount, studentName(s), fatherName(s),
+                                standardOf(s), sectionOf(s), schoolId, String.format("9%011d", s), academicYear});
+                    }
+                    if (concession > 0) {
+                        concessions.add(new Object[]{bill, admissionNumber(s), concession, schoolId, studentName(s),
+                                fatherName(s), standardOf(s), sectionOf(s), String.format("9%011d", s), academicYear});
+                    }
+                    dayBook.add(new Object[]{bill, admissionNumber(s), studentName(s), Timestamp.valueOf(billDate),
+                            standardOf(s) + "-" + sectionOf(s), head, paidAmount, concession, mode, "operator",
+                            schoolId, academicYear});
+                    yearRows++;
+                }
+
+                if (collections.size() >= BATCH_SIZE) {
+                    written += flushCollections(collections, paid, concessions, dayBook);
+                }
+            }
+        }
+        written += flushCollections(collections, paid, concessions, dayBook);
+        log.info("💰 Generated {} collection rows", written);
+    }
+
+    private int flushCollections(List<Object[]> collections, List<Object[]> paid, List<Object[]> concessions, List<Object[]> dayBook) {
+        int rows = collections.size();
+        batch("""
+            INSERT INTO daily_fee_collection (
+                bill_number, admission_number, student_name, father_name, standard, section, emis_no, aadhar_no,
+                boarding_point, bill_date, fee_head, account_head, paid_amount, concession_amount, net_paid_amount,
+                payment_mode, payment_number, operator_name, transaction_narrative, transaction_date, route_number,
+                school_id, academic_year
+            ) VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)
+        """, collections);
+        batch("INSERT INTO dfcpaidamount (bill_number, admission_number, amount, student_name, father_name, standard, section, " +
+                "school_id, aadhar_no, academic_year) VALUES (?,?,?,?,?,?,?,?,?,?)", paid);
+        batch("INSERT INTO dfcconcession (bill_number, admission_number, concession_amount, school_id, student_name, father_name, " +
+                "standard, section, aadhar_no, academic_year) VALUES (?,?,?,?,?,?,?,?,?,?)", concessions);
+        batch("INSERT INTO day_book (br_number, admission_number, name, br_date, description, ledger, credit, debit, mode, " +
+                "operator_name, school_id, academic_year) VALUES (?,?,?,?,?,?,?,?,?,?,?,?)", dayBook);
+        collections.clear();
+        paid.clear();
+        concessions.clear();
+        dayBook.clear();
+        return rows;
+    }
+
+    // One to three heads the student actually owes
+    private List<String> billHeads(int student) {
+        List<String> owed = new ArrayList<>(List.of(TUITION_HEADS));
+        if (usesHostel(student)) owed.add(HOSTEL_HEAD);
+        if (usesTransport(student)) owed.add(TRANSPORT_HEAD);
+        int count = 1 + random.nextInt(Math.min(3, owed.size()));
+        List<String> heads = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            heads.add(owed.remove(random.nextInt(owed.size())));
+        }
+        return heads;
+    }
+
+    public static double headAmount(int student, String head) {
+        if (HOSTEL_HEAD.equals(head)) return 24000.0;
+        if (TRANSPORT_HEAD.equals(head)) return 9000.0;
+        return tuitionAmount(student, head);
+    }
+
+    public static String accountHead(String head) {
+        if (HOSTEL_HEAD.equals(head)) return "Hostel";
+        if (TRANSPORT_HEAD.equals(head)) return "Transport";
+        return "Tuition";
+    }
+
+    // --- Store ---
+
+    // Same DDL as PurchaseService / UtiliseService
+    private void createStoreTables() {
+        jdbc.execute("CREATE TABLE IF NOT EXISTS purchase_daily (" +
+                "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                "bill_number VARCHAR(50), entry_date DATE, month VARCHAR(20), supplier_code VARCHAR(50), " +
+                "item_code VARCHAR(50), description VARCHAR(255), head VARCHAR(50), " +
+                "standard VARCHAR(50), unit VARCHAR(20), quantity INT, rate DOUBLE, " +
+                "gst_percent DOUBLE, line_total DOUBLE, school_id VARCHAR(50), academic_year VARCHAR(20))");
+        jdbc.execute("CREATE TABLE IF NOT EXISTS stock (" +
+                "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                "item_code VARCHAR(50) UNIQUE, item_name VARCHAR(255), total_quantity INT, " +
+                "purchase_rate DOUBLE, head VARCHAR(50), unit VARCHAR(20), gst_percent DOUBLE, " +
+                "school_id VARCHAR(50))");
+        jdbc.execute("CREATE TABLE IF NOT EXISTS stock_report (" +
+                "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                "description_name VARCHAR(255), " +
+                "date DATE, " +
+                "quantity INT, " +
+                "standard VARCHAR(50), " +
+                "school_id VARCHAR(50), " +
+                "academic_year VARCHAR(20))");
+    }
+
+    private void insertStore(List<String> academicYears) {
+        List<Object[]> items = new ArrayList<>();
+        for (int i = 0; i < stockItems; i++) {
+            items.add(new Object[]{itemCode(i), itemName(i), 0, 50.0 + i, STORE_HEADS[i % STORE_HEADS.length], "Nos", 12.0, schoolId});
+        }
+        batch("INSERT INTO stock (item_code, item_name, total_quantity, purchase_rate, head, unit, gst_percent, school_id) " +
+                "VALUES (?,?,?,?,?,?,?,?)", items);
+
+        List<Object[]> purchases = new ArrayList<>();
+        List<Object[]> issues = new ArrayList<>();
+        for (int r = 0; r < stockRows; r++) {
+            int item = random.nextInt(stockItems);
+            String academicYear = academicYears.get(random.nextInt(academicYears.size()));
+            LocalDate yearStart = LocalDate.of(Integer.parseInt(academicYear.substring(0, 4)), 6, 1);
+            LocalDate purchased = yearStart.plusDays(random.nextInt(300));
+            int quantity = 10 + random.nextInt(90);
+            double rate = 50.0 + item;
+            purchases.add(new Object[]{"PB" + r, Date.valueOf(purchased), purchased.getMonth().name(), "SUP" + (item % 10),
+                    itemCode(item), itemName(item), STORE_HEADS[item % STORE_HEADS.length], itemStandard(item), "Nos",
+                    quantity, rate, 12.0, quantity * rate * 1.12, schoolId, academicYear});
+            issues.add(new Object[]{itemName(item), Date.valueOf(purchased.plusDays(random.nextInt(30))),
+                    1 + random.nextInt(quantity), itemStandard(item), schoolId, academicYear});
+            if (purchases.size() >= BATCH_SIZE) {
+                flushStore(purchases, issues);
+            }
+        }
+        flushStore(purchases, issues);
+    }
+
+    private void flushStore(List<Object[]> purchases, List<Object[]> issues) {
+        batch("INSERT INTO purchase_daily (bill_number, entry_date, month, supplier_code, item_code, description, head, standard, " +
+                "unit, quantity, rate, gst_percent, line_total, school_id, academic_year) VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)", purchases);
+        batch("INSERT INTO stock_report (description_name, date, quantity, standard, school_id, academic_year) VALUES (?,?,?,?,?,?)", issues);
+        purchases.clear();
+        issues.clear();
+    }
+
+    private static String itemCode(int item) {
+        return String.format("IT%04d", item + 1);
+    }
+
+    private static String itemName(int item) {
+        return STORE_HEADS[item % STORE_HEADS.length] + " item " + (item + 1);
+    }
+
+    private static String itemStandard(int item) {
+        return STANDARDS[item % STANDARDS.length];
+    }
+
+    // --- Helpers ---
+
+    public static String studentName(int student) {
+        return "Student " + (student + 1);
+    }
+
+    private static String fatherName(int student) {
+        return "Father " + (student + 1);
+    }
+
+    // H2 scopes index names to the schema rather than the table, so prefix them with the table name
+    private void createTable(String ddl) {
+        Matcher table = TABLE_NAME.matcher(ddl);
+        if (!table.find()) {
+            throw new IllegalArgumentException("Not a CREATE TABLE statement: " + ddl);
+        }
+        jdbc.execute(ddl.replaceAll("(INDEX|UNIQUE KEY) (idx_|uk_)", "$1 " + table.group(1) + "_$2"));
+    }
+
+    private void batch(String sql, List<Object[]> rows) {
+        for (int from = 0; from < rows.size(); from += BATCH_SIZE) {
+            jdbc.batchUpdate(sql, rows.subList(from, Math.min(rows.size(), from + BATCH_SIZE)));
+        }
+    }
+}
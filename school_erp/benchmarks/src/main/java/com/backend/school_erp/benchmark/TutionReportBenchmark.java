@@ -0,0 +1,32 @@
+package com.backend.school_erp.benchmark;
+
+import com.backend.school_erp.service.Collection.TutionReportService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodical collection report over one month and over the whole current year.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TutionReportBenchmark {
+
+    @Benchmark
+    public Map<String, Object> periodicalCollectionMonth(BenchmarkSchool school) {
+        String start = school.academicYear.substring(0, 4) + "-08-01";
+        String end = school.academicYear.substring(0, 4) + "-08-31";
+        return school.bean(TutionReportService.class).getPeriodicalCollectionReport(start, end, BenchmarkSchool.SCHOOL_ID, school.academicYear);
+    }
+
+    @Benchmark
+    public Map<String, Object> periodicalCollectionYear(BenchmarkSchool school) {
+        String start = school.academicYear.substring(0, 4) + "-06-01";
+        String end = school.academicYear.substring(5, 9) + "-05-31";
+        return school.bean(TutionReportService.class).getPeriodicalCollectionReport(start, end, BenchmarkSchool.SCHOOL_ID, school.academicYear);
+    }
+}
@@ -0,0 +1,24 @@
+package com.backend.school_erp.DTO.Administration;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FeeReapplicationResultDTO {
+    private String feeType;
+    private Boolean applied;              // False for a preview
+    private Integer studentCount;         // Students the setup applies to
+    private Integer studentsChanged;
+    private Integer amountChanges;        // Assigned heads whose amount differs from the setup
+    private Integer addedHeads;           // Setup heads the student does not have yet
+    private Integer skippedSettled;       // Heads already settled, left as they are
+    private Integer skippedBelowCollected; // New amount below what was already collected
+    private Integer unmatchedHeads;       // Assigned heads not in the setup, or assigned twice; left for per-student edits
+    private Double demandChange;          // Net change of the students' demand
+    private Long elapsedMs;
+}
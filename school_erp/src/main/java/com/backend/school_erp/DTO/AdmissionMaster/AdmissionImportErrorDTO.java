@@ -0,0 +1,16 @@
+package com.backend.school_erp.DTO.AdmissionMaster;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AdmissionImportErrorDTO {
+    private Integer rowNumber; // As numbered in the sheet, the header being row 1
+    private String admissionNumber;
+    private String message;
+}
@@ -0,0 +1,23 @@
+package com.backend.school_erp.DTO.AdmissionMaster;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AdmissionImportResultDTO {
+    private Integer totalRows;
+    private Integer importedCount;
+    private Integer failedCount;
+    private Integer photoCount;       // Photos in the zip
+    private Integer photosAttached;   // Imported students who got one of them
+    private List<String> ignoredColumns; // Header cells that name no admission field
+    private Long elapsedMs;
+    private List<AdmissionImportErrorDTO> errors;
+}
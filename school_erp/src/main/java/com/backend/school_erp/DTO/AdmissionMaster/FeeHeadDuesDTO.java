@@ -0,0 +1,19 @@
+package com.backend.school_erp.DTO.AdmissionMaster;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FeeHeadDuesDTO {
+    private String feeHead;
+    private String accountHead; // Transport or General, as in the TC arrears
+    private Double demand;
+    private Double paid;
+    private Double concession;
+    private Double pending;
+}
@@ -0,0 +1,38 @@
+package com.backend.school_erp.DTO.AdmissionMaster;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One student's line of a class-wide dues list; the totals add up like {@link StudentTCProfileDTO}'s.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StudentDuesDTO {
+    private String admissionNumber;
+    private String studentName;
+    private String standard;
+    private String section;
+    private boolean tcIssued;
+
+    private Double academicFixed;
+    private Double academicPaid;
+    private Double academicBalance;
+
+    private Double transportFixed;
+    private Double transportPaid;
+    private Double transportBalance;
+
+    private Double totalFixed;
+    private Double totalPaid; // Cash + Conc
+    private Double totalPendingBalance;
+
+    // Every fee head of the student, paid up or not
+    private List<FeeHeadDuesDTO> feeHeads;
+}
@@ -8,6 +8,9 @@ public class PromotionRequestDTO {
     private String schoolId;
     private String sourceAcademicYear;
     private String targetAcademicYear;
+    // Whole-class promotion: every student of this class without a TC, when no admission numbers are given
+    private String sourceStandard;
+    private String sourceSection;
     private String targetStandard;
     private String targetSection;
     private List<String> studentAdmissionNumbers;
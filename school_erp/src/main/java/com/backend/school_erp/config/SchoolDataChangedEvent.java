@@ -0,0 +1,14 @@
+package com.backend.school_erp.config;
+
+import com.backend.school_erp.service.DebitCardReport.ReportResultCache;
+
+/**
+ * Published by the writes that change what the school's reports show: fee postings, admissions,
+ * TCs and promotions. {@link ReportResultCache} drops the cached reports of the school and year
+ * once the publishing transaction completes.
+ *
+ * @param academicYear year whose reports changed, or null for every year of the school
+ * @param source       what changed, for the log
+ */
+public record SchoolDataChangedEvent(String schoolId, String academicYear, String source) {
+}
@@ -0,0 +1,178 @@
+package com.backend.school_erp.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLTransientConnectionException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admission control in front of the shared tenant pool.
+ *
+ * The global budget equals the tenant pool size (sized below RDS max_connections).
+ * Each school may hold at most its fair share of that budget: the budget split
+ * evenly across schools that currently hold or wait for a connection, never less
+ * than {@code min-per-school}. A school that is over its share queues (FIFO per
+ * school) for at most {@code max-wait-ms}, so one school's long report cannot
+ * starve another school's fee counter.
+ */
+@Component
+@Slf4j
+public class TenantConnectionGate {
+
+    // Upper bounds (ms) of the wait-time histogram buckets, last bucket is open ended
+    private static final long[] WAIT_BUCKETS_MS = {1, 5, 10, 50, 100, 500, 1000, 5000};
+
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition released = lock.newCondition();
+    private final Map<String, SchoolState> schools = new ConcurrentHashMap<>();
+    private int totalActive;
+
+    @Value("${tenant.datasource.maximum-pool-size:20}")
+    private int globalBudget;
+
+    @Value("${tenant.datasource.min-per-school:2}")
+    private int minPerSchool;
+
+    @Value("${tenant.datasource.max-wait-ms:10000}")
+    private long maxWaitMs;
+
+    /**
+     * Blocks until the school is within its fair share and the global budget has room.
+     */
+    public void acquire(String schoolId) throws SQLTransientConnectionException {
+        SchoolState state = schools.computeIfAbsent(schoolId, id -> new SchoolState());
+        long start = System.nanoTime();
+        long remaining = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        Object ticket = new Object();
+
+        lock.lock();
+        try {
+            state.waiting.addLast(ticket);
+            try {
+                while (state.waiting.peekFirst() != ticket
+                        || state.active >= fairShare()
+                        || totalActive >= globalBudget) {
+                    if (remaining <= 0L) {
+                        state.timeouts++;
+                        log.warn("⏳ Connection admission timed out for school {} (active: {}, share: {}, total: {}/{})",
+                                schoolId, state.active, fairShare(), totalActive, globalBudget);
+                        throw new SQLTransientConnectionException(
+                                "Timed out waiting for a database connection for school " + schoolId);
+                    }
+                    remaining = released.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLTransientConnectionException("Interrupted waiting for a database connection", e);
+            } finally {
+                state.waiting.remove(ticket);
+            }
+            state.active++;
+            totalActive++;
+            // Next waiter of the same school may now be at the head of its queue
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        state.recordWait(System.nanoTime() - start);
+    }
+
+    public void release(String schoolId) {
+        SchoolState state = schools.get(schoolId);
+        if (state == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            state.active--;
+            totalActive--;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Caller must hold the lock
+    private int fairShare() {
+        int contending = 0;
+        for (SchoolState s : schools.values()) {
+            if (s.active > 0 || !s.waiting.isEmpty()) {
+                contending++;
+            }
+        }
+        return Math.max(minPerSchool, globalBudget / Math.max(1, contending));
+    }
+
+    /**
+     * Snapshot of per-school admission gauges and wait-time histograms.
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        List<Map<String, Object>> perSchool = new ArrayList<>();
+
+        lock.lock();
+        try {
+            result.put("globalBudget", globalBudget);
+            result.put("totalActive", totalActive);
+            result.put("fairShare", fairShare());
+
+            for (Map.Entry<String, SchoolState> entry : new TreeMap<>(schools).entrySet()) {
+                SchoolState s = entry.getValue();
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("schoolId", entry.getKey());
+                row.put("active", s.active);
+                row.put("waiting", s.waiting.size());
+                row.put("timeouts", s.timeouts);
+                row.put("acquired", s.acquired);
+                row.put("totalWaitMs", TimeUnit.NANOSECONDS.toMillis(s.totalWaitNanos));
+                row.put("maxWaitMs", TimeUnit.NANOSECONDS.toMillis(s.maxWaitNanos));
+                row.put("waitHistogram", s.histogram());
+                perSchool.add(row);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        result.put("schools", perSchool);
+        return result;
+    }
+
+    private static class SchoolState {
+        private final Deque<Object> waiting = new ArrayDeque<>();
+        private final AtomicLongArray buckets = new AtomicLongArray(WAIT_BUCKETS_MS.length + 1);
+        private int active;
+        private long timeouts;
+        private volatile long acquired;
+        private volatile long totalWaitNanos;
+        private volatile long maxWaitNanos;
+
+        private synchronized void recordWait(long nanos) {
+            acquired++;
+            totalWaitNanos += nanos;
+            maxWaitNanos = Math.max(maxWaitNanos, nanos);
+            long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            int bucket = 0;
+            while (bucket < WAIT_BUCKETS_MS.length && millis > WAIT_BUCKETS_MS[bucket]) {
+                bucket++;
+            }
+            buckets.incrementAndGet(bucket);
+        }
+
+        private Map<String, Long> histogram() {
+            Map<String, Long> histogram = new LinkedHashMap<>();
+            for (int i = 0; i < WAIT_BUCKETS_MS.length; i++) {
+                histogram.put("le_" + WAIT_BUCKETS_MS[i] + "ms", buckets.get(i));
+            }
+            histogram.put("gt_" + WAIT_BUCKETS_MS[WAIT_BUCKETS_MS.length - 1] + "ms",
+                    buckets.get(WAIT_BUCKETS_MS.length));
+            return histogram;
+        }
+    }
+}
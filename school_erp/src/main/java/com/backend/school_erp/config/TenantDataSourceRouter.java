@@ -0,0 +1,235 @@
+package com.backend.school_erp.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+/**
+ * Single entry point for every per-school database connection.
+ *
+ * All schools live on the same RDS server, so instead of one Hikari pool per
+ * (service x school) we keep ONE shared pool connected to the server and switch
+ * the connection's catalog to the school database on checkout. The number of
+ * physical connections is therefore bounded by the shared pool size (i.e. by
+ * concurrent load), not by how many services or schools have been touched.
+ * Idle connections are retired by the pool's idle timeout whichever school
+ * last used them.
+ *
+ * Every checkout is admitted by {@link TenantConnectionGate}, which splits the
+ * pool between schools so a single busy school cannot take all connections.
+ */
+@Component
+@Slf4j
+public class TenantDataSourceRouter {
+
+    // School ids become database names, only allow plain identifiers
+    private static final Pattern SCHOOL_ID_PATTERN = Pattern.compile("^[A-Za-z0-9_-]+$");
+
+    private final Map<String, TenantDataSource> tenantDataSources = new ConcurrentHashMap<>();
+    private final Map<String, JdbcTemplate> jdbcTemplates = new ConcurrentHashMap<>();
+    private final Map<String, TransactionTemplate> transactionTemplates = new ConcurrentHashMap<>();
+    private final TenantConnectionGate connectionGate;
+
+    // Empty means the RDS server from DatabaseConfig; overridden to point benchmarks at a local database
+    @Value("${tenant.datasource.url:}")
+    private String jdbcUrl;
+
+    @Value("${tenant.datasource.username:}")
+    private String username;
+
+    @Value("${tenant.datasource.password:}")
+    private String password;
+
+    @Value("${tenant.datasource.driver-class-name:}")
+    private String driverClassName;
+
+    @Value("${tenant.datasource.maximum-pool-size:20}")
+    private int maximumPoolSize;
+
+    @Value("${tenant.datasource.minimum-idle:2}")
+    private int minimumIdle;
+
+    @Value("${tenant.datasource.idle-timeout:60000}")
+    private long idleTimeout;
+
+    @Value("${tenant.datasource.max-lifetime:1800000}")
+    private long maxLifetime;
+
+    @Value("${tenant.datasource.connection-timeout:30000}")
+    private long connectionTimeout;
+
+    private volatile HikariDataSource sharedPool;
+
+    public TenantDataSourceRouter(TenantConnectionGate connectionGate) {
+        this.connectionGate = connectionGate;
+    }
+
+    public DataSource getDataSource(String schoolId) {
+        if (schoolId == null || !SCHOOL_ID_PATTERN.matcher(schoolId).matches()) {
+            throw new IllegalArgumentException("Invalid school id: " + schoolId);
+        }
+        return tenantDataSources.computeIfAbsent(schoolId, TenantDataSource::new);
+    }
+
+    public JdbcTemplate getJdbcTemplate(String schoolId) {
+        DataSource dataSource = getDataSource(schoolId);
+        return jdbcTemplates.computeIfAbsent(schoolId, id -> new JdbcTemplate(dataSource));
+    }
+
+    /**
+     * Runs a callback in one transaction on the school's database. Spring's {@code @Transactional}
+     * only covers the primary DataSource, so tenant writes that must commit together go through this.
+     */
+    public TransactionTemplate getTransactionTemplate(String schoolId) {
+        DataSource dataSource = getDataSource(schoolId);
+        return transactionTemplates.computeIfAbsent(schoolId,
+                id -> new TransactionTemplate(new DataSourceTransactionManager(dataSource)));
+    }
+
+    /**
+     * Resolves the school a DataSource obtained from this router belongs to, or null for any other DataSource.
+     */
+    public String getSchoolId(DataSource dataSource) {
+        return dataSource instanceof TenantDataSource tenant ? tenant.schoolId : null;
+    }
+
+    // Pool is created lazily so the application can start without reaching RDS
+    private HikariDataSource getSharedPool() {
+        HikariDataSource pool = sharedPool;
+        if (pool == null) {
+            synchronized (this) {
+                pool = sharedPool;
+                if (pool == null) {
+                    log.info("🔗 Creating shared tenant HikariCP pool (max {} connections)", maximumPoolSize);
+                    HikariConfig config = new HikariConfig();
+                    config.setPoolName("tenant-pool");
+                    config.setJdbcUrl(jdbcUrl.isEmpty() ? DatabaseConfig.AWS_DB_BASE_URL + DatabaseConfig.DB_PARAMS : jdbcUrl);
+                    config.setUsername(username.isEmpty() ? DatabaseConfig.AWS_DB_USER : username);
+                    config.setPassword(password.isEmpty() ? DatabaseConfig.AWS_DB_PASS : password);
+                    config.setDriverClassName(driverClassName.isEmpty() ? DatabaseConfig.JDBC_DRIVER : driverClassName);
+                    config.setMaximumPoolSize(maximumPoolSize);
+                    config.setMinimumIdle(minimumIdle);
+                    config.setIdleTimeout(idleTimeout);
+                    config.setMaxLifetime(maxLifetime);
+                    config.setConnectionTimeout(connectionTimeout);
+                    config.setValidationTimeout(5000);
+                    if (DatabaseConfig.JDBC_DRIVER.equals(config.getDriverClassName())) {
+                        // Lets Connector/J send a JDBC batch as multi-row INSERTs in one round trip
+                        config.addDataSourceProperty("rewriteBatchedStatements", "true");
+                    }
+                    pool = new HikariDataSource(config);
+                    sharedPool = pool;
+                }
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * Pool-wide gauges plus the per-school admission stats.
+     */
+    public Map<String, Object> getPoolStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        HikariDataSource pool = sharedPool;
+        if (pool != null && pool.getHikariPoolMXBean() != null) {
+            stats.put("poolActive", pool.getHikariPoolMXBean().getActiveConnections());
+            stats.put("poolIdle", pool.getHikariPoolMXBean().getIdleConnections());
+            stats.put("poolTotal", pool.getHikariPoolMXBean().getTotalConnections());
+            stats.put("poolThreadsAwaiting", pool.getHikariPoolMXBean().getThreadsAwaitingConnection());
+        }
+        stats.putAll(connectionGate.getStats());
+        return stats;
+    }
+
+    @PreDestroy
+    public void close() {
+        HikariDataSource pool = sharedPool;
+        if (pool != null) {
+            log.info("🔌 Closing shared tenant HikariCP pool");
+            pool.close();
+        }
+    }
+
+    /**
+     * Lightweight per-school view of the shared pool. Holds no connections of its own.
+     */
+    private class TenantDataSource extends AbstractDataSource {
+
+        private final String schoolId;
+
+        TenantDataSource(String schoolId) {
+            this.schoolId = schoolId;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            connectionGate.acquire(schoolId);
+            try {
+                return admitted(switchCatalog(getSharedPool().getConnection()));
+            } catch (SQLException | RuntimeException e) {
+                connectionGate.release(schoolId);
+                throw e;
+            }
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            throw new SQLFeatureNotSupportedException("Tenant connections always use the shared pool credentials");
+        }
+
+        private Connection switchCatalog(Connection connection) throws SQLException {
+            try {
+                // Connector/J caches the current database locally, so this is free when it already matches
+                if (!schoolId.equals(connection.getCatalog())) {
+                    connection.setCatalog(schoolId);
+                }
+                return connection;
+            } catch (SQLException e) {
+                connection.close();
+                throw e;
+            }
+        }
+
+        // Hands the admission slot back exactly once when the caller closes the connection
+        private Connection admitted(Connection connection) {
+            AtomicBoolean released = new AtomicBoolean();
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        if ("close".equals(method.getName()) && released.compareAndSet(false, true)) {
+                            try {
+                                connection.close();
+                            } finally {
+                                connectionGate.release(schoolId);
+                            }
+                            return null;
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.backend.school_erp.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Applies each module's table definitions once per school DB instead of on every request.
+ *
+ * A module is a named, versioned block of DDL (usually one service's CREATE TABLE /
+ * ALTER TABLE statements). The applied version of every module is recorded in the
+ * school's {@code tenant_schema_version} table and cached in memory, so after the
+ * first touch a school's requests run no DDL and take no metadata locks.
+ *
+ * To change a module's tables, edit its DDL and bump its version: the block then
+ * runs once more on every school and the new version is recorded.
+ */
+@Component
+@Slf4j
+public class TenantSchemaMigrator {
+
+    private static final String VERSION_TABLE = "tenant_schema_version";
+
+    private final TenantDataSourceRouter tenantDataSourceRouter;
+    private final TenantTableCatalog tableCatalog;
+
+    // schoolId -> (module -> applied version)
+    private final Map<String, Map<String, Integer>> appliedVersions = new ConcurrentHashMap<>();
+    private final Map<String, Object> schoolLocks = new ConcurrentHashMap<>();
+
+    public TenantSchemaMigrator(TenantDataSourceRouter tenantDataSourceRouter, TenantTableCatalog tableCatalog) {
+        this.tenantDataSourceRouter = tenantDataSourceRouter;
+        this.tableCatalog = tableCatalog;
+    }
+
+    /**
+     * Runs {@code ddl} against the school behind {@code jdbc} unless {@code module} is already at
+     * {@code version} or newer.
+     */
+    public void migrate(JdbcTemplate jdbc, String module, int version, Runnable ddl) {
+        String schoolId = tenantDataSourceRouter.getSchoolId(jdbc.getDataSource());
+        if (schoolId == null) {
+            // Not a tenant DataSource, nothing to key the version on
+            ddl.run();
+            tableCatalog.invalidate(jdbc);
+            return;
+        }
+
+        Map<String, Integer> versions = appliedVersions.get(schoolId);
+        if (versions != null && versions.getOrDefault(module, 0) >= version) {
+            return;
+        }
+
+        synchronized (lockFor(schoolId)) {
+            versions = appliedVersions.computeIfAbsent(schoolId, id -> loadVersions(jdbc, id));
+            if (versions.getOrDefault(module, 0) >= version) {
+                return;
+            }
+
+            log.info("🛠️ Applying schema module {} v{} for school {}", module, version, schoolId);
+            try {
+                ddl.run();
+            } finally {
+                tableCatalog.invalidate(schoolId);
+            }
+
+            jdbc.update("INSERT INTO " + VERSION_TABLE + " (module, version) VALUES (?, ?) " +
+                    "ON DUPLICATE KEY UPDATE version = VALUES(version), applied_at = CURRENT_TIMESTAMP",
+                    module, version);
+            versions.put(module, version);
+        }
+    }
+
+    /**
+     * Forgets what is cached for a school, e.g. after its database was dropped and recreated.
+     */
+    public void evict(String schoolId) {
+        appliedVersions.remove(schoolId);
+    }
+
+    private Map<String, Integer> loadVersions(JdbcTemplate jdbc, String schoolId) {
+        jdbc.execute("CREATE TABLE IF NOT EXISTS " + VERSION_TABLE + " (" +
+                "module VARCHAR(150) PRIMARY KEY, " +
+                "version INT NOT NULL, " +
+                "applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+
+        Map<String, Integer> versions = new ConcurrentHashMap<>();
+        jdbc.query("SELECT module, version FROM " + VERSION_TABLE,
+                rs -> { versions.put(rs.getString("module"), rs.getInt("version")); });
+        log.info("📋 Loaded {} schema module versions for school {}", versions.size(), schoolId);
+        return versions;
+    }
+
+    private Object lockFor(String schoolId) {
+        return schoolLocks.computeIfAbsent(schoolId, id -> new Object());
+    }
+}
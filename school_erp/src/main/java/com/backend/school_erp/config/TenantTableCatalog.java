@@ -0,0 +1,149 @@
+package com.backend.school_erp.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory copy of each school's table and column names.
+ *
+ * Loaded with a single INFORMATION_SCHEMA.COLUMNS query on first use, so hot paths can
+ * ask "does tuition_fees_2024_2025 exist?" or "admission_no or admission_number?"
+ * without a database round trip. {@link TenantSchemaMigrator} invalidates a school
+ * after running DDL. A "missing" answer from a snapshot older than
+ * {@link #MISSING_RECHECK_MS} reloads once, so tables created by another app
+ * instance are picked up without probing on every call.
+ */
+@Component
+@Slf4j
+public class TenantTableCatalog {
+
+    private static final long MISSING_RECHECK_MS = 30_000;
+
+    private final TenantDataSourceRouter tenantDataSourceRouter;
+    private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+    // Bumped by every invalidate, so a snapshot loaded across one is not kept
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    public TenantTableCatalog(TenantDataSourceRouter tenantDataSourceRouter) {
+        this.tenantDataSourceRouter = tenantDataSourceRouter;
+    }
+
+    public boolean tableExists(JdbcTemplate jdbc, String tableName) {
+        return getColumns(jdbc, tableName) != null;
+    }
+
+    public boolean hasColumn(JdbcTemplate jdbc, String tableName, String columnName) {
+        Set<String> columns = getColumns(jdbc, tableName);
+        return columns != null && columns.contains(columnName.toLowerCase());
+    }
+
+    /**
+     * Lower-case column names of the table, sorted; empty when the table does not exist.
+     */
+    public List<String> columnsOf(JdbcTemplate jdbc, String tableName) {
+        Set<String> columns = getColumns(jdbc, tableName);
+        return columns != null ? new ArrayList<>(new TreeSet<>(columns)) : List.of();
+    }
+
+    /**
+     * First of {@code candidates} present on the table, or the last candidate when none is
+     * (e.g. {@code resolveColumn(jdbc, table, "admission_no", "admission_number")}).
+     */
+    public String resolveColumn(JdbcTemplate jdbc, String tableName, String... candidates) {
+        Set<String> columns = getColumns(jdbc, tableName);
+        if (columns != null) {
+            for (String candidate : candidates) {
+                if (columns.contains(candidate.toLowerCase())) {
+                    return candidate;
+                }
+            }
+        }
+        return candidates[candidates.length - 1];
+    }
+
+    /**
+     * Names of all tables in the school DB starting with {@code prefix}, e.g. every {@code admissions_} year.
+     */
+    public List<String> tablesWithPrefix(JdbcTemplate jdbc, String prefix) {
+        String lowerPrefix = prefix.toLowerCase();
+        List<String> result = new ArrayList<>();
+        for (String table : snapshot(jdbc).columns.keySet()) {
+            if (table.startsWith(lowerPrefix)) {
+                result.add(table);
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    public void invalidate(String schoolId) {
+        if (schoolId != null) {
+            generationOf(schoolId).incrementAndGet();
+            snapshots.remove(schoolId);
+        }
+    }
+
+    public void invalidate(JdbcTemplate jdbc) {
+        invalidate(tenantDataSourceRouter.getSchoolId(jdbc.getDataSource()));
+    }
+
+    private Set<String> getColumns(JdbcTemplate jdbc, String tableName) {
+        String key = tableName.toLowerCase();
+        Snapshot snapshot = snapshot(jdbc);
+        Set<String> columns = snapshot.columns.get(key);
+        if (columns == null && System.currentTimeMillis() - snapshot.loadedAt > MISSING_RECHECK_MS) {
+            invalidate(jdbc);
+            columns = snapshot(jdbc).columns.get(key);
+        }
+        return columns;
+    }
+
+    private Snapshot snapshot(JdbcTemplate jdbc) {
+        String schoolId = tenantDataSourceRouter.getSchoolId(jdbc.getDataSource());
+        if (schoolId == null) {
+            // Not a tenant DataSource, don't cache
+            return load(jdbc, "?");
+        }
+        Snapshot cached = snapshots.get(schoolId);
+        if (cached != null) {
+            return cached;
+        }
+        // Query outside the map so a slow INFORMATION_SCHEMA read never blocks other schools' bins;
+        // when two threads load at once the first snapshot stored wins
+        AtomicLong generation = generationOf(schoolId);
+        long seen = generation.get();
+        Snapshot loaded = load(jdbc, schoolId);
+        Snapshot raced = snapshots.putIfAbsent(schoolId, loaded);
+        if (raced != null) {
+            return raced;
+        }
+        if (generation.get() != seen) {
+            // Invalidated while loading (e.g. DDL just ran): the snapshot may predate it, so don't keep it
+            snapshots.remove(schoolId, loaded);
+        }
+        return loaded;
+    }
+
+    private AtomicLong generationOf(String schoolId) {
+        return generations.computeIfAbsent(schoolId, id -> new AtomicLong());
+    }
+
+    private Snapshot load(JdbcTemplate jdbc, String schoolId) {
+        Map<String, Set<String>> columns = new HashMap<>();
+        jdbc.query("SELECT TABLE_NAME, COLUMN_NAME FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA = DATABASE()",
+                rs -> {
+                    columns.computeIfAbsent(rs.getString(1).toLowerCase(), t -> new HashSet<>())
+                            .add(rs.getString(2).toLowerCase());
+                });
+        log.debug("📋 Loaded table catalog for school {}: {} tables", schoolId, columns.size());
+        return new Snapshot(columns, System.currentTimeMillis());
+    }
+
+    private record Snapshot(Map<String, Set<String>> columns, long loadedAt) {
+    }
+}
@@ -0,0 +1,24 @@
+package com.backend.school_erp.controller.Admin;
+
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin/db-pool")
+public class DatabasePoolController {
+
+    private final TenantDataSourceRouter tenantDataSourceRouter;
+
+    public DatabasePoolController(TenantDataSourceRouter tenantDataSourceRouter) {
+        this.tenantDataSourceRouter = tenantDataSourceRouter;
+    }
+
+    // ✅ Shared pool gauges + per-school active/waiting counts and wait-time histograms
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Object>> getPoolStats() {
+        return ResponseEntity.ok(tenantDataSourceRouter.getPoolStats());
+    }
+}
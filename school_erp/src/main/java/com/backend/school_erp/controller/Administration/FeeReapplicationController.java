@@ -0,0 +1,54 @@
+package com.backend.school_erp.controller.Administration;
+
+import com.backend.school_erp.service.Administration.FeeReapplicationService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * Re-applies a changed tuition, hostel or bus fee setup to the fees already assigned to students.
+ * Preview the counts first; a whole school is better applied as a report job
+ * (POST /api/report-jobs/fee-reapplication with the same parameters), which reports its progress.
+ */
+@RestController
+@RequestMapping("/api/administration/fee-reapplication")
+@RequiredArgsConstructor
+public class FeeReapplicationController {
+
+    private final FeeReapplicationService service;
+
+    // feeType: tuition, hostel or transport
+    @GetMapping("/preview")
+    public ResponseEntity<?> preview(
+            @RequestParam String schoolId,
+            @RequestParam String academicYear,
+            @RequestParam String feeType,
+            @RequestParam(required = false) String standard,
+            @RequestParam(required = false) String studentCategory,
+            @RequestParam(required = false) String boardingPoint
+    ) {
+        try {
+            return ResponseEntity.ok(service.preview(schoolId, academicYear, feeType, standard, studentCategory, boardingPoint));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @PostMapping("/apply")
+    public ResponseEntity<?> apply(
+            @RequestParam String schoolId,
+            @RequestParam String academicYear,
+            @RequestParam String feeType,
+            @RequestParam(required = false) String standard,
+            @RequestParam(required = false) String studentCategory,
+            @RequestParam(required = false) String boardingPoint
+    ) {
+        try {
+            return ResponseEntity.ok(service.apply(schoolId, academicYear, feeType, standard, studentCategory, boardingPoint));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+}
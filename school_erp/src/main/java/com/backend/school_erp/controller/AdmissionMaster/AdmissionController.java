@@ -2,13 +2,18 @@ package com.backend.school_erp.controller.AdmissionMaster;
 
 import com.backend.school_erp.DTO.AdmissionMaster.*;
 import com.backend.school_erp.entity.AdmissionMaster.Admission;
+import com.backend.school_erp.service.AdmissionMaster.AdmissionImportService;
 import com.backend.school_erp.service.AdmissionMaster.AdmissionService;
+import com.backend.school_erp.service.Export.ExportFormat;
+import com.backend.school_erp.service.Export.ReportExportService;
+import com.backend.school_erp.service.Media.MediaFile;
+import com.backend.school_erp.service.Media.MediaStore;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
@@ -22,10 +27,16 @@ import java.util.Optional;
 public class AdmissionController {
 
     private final AdmissionService admissionService;
+    private final AdmissionImportService admissionImportService;
+    private final ReportExportService reportExportService;
+    private final MediaStore mediaStore;
     private final ObjectMapper objectMapper;
 
-    public AdmissionController(AdmissionService admissionService) {
+    public AdmissionController(AdmissionService admissionService, AdmissionImportService admissionImportService, ReportExportService reportExportService, MediaStore mediaStore) {
         this.admissionService = admissionService;
+        this.admissionImportService = admissionImportService;
+        this.reportExportService = reportExportService;
+        this.mediaStore = mediaStore;
         this.objectMapper = new ObjectMapper();
         this.objectMapper.registerModule(new JavaTimeModule());
     }
@@ -65,6 +76,32 @@ public class AdmissionController {
         }
     }
 
+    /**
+     * Admits every student of an uploaded sheet (.csv or .xlsx), with an optional zip of photos
+     * named by admission number. Rows that could not be admitted are listed in the result's errors.
+     */
+    @PostMapping("/import")
+    public ResponseEntity<?> importAdmissions(
+            @RequestParam("schoolId") String schoolId,
+            @RequestParam("academicYear") String academicYear,
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "photos", required = false) MultipartFile photos) {
+
+        try {
+            log.info("📥 Received admission import for school: {} ({}), file: {}", schoolId, academicYear, file.getOriginalFilename());
+            AdmissionImportResultDTO result = admissionImportService.importAdmissions(schoolId, academicYear,
+                    file.getOriginalFilename(), file.getInputStream(),
+                    photos != null && !photos.isEmpty() ? photos.getInputStream() : null);
+            return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        } catch (Exception e) {
+            log.error("❌ Error importing admissions: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Error importing admissions: " + e.getMessage());
+        }
+    }
+
     @PutMapping("/{id}/with-photo")
     public ResponseEntity<?> updateAdmissionWithPhoto(
             @PathVariable Long id,
@@ -116,6 +153,46 @@ public class AdmissionController {
         }
     }
 
+    // Paged admissions list without photos; photos come from /{id}/photo
+    @GetMapping("/school/{schoolId}/page")
+    public ResponseEntity<?> getAdmissionsPage(
+            @PathVariable String schoolId,
+            @RequestParam("academicYear") String academicYear,
+            @RequestParam(value = "search", required = false) String search,
+            @RequestParam(value = "standard", required = false) String standard,
+            @RequestParam(value = "section", required = false) String section,
+            @RequestParam(value = "sort", required = false) String sort,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", required = false) Integer limit) {
+
+        try {
+            return ResponseEntity.ok(admissionService.getAdmissionsPage(
+                    schoolId, academicYear, search, standard, section, sort, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        } catch (Exception e) {
+            log.error("❌ Error fetching admissions page: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Error fetching admissions: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/school/{schoolId}/export")
+    public ResponseEntity<?> exportAdmissions(
+            @PathVariable String schoolId,
+            @RequestParam("academicYear") String academicYear,
+            @RequestParam(value = "format", defaultValue = "csv") String format) {
+
+        try {
+            return reportExportService.download("admissions_" + academicYear, ExportFormat.of(format),
+                    writer -> admissionService.exportAdmissions(schoolId, academicYear, writer));
+        } catch (Exception e) {
+            log.error("❌ Error exporting admissions: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body("Error exporting admissions: " + e.getMessage());
+        }
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<?> getAdmissionById(
             @PathVariable Long id,
@@ -220,27 +297,27 @@ public class AdmissionController {
     }
 
     @GetMapping("/{id}/photo")
-    public ResponseEntity<byte[]> getStudentPhoto(
+    public void getStudentPhoto(
             @PathVariable Long id,
             @RequestParam("schoolId") String schoolId,
-            @RequestParam("academicYear") String academicYear) {
+            @RequestParam("academicYear") String academicYear,
+            @RequestParam(value = "thumbnail", defaultValue = "false") boolean thumbnail,
+            HttpServletRequest request,
+            HttpServletResponse response) {
 
         try {
             log.info("📥 Fetching student photo for admission ID: {}", id);
-            byte[] photoBytes = admissionService.getStudentPhoto(schoolId, id, academicYear);
-            String contentType = admissionService.getStudentPhotoContentType(schoolId, id, academicYear);
-
-            if (photoBytes != null && contentType != null) {
-                HttpHeaders headers = new HttpHeaders();
-                headers.setContentType(MediaType.parseMediaType(contentType));
-                headers.setContentLength(photoBytes.length);
-                return new ResponseEntity<>(photoBytes, headers, HttpStatus.OK);
+            Optional<MediaFile> photo = admissionService.findStudentPhoto(schoolId, id, academicYear, thumbnail);
+            if (photo.isPresent()) {
+                mediaStore.send(photo.get(), request, response);
             } else {
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+                response.setStatus(HttpStatus.NOT_FOUND.value());
             }
         } catch (Exception e) {
             log.error("❌ Error fetching student photo: {}", e.getMessage(), e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+            if (!response.isCommitted()) {
+                response.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
+            }
         }
     }
 
@@ -3,11 +3,14 @@ package com.backend.school_erp.controller.AdmissionMaster;
 import com.backend.school_erp.DTO.AdmissionMaster.EnquiryDTO;
 import com.backend.school_erp.entity.AdmissionMaster.Enquiry;
 import com.backend.school_erp.service.AdmissionMaster.EnquiryService;
+import com.backend.school_erp.service.Media.MediaFile;
+import com.backend.school_erp.service.Media.MediaStore;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
@@ -22,10 +25,12 @@ import java.util.Optional;
 public class EnquiryController {
 
     private final EnquiryService enquiryService;
+    private final MediaStore mediaStore;
     private final ObjectMapper objectMapper;
 
-    public EnquiryController(EnquiryService enquiryService, ObjectMapper objectMapper) {
+    public EnquiryController(EnquiryService enquiryService, MediaStore mediaStore, ObjectMapper objectMapper) {
         this.enquiryService = enquiryService;
+        this.mediaStore = mediaStore;
         this.objectMapper = objectMapper;
     }
 
@@ -92,6 +97,23 @@ public class EnquiryController {
         return ResponseEntity.ok(enquiryService.getAllEnquiries(schoolId, academicYear));
     }
 
+    // Paged enquiries list without photos; photos come from /{id}/photo
+    @GetMapping("/school/{schoolId}/page")
+    public ResponseEntity<?> getEnquiriesPage(
+            @PathVariable String schoolId,
+            @RequestParam String academicYear,
+            @RequestParam(required = false) String search,
+            @RequestParam(required = false) String standard,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        try {
+            return ResponseEntity.ok(enquiryService.getEnquiriesPage(schoolId, academicYear, search, standard, sort, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<?> getEnquiryById(@PathVariable Long id, @RequestParam String schoolId) {
         return enquiryService.getEnquiryById(schoolId, id)
@@ -99,26 +121,25 @@ public class EnquiryController {
     }
 
     @GetMapping("/{id}/photo")
-    public ResponseEntity<byte[]> getStudentPhoto(
+    public void getStudentPhoto(
             @PathVariable Long id,
-            @RequestParam String schoolId) {
+            @RequestParam String schoolId,
+            @RequestParam(defaultValue = "false") boolean thumbnail,
+            HttpServletRequest request,
+            HttpServletResponse response) {
         try {
-            byte[] photo = enquiryService.getStudentPhoto(schoolId, id);
-            String contentType = enquiryService.getStudentPhotoContentType(schoolId, id);
-
-            if (photo == null) {
-                return ResponseEntity.notFound().build();
+            Optional<MediaFile> photo = enquiryService.findStudentPhoto(schoolId, id, thumbnail);
+            if (photo.isEmpty()) {
+                response.setStatus(HttpStatus.NOT_FOUND.value());
+                return;
             }
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.parseMediaType(
-                    contentType != null ? contentType : MediaType.IMAGE_JPEG_VALUE));
-            headers.setContentDispositionFormData("inline", "student-photo");
-
-            return new ResponseEntity<>(photo, headers, HttpStatus.OK);
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"student-photo\"");
+            mediaStore.send(photo.get(), request, response);
         } catch (Exception e) {
             log.error("Error retrieving student photo", e);
-            return ResponseEntity.notFound().build();
+            if (!response.isCommitted()) {
+                response.setStatus(HttpStatus.NOT_FOUND.value());
+            }
         }
     }
 
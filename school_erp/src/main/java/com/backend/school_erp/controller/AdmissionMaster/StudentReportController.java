@@ -2,6 +2,8 @@ package com.backend.school_erp.controller.AdmissionMaster;
 
 import com.backend.school_erp.entity.AdmissionMaster.StudentRegisterReport;
 import com.backend.school_erp.service.AdmissionMaster.StudentReportService;
+import com.backend.school_erp.service.Export.ExportFormat;
+import com.backend.school_erp.service.Export.ReportExportService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -16,9 +18,11 @@ import java.util.Map;
 public class StudentReportController {
 
     private final StudentReportService studentReportService;
+    private final ReportExportService reportExportService;
 
-    public StudentReportController(StudentReportService studentReportService) {
+    public StudentReportController(StudentReportService studentReportService, ReportExportService reportExportService) {
         this.studentReportService = studentReportService;
+        this.reportExportService = reportExportService;
     }
 
     // Endpoint for Aadhaar EMIS report
@@ -63,6 +67,23 @@ public class StudentReportController {
         }
     }
 
+    // Student register as a CSV / XLSX download, streamed from the database
+    @GetMapping("/school/{schoolId}/export")
+    public ResponseEntity<?> exportStudentRegisterData(
+            @PathVariable String schoolId,
+            @RequestParam("academicYear") String academicYear,
+            @RequestParam(value = "format", defaultValue = "csv") String format) {
+
+        try {
+            return reportExportService.download("student_register_" + academicYear, ExportFormat.of(format),
+                    writer -> studentReportService.exportStudentRegister(schoolId, academicYear, writer));
+        } catch (Exception e) {
+            log.error("❌ Error exporting student register data: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("error", "Error exporting student register data: " + e.getMessage()));
+        }
+    }
+
     // Get students by standard
     @GetMapping("/school/{schoolId}/standard/{standard}")
     public ResponseEntity<?> getStudentRegisterDataByStandard(
@@ -1,5 +1,6 @@
 package com.backend.school_erp.controller.AdmissionMaster;
 
+import com.backend.school_erp.DTO.AdmissionMaster.StudentDuesDTO;
 import com.backend.school_erp.DTO.AdmissionMaster.StudentTCProfileDTO;
 import com.backend.school_erp.DTO.AdmissionMaster.TCRequestDTO;
 import com.backend.school_erp.DTO.DebitCardReport.TCListResponseDTO;
@@ -76,6 +77,24 @@ public class TCController {
         }
     }
 
+    // Class-wide dues in one pass; pendingOnly=true lists the defaulters
+    @GetMapping("/class-dues")
+    public ResponseEntity<?> getClassDues(
+            @RequestParam String schoolId,
+            @RequestParam String academicYear,
+            @RequestParam String standard,
+            @RequestParam(required = false) String section,
+            @RequestParam(defaultValue = "false") boolean pendingOnly) {
+
+        try {
+            List<StudentDuesDTO> dues = tcService.getClassDues(schoolId, academicYear, standard, section, pendingOnly);
+            return ResponseEntity.ok(dues);
+        } catch (Exception e) {
+            log.error("Error fetching class dues: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
     @GetMapping("/list")
     public ResponseEntity<?> getTCList(
             @RequestParam String schoolId,
@@ -3,6 +3,8 @@ package com.backend.school_erp.controller.DebitCardReport;
 import com.backend.school_erp.DTO.DebitCardReport.BalanceList2DTO;
 import com.backend.school_erp.DTO.DebitCardReport.BalanceListDTO;
 import com.backend.school_erp.service.DebitCardReport.BalanceListService;
+import com.backend.school_erp.service.Export.ExportFormat;
+import com.backend.school_erp.service.Export.ReportExportService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -17,6 +19,9 @@ public class BalanceListController {
     @Autowired
     private BalanceListService balanceListService;
 
+    @Autowired
+    private ReportExportService reportExportService;
+
     // 1. New Endpoint: Fetch Fee Heads for Dropdown
     @GetMapping("/fee-heads")
     public ResponseEntity<?> getFeeHeads(
@@ -59,4 +64,19 @@ public class BalanceListController {
             return ResponseEntity.badRequest().body(Map.of("error", "Failed to generate Balance List 2: " + e.getMessage()));
         }
     }
+
+    // 4. Balance List 2 as a CSV / XLSX download, streamed student by student
+    @GetMapping("/balance-list-2/export")
+    public ResponseEntity<?> exportBalanceList2(
+            @RequestParam String schoolId,
+            @RequestParam String academicYear,
+            @RequestParam(required = false) String feeHead,
+            @RequestParam(defaultValue = "csv") String format) {
+        try {
+            return reportExportService.download("balance_list_2_" + academicYear, ExportFormat.of(format),
+                    writer -> balanceListService.exportBalanceList2(schoolId, academicYear, feeHead, writer));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Failed to export Balance List 2: " + e.getMessage()));
+        }
+    }
 }
\ No newline at end of file
@@ -1,16 +1,17 @@
 package com.backend.school_erp.controller.DebitCardReport;
 
+import com.backend.school_erp.config.TenantDataSourceRouter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.web.bind.annotation.*;
-import com.zaxxer.hikari.HikariDataSource;
 
 import javax.sql.DataSource;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 @RestController
 @RequestMapping("/api/reports")
@@ -18,28 +19,18 @@ import java.util.concurrent.ConcurrentHashMap;
 @Slf4j
 public class BankExpenseController {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
+    private final TenantDataSourceRouter tenantDataSourceRouter;
 
-    // Helper to create/get DataSource (Simulating your service logic)
+    // Per-school JdbcTemplate from the shared tenant pool
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(createDataSource(schoolId));
-    }
-
-    private DataSource createDataSource(String schoolId) {
-        com.zaxxer.hikari.HikariConfig config = new com.zaxxer.hikari.HikariConfig();
-        // Ensure these match your env/config
-        String dbName = schoolId;
-        config.setJdbcUrl("jdbc:mysql://localhost:3306/" + dbName + "?useSSL=false&allowPublicKeyRetrieval=true&serverTimezone=Asia/Kolkata");
-        config.setUsername("root");
-        config.setPassword("MySQL@3306");
-        return new com.zaxxer.hikari.HikariDataSource(config);
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     @GetMapping("/bank-expenses-summary")
     public ResponseEntity<?> getBankExpensesSummary(
             @RequestParam String schoolId,
-            @RequestParam String fromDate,
-            @RequestParam String toDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fromDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate toDate,
             @RequestParam String academicYear // Added academicYear param
     ) {
 
@@ -59,14 +50,15 @@ public class BankExpenseController {
                 FROM day_book 
                 WHERE school_id = ? 
                 AND academic_year = ? 
-                AND DATE(br_date) BETWEEN ? AND ?
+                AND br_date >= ? AND br_date < ?
                 AND LOWER(mode) IN ('bank', 'online', 'cheque', 'neft', 'rtgs', 'upi', 'card')
                 GROUP BY ledger
                 ORDER BY ledger ASC
             """;
 
             // Passed academicYear to query parameters
-            List<Map<String, Object>> reportData = jdbc.queryForList(sql, schoolId, academicYear, fromDate, toDate);
+            List<Map<String, Object>> reportData = jdbc.queryForList(sql, schoolId, academicYear,
+                    fromDate, toDate.plusDays(1));
 
             return ResponseEntity.ok(reportData);
 
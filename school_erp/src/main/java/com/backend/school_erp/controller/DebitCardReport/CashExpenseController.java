@@ -1,17 +1,17 @@
 package com.backend.school_erp.controller.DebitCardReport;
 
+import com.backend.school_erp.config.TenantDataSourceRouter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.web.bind.annotation.*;
-import com.zaxxer.hikari.HikariDataSource;
 
-import javax.sql.DataSource;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 @RestController
 @RequestMapping("/api/reports")
@@ -23,32 +23,17 @@ public class CashExpenseController {
     // I am implementing the optimized JDBC logic directly here to ensure
     // strict adherence to the grouping logic requested.
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
+    private final TenantDataSourceRouter tenantDataSourceRouter;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        // Reuse your existing DataSource logic here
-        // Assuming you have a mechanism to get the data source per school
-        // For now, I will use a placeholder for the connection logic based on your previous Context
-        return new JdbcTemplate(createDataSource(schoolId));
-    }
-
-    // Helper to create DS (Reuse your existing Service logic for this)
-    private DataSource createDataSource(String schoolId) {
-        // ... (Keep your existing HikariCP logic from PaymentEntryService)
-        // For the sake of this code block, assume this returns the valid DS
-        com.zaxxer.hikari.HikariConfig config = new com.zaxxer.hikari.HikariConfig();
-        String dbName = schoolId; // Or your mapping logic
-        config.setJdbcUrl("jdbc:mysql://localhost:3306/" + dbName + "?useSSL=false&allowPublicKeyRetrieval=true&serverTimezone=Asia/Kolkata");
-        config.setUsername("root"); // Use env vars
-        config.setPassword("MySQL@3306"); // Use env vars
-        return new com.zaxxer.hikari.HikariDataSource(config);
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     @GetMapping("/cash-expenses-summary")
     public ResponseEntity<?> getCashExpensesSummary(
             @RequestParam String schoolId,
-            @RequestParam String fromDate,
-            @RequestParam String toDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fromDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate toDate,
             @RequestParam String academicYear // Added academicYear param
     ) {
 
@@ -69,14 +54,15 @@ public class CashExpenseController {
                 FROM day_book 
                 WHERE school_id = ? 
                 AND academic_year = ? 
-                AND DATE(br_date) BETWEEN ? AND ?
+                AND br_date >= ? AND br_date < ?
                 AND LOWER(mode) = 'cash'
                 GROUP BY ledger
                 ORDER BY ledger ASC
             """;
 
             // Passed academicYear to query params
-            List<Map<String, Object>> reportData = jdbc.queryForList(sql, schoolId, academicYear, fromDate, toDate);
+            List<Map<String, Object>> reportData = jdbc.queryForList(sql, schoolId, academicYear,
+                    fromDate, toDate.plusDays(1));
 
             return ResponseEntity.ok(reportData);
 
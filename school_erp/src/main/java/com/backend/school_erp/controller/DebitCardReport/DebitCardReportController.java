@@ -3,9 +3,11 @@ package com.backend.school_erp.controller.DebitCardReport;
 import com.backend.school_erp.DTO.DebitCardReport.LedgerReportDTO;
 import com.backend.school_erp.service.DebitCardReport.DebitCardReportService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
 import java.util.List;
 
 @RestController
@@ -18,7 +20,7 @@ public class DebitCardReportController {
     @GetMapping("/day-ledger")
     public ResponseEntity<List<LedgerReportDTO>> getDayLedger(
             @RequestParam String schoolId,
-            @RequestParam String date,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
             @RequestParam String academicYear, // Added Param
             @RequestParam(defaultValue = "ACADEMIC") String type) {
         return ResponseEntity.ok(service.getDayLedger(schoolId, date, academicYear, type));
@@ -27,8 +29,8 @@ public class DebitCardReportController {
     @GetMapping("/period-ledger")
     public ResponseEntity<List<LedgerReportDTO>> getPeriodLedger(
             @RequestParam String schoolId,
-            @RequestParam String fromDate,
-            @RequestParam String toDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fromDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate toDate,
             @RequestParam String academicYear, // Added Param
             @RequestParam(required = false) String head,
             @RequestParam(defaultValue = "ACADEMIC") String type) {
@@ -38,8 +40,8 @@ public class DebitCardReportController {
     @GetMapping("/bank-ledger")
     public ResponseEntity<List<LedgerReportDTO>> getBankLedger(
             @RequestParam String schoolId,
-            @RequestParam String fromDate,
-            @RequestParam String toDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fromDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate toDate,
             @RequestParam String academicYear, // Added Param
             @RequestParam(required = false) String head,
             @RequestParam(defaultValue = "ACADEMIC") String type) {
@@ -49,8 +51,8 @@ public class DebitCardReportController {
     @GetMapping("/expenses")
     public ResponseEntity<List<LedgerReportDTO>> getExpenses(
             @RequestParam String schoolId,
-            @RequestParam String fromDate,
-            @RequestParam String toDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fromDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate toDate,
             @RequestParam String mode,
             @RequestParam String academicYear, // Added Param
             @RequestParam(defaultValue = "ACADEMIC") String type) {
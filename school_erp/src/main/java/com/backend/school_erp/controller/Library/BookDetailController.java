@@ -1,12 +1,16 @@
 package com.backend.school_erp.controller.Library;
 
+import com.backend.school_erp.DTO.KeysetPage;
 import com.backend.school_erp.DTO.Library.BookDetailDTO;
 import com.backend.school_erp.entity.Library.BookDetail;
 import com.backend.school_erp.service.Library.BookDetailService;
+import com.backend.school_erp.service.Media.MediaFile;
+import com.backend.school_erp.service.Media.MediaStore;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
@@ -17,6 +21,7 @@ import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 @RestController
@@ -27,6 +32,7 @@ import java.util.stream.Collectors;
 public class BookDetailController {
 
     private final BookDetailService bookDetailService;
+    private final MediaStore mediaStore;
 
     // New endpoint to generate auto Book ID
     @GetMapping("/generate-book-id")
@@ -137,6 +143,31 @@ public class BookDetailController {
         }
     }
 
+    // Paged books list without cover photos; covers come from /{id}/photo
+    @GetMapping("/page")
+    public ResponseEntity<KeysetPage<BookDetailDTO>> getBooksPage(
+            @RequestParam("schoolId") String schoolId,
+            @RequestParam("academicYear") String academicYear,
+            @RequestParam(value = "search", required = false) String search,
+            @RequestParam(value = "category", required = false) String category,
+            @RequestParam(value = "bookStatus", required = false) String bookStatus,
+            @RequestParam(value = "sort", required = false) String sort,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", required = false) Integer limit
+    ) {
+        try {
+            KeysetPage<BookDetail> page = bookDetailService.getBooksPage(
+                    schoolId, academicYear, search, category, bookStatus, sort, cursor, limit);
+            return ResponseEntity.ok(page.map(this::convertToDTO));
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid books page request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("Failed to fetch books page: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<BookDetailDTO> getBookById(
             @PathVariable Long id,
@@ -240,21 +271,25 @@ public class BookDetailController {
     }
 
     @GetMapping("/{id}/photo")
-    public ResponseEntity<byte[]> getBookCoverPhoto(
+    public void getBookCoverPhoto(
             @PathVariable Long id,
-            @RequestParam("schoolId") String schoolId
+            @RequestParam("schoolId") String schoolId,
+            @RequestParam(value = "thumbnail", defaultValue = "false") boolean thumbnail,
+            HttpServletRequest request,
+            HttpServletResponse response
     ) {
         try {
-            BookDetail book = bookDetailService.getBookById(schoolId, id);
-            if (book.getBookCoverPhoto() == null || book.getBookCoverPhoto().length == 0) {
-                return ResponseEntity.notFound().build();
+            Optional<MediaFile> coverPhoto = bookDetailService.findBookCoverPhoto(schoolId, id, thumbnail);
+            if (coverPhoto.isEmpty()) {
+                response.setStatus(HttpStatus.NOT_FOUND.value());
+                return;
             }
-            return ResponseEntity.ok()
-                    .contentType(MediaType.IMAGE_JPEG)
-                    .body(book.getBookCoverPhoto());
+            mediaStore.send(coverPhoto.get(), request, response);
         } catch (Exception e) {
             log.error("Failed to fetch book cover photo: {}", e.getMessage());
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+            if (!response.isCommitted()) {
+                response.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
+            }
         }
     }
 
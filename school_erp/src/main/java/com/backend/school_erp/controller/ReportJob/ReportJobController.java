@@ -0,0 +1,94 @@
+package com.backend.school_erp.controller.ReportJob;
+
+import com.backend.school_erp.service.ReportJob.ReportJob;
+import com.backend.school_erp.service.ReportJob.ReportJobService;
+import com.backend.school_erp.service.ReportJob.ReportJobStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Background runs of the heavy reports. Submit with the same parameters as the report's own
+ * endpoint, poll the job until it is DONE, then fetch its result:
+ *
+ * POST /api/report-jobs/balance-list-4?schoolId=..&academicYear=..   -> 202 + job
+ * GET  /api/report-jobs/{jobId}?schoolId=..                          -> job status and progress
+ * GET  /api/report-jobs/{jobId}/result?schoolId=..                   -> report JSON
+ */
+@RestController
+@RequestMapping("/api/report-jobs")
+@Slf4j
+public class ReportJobController {
+
+    @Autowired
+    private ReportJobService reportJobService;
+
+    // report: balance-list-4, stock-report, periodical-collection, trial-balance, promotion or fee-reapplication
+    @PostMapping("/{report}")
+    public ResponseEntity<?> submit(
+            @PathVariable String report,
+            @RequestParam String schoolId,
+            @RequestParam MultiValueMap<String, String> params) {
+
+        Map<String, List<String>> reportParams = new LinkedHashMap<>(params);
+        reportParams.remove("schoolId");
+        try {
+            ReportJob job = reportJobService.submit(schoolId, report, reportParams);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "60")
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping
+    public ResponseEntity<?> list(@RequestParam String schoolId) {
+        try {
+            return ResponseEntity.ok(reportJobService.list(schoolId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/{jobId}")
+    public ResponseEntity<?> status(@PathVariable String jobId, @RequestParam String schoolId) {
+        try {
+            return ResponseEntity.of(reportJobService.find(schoolId, jobId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/{jobId}/result")
+    public ResponseEntity<?> result(
+            @PathVariable String jobId,
+            @RequestParam String schoolId,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+
+        try {
+            Optional<ReportJob> job = reportJobService.find(schoolId, jobId);
+            if (job.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            if (job.get().getStatus() != ReportJobStatus.DONE) {
+                // Still running, or failed: the body says which
+                return ResponseEntity.status(HttpStatus.CONFLICT).body(job.get());
+            }
+            return reportJobService.download(job.get(), acceptEncoding);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+}
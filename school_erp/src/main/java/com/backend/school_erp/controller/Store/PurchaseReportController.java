@@ -1,6 +1,8 @@
 package com.backend.school_erp.controller.Store;
 
 import com.backend.school_erp.entity.Store.TabPurchase;
+import com.backend.school_erp.service.Export.ExportFormat;
+import com.backend.school_erp.service.Export.ReportExportService;
 import com.backend.school_erp.service.Store.PurchaseReportService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.format.annotation.DateTimeFormat;
@@ -18,6 +20,7 @@ import java.util.Map;
 public class PurchaseReportController {
 
     private final PurchaseReportService service;
+    private final ReportExportService reportExportService;
 
     @GetMapping("/suppliers")
     public ResponseEntity<List<Map<String, Object>>> getSuppliers(@RequestParam String schoolId) {
@@ -50,4 +53,18 @@ public class PurchaseReportController {
 
         return ResponseEntity.ok(service.getAllPurchases(schoolId));
     }
+
+    // Export all purchases as a CSV / XLSX download
+    @GetMapping("/all/export")
+    public ResponseEntity<?> exportAllPurchases(
+            @RequestParam String schoolId,
+            @RequestParam(defaultValue = "csv") String format) {
+
+        try {
+            return reportExportService.download("purchases", ExportFormat.of(format),
+                    writer -> service.exportAllPurchases(schoolId, writer));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
 }
\ No newline at end of file
@@ -5,9 +5,11 @@ import com.backend.school_erp.entity.Transaction.PaymentEntry;
 import com.backend.school_erp.service.Transaction.PaymentEntryService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -157,8 +159,8 @@ public class PaymentEntryController {
     public ResponseEntity<List<Map<String, Object>>> getDayBookSummary(
             @RequestParam String schoolId,
             @RequestParam String academicYear,
-            @RequestParam(required = false) String fromDate,
-            @RequestParam(required = false) String toDate) {
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fromDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate toDate) {
         try {
             List<Map<String, Object>> summary = paymentEntryService.getDayBookSummary(
                     schoolId, academicYear, fromDate, toDate
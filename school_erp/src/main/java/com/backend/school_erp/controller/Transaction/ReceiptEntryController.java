@@ -2,12 +2,16 @@ package com.backend.school_erp.controller.Transaction;
 
 import com.backend.school_erp.DTO.Transaction.ReceiptEntryDTO;
 import com.backend.school_erp.entity.Transaction.ReceiptEntry;
+import com.backend.school_erp.service.Export.ExportFormat;
+import com.backend.school_erp.service.Export.ReportExportService;
 import com.backend.school_erp.service.Transaction.ReceiptEntryService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -20,6 +24,9 @@ public class ReceiptEntryController {
     @Autowired
     private ReceiptEntryService receiptEntryService;
 
+    @Autowired
+    private ReportExportService reportExportService;
+
     /** Get last receipt number */
     @GetMapping("/last-receipt")
     public ResponseEntity<Map<String, Object>> getLastReceiptNo(
@@ -238,13 +245,31 @@ public class ReceiptEntryController {
         }
     }
 
+    /** Download all receipts with day book references as CSV / XLSX */
+    @GetMapping("/all-with-daybook/export")
+    public ResponseEntity<?> exportAllReceiptsWithDayBook(
+            @RequestParam String schoolId,
+            @RequestParam String academicYear,
+            @RequestParam(defaultValue = "csv") String format) {
+        try {
+            return reportExportService.download("receipts_" + academicYear, ExportFormat.of(format),
+                    writer -> receiptEntryService.exportReceiptsWithDayBook(schoolId, academicYear, writer));
+        } catch (Exception e) {
+            log.error("Error exporting receipts for school: {}", schoolId, e);
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "error", e.getMessage()
+            ));
+        }
+    }
+
     /** Get day book summary for receipts */
     @GetMapping("/daybook-summary")
     public ResponseEntity<?> getDayBookSummary(
             @RequestParam String schoolId,
             @RequestParam String academicYear,
-            @RequestParam(required = false) String fromDate,
-            @RequestParam(required = false) String toDate) {
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fromDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate toDate) {
         try {
             List<Map<String, Object>> summary = receiptEntryService.getDayBookSummary(
                     schoolId, academicYear, fromDate, toDate
@@ -116,6 +116,26 @@ public class BusBillEntryController {
         }
     }
 
+    // Paged bus bills, newest first; a bill's payment breakdown comes from the single bill endpoint
+    @GetMapping("/school/page")
+    public ResponseEntity<?> getBusBillEntriesPage(
+            @RequestParam String schoolId,
+            @RequestParam(required = false) String academicYear,
+            @RequestParam(required = false) String search,
+            @RequestParam(required = false) String paymentMode,
+            @RequestParam(required = false) String routeNumber,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        try {
+            return ResponseEntity.ok(busBillEntryService.getBusBillEntriesPage(
+                    schoolId, academicYear, search, paymentMode, routeNumber, sort, cursor, limit));
+        } catch (Exception e) {
+            log.error("Error fetching bus bill entries page: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", "Failed to fetch bus bill entries: " + e.getMessage()));
+        }
+    }
+
     @GetMapping("/admission/{admissionNumber}")
     public ResponseEntity<?> getBusBillEntriesByAdmissionNumber(
             @PathVariable String admissionNumber,
@@ -11,6 +11,7 @@ public class Admission {
     private String admissionNumber;
     private byte[] studentPhoto;
     private String studentPhotoContentType;
+    private String studentPhotoRef;      // Media store reference of the photo
     private String studentName;
     private String fatherName;
     private String motherName;
@@ -16,6 +16,7 @@ public class Enquiry {
     private String admissionNumber;
     private byte[] studentPhoto;
     private String studentPhotoContentType;
+    private String studentPhotoRef;      // Media store reference of the photo
     private String studentName;
     private String fatherName;
     private String motherName;
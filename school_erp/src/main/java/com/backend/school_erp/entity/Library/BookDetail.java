@@ -13,6 +13,7 @@ public class BookDetail {
     private String bookId;
     private String isbn;
     private byte[] bookCoverPhoto;
+    private String bookCoverPhotoRef;
     private String bookTitle;
     private String authorName;
     private String category;
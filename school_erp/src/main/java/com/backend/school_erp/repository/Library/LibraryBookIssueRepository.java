@@ -1,5 +1,7 @@
 package com.backend.school_erp.repository.Library;
 
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
 import com.backend.school_erp.entity.Library.LibraryBookIssue;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
@@ -14,64 +16,55 @@ import java.util.Optional;
 @Repository
 public class LibraryBookIssueRepository {
 
-    public LibraryBookIssueRepository() {
-        // Constructor without JdbcTemplate
-    }
+    private final TenantDataSourceRouter tenantDataSourceRouter;
+    private final TenantSchemaMigrator schemaMigrator;
 
-    private JdbcTemplate getJdbcTemplate(String schoolId) {
-        // Create JdbcTemplate dynamically for each school database
-        return new JdbcTemplate(createDataSource(schoolId));
+    public LibraryBookIssueRepository(TenantDataSourceRouter tenantDataSourceRouter, TenantSchemaMigrator schemaMigrator) {
+        this.tenantDataSourceRouter = tenantDataSourceRouter;
+        this.schemaMigrator = schemaMigrator;
     }
 
-    private javax.sql.DataSource createDataSource(String schoolId) {
-        com.zaxxer.hikari.HikariConfig config = new com.zaxxer.hikari.HikariConfig();
-        config.setJdbcUrl("jdbc:mysql://localhost:3306/" + schoolId + "?useSSL=false&allowPublicKeyRetrieval=true");
-        config.setUsername("root");
-        config.setPassword("MySQL@3306");
-        config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-        config.setMaximumPoolSize(10);
-        config.setMinimumIdle(2);
-        config.setIdleTimeout(30000);
-        config.setMaxLifetime(1800000);
-        config.setConnectionTimeout(10000);
-        return new com.zaxxer.hikari.HikariDataSource(config);
+    private JdbcTemplate getJdbcTemplate(String schoolId) {
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     public void ensureTableExists(String schoolId) {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
-        String sql = """
-            CREATE TABLE IF NOT EXISTS library_book_issues (
-                id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                admission_number VARCHAR(50) NOT NULL,
-                student_name VARCHAR(255) NOT NULL,
-                standard VARCHAR(50) NOT NULL,
-                section VARCHAR(50) NOT NULL,
-                membership_id VARCHAR(100) NOT NULL,
+        schemaMigrator.migrate(jdbc, "LibraryBookIssueRepository", 1, () -> {
+            String sql = """
+                CREATE TABLE IF NOT EXISTS library_book_issues (
+                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    admission_number VARCHAR(50) NOT NULL,
+                    student_name VARCHAR(255) NOT NULL,
+                    standard VARCHAR(50) NOT NULL,
+                    section VARCHAR(50) NOT NULL,
+                    membership_id VARCHAR(100) NOT NULL,
                 
-                book_id VARCHAR(50) NOT NULL,
-                book_title VARCHAR(255) NOT NULL,
-                author_name VARCHAR(255),
-                isbn VARCHAR(20),
+                    book_id VARCHAR(50) NOT NULL,
+                    book_title VARCHAR(255) NOT NULL,
+                    author_name VARCHAR(255),
+                    isbn VARCHAR(20),
                 
-                issued_date DATE NOT NULL,
-                due_date DATE NOT NULL,
-                returned_date DATE,
-                status VARCHAR(20) DEFAULT 'ISSUED',
+                    issued_date DATE NOT NULL,
+                    due_date DATE NOT NULL,
+                    returned_date DATE,
+                    status VARCHAR(20) DEFAULT 'ISSUED',
                 
-                fine_amount DECIMAL(10,2) DEFAULT 0.0,
-                remarks TEXT,
+                    fine_amount DECIMAL(10,2) DEFAULT 0.0,
+                    remarks TEXT,
                 
-                school_id VARCHAR(50) NOT NULL,
-                academic_year VARCHAR(50) NOT NULL,
-                created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+                    school_id VARCHAR(50) NOT NULL,
+                    academic_year VARCHAR(50) NOT NULL,
+                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
                 
-                INDEX idx_member (admission_number, school_id, academic_year),
-                INDEX idx_book (book_id, school_id, academic_year),
-                INDEX idx_status (status, school_id)
-            )
-        """;
-        jdbc.execute(sql);
+                    INDEX idx_member (admission_number, school_id, academic_year),
+                    INDEX idx_book (book_id, school_id, academic_year),
+                    INDEX idx_status (status, school_id)
+                )
+            """;
+            jdbc.execute(sql);
+        });
     }
 
     public LibraryBookIssue save(LibraryBookIssue issue, String schoolId) {
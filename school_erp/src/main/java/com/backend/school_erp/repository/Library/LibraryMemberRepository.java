@@ -1,5 +1,7 @@
 package com.backend.school_erp.repository.Library;
 
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
 import com.backend.school_erp.entity.Library.LibraryMember;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
@@ -14,56 +16,45 @@ import java.util.Optional;
 @Repository
 public class LibraryMemberRepository {
 
-    // Remove JdbcTemplate injection - we'll create it dynamically per school
+    private final TenantDataSourceRouter tenantDataSourceRouter;
+    private final TenantSchemaMigrator schemaMigrator;
 
-    public LibraryMemberRepository() {
-        // Constructor without JdbcTemplate
+    public LibraryMemberRepository(TenantDataSourceRouter tenantDataSourceRouter, TenantSchemaMigrator schemaMigrator) {
+        this.tenantDataSourceRouter = tenantDataSourceRouter;
+        this.schemaMigrator = schemaMigrator;
     }
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        // Create JdbcTemplate dynamically for each school database
-        return new JdbcTemplate(createDataSource(schoolId));
-    }
-
-    private javax.sql.DataSource createDataSource(String schoolId) {
-        com.zaxxer.hikari.HikariConfig config = new com.zaxxer.hikari.HikariConfig();
-        config.setJdbcUrl("jdbc:mysql://localhost:3306/" + schoolId + "?useSSL=false&allowPublicKeyRetrieval=true");
-        config.setUsername("root");
-        config.setPassword("MySQL@3306");
-        config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-        config.setMaximumPoolSize(10);
-        config.setMinimumIdle(2);
-        config.setIdleTimeout(30000);
-        config.setMaxLifetime(1800000);
-        config.setConnectionTimeout(10000);
-        return new com.zaxxer.hikari.HikariDataSource(config);
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     public void ensureTableExists(String schoolId) {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
-        String sql = """
-            CREATE TABLE IF NOT EXISTS library_members (
-                id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                admission_number VARCHAR(50) NOT NULL,
-                student_name VARCHAR(255) NOT NULL,
-                standard VARCHAR(50) NOT NULL,
-                section VARCHAR(50) NOT NULL,
-                father_name VARCHAR(255),
-                phone_number VARCHAR(20),
-                email VARCHAR(100),
-                membership_id VARCHAR(100) NOT NULL UNIQUE,
-                membership_start_date DATE NOT NULL,
-                membership_end_date DATE NOT NULL,
-                membership_status VARCHAR(20) DEFAULT 'ACTIVE',
-                max_books_allowed INT DEFAULT 3,
-                school_id VARCHAR(50) NOT NULL,
-                academic_year VARCHAR(50) NOT NULL,
-                created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
-                UNIQUE KEY unique_member (admission_number, school_id, academic_year)
-            )
-        """;
-        jdbc.execute(sql);
+        schemaMigrator.migrate(jdbc, "LibraryMemberRepository", 1, () -> {
+            String sql = """
+                CREATE TABLE IF NOT EXISTS library_members (
+                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    admission_number VARCHAR(50) NOT NULL,
+                    student_name VARCHAR(255) NOT NULL,
+                    standard VARCHAR(50) NOT NULL,
+                    section VARCHAR(50) NOT NULL,
+                    father_name VARCHAR(255),
+                    phone_number VARCHAR(20),
+                    email VARCHAR(100),
+                    membership_id VARCHAR(100) NOT NULL UNIQUE,
+                    membership_start_date DATE NOT NULL,
+                    membership_end_date DATE NOT NULL,
+                    membership_status VARCHAR(20) DEFAULT 'ACTIVE',
+                    max_books_allowed INT DEFAULT 3,
+                    school_id VARCHAR(50) NOT NULL,
+                    academic_year VARCHAR(50) NOT NULL,
+                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+                    UNIQUE KEY unique_member (admission_number, school_id, academic_year)
+                )
+            """;
+            jdbc.execute(sql);
+        });
     }
 
     public LibraryMember save(LibraryMember member, String schoolId) {
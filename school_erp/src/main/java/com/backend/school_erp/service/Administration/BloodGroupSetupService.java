@@ -1,70 +1,53 @@
 package com.backend.school_erp.service.Administration;
 
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
 import com.backend.school_erp.DTO.Administration.BloodGroupSetupDTO;
 import com.backend.school_erp.entity.Administration.BloodGroupSetup;
 import com.backend.school_erp.config.DatabaseConfig; // 1. Importing the config
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import javax.sql.DataSource;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 
 @Service
 @Slf4j
 public class BloodGroupSetupService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
-
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            log.info("Creating HikariCP DataSource for school: {} on AWS RDS", id);
-
-            HikariConfig config = new HikariConfig();
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
 
-            // 2. Using AWS DB Constants from DatabaseConfig
-            // Appends the schoolId (database name) to the base AWS URL
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName(DatabaseConfig.JDBC_DRIVER);
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
 
-            // Connection Pool Settings
-            config.setMaximumPoolSize(10);
-            config.setMinimumIdle(2);
-            config.setIdleTimeout(30000);
-            config.setMaxLifetime(1800000);
-            config.setConnectionTimeout(10000);
-
-            return new HikariDataSource(config);
-        });
-    }
+    @Autowired
+    private MasterDataCache masterDataCache;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     private void ensureTableExists(JdbcTemplate jdbc) {
-        try {
-            jdbc.execute("""
-                CREATE TABLE IF NOT EXISTS blood_groups (
-                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                    blood_group VARCHAR(50) NOT NULL,
-                    school_id VARCHAR(50) NOT NULL,
-                    academic_year VARCHAR(50) NOT NULL,
-                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                    UNIQUE KEY unique_blood_group (blood_group, school_id, academic_year)
-                )
-            """);
-        } catch (Exception e) {
-            log.error("Failed to create blood_groups table: {}", e.getMessage());
-            throw new RuntimeException("Database table creation failed", e);
-        }
+        schemaMigrator.migrate(jdbc, "BloodGroupSetupService", 1, () -> {
+            try {
+                jdbc.execute("""
+                    CREATE TABLE IF NOT EXISTS blood_groups (
+                        id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                        blood_group VARCHAR(50) NOT NULL,
+                        school_id VARCHAR(50) NOT NULL,
+                        academic_year VARCHAR(50) NOT NULL,
+                        created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                        UNIQUE KEY unique_blood_group (blood_group, school_id, academic_year)
+                    )
+                """);
+            } catch (Exception e) {
+                log.error("Failed to create blood_groups table: {}", e.getMessage());
+                throw new RuntimeException("Database table creation failed", e);
+            }
+        });
     }
 
     public List<BloodGroupSetup> getBloodGroups(String schoolId, String academicYear) {
@@ -105,6 +88,7 @@ public class BloodGroupSetupService {
                     "INSERT INTO blood_groups (blood_group, school_id, academic_year) VALUES (?, ?, ?)",
                     dto.getBloodGroup(), schoolId, dto.getAcademicYear()
             );
+            masterDataCache.invalidate(schoolId, "blood_groups");
 
             if (rows == 0) {
                 throw new RuntimeException("Failed to insert blood group");
@@ -145,6 +129,7 @@ public class BloodGroupSetupService {
                     "UPDATE blood_groups SET blood_group = ?, academic_year = ? WHERE id = ? AND school_id = ?",
                     dto.getBloodGroup(), dto.getAcademicYear(), id, schoolId
             );
+            masterDataCache.invalidate(schoolId, "blood_groups");
 
             if (rows == 0) {
                 return Optional.empty();
@@ -170,6 +155,7 @@ public class BloodGroupSetupService {
             ensureTableExists(jdbc);
 
             int rows = jdbc.update("DELETE FROM blood_groups WHERE id = ? AND school_id = ?", id, schoolId);
+            masterDataCache.invalidate(schoolId, "blood_groups");
             boolean deleted = rows > 0;
             log.info("Delete operation for blood group ID {}: {}", id, deleted ? "successful" : "not found");
             return deleted;
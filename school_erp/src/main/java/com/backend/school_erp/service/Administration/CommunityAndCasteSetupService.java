@@ -1,64 +1,50 @@
 package com.backend.school_erp.service.Administration;
 
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
 import com.backend.school_erp.DTO.Administration.CommunityAndCasteSetupDTO;
 import com.backend.school_erp.entity.Administration.CommunityAndCasteSetup;
 import com.backend.school_erp.config.DatabaseConfig; // Imported Config
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import javax.sql.DataSource;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 
 @Service
 @Slf4j
 public class CommunityAndCasteSetupService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
-
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            log.info("Creating HikariCP DataSource for school: {} on AWS RDS", id);
-            HikariConfig config = new HikariConfig();
-
-            // Using AWS DB Constants from DatabaseConfig
-            // The URL is constructed as: base_url + schoolId + params
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName(DatabaseConfig.JDBC_DRIVER);
-
-            config.setMaximumPoolSize(10);
-            config.setMinimumIdle(2);
-            config.setIdleTimeout(30000);
-            config.setMaxLifetime(1800000);
-            config.setConnectionTimeout(10000);
-            return new HikariDataSource(config);
-        });
-    }
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
+
+    @Autowired
+    private MasterDataCache masterDataCache;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     private void ensureTableExists(JdbcTemplate jdbc) {
-        jdbc.execute("""
-            CREATE TABLE IF NOT EXISTS community_caste (
-                id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                name VARCHAR(255) NOT NULL,
-                type VARCHAR(50) NOT NULL,
-                school_id VARCHAR(50) NOT NULL,
-                academic_year VARCHAR(50) NOT NULL,
-                created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                UNIQUE KEY unique_entry (name, type, school_id, academic_year)
-            )
-        """);
+        schemaMigrator.migrate(jdbc, "CommunityAndCasteSetupService", 1, () -> {
+            jdbc.execute("""
+                CREATE TABLE IF NOT EXISTS community_caste (
+                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    name VARCHAR(255) NOT NULL,
+                    type VARCHAR(50) NOT NULL,
+                    school_id VARCHAR(50) NOT NULL,
+                    academic_year VARCHAR(50) NOT NULL,
+                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    UNIQUE KEY unique_entry (name, type, school_id, academic_year)
+                )
+            """);
+        });
     }
 
     public List<CommunityAndCasteSetup> getAll(String schoolId, String academicYear, String type) {
@@ -79,6 +65,7 @@ public class CommunityAndCasteSetupService {
                 "INSERT IGNORE INTO community_caste (name, type, school_id, academic_year) VALUES (?, ?, ?, ?)",
                 dto.getName(), dto.getType(), dto.getSchoolId(), dto.getAcademicYear()
         );
+        masterDataCache.invalidate(dto.getSchoolId(), "community_caste");
         if (rows == 0) {
             throw new RuntimeException(dto.getType() + " entry already exists: " + dto.getName());
         }
@@ -99,6 +86,7 @@ public class CommunityAndCasteSetupService {
         ensureTableExists(jdbc);
 
         int rows = jdbc.update("UPDATE community_caste SET name=? WHERE id=?", newName, id);
+        masterDataCache.invalidate(schoolId, "community_caste");
         if (rows == 0) return Optional.empty();
 
         return Optional.ofNullable(jdbc.queryForObject(
@@ -111,7 +99,9 @@ public class CommunityAndCasteSetupService {
     public boolean delete(String schoolId, Long id) {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
         ensureTableExists(jdbc);
-        return jdbc.update("DELETE FROM community_caste WHERE id=?", id) > 0;
+        int rows = jdbc.update("DELETE FROM community_caste WHERE id=?", id);
+        masterDataCache.invalidate(schoolId, "community_caste");
+        return rows > 0;
     }
 
     public void ensureTenant(String schoolId) {
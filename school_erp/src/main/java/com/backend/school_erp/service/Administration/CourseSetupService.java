@@ -1,70 +1,56 @@
 package com.backend.school_erp.service.Administration;
 
 // 1. Imported the centralized configuration
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
 
 import com.backend.school_erp.DTO.Administration.CourseSetupDTO;
 import com.backend.school_erp.entity.Administration.CourseSetup;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
 import javax.sql.DataSource;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 
 @Service
 @Slf4j
 public class CourseSetupService {
 
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
+
+    @Autowired
+    private MasterDataCache masterDataCache;
+
     /** Cache of DataSources per school */
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
 
     /** Get pooled DataSource for a school (creates if missing) */
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            log.info("🔗 Creating HikariCP DataSource for school: {}", id);
-
-            HikariConfig config = new HikariConfig();
-
-            // 1. Using centralized AWS DB Connection constants
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName(DatabaseConfig.JDBC_DRIVER);
-
-            // --- Pool tuning (safe defaults) ---
-            config.setMaximumPoolSize(10);    // max 10 connections per school
-            config.setMinimumIdle(2);
-            config.setIdleTimeout(30000);     // 30 sec
-            config.setMaxLifetime(1800000);   // 30 min
-            config.setConnectionTimeout(10000); // 10 sec wait before timeout
-
-            return new HikariDataSource(config);
-        });
-    }
 
     /** Get JdbcTemplate for a school */
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     /** Ensure table exists */
     private void ensureTableExists(JdbcTemplate jdbc) {
-        jdbc.execute("""
-            CREATE TABLE IF NOT EXISTS courses (
-                id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                standard VARCHAR(50) NOT NULL,
-                school_id VARCHAR(50) NOT NULL,
-                academic_year VARCHAR(50) NOT NULL,
-                created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                UNIQUE KEY unique_course (standard, school_id, academic_year)
-            )
-        """);
+        schemaMigrator.migrate(jdbc, "CourseSetupService", 1, () -> {
+            jdbc.execute("""
+                CREATE TABLE IF NOT EXISTS courses (
+                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    standard VARCHAR(50) NOT NULL,
+                    school_id VARCHAR(50) NOT NULL,
+                    academic_year VARCHAR(50) NOT NULL,
+                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    UNIQUE KEY unique_course (standard, school_id, academic_year)
+                )
+            """);
+        });
     }
 
     /** Get all courses */
@@ -87,6 +73,7 @@ public class CourseSetupService {
                 "INSERT IGNORE INTO courses (standard, school_id, academic_year) VALUES (?, ?, ?)",
                 dto.getStandard(), schoolId, dto.getAcademicYear()
         );
+        masterDataCache.invalidate(schoolId, "courses");
 
         if (rows == 0) {
             throw new RuntimeException("Course already exists: " + dto.getStandard());
@@ -107,6 +94,7 @@ public class CourseSetupService {
         ensureTableExists(jdbc);
 
         int rows = jdbc.update("UPDATE courses SET standard = ? WHERE id = ?", standard, id);
+        masterDataCache.invalidate(schoolId, "courses");
         if (rows == 0) return Optional.empty();
 
         return Optional.ofNullable(jdbc.queryForObject(
@@ -122,6 +110,7 @@ public class CourseSetupService {
         ensureTableExists(jdbc);
 
         int rows = jdbc.update("DELETE FROM courses WHERE id = ?", id);
+        masterDataCache.invalidate(schoolId, "courses");
         return rows > 0;
     }
 }
\ No newline at end of file
@@ -0,0 +1,16 @@
+package com.backend.school_erp.service.Administration;
+
+/**
+ * What a fee head is charged for, as the balance and collection reports group it.
+ */
+public enum FeeHeadCategory {
+    // Tuition fee heads (fee_heads, tuition_fees_<year>)
+    ACADEMIC,
+    HOSTEL,
+    // Bus / van fee heads (bus_van_fee_heads, transport_fees_<year>)
+    TRANSPORT,
+    // Miscellaneous and individual fee heads
+    MISC,
+    // A previous year's balance carried into the year as "<head> (<year>)"
+    ARREAR
+}
@@ -0,0 +1,191 @@
+package com.backend.school_erp.service.Administration;
+
+import com.backend.school_erp.config.SchoolDataChangedEvent;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantTableCatalog;
+import com.backend.school_erp.service.Transaction.FeeDemandService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per school and year, which category every fee head belongs to, so the reports classify
+ * payments with a map lookup instead of DISTINCT scans of the fee tables and guesses from the
+ * head's name.
+ *
+ * A year's {@link FeeHeadTaxonomy} is built from the fee head setup tables (tuition, hostel,
+ * bus / van and miscellaneous heads), then from the heads actually billed in the year: a billed
+ * head takes the category of the fee table it is billed through, which is also where the reports
+ * take its demand from. Heads of individual fees and miscellaneous collections are added last.
+ *
+ * Taxonomies are kept until the fee head setup of the school changes, or a
+ * {@link SchoolDataChangedEvent} reports new demand or collections for the year; like the other
+ * master data they are also rebuilt after {@code master-data.cache.ttl-seconds}.
+ */
+@Service
+@Slf4j
+public class FeeHeadRegistry {
+
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private TenantTableCatalog tableCatalog;
+
+    @Autowired
+    private FeeDemandService feeDemandService;
+
+    @Value("${master-data.cache.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    // Bumped by setup writes (every year of the school) and by data changes (one year)
+    private final Map<String, Long> schoolVersions = new ConcurrentHashMap<>();
+    private final Map<Key, Long> yearVersions = new ConcurrentHashMap<>();
+
+    public FeeHeadTaxonomy forYear(String schoolId, String academicYear) {
+        Key key = new Key(schoolId, FeeDemandService.yearKey(academicYear));
+        long schoolVersion = schoolVersions.getOrDefault(schoolId, 0L);
+        long yearVersion = yearVersions.getOrDefault(key, 0L);
+
+        Entry entry = entries.get(key);
+        if (entry != null && entry.schoolVersion() == schoolVersion && entry.yearVersion() == yearVersion
+                && entry.expiresAt() > System.currentTimeMillis()) {
+            return entry.taxonomy();
+        }
+
+        FeeHeadTaxonomy taxonomy = build(tenantDataSourceRouter.getJdbcTemplate(schoolId), academicYear);
+        entries.put(key, new Entry(schoolVersion, yearVersion, taxonomy, System.currentTimeMillis() + ttlSeconds * 1000));
+        return taxonomy;
+    }
+
+    /**
+     * Call after writing to one of the school's fee head setup tables.
+     */
+    public void invalidate(String schoolId) {
+        schoolVersions.merge(schoolId, 1L, Long::sum);
+        entries.keySet().removeIf(key -> key.schoolId().equals(schoolId));
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMPLETION, fallbackExecution = true)
+    public void onSchoolDataChanged(SchoolDataChangedEvent event) {
+        if (event.schoolId() == null) {
+            return;
+        }
+        if (event.academicYear() == null) {
+            invalidate(event.schoolId());
+            return;
+        }
+        Key key = new Key(event.schoolId(), FeeDemandService.yearKey(event.academicYear()));
+        yearVersions.merge(key, 1L, Long::sum);
+        entries.remove(key);
+    }
+
+    private FeeHeadTaxonomy build(JdbcTemplate jdbc, String academicYear) {
+        String yearKey = FeeDemandService.yearKey(academicYear);
+        Map<String, FeeHeadCategory> categories = new HashMap<>();
+        Set<String> transportHeads = new HashSet<>();
+
+        // 1. Setup
+        addSetupHeads(jdbc, "fee_heads", "academic_year", yearKey, FeeHeadCategory.ACADEMIC, categories);
+        addSetupHeads(jdbc, "hostel_fee_heads", "year", yearKey, FeeHeadCategory.HOSTEL, categories);
+        addSetupHeads(jdbc, "bus_van_fee_heads", "academic_year", yearKey, FeeHeadCategory.TRANSPORT, categories);
+        addSetupHeads(jdbc, "miscellaneous_fee_heads", "academic_year", yearKey, FeeHeadCategory.MISC, categories);
+
+        // 2. Billed heads, by the fee table they are billed through
+        SortedSet<String> billedHeads = new TreeSet<>();
+        feeDemandService.getFeeHeadsByType(jdbc, academicYear).forEach((feeType, heads) -> {
+            for (String head : heads) {
+                // Types come tuition first, so a head billed both ways stays academic
+                if (!billedHeads.add(head)) {
+                    continue;
+                }
+                categories.put(head, FeeHeadTaxonomy.isArrear(head) ? FeeHeadCategory.ARREAR : categoryOfFeeType(feeType));
+                if (FeeDemandService.isTransport(feeType)) {
+                    transportHeads.add(head);
+                }
+            }
+        });
+
+        // 3. Individual fees and miscellaneous collections
+        SortedSet<String> miscHeads = new TreeSet<>();
+        miscHeads.addAll(distinctHeads(jdbc, "individual_fees", yearKey));
+        miscHeads.addAll(distinctHeads(jdbc, "miscellaneous_fee_collection", yearKey));
+        for (String head : miscHeads) {
+            categories.putIfAbsent(head, FeeHeadTaxonomy.isArrear(head) ? FeeHeadCategory.ARREAR : FeeHeadCategory.MISC);
+        }
+
+        // Transport columns: billed heads went by their fee table above, the rest go by category
+        categories.forEach((head, category) -> {
+            if (billedHeads.contains(head)) {
+                return;
+            }
+            boolean transport = switch (category) {
+                case TRANSPORT -> true;
+                case MISC -> FeeHeadTaxonomy.isTransportName(head);
+                case ARREAR -> {
+                    String base = FeeHeadTaxonomy.baseHead(head);
+                    FeeHeadCategory baseCategory = categories.get(base);
+                    yield transportHeads.contains(base) || baseCategory == FeeHeadCategory.TRANSPORT
+                            || (baseCategory == null && FeeHeadTaxonomy.isTransportName(base));
+                }
+                default -> false;
+            };
+            if (transport) {
+                transportHeads.add(head);
+            }
+        });
+
+        log.debug("🏷️ Fee head taxonomy of {}: {} heads, {} billed, {} transport", yearKey, categories.size(),
+                billedHeads.size(), transportHeads.size());
+        return new FeeHeadTaxonomy(categories, transportHeads, billedHeads, miscHeads);
+    }
+
+    private void addSetupHeads(JdbcTemplate jdbc, String table, String yearColumn, String yearKey,
+                               FeeHeadCategory category, Map<String, FeeHeadCategory> categories) {
+        if (!tableCatalog.tableExists(jdbc, table)) {
+            return;
+        }
+        // Setup tables are small and store the year in either spelling, so filter here
+        jdbc.query("SELECT fee_head, " + yearColumn + " FROM " + table, rs -> {
+            String year = rs.getString(2);
+            if (year != null && FeeDemandService.yearKey(year).equals(yearKey)) {
+                categories.putIfAbsent(rs.getString(1), category);
+            }
+        });
+    }
+
+    private List<String> distinctHeads(JdbcTemplate jdbc, String table, String yearKey) {
+        if (!tableCatalog.tableExists(jdbc, table)) {
+            return List.of();
+        }
+        try {
+            return jdbc.queryForList("SELECT DISTINCT fee_head FROM " + table + " WHERE academic_year IN (?, ?) AND fee_head IS NOT NULL",
+                    String.class, yearKey.replace('_', '-'), yearKey);
+        } catch (Exception e) {
+            log.warn("Could not read the fee heads of {}: {}", table, e.getMessage());
+            return List.of();
+        }
+    }
+
+    private static FeeHeadCategory categoryOfFeeType(String feeType) {
+        return switch (feeType) {
+            case FeeDemandService.HOSTEL -> FeeHeadCategory.HOSTEL;
+            case FeeDemandService.TRANSPORT -> FeeHeadCategory.TRANSPORT;
+            default -> FeeHeadCategory.ACADEMIC;
+        };
+    }
+
+    private record Key(String schoolId, String yearKey) {
+    }
+
+    private record Entry(long schoolVersion, long yearVersion, FeeHeadTaxonomy taxonomy, long expiresAt) {
+    }
+}
@@ -0,0 +1,94 @@
+package com.backend.school_erp.service.Administration;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The fee heads of one school and year with their categories, built by {@link FeeHeadRegistry}.
+ * Lookups are map reads, so report loops can classify every row.
+ */
+public final class FeeHeadTaxonomy {
+
+    // Promotion carries a balance over as "<head> (<source year>)"
+    private static final Pattern ARREAR = Pattern.compile("(.+) \\((\\d{4}[-_]\\d{4})\\)");
+
+    private final Map<String, FeeHeadCategory> categories;
+    private final Set<String> transportHeads;
+    private final SortedSet<String> billedHeads;
+    private final SortedSet<String> miscHeads;
+
+    FeeHeadTaxonomy(Map<String, FeeHeadCategory> categories, Set<String> transportHeads,
+                    SortedSet<String> billedHeads, SortedSet<String> miscHeads) {
+        this.categories = Map.copyOf(categories);
+        this.transportHeads = Set.copyOf(transportHeads);
+        this.billedHeads = Collections.unmodifiableSortedSet(billedHeads);
+        this.miscHeads = Collections.unmodifiableSortedSet(miscHeads);
+    }
+
+    /**
+     * Category of the head. Heads neither set up nor billed in the year are told apart by name:
+     * an arrear by its "(year)" suffix, transport by "transp", anything else is academic.
+     */
+    public FeeHeadCategory categoryOf(String feeHead) {
+        if (feeHead == null) {
+            return FeeHeadCategory.ACADEMIC;
+        }
+        FeeHeadCategory category = categories.get(feeHead);
+        if (category != null) {
+            return category;
+        }
+        if (ARREAR.matcher(feeHead).matches()) {
+            return FeeHeadCategory.ARREAR;
+        }
+        return isTransportName(feeHead) ? FeeHeadCategory.TRANSPORT : FeeHeadCategory.ACADEMIC;
+    }
+
+    /**
+     * Whether payments of the head belong in the transport columns of the reports; true for
+     * transport heads and for arrears of transport heads.
+     */
+    public boolean isTransport(String feeHead) {
+        if (feeHead == null) {
+            return false;
+        }
+        if (transportHeads.contains(feeHead)) {
+            return true;
+        }
+        if (categories.containsKey(feeHead)) {
+            return false;
+        }
+        Matcher arrear = ARREAR.matcher(feeHead);
+        return arrear.matches() ? isTransport(arrear.group(1)) : isTransportName(feeHead);
+    }
+
+    /**
+     * The head a carried-over arrear was charged under, or the head itself.
+     */
+    public static String baseHead(String feeHead) {
+        Matcher arrear = ARREAR.matcher(feeHead);
+        return arrear.matches() ? arrear.group(1) : feeHead;
+    }
+
+    /**
+     * Heads billed to students through the year's tuition, hostel and transport fee tables.
+     */
+    public SortedSet<String> billedHeads() {
+        return billedHeads;
+    }
+
+    /**
+     * Heads of the year's individual fees and miscellaneous collections.
+     */
+    public SortedSet<String> miscHeads() {
+        return miscHeads;
+    }
+
+    static boolean isArrear(String feeHead) {
+        return ARREAR.matcher(feeHead).matches();
+    }
+
+    static boolean isTransportName(String feeHead) {
+        return feeHead.toLowerCase(Locale.ROOT).contains("transp");
+    }
+}
@@ -0,0 +1,435 @@
+package com.backend.school_erp.service.Administration;
+
+import com.backend.school_erp.DTO.Administration.FeeReapplicationResultDTO;
+import com.backend.school_erp.config.SchoolDataChangedEvent;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantTableCatalog;
+import com.backend.school_erp.service.ReportJob.ReportJobProgress;
+import com.backend.school_erp.service.Transaction.FeeBalanceService;
+import com.backend.school_erp.service.Transaction.FeeDemandService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+
+/**
+ * Brings the fees already assigned to students in line with the tuition, hostel or bus fee
+ * setup after the setup changed, instead of editing every student's fees by hand.
+ *
+ * The setup applies to students the way admission and promotion assign it: tuition by standard
+ * and category (every row of the class when it has none for the category), hostel the same for
+ * students who already pay a hostel fee, and transport by boarding point and route (the boarding
+ * point's fee for a route the setup does not list). A run can be narrowed to one standard,
+ * category or boarding point. Students with a TC are left out.
+ *
+ * An assigned head whose amount differs from the setup takes the setup's amount, and a setup
+ * head the student does not have is added. Settled heads are left alone, and so are heads whose
+ * new amount would be less than what was already collected on them. Assigned heads the setup
+ * does not have (arrears, per-student additions) are only counted.
+ *
+ * {@link #preview} counts the changes without writing anything. {@link #apply} writes them
+ * {@code fee-reapplication.chunk-size} students at a time, each chunk in a transaction of its own
+ * with one UPDATE per new amount and one batch of inserts, and reports its progress to the
+ * report job it runs under. Each chunk is read again before it is written, so a second run
+ * changes nothing.
+ */
+@Service
+@Slf4j
+public class FeeReapplicationService {
+
+    private static final String FEE_COLUMNS = "admission_number, student_name, standard, section, father_name, mother_name, " +
+            "fee_heading, account_head, amount, status, academic_year, school_id, aadhar_number, course, mother_tongue, blood_group";
+    private static final String TRANSPORT_FEE_COLUMNS = "admission_number, student_name, standard, section, father_name, mother_name, " +
+            "fee_heading, account_head, amount, status, academic_year, school_id, aadhar_number, boarding_point, bus_route_number, " +
+            "course, mother_tongue, blood_group";
+    private static final String[] STUDENT_COLUMNS = {"student_name", "standard", "section", "father_name", "mother_name",
+            "student_category", "aadhar_number", "mother_tongue", "blood_group", "boarding_point", "bus_route_number"};
+
+    private final TenantDataSourceRouter tenantDataSourceRouter;
+    private final TenantTableCatalog tableCatalog;
+    private final FeeDemandService feeDemandService;
+    private final FeeBalanceService feeBalanceService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${fee-reapplication.chunk-size:500}")
+    private int chunkSize;
+
+    public FeeReapplicationService(TenantDataSourceRouter tenantDataSourceRouter, TenantTableCatalog tableCatalog,
+                                   FeeDemandService feeDemandService, FeeBalanceService feeBalanceService,
+                                   ApplicationEventPublisher eventPublisher) {
+        this.tenantDataSourceRouter = tenantDataSourceRouter;
+        this.tableCatalog = tableCatalog;
+        this.feeDemandService = feeDemandService;
+        this.feeBalanceService = feeBalanceService;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * The changes {@link #apply} would make, without making them.
+     *
+     * {@code feeType} is tuition, hostel or transport; {@code standard}, {@code studentCategory}
+     * and {@code boardingPoint} are optional and keep the run to the students matching them.
+     */
+    public FeeReapplicationResultDTO preview(String schoolId, String academicYear, String feeType,
+                                             String standard, String studentCategory, String boardingPoint) {
+        return run(new Scope(schoolId, academicYear, feeType(feeType), standard, studentCategory, boardingPoint), false);
+    }
+
+    public FeeReapplicationResultDTO apply(String schoolId, String academicYear, String feeType,
+                                           String standard, String studentCategory, String boardingPoint) {
+        return run(new Scope(schoolId, academicYear, feeType(feeType), standard, studentCategory, boardingPoint), true);
+    }
+
+    /**
+     * The fee type of a request (tuition, hostel or transport, in any case) as {@link FeeDemandService} names it.
+     */
+    public static String feeType(String value) {
+        String requested = value == null ? "" : value.trim();
+        for (String type : new String[]{FeeDemandService.TUITION, FeeDemandService.HOSTEL, FeeDemandService.TRANSPORT}) {
+            if (type.equalsIgnoreCase(requested)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("feeType must be tuition, hostel or transport");
+    }
+
+    // What one run covers
+    private record Scope(String schoolId, String academicYear, String feeType, String standard,
+                         String studentCategory, String boardingPoint) {
+
+        // Fee setups and fee rows hold the year as "2025-2026"
+        String setupYear() {
+            return academicYear.replace("_", "-");
+        }
+    }
+
+    // One head of the setup
+    private record Fee(String feeHeading, String accountHead, BigDecimal amount) {
+    }
+
+    // Counts of one run, added up over its chunks
+    private static final class Tally {
+        int studentsChanged;
+        int amountChanges;
+        int addedHeads;
+        int skippedSettled;
+        int skippedBelowCollected;
+        int unmatchedHeads;
+        BigDecimal demandChange = BigDecimal.ZERO;
+    }
+
+    private FeeReapplicationResultDTO run(Scope scope, boolean apply) {
+        long start = System.currentTimeMillis();
+        String schoolId = scope.schoolId();
+        JdbcTemplate jdbc = tenantDataSourceRouter.getJdbcTemplate(schoolId);
+        String year = FeeDemandService.yearKey(scope.academicYear());
+        String admissionTable = "admissions_" + year;
+        String feeTable = FeeDemandService.sourceTable(scope.feeType(), scope.academicYear());
+        if (!tableCatalog.tableExists(jdbc, admissionTable) || !tableCatalog.tableExists(jdbc, feeTable)) {
+            throw new IllegalArgumentException("No " + scope.feeType().toLowerCase() + " fees have been assigned for " + scope.setupYear());
+        }
+
+        Setup setup = FeeDemandService.isTransport(scope.feeType()) ? loadBusSetup(jdbc, scope) : loadClassSetup(jdbc, scope);
+        Map<String, Map<String, Object>> students = selectStudents(jdbc, scope, admissionTable, feeTable);
+        List<String> numbers = new ArrayList<>(students.keySet());
+
+        Tally tally = new Tally();
+        TransactionTemplate transaction = tenantDataSourceRouter.getTransactionTemplate(schoolId);
+        for (int from = 0; from < numbers.size(); from += chunkSize) {
+            List<String> chunk = numbers.subList(from, Math.min(from + chunkSize, numbers.size()));
+            if (apply) {
+                transaction.executeWithoutResult(status -> reapplyChunk(jdbc, scope, feeTable, setup, students, chunk, tally, true));
+            } else {
+                reapplyChunk(jdbc, scope, feeTable, setup, students, chunk, tally, false);
+            }
+            ReportJobProgress.update(from + chunk.size(), numbers.size());
+        }
+
+        if (apply) {
+            log.info("🧾 Re-applied the {} fee setup of school {} for {}: {} amounts changed, {} heads added for {} of {} students",
+                    scope.feeType(), schoolId, scope.setupYear(), tally.amountChanges, tally.addedHeads,
+                    tally.studentsChanged, numbers.size());
+            if (tally.studentsChanged > 0) {
+                eventPublisher.publishEvent(new SchoolDataChangedEvent(schoolId, scope.academicYear(), "fee reapplication"));
+            }
+        }
+        return FeeReapplicationResultDTO.builder()
+                .feeType(scope.feeType())
+                .applied(apply)
+                .studentCount(numbers.size())
+                .studentsChanged(tally.studentsChanged)
+                .amountChanges(tally.amountChanges)
+                .addedHeads(tally.addedHeads)
+                .skippedSettled(tally.skippedSettled)
+                .skippedBelowCollected(tally.skippedBelowCollected)
+                .unmatchedHeads(tally.unmatchedHeads)
+                .demandChange(tally.demandChange.doubleValue())
+                .elapsedMs(System.currentTimeMillis() - start)
+                .build();
+    }
+
+    private void reapplyChunk(JdbcTemplate jdbc, Scope scope, String feeTable, Setup setup,
+                              Map<String, Map<String, Object>> students, List<String> chunk, Tally tally, boolean apply) {
+        Map<String, List<Map<String, Object>>> assigned = new HashMap<>();
+        for (Map<String, Object> row : jdbc.queryForList("SELECT id, admission_number, fee_heading, amount, status FROM " + feeTable +
+                " WHERE admission_number IN (" + placeholders(chunk) + ")", chunk.toArray())) {
+            assigned.computeIfAbsent((String) row.get("admission_number"), k -> new ArrayList<>()).add(row);
+        }
+        Map<String, Map<String, Double>> collected = feeBalanceService.getCollected(jdbc, scope.academicYear(), chunk);
+
+        // New amount -> ids of the rows that take it
+        Map<BigDecimal, List<Object>> updates = new TreeMap<>();
+        List<Object[]> inserts = new ArrayList<>();
+        Set<String> changed = new LinkedHashSet<>();
+        for (String admissionNumber : chunk) {
+            Map<String, Object> student = students.get(admissionNumber);
+            Map<String, List<Map<String, Object>>> byHead = new HashMap<>();
+            for (Map<String, Object> row : assigned.getOrDefault(admissionNumber, List.of())) {
+                String heading = (String) row.get("fee_heading");
+                if (heading != null && !heading.contains("Arrear")) {
+                    byHead.computeIfAbsent(key(heading), k -> new ArrayList<>()).add(row);
+                }
+            }
+            Map<String, Double> paid = collected.getOrDefault(admissionNumber, Map.of());
+
+            for (Fee fee : setup.feesOf(student)) {
+                List<Map<String, Object>> rows = byHead.remove(key(fee.feeHeading()));
+                if (rows == null) {
+                    inserts.add(feeRow(scope, student, fee));
+                    tally.addedHeads++;
+                    tally.demandChange = tally.demandChange.add(fee.amount());
+                    changed.add(admissionNumber);
+                    continue;
+                }
+                if (rows.size() > 1) {
+                    tally.unmatchedHeads++;
+                    continue;
+                }
+                Map<String, Object> row = rows.get(0);
+                BigDecimal current = amount(row.get("amount"));
+                if (current.compareTo(fee.amount()) == 0) {
+                    continue;
+                }
+                double already = paid.getOrDefault((String) row.get("fee_heading"), 0.0);
+                if ("settled".equalsIgnoreCase((String) row.get("status")) || (already > 0 && already >= current.doubleValue() - 0.5)) {
+                    tally.skippedSettled++;
+                    continue;
+                }
+                if (fee.amount().doubleValue() < already) {
+                    tally.skippedBelowCollected++;
+                    continue;
+                }
+                updates.computeIfAbsent(fee.amount(), k -> new ArrayList<>()).add(row.get("id"));
+                tally.amountChanges++;
+                tally.demandChange = tally.demandChange.add(fee.amount().subtract(current));
+                changed.add(admissionNumber);
+            }
+            tally.unmatchedHeads += byHead.size();
+        }
+        tally.studentsChanged += changed.size();
+        if (!apply || changed.isEmpty()) {
+            return;
+        }
+
+        for (Map.Entry<BigDecimal, List<Object>> update : updates.entrySet()) {
+            List<Object> params = new ArrayList<>();
+            params.add(update.getKey());
+            params.addAll(update.getValue());
+            jdbc.update("UPDATE " + feeTable + " SET amount = ? WHERE id IN (" + placeholders(update.getValue()) + ")" +
+                    " AND (status IS NULL OR status <> 'settled')", params.toArray());
+        }
+        if (!inserts.isEmpty()) {
+            String columns = FeeDemandService.isTransport(scope.feeType()) ? TRANSPORT_FEE_COLUMNS : FEE_COLUMNS;
+            jdbc.batchUpdate("INSERT INTO " + feeTable + " (" + columns + ") VALUES (" +
+                    placeholders(Arrays.asList(columns.split(","))) + ")", inserts);
+        }
+        feeDemandService.refreshStudents(jdbc, scope.academicYear(), changed);
+    }
+
+    private Object[] feeRow(Scope scope, Map<String, Object> student, Fee fee) {
+        List<Object> row = new ArrayList<>(Arrays.asList(
+                student.get("admission_number"), value(student, "student_name"), value(student, "standard"),
+                value(student, "section"), value(student, "father_name"), value(student, "mother_name"),
+                fee.feeHeading(), value(fee.accountHead()), fee.amount(), "pending", scope.setupYear(), scope.schoolId(),
+                value(student, "aadhar_number")));
+        if (FeeDemandService.isTransport(scope.feeType())) {
+            row.add(value(student, "boarding_point"));
+            row.add(value(student, "bus_route_number"));
+        }
+        row.add(value(student, "standard"));
+        row.add(value(student, "mother_tongue"));
+        row.add(value(student, "blood_group"));
+        return row.toArray();
+    }
+
+    // --- Students ---
+
+    private Map<String, Map<String, Object>> selectStudents(JdbcTemplate jdbc, Scope scope, String admissionTable, String feeTable) {
+        StringBuilder sql = new StringBuilder("SELECT admission_number");
+        for (String column : STUDENT_COLUMNS) {
+            sql.append(", ").append(tableCatalog.hasColumn(jdbc, admissionTable, column) ? column : "NULL AS " + column);
+        }
+        sql.append(" FROM ").append(admissionTable).append(" s WHERE s.admission_number IS NOT NULL");
+        List<Object> params = new ArrayList<>();
+        if (tableCatalog.hasColumn(jdbc, admissionTable, "school_id")) {
+            sql.append(" AND s.school_id = ?");
+            params.add(scope.schoolId());
+        }
+        filter(sql, params, "s.standard", scope.standard());
+        filter(sql, params, "s.student_category", scope.studentCategory());
+        filter(sql, params, "s.boarding_point", scope.boardingPoint());
+
+        String tcTable = "TC_" + FeeDemandService.yearKey(scope.academicYear());
+        if (tableCatalog.tableExists(jdbc, tcTable)) {
+            sql.append(" AND s.admission_number NOT IN (SELECT admission_number FROM ").append(tcTable)
+                    .append(" WHERE admission_number IS NOT NULL)");
+        }
+        if (FeeDemandService.HOSTEL.equals(scope.feeType())) {
+            // Hostellers are the students who already pay a hostel fee
+            sql.append(" AND EXISTS (SELECT 1 FROM ").append(feeTable)
+                    .append(" f WHERE f.admission_number = s.admission_number AND f.fee_heading NOT LIKE '%Arrear%')");
+        } else if (FeeDemandService.isTransport(scope.feeType())) {
+            sql.append(" AND s.boarding_point IS NOT NULL AND s.boarding_point <> ''")
+                    .append(" AND s.bus_route_number IS NOT NULL AND s.bus_route_number <> ''");
+        }
+
+        Map<String, Map<String, Object>> students = new LinkedHashMap<>();
+        for (Map<String, Object> row : jdbc.queryForList(sql + " ORDER BY s.admission_number", params.toArray())) {
+            students.putIfAbsent((String) row.get("admission_number"), row);
+        }
+        return students;
+    }
+
+    private static void filter(StringBuilder sql, List<Object> params, String column, String value) {
+        if (value != null && !value.isBlank()) {
+            sql.append(" AND ").append(column).append(" = ?");
+            params.add(value.trim());
+        }
+    }
+
+    // --- Setups ---
+
+    // The setup heads that apply to one student
+    @FunctionalInterface
+    private interface Setup {
+        Collection<Fee> feesOf(Map<String, Object> student);
+    }
+
+    // tuition_fees or hostel_fees: by standard, then category, then head
+    private Setup loadClassSetup(JdbcTemplate jdbc, Scope scope) {
+        String setupTable = FeeDemandService.HOSTEL.equals(scope.feeType()) ? "hostel_fees" : "tuition_fees";
+        Map<String, Map<String, Map<String, Fee>>> byClass = new HashMap<>();
+        if (tableCatalog.tableExists(jdbc, setupTable)) {
+            for (Map<String, Object> row : jdbc.queryForList("SELECT standard, student_category, fee_heading, account_head, fee_amount FROM " +
+                    setupTable + " WHERE school_id = ? AND academic_year = ? ORDER BY id", scope.schoolId(), scope.setupYear())) {
+                byClass.computeIfAbsent(key((String) row.get("standard")), k -> new HashMap<>())
+                        .computeIfAbsent(key((String) row.get("student_category")), k -> new LinkedHashMap<>())
+                        .putIfAbsent(key((String) row.get("fee_heading")), new Fee((String) row.get("fee_heading"),
+                                (String) row.get("account_head"), amount(row.get("fee_amount"))));
+            }
+        }
+        requireSetup(byClass, setupTable, scope);
+
+        return student -> {
+            Map<String, Map<String, Fee>> byCategory = byClass.get(key((String) student.get("standard")));
+            if (byCategory == null) {
+                return List.of();
+            }
+            Map<String, Fee> fees = byCategory.get(key((String) student.get("student_category")));
+            if (fees != null) {
+                return fees.values();
+            }
+            // A class without rows for the student's category charges it every row of the class
+            Map<String, Fee> all = new LinkedHashMap<>();
+            byCategory.values().forEach(category -> category.forEach(all::putIfAbsent));
+            return all.values();
+        };
+    }
+
+    // bus_fees: by boarding point and route, with the boarding point's first fee for other routes
+    private Setup loadBusSetup(JdbcTemplate jdbc, Scope scope) {
+        Map<List<String>, Map<String, Fee>> byRoute = new HashMap<>();
+        Map<String, Fee> byBoardingPoint = new HashMap<>();
+        if (tableCatalog.tableExists(jdbc, "bus_fees")) {
+            Map<String, String> accountHeads = busAccountHeads(jdbc, scope);
+            String accountHead = tableCatalog.hasColumn(jdbc, "bus_fees", "account_head") ? "account_head" : "NULL AS account_head";
+            for (Map<String, Object> row : jdbc.queryForList("SELECT boarding_point, route_number, fee_heading, " + accountHead +
+                    ", fee FROM bus_fees WHERE school_id = ? AND academic_year = ? ORDER BY id", scope.schoolId(), scope.setupYear())) {
+                String heading = (String) row.get("fee_heading");
+                if (heading == null || heading.isBlank()) {
+                    continue;
+                }
+                String head = (String) row.get("account_head");
+                Fee fee = new Fee(heading, head != null ? head : accountHeads.get(key(heading)), amount(row.get("fee")));
+                String boardingPoint = key((String) row.get("boarding_point"));
+                byRoute.computeIfAbsent(List.of(boardingPoint, key((String) row.get("route_number"))), k -> new LinkedHashMap<>())
+                        .putIfAbsent(key(heading), fee);
+                byBoardingPoint.putIfAbsent(boardingPoint, fee);
+            }
+        }
+        requireSetup(byRoute, "bus_fees", scope);
+
+        return student -> {
+            String boardingPoint = key((String) student.get("boarding_point"));
+            Map<String, Fee> fees = byRoute.get(List.of(boardingPoint, key((String) student.get("bus_route_number"))));
+            if (fees != null) {
+                return fees.values();
+            }
+            Fee fallback = byBoardingPoint.get(boardingPoint);
+            return fallback != null ? List.of(fallback) : List.of();
+        };
+    }
+
+    // Account heads of the bus and van fee heads, for a bus_fees table without its own
+    private Map<String, String> busAccountHeads(JdbcTemplate jdbc, Scope scope) {
+        Map<String, String> accountHeads = new HashMap<>();
+        if (tableCatalog.tableExists(jdbc, "bus_van_fee_heads")) {
+            jdbc.query("SELECT fee_head, account_head FROM bus_van_fee_heads WHERE school_id = ? AND academic_year = ?", rs -> {
+                if (rs.getString("fee_head") != null) {
+                    accountHeads.putIfAbsent(key(rs.getString("fee_head")), rs.getString("account_head"));
+                }
+            }, scope.schoolId(), scope.setupYear());
+        }
+        return accountHeads;
+    }
+
+    private static void requireSetup(Map<?, ?> setup, String setupTable, Scope scope) {
+        // An empty setup would only report every assigned head as unmatched
+        if (setup.isEmpty()) {
+            throw new IllegalArgumentException("There is no " + setupTable.replace('_', ' ') + " setup for " + scope.setupYear());
+        }
+    }
+
+    // --- Helpers ---
+
+    // Setup and fee rows match the way MySQL compares them: ignoring case and surrounding spaces
+    private static String key(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static BigDecimal amount(Object value) {
+        if (value == null) {
+            return BigDecimal.ZERO.setScale(2);
+        }
+        BigDecimal amount = value instanceof BigDecimal decimal ? decimal : new BigDecimal(value.toString());
+        return amount.setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static Object value(Map<String, Object> student, String column) {
+        return value(student.get(column));
+    }
+
+    private static Object value(Object value) {
+        return value instanceof String text && text.isBlank() ? null : value;
+    }
+
+    private static String placeholders(Collection<?> values) {
+        return String.join(", ", Collections.nCopies(values.size(), "?"));
+    }
+}
@@ -3,59 +3,50 @@ package com.backend.school_erp.service.Administration;
 import com.backend.school_erp.DTO.Administration.HostelFeeHeadDTO;
 import com.backend.school_erp.entity.Administration.HostelFeeHead;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import javax.sql.DataSource;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
 @Service
 @Slf4j
 public class HostelFeeHeadService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
 
-    // ---------------- Hikari DataSource per school ----------------
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            log.info("🔗 Creating HikariCP DataSource for school: {}", id);
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-            config.setMaximumPoolSize(10);
-            config.setMinimumIdle(2);
-            config.setIdleTimeout(30000);
-            config.setMaxLifetime(1800000);
-            config.setConnectionTimeout(10000);
-            return new HikariDataSource(config);
-        });
-    }
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
+
+    @Autowired
+    private FeeHeadRegistry feeHeadRegistry;
+
+    @Autowired
+    private MasterDataCache masterDataCache;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     // ---------------- Ensure Table Exists ----------------
     private void ensureTableExists(JdbcTemplate jdbc) {
-        jdbc.execute("""
-            CREATE TABLE IF NOT EXISTS hostel_fee_heads (
-                id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                fee_head VARCHAR(255) NOT NULL,
-                account_head VARCHAR(255) NOT NULL,
-                school_id VARCHAR(50) NOT NULL,
-                year VARCHAR(50) NOT NULL,
-                created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                UNIQUE KEY unique_fee_head (fee_head, school_id, year)
-            )
-        """);
+        schemaMigrator.migrate(jdbc, "HostelFeeHeadService", 1, () -> {
+            jdbc.execute("""
+                CREATE TABLE IF NOT EXISTS hostel_fee_heads (
+                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    fee_head VARCHAR(255) NOT NULL,
+                    account_head VARCHAR(255) NOT NULL,
+                    school_id VARCHAR(50) NOT NULL,
+                    year VARCHAR(50) NOT NULL,
+                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    UNIQUE KEY unique_fee_head (fee_head, school_id, year)
+                )
+            """);
+        });
     }
 
     // ---------------- Get All Fee Heads ----------------
@@ -78,6 +69,8 @@ public class HostelFeeHeadService {
                     "INSERT INTO hostel_fee_heads (fee_head, account_head, school_id, year) VALUES (?, ?, ?, ?)",
                     dto.getFeeHead(), dto.getAccountHead(), schoolId, dto.getYear()
             );
+            masterDataCache.invalidate(schoolId, "hostel_fee_heads");
+            feeHeadRegistry.invalidate(schoolId);
         } catch (DuplicateKeyException e) {
             throw new RuntimeException("Hostel Fee Head already exists: " + dto.getFeeHead());
         }
@@ -99,6 +92,8 @@ public class HostelFeeHeadService {
                 "UPDATE hostel_fee_heads SET fee_head = ?, account_head = ? WHERE id = ? AND school_id = ?",
                 dto.getFeeHead(), dto.getAccountHead(), id, schoolId
         );
+        masterDataCache.invalidate(schoolId, "hostel_fee_heads");
+        feeHeadRegistry.invalidate(schoolId);
         if (rows == 0) throw new RuntimeException("Hostel Fee Head not found with id " + id);
 
         return jdbc.queryForObject(
@@ -116,6 +111,8 @@ public class HostelFeeHeadService {
                 "DELETE FROM hostel_fee_heads WHERE id = ? AND school_id = ? AND year = ?",
                 id, schoolId, year
         );
+        masterDataCache.invalidate(schoolId, "hostel_fee_heads");
+        feeHeadRegistry.invalidate(schoolId);
         if (rows == 0) throw new RuntimeException("Hostel Fee Head not found with id " + id);
     }
 }
@@ -0,0 +1,74 @@
+package com.backend.school_erp.service.Administration;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * In-memory copy of each school's small setup tables (sections, courses, communities, fee heads
+ * and the like) as read by the dropdown and setup lookups, so opening a form does not query every
+ * table again.
+ *
+ * Every (school, table) has a version, and each cached lookup remembers the version it was read
+ * at. The setup service that writes a table calls {@link #invalidate} afterwards, which moves the
+ * version on, so every lookup of that table is read again on next use. A lookup that was being
+ * read while the table changed is stored under the old version and is never served. Entries are
+ * also read again after {@code master-data.cache.ttl-seconds}, for changes made through another
+ * instance.
+ */
+@Service
+@Slf4j
+public class MasterDataCache {
+
+    @Value("${master-data.cache.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<TableKey, Long> versions = new ConcurrentHashMap<>();
+
+    /**
+     * The cached rows of a lookup on {@code table}, or the loader's rows, which are kept for the next call.
+     *
+     * @param lookup names the lookup and its parameters other than the school; compared with
+     *               equals, e.g. {@code Arrays.asList("castes", academicYear)}
+     */
+    public <T> List<T> get(String schoolId, String table, Object lookup, Supplier<List<T>> loader) {
+        TableKey tableKey = new TableKey(schoolId, table);
+        Key key = new Key(tableKey, lookup);
+        long version = versions.getOrDefault(tableKey, 0L);
+
+        Entry entry = entries.get(key);
+        if (entry != null && entry.version() == version && entry.expiresAt() > System.currentTimeMillis()) {
+            @SuppressWarnings("unchecked")
+            List<T> rows = (List<T>) entry.rows();
+            return rows;
+        }
+
+        List<T> rows = Collections.unmodifiableList(new ArrayList<>(loader.get()));
+        entries.put(key, new Entry(version, rows, System.currentTimeMillis() + ttlSeconds * 1000));
+        return rows;
+    }
+
+    /**
+     * Call after writing to one of the school's setup tables.
+     */
+    public void invalidate(String schoolId, String table) {
+        TableKey tableKey = new TableKey(schoolId, table);
+        versions.merge(tableKey, 1L, Long::sum);
+        entries.keySet().removeIf(key -> key.table().equals(tableKey));
+        log.debug("🧹 Master data {} of school {} changed", table, schoolId);
+    }
+
+    private record TableKey(String schoolId, String table) {
+    }
+
+    private record Key(TableKey table, Object lookup) {
+    }
+
+    private record Entry(long version, List<?> rows, long expiresAt) {
+    }
+}
@@ -1,61 +1,49 @@
 package com.backend.school_erp.service.Administration;
 
 import com.backend.school_erp.DTO.Administration.MiscellaneousFeeHeadDTO;
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
 import com.backend.school_erp.entity.Administration.MiscellaneousFeeHead;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import javax.sql.DataSource;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 
 @Service
 @Slf4j
 public class MiscellaneousFeeHeadService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
-
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            log.info("🔗 Creating HikariCP DataSource for school: {}", id);
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-            config.setMaximumPoolSize(10);
-            config.setMinimumIdle(2);
-            config.setIdleTimeout(30000);
-            config.setMaxLifetime(1800000);
-            config.setConnectionTimeout(10000);
-            return new HikariDataSource(config);
-        });
-    }
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
+
+    @Autowired
+    private FeeHeadRegistry feeHeadRegistry;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     private void ensureTableExists(JdbcTemplate jdbc) {
-        jdbc.execute("""
-            CREATE TABLE IF NOT EXISTS miscellaneous_fee_heads (
-                id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                fee_head VARCHAR(100) NOT NULL,
-                account_head VARCHAR(100) NOT NULL,
-                school_id VARCHAR(50) NOT NULL,
-                academic_year VARCHAR(50) NOT NULL,
-                created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                UNIQUE KEY unique_misc_fee_head (fee_head, school_id, academic_year)
-            )
-        """);
+        schemaMigrator.migrate(jdbc, "MiscellaneousFeeHeadService", 1, () -> {
+            jdbc.execute("""
+                CREATE TABLE IF NOT EXISTS miscellaneous_fee_heads (
+                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    fee_head VARCHAR(100) NOT NULL,
+                    account_head VARCHAR(100) NOT NULL,
+                    school_id VARCHAR(50) NOT NULL,
+                    academic_year VARCHAR(50) NOT NULL,
+                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    UNIQUE KEY unique_misc_fee_head (fee_head, school_id, academic_year)
+                )
+            """);
+        });
     }
 
     public List<MiscellaneousFeeHead> getMiscellaneousFeeHeads(String schoolId, String academicYear) {
@@ -85,6 +73,7 @@ public class MiscellaneousFeeHeadService {
                     "INSERT INTO miscellaneous_fee_heads (fee_head, account_head, school_id, academic_year) VALUES (?, ?, ?, ?)",
                     dto.getFeeHead(), dto.getAccountHead(), schoolId, dto.getAcademicYear()
             );
+            feeHeadRegistry.invalidate(schoolId);
         } catch (DuplicateKeyException e) {
             throw new RuntimeException("Miscellaneous Fee Head already exists: " + dto.getFeeHead());
         }
@@ -137,6 +126,7 @@ public class MiscellaneousFeeHeadService {
                 "UPDATE miscellaneous_fee_heads SET fee_head = ?, account_head = ? WHERE id = ?",
                 dto.getFeeHead(), dto.getAccountHead(), id
         );
+        feeHeadRegistry.invalidate(schoolId);
 
         if (rows == 0) {
             throw new RuntimeException("Failed to update Miscellaneous Fee Head with id " + id);
@@ -154,6 +144,7 @@ public class MiscellaneousFeeHeadService {
         ensureTableExists(jdbc);
 
         int rows = jdbc.update("DELETE FROM miscellaneous_fee_heads WHERE id = ?", id);
+        feeHeadRegistry.invalidate(schoolId);
         if (rows == 0) {
             throw new RuntimeException("Miscellaneous Fee Head not found with id " + id);
         }
@@ -1,69 +1,57 @@
 package com.backend.school_erp.service.Administration;
 
 import com.backend.school_erp.DTO.Administration.MotherTongueSetupDTO;
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
 import com.backend.school_erp.entity.Administration.MotherTongueSetup;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
 import javax.sql.DataSource;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 
 @Service
 @Slf4j
 public class MotherTongueSetupService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
+
+    @Autowired
+    private MasterDataCache masterDataCache;
 
     /** Get pooled DataSource for a school */
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            log.info("Creating HikariCP DataSource for school: {}", id);
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-
-            // Pool tuning
-            config.setMaximumPoolSize(10);
-            config.setMinimumIdle(2);
-            config.setIdleTimeout(30000);
-            config.setMaxLifetime(1800000);
-            config.setConnectionTimeout(10000);
-
-            return new HikariDataSource(config);
-        });
-    }
 
     /** Get JdbcTemplate for a school */
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     /** Ensure mother_tongues table exists */
     private void ensureTableExists(JdbcTemplate jdbc) {
-        try {
-            jdbc.execute("""
-                CREATE TABLE IF NOT EXISTS mother_tongues (
-                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                    mother_tongue VARCHAR(50) NOT NULL,
-                    school_id VARCHAR(50) NOT NULL,
-                    academic_year VARCHAR(50) NOT NULL,
-                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                    UNIQUE KEY unique_mother_tongue (mother_tongue, school_id, academic_year)
-                )
-            """);
-        } catch (Exception e) {
-            log.error("Failed to create mother_tongues table: {}", e.getMessage());
-            throw new RuntimeException("Database table creation failed", e);
-        }
+        schemaMigrator.migrate(jdbc, "MotherTongueSetupService", 1, () -> {
+            try {
+                jdbc.execute("""
+                    CREATE TABLE IF NOT EXISTS mother_tongues (
+                        id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                        mother_tongue VARCHAR(50) NOT NULL,
+                        school_id VARCHAR(50) NOT NULL,
+                        academic_year VARCHAR(50) NOT NULL,
+                        created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                        UNIQUE KEY unique_mother_tongue (mother_tongue, school_id, academic_year)
+                    )
+                """);
+            } catch (Exception e) {
+                log.error("Failed to create mother_tongues table: {}", e.getMessage());
+                throw new RuntimeException("Database table creation failed", e);
+            }
+        });
     }
 
     /** Get all mother tongues */
@@ -104,6 +92,7 @@ public class MotherTongueSetupService {
                     "INSERT INTO mother_tongues (mother_tongue, school_id, academic_year) VALUES (?, ?, ?)",
                     dto.getMotherTongue(), schoolId, dto.getAcademicYear()
             );
+            masterDataCache.invalidate(schoolId, "mother_tongues");
 
             if (rows == 0) {
                 throw new RuntimeException("Failed to insert mother tongue");
@@ -145,6 +134,7 @@ public class MotherTongueSetupService {
                     "UPDATE mother_tongues SET mother_tongue = ?, academic_year = ? WHERE id = ? AND school_id = ?",
                     dto.getMotherTongue(), dto.getAcademicYear(), id, schoolId
             );
+            masterDataCache.invalidate(schoolId, "mother_tongues");
 
             if (rows == 0) {
                 return Optional.empty();
@@ -171,6 +161,7 @@ public class MotherTongueSetupService {
             ensureTableExists(jdbc);
 
             int rows = jdbc.update("DELETE FROM mother_tongues WHERE id = ? AND school_id = ?", id, schoolId);
+            masterDataCache.invalidate(schoolId, "mother_tongues");
             boolean deleted = rows > 0;
             log.info("Delete operation for mother tongue ID {}: {}", id, deleted ? "successful" : "not found");
             return deleted;
@@ -1,10 +1,13 @@
 package com.backend.school_erp.service.Administration;
 
 import com.backend.school_erp.DTO.Administration.*;
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
+import com.backend.school_erp.config.TenantTableCatalog;
 import com.backend.school_erp.entity.Administration.RoleBasedAccount;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
@@ -13,47 +16,30 @@ import org.springframework.stereotype.Service;
 import javax.sql.DataSource;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 
 @Service
 @Slf4j
 public class RoleBasedAccountService {
 
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
+
+    @Autowired
+    private TenantTableCatalog tableCatalog;
+
     private final ObjectMapper objectMapper = new ObjectMapper();
     private final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
 
     /** Cache of DataSources per school */
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
 
     /** Get pooled DataSource for a school (creates if missing) */
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            log.info("🔗 Creating HikariCP DataSource for school: {}", id);
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-
-            // --- Pool tuning for 5000+ students & 300+ teachers ---
-            config.setMaximumPoolSize(20);    // Increased for better concurrency
-            config.setMinimumIdle(5);
-            config.setIdleTimeout(60000);     // 60 sec
-            config.setMaxLifetime(1800000);   // 30 min
-            config.setConnectionTimeout(15000); // 15 sec wait before timeout
-            config.setLeakDetectionThreshold(60000); // Detect connection leaks
-            config.setConnectionTestQuery("SELECT 1"); // Connection validation
-
-            return new HikariDataSource(config);
-        });
-    }
 
     /** Get JdbcTemplate for a school */
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     /** Get table name based on role and academic year */
@@ -72,31 +58,33 @@ public class RoleBasedAccountService {
 
     /** Ensure table exists for specific role and academic year */
     private void ensureTableExists(JdbcTemplate jdbc, String role, String academicYear) {
-        String tableName = getTableName(role, academicYear);
-
-        String createTableSQL = String.format("""
-            CREATE TABLE IF NOT EXISTS %s (
-                id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                school_id VARCHAR(50) NOT NULL,
-                school_code VARCHAR(50) NOT NULL,
-                academic_year VARCHAR(50) NOT NULL,
-                username VARCHAR(100) NOT NULL UNIQUE,
-                password VARCHAR(255) NOT NULL,
-                role VARCHAR(20) NOT NULL,
-                user_details JSON,
-                created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
-                is_active BOOLEAN DEFAULT TRUE,
-                INDEX idx_school_year (school_id, academic_year),
-                INDEX idx_username (username),
-                INDEX idx_role (role),
-                INDEX idx_active (is_active),
-                INDEX idx_created_at (created_at)
-            )
-        """, tableName);
-
-        jdbc.execute(createTableSQL);
-        log.info("✅ Table {} ensured to exist", tableName);
+        schemaMigrator.migrate(jdbc, "RoleBasedAccountService:" + getTableName(role, academicYear), 1, () -> {
+            String tableName = getTableName(role, academicYear);
+
+            String createTableSQL = String.format("""
+                CREATE TABLE IF NOT EXISTS %s (
+                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    school_id VARCHAR(50) NOT NULL,
+                    school_code VARCHAR(50) NOT NULL,
+                    academic_year VARCHAR(50) NOT NULL,
+                    username VARCHAR(100) NOT NULL UNIQUE,
+                    password VARCHAR(255) NOT NULL,
+                    role VARCHAR(20) NOT NULL,
+                    user_details JSON,
+                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+                    is_active BOOLEAN DEFAULT TRUE,
+                    INDEX idx_school_year (school_id, academic_year),
+                    INDEX idx_username (username),
+                    INDEX idx_role (role),
+                    INDEX idx_active (is_active),
+                    INDEX idx_created_at (created_at)
+                )
+            """, tableName);
+
+            jdbc.execute(createTableSQL);
+            log.info("✅ Table {} ensured to exist", tableName);
+        });
     }
 
     /** Create role-based account */
@@ -408,12 +396,7 @@ public class RoleBasedAccountService {
 
     /** Check if table exists */
     private boolean tableExists(JdbcTemplate jdbc, String tableName) {
-        try {
-            jdbc.queryForObject("SELECT 1 FROM " + tableName + " LIMIT 1", Integer.class);
-            return true;
-        } catch (Exception e) {
-            return false;
-        }
+        return tableCatalog.tableExists(jdbc, tableName);
     }
 
     /** Convert entity to response DTO */
@@ -1,45 +1,32 @@
 package com.backend.school_erp.service.Administration;
 
 import com.backend.school_erp.DTO.Administration.SFDropdownDTO;
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
 import com.backend.school_erp.entity.Administration.StateDistrict;
 import com.backend.school_erp.entity.Administration.CommunityAndCasteSetup;
 import com.backend.school_erp.entity.Administration.StaffDAC;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import javax.sql.DataSource;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 
 @Service
 @Slf4j
 public class SFDropdownService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
-
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            log.info("Creating HikariCP DataSource for school: {}", id);
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-            config.setMaximumPoolSize(10);
-            config.setMinimumIdle(2);
-            return new HikariDataSource(config);
-        });
-    }
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private MasterDataCache masterDataCache;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     // Helper for State/District
@@ -101,11 +88,12 @@ public class SFDropdownService {
     // --- States ---
     public List<SFDropdownDTO> getStates(String schoolId, String academicYear) {
         try {
-            List<StateDistrict> states = getJdbcTemplate(schoolId).query(
-                    "SELECT * FROM state_district WHERE type='state' AND school_id=? ORDER BY name ASC",
-                    new BeanPropertyRowMapper<>(StateDistrict.class),
-                    schoolId
-            );
+            List<StateDistrict> states = masterDataCache.get(schoolId, "state_district", Arrays.asList("sf.getStates"),
+                    () -> getJdbcTemplate(schoolId).query(
+                        "SELECT * FROM state_district WHERE type='state' AND school_id=? ORDER BY name ASC",
+                        new BeanPropertyRowMapper<>(StateDistrict.class),
+                        schoolId
+                ));
             log.info("Found {} states for school {}", states.size(), schoolId);
             return states.stream().map(this::stateDistrictToDTO).collect(Collectors.toList());
         } catch (Exception e) {
@@ -117,11 +105,12 @@ public class SFDropdownService {
     // --- Districts ---
     public List<SFDropdownDTO> getDistricts(String schoolId, String academicYear) {
         try {
-            List<StateDistrict> districts = getJdbcTemplate(schoolId).query(
-                    "SELECT * FROM state_district WHERE type='district' AND school_id=? ORDER BY name ASC",
-                    new BeanPropertyRowMapper<>(StateDistrict.class),
-                    schoolId
-            );
+            List<StateDistrict> districts = masterDataCache.get(schoolId, "state_district", Arrays.asList("sf.getDistricts"),
+                    () -> getJdbcTemplate(schoolId).query(
+                        "SELECT * FROM state_district WHERE type='district' AND school_id=? ORDER BY name ASC",
+                        new BeanPropertyRowMapper<>(StateDistrict.class),
+                        schoolId
+                ));
             log.info("Found {} districts for school {}", districts.size(), schoolId);
             return districts.stream().map(this::stateDistrictToDTO).collect(Collectors.toList());
         } catch (Exception e) {
@@ -133,11 +122,12 @@ public class SFDropdownService {
     // --- Communities --- FIXED
     public List<SFDropdownDTO> getCommunities(String schoolId, String academicYear) {
         try {
-            List<CommunityAndCasteSetup> communities = getJdbcTemplate(schoolId).query(
-                    "SELECT * FROM community_caste WHERE type='communities' AND school_id=? AND academic_year=? ORDER BY name ASC",
-                    new BeanPropertyRowMapper<>(CommunityAndCasteSetup.class),
-                    schoolId, academicYear
-            );
+            List<CommunityAndCasteSetup> communities = masterDataCache.get(schoolId, "community_caste", Arrays.asList("sf.getCommunities", academicYear),
+                    () -> getJdbcTemplate(schoolId).query(
+                        "SELECT * FROM community_caste WHERE type='communities' AND school_id=? AND academic_year=? ORDER BY name ASC",
+                        new BeanPropertyRowMapper<>(CommunityAndCasteSetup.class),
+                        schoolId, academicYear
+                ));
             log.info("Found {} communities for school {}", communities.size(), schoolId);
             return communities.stream().map(this::communityCasteToDTO).collect(Collectors.toList());
         } catch (Exception e) {
@@ -149,11 +139,12 @@ public class SFDropdownService {
     // --- Castes --- FIXED
     public List<SFDropdownDTO> getCastes(String schoolId, String academicYear) {
         try {
-            List<CommunityAndCasteSetup> castes = getJdbcTemplate(schoolId).query(
-                    "SELECT * FROM community_caste WHERE type='castes' AND school_id=? AND academic_year=? ORDER BY name ASC",
-                    new BeanPropertyRowMapper<>(CommunityAndCasteSetup.class),
-                    schoolId, academicYear
-            );
+            List<CommunityAndCasteSetup> castes = masterDataCache.get(schoolId, "community_caste", Arrays.asList("sf.getCastes", academicYear),
+                    () -> getJdbcTemplate(schoolId).query(
+                        "SELECT * FROM community_caste WHERE type='castes' AND school_id=? AND academic_year=? ORDER BY name ASC",
+                        new BeanPropertyRowMapper<>(CommunityAndCasteSetup.class),
+                        schoolId, academicYear
+                ));
             log.info("Found {} castes for school {}", castes.size(), schoolId);
             return castes.stream().map(this::communityCasteToDTO).collect(Collectors.toList());
         } catch (Exception e) {
@@ -165,11 +156,12 @@ public class SFDropdownService {
     // --- Religions --- FIXED
     public List<SFDropdownDTO> getReligions(String schoolId, String academicYear) {
         try {
-            List<CommunityAndCasteSetup> religions = getJdbcTemplate(schoolId).query(
-                    "SELECT * FROM community_caste WHERE type='religions' AND school_id=? AND academic_year=? ORDER BY name ASC",
-                    new BeanPropertyRowMapper<>(CommunityAndCasteSetup.class),
-                    schoolId, academicYear
-            );
+            List<CommunityAndCasteSetup> religions = masterDataCache.get(schoolId, "community_caste", Arrays.asList("sf.getReligions", academicYear),
+                    () -> getJdbcTemplate(schoolId).query(
+                        "SELECT * FROM community_caste WHERE type='religions' AND school_id=? AND academic_year=? ORDER BY name ASC",
+                        new BeanPropertyRowMapper<>(CommunityAndCasteSetup.class),
+                        schoolId, academicYear
+                ));
             log.info("Found {} religions for school {}", religions.size(), schoolId);
             return religions.stream().map(this::communityCasteToDTO).collect(Collectors.toList());
         } catch (Exception e) {
@@ -181,11 +173,12 @@ public class SFDropdownService {
     // --- Nationalities --- FIXED
     public List<SFDropdownDTO> getNationalities(String schoolId, String academicYear) {
         try {
-            List<CommunityAndCasteSetup> nationalities = getJdbcTemplate(schoolId).query(
-                    "SELECT * FROM community_caste WHERE type='nationalities' AND school_id=? AND academic_year=? ORDER BY name ASC",
-                    new BeanPropertyRowMapper<>(CommunityAndCasteSetup.class),
-                    schoolId, academicYear
-            );
+            List<CommunityAndCasteSetup> nationalities = masterDataCache.get(schoolId, "community_caste", Arrays.asList("sf.getNationalities", academicYear),
+                    () -> getJdbcTemplate(schoolId).query(
+                        "SELECT * FROM community_caste WHERE type='nationalities' AND school_id=? AND academic_year=? ORDER BY name ASC",
+                        new BeanPropertyRowMapper<>(CommunityAndCasteSetup.class),
+                        schoolId, academicYear
+                ));
             log.info("Found {} nationalities for school {}", nationalities.size(), schoolId);
             return nationalities.stream().map(this::communityCasteToDTO).collect(Collectors.toList());
         } catch (Exception e) {
@@ -197,11 +190,12 @@ public class SFDropdownService {
     // --- Staff Designations --- FIXED
     public List<SFDropdownDTO> getStaffDesignations(String schoolId, String academicYear) {
         try {
-            List<StaffDAC> designations = getJdbcTemplate(schoolId).query(
-                    "SELECT * FROM staff_dac WHERE type='StaffDesignation' AND school_id=? AND academic_year=? ORDER BY name ASC",
-                    new BeanPropertyRowMapper<>(StaffDAC.class),
-                    schoolId, academicYear
-            );
+            List<StaffDAC> designations = masterDataCache.get(schoolId, "staff_dac", Arrays.asList("sf.getStaffDesignations", academicYear),
+                    () -> getJdbcTemplate(schoolId).query(
+                        "SELECT * FROM staff_dac WHERE type='StaffDesignation' AND school_id=? AND academic_year=? ORDER BY name ASC",
+                        new BeanPropertyRowMapper<>(StaffDAC.class),
+                        schoolId, academicYear
+                ));
             log.info("Found {} staff designations for school {}", designations.size(), schoolId);
             return designations.stream().map(this::staffDacToDTO).collect(Collectors.toList());
         } catch (Exception e) {
@@ -213,11 +207,12 @@ public class SFDropdownService {
     // --- Staff Categories --- FIXED
     public List<SFDropdownDTO> getStaffCategories(String schoolId, String academicYear) {
         try {
-            List<StaffDAC> categories = getJdbcTemplate(schoolId).query(
-                    "SELECT * FROM staff_dac WHERE type='StaffCategory' AND school_id=? AND academic_year=? ORDER BY name ASC",
-                    new BeanPropertyRowMapper<>(StaffDAC.class),
-                    schoolId, academicYear
-            );
+            List<StaffDAC> categories = masterDataCache.get(schoolId, "staff_dac", Arrays.asList("sf.getStaffCategories", academicYear),
+                    () -> getJdbcTemplate(schoolId).query(
+                        "SELECT * FROM staff_dac WHERE type='StaffCategory' AND school_id=? AND academic_year=? ORDER BY name ASC",
+                        new BeanPropertyRowMapper<>(StaffDAC.class),
+                        schoolId, academicYear
+                ));
             log.info("Found {} staff categories for school {}", categories.size(), schoolId);
             return categories.stream().map(this::staffDacToDTO).collect(Collectors.toList());
         } catch (Exception e) {
@@ -230,14 +225,15 @@ public class SFDropdownService {
     public List<SFDropdownDTO> getCourses(String schoolId, String academicYear) {
         try {
             String sql = "SELECT id, standard FROM courses WHERE school_id=? AND academic_year=? ORDER BY standard ASC";
-            List<SFDropdownDTO> courses = getJdbcTemplate(schoolId).query(sql, (rs, rowNum) ->
-                            SFDropdownDTO.builder()
-                                    .id(rs.getLong("id"))
-                                    .name(rs.getString("standard"))
-                                    .standard(rs.getString("standard"))
-                                    .build(),
-                    schoolId, academicYear
-            );
+            List<SFDropdownDTO> courses = masterDataCache.get(schoolId, "courses", Arrays.asList("sf.getCourses", academicYear),
+                    () -> getJdbcTemplate(schoolId).query(sql, (rs, rowNum) ->
+                                SFDropdownDTO.builder()
+                                        .id(rs.getLong("id"))
+                                        .name(rs.getString("standard"))
+                                        .standard(rs.getString("standard"))
+                                        .build(),
+                        schoolId, academicYear
+                ));
             log.info("Found {} courses for school {}", courses.size(), schoolId);
             return courses;
         } catch (Exception e) {
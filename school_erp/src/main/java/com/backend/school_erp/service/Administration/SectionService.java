@@ -1,60 +1,48 @@
 package com.backend.school_erp.service.Administration;
 
 import com.backend.school_erp.DTO.Administration.SectionDTO;
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
 import com.backend.school_erp.entity.Administration.Section;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import javax.sql.DataSource;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 
 @Service
 @Slf4j
 public class SectionService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
-
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            log.info("🔗 Creating HikariCP DataSource for school: {}", id);
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-            config.setMaximumPoolSize(10);
-            config.setMinimumIdle(2);
-            config.setIdleTimeout(30000);
-            config.setMaxLifetime(1800000);
-            config.setConnectionTimeout(10000);
-            return new HikariDataSource(config);
-        });
-    }
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
+
+    @Autowired
+    private MasterDataCache masterDataCache;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     private void ensureTableExists(JdbcTemplate jdbc) {
-        jdbc.execute("""
-            CREATE TABLE IF NOT EXISTS sections (
-                id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                section VARCHAR(50) NOT NULL,          -- renamed column
-                school_id VARCHAR(50) NOT NULL,
-                academic_year VARCHAR(50) NOT NULL,
-                created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                UNIQUE KEY unique_section (section, school_id, academic_year)
-            )
-        """);
+        schemaMigrator.migrate(jdbc, "SectionService", 1, () -> {
+            jdbc.execute("""
+                CREATE TABLE IF NOT EXISTS sections (
+                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    section VARCHAR(50) NOT NULL,          -- renamed column
+                    school_id VARCHAR(50) NOT NULL,
+                    academic_year VARCHAR(50) NOT NULL,
+                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    UNIQUE KEY unique_section (section, school_id, academic_year)
+                )
+            """);
+        });
     }
 
     public List<Section> getSections(String schoolId, String academicYear) {
@@ -76,6 +64,7 @@ public class SectionService {
                     "INSERT INTO sections (section, school_id, academic_year) VALUES (?, ?, ?)",
                     dto.getSection(), schoolId, dto.getAcademicYear()
             );
+            masterDataCache.invalidate(schoolId, "sections");
         } catch (DuplicateKeyException e) {
             throw new RuntimeException("Section already exists: " + dto.getSection());
         }
@@ -94,6 +83,7 @@ public class SectionService {
         ensureTableExists(jdbc);
 
         int rows = jdbc.update("UPDATE sections SET section = ? WHERE id = ?", sectionName, id);
+        masterDataCache.invalidate(schoolId, "sections");
         if (rows == 0) throw new RuntimeException("Section not found with id " + id);
 
         return jdbc.queryForObject(
@@ -108,6 +98,7 @@ public class SectionService {
         ensureTableExists(jdbc);
 
         int rows = jdbc.update("DELETE FROM sections WHERE id = ?", id);
+        masterDataCache.invalidate(schoolId, "sections");
         if (rows == 0) throw new RuntimeException("Section not found with id " + id);
     }
 }
@@ -1,58 +1,48 @@
 package com.backend.school_erp.service.Administration;
 
 import com.backend.school_erp.DTO.Administration.StaffDACDTO;
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
 import com.backend.school_erp.entity.Administration.StaffDAC;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import javax.sql.DataSource;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 
 @Service
 @Slf4j
 public class StaffDACService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
-
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            log.info("🔗 Creating HikariCP DataSource for school: {}", id);
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-            config.setMaximumPoolSize(10);
-            config.setMinimumIdle(2);
-            config.setIdleTimeout(30000);
-            config.setMaxLifetime(1800000);
-            config.setConnectionTimeout(10000);
-            return new HikariDataSource(config);
-        });
-    }
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
+
+    @Autowired
+    private MasterDataCache masterDataCache;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     private void ensureTableExists(JdbcTemplate jdbc) {
-        jdbc.execute("""
-            CREATE TABLE IF NOT EXISTS staff_dac (
-                id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                name VARCHAR(255) NOT NULL,
-                type VARCHAR(50) NOT NULL,
-                school_id VARCHAR(50) NOT NULL,
-                academic_year VARCHAR(50) NOT NULL,
-                created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                UNIQUE KEY unique_entry (name, type, school_id, academic_year)
-            )
-        """);
+        schemaMigrator.migrate(jdbc, "StaffDACService", 1, () -> {
+            jdbc.execute("""
+                CREATE TABLE IF NOT EXISTS staff_dac (
+                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    name VARCHAR(255) NOT NULL,
+                    type VARCHAR(50) NOT NULL,
+                    school_id VARCHAR(50) NOT NULL,
+                    academic_year VARCHAR(50) NOT NULL,
+                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    UNIQUE KEY unique_entry (name, type, school_id, academic_year)
+                )
+            """);
+        });
     }
 
     public List<StaffDAC> getAll(String type, String schoolId, String academicYear) {
@@ -74,6 +64,7 @@ public class StaffDACService {
             VALUES (?, ?, ?, ?)
             ON DUPLICATE KEY UPDATE id = id
         """, dto.getName(), dto.getType(), dto.getSchoolId(), dto.getAcademicYear());
+        masterDataCache.invalidate(schoolId, "staff_dac");
 
         if (rows == 0) {
             throw new RuntimeException(dto.getType() + " already exists: " + dto.getName());
@@ -94,6 +85,7 @@ public class StaffDACService {
         ensureTableExists(jdbc);
 
         int rows = jdbc.update("UPDATE staff_dac SET name = ? WHERE id = ?", newName, id);
+        masterDataCache.invalidate(schoolId, "staff_dac");
         if (rows == 0) return Optional.empty();
 
         return Optional.ofNullable(jdbc.queryForObject(
@@ -107,6 +99,7 @@ public class StaffDACService {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
         ensureTableExists(jdbc);
         int rows = jdbc.update("DELETE FROM staff_dac WHERE id = ?", id);
+        masterDataCache.invalidate(schoolId, "staff_dac");
         return rows > 0;
     }
 }
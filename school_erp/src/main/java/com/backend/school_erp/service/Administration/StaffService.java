@@ -1,93 +1,84 @@
 package com.backend.school_erp.service.Administration;
 
 import com.backend.school_erp.DTO.Administration.StaffDTO;
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
 import com.backend.school_erp.entity.Administration.Staff;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import javax.sql.DataSource;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 import org.springframework.dao.EmptyResultDataAccessException;
 
 @Service
 @Slf4j
 public class StaffService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
-
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            log.info("🔗 Creating DataSource for {}", id);
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-            config.setMaximumPoolSize(10);
-            return new HikariDataSource(config);
-        });
-    }
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     private void ensureTableExists(JdbcTemplate jdbc) {
-        jdbc.execute("""
-            CREATE TABLE IF NOT EXISTS staff (
-                id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                staff_code VARCHAR(100) NOT NULL,
-                name VARCHAR(255),
-                family_head_name VARCHAR(255),
-                number_street_name VARCHAR(255),
-                place_pin_code VARCHAR(50),
-                state_id VARCHAR(50),
-                state VARCHAR(255),
-                district_id VARCHAR(50),
-                district VARCHAR(255),
-                gender VARCHAR(20),
-                date_of_birth VARCHAR(50),
-                community_id VARCHAR(50),
-                community VARCHAR(255),
-                caste_id VARCHAR(50),
-                caste VARCHAR(255),
-                religion_id VARCHAR(50),
-                religion VARCHAR(255),
-                nationality_id VARCHAR(50),
-                nationality VARCHAR(255),
-                designation_id VARCHAR(50),
-                designation VARCHAR(255),
-                education_qualification VARCHAR(255),
-                salary VARCHAR(50),
-                pf_number VARCHAR(100),
-                category_id VARCHAR(50),
-                category VARCHAR(255),
-                marital_status VARCHAR(50),
-                major_subject VARCHAR(255),
-                optional_subject VARCHAR(255),
-                extra_talent_dl_no VARCHAR(255),
-                experience VARCHAR(255),
-                class_in_charge_id VARCHAR(50),
-                class_in_charge VARCHAR(255),
-                date_of_joining VARCHAR(50),
-                email_bank_ac_id VARCHAR(255),
-                total_leave_days VARCHAR(50),
-                mobile_number VARCHAR(20),
-                status VARCHAR(50),
-                date_of_relieve VARCHAR(50),
-                school_id VARCHAR(50),
-                academic_year VARCHAR(50),
-                created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                UNIQUE KEY unique_staff (staff_code, school_id, academic_year)
-            )
-        """);
+        schemaMigrator.migrate(jdbc, "StaffService", 1, () -> {
+            jdbc.execute("""
+                CREATE TABLE IF NOT EXISTS staff (
+                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    staff_code VARCHAR(100) NOT NULL,
+                    name VARCHAR(255),
+                    family_head_name VARCHAR(255),
+                    number_street_name VARCHAR(255),
+                    place_pin_code VARCHAR(50),
+                    state_id VARCHAR(50),
+                    state VARCHAR(255),
+                    district_id VARCHAR(50),
+                    district VARCHAR(255),
+                    gender VARCHAR(20),
+                    date_of_birth VARCHAR(50),
+                    community_id VARCHAR(50),
+                    community VARCHAR(255),
+                    caste_id VARCHAR(50),
+                    caste VARCHAR(255),
+                    religion_id VARCHAR(50),
+                    religion VARCHAR(255),
+                    nationality_id VARCHAR(50),
+                    nationality VARCHAR(255),
+                    designation_id VARCHAR(50),
+                    designation VARCHAR(255),
+                    education_qualification VARCHAR(255),
+                    salary VARCHAR(50),
+                    pf_number VARCHAR(100),
+                    category_id VARCHAR(50),
+                    category VARCHAR(255),
+                    marital_status VARCHAR(50),
+                    major_subject VARCHAR(255),
+                    optional_subject VARCHAR(255),
+                    extra_talent_dl_no VARCHAR(255),
+                    experience VARCHAR(255),
+                    class_in_charge_id VARCHAR(50),
+                    class_in_charge VARCHAR(255),
+                    date_of_joining VARCHAR(50),
+                    email_bank_ac_id VARCHAR(255),
+                    total_leave_days VARCHAR(50),
+                    mobile_number VARCHAR(20),
+                    status VARCHAR(50),
+                    date_of_relieve VARCHAR(50),
+                    school_id VARCHAR(50),
+                    academic_year VARCHAR(50),
+                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    UNIQUE KEY unique_staff (staff_code, school_id, academic_year)
+                )
+            """);
+        });
     }
 
     public List<Staff> getAllStaff(String schoolId, String academicYear) {
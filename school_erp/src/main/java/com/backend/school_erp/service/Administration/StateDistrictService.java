@@ -1,59 +1,49 @@
 package com.backend.school_erp.service.Administration;
 
 import com.backend.school_erp.DTO.Administration.StateDistrictDTO;
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
 import com.backend.school_erp.entity.Administration.StateDistrict;
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import javax.sql.DataSource;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @Slf4j
 public class StateDistrictService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
-
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            log.info("🔗 Creating HikariCP DataSource for school: {}", id);
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-            config.setMaximumPoolSize(10);
-            config.setMinimumIdle(2);
-            config.setIdleTimeout(30000);
-            config.setMaxLifetime(1800000);
-            config.setConnectionTimeout(10000);
-            return new HikariDataSource(config);
-        });
-    }
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
+
+    @Autowired
+    private MasterDataCache masterDataCache;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     private void ensureTableExists(JdbcTemplate jdbc) {
-        jdbc.execute("""
-            CREATE TABLE IF NOT EXISTS state_district (
-                id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                name VARCHAR(255) NOT NULL,
-                type VARCHAR(50) NOT NULL,
-                state_id BIGINT NULL,
-                school_id VARCHAR(50) NOT NULL,
-                created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                UNIQUE KEY unique_entry (name, type, school_id, state_id),
-                FOREIGN KEY (state_id) REFERENCES state_district(id) ON DELETE CASCADE
-            )
-        """);
+        schemaMigrator.migrate(jdbc, "StateDistrictService", 1, () -> {
+            jdbc.execute("""
+                CREATE TABLE IF NOT EXISTS state_district (
+                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    name VARCHAR(255) NOT NULL,
+                    type VARCHAR(50) NOT NULL,
+                    state_id BIGINT NULL,
+                    school_id VARCHAR(50) NOT NULL,
+                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    UNIQUE KEY unique_entry (name, type, school_id, state_id),
+                    FOREIGN KEY (state_id) REFERENCES state_district(id) ON DELETE CASCADE
+                )
+            """);
+        });
     }
 
     public List<StateDistrict> getAll(String type, String schoolId) {
@@ -96,6 +86,7 @@ public class StateDistrictService {
             VALUES (?, ?, ?, ?)
             ON DUPLICATE KEY UPDATE id = id
         """, dto.getName(), dto.getType(), dto.getStateId(), dto.getSchoolId());
+        masterDataCache.invalidate(schoolId, "state_district");
 
         if (rows == 0) {
             throw new RuntimeException(dto.getType() + " already exists: " + dto.getName());
@@ -116,6 +107,7 @@ public class StateDistrictService {
         ensureTableExists(jdbc);
 
         int rows = jdbc.update("UPDATE state_district SET name = ? WHERE id = ?", newName, id);
+        masterDataCache.invalidate(schoolId, "state_district");
         if (rows == 0) return Optional.empty();
 
         return Optional.ofNullable(jdbc.queryForObject(
@@ -154,6 +146,7 @@ public class StateDistrictService {
                     "DELETE FROM state_district WHERE id = ? AND school_id = ?",
                     id, schoolId
             );
+            masterDataCache.invalidate(schoolId, "state_district");
 
             log.info("✅ Deleted {} entry with ID {} for school {}", rowsDeleted, id, schoolId);
             return rowsDeleted > 0;
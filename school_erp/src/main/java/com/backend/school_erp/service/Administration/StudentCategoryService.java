@@ -1,62 +1,49 @@
 package com.backend.school_erp.service.Administration;
 
 import com.backend.school_erp.DTO.Administration.StudentCategoryDTO;
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
 import com.backend.school_erp.entity.Administration.StudentCategory;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import javax.sql.DataSource;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 
 @Service
 @Slf4j
 public class StudentCategoryService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
-
-    // ---------------- Hikari DataSource per school ----------------
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            log.info("🔗 Creating HikariCP DataSource for school: {}", id);
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-            config.setMaximumPoolSize(10);
-            config.setMinimumIdle(2);
-            config.setIdleTimeout(30000);
-            config.setMaxLifetime(1800000);
-            config.setConnectionTimeout(10000);
-            return new HikariDataSource(config);
-        });
-    }
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
+
+    @Autowired
+    private MasterDataCache masterDataCache;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     // ---------------- Ensure Table Exists ----------------
     private void ensureTableExists(JdbcTemplate jdbc) {
-        jdbc.execute("""
-            CREATE TABLE IF NOT EXISTS student_categories (
-                id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                student_category_name VARCHAR(255) NOT NULL,
-                school_id VARCHAR(50) NOT NULL,
-                academic_year VARCHAR(50) NOT NULL,
-                created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                UNIQUE KEY unique_category (student_category_name, school_id, academic_year)
-            )
-        """);
+        schemaMigrator.migrate(jdbc, "StudentCategoryService", 1, () -> {
+            jdbc.execute("""
+                CREATE TABLE IF NOT EXISTS student_categories (
+                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    student_category_name VARCHAR(255) NOT NULL,
+                    school_id VARCHAR(50) NOT NULL,
+                    academic_year VARCHAR(50) NOT NULL,
+                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    UNIQUE KEY unique_category (student_category_name, school_id, academic_year)
+                )
+            """);
+        });
     }
 
     // ---------------- Get Categories ----------------
@@ -80,6 +67,7 @@ public class StudentCategoryService {
                     "INSERT INTO student_categories (student_category_name, school_id, academic_year) VALUES (?, ?, ?)",
                     dto.getStudentCategoryName(), schoolId, dto.getAcademicYear()
             );
+            masterDataCache.invalidate(schoolId, "student_categories");
         } catch (DuplicateKeyException e) {
             throw new RuntimeException("Student Category already exists: " + dto.getStudentCategoryName());
         }
@@ -102,6 +90,7 @@ public class StudentCategoryService {
                 "UPDATE student_categories SET student_category_name = ? WHERE id = ? AND school_id = ?",
                 newName, id, schoolId
         );
+        masterDataCache.invalidate(schoolId, "student_categories");
         if (rows == 0) throw new RuntimeException("Student Category not found with id " + id);
 
         return jdbc.queryForObject(
@@ -117,6 +106,7 @@ public class StudentCategoryService {
         ensureTableExists(jdbc);
 
         int rows = jdbc.update("DELETE FROM student_categories WHERE id = ? AND school_id = ?", id, schoolId);
+        masterDataCache.invalidate(schoolId, "student_categories");
         if (rows == 0) throw new RuntimeException("Student Category not found with id " + id);
     }
 }
@@ -1,64 +1,54 @@
 package com.backend.school_erp.service.Administration;
 
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
 import lombok.extern.slf4j.Slf4j;
 import com.backend.school_erp.DTO.Administration.TuitionFeeSetupDTO;
 import com.backend.school_erp.entity.Administration.TuitionFeeSetup;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import javax.sql.DataSource;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 
 @Service
 @Slf4j
 public class TuitionFeeSetupService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
-
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            log.info("🔗 Creating HikariCP DataSource for school: {}", id);
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-            config.setMaximumPoolSize(10);
-            config.setMinimumIdle(2);
-            config.setIdleTimeout(30000);
-            config.setMaxLifetime(1800000);
-            config.setConnectionTimeout(10000);
-            return new HikariDataSource(config);
-        });
-    }
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
+
+    @Autowired
+    private MasterDataCache masterDataCache;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     private void ensureTableExists(JdbcTemplate jdbc) {
-        jdbc.execute("""
-            CREATE TABLE IF NOT EXISTS tuition_fees (
-                id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                standard VARCHAR(100) NOT NULL,
-                student_category VARCHAR(100) NOT NULL,
-                fee_heading VARCHAR(100) NOT NULL,
-                account_head VARCHAR(100) NOT NULL, -- Added account_head
-                fee_amount DECIMAL(12,2) NOT NULL,
-                school_id VARCHAR(50) NOT NULL,
-                academic_year VARCHAR(50) NOT NULL,
-                created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                UNIQUE KEY unique_fee (standard, student_category, fee_heading, school_id, academic_year)
-            )
-        """);
+        schemaMigrator.migrate(jdbc, "TuitionFeeSetupService", 1, () -> {
+            jdbc.execute("""
+                CREATE TABLE IF NOT EXISTS tuition_fees (
+                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    standard VARCHAR(100) NOT NULL,
+                    student_category VARCHAR(100) NOT NULL,
+                    fee_heading VARCHAR(100) NOT NULL,
+                    account_head VARCHAR(100) NOT NULL, -- Added account_head
+                    fee_amount DECIMAL(12,2) NOT NULL,
+                    school_id VARCHAR(50) NOT NULL,
+                    academic_year VARCHAR(50) NOT NULL,
+                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    UNIQUE KEY unique_fee (standard, student_category, fee_heading, school_id, academic_year)
+                )
+            """);
+        });
     }
 
     // --- CRUD Methods ---
@@ -87,6 +77,7 @@ public class TuitionFeeSetupService {
                     dto.getStandard(), dto.getStudentCategory(), dto.getFeeHeading(),
                     dto.getAccountHead(), dto.getFeeAmount(), schoolId, academicYear
             );
+            masterDataCache.invalidate(schoolId, "tuition_fees");
         } catch (DuplicateKeyException e) {
             throw new RuntimeException("Tuition fee already exists for this combination.");
         }
@@ -112,6 +103,7 @@ public class TuitionFeeSetupService {
                 dto.getStandard(), dto.getStudentCategory(), dto.getFeeHeading(),
                 dto.getAccountHead(), dto.getFeeAmount(), id, schoolId, academicYear
         );
+        masterDataCache.invalidate(schoolId, "tuition_fees");
         if (rows == 0) throw new RuntimeException("Tuition fee not found with id " + id);
         return jdbc.queryForObject(
                 "SELECT * FROM tuition_fees WHERE id = ?",
@@ -127,6 +119,7 @@ public class TuitionFeeSetupService {
                 "DELETE FROM tuition_fees WHERE id = ? AND school_id = ? AND academic_year = ?",
                 id, schoolId, academicYear
         );
+        masterDataCache.invalidate(schoolId, "tuition_fees");
         if (rows == 0) throw new RuntimeException("Tuition fee not found with id " + id);
     }
 
@@ -135,27 +128,30 @@ public class TuitionFeeSetupService {
     public List<Map<String, Object>> getCourses(String schoolId, String academicYear) {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
         // Added WHERE clause to filter by schoolId and academicYear
-        return jdbc.queryForList(
-                "SELECT id AS value, standard AS label FROM courses WHERE school_id = ? AND academic_year = ? ORDER BY standard",
-                schoolId, academicYear
-        );
+        return masterDataCache.get(schoolId, "courses", Arrays.asList("tuitionSetup.getCourses", academicYear),
+                () -> jdbc.queryForList(
+                        "SELECT id AS value, standard AS label FROM courses WHERE school_id = ? AND academic_year = ? ORDER BY standard",
+                        schoolId, academicYear
+                ));
     }
 
     public List<Map<String, Object>> getStudentCategories(String schoolId, String academicYear) {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
         // Added WHERE clause to filter by schoolId and academicYear
-        return jdbc.queryForList(
-                "SELECT id AS value, student_category_name AS label FROM student_categories WHERE school_id = ? AND academic_year = ? ORDER BY student_category_name",
-                schoolId, academicYear
-        );
+        return masterDataCache.get(schoolId, "student_categories", Arrays.asList("tuitionSetup.getStudentCategories", academicYear),
+                () -> jdbc.queryForList(
+                        "SELECT id AS value, student_category_name AS label FROM student_categories WHERE school_id = ? AND academic_year = ? ORDER BY student_category_name",
+                        schoolId, academicYear
+                ));
     }
 
     public List<Map<String, Object>> getFeeHeadings(String schoolId, String academicYear) {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
         // Include account_head in the response
-        return jdbc.queryForList(
-                "SELECT id AS value, fee_head AS label, account_head FROM fee_heads WHERE school_id = ? AND academic_year = ? ORDER BY fee_head",
-                schoolId, academicYear
-        );
+        return masterDataCache.get(schoolId, "fee_heads", Arrays.asList("tuitionSetup.getFeeHeadings", academicYear),
+                () -> jdbc.queryForList(
+                        "SELECT id AS value, fee_head AS label, account_head FROM fee_heads WHERE school_id = ? AND academic_year = ? ORDER BY fee_head",
+                        schoolId, academicYear
+                ));
     }
 }
\ No newline at end of file
@@ -0,0 +1,529 @@
+package com.backend.school_erp.service.AdmissionMaster;
+
+import com.backend.school_erp.DTO.AdmissionMaster.AdmissionImportErrorDTO;
+import com.backend.school_erp.DTO.AdmissionMaster.AdmissionImportResultDTO;
+import com.backend.school_erp.config.SchoolDataChangedEvent;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantTableCatalog;
+import com.backend.school_erp.service.Import.ImportFormat;
+import com.backend.school_erp.service.Import.ImportReader;
+import com.backend.school_erp.service.Import.ImportRow;
+import com.backend.school_erp.service.Media.MediaStore;
+import com.backend.school_erp.service.Transaction.FeeDemandService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Admits a whole sheet of students at once (.csv or .xlsx, one student per row under a header
+ * row naming the columns), with an optional zip of their photos named by admission number.
+ *
+ * Rows are checked as they are read; admission numbers already admitted this year are caught
+ * against the student directory and repeats within the sheet against the rows before them.
+ * Checked rows are written {@code admission-import.chunk-size} at a time, each chunk in a
+ * transaction of its own: one batched insert of the admissions, the class's tuition fees (and
+ * hostel fees, for rows marked so) in one INSERT ... SELECT from the fee setup, and bus fees by
+ * boarding point. A chunk that fails is written again row by row, so a bad row only costs
+ * itself. Every row left out is reported with its row number and the reason.
+ */
+@Service
+@Slf4j
+public class AdmissionImportService {
+
+    // Columns a sheet may fill, with their VARCHAR sizes (0 for TEXT and dates)
+    private static final Map<String, Integer> COLUMNS = new LinkedHashMap<>();
+
+    static {
+        String[] columns = {"admission_number:100", "student_name:255", "father_name:255", "mother_name:255",
+                "street_village:255", "place_pincode:20", "district:100", "phone_number:20", "phone_number2:20",
+                "boarding_point:100", "bus_route_number:100", "email_id:255", "communication_address:0",
+                "nationality:100", "religion:100", "state:100", "community:100", "caste:100", "student_type:50",
+                "student_category:100", "standard:50", "section:50", "gender:20", "date_of_birth:0", "emis:100",
+                "lunch_refresh:100", "blood_group:10", "date_of_admission:0", "mother_tongue:100",
+                "father_occupation:100", "mother_occupation:100", "exam_number:100", "studied_year:50",
+                "class_last_studied:50", "class_to_be_admitted:50", "name_of_school:255", "remarks:0",
+                "identification_mark1:255", "identification_mark2:255", "aadhar_number:20"};
+        for (String column : columns) {
+            String[] nameAndSize = column.split(":");
+            COLUMNS.put(nameAndSize[0], Integer.parseInt(nameAndSize[1]));
+        }
+    }
+
+    private static final List<String> COLUMN_NAMES = List.copyOf(COLUMNS.keySet());
+    private static final Set<String> REQUIRED = Set.of("admission_number", "student_name", "father_name", "mother_name", "standard");
+    private static final Set<String> DATES = Set.of("date_of_birth", "date_of_admission");
+
+    // Other header spellings schools use, as normalized by header()
+    private static final Map<String, String> ALIASES = Map.ofEntries(
+            Map.entry("admissionno", "admission_number"), Map.entry("admno", "admission_number"),
+            Map.entry("name", "student_name"), Map.entry("class", "standard"),
+            Map.entry("aadhar", "aadhar_number"), Map.entry("aadharno", "aadhar_number"),
+            Map.entry("aadhaar", "aadhar_number"), Map.entry("aadhaarnumber", "aadhar_number"),
+            Map.entry("aadhaarno", "aadhar_number"), Map.entry("dob", "date_of_birth"),
+            Map.entry("doa", "date_of_admission"), Map.entry("phone", "phone_number"),
+            Map.entry("mobile", "phone_number"), Map.entry("mobilenumber", "phone_number"),
+            Map.entry("phonenumber1", "phone_number"), Map.entry("mobilenumber2", "phone_number2"),
+            Map.entry("emisno", "emis"), Map.entry("emisnumber", "emis"), Map.entry("pincode", "place_pincode"),
+            Map.entry("route", "bus_route_number"), Map.entry("routenumber", "bus_route_number"),
+            Map.entry("busroute", "bus_route_number"), Map.entry("category", "student_category"),
+            Map.entry("email", "email_id"));
+
+    // Optional yes/no column: whether the student gets the class's hostel fees
+    private static final Set<String> HOSTEL_HEADERS = Set.of("hostel", "hosteller", "hostelfees");
+    private static final Set<String> YES = Set.of("y", "yes", "true", "1", "hostel", "hosteller");
+
+    private static final List<DateTimeFormatter> DATE_FORMATS = List.of(
+            DateTimeFormatter.ofPattern("uuuu-M-d").withResolverStyle(ResolverStyle.STRICT),
+            DateTimeFormatter.ofPattern("d-M-uuuu").withResolverStyle(ResolverStyle.STRICT),
+            DateTimeFormatter.ofPattern("d/M/uuuu").withResolverStyle(ResolverStyle.STRICT),
+            DateTimeFormatter.ofPattern("d.M.uuuu").withResolverStyle(ResolverStyle.STRICT));
+
+    private static final String FEE_COLUMNS = "admission_number, student_name, standard, section, father_name, mother_name, " +
+            "fee_heading, account_head, amount, status, academic_year, school_id, aadhar_number, course, mother_tongue, blood_group";
+    private static final String TRANSPORT_FEE_COLUMNS = "admission_number, student_name, standard, section, father_name, mother_name, " +
+            "fee_heading, account_head, amount, status, academic_year, school_id, aadhar_number, boarding_point, bus_route_number, " +
+            "course, mother_tongue, blood_group";
+
+    // Same limit as a single admission's photo upload
+    private static final int MAX_PHOTO_BYTES = 10 * 1024 * 1024;
+
+    private final TenantDataSourceRouter tenantDataSourceRouter;
+    private final TenantTableCatalog tableCatalog;
+    private final AdmissionService admissionService;
+    private final FeeDemandService feeDemandService;
+    private final StudentDirectory studentDirectory;
+    private final MediaStore mediaStore;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${admission-import.chunk-size:500}")
+    private int chunkSize;
+
+    public AdmissionImportService(TenantDataSourceRouter tenantDataSourceRouter, TenantTableCatalog tableCatalog, AdmissionService admissionService, FeeDemandService feeDemandService, StudentDirectory studentDirectory, MediaStore mediaStore, ApplicationEventPublisher eventPublisher) {
+        this.tenantDataSourceRouter = tenantDataSourceRouter;
+        this.tableCatalog = tableCatalog;
+        this.admissionService = admissionService;
+        this.feeDemandService = feeDemandService;
+        this.studentDirectory = studentDirectory;
+        this.mediaStore = mediaStore;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * @param fileName the sheet's file name, whose extension tells its format
+     * @param photos   zip of photos named by admission number (e.g. {@code ADM001.jpg}), or null
+     * @throws IllegalArgumentException when the file as a whole cannot be imported (unknown format,
+     *                                  no header, a required column missing)
+     */
+    public AdmissionImportResultDTO importAdmissions(String schoolId, String academicYear, String fileName,
+                                                     InputStream sheet, InputStream photos) {
+        long start = System.currentTimeMillis();
+        ImportFormat format = ImportFormat.of(fileName);
+        JdbcTemplate jdbc = tenantDataSourceRouter.getJdbcTemplate(schoolId);
+        admissionService.ensureTablesExist(jdbc, academicYear);
+
+        Map<String, Photo> photoRefs = photos == null ? Map.of() : storePhotos(schoolId, photos);
+        Run run = new Run(schoolId, academicYear, jdbc, tenantDataSourceRouter.getTransactionTemplate(schoolId),
+                photoRefs, busFees(jdbc, schoolId, academicYear));
+
+        List<AdmissionImportErrorDTO> errors = new ArrayList<>();
+        List<String> ignored = new ArrayList<>();
+        int total = 0;
+        int imported = 0;
+        int photosAttached = 0;
+        try (ImportReader reader = format.open(sheet)) {
+            ImportRow headerRow = reader.next();
+            if (headerRow == null) {
+                throw new IllegalArgumentException("The sheet is empty");
+            }
+            int[] index = new int[COLUMN_NAMES.size()];
+            int hostelIndex = header(headerRow, index, ignored);
+
+            Map<String, Integer> seen = new HashMap<>();
+            List<Student> chunk = new ArrayList<>();
+            ImportRow row;
+            while ((row = reader.next()) != null) {
+                if (row.isBlank()) {
+                    continue;
+                }
+                total++;
+                List<String> problems = new ArrayList<>();
+                Student student = parse(row, index, hostelIndex, problems);
+                if (student.admissionNumber() != null) {
+                    String key = student.admissionNumber().toLowerCase(Locale.ROOT);
+                    Integer earlier = seen.putIfAbsent(key, row.number());
+                    if (earlier != null) {
+                        problems.add("Admission number repeats row " + earlier);
+                    } else if (studentDirectory.find(schoolId, academicYear, student.admissionNumber()).isPresent()) {
+                        problems.add("Admission number already exists");
+                    }
+                }
+                if (!problems.isEmpty()) {
+                    errors.add(error(row.number(), student.admissionNumber(), String.join("; ", problems)));
+                    continue;
+                }
+                chunk.add(student);
+                if (chunk.size() >= chunkSize) {
+                    List<Student> written = write(run, chunk, errors);
+                    imported += written.size();
+                    photosAttached += withPhotos(run, written);
+                    chunk.clear();
+                }
+            }
+            List<Student> written = write(run, chunk, errors);
+            imported += written.size();
+            photosAttached += withPhotos(run, written);
+        } finally {
+            if (imported > 0) {
+                studentDirectory.invalidate(schoolId, academicYear);
+                eventPublisher.publishEvent(new SchoolDataChangedEvent(schoolId, academicYear, "admission import"));
+            }
+        }
+
+        errors.sort(Comparator.comparing(AdmissionImportErrorDTO::getRowNumber));
+        long elapsed = System.currentTimeMillis() - start;
+        log.info("📥 Imported {} of {} admissions for school {} ({}) in {} ms, {} rows rejected",
+                imported, total, schoolId, academicYear, elapsed, errors.size());
+        return AdmissionImportResultDTO.builder()
+                .totalRows(total)
+                .importedCount(imported)
+                .failedCount(total - imported)
+                .photoCount(photoRefs.size())
+                .photosAttached(photosAttached)
+                .ignoredColumns(ignored)
+                .elapsedMs(elapsed)
+                .errors(errors)
+                .build();
+    }
+
+    /**
+     * Fills {@code index} with the sheet column of each admission column (-1 when absent) and
+     * returns the hostel column's, or -1.
+     */
+    private int header(ImportRow header, int[] index, List<String> ignored) {
+        Arrays.fill(index, -1);
+        Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < COLUMN_NAMES.size(); i++) {
+            positions.put(normalize(COLUMN_NAMES.get(i)), i);
+        }
+        int hostelIndex = -1;
+        for (int cell = 0; cell < header.cells().size(); cell++) {
+            String name = normalize(header.cell(cell));
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (HOSTEL_HEADERS.contains(name)) {
+                hostelIndex = cell;
+                continue;
+            }
+            Integer position = positions.get(ALIASES.containsKey(name) ? normalize(ALIASES.get(name)) : name);
+            if (position == null || index[position] >= 0) {
+                ignored.add(header.cell(cell));
+            } else {
+                index[position] = cell;
+            }
+        }
+        List<String> missing = new ArrayList<>();
+        for (int i = 0; i < COLUMN_NAMES.size(); i++) {
+            if (index[i] < 0 && REQUIRED.contains(COLUMN_NAMES.get(i))) {
+                missing.add(label(COLUMN_NAMES.get(i)));
+            }
+        }
+        if (!missing.isEmpty()) {
+            throw new IllegalArgumentException("The sheet has no column for: " + String.join(", ", missing));
+        }
+        return hostelIndex;
+    }
+
+    private Student parse(ImportRow row, int[] index, int hostelIndex, List<String> problems) {
+        Object[] values = new Object[COLUMN_NAMES.size()];
+        for (int i = 0; i < COLUMN_NAMES.size(); i++) {
+            String column = COLUMN_NAMES.get(i);
+            String text = index[i] < 0 ? "" : row.cell(index[i]);
+            if (text.isEmpty()) {
+                if (REQUIRED.contains(column)) {
+                    problems.add(label(column) + " is required");
+                }
+                continue;
+            }
+            if (DATES.contains(column)) {
+                LocalDate date = parseDate(text);
+                if (date == null) {
+                    problems.add(label(column) + " is not a date: " + text);
+                }
+                values[i] = date;
+                continue;
+            }
+            int size = COLUMNS.get(column);
+            if (size > 0 && text.length() > size) {
+                problems.add(label(column) + " is longer than " + size + " characters");
+            }
+            values[i] = text;
+        }
+        String hostel = hostelIndex < 0 ? "" : row.cell(hostelIndex).toLowerCase(Locale.ROOT);
+        return new Student(row.number(), (String) values[0], values, YES.contains(hostel));
+    }
+
+    // The students written, in their own transaction or else one by one
+    private List<Student> write(Run run, List<Student> chunk, List<AdmissionImportErrorDTO> errors) {
+        if (chunk.isEmpty()) {
+            return List.of();
+        }
+        try {
+            run.transaction().execute(status -> {
+                insert(run, chunk);
+                return null;
+            });
+            return List.copyOf(chunk);
+        } catch (RuntimeException e) {
+            log.warn("⚠️ Import of rows {}-{} failed, writing them one by one: {}",
+                    chunk.get(0).rowNumber(), chunk.get(chunk.size() - 1).rowNumber(), e.getMessage());
+        }
+        List<Student> written = new ArrayList<>();
+        for (Student student : chunk) {
+            try {
+                run.transaction().execute(status -> {
+                    insert(run, List.of(student));
+                    return null;
+                });
+                written.add(student);
+            } catch (RuntimeException e) {
+                Throwable cause = e;
+                while (cause.getCause() != null) {
+                    cause = cause.getCause();
+                }
+                errors.add(error(student.rowNumber(), student.admissionNumber(), cause.getMessage()));
+            }
+        }
+        return written;
+    }
+
+    private static int withPhotos(Run run, List<Student> students) {
+        return (int) students.stream()
+                .filter(student -> run.photos().containsKey(student.admissionNumber().toLowerCase(Locale.ROOT)))
+                .count();
+    }
+
+    private void insert(Run run, List<Student> students) {
+        JdbcTemplate jdbc = run.jdbc();
+        String admissionTable = "admissions_" + FeeDemandService.yearKey(run.academicYear());
+        List<Object[]> rows = new ArrayList<>(students.size());
+        List<String> numbers = new ArrayList<>(students.size());
+        List<String> hostellers = new ArrayList<>();
+        for (Student student : students) {
+            Photo photo = run.photos().get(student.admissionNumber().toLowerCase(Locale.ROOT));
+            Object[] row = Arrays.copyOf(student.values(), COLUMN_NAMES.size() + 4);
+            row[COLUMN_NAMES.size()] = photo != null ? photo.ref() : null;
+            row[COLUMN_NAMES.size() + 1] = photo != null ? photo.contentType() : null;
+            row[COLUMN_NAMES.size() + 2] = run.schoolId();
+            row[COLUMN_NAMES.size() + 3] = run.academicYear();
+            rows.add(row);
+            numbers.add(student.admissionNumber());
+            if (student.hosteller()) {
+                hostellers.add(student.admissionNumber());
+            }
+        }
+        jdbc.batchUpdate("INSERT INTO " + admissionTable + " (" + String.join(", ", COLUMN_NAMES) +
+                ", student_photo_ref, student_photo_content_type, school_id, academic_year) VALUES (" +
+                placeholders(COLUMN_NAMES.size() + 4) + ")", rows);
+
+        String safeYear = FeeDemandService.yearKey(run.academicYear());
+        assignFeesFromSetup(run, admissionTable, "tuition_fees", "tuition_fees_" + safeYear, numbers);
+        assignFeesFromSetup(run, admissionTable, "hostel_fees", "hostel_fees_" + safeYear, hostellers);
+        assignBusFees(run, "transport_fees_" + safeYear, students);
+        feeDemandService.refreshStudents(jdbc, run.academicYear(), numbers);
+    }
+
+    /**
+     * Gives every student the fee structure of their class in one INSERT ... SELECT: the rows of
+     * their own category, or every row of the class when the class has none for it.
+     */
+    private void assignFeesFromSetup(Run run, String admissionTable, String setupTable, String feeTable, List<String> students) {
+        if (students.isEmpty() || !tableCatalog.tableExists(run.jdbc(), setupTable)) {
+            return;
+        }
+        List<Object> params = new ArrayList<>(List.of(run.academicYear(), run.schoolId(), run.schoolId(), run.academicYear()));
+        params.addAll(students);
+        run.jdbc().update("INSERT INTO " + feeTable + " (" + FEE_COLUMNS + ") " +
+                "SELECT s.admission_number, s.student_name, s.standard, s.section, s.father_name, s.mother_name, " +
+                "m.fee_heading, m.account_head, m.fee_amount, 'pending', ?, ?, s.aadhar_number, s.standard, s.mother_tongue, s.blood_group " +
+                "FROM " + admissionTable + " s JOIN " + setupTable + " m " +
+                "ON m.school_id = ? AND m.academic_year = ? AND m.standard = s.standard " +
+                "AND (m.student_category = s.student_category OR NOT EXISTS (SELECT 1 FROM " + setupTable + " c " +
+                "WHERE c.school_id = m.school_id AND c.academic_year = m.academic_year AND c.standard = m.standard " +
+                "AND c.student_category = s.student_category)) " +
+                "WHERE s.admission_number IN (" + placeholders(students.size()) + ")", params.toArray());
+    }
+
+    // Students with a boarding point get its bus fees, for their route or else the point's first route
+    private void assignBusFees(Run run, String feeTable, List<Student> students) {
+        int boardingPoint = COLUMN_NAMES.indexOf("boarding_point");
+        int route = COLUMN_NAMES.indexOf("bus_route_number");
+        List<Object[]> rows = new ArrayList<>();
+        for (Student student : students) {
+            String point = (String) student.values()[boardingPoint];
+            if (point == null) {
+                continue;
+            }
+            String routeNumber = (String) student.values()[route];
+            List<Map<String, Object>> fees = run.busFees().get(Arrays.asList(point, routeNumber));
+            if (fees == null) {
+                fees = run.busFees().get(Arrays.asList(point, null));
+            }
+            if (fees == null) {
+                continue;
+            }
+            for (Map<String, Object> fee : fees) {
+                rows.add(new Object[]{student.admissionNumber(), value(student, "student_name"), value(student, "standard"),
+                        value(student, "section"), value(student, "father_name"), value(student, "mother_name"),
+                        fee.get("fee_heading"), fee.get("account_head"), fee.get("fee"), "pending", run.academicYear(),
+                        run.schoolId(), value(student, "aadhar_number"), point, fee.get("route_number"),
+                        value(student, "standard"), value(student, "mother_tongue"), value(student, "blood_group")});
+            }
+        }
+        if (!rows.isEmpty()) {
+            run.jdbc().batchUpdate("INSERT INTO " + feeTable + " (" + TRANSPORT_FEE_COLUMNS + ") VALUES (" +
+                    placeholders(TRANSPORT_FEE_COLUMNS.split(",").length) + ")", rows);
+        }
+    }
+
+    /**
+     * The year's bus fees by (boarding point, route), and by (boarding point, null) the fees of
+     * the point's first route, read once per import.
+     */
+    private Map<List<String>, List<Map<String, Object>>> busFees(JdbcTemplate jdbc, String schoolId, String academicYear) {
+        Map<List<String>, List<Map<String, Object>>> fees = new HashMap<>();
+        if (!tableCatalog.tableExists(jdbc, "bus_fees")) {
+            return fees;
+        }
+        for (Map<String, Object> fee : jdbc.queryForList("SELECT boarding_point, route_number, fee_heading, account_head, fee " +
+                "FROM bus_fees WHERE school_id = ? AND academic_year = ?", schoolId, academicYear)) {
+            String boardingPoint = (String) fee.get("boarding_point");
+            List<Map<String, Object>> route = fees.computeIfAbsent(
+                    Arrays.asList(boardingPoint, (String) fee.get("route_number")), key -> new ArrayList<>());
+            route.add(fee);
+            fees.putIfAbsent(Arrays.asList(boardingPoint, null), route);
+        }
+        return fees;
+    }
+
+    /**
+     * Stores every image of the zip in the media store, on as many threads as there are cores
+     * (making the thumbnails is the slow part), keyed by the lower-case file name without its
+     * extension.
+     */
+    private Map<String, Photo> storePhotos(String schoolId, InputStream zip) {
+        Map<String, Photo> photos = new ConcurrentHashMap<>();
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+        Semaphore inFlight = new Semaphore(threads * 2);
+        List<Future<?>> stored = new ArrayList<>();
+        try (ExecutorService pool = Executors.newFixedThreadPool(threads); ZipInputStream in = new ZipInputStream(zip)) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                String name = entry.getName().substring(entry.getName().lastIndexOf('/') + 1);
+                int dot = name.lastIndexOf('.');
+                String contentType = dot > 0 ? photoContentType(name.substring(dot + 1)) : null;
+                if (entry.isDirectory() || contentType == null || name.startsWith(".") || entry.getName().startsWith("__MACOSX")) {
+                    continue;
+                }
+                byte[] content = in.readNBytes(MAX_PHOTO_BYTES + 1);
+                if (content.length > MAX_PHOTO_BYTES) {
+                    log.warn("⚠️ Skipping photo {}: larger than {} bytes", entry.getName(), MAX_PHOTO_BYTES);
+                    continue;
+                }
+                String key = name.substring(0, dot).trim().toLowerCase(Locale.ROOT);
+                inFlight.acquire();
+                stored.add(pool.submit(() -> {
+                    try {
+                        photos.put(key, new Photo(mediaStore.put(schoolId, content), contentType));
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+            }
+            for (Future<?> photo : stored) {
+                photo.get();
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read the photo zip: " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while storing photos", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to store photo: " + e.getCause().getMessage(), e.getCause());
+        }
+        log.info("🖼️ Stored {} photos for the admission import of school {}", photos.size(), schoolId);
+        return photos;
+    }
+
+    private static String photoContentType(String extension) {
+        return switch (extension.toLowerCase(Locale.ROOT)) {
+            case "jpg", "jpeg" -> "image/jpeg";
+            case "png" -> "image/png";
+            case "gif" -> "image/gif";
+            case "webp" -> "image/webp";
+            default -> null;
+        };
+    }
+
+    private static LocalDate parseDate(String text) {
+        for (DateTimeFormatter format : DATE_FORMATS) {
+            try {
+                return LocalDate.parse(text, format);
+            } catch (DateTimeParseException e) {
+                // Try the next format
+            }
+        }
+        return null;
+    }
+
+    private static Object value(Student student, String column) {
+        return student.values()[COLUMN_NAMES.indexOf(column)];
+    }
+
+    // "Admission Number", "admission_number" and "admissionNumber" all name the same column
+    private static String normalize(String header) {
+        return header.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]", "");
+    }
+
+    private static String label(String column) {
+        String words = column.replace('_', ' ');
+        return Character.toUpperCase(words.charAt(0)) + words.substring(1);
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    private static AdmissionImportErrorDTO error(int rowNumber, String admissionNumber, String message) {
+        return AdmissionImportErrorDTO.builder()
+                .rowNumber(rowNumber)
+                .admissionNumber(admissionNumber)
+                .message(message)
+                .build();
+    }
+
+    // values are in COLUMN_NAMES order: text, or LocalDate for the dates, null when empty
+    private record Student(int rowNumber, String admissionNumber, Object[] values, boolean hosteller) {
+    }
+
+    private record Photo(String ref, String contentType) {
+    }
+
+    private record Run(String schoolId, String academicYear, JdbcTemplate jdbc, TransactionTemplate transaction,
+                       Map<String, Photo> photos, Map<List<String>, List<Map<String, Object>>> busFees) {
+    }
+}
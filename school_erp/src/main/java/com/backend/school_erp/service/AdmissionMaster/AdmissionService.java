@@ -1,56 +1,83 @@
 package com.backend.school_erp.service.AdmissionMaster;
 
 import com.backend.school_erp.DTO.AdmissionMaster.*;
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.DTO.KeysetPage;
+import com.backend.school_erp.config.SchoolDataChangedEvent;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantTableCatalog;
+import com.backend.school_erp.config.TenantSchemaMigrator;
 import com.backend.school_erp.entity.AdmissionMaster.*;
+import com.backend.school_erp.service.Export.ExportWriter;
+import com.backend.school_erp.service.Export.ReportExportService;
+import com.backend.school_erp.service.Media.MediaFile;
+import com.backend.school_erp.service.Media.MediaStore;
+import com.backend.school_erp.service.Paging.KeysetQuery;
+import com.backend.school_erp.service.Paging.KeysetSort;
+import com.backend.school_erp.service.Transaction.FeeDemandService;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 import org.springframework.web.multipart.MultipartFile;
 
-import javax.sql.DataSource;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
 public class AdmissionService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
+    // Every admissions column except the photo BLOB and its content type
+    private static final String ADMISSION_EXPORT_COLUMNS = """
+            id, enquiry_key, admission_number, student_name, father_name, mother_name, street_village,
+            place_pincode, district, phone_number, phone_number2, boarding_point, bus_route_number, email_id,
+            communication_address, nationality, religion, state, community, caste, student_type,
+            student_category, standard, section, gender, date_of_birth, emis, lunch_refresh, blood_group,
+            date_of_admission, mother_tongue, father_occupation, mother_occupation, exam_number, studied_year,
+            class_last_studied, class_to_be_admitted, name_of_school, remarks, identification_mark1,
+            identification_mark2, aadhar_number, qr_code_data, school_id, academic_year, created_at, updated_at""";
+
+    // Paged list rows: everything but the photo itself (the content type tells whether there is one)
+    private static final String ADMISSION_LIST_COLUMNS = ADMISSION_EXPORT_COLUMNS + ", student_photo_content_type, student_photo_ref";
+
+    // "recent" follows insertion order, like created_at DESC in getAllAdmissions
+    private static final KeysetSort RECENT = KeysetSort.desc("recent", "id");
+    private static final Map<String, KeysetSort> ADMISSION_SORTS = Map.of(
+            "recent", RECENT,
+            "name", KeysetSort.asc("name", "student_name"),
+            "admissionNumber", KeysetSort.asc("admissionNumber", "admission_number"));
+
+    private final TenantDataSourceRouter tenantDataSourceRouter;
+    private final TenantSchemaMigrator schemaMigrator;
+    private final TenantTableCatalog tableCatalog;
+    private final FeeDemandService feeDemandService;
+    private final ReportExportService reportExportService;
+    private final MediaStore mediaStore;
+    private final StudentDirectory studentDirectory;
+
     private final EnquiryService enquiryService;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public AdmissionService(EnquiryService enquiryService) {
+    public AdmissionService(EnquiryService enquiryService, TenantDataSourceRouter tenantDataSourceRouter, TenantSchemaMigrator schemaMigrator, TenantTableCatalog tableCatalog, FeeDemandService feeDemandService, ReportExportService reportExportService, MediaStore mediaStore, StudentDirectory studentDirectory, ApplicationEventPublisher eventPublisher) {
+        this.tenantDataSourceRouter = tenantDataSourceRouter;
+        this.schemaMigrator = schemaMigrator;
         this.enquiryService = enquiryService;
-    }
-
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            log.info("🔗 Creating HikariCP DataSource for school: {}", id);
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-            config.setMaximumPoolSize(10);
-            config.setMinimumIdle(2);
-            config.setIdleTimeout(30000);
-            config.setMaxLifetime(1800000);
-            config.setConnectionTimeout(10000);
-            config.setLeakDetectionThreshold(60000);
-            return new HikariDataSource(config);
-        });
+        this.tableCatalog = tableCatalog;
+        this.feeDemandService = feeDemandService;
+        this.reportExportService = reportExportService;
+        this.mediaStore = mediaStore;
+        this.studentDirectory = studentDirectory;
+        this.eventPublisher = eventPublisher;
     }
 
     public JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     private String getAdmissionTableName(String academicYear) {
@@ -73,155 +100,159 @@ public class AdmissionService {
         return "transport_fees_" + sanitizedYear;
     }
 
-    private void ensureTablesExist(JdbcTemplate jdbc, String academicYear) {
-        String admissionTable = getAdmissionTableName(academicYear);
-        String tuitionFeeTable = getTuitionFeeTableName(academicYear);
-        String hostelFeeTable = getHostelFeeTableName(academicYear);
-        String transportFeeTable = getTransportFeeTableName(academicYear);
-
-        // Create admissions table (REMOVED TOTAL FEE COLUMNS)
-        jdbc.execute(String.format("""
-            CREATE TABLE IF NOT EXISTS %s (
-                id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                enquiry_key VARCHAR(100),
-                admission_number VARCHAR(100) NOT NULL UNIQUE,
-                student_photo MEDIUMBLOB,
-                student_photo_content_type VARCHAR(100),
-                student_name VARCHAR(255) NOT NULL,
-                father_name VARCHAR(255) NOT NULL,
-                mother_name VARCHAR(255) NOT NULL,
-                street_village VARCHAR(255),
-                place_pincode VARCHAR(20),
-                district VARCHAR(100),
-                phone_number VARCHAR(20),
-                phone_number2 VARCHAR(20),
-                boarding_point VARCHAR(100),
-                bus_route_number VARCHAR(100),
-                email_id VARCHAR(255),
-                communication_address TEXT,
-                nationality VARCHAR(100),
-                religion VARCHAR(100),
-                state VARCHAR(100),
-                community VARCHAR(100),
-                caste VARCHAR(100),
-                student_type VARCHAR(50),
-                student_category VARCHAR(100),
-                standard VARCHAR(50) NOT NULL,
-                section VARCHAR(50),
-                gender VARCHAR(20),
-                date_of_birth DATE,
-                emis VARCHAR(100),
-                lunch_refresh VARCHAR(100),
-                blood_group VARCHAR(10),
-                date_of_admission DATE,
-                mother_tongue VARCHAR(100),
-                father_occupation VARCHAR(100),
-                mother_occupation VARCHAR(100),
-                exam_number VARCHAR(100),
-                studied_year VARCHAR(50),
-                class_last_studied VARCHAR(50),
-                class_to_be_admitted VARCHAR(50),
-                name_of_school VARCHAR(255),
-                remarks TEXT,
-                identification_mark1 VARCHAR(255),
-                identification_mark2 VARCHAR(255),
-                aadhar_number VARCHAR(20),
-                qr_code_data TEXT,
-                school_id VARCHAR(50) NOT NULL,
-                academic_year VARCHAR(50) NOT NULL,
-                created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
-                INDEX idx_admission_number (admission_number),
-                INDEX idx_student_name (student_name),
-                INDEX idx_standard (standard),
-                INDEX idx_school_academic (school_id, academic_year)
-            )
-        """, admissionTable));
-
-        // Create tuition_fees table (ADDED 'status' column)
-        jdbc.execute(String.format("""
-            CREATE TABLE IF NOT EXISTS %s (
-                id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                admission_number VARCHAR(100) NOT NULL,
-                student_name VARCHAR(255),
-                standard VARCHAR(50),
-                course VARCHAR(100),
-                section VARCHAR(50),
-                father_name VARCHAR(255),
-                mother_name VARCHAR(255),
-                aadhar_number VARCHAR(50),
-                mother_tongue VARCHAR(100),
-                blood_group VARCHAR(20),
-                fee_heading VARCHAR(255) NOT NULL,
-                account_head VARCHAR(255) NOT NULL,
-                amount DECIMAL(10,2) NOT NULL,
-                status VARCHAR(20) DEFAULT 'pending',
-                academic_year VARCHAR(50) NOT NULL,
-                school_id VARCHAR(50) NOT NULL,
-                created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                FOREIGN KEY (admission_number) REFERENCES %s(admission_number) ON DELETE CASCADE,
-                INDEX idx_admission_number (admission_number),
-                INDEX idx_school_year (school_id, academic_year)
-            )
-        """, tuitionFeeTable, admissionTable));
-
-        // Create hostel_fees table (ADDED 'status' column)
-        jdbc.execute(String.format("""
-            CREATE TABLE IF NOT EXISTS %s (
-                id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                admission_number VARCHAR(100) NOT NULL,
-                student_name VARCHAR(255),
-                standard VARCHAR(50),
-                course VARCHAR(100),
-                section VARCHAR(50),
-                father_name VARCHAR(255),
-                mother_name VARCHAR(255),
-                aadhar_number VARCHAR(50),
-                mother_tongue VARCHAR(100),
-                blood_group VARCHAR(20),
-                fee_heading VARCHAR(255) NOT NULL,
-                account_head VARCHAR(255) NOT NULL,
-                amount DECIMAL(10,2) NOT NULL,
-                status VARCHAR(20) DEFAULT 'pending',
-                academic_year VARCHAR(50) NOT NULL,
-                school_id VARCHAR(50) NOT NULL,
-                created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                FOREIGN KEY (admission_number) REFERENCES %s(admission_number) ON DELETE CASCADE,
-                INDEX idx_admission_number (admission_number),
-                INDEX idx_school_year (school_id, academic_year)
-            )
-        """, hostelFeeTable, admissionTable));
-
-        // Create transport_fees table (ADDED 'status' column)
-        jdbc.execute(String.format("""
-            CREATE TABLE IF NOT EXISTS %s (
-                id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                admission_number VARCHAR(100) NOT NULL,
-                student_name VARCHAR(255),
-                standard VARCHAR(50),
-                course VARCHAR(100),
-                section VARCHAR(50),
-                father_name VARCHAR(255),
-                mother_name VARCHAR(255),
-                aadhar_number VARCHAR(50),
-                mother_tongue VARCHAR(100),
-                blood_group VARCHAR(20),
-                fee_heading VARCHAR(255) NOT NULL,
-                account_head VARCHAR(255) NOT NULL,
-                amount DECIMAL(10,2) NOT NULL,
-                status VARCHAR(20) DEFAULT 'pending',
-                boarding_point VARCHAR(100),
-                bus_route_number VARCHAR(100),
-                academic_year VARCHAR(50) NOT NULL,
-                school_id VARCHAR(50) NOT NULL,
-                created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                FOREIGN KEY (admission_number) REFERENCES %s(admission_number) ON DELETE CASCADE,
-                INDEX idx_admission_number (admission_number),
-                INDEX idx_school_year (school_id, academic_year)
-            )
-        """, transportFeeTable, admissionTable));
-
-        log.info("✅ All tables ensured to exist for academic year: {}", academicYear);
+    void ensureTablesExist(JdbcTemplate jdbc, String academicYear) {
+        schemaMigrator.migrate(jdbc, "AdmissionService:" + academicYear, 2, () -> {
+            String admissionTable = getAdmissionTableName(academicYear);
+            String tuitionFeeTable = getTuitionFeeTableName(academicYear);
+            String hostelFeeTable = getHostelFeeTableName(academicYear);
+            String transportFeeTable = getTransportFeeTableName(academicYear);
+
+            // Create admissions table (REMOVED TOTAL FEE COLUMNS)
+            jdbc.execute(String.format("""
+                CREATE TABLE IF NOT EXISTS %s (
+                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    enquiry_key VARCHAR(100),
+                    admission_number VARCHAR(100) NOT NULL UNIQUE,
+                    student_photo MEDIUMBLOB,
+                    student_photo_content_type VARCHAR(100),
+                    student_photo_ref CHAR(64),
+                    student_name VARCHAR(255) NOT NULL,
+                    father_name VARCHAR(255) NOT NULL,
+                    mother_name VARCHAR(255) NOT NULL,
+                    street_village VARCHAR(255),
+                    place_pincode VARCHAR(20),
+                    district VARCHAR(100),
+                    phone_number VARCHAR(20),
+                    phone_number2 VARCHAR(20),
+                    boarding_point VARCHAR(100),
+                    bus_route_number VARCHAR(100),
+                    email_id VARCHAR(255),
+                    communication_address TEXT,
+                    nationality VARCHAR(100),
+                    religion VARCHAR(100),
+                    state VARCHAR(100),
+                    community VARCHAR(100),
+                    caste VARCHAR(100),
+                    student_type VARCHAR(50),
+                    student_category VARCHAR(100),
+                    standard VARCHAR(50) NOT NULL,
+                    section VARCHAR(50),
+                    gender VARCHAR(20),
+                    date_of_birth DATE,
+                    emis VARCHAR(100),
+                    lunch_refresh VARCHAR(100),
+                    blood_group VARCHAR(10),
+                    date_of_admission DATE,
+                    mother_tongue VARCHAR(100),
+                    father_occupation VARCHAR(100),
+                    mother_occupation VARCHAR(100),
+                    exam_number VARCHAR(100),
+                    studied_year VARCHAR(50),
+                    class_last_studied VARCHAR(50),
+                    class_to_be_admitted VARCHAR(50),
+                    name_of_school VARCHAR(255),
+                    remarks TEXT,
+                    identification_mark1 VARCHAR(255),
+                    identification_mark2 VARCHAR(255),
+                    aadhar_number VARCHAR(20),
+                    qr_code_data TEXT,
+                    school_id VARCHAR(50) NOT NULL,
+                    academic_year VARCHAR(50) NOT NULL,
+                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+                    INDEX idx_admission_number (admission_number),
+                    INDEX idx_student_name (student_name),
+                    INDEX idx_standard (standard),
+                    INDEX idx_school_academic (school_id, academic_year)
+                )
+            """, admissionTable));
+            mediaStore.ensureReferenceColumn(jdbc, admissionTable, "student_photo");
+
+            // Create tuition_fees table (ADDED 'status' column)
+            jdbc.execute(String.format("""
+                CREATE TABLE IF NOT EXISTS %s (
+                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    admission_number VARCHAR(100) NOT NULL,
+                    student_name VARCHAR(255),
+                    standard VARCHAR(50),
+                    course VARCHAR(100),
+                    section VARCHAR(50),
+                    father_name VARCHAR(255),
+                    mother_name VARCHAR(255),
+                    aadhar_number VARCHAR(50),
+                    mother_tongue VARCHAR(100),
+                    blood_group VARCHAR(20),
+                    fee_heading VARCHAR(255) NOT NULL,
+                    account_head VARCHAR(255) NOT NULL,
+                    amount DECIMAL(10,2) NOT NULL,
+                    status VARCHAR(20) DEFAULT 'pending',
+                    academic_year VARCHAR(50) NOT NULL,
+                    school_id VARCHAR(50) NOT NULL,
+                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    FOREIGN KEY (admission_number) REFERENCES %s(admission_number) ON DELETE CASCADE,
+                    INDEX idx_admission_number (admission_number),
+                    INDEX idx_school_year (school_id, academic_year)
+                )
+            """, tuitionFeeTable, admissionTable));
+
+            // Create hostel_fees table (ADDED 'status' column)
+            jdbc.execute(String.format("""
+                CREATE TABLE IF NOT EXISTS %s (
+                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    admission_number VARCHAR(100) NOT NULL,
+                    student_name VARCHAR(255),
+                    standard VARCHAR(50),
+                    course VARCHAR(100),
+                    section VARCHAR(50),
+                    father_name VARCHAR(255),
+                    mother_name VARCHAR(255),
+                    aadhar_number VARCHAR(50),
+                    mother_tongue VARCHAR(100),
+                    blood_group VARCHAR(20),
+                    fee_heading VARCHAR(255) NOT NULL,
+                    account_head VARCHAR(255) NOT NULL,
+                    amount DECIMAL(10,2) NOT NULL,
+                    status VARCHAR(20) DEFAULT 'pending',
+                    academic_year VARCHAR(50) NOT NULL,
+                    school_id VARCHAR(50) NOT NULL,
+                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    FOREIGN KEY (admission_number) REFERENCES %s(admission_number) ON DELETE CASCADE,
+                    INDEX idx_admission_number (admission_number),
+                    INDEX idx_school_year (school_id, academic_year)
+                )
+            """, hostelFeeTable, admissionTable));
+
+            // Create transport_fees table (ADDED 'status' column)
+            jdbc.execute(String.format("""
+                CREATE TABLE IF NOT EXISTS %s (
+                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    admission_number VARCHAR(100) NOT NULL,
+                    student_name VARCHAR(255),
+                    standard VARCHAR(50),
+                    course VARCHAR(100),
+                    section VARCHAR(50),
+                    father_name VARCHAR(255),
+                    mother_name VARCHAR(255),
+                    aadhar_number VARCHAR(50),
+                    mother_tongue VARCHAR(100),
+                    blood_group VARCHAR(20),
+                    fee_heading VARCHAR(255) NOT NULL,
+                    account_head VARCHAR(255) NOT NULL,
+                    amount DECIMAL(10,2) NOT NULL,
+                    status VARCHAR(20) DEFAULT 'pending',
+                    boarding_point VARCHAR(100),
+                    bus_route_number VARCHAR(100),
+                    academic_year VARCHAR(50) NOT NULL,
+                    school_id VARCHAR(50) NOT NULL,
+                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    FOREIGN KEY (admission_number) REFERENCES %s(admission_number) ON DELETE CASCADE,
+                    INDEX idx_admission_number (admission_number),
+                    INDEX idx_school_year (school_id, academic_year)
+                )
+            """, transportFeeTable, admissionTable));
+
+            log.info("✅ All tables ensured to exist for academic year: {}", academicYear);
+        });
     }
 
     @Transactional
@@ -241,7 +272,7 @@ public class AdmissionService {
         // Insert into admissions table
         String sql = String.format("""
             INSERT INTO %s (
-                enquiry_key, admission_number, student_photo, student_photo_content_type,
+                enquiry_key, admission_number, student_photo_ref, student_photo_content_type,
                 student_name, father_name, mother_name, street_village, place_pincode,
                 district, phone_number, phone_number2, boarding_point, bus_route_number, email_id,
                 communication_address, nationality, religion, state, community, caste,
@@ -256,15 +287,16 @@ public class AdmissionService {
                      ?, ?, ?, ?, ?, ?)
         """, admissionTable);
 
-        // Handle file upload
-        byte[] photoBytes = null;
+        // Handle file upload (the photo goes to the media store, the row keeps its reference)
+        String photoRef = null;
         String contentType = null;
 
         if (dto.getStudentPhotoFile() != null && !dto.getStudentPhotoFile().isEmpty()) {
             try {
-                photoBytes = dto.getStudentPhotoFile().getBytes();
+                byte[] photoBytes = dto.getStudentPhotoFile().getBytes();
                 contentType = dto.getStudentPhotoFile().getContentType();
                 log.info("📷 Processing photo file: {} bytes, type: {}", photoBytes.length, contentType);
+                photoRef = mediaStore.put(schoolId, photoBytes);
             } catch (IOException e) {
                 log.error("❌ Error processing student photo file", e);
                 throw new RuntimeException("Failed to process student photo", e);
@@ -274,7 +306,7 @@ public class AdmissionService {
         Object[] params = new Object[]{
                 dto.getEnquiryKey(),
                 dto.getAdmissionNumber(),
-                photoBytes,
+                photoRef,
                 contentType,
                 dto.getStudentName(),
                 dto.getFatherName(),
@@ -329,6 +361,9 @@ public class AdmissionService {
             insertTuitionFees(jdbc, schoolId, dto, dto.getTuitionFees());
             insertHostelFees(jdbc, schoolId, dto, dto.getHostelFees());
             insertTransportFee(jdbc, schoolId, dto, dto.getTransportFee());
+            feeDemandService.refreshStudent(jdbc, academicYear, dto.getAdmissionNumber());
+            studentDirectory.refresh(schoolId, academicYear, dto.getAdmissionNumber());
+            eventPublisher.publishEvent(new SchoolDataChangedEvent(schoolId, academicYear, "admission"));
 
             // Delete enquiry if exists
             if (dto.getEnquiryKey() != null && !dto.getEnquiryKey().trim().isEmpty()) {
@@ -550,17 +585,17 @@ public class AdmissionService {
         boolean removePhoto = dto.isRemoveExistingPhoto();
 
         if (hasNewPhoto) {
-            sqlBuilder.append(", student_photo = ?, student_photo_content_type = ?");
+            sqlBuilder.append(", student_photo = NULL, student_photo_ref = ?, student_photo_content_type = ?");
             try {
                 byte[] photoBytes = dto.getStudentPhotoFile().getBytes();
                 String contentType = dto.getStudentPhotoFile().getContentType();
-                paramsList.add(photoBytes);
+                paramsList.add(mediaStore.put(schoolId, photoBytes));
                 paramsList.add(contentType);
             } catch (IOException e) {
                 throw new RuntimeException("Failed to process student photo", e);
             }
         } else if (removePhoto) {
-            sqlBuilder.append(", student_photo = NULL, student_photo_content_type = NULL");
+            sqlBuilder.append(", student_photo = NULL, student_photo_ref = NULL, student_photo_content_type = NULL");
         }
 
         sqlBuilder.append(" WHERE id = ? AND school_id = ?");
@@ -579,6 +614,13 @@ public class AdmissionService {
             insertTuitionFees(jdbc, schoolId, dto, dto.getTuitionFees());
             insertHostelFees(jdbc, schoolId, dto, dto.getHostelFees());
             insertTransportFee(jdbc, schoolId, dto, dto.getTransportFee());
+            feeDemandService.refreshStudent(jdbc, academicYear, dto.getAdmissionNumber());
+            studentDirectory.refresh(schoolId, academicYear, dto.getAdmissionNumber());
+            if (!dto.getAdmissionNumber().equals(existing.get().getAdmissionNumber())) {
+                feeDemandService.refreshStudent(jdbc, academicYear, existing.get().getAdmissionNumber());
+                studentDirectory.refresh(schoolId, academicYear, existing.get().getAdmissionNumber());
+            }
+            eventPublisher.publishEvent(new SchoolDataChangedEvent(schoolId, academicYear, "admission update"));
         }
 
         return rows > 0 ? getAdmissionById(schoolId, id, academicYear) : Optional.empty();
@@ -616,46 +658,45 @@ public class AdmissionService {
             return response;
         }
 
-        // Get tuition fees
-        String tuitionTable = getTuitionFeeTableName(academicYear);
-        String tuitionSql = String.format("SELECT fee_heading, account_head, amount FROM %s WHERE admission_number = ? AND school_id = ?",
-                tuitionTable);
-        List<TuitionFeeDTO> tuitionFees = jdbc.query(tuitionSql, (rs, rowNum) -> {
-            TuitionFeeDTO dto = new TuitionFeeDTO();
-            dto.setFeeHeading(rs.getString("fee_heading"));
-            dto.setAccountHead(rs.getString("account_head"));
-            dto.setAmount(rs.getDouble("amount"));
-            return dto;
-        }, admissionNumber, schoolId);
-
-        // Get hostel fees
-        String hostelTable = getHostelFeeTableName(academicYear);
-        String hostelSql = String.format("SELECT fee_heading, account_head, amount FROM %s WHERE admission_number = ? AND school_id = ?",
-                hostelTable);
-        List<HostelFeeDTO> hostelFees = jdbc.query(hostelSql, (rs, rowNum) -> {
-            HostelFeeDTO dto = new HostelFeeDTO();
-            dto.setFeeHeading(rs.getString("fee_heading"));
-            dto.setAccountHead(rs.getString("account_head"));
-            dto.setAmount(rs.getDouble("amount"));
-            return dto;
-        }, admissionNumber, schoolId);
-
-        // Get transport fee
-        String transportTable = getTransportFeeTableName(academicYear);
-        String transportSql = String.format("SELECT fee_heading, account_head, amount, boarding_point, bus_route_number FROM %s WHERE admission_number = ? AND school_id = ?",
-                transportTable);
-        TransportFeeDTO transportFee = jdbc.query(transportSql, rs -> {
-            if (rs.next()) {
-                TransportFeeDTO dto = new TransportFeeDTO();
-                dto.setFeeHeading(rs.getString("fee_heading"));
-                dto.setAccountHead(rs.getString("account_head"));
-                dto.setAmount(rs.getDouble("amount"));
-                dto.setBoardingPoint(rs.getString("boarding_point"));
-                dto.setBusRouteNumber(rs.getString("bus_route_number"));
-                return dto;
+        // All fee types in one read from the consolidated demand
+        List<TuitionFeeDTO> tuitionFees = new java.util.ArrayList<>();
+        List<HostelFeeDTO> hostelFees = new java.util.ArrayList<>();
+        TransportFeeDTO transportFee = null;
+        for (Map<String, Object> row : feeDemandService.getStudentDemand(jdbc, academicYear, admissionNumber)) {
+            String feeType = (String) row.get("fee_type");
+            String feeHeading = (String) row.get("fee_heading");
+            String accountHead = (String) row.get("account_head");
+            Double amount = ((Number) row.get("amount")).doubleValue();
+            if (FeeDemandService.TUITION.equals(feeType)) {
+                TuitionFeeDTO dto = new TuitionFeeDTO();
+                dto.setFeeHeading(feeHeading);
+                dto.setAccountHead(accountHead);
+                dto.setAmount(amount);
+                tuitionFees.add(dto);
+            } else if (FeeDemandService.HOSTEL.equals(feeType)) {
+                HostelFeeDTO dto = new HostelFeeDTO();
+                dto.setFeeHeading(feeHeading);
+                dto.setAccountHead(accountHead);
+                dto.setAmount(amount);
+                hostelFees.add(dto);
+            } else if (transportFee == null) {
+                transportFee = new TransportFeeDTO();
+                transportFee.setFeeHeading(feeHeading);
+                transportFee.setAccountHead(accountHead);
+                transportFee.setAmount(amount);
             }
-            return null;
-        }, admissionNumber, schoolId);
+        }
+
+        // Boarding point and route are only kept on the transport ledger
+        if (transportFee != null) {
+            String transportTable = getTransportFeeTableName(academicYear);
+            final TransportFeeDTO transport = transportFee;
+            jdbc.query(String.format("SELECT boarding_point, bus_route_number FROM %s WHERE admission_number = ? AND school_id = ? LIMIT 1",
+                    transportTable), rs -> {
+                transport.setBoardingPoint(rs.getString("boarding_point"));
+                transport.setBusRouteNumber(rs.getString("bus_route_number"));
+            }, admissionNumber, schoolId);
+        }
 
         // Calculate totals
         Double totalTuitionFee = tuitionFees.stream().mapToDouble(TuitionFeeDTO::getAmount).sum();
@@ -689,6 +730,45 @@ public class AdmissionService {
         }
     }
 
+    /**
+     * One page of the year's admissions without photos, optionally filtered by class and a search
+     * term (name, parent, phone or admission number). Photos come from findStudentPhoto.
+     */
+    public KeysetPage<Admission> getAdmissionsPage(String schoolId, String academicYear, String search, String standard,
+                                                   String section, String sort, String cursor, Integer limit) {
+        JdbcTemplate jdbc = getJdbcTemplate(schoolId);
+        ensureTablesExist(jdbc, academicYear);
+        try {
+            KeysetPage<Admission> page = new KeysetQuery(ADMISSION_LIST_COLUMNS, getAdmissionTableName(academicYear))
+                    .where("school_id = ? AND academic_year = ?", schoolId, academicYear)
+                    .whereEquals("standard", standard)
+                    .whereEquals("section", section)
+                    .search(search, "student_name", "father_name", "mother_name", "phone_number", "phone_number2", "admission_number")
+                    .page(jdbc, KeysetSort.resolve(ADMISSION_SORTS, sort, RECENT), cursor, limit, new BeanPropertyRowMapper<>(Admission.class));
+            log.info("📥 Retrieved page of {} admissions (more: {})", page.getItems().size(), page.isHasMore());
+            return page;
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Error fetching admissions page", e);
+            throw new RuntimeException("Failed to fetch admissions: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * All admissions of the year streamed to an export file, newest first like getAllAdmissions.
+     * The photo is left out; it is served on its own by findStudentPhoto.
+     */
+    public void exportAdmissions(String schoolId, String academicYear, ExportWriter writer) {
+        JdbcTemplate jdbc = getJdbcTemplate(schoolId);
+        ensureTablesExist(jdbc, academicYear);
+        String tableName = getAdmissionTableName(academicYear);
+        String sql = String.format("SELECT %s FROM %s WHERE school_id = ? AND academic_year = ? ORDER BY created_at DESC",
+                ADMISSION_EXPORT_COLUMNS, tableName);
+        log.info("📤 Exporting admissions for school: {}, academic year: {}", schoolId, academicYear);
+        reportExportService.exportQuery(schoolId, sql, writer, schoolId, academicYear);
+    }
+
     public Optional<Admission> getAdmissionById(String schoolId, Long id, String academicYear) {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
         ensureTablesExist(jdbc, academicYear);
@@ -696,7 +776,7 @@ public class AdmissionService {
             String tableName = getAdmissionTableName(academicYear);
             String sql = String.format("SELECT * FROM %s WHERE id = ? AND school_id = ?", tableName);
             Admission admission = jdbc.queryForObject(sql, new BeanPropertyRowMapper<>(Admission.class), id, schoolId);
-            return Optional.ofNullable(admission);
+            return Optional.ofNullable(withStoredPhoto(schoolId, admission));
         } catch (EmptyResultDataAccessException e) {
             log.warn("Admission not found with id: {}", id);
             return Optional.empty();
@@ -713,7 +793,7 @@ public class AdmissionService {
             String tableName = getAdmissionTableName(academicYear);
             String sql = String.format("SELECT * FROM %s WHERE admission_number = ? AND school_id = ?", tableName);
             Admission admission = jdbc.queryForObject(sql, new BeanPropertyRowMapper<>(Admission.class), admissionNumber, schoolId);
-            return Optional.ofNullable(admission);
+            return Optional.ofNullable(withStoredPhoto(schoolId, admission));
         } catch (EmptyResultDataAccessException e) {
             log.warn("Admission not found with admission number: {}", admissionNumber);
             return Optional.empty();
@@ -727,8 +807,19 @@ public class AdmissionService {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
         ensureTablesExist(jdbc, academicYear);
         String tableName = getAdmissionTableName(academicYear);
+        List<String> admissionNumbers = jdbc.queryForList(
+                String.format("SELECT admission_number FROM %s WHERE id = ? AND school_id = ?", tableName),
+                String.class, id, schoolId);
         int rows = jdbc.update(String.format("DELETE FROM %s WHERE id = ? AND school_id = ?", tableName), id, schoolId);
         log.info("🗑️ Deleted {} admission(s) with ID: {}", rows, id);
+        // Fee rows went with the admission (ON DELETE CASCADE)
+        for (String admissionNumber : admissionNumbers) {
+            feeDemandService.refreshStudent(jdbc, academicYear, admissionNumber);
+            studentDirectory.refresh(schoolId, academicYear, admissionNumber);
+        }
+        if (rows > 0) {
+            eventPublisher.publishEvent(new SchoolDataChangedEvent(schoolId, academicYear, "admission deletion"));
+        }
         return rows > 0;
     }
 
@@ -736,16 +827,19 @@ public class AdmissionService {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
         ensureTablesExist(jdbc, academicYear);
         String tableName = getAdmissionTableName(academicYear);
-        String like = "%" + term + "%";
+        // The directory finds the matching students; only their rows are read
+        List<StudentRecord> matches = studentDirectory.search(schoolId, academicYear, term, 0);
+        if (matches.isEmpty()) {
+            log.info("🔍 Found 0 admissions matching term: '{}'", term);
+            return List.of();
+        }
+        String ids = matches.stream().map(s -> String.valueOf(s.id())).collect(Collectors.joining(","));
         String sql = String.format("""
             SELECT * FROM %s 
-            WHERE school_id = ? AND academic_year = ?
-            AND (student_name LIKE ? OR father_name LIKE ? OR mother_name LIKE ? 
-                 OR phone_number LIKE ? OR phone_number2 LIKE ? OR admission_number LIKE ? OR standard LIKE ?)
+            WHERE school_id = ? AND academic_year = ? AND id IN (%s)
             ORDER BY created_at DESC
-        """, tableName);
-        List<Admission> results = jdbc.query(sql, new BeanPropertyRowMapper<>(Admission.class),
-                schoolId, academicYear, like, like, like, like, like, like, like);
+        """, tableName, ids);
+        List<Admission> results = jdbc.query(sql, new BeanPropertyRowMapper<>(Admission.class), schoolId, academicYear);
         log.info("🔍 Found {} admissions matching term: '{}'", results.size(), term);
         return results;
     }
@@ -763,45 +857,31 @@ public class AdmissionService {
         return exists;
     }
 
-    public byte[] getStudentPhoto(String schoolId, Long admissionId, String academicYear) {
+    /**
+     * The student's photo (or its list-view thumbnail) in the media store. A photo still kept in
+     * the row from before the store is moved there on this first read.
+     */
+    public Optional<MediaFile> findStudentPhoto(String schoolId, Long admissionId, String academicYear, boolean thumbnail) {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
-        String tableName = getAdmissionTableName(academicYear);
-        try {
-            byte[] photo = jdbc.queryForObject(
-                    String.format("SELECT student_photo FROM %s WHERE id = ? AND school_id = ?", tableName),
-                    byte[].class, admissionId, schoolId
-            );
-            log.info("📷 Retrieved student photo for admission ID: {} - {} bytes", admissionId, photo != null ? photo.length : 0);
-            return photo;
-        } catch (EmptyResultDataAccessException e) {
-            log.warn("No student photo found for admission ID: {}", admissionId);
-            return null;
-        }
+        ensureTablesExist(jdbc, academicYear);
+        Optional<MediaFile> photo = mediaStore.findForRow(jdbc, schoolId, getAdmissionTableName(academicYear),
+                "student_photo", "student_photo_content_type", admissionId, thumbnail);
+        log.info("📷 Student photo for admission ID: {} - {}", admissionId, photo.map(p -> p.size() + " bytes").orElse("none"));
+        return photo;
     }
 
-    public String getStudentPhotoContentType(String schoolId, Long admissionId, String academicYear) {
-        JdbcTemplate jdbc = getJdbcTemplate(schoolId);
-        String tableName = getAdmissionTableName(academicYear);
-        try {
-            String contentType = jdbc.queryForObject(
-                    String.format("SELECT student_photo_content_type FROM %s WHERE id = ? AND school_id = ?", tableName),
-                    String.class, admissionId, schoolId
-            );
-            log.info("📷 Retrieved student photo content type for admission ID: {} - {}", admissionId, contentType);
-            return contentType;
-        } catch (EmptyResultDataAccessException e) {
-            log.warn("No student photo content type found for admission ID: {}", admissionId);
-            return null;
+    // Detail responses still carry the photo bytes (the forms check them before loading the photo URL)
+    private Admission withStoredPhoto(String schoolId, Admission admission) {
+        if (admission != null && admission.getStudentPhoto() == null && admission.getStudentPhotoRef() != null) {
+            admission.setStudentPhoto(mediaStore.read(schoolId, admission.getStudentPhotoRef()));
         }
+        return admission;
     }
 
     public List<String> getAvailableAcademicYears(String schoolId) {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
         try {
-            List<String> academicYears = jdbc.queryForList(
-                            "SELECT TABLE_NAME FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = ? AND TABLE_NAME LIKE 'admissions_%'",
-                            String.class, schoolId
-                    ).stream()
+            List<String> academicYears = tableCatalog.tablesWithPrefix(jdbc, "admissions_").stream()
                     .map(tableName -> tableName.replace("admissions_", ""))
                     .toList();
             log.info("📚 Found {} academic years for school: {}", academicYears.size(), schoolId);
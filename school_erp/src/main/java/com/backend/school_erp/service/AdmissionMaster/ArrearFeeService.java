@@ -1,84 +1,68 @@
 package com.backend.school_erp.service.AdmissionMaster;
 
 import com.backend.school_erp.DTO.AdmissionMaster.ArrearFeeDTO;
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
 import com.backend.school_erp.entity.AdmissionMaster.ArrearFee;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import javax.sql.DataSource;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 
 @Service
 @Slf4j
 public class ArrearFeeService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
-
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            log.info("Creating HikariCP DataSource for school: {}", id);
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-
-            config.setMaximumPoolSize(10);
-            config.setMinimumIdle(2);
-            config.setIdleTimeout(30000);
-            config.setMaxLifetime(1800000);
-            config.setConnectionTimeout(10000);
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
 
-            return new HikariDataSource(config);
-        });
-    }
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     private void ensureTableExists(JdbcTemplate jdbc) {
-        try {
-            jdbc.execute("""
-                CREATE TABLE IF NOT EXISTS arrear_fees (
-                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                    admission_number VARCHAR(50) NOT NULL,
-                    student_name VARCHAR(255) NOT NULL,
-                    standard VARCHAR(50) NOT NULL,
-                    amount DECIMAL(10,2) NOT NULL,
-                    fee_head VARCHAR(255) NOT NULL,
-                    in_out VARCHAR(10) NOT NULL,
-                    school_id VARCHAR(50) NOT NULL,
-                    academic_year VARCHAR(50) NOT NULL,
-                    account_head VARCHAR(255), -- NEW: Added account_head column
-                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
-                    INDEX idx_admission_number (admission_number),
-                    INDEX idx_school_academic (school_id, academic_year),
-                    INDEX idx_fee_head (fee_head),
-                    INDEX idx_account_head (account_head) -- NEW: Added index for account_head
-                )
-            """);
-
-            // Check if account_head column exists, if not add it
+        schemaMigrator.migrate(jdbc, "ArrearFeeService", 1, () -> {
             try {
-                jdbc.execute("ALTER TABLE arrear_fees ADD COLUMN IF NOT EXISTS account_head VARCHAR(255)");
-                log.info("account_head column added or already exists in arrear_fees table");
+                jdbc.execute("""
+                    CREATE TABLE IF NOT EXISTS arrear_fees (
+                        id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                        admission_number VARCHAR(50) NOT NULL,
+                        student_name VARCHAR(255) NOT NULL,
+                        standard VARCHAR(50) NOT NULL,
+                        amount DECIMAL(10,2) NOT NULL,
+                        fee_head VARCHAR(255) NOT NULL,
+                        in_out VARCHAR(10) NOT NULL,
+                        school_id VARCHAR(50) NOT NULL,
+                        academic_year VARCHAR(50) NOT NULL,
+                        account_head VARCHAR(255), -- NEW: Added account_head column
+                        created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                        updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+                        INDEX idx_admission_number (admission_number),
+                        INDEX idx_school_academic (school_id, academic_year),
+                        INDEX idx_fee_head (fee_head),
+                        INDEX idx_account_head (account_head) -- NEW: Added index for account_head
+                    )
+                """);
+
+                // Check if account_head column exists, if not add it
+                try {
+                    jdbc.execute("ALTER TABLE arrear_fees ADD COLUMN IF NOT EXISTS account_head VARCHAR(255)");
+                    log.info("account_head column added or already exists in arrear_fees table");
+                } catch (Exception e) {
+                    log.warn("account_head column may already exist: {}", e.getMessage());
+                }
             } catch (Exception e) {
-                log.warn("account_head column may already exist: {}", e.getMessage());
+                log.error("Failed to create/update arrear_fees table: {}", e.getMessage());
+                throw new RuntimeException("Database table creation/update failed", e);
             }
-        } catch (Exception e) {
-            log.error("Failed to create/update arrear_fees table: {}", e.getMessage());
-            throw new RuntimeException("Database table creation/update failed", e);
-        }
+        });
     }
 
     public List<ArrearFee> getArrearFeesBySchool(String schoolId, String academicYear) {
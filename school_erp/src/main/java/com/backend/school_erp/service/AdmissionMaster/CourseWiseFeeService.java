@@ -1,75 +1,59 @@
 package com.backend.school_erp.service.AdmissionMaster;
 
 import com.backend.school_erp.DTO.AdmissionMaster.CourseWiseFeeDTO;
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
 import com.backend.school_erp.entity.AdmissionMaster.CourseWiseFee;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import javax.sql.DataSource;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 
 @Service
 @Slf4j
 public class CourseWiseFeeService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
-
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            log.info("Creating HikariCP DataSource for school: {}", id);
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-
-            config.setMaximumPoolSize(10);
-            config.setMinimumIdle(2);
-            config.setIdleTimeout(30000);
-            config.setMaxLifetime(1800000);
-            config.setConnectionTimeout(10000);
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
 
-            return new HikariDataSource(config);
-        });
-    }
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     private void ensureTableExists(JdbcTemplate jdbc) {
-        try {
-            // Note: If table exists without account_head, you may need to alter it manually or drop it.
-            jdbc.execute("""
-                CREATE TABLE IF NOT EXISTS course_wise_fees (
-                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                    course VARCHAR(100) NOT NULL,
-                    sex VARCHAR(20) DEFAULT 'All',
-                    fee_head VARCHAR(255) NOT NULL,
-                    account_head VARCHAR(255),
-                    amount DECIMAL(10,2) NOT NULL,
-                    school_id VARCHAR(50) NOT NULL,
-                    academic_year VARCHAR(50) NOT NULL,
-                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
-                    INDEX idx_course (course),
-                    INDEX idx_school_academic (school_id, academic_year),
-                    INDEX idx_fee_head (fee_head),
-                    UNIQUE KEY unique_course_fee (course, fee_head, school_id, academic_year)
-                )
-            """);
-        } catch (Exception e) {
-            log.error("Failed to create course_wise_fees table: {}", e.getMessage());
-            throw new RuntimeException("Database table creation failed", e);
-        }
+        schemaMigrator.migrate(jdbc, "CourseWiseFeeService", 1, () -> {
+            try {
+                // Note: If table exists without account_head, you may need to alter it manually or drop it.
+                jdbc.execute("""
+                    CREATE TABLE IF NOT EXISTS course_wise_fees (
+                        id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                        course VARCHAR(100) NOT NULL,
+                        sex VARCHAR(20) DEFAULT 'All',
+                        fee_head VARCHAR(255) NOT NULL,
+                        account_head VARCHAR(255),
+                        amount DECIMAL(10,2) NOT NULL,
+                        school_id VARCHAR(50) NOT NULL,
+                        academic_year VARCHAR(50) NOT NULL,
+                        created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                        updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+                        INDEX idx_course (course),
+                        INDEX idx_school_academic (school_id, academic_year),
+                        INDEX idx_fee_head (fee_head),
+                        UNIQUE KEY unique_course_fee (course, fee_head, school_id, academic_year)
+                    )
+                """);
+            } catch (Exception e) {
+                log.error("Failed to create course_wise_fees table: {}", e.getMessage());
+                throw new RuntimeException("Database table creation failed", e);
+            }
+        });
     }
 
     public List<CourseWiseFee> getCourseWiseFeesBySchool(String schoolId, String academicYear) {
@@ -2,45 +2,36 @@ package com.backend.school_erp.service.AdmissionMaster;
 
 import com.backend.school_erp.DTO.AdmissionMaster.EnquiryDropdownDTO;
 import com.backend.school_erp.DTO.AdmissionMaster.FeeDetailDTO;
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.service.Administration.MasterDataCache;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantTableCatalog;
 import com.backend.school_erp.entity.Administration.*;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import javax.sql.DataSource;
 import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 
 @Service
 @Slf4j
 public class EnquiryDropdownService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
-
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            log.info("Creating HikariCP DataSource for school: {}", id);
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-            config.setMaximumPoolSize(10);
-            config.setMinimumIdle(2);
-            return new HikariDataSource(config);
-        });
-    }
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private TenantTableCatalog tableCatalog;
+
+    @Autowired
+    private MasterDataCache masterDataCache;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     /**
@@ -54,10 +45,13 @@ public class EnquiryDropdownService {
         try {
             // Fallback: Fetch the latest academic year from sections table (assuming it contains recent data)
             String sql = "SELECT academic_year FROM sections WHERE school_id = ? ORDER BY id DESC LIMIT 1";
-            return getJdbcTemplate(schoolId).queryForObject(sql, String.class, schoolId);
-        } catch (EmptyResultDataAccessException e) {
-            log.warn("No academic year found in sections table for school {}", schoolId);
-            return ""; // Return empty or handle as needed
+            List<String> latest = masterDataCache.get(schoolId, "sections", Arrays.asList("enquiry.latestAcademicYear"),
+                    () -> getJdbcTemplate(schoolId).queryForList(sql, String.class, schoolId));
+            if (latest.isEmpty()) {
+                log.warn("No academic year found in sections table for school {}", schoolId);
+                return ""; // Return empty or handle as needed
+            }
+            return latest.get(0);
         } catch (Exception e) {
             log.error("Error resolving academic year for school {}: {}", schoolId, e.getMessage());
             return "";
@@ -67,11 +61,12 @@ public class EnquiryDropdownService {
     // States (Global)
     public List<EnquiryDropdownDTO> getStates(String schoolId) {
         try {
-            List<StateDistrict> states = getJdbcTemplate(schoolId).query(
-                    "SELECT id, name, type, state_id, school_id, created_at FROM state_district WHERE type='state' AND school_id = ? ORDER BY name ASC",
-                    new BeanPropertyRowMapper<>(StateDistrict.class),
-                    schoolId
-            );
+            List<StateDistrict> states = masterDataCache.get(schoolId, "state_district", Arrays.asList("enquiry.getStates"),
+                    () -> getJdbcTemplate(schoolId).query(
+                        "SELECT id, name, type, state_id, school_id, created_at FROM state_district WHERE type='state' AND school_id = ? ORDER BY name ASC",
+                        new BeanPropertyRowMapper<>(StateDistrict.class),
+                        schoolId
+                ));
             return states.stream().map(state ->
                     EnquiryDropdownDTO.builder()
                             .id(state.getId())
@@ -88,11 +83,12 @@ public class EnquiryDropdownService {
     // Districts (Global)
     public List<EnquiryDropdownDTO> getDistricts(String schoolId) {
         try {
-            List<StateDistrict> districts = getJdbcTemplate(schoolId).query(
-                    "SELECT id, name, type, state_id, school_id, created_at FROM state_district WHERE type='district' AND school_id = ? ORDER BY name ASC",
-                    new BeanPropertyRowMapper<>(StateDistrict.class),
-                    schoolId
-            );
+            List<StateDistrict> districts = masterDataCache.get(schoolId, "state_district", Arrays.asList("enquiry.getDistricts"),
+                    () -> getJdbcTemplate(schoolId).query(
+                        "SELECT id, name, type, state_id, school_id, created_at FROM state_district WHERE type='district' AND school_id = ? ORDER BY name ASC",
+                        new BeanPropertyRowMapper<>(StateDistrict.class),
+                        schoolId
+                ));
             return districts.stream().map(district ->
                     EnquiryDropdownDTO.builder()
                             .id(district.getId())
@@ -109,11 +105,12 @@ public class EnquiryDropdownService {
     // Districts by State (Global)
     public List<EnquiryDropdownDTO> getDistrictsByState(String schoolId, Long stateId) {
         try {
-            List<StateDistrict> districts = getJdbcTemplate(schoolId).query(
-                    "SELECT id, name, type, state_id, school_id, created_at FROM state_district WHERE type='district' AND state_id = ? AND school_id = ? ORDER BY name ASC",
-                    new BeanPropertyRowMapper<>(StateDistrict.class),
-                    stateId, schoolId
-            );
+            List<StateDistrict> districts = masterDataCache.get(schoolId, "state_district", Arrays.asList("enquiry.getDistrictsByState", stateId),
+                    () -> getJdbcTemplate(schoolId).query(
+                        "SELECT id, name, type, state_id, school_id, created_at FROM state_district WHERE type='district' AND state_id = ? AND school_id = ? ORDER BY name ASC",
+                        new BeanPropertyRowMapper<>(StateDistrict.class),
+                        stateId, schoolId
+                ));
             return districts.stream().map(district ->
                     EnquiryDropdownDTO.builder()
                             .id(district.getId())
@@ -131,11 +128,12 @@ public class EnquiryDropdownService {
     public List<EnquiryDropdownDTO> getCommunities(String schoolId, String academicYear) {
         String year = resolveAcademicYear(schoolId, academicYear);
         try {
-            List<CommunityAndCasteSetup> communities = getJdbcTemplate(schoolId).query(
-                    "SELECT id, name, type, school_id, academic_year, created_at FROM community_caste WHERE type='communities' AND school_id = ? AND academic_year = ? ORDER BY name ASC",
-                    new BeanPropertyRowMapper<>(CommunityAndCasteSetup.class),
-                    schoolId, year
-            );
+            List<CommunityAndCasteSetup> communities = masterDataCache.get(schoolId, "community_caste", Arrays.asList("enquiry.getCommunities", year),
+                    () -> getJdbcTemplate(schoolId).query(
+                        "SELECT id, name, type, school_id, academic_year, created_at FROM community_caste WHERE type='communities' AND school_id = ? AND academic_year = ? ORDER BY name ASC",
+                        new BeanPropertyRowMapper<>(CommunityAndCasteSetup.class),
+                        schoolId, year
+                ));
             return communities.stream().map(community ->
                     EnquiryDropdownDTO.builder()
                             .id(community.getId())
@@ -153,11 +151,12 @@ public class EnquiryDropdownService {
     public List<EnquiryDropdownDTO> getCastes(String schoolId, String academicYear) {
         String year = resolveAcademicYear(schoolId, academicYear);
         try {
-            List<CommunityAndCasteSetup> castes = getJdbcTemplate(schoolId).query(
-                    "SELECT id, name, type, school_id, academic_year, created_at FROM community_caste WHERE type='castes' AND school_id = ? AND academic_year = ? ORDER BY name ASC",
-                    new BeanPropertyRowMapper<>(CommunityAndCasteSetup.class),
-                    schoolId, year
-            );
+            List<CommunityAndCasteSetup> castes = masterDataCache.get(schoolId, "community_caste", Arrays.asList("enquiry.getCastes", year),
+                    () -> getJdbcTemplate(schoolId).query(
+                        "SELECT id, name, type, school_id, academic_year, created_at FROM community_caste WHERE type='castes' AND school_id = ? AND academic_year = ? ORDER BY name ASC",
+                        new BeanPropertyRowMapper<>(CommunityAndCasteSetup.class),
+                        schoolId, year
+                ));
             return castes.stream().map(caste ->
                     EnquiryDropdownDTO.builder()
                             .id(caste.getId())
@@ -175,11 +174,12 @@ public class EnquiryDropdownService {
     public List<EnquiryDropdownDTO> getReligions(String schoolId, String academicYear) {
         String year = resolveAcademicYear(schoolId, academicYear);
         try {
-            List<CommunityAndCasteSetup> religions = getJdbcTemplate(schoolId).query(
-                    "SELECT id, name, type, school_id, academic_year, created_at FROM community_caste WHERE type='religions' AND school_id = ? AND academic_year = ? ORDER BY name ASC",
-                    new BeanPropertyRowMapper<>(CommunityAndCasteSetup.class),
-                    schoolId, year
-            );
+            List<CommunityAndCasteSetup> religions = masterDataCache.get(schoolId, "community_caste", Arrays.asList("enquiry.getReligions", year),
+                    () -> getJdbcTemplate(schoolId).query(
+                        "SELECT id, name, type, school_id, academic_year, created_at FROM community_caste WHERE type='religions' AND school_id = ? AND academic_year = ? ORDER BY name ASC",
+                        new BeanPropertyRowMapper<>(CommunityAndCasteSetup.class),
+                        schoolId, year
+                ));
             return religions.stream().map(religion ->
                     EnquiryDropdownDTO.builder()
                             .id(religion.getId())
@@ -197,11 +197,12 @@ public class EnquiryDropdownService {
     public List<EnquiryDropdownDTO> getNationalities(String schoolId, String academicYear) {
         String year = resolveAcademicYear(schoolId, academicYear);
         try {
-            List<CommunityAndCasteSetup> nationalities = getJdbcTemplate(schoolId).query(
-                    "SELECT id, name, type, school_id, academic_year, created_at FROM community_caste WHERE type='nationalities' AND school_id = ? AND academic_year = ? ORDER BY name ASC",
-                    new BeanPropertyRowMapper<>(CommunityAndCasteSetup.class),
-                    schoolId, year
-            );
+            List<CommunityAndCasteSetup> nationalities = masterDataCache.get(schoolId, "community_caste", Arrays.asList("enquiry.getNationalities", year),
+                    () -> getJdbcTemplate(schoolId).query(
+                        "SELECT id, name, type, school_id, academic_year, created_at FROM community_caste WHERE type='nationalities' AND school_id = ? AND academic_year = ? ORDER BY name ASC",
+                        new BeanPropertyRowMapper<>(CommunityAndCasteSetup.class),
+                        schoolId, year
+                ));
             return nationalities.stream().map(nationality ->
                     EnquiryDropdownDTO.builder()
                             .id(nationality.getId())
@@ -219,11 +220,12 @@ public class EnquiryDropdownService {
     public List<EnquiryDropdownDTO> getSections(String schoolId, String academicYear) {
         String year = resolveAcademicYear(schoolId, academicYear);
         try {
-            List<Section> sections = getJdbcTemplate(schoolId).query(
-                    "SELECT id, section, school_id, academic_year FROM sections WHERE school_id = ? AND academic_year = ? ORDER BY section ASC",
-                    new BeanPropertyRowMapper<>(Section.class),
-                    schoolId, year
-            );
+            List<Section> sections = masterDataCache.get(schoolId, "sections", Arrays.asList("enquiry.getSections", year),
+                    () -> getJdbcTemplate(schoolId).query(
+                        "SELECT id, section, school_id, academic_year FROM sections WHERE school_id = ? AND academic_year = ? ORDER BY section ASC",
+                        new BeanPropertyRowMapper<>(Section.class),
+                        schoolId, year
+                ));
             return sections.stream().map(section ->
                     EnquiryDropdownDTO.builder()
                             .id(section.getId())
@@ -241,11 +243,12 @@ public class EnquiryDropdownService {
     public List<EnquiryDropdownDTO> getMotherTongues(String schoolId, String academicYear) {
         String year = resolveAcademicYear(schoolId, academicYear);
         try {
-            List<MotherTongueSetup> motherTongues = getJdbcTemplate(schoolId).query(
-                    "SELECT id, mother_tongue, school_id, academic_year FROM mother_tongues WHERE school_id = ? AND academic_year = ? ORDER BY mother_tongue ASC",
-                    new BeanPropertyRowMapper<>(MotherTongueSetup.class),
-                    schoolId, year
-            );
+            List<MotherTongueSetup> motherTongues = masterDataCache.get(schoolId, "mother_tongues", Arrays.asList("enquiry.getMotherTongues", year),
+                    () -> getJdbcTemplate(schoolId).query(
+                        "SELECT id, mother_tongue, school_id, academic_year FROM mother_tongues WHERE school_id = ? AND academic_year = ? ORDER BY mother_tongue ASC",
+                        new BeanPropertyRowMapper<>(MotherTongueSetup.class),
+                        schoolId, year
+                ));
             return motherTongues.stream().map(mt ->
                     EnquiryDropdownDTO.builder()
                             .id(mt.getId())
@@ -263,11 +266,12 @@ public class EnquiryDropdownService {
     public List<EnquiryDropdownDTO> getStudentCategories(String schoolId, String academicYear) {
         String year = resolveAcademicYear(schoolId, academicYear);
         try {
-            List<StudentCategory> studentCategories = getJdbcTemplate(schoolId).query(
-                    "SELECT id, student_category_name, school_id, academic_year, created_at FROM student_categories WHERE school_id = ? AND academic_year = ? ORDER BY student_category_name ASC",
-                    new BeanPropertyRowMapper<>(StudentCategory.class),
-                    schoolId, year
-            );
+            List<StudentCategory> studentCategories = masterDataCache.get(schoolId, "student_categories", Arrays.asList("enquiry.getStudentCategories", year),
+                    () -> getJdbcTemplate(schoolId).query(
+                        "SELECT id, student_category_name, school_id, academic_year, created_at FROM student_categories WHERE school_id = ? AND academic_year = ? ORDER BY student_category_name ASC",
+                        new BeanPropertyRowMapper<>(StudentCategory.class),
+                        schoolId, year
+                ));
             return studentCategories.stream().map(category ->
                     EnquiryDropdownDTO.builder()
                             .id(category.getId())
@@ -285,11 +289,12 @@ public class EnquiryDropdownService {
     public List<EnquiryDropdownDTO> getCourses(String schoolId, String academicYear) {
         String year = resolveAcademicYear(schoolId, academicYear);
         try {
-            List<CourseSetup> courses = getJdbcTemplate(schoolId).query(
-                    "SELECT id, standard, school_id, academic_year FROM courses WHERE school_id = ? AND academic_year = ? ORDER BY standard ASC",
-                    new BeanPropertyRowMapper<>(CourseSetup.class),
-                    schoolId, year
-            );
+            List<CourseSetup> courses = masterDataCache.get(schoolId, "courses", Arrays.asList("enquiry.getCourses", year),
+                    () -> getJdbcTemplate(schoolId).query(
+                        "SELECT id, standard, school_id, academic_year FROM courses WHERE school_id = ? AND academic_year = ? ORDER BY standard ASC",
+                        new BeanPropertyRowMapper<>(CourseSetup.class),
+                        schoolId, year
+                ));
             return courses.stream().map(course ->
                     EnquiryDropdownDTO.builder()
                             .id(course.getId())
@@ -307,11 +312,12 @@ public class EnquiryDropdownService {
     public List<EnquiryDropdownDTO> getParentOccupations(String schoolId, String academicYear) {
         String year = resolveAcademicYear(schoolId, academicYear);
         try {
-            List<ParentOccupationSetup> occupations = getJdbcTemplate(schoolId).query(
-                    "SELECT id, occupation, school_id, academic_year, created_at FROM parent_occupations WHERE school_id = ? AND academic_year = ? ORDER BY occupation ASC",
-                    new BeanPropertyRowMapper<>(ParentOccupationSetup.class),
-                    schoolId, year
-            );
+            List<ParentOccupationSetup> occupations = masterDataCache.get(schoolId, "parent_occupations", Arrays.asList("enquiry.getParentOccupations", year),
+                    () -> getJdbcTemplate(schoolId).query(
+                        "SELECT id, occupation, school_id, academic_year, created_at FROM parent_occupations WHERE school_id = ? AND academic_year = ? ORDER BY occupation ASC",
+                        new BeanPropertyRowMapper<>(ParentOccupationSetup.class),
+                        schoolId, year
+                ));
             return occupations.stream().map(occupation ->
                     EnquiryDropdownDTO.builder()
                             .id(occupation.getId())
@@ -329,11 +335,12 @@ public class EnquiryDropdownService {
     public List<EnquiryDropdownDTO> getBloodGroups(String schoolId, String academicYear) {
         String year = resolveAcademicYear(schoolId, academicYear);
         try {
-            List<BloodGroupSetup> bloodGroups = getJdbcTemplate(schoolId).query(
-                    "SELECT id, blood_group, school_id, academic_year FROM blood_groups WHERE school_id = ? AND academic_year = ? ORDER BY blood_group ASC",
-                    new BeanPropertyRowMapper<>(BloodGroupSetup.class),
-                    schoolId, year
-            );
+            List<BloodGroupSetup> bloodGroups = masterDataCache.get(schoolId, "blood_groups", Arrays.asList("enquiry.getBloodGroups", year),
+                    () -> getJdbcTemplate(schoolId).query(
+                        "SELECT id, blood_group, school_id, academic_year FROM blood_groups WHERE school_id = ? AND academic_year = ? ORDER BY blood_group ASC",
+                        new BeanPropertyRowMapper<>(BloodGroupSetup.class),
+                        schoolId, year
+                ));
             return bloodGroups.stream().map(bg ->
                     EnquiryDropdownDTO.builder()
                             .id(bg.getId())
@@ -351,10 +358,7 @@ public class EnquiryDropdownService {
     public List<EnquiryDropdownDTO> getBusFees(String schoolId, String academicYear) {
         String year = resolveAcademicYear(schoolId, academicYear);
         try {
-            String checkTableSql = "SHOW TABLES LIKE 'bus_fees'";
-            List<String> tables = getJdbcTemplate(schoolId).query(checkTableSql, (rs, rowNum) -> rs.getString(1));
-
-            if (tables.isEmpty()) {
+            if (!tableCatalog.tableExists(getJdbcTemplate(schoolId), "bus_fees")) {
                 log.warn("bus_fees table does not exist in school database: {}", schoolId);
                 return List.of();
             }
@@ -362,16 +366,17 @@ public class EnquiryDropdownService {
             String sql = "SELECT id, boarding_point, route_number, fee_heading, account_head, fee, school_id, academic_year " +
                     "FROM bus_fees WHERE school_id = ? AND academic_year = ? ORDER BY boarding_point, route_number ASC";
 
-            return getJdbcTemplate(schoolId).query(sql, (rs, rowNum) ->
-                    EnquiryDropdownDTO.builder()
-                            .id(rs.getLong("id"))
-                            .boardingPoint(rs.getString("boarding_point"))
-                            .route(rs.getString("route_number"))
-                            .name(rs.getString("fee_heading"))
-                            .feeHead(rs.getString("fee_heading"))
-                            .amount(rs.getDouble("fee"))
-                            .type("BUS")
-                            .build(), schoolId, year);
+            return masterDataCache.get(schoolId, "bus_fees", Arrays.asList("enquiry.getBusFees", year),
+                    () -> getJdbcTemplate(schoolId).query(sql, (rs, rowNum) ->
+                        EnquiryDropdownDTO.builder()
+                                .id(rs.getLong("id"))
+                                .boardingPoint(rs.getString("boarding_point"))
+                                .route(rs.getString("route_number"))
+                                .name(rs.getString("fee_heading"))
+                                .feeHead(rs.getString("fee_heading"))
+                                .amount(rs.getDouble("fee"))
+                                .type("BUS")
+                                .build(), schoolId, year));
         } catch (Exception e) {
             log.error("Error fetching bus fees for school {}: {}", schoolId, e.getMessage());
             return List.of();
@@ -382,11 +387,12 @@ public class EnquiryDropdownService {
     public List<EnquiryDropdownDTO> getHostelFeeHeads(String schoolId, String academicYear) {
         String year = resolveAcademicYear(schoolId, academicYear);
         try {
-            List<HostelFeeSetup> feeHeads = getJdbcTemplate(schoolId).query(
-                    "SELECT id, fee_heading, fee_amount, school_id, academic_year FROM hostel_fee_heads WHERE school_id = ? AND academic_year = ? ORDER BY fee_heading ASC",
-                    new BeanPropertyRowMapper<>(HostelFeeSetup.class),
-                    schoolId, year
-            );
+            List<HostelFeeSetup> feeHeads = masterDataCache.get(schoolId, "hostel_fee_heads", Arrays.asList("enquiry.getHostelFeeHeads", year),
+                    () -> getJdbcTemplate(schoolId).query(
+                        "SELECT id, fee_heading, fee_amount, school_id, academic_year FROM hostel_fee_heads WHERE school_id = ? AND academic_year = ? ORDER BY fee_heading ASC",
+                        new BeanPropertyRowMapper<>(HostelFeeSetup.class),
+                        schoolId, year
+                ));
             return feeHeads.stream().map(feeHead ->
                     EnquiryDropdownDTO.builder()
                             .id(feeHead.getId())
@@ -408,10 +414,7 @@ public class EnquiryDropdownService {
         try {
             log.info("Fetching all tuition fees for school: {}, standard: {}, category: {}, year: {}", schoolId, standard, studentCategory, year);
 
-            String checkTableSql = "SHOW TABLES LIKE 'tuition_fees'";
-            List<String> tables = getJdbcTemplate(schoolId).query(checkTableSql, (rs, rowNum) -> rs.getString(1));
-
-            if (tables.isEmpty()) {
+            if (!tableCatalog.tableExists(getJdbcTemplate(schoolId), "tuition_fees")) {
                 log.warn("tuition_fees table does not exist in school database: {}", schoolId);
                 return List.of();
             }
@@ -422,22 +425,23 @@ public class EnquiryDropdownService {
                     "WHERE school_id = ? AND standard = ? AND student_category = ? AND academic_year = ? " +
                     "ORDER BY fee_heading ASC";
 
-            return getJdbcTemplate(schoolId).query(
-                    sql,
-                    (rs, rowNum) -> FeeDetailDTO.builder()
-                            .id(rs.getLong("id"))
-                            .standard(rs.getString("standard"))
-                            .studentCategory(rs.getString("student_category"))
-                            .feeHeading(rs.getString("fee_heading"))
-                            .accountHead(rs.getString("account_head"))
-                            .amount(rs.getBigDecimal("fee_amount"))
-                            .feeAmount(rs.getBigDecimal("fee_amount") != null ? rs.getBigDecimal("fee_amount").toString() : "0.00")
-                            .schoolId(rs.getString("school_id"))
-                            .academicYear(rs.getString("academic_year"))
-                            .type("TUITION")
-                            .build(),
-                    schoolId, standard, studentCategory, year
-            );
+            return masterDataCache.get(schoolId, "tuition_fees", Arrays.asList("enquiry.getAllFees", standard, studentCategory, year),
+                    () -> getJdbcTemplate(schoolId).query(
+                        sql,
+                        (rs, rowNum) -> FeeDetailDTO.builder()
+                                .id(rs.getLong("id"))
+                                .standard(rs.getString("standard"))
+                                .studentCategory(rs.getString("student_category"))
+                                .feeHeading(rs.getString("fee_heading"))
+                                .accountHead(rs.getString("account_head"))
+                                .amount(rs.getBigDecimal("fee_amount"))
+                                .feeAmount(rs.getBigDecimal("fee_amount") != null ? rs.getBigDecimal("fee_amount").toString() : "0.00")
+                                .schoolId(rs.getString("school_id"))
+                                .academicYear(rs.getString("academic_year"))
+                                .type("TUITION")
+                                .build(),
+                        schoolId, standard, studentCategory, year
+                ));
 
         } catch (Exception e) {
             log.error("Error fetching tuition fees for school {}, standard {}, category {}, year {}: {}",
@@ -452,10 +456,7 @@ public class EnquiryDropdownService {
         try {
             log.info("Fetching hostel fees for school: {}, standard: {}, category: {}, year: {}", schoolId, standard, studentCategory, year);
 
-            String checkTableSql = "SHOW TABLES LIKE 'hostel_fees'";
-            List<String> tables = getJdbcTemplate(schoolId).query(checkTableSql, (rs, rowNum) -> rs.getString(1));
-
-            if (tables.isEmpty()) {
+            if (!tableCatalog.tableExists(getJdbcTemplate(schoolId), "hostel_fees")) {
                 log.warn("hostel_fees table does not exist in school database: {}", schoolId);
                 return List.of();
             }
@@ -466,22 +467,23 @@ public class EnquiryDropdownService {
                     "WHERE school_id = ? AND standard = ? AND student_category = ? AND academic_year = ? " +
                     "ORDER BY fee_heading ASC";
 
-            return getJdbcTemplate(schoolId).query(
-                    sql,
-                    (rs, rowNum) -> FeeDetailDTO.builder()
-                            .id(rs.getLong("id"))
-                            .standard(rs.getString("standard"))
-                            .studentCategory(rs.getString("student_category"))
-                            .feeHeading(rs.getString("fee_heading"))
-                            .accountHead(rs.getString("account_head"))
-                            .amount(rs.getBigDecimal("fee_amount"))
-                            .feeAmount(rs.getBigDecimal("fee_amount") != null ? rs.getBigDecimal("fee_amount").toString() : "0.00")
-                            .schoolId(rs.getString("school_id"))
-                            .academicYear(rs.getString("academic_year"))
-                            .type("HOSTEL")
-                            .build(),
-                    schoolId, standard, studentCategory, year
-            );
+            return masterDataCache.get(schoolId, "hostel_fees", Arrays.asList("enquiry.getHostelFees", standard, studentCategory, year),
+                    () -> getJdbcTemplate(schoolId).query(
+                        sql,
+                        (rs, rowNum) -> FeeDetailDTO.builder()
+                                .id(rs.getLong("id"))
+                                .standard(rs.getString("standard"))
+                                .studentCategory(rs.getString("student_category"))
+                                .feeHeading(rs.getString("fee_heading"))
+                                .accountHead(rs.getString("account_head"))
+                                .amount(rs.getBigDecimal("fee_amount"))
+                                .feeAmount(rs.getBigDecimal("fee_amount") != null ? rs.getBigDecimal("fee_amount").toString() : "0.00")
+                                .schoolId(rs.getString("school_id"))
+                                .academicYear(rs.getString("academic_year"))
+                                .type("HOSTEL")
+                                .build(),
+                        schoolId, standard, studentCategory, year
+                ));
 
         } catch (Exception e) {
             log.error("Error fetching hostel fees for school {}, standard {}, category {}, year {}: {}",
@@ -496,10 +498,7 @@ public class EnquiryDropdownService {
         try {
             log.info("Fetching bus fee for school: {}, boarding point: {}, route: {}, year: {}", schoolId, boardingPoint, routeNumber, year);
 
-            String checkTableSql = "SHOW TABLES LIKE 'bus_fees'";
-            List<String> tables = getJdbcTemplate(schoolId).query(checkTableSql, (rs, rowNum) -> rs.getString(1));
-
-            if (tables.isEmpty()) {
+            if (!tableCatalog.tableExists(getJdbcTemplate(schoolId), "bus_fees")) {
                 log.warn("bus_fees table does not exist in school database: {}", schoolId);
                 return createDefaultBusFeeDTO();
             }
@@ -509,18 +508,19 @@ public class EnquiryDropdownService {
                     "WHERE school_id = ? AND boarding_point = ? AND route_number = ? AND academic_year = ? " +
                     "LIMIT 1";
 
-            List<FeeDetailDTO> busFees = getJdbcTemplate(schoolId).query(sql, (rs, rowNum) ->
-                            FeeDetailDTO.builder()
-                                    .id(rs.getLong("id"))
-                                    .feeHeading(rs.getString("fee_heading"))
-                                    .accountHead(rs.getString("account_head"))
-                                    .amount(rs.getBigDecimal("fee"))
-                                    .feeAmount(rs.getBigDecimal("fee") != null ? rs.getBigDecimal("fee").toString() : "0.00")
-                                    .schoolId(rs.getString("school_id"))
-                                    .academicYear(rs.getString("academic_year"))
-                                    .type("BUS")
-                                    .build(),
-                    schoolId, boardingPoint, routeNumber, year);
+            List<FeeDetailDTO> busFees = masterDataCache.get(schoolId, "bus_fees", Arrays.asList("enquiry.getBusFee", boardingPoint, routeNumber, year),
+                    () -> getJdbcTemplate(schoolId).query(sql, (rs, rowNum) ->
+                                FeeDetailDTO.builder()
+                                        .id(rs.getLong("id"))
+                                        .feeHeading(rs.getString("fee_heading"))
+                                        .accountHead(rs.getString("account_head"))
+                                        .amount(rs.getBigDecimal("fee"))
+                                        .feeAmount(rs.getBigDecimal("fee") != null ? rs.getBigDecimal("fee").toString() : "0.00")
+                                        .schoolId(rs.getString("school_id"))
+                                        .academicYear(rs.getString("academic_year"))
+                                        .type("BUS")
+                                        .build(),
+                        schoolId, boardingPoint, routeNumber, year));
 
             if (!busFees.isEmpty()) {
                 log.info("Found bus fee: {} for boarding point: {}, route: {}", busFees.get(0).getAmount(), boardingPoint, routeNumber);
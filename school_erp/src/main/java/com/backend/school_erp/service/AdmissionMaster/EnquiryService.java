@@ -1,122 +1,136 @@
 package com.backend.school_erp.service.AdmissionMaster;
 
 import com.backend.school_erp.DTO.AdmissionMaster.EnquiryDTO;
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.DTO.KeysetPage;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
 import com.backend.school_erp.entity.AdmissionMaster.Enquiry;
+import com.backend.school_erp.service.Media.MediaFile;
+import com.backend.school_erp.service.Media.MediaStore;
+import com.backend.school_erp.service.Paging.KeysetQuery;
+import com.backend.school_erp.service.Paging.KeysetSort;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.lob.DefaultLobHandler;
 import org.springframework.jdbc.support.lob.LobHandler;
 import org.springframework.stereotype.Service;
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 import org.springframework.web.multipart.MultipartFile;
 
-import javax.sql.DataSource;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @Slf4j
 public class EnquiryService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
-    private final LobHandler lobHandler = new DefaultLobHandler();
+    // Paged list rows: every column but the photo itself (the content type tells whether there is one)
+    private static final String ENQUIRY_LIST_COLUMNS = """
+            id, enquiry_key, admission_number, student_photo_content_type, student_photo_ref, student_name, father_name, mother_name,
+            street_village, place_pincode, district, phone_number, boarding_point, bus_route_number, email_id,
+            communication_address, nationality, religion, state, community, caste, student_type, student_category,
+            standard, section, gender, date_of_birth, emis, lunch_refresh, blood_group, date_of_admission,
+            mother_tongue, father_occupation, mother_occupation, exam_number, bus_fee, hostel_fee, tution_fees,
+            studied_year, class_last_studied, class_to_be_admitted, name_of_school, remarks, identification_mark1,
+            identification_mark2, aadhar_number, school_id, academic_year, created_at, updated_at, fee_structure_json""";
 
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            log.info("🔗 Creating HikariCP DataSource for school: {}", id);
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-            config.setMaximumPoolSize(10);
-            config.setMinimumIdle(2);
-            config.setIdleTimeout(30000);
-            config.setMaxLifetime(1800000);
-            config.setConnectionTimeout(10000);
-            config.setLeakDetectionThreshold(60000);
-            return new HikariDataSource(config);
-        });
-    }
+    // "recent" follows insertion order, like created_at DESC in getAllEnquiries
+    private static final KeysetSort RECENT = KeysetSort.desc("recent", "id");
+    private static final Map<String, KeysetSort> ENQUIRY_SORTS = Map.of(
+            "recent", RECENT,
+            "name", KeysetSort.asc("name", "student_name"),
+            "enquiryKey", KeysetSort.asc("enquiryKey", "enquiry_key"));
+
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
+
+    @Autowired
+    private MediaStore mediaStore;
+
+    private final LobHandler lobHandler = new DefaultLobHandler();
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     private void ensureTableExists(JdbcTemplate jdbc) {
-        try {
-            jdbc.execute("""
-                CREATE TABLE IF NOT EXISTS enquiries (
-                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                    enquiry_key VARCHAR(100) NOT NULL UNIQUE,
-                    admission_number VARCHAR(100),
-                    student_photo MEDIUMBLOB,
-                    student_photo_content_type VARCHAR(100),
-                    student_name VARCHAR(255) NOT NULL,
-                    father_name VARCHAR(255) NOT NULL,
-                    mother_name VARCHAR(255) NOT NULL,
-                    street_village VARCHAR(255),
-                    place_pincode VARCHAR(20),
-                    district VARCHAR(100),
-                    phone_number VARCHAR(20) NOT NULL,
-                    boarding_point VARCHAR(100),
-                    bus_route_number VARCHAR(100),
-                    email_id VARCHAR(255),
-                    communication_address TEXT,
-                    nationality VARCHAR(100),
-                    religion VARCHAR(100),
-                    state VARCHAR(100),
-                    community VARCHAR(100),
-                    caste VARCHAR(100),
-                    student_type VARCHAR(50),
-                    student_category VARCHAR(100),
-                    standard VARCHAR(50) NOT NULL,
-                    section VARCHAR(50),
-                    gender VARCHAR(20),
-                    date_of_birth DATE,
-                    emis VARCHAR(100),
-                    lunch_refresh VARCHAR(100),
-                    blood_group VARCHAR(10),
-                    date_of_admission DATE,
-                    mother_tongue VARCHAR(100),
-                    father_occupation VARCHAR(100),
-                    mother_occupation VARCHAR(100),
-                    exam_number VARCHAR(100),
-                    bus_fee DECIMAL(10,2) DEFAULT 0.00,
-                    hostel_fee DECIMAL(10,2) DEFAULT 0.00,
-                    tution_fees DECIMAL(10,2) DEFAULT 0.00,
-                    studied_year VARCHAR(50),
-                    class_last_studied VARCHAR(50),
-                    class_to_be_admitted VARCHAR(50),
-                    name_of_school VARCHAR(255),
-                    remarks TEXT,
-                    identification_mark1 VARCHAR(255),
-                    identification_mark2 VARCHAR(255),
-                    aadhar_number VARCHAR(20),
-                    school_id VARCHAR(50) NOT NULL,
-                    academic_year VARCHAR(50) NOT NULL,
-                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
-                    fee_structure_json TEXT,  -- NEW: Store detailed fee structure with account heads
-                    INDEX idx_enquiry_key (enquiry_key),
-                    INDEX idx_student_name (student_name),
-                    INDEX idx_phone_number (phone_number),
-                    INDEX idx_standard (standard),
-                    INDEX idx_school_academic (school_id, academic_year)
-                )
-            """);
-            log.info("✅ Enquiries table ensured to exist with fee_structure_json column");
-        } catch (Exception e) {
-            log.error("❌ Failed to ensure enquiries table exists", e);
-            throw new RuntimeException("Failed to initialize database table", e);
-        }
+        schemaMigrator.migrate(jdbc, "EnquiryService", 2, () -> {
+            try {
+                jdbc.execute("""
+                    CREATE TABLE IF NOT EXISTS enquiries (
+                        id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                        enquiry_key VARCHAR(100) NOT NULL UNIQUE,
+                        admission_number VARCHAR(100),
+                        student_photo MEDIUMBLOB,
+                        student_photo_content_type VARCHAR(100),
+                        student_photo_ref CHAR(64),
+                        student_name VARCHAR(255) NOT NULL,
+                        father_name VARCHAR(255) NOT NULL,
+                        mother_name VARCHAR(255) NOT NULL,
+                        street_village VARCHAR(255),
+                        place_pincode VARCHAR(20),
+                        district VARCHAR(100),
+                        phone_number VARCHAR(20) NOT NULL,
+                        boarding_point VARCHAR(100),
+                        bus_route_number VARCHAR(100),
+                        email_id VARCHAR(255),
+                        communication_address TEXT,
+                        nationality VARCHAR(100),
+                        religion VARCHAR(100),
+                        state VARCHAR(100),
+                        community VARCHAR(100),
+                        caste VARCHAR(100),
+                        student_type VARCHAR(50),
+                        student_category VARCHAR(100),
+                        standard VARCHAR(50) NOT NULL,
+                        section VARCHAR(50),
+                        gender VARCHAR(20),
+                        date_of_birth DATE,
+                        emis VARCHAR(100),
+                        lunch_refresh VARCHAR(100),
+                        blood_group VARCHAR(10),
+                        date_of_admission DATE,
+                        mother_tongue VARCHAR(100),
+                        father_occupation VARCHAR(100),
+                        mother_occupation VARCHAR(100),
+                        exam_number VARCHAR(100),
+                        bus_fee DECIMAL(10,2) DEFAULT 0.00,
+                        hostel_fee DECIMAL(10,2) DEFAULT 0.00,
+                        tution_fees DECIMAL(10,2) DEFAULT 0.00,
+                        studied_year VARCHAR(50),
+                        class_last_studied VARCHAR(50),
+                        class_to_be_admitted VARCHAR(50),
+                        name_of_school VARCHAR(255),
+                        remarks TEXT,
+                        identification_mark1 VARCHAR(255),
+                        identification_mark2 VARCHAR(255),
+                        aadhar_number VARCHAR(20),
+                        school_id VARCHAR(50) NOT NULL,
+                        academic_year VARCHAR(50) NOT NULL,
+                        created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                        updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+                        fee_structure_json TEXT,  -- NEW: Store detailed fee structure with account heads
+                        INDEX idx_enquiry_key (enquiry_key),
+                        INDEX idx_student_name (student_name),
+                        INDEX idx_phone_number (phone_number),
+                        INDEX idx_standard (standard),
+                        INDEX idx_school_academic (school_id, academic_year)
+                    )
+                """);
+                mediaStore.ensureReferenceColumn(jdbc, "enquiries", "student_photo");
+                log.info("✅ Enquiries table ensured to exist with fee_structure_json column");
+            } catch (Exception e) {
+                log.error("❌ Failed to ensure enquiries table exists", e);
+                throw new RuntimeException("Failed to initialize database table", e);
+            }
+        });
     }
 
     public Enquiry createEnquiryWithPhoto(String schoolId, EnquiryDTO dto) {
@@ -126,7 +140,7 @@ public class EnquiryService {
 
         String sql = """
             INSERT INTO enquiries (
-                enquiry_key, admission_number, student_photo, student_photo_content_type,
+                enquiry_key, admission_number, student_photo_ref, student_photo_content_type,
                 student_name, father_name, mother_name, street_village, place_pincode,
                 district, phone_number, boarding_point, bus_route_number, email_id,
                 communication_address, nationality, religion, state, community, caste,
@@ -141,16 +155,17 @@ public class EnquiryService {
                      ?, ?, ?, ?, ?, ?, ?, ?)
         """;
 
-        // Handle file upload
-        byte[] photoBytes = null;
+        // Handle file upload (the photo goes to the media store, the row keeps its reference)
+        String photoRef = null;
         String contentType = null;
 
         if (dto.getStudentPhotoFile() != null && !dto.getStudentPhotoFile().isEmpty()) {
             try {
-                photoBytes = dto.getStudentPhotoFile().getBytes();
+                byte[] photoBytes = dto.getStudentPhotoFile().getBytes();
                 contentType = dto.getStudentPhotoFile().getContentType();
                 log.info("📷 Processing photo file: {} bytes, type: {}",
                         photoBytes.length, contentType);
+                photoRef = mediaStore.put(schoolId, photoBytes);
             } catch (IOException e) {
                 log.error("❌ Error processing student photo file", e);
                 throw new RuntimeException("Failed to process student photo", e);
@@ -160,7 +175,7 @@ public class EnquiryService {
         Object[] params = new Object[]{
                 dto.getEnquiryKey(),            // 1
                 dto.getAdmissionNumber(),       // 2
-                photoBytes,                     // 3
+                photoRef,                       // 3
                 contentType,                    // 4
                 dto.getStudentName(),           // 5
                 dto.getFatherName(),            // 6
@@ -318,12 +333,12 @@ public class EnquiryService {
         log.info("🔄 Photo update scenario - New photo: {}, Remove photo: {}", hasNewPhoto, removePhoto);
 
         if (hasNewPhoto) {
-            // User uploaded a new photo - update both photo and content type
-            sqlBuilder.append(", student_photo = ?, student_photo_content_type = ?");
+            // User uploaded a new photo - store it and update both reference and content type
+            sqlBuilder.append(", student_photo = NULL, student_photo_ref = ?, student_photo_content_type = ?");
             try {
                 byte[] photoBytes = dto.getStudentPhotoFile().getBytes();
                 String contentType = dto.getStudentPhotoFile().getContentType();
-                paramsList.add(photoBytes);
+                paramsList.add(mediaStore.put(schoolId, photoBytes));
                 paramsList.add(contentType);
                 log.info("📷 Adding new photo: {} bytes, type: {}", photoBytes.length, contentType);
             } catch (IOException e) {
@@ -331,8 +346,8 @@ public class EnquiryService {
                 throw new RuntimeException("Failed to process student photo", e);
             }
         } else if (removePhoto) {
-            // User explicitly removed the photo - set both to null
-            sqlBuilder.append(", student_photo = NULL, student_photo_content_type = NULL");
+            // User explicitly removed the photo - set all of them to null
+            sqlBuilder.append(", student_photo = NULL, student_photo_ref = NULL, student_photo_content_type = NULL");
             log.info("🗑️ Removing existing photo as requested");
         }
         // If neither hasNewPhoto nor removePhoto is true, preserve existing photo (no changes to photo fields)
@@ -367,12 +382,38 @@ public class EnquiryService {
         }
     }
 
+    /**
+     * One page of the year's enquiries without photos, optionally filtered by class and a search
+     * term. Photos come from findStudentPhoto.
+     */
+    public KeysetPage<Enquiry> getEnquiriesPage(String schoolId, String academicYear, String search, String standard,
+                                                String sort, String cursor, Integer limit) {
+        JdbcTemplate jdbc = getJdbcTemplate(schoolId);
+        ensureTableExists(jdbc);
+        try {
+            return new KeysetQuery(ENQUIRY_LIST_COLUMNS, "enquiries")
+                    .where("school_id = ? AND academic_year = ?", schoolId, academicYear)
+                    .whereEquals("standard", standard)
+                    .search(search, "student_name", "father_name", "mother_name", "phone_number", "enquiry_key")
+                    .page(jdbc, KeysetSort.resolve(ENQUIRY_SORTS, sort, RECENT), cursor, limit, new BeanPropertyRowMapper<>(Enquiry.class));
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Error fetching enquiries page for school: {}", schoolId, e);
+            throw new RuntimeException("Failed to fetch enquiries: " + e.getMessage(), e);
+        }
+    }
+
     public Optional<Enquiry> getEnquiryById(String schoolId, Long id) {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
         ensureTableExists(jdbc);
         try {
             String sql = "SELECT * FROM enquiries WHERE id = ? AND school_id = ?";
             Enquiry enquiry = jdbc.queryForObject(sql, new BeanPropertyRowMapper<>(Enquiry.class), id, schoolId);
+            // The form checks the photo bytes before loading the photo URL
+            if (enquiry != null && enquiry.getStudentPhoto() == null && enquiry.getStudentPhotoRef() != null) {
+                enquiry.setStudentPhoto(mediaStore.read(schoolId, enquiry.getStudentPhotoRef()));
+            }
             return Optional.ofNullable(enquiry);
         } catch (EmptyResultDataAccessException e) {
             log.warn("Enquiry not found with id: {} for school: {}", id, schoolId);
@@ -415,28 +456,15 @@ public class EnquiryService {
         return count != null && count > 0;
     }
 
-    public byte[] getStudentPhoto(String schoolId, Long enquiryId) {
+    /**
+     * The student's photo (or its list-view thumbnail) in the media store. A photo still kept in
+     * the row from before the store is moved there on this first read.
+     */
+    public Optional<MediaFile> findStudentPhoto(String schoolId, Long enquiryId, boolean thumbnail) {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
-        try {
-            return jdbc.queryForObject(
-                    "SELECT student_photo FROM enquiries WHERE id = ? AND school_id = ?",
-                    byte[].class, enquiryId, schoolId
-            );
-        } catch (EmptyResultDataAccessException e) {
-            return null;
-        }
-    }
-
-    public String getStudentPhotoContentType(String schoolId, Long enquiryId) {
-        JdbcTemplate jdbc = getJdbcTemplate(schoolId);
-        try {
-            return jdbc.queryForObject(
-                    "SELECT student_photo_content_type FROM enquiries WHERE id = ? AND school_id = ?",
-                    String.class, enquiryId, schoolId
-            );
-        } catch (EmptyResultDataAccessException e) {
-            return null;
-        }
+        ensureTableExists(jdbc);
+        return mediaStore.findForRow(jdbc, schoolId, "enquiries", "student_photo", "student_photo_content_type",
+                enquiryId, thumbnail);
     }
 
     private void validateEnquiryDTO(EnquiryDTO dto) {
@@ -1,74 +1,67 @@
 package com.backend.school_erp.service.AdmissionMaster;
 
 import com.backend.school_erp.DTO.AdmissionMaster.IndividualFeeDTO;
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.SchoolDataChangedEvent;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
 import com.backend.school_erp.entity.AdmissionMaster.IndividualFee;
+import com.backend.school_erp.service.Transaction.FeeBalanceService;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import javax.sql.DataSource;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 
 @Service
 @Slf4j
 public class IndividualFeeService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
 
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            log.info("Creating HikariCP DataSource for school: {}", id);
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
 
-            config.setMaximumPoolSize(10);
-            config.setMinimumIdle(2);
-            config.setIdleTimeout(30000);
-            config.setMaxLifetime(1800000);
-            config.setConnectionTimeout(10000);
+    @Autowired
+    private FeeBalanceService feeBalanceService;
 
-            return new HikariDataSource(config);
-        });
-    }
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     private void ensureTableExists(JdbcTemplate jdbc) {
-        try {
-            // Updated Table Structure: Added account_head, Removed student_id
-            jdbc.execute("""
-                CREATE TABLE IF NOT EXISTS individual_fees (
-                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                    admission_number VARCHAR(50) NOT NULL,
-                    student_name VARCHAR(255) NOT NULL,
-                    fee_head VARCHAR(255) NOT NULL,
-                    account_head VARCHAR(255),
-                    amount DECIMAL(10,2) NOT NULL,
-                    school_id VARCHAR(50) NOT NULL,
-                    academic_year VARCHAR(50) NOT NULL,
-                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
-                    INDEX idx_admission_number (admission_number),
-                    INDEX idx_school_academic (school_id, academic_year),
-                    INDEX idx_fee_head (fee_head)
-                )
-            """);
-        } catch (Exception e) {
-            log.error("Failed to create individual_fees table: {}", e.getMessage());
-            throw new RuntimeException("Database table creation failed", e);
-        }
+        schemaMigrator.migrate(jdbc, "IndividualFeeService", 1, () -> {
+            try {
+                // Updated Table Structure: Added account_head, Removed student_id
+                jdbc.execute("""
+                    CREATE TABLE IF NOT EXISTS individual_fees (
+                        id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                        admission_number VARCHAR(50) NOT NULL,
+                        student_name VARCHAR(255) NOT NULL,
+                        fee_head VARCHAR(255) NOT NULL,
+                        account_head VARCHAR(255),
+                        amount DECIMAL(10,2) NOT NULL,
+                        school_id VARCHAR(50) NOT NULL,
+                        academic_year VARCHAR(50) NOT NULL,
+                        created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                        updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+                        INDEX idx_admission_number (admission_number),
+                        INDEX idx_school_academic (school_id, academic_year),
+                        INDEX idx_fee_head (fee_head)
+                    )
+                """);
+            } catch (Exception e) {
+                log.error("Failed to create individual_fees table: {}", e.getMessage());
+                throw new RuntimeException("Database table creation failed", e);
+            }
+        });
     }
 
     public List<IndividualFee> getIndividualFeesBySchool(String schoolId, String academicYear) {
@@ -155,6 +148,7 @@ public class IndividualFeeService {
             if (rows == 0) throw new RuntimeException("Failed to insert individual fee");
 
             Long lastId = jdbc.queryForObject("SELECT LAST_INSERT_ID()", Long.class);
+            syncBalance(jdbc, schoolId, academicYear, dto.getAdmissionNumber());
 
             return IndividualFee.builder()
                     .id(lastId)
@@ -188,6 +182,8 @@ public class IndividualFeeService {
             String academicYear = dto.getAcademicYear() != null ? dto.getAcademicYear() : "";
             String accountHead = dto.getAccountHead() != null ? dto.getAccountHead() : "";
 
+            Optional<IndividualFee> previous = findById(jdbc, schoolId, id);
+
             // Removed student_id, added account_head
             int rows = jdbc.update(
                     "UPDATE individual_fees SET admission_number = ?, student_name = ?, fee_head = ?, account_head = ?, amount = ?, academic_year = ?, updated_at = CURRENT_TIMESTAMP WHERE id = ? AND school_id = ?",
@@ -203,6 +199,9 @@ public class IndividualFeeService {
 
             if (rows == 0) return Optional.empty();
 
+            previous.ifPresent(p -> syncBalance(jdbc, schoolId, p.getAcademicYear(), p.getAdmissionNumber()));
+            syncBalance(jdbc, schoolId, academicYear, dto.getAdmissionNumber());
+
             IndividualFee updated = jdbc.queryForObject(
                     "SELECT * FROM individual_fees WHERE id = ? AND school_id = ?",
                     new BeanPropertyRowMapper<>(IndividualFee.class),
@@ -221,11 +220,30 @@ public class IndividualFeeService {
         try {
             JdbcTemplate jdbc = getJdbcTemplate(schoolId);
             ensureTableExists(jdbc);
+            Optional<IndividualFee> previous = findById(jdbc, schoolId, id);
             int rows = jdbc.update("DELETE FROM individual_fees WHERE id = ? AND school_id = ?", id, schoolId);
+            previous.ifPresent(p -> syncBalance(jdbc, schoolId, p.getAcademicYear(), p.getAdmissionNumber()));
             return rows > 0;
         } catch (Exception e) {
             log.error("Error deleting individual fee ID {}: {}", id, e.getMessage());
             throw new RuntimeException("Failed to delete individual fee: " + e.getMessage(), e);
         }
     }
-}
\ No newline at end of file
+
+    private Optional<IndividualFee> findById(JdbcTemplate jdbc, String schoolId, Long id) {
+        List<IndividualFee> rows = jdbc.query(
+                "SELECT * FROM individual_fees WHERE id = ? AND school_id = ?",
+                new BeanPropertyRowMapper<>(IndividualFee.class),
+                id, schoolId
+        );
+        return rows.stream().findFirst();
+    }
+
+    // Keep the student's MISC balance demand in step with individual_fees
+    private void syncBalance(JdbcTemplate jdbc, String schoolId, String academicYear, String admissionNumber) {
+        if (academicYear == null || academicYear.isBlank() || admissionNumber == null) return;
+        feeBalanceService.ensureYear(jdbc, academicYear);
+        feeBalanceService.syncMiscDemand(jdbc, academicYear, admissionNumber);
+        eventPublisher.publishEvent(new SchoolDataChangedEvent(schoolId, academicYear, "individual fee"));
+    }
+}
@@ -1,8 +1,10 @@
 package com.backend.school_erp.service.AdmissionMaster;
 
 import com.backend.school_erp.DTO.AdmissionMaster.ReplaceDTO;
+import com.backend.school_erp.config.SchoolDataChangedEvent;
 import com.backend.school_erp.entity.AdmissionMaster.Admission;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -14,9 +16,13 @@ import java.util.Optional;
 public class ReplaceService {
 
     private final AdmissionService admissionService;
+    private final StudentDirectory studentDirectory;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public ReplaceService(AdmissionService admissionService) {
+    public ReplaceService(AdmissionService admissionService, StudentDirectory studentDirectory, ApplicationEventPublisher eventPublisher) {
         this.admissionService = admissionService;
+        this.studentDirectory = studentDirectory;
+        this.eventPublisher = eventPublisher;
     }
 
     @Transactional
@@ -59,6 +65,8 @@ public class ReplaceService {
             boolean updated = updatePhoneInDatabase(schoolId, admissionNumber, phoneNumberToUpdate, newPhoneNumber, academicYear);
 
             if (updated) {
+                studentDirectory.refresh(schoolId, academicYear, admissionNumber);
+                eventPublisher.publishEvent(new SchoolDataChangedEvent(schoolId, academicYear, "phone number replacement"));
                 log.info("✅ Phone number {} replaced for admission {}: {} -> {}",
                         phoneNumberToUpdate, admissionNumber, currentPhone, newPhoneNumber);
             }
@@ -101,6 +109,8 @@ public class ReplaceService {
             boolean updated = updateSectionInDatabase(schoolId, admissionNumber, newSection, academicYear);
 
             if (updated) {
+                studentDirectory.refresh(schoolId, academicYear, admissionNumber);
+                eventPublisher.publishEvent(new SchoolDataChangedEvent(schoolId, academicYear, "section replacement"));
                 log.info("✅ Section replaced for admission {}: {} -> {}",
                         admissionNumber, currentSection, newSection);
             }
@@ -178,15 +188,7 @@ public class ReplaceService {
         return "admissions_" + sanitizedYear;
     }
 
-    // Get JdbcTemplate from AdmissionService
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        try {
-            // Use reflection to access AdmissionService's getJdbcTemplate method
-            java.lang.reflect.Method method = admissionService.getClass().getMethod("getJdbcTemplate", String.class);
-            return (JdbcTemplate) method.invoke(admissionService, schoolId);
-        } catch (Exception e) {
-            log.error("❌ Failed to get JdbcTemplate from AdmissionService", e);
-            throw new RuntimeException("Database connection error");
-        }
+        return admissionService.getJdbcTemplate(schoolId);
     }
-}
\ No newline at end of file
+}
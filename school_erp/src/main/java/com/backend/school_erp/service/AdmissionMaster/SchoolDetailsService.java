@@ -1,53 +1,31 @@
 package com.backend.school_erp.service.AdmissionMaster;
 
 import com.backend.school_erp.DTO.AdmissionMaster.SchoolDetailsDTO;
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
 import com.backend.school_erp.entity.AdmissionMaster.SchoolDetails;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import javax.sql.DataSource;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 
 @Service
 @Slf4j
 public class SchoolDetailsService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
 
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            try {
-                log.info("🔗 Creating HikariCP DataSource for school: {}", id);
-                HikariConfig config = new HikariConfig();
-                config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-                config.setUsername(DatabaseConfig.AWS_DB_USER);
-                config.setPassword(DatabaseConfig.AWS_DB_PASS);
-                config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-                config.setMaximumPoolSize(10);
-                config.setMinimumIdle(2);
-                config.setIdleTimeout(30000);
-                config.setMaxLifetime(1800000);
-                config.setConnectionTimeout(10000);
-                config.setConnectionTestQuery("SELECT 1");
-                return new HikariDataSource(config);
-            } catch (Exception e) {
-                log.error("❌ Failed to create DataSource for school: {}", id, e);
-                throw new RuntimeException("Failed to create database connection for school: " + id, e);
-            }
-        });
-    }
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
         try {
-            return new JdbcTemplate(getDataSource(schoolId));
+            return tenantDataSourceRouter.getJdbcTemplate(schoolId);
         } catch (Exception e) {
             log.error("❌ Failed to get JdbcTemplate for school: {}", schoolId, e);
             throw new RuntimeException("Database connection failed for school: " + schoolId, e);
@@ -55,32 +33,34 @@ public class SchoolDetailsService {
     }
 
     private void ensureTableExists(JdbcTemplate jdbc) {
-        try {
-            jdbc.execute("""
-                CREATE TABLE IF NOT EXISTS school_details (
-                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                    school_name VARCHAR(255) NOT NULL,
-                    school_address TEXT NOT NULL,
-                    city VARCHAR(100) NOT NULL,
-                    state VARCHAR(100) NOT NULL,
-                    pincode VARCHAR(10) NOT NULL,
-                    email VARCHAR(255),
-                    phone_number VARCHAR(15),
-                    profile_image MEDIUMBLOB,
-                    profile_image_type VARCHAR(50), -- Add this column
-                    school_id VARCHAR(50) NOT NULL,
-                    created_by VARCHAR(100) DEFAULT 'system',
-                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                    updated_by VARCHAR(100) DEFAULT 'system',
-                    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
-                    UNIQUE KEY unique_school (school_id)
-                ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
-            """);
-            log.info("✅ School details table ensured to exist");
-        } catch (Exception e) {
-            log.error("❌ Failed to create school_details table", e);
-            throw new RuntimeException("Failed to create school_details table", e);
-        }
+        schemaMigrator.migrate(jdbc, "SchoolDetailsService", 1, () -> {
+            try {
+                jdbc.execute("""
+                    CREATE TABLE IF NOT EXISTS school_details (
+                        id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                        school_name VARCHAR(255) NOT NULL,
+                        school_address TEXT NOT NULL,
+                        city VARCHAR(100) NOT NULL,
+                        state VARCHAR(100) NOT NULL,
+                        pincode VARCHAR(10) NOT NULL,
+                        email VARCHAR(255),
+                        phone_number VARCHAR(15),
+                        profile_image MEDIUMBLOB,
+                        profile_image_type VARCHAR(50), -- Add this column
+                        school_id VARCHAR(50) NOT NULL,
+                        created_by VARCHAR(100) DEFAULT 'system',
+                        created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                        updated_by VARCHAR(100) DEFAULT 'system',
+                        updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+                        UNIQUE KEY unique_school (school_id)
+                    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
+                """);
+                log.info("✅ School details table ensured to exist");
+            } catch (Exception e) {
+                log.error("❌ Failed to create school_details table", e);
+                throw new RuntimeException("Failed to create school_details table", e);
+            }
+        });
     }
 
     public Optional<SchoolDetails> getSchoolDetails(String schoolId) {
@@ -1,48 +1,36 @@
 package com.backend.school_erp.service.AdmissionMaster;
 
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantTableCatalog;
 import com.backend.school_erp.entity.AdmissionMaster.StudentDetails;
+import com.backend.school_erp.service.Transaction.FeeDemandService;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 
-import javax.sql.DataSource;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @Slf4j
 public class StudentDetailsService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
-
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            log.info("🔗 Creating DataSource for school: {}", id);
-            HikariConfig config = new HikariConfig();
-            // Ensure your DB connection string is correct
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-            config.setMaximumPoolSize(10);
-            config.setMinimumIdle(2);
-            config.setIdleTimeout(30000);
-            config.setMaxLifetime(1800000);
-            config.setConnectionTimeout(10000);
-            return new HikariDataSource(config);
-        });
-    }
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private TenantTableCatalog tableCatalog;
+
+    @Autowired
+    private FeeDemandService feeDemandService;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     private String getAdmissionTableName(String academicYear) {
@@ -51,20 +39,15 @@ public class StudentDetailsService {
         return "admissions_" + sanitizedYear;
     }
 
-    private String getTuitionFeeTableName(String academicYear) {
-        String sanitizedYear = academicYear.replaceAll("-", "_");
-        return "tuition_fees_" + sanitizedYear;
-    }
-
-    private String getHostelFeeTableName(String academicYear) {
-        String sanitizedYear = academicYear.replaceAll("-", "_");
-        return "hostel_fees_" + sanitizedYear;
-    }
-
-    private String getTransportFeeTableName(String academicYear) {
-        String sanitizedYear = academicYear.replaceAll("-", "_");
-        return "transport_fees_" + sanitizedYear;
-    }
+    // Per-student fee totals by type from the consolidated demand
+    private static final String FEE_TOTALS_SQL = """
+        SELECT admission_number,
+            SUM(CASE WHEN fee_type = 'Tuition' THEN amount ELSE 0 END) AS tuition_fee,
+            SUM(CASE WHEN fee_type = 'Hostel' THEN amount ELSE 0 END) AS hostel_fee,
+            SUM(CASE WHEN fee_type = 'Transport' THEN amount ELSE 0 END) AS transport_fee
+        FROM fee_demand
+        WHERE academic_year = ?
+        """;
 
     // Custom RowMapper to ensure EMIS, Aadhar, and Fees are mapped correctly
     private static class StudentDetailsRowMapper extends BeanPropertyRowMapper<StudentDetails> {
@@ -94,9 +77,6 @@ public class StudentDetailsService {
     public List<StudentDetails> getAllStudentDetails(String schoolId, String academicYear) {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
         String admissionTable = getAdmissionTableName(academicYear);
-        String tuitionTable = getTuitionFeeTableName(academicYear);
-        String hostelTable = getHostelFeeTableName(academicYear);
-        String transportTable = getTransportFeeTableName(academicYear);
 
         try {
             if (!tableExists(jdbc, admissionTable)) {
@@ -104,19 +84,23 @@ public class StudentDetailsService {
                 return List.of();
             }
 
-            // Enhanced SQL: Fetches student details AND calculates total fees per category in one query
+            feeDemandService.ensureYear(jdbc, academicYear);
+
+            // Enhanced SQL: Fetches student details AND total fees per category in one query
             // Uses COALESCE to return 0 instead of NULL if no fees exist
             String sql = String.format("""
                 SELECT a.*,
-                    (SELECT COALESCE(SUM(amount), 0) FROM %s WHERE admission_number = a.admission_number) AS tuition_fee,
-                    (SELECT COALESCE(SUM(amount), 0) FROM %s WHERE admission_number = a.admission_number) AS hostel_fee,
-                    (SELECT COALESCE(SUM(amount), 0) FROM %s WHERE admission_number = a.admission_number) AS transport_fee
-                FROM %s a 
+                    COALESCE(fd.tuition_fee, 0) AS tuition_fee,
+                    COALESCE(fd.hostel_fee, 0) AS hostel_fee,
+                    COALESCE(fd.transport_fee, 0) AS transport_fee
+                FROM %s a
+                LEFT JOIN (%s GROUP BY admission_number) fd ON fd.admission_number = a.admission_number
                 WHERE a.school_id = ? AND a.academic_year = ? 
                 ORDER BY a.standard, a.section, a.student_name
-                """, tuitionTable, hostelTable, transportTable, admissionTable);
+                """, admissionTable, FEE_TOTALS_SQL);
 
-            return jdbc.query(sql, new StudentDetailsRowMapper(), schoolId, academicYear);
+            return jdbc.query(sql, new StudentDetailsRowMapper(),
+                    FeeDemandService.yearKey(academicYear), schoolId, academicYear);
 
         } catch (Exception e) {
             log.error("❌ Error fetching student details with fees: {}", e.getMessage());
@@ -128,25 +112,26 @@ public class StudentDetailsService {
     public StudentDetails getStudentByAdmissionNumber(String schoolId, String admissionNumber, String academicYear) {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
         String admissionTable = getAdmissionTableName(academicYear);
-        String tuitionTable = getTuitionFeeTableName(academicYear);
-        String hostelTable = getHostelFeeTableName(academicYear);
-        String transportTable = getTransportFeeTableName(academicYear);
 
         try {
             if (!tableExists(jdbc, admissionTable)) return null;
 
+            feeDemandService.ensureYear(jdbc, academicYear);
+
             // Enhanced SQL for single student with fee calculation
             String sql = String.format("""
                 SELECT a.*,
-                    (SELECT COALESCE(SUM(amount), 0) FROM %s WHERE admission_number = a.admission_number) AS tuition_fee,
-                    (SELECT COALESCE(SUM(amount), 0) FROM %s WHERE admission_number = a.admission_number) AS hostel_fee,
-                    (SELECT COALESCE(SUM(amount), 0) FROM %s WHERE admission_number = a.admission_number) AS transport_fee
-                FROM %s a 
+                    COALESCE(fd.tuition_fee, 0) AS tuition_fee,
+                    COALESCE(fd.hostel_fee, 0) AS hostel_fee,
+                    COALESCE(fd.transport_fee, 0) AS transport_fee
+                FROM %s a
+                LEFT JOIN (%s AND admission_number = ? GROUP BY admission_number) fd ON fd.admission_number = a.admission_number
                 WHERE a.school_id = ? AND a.academic_year = ? AND a.admission_number = ? 
                 LIMIT 1
-                """, tuitionTable, hostelTable, transportTable, admissionTable);
+                """, admissionTable, FEE_TOTALS_SQL);
 
-            List<StudentDetails> students = jdbc.query(sql, new StudentDetailsRowMapper(), schoolId, academicYear, admissionNumber);
+            List<StudentDetails> students = jdbc.query(sql, new StudentDetailsRowMapper(),
+                    FeeDemandService.yearKey(academicYear), admissionNumber, schoolId, academicYear, admissionNumber);
 
             if (students.isEmpty()) {
                 return null;
@@ -161,11 +146,6 @@ public class StudentDetailsService {
     }
 
     private boolean tableExists(JdbcTemplate jdbc, String tableName) {
-        try {
-            jdbc.queryForObject("SELECT 1 FROM " + tableName + " LIMIT 1", Integer.class);
-            return true;
-        } catch (Exception e) {
-            return false;
-        }
+        return tableCatalog.tableExists(jdbc, tableName);
     }
 }
\ No newline at end of file
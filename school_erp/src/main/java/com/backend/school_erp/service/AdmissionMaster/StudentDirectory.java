@@ -0,0 +1,340 @@
+package com.backend.school_erp.service.AdmissionMaster;
+
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantTableCatalog;
+import com.backend.school_erp.service.Transaction.FeeDemandService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory copy of each school's admissions for a year, read with one query on first use, for
+ * the student lookups of the fee counter and library desk and the search boxes.
+ *
+ * Students are kept by admission number, and every three-character run of their admission number,
+ * names, phone numbers and class points at the students containing it, so a search only checks
+ * the students sharing the term's rarest run. Terms under three characters check every student.
+ *
+ * The services that write an admission call {@link #refresh} with its admission number, which
+ * reads that row again; bulk writes (promotion, import) call {@link #invalidate}. A year that was
+ * being read while a write happened is not kept. Years are also read again after
+ * {@code student-directory.ttl-seconds}, for changes made through another instance.
+ */
+@Service
+@Slf4j
+public class StudentDirectory {
+
+    private static final String[] COLUMNS = {"student_name", "father_name", "mother_name", "standard", "section",
+            "boarding_point", "emis", "aadhar_number", "phone_number", "phone_number2"};
+
+    // Separates the fields of a student's search text, so no term matches across two fields
+    private static final char FIELD_SEPARATOR = '\n';
+
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private TenantTableCatalog tableCatalog;
+
+    @Value("${student-directory.ttl-seconds:600}")
+    private long ttlSeconds;
+
+    private final Map<YearKey, Index> indexes = new ConcurrentHashMap<>();
+    private final Map<YearKey, Long> versions = new ConcurrentHashMap<>();
+
+    public Optional<StudentRecord> find(String schoolId, String academicYear, String admissionNumber) {
+        if (admissionNumber == null) {
+            return Optional.empty();
+        }
+        return index(schoolId, academicYear).find(admissionNumber);
+    }
+
+    /**
+     * Students whose admission number, student, father or mother name, phone numbers or class
+     * contain {@code term} (ignoring case), by name; all of them for a blank term.
+     *
+     * @param limit at most this many, or all when 0
+     */
+    public List<StudentRecord> search(String schoolId, String academicYear, String term, int limit) {
+        String needle = term == null ? "" : term.trim().toLowerCase(Locale.ROOT);
+        List<StudentRecord> matches = index(schoolId, academicYear).search(needle);
+        matches.sort(Comparator.comparing((StudentRecord s) -> s.studentName() == null ? "" : s.studentName(),
+                String.CASE_INSENSITIVE_ORDER).thenComparing(StudentRecord::admissionNumber));
+        return limit > 0 && matches.size() > limit ? matches.subList(0, limit) : matches;
+    }
+
+    /**
+     * Call after inserting, updating or deleting the admission of {@code admissionNumber}.
+     */
+    public void refresh(String schoolId, String academicYear, String admissionNumber) {
+        YearKey key = new YearKey(schoolId, FeeDemandService.yearKey(academicYear));
+        Index index;
+        synchronized (this) {
+            versions.merge(key, 1L, Long::sum);
+            index = indexes.get(key);
+        }
+        if (index == null) {
+            return;
+        }
+        try {
+            JdbcTemplate jdbc = tenantDataSourceRouter.getJdbcTemplate(schoolId);
+            String table = tableName(academicYear);
+            List<StudentRecord> rows = jdbc.query(selectSql(jdbc, table) + " AND admission_number = ?",
+                    this::mapRecord, schoolId, admissionNumber);
+            if (rows.isEmpty()) {
+                index.remove(admissionNumber);
+            } else {
+                index.put(rows.get(0));
+            }
+        } catch (Exception e) {
+            log.warn("⚠️ Could not refresh student {} of school {}, dropping the year: {}", admissionNumber, schoolId, e.getMessage());
+            invalidate(schoolId, academicYear);
+        }
+    }
+
+    /**
+     * Call after writing many of a year's admissions at once; a null year drops every year of the school.
+     */
+    public synchronized void invalidate(String schoolId, String academicYear) {
+        if (academicYear == null) {
+            indexes.keySet().removeIf(key -> key.schoolId().equals(schoolId));
+            versions.replaceAll((key, version) -> key.schoolId().equals(schoolId) ? version + 1 : version);
+            log.debug("🧹 Student directory of school {} dropped", schoolId);
+            return;
+        }
+        YearKey key = new YearKey(schoolId, FeeDemandService.yearKey(academicYear));
+        versions.merge(key, 1L, Long::sum);
+        indexes.remove(key);
+        log.debug("🧹 Student directory of school {} for {} dropped", schoolId, academicYear);
+    }
+
+    private Index index(String schoolId, String academicYear) {
+        YearKey key = new YearKey(schoolId, FeeDemandService.yearKey(academicYear));
+        long version = versions.getOrDefault(key, 0L);
+        Index index = indexes.get(key);
+        if (index != null && index.expiresAt > System.currentTimeMillis()) {
+            return index;
+        }
+
+        long start = System.currentTimeMillis();
+        Index loaded = new Index(start + ttlSeconds * 1000);
+        JdbcTemplate jdbc = tenantDataSourceRouter.getJdbcTemplate(schoolId);
+        String table = tableName(academicYear);
+        if (tableCatalog.tableExists(jdbc, table)) {
+            jdbc.query(selectSql(jdbc, table), (ResultSet rs) -> {
+                loaded.put(mapRecord(rs, 0));
+            }, schoolId);
+        }
+        synchronized (this) {
+            if (versions.getOrDefault(key, 0L) == version) {
+                indexes.put(key, loaded);
+            }
+        }
+        log.info("📇 Student directory of school {} for {} loaded: {} students in {} ms",
+                schoolId, academicYear, loaded.size(), System.currentTimeMillis() - start);
+        return loaded;
+    }
+
+    private String selectSql(JdbcTemplate jdbc, String table) {
+        StringBuilder sql = new StringBuilder("SELECT id, admission_number");
+        for (String column : COLUMNS) {
+            sql.append(", ").append(tableCatalog.hasColumn(jdbc, table, column) ? column : "NULL AS " + column);
+        }
+        return sql.append(" FROM ").append(table).append(" WHERE school_id = ?").toString();
+    }
+
+    private StudentRecord mapRecord(ResultSet rs, int rowNum) throws SQLException {
+        return new StudentRecord(rs.getLong("id"), rs.getString("admission_number"),
+                rs.getString("student_name"), rs.getString("father_name"), rs.getString("mother_name"),
+                rs.getString("standard"), rs.getString("section"), rs.getString("boarding_point"),
+                rs.getString("emis"), rs.getString("aadhar_number"),
+                rs.getString("phone_number"), rs.getString("phone_number2"));
+    }
+
+    private static String tableName(String academicYear) {
+        return "admissions_" + FeeDemandService.yearKey(academicYear);
+    }
+
+    private static String key(String admissionNumber) {
+        return admissionNumber.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static String searchText(StudentRecord student) {
+        StringBuilder text = new StringBuilder();
+        for (String field : new String[]{student.admissionNumber(), student.studentName(), student.fatherName(),
+                student.motherName(), student.phoneNumber(), student.phoneNumber2(), student.standard()}) {
+            if (field != null) {
+                text.append(field.toLowerCase(Locale.ROOT)).append(FIELD_SEPARATOR);
+            }
+        }
+        return text.toString();
+    }
+
+    private static Set<String> trigrams(String text) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            String gram = text.substring(i, i + 3);
+            if (gram.indexOf(FIELD_SEPARATOR) < 0) {
+                grams.add(gram);
+            }
+        }
+        return grams;
+    }
+
+    /**
+     * One school's students for one year. A student written again gets a new slot and the old one
+     * is cleared; the slots are packed again once most of them are cleared.
+     */
+    private static final class Index {
+
+        private final long expiresAt;
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final List<StudentRecord> students = new ArrayList<>();
+        private final List<String> texts = new ArrayList<>();
+        private final Map<String, Integer> slots = new HashMap<>();
+        private final Map<String, Slots> grams = new HashMap<>();
+
+        Index(long expiresAt) {
+            this.expiresAt = expiresAt;
+        }
+
+        int size() {
+            lock.readLock().lock();
+            try {
+                return slots.size();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        Optional<StudentRecord> find(String admissionNumber) {
+            lock.readLock().lock();
+            try {
+                Integer slot = slots.get(key(admissionNumber));
+                return slot == null ? Optional.empty() : Optional.of(students.get(slot));
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        List<StudentRecord> search(String needle) {
+            lock.readLock().lock();
+            try {
+                List<StudentRecord> matches = new ArrayList<>();
+                if (needle.length() < 3) {
+                    for (int slot = 0; slot < students.size(); slot++) {
+                        if (students.get(slot) != null && texts.get(slot).contains(needle)) {
+                            matches.add(students.get(slot));
+                        }
+                    }
+                    return matches;
+                }
+                Slots rarest = null;
+                for (String gram : trigrams(needle)) {
+                    Slots candidates = grams.get(gram);
+                    if (candidates == null) {
+                        return matches;
+                    }
+                    if (rarest == null || candidates.size < rarest.size) {
+                        rarest = candidates;
+                    }
+                }
+                if (rarest == null) {
+                    return matches;
+                }
+                for (int i = 0; i < rarest.size; i++) {
+                    int slot = rarest.slots[i];
+                    if (students.get(slot) != null && texts.get(slot).contains(needle)) {
+                        matches.add(students.get(slot));
+                    }
+                }
+                return matches;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        void put(StudentRecord student) {
+            if (student.admissionNumber() == null) {
+                return;
+            }
+            lock.writeLock().lock();
+            try {
+                clear(student.admissionNumber());
+                add(student);
+                if (students.size() > 1024 && students.size() > 2 * slots.size()) {
+                    pack();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void remove(String admissionNumber) {
+            lock.writeLock().lock();
+            try {
+                clear(admissionNumber);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void add(StudentRecord student) {
+            int slot = students.size();
+            String text = searchText(student);
+            students.add(student);
+            texts.add(text);
+            slots.put(key(student.admissionNumber()), slot);
+            for (String gram : trigrams(text)) {
+                grams.computeIfAbsent(gram, g -> new Slots()).add(slot);
+            }
+        }
+
+        private void clear(String admissionNumber) {
+            Integer slot = slots.remove(key(admissionNumber));
+            if (slot != null) {
+                students.set(slot, null);
+                texts.set(slot, null);
+            }
+        }
+
+        private void pack() {
+            List<StudentRecord> live = new ArrayList<>(slots.size());
+            for (StudentRecord student : students) {
+                if (student != null) {
+                    live.add(student);
+                }
+            }
+            students.clear();
+            texts.clear();
+            slots.clear();
+            grams.clear();
+            live.forEach(this::add);
+        }
+    }
+
+    // Slots of the students containing one trigram, in ascending order
+    private static final class Slots {
+        private int[] slots = new int[4];
+        private int size;
+
+        void add(int slot) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            slots[size++] = slot;
+        }
+    }
+
+    private record YearKey(String schoolId, String year) {
+    }
+}
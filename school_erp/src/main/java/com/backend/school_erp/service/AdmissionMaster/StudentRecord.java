@@ -0,0 +1,10 @@
+package com.backend.school_erp.service.AdmissionMaster;
+
+/**
+ * The few admission columns the fee counter, library desk and search boxes need, as held by
+ * {@link StudentDirectory}.
+ */
+public record StudentRecord(Long id, String admissionNumber, String studentName, String fatherName,
+                            String motherName, String standard, String section, String boardingPoint,
+                            String emis, String aadharNumber, String phoneNumber, String phoneNumber2) {
+}
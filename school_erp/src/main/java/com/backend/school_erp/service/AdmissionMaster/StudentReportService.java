@@ -1,47 +1,41 @@
 package com.backend.school_erp.service.AdmissionMaster;
 
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantTableCatalog;
 import com.backend.school_erp.entity.AdmissionMaster.StudentRegisterReport;
+import com.backend.school_erp.service.Export.ExportWriter;
+import com.backend.school_erp.service.Export.ReportExportService;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 
-import javax.sql.DataSource;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
 public class StudentReportService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
-
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            log.info("🔗 Creating DataSource for school: {}", id);
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-            config.setMaximumPoolSize(10);
-            config.setMinimumIdle(2);
-            config.setIdleTimeout(30000);
-            config.setMaxLifetime(1800000);
-            config.setConnectionTimeout(10000);
-            return new HikariDataSource(config);
-        });
-    }
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private TenantTableCatalog tableCatalog;
+
+    @Autowired
+    private ReportExportService reportExportService;
+
+    @Autowired
+    private StudentDirectory studentDirectory;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     private String getAdmissionTableName(String academicYear) {
@@ -165,35 +159,7 @@ public class StudentReportService {
                 return List.of();
             }
 
-            String sql = String.format("""
-                SELECT 
-                    id,
-                    admission_number,
-                    date_of_admission,
-                    student_name,
-                    gender,
-                    father_name,
-                    mother_name,
-                    phone_number,
-                    standard,
-                    section,
-                    street_village,
-                    place_pincode,
-                    district,
-                    state,
-                    email_id,
-                    bus_route_number,
-                    date_of_birth,
-                    emis,
-                    aadhar_number,
-                    school_id,
-                    academic_year,
-                    created_at,
-                    updated_at
-                FROM %s 
-                WHERE school_id = ? AND academic_year = ?
-                ORDER BY standard, section, student_name
-            """, tableName);
+            String sql = registerSql(tableName);
 
             log.info("📊 Fetching student register data for school: {}, academic year: {}", schoolId, academicYear);
 
@@ -211,6 +177,55 @@ public class StudentReportService {
         }
     }
 
+    /**
+     * Same rows as {@link #getAllStudentRegisterData}, streamed to an export file instead of collected.
+     */
+    public void exportStudentRegister(String schoolId, String academicYear, ExportWriter writer) {
+        JdbcTemplate jdbc = getJdbcTemplate(schoolId);
+        String tableName = getAdmissionTableName(academicYear);
+
+        if (!tableExists(jdbc, tableName)) {
+            log.warn("Table {} does not exist for school: {}", tableName, schoolId);
+            return;
+        }
+
+        log.info("📤 Exporting student register for school: {}, academic year: {}", schoolId, academicYear);
+        reportExportService.exportQuery(schoolId, registerSql(tableName), writer, schoolId, academicYear);
+    }
+
+    // Register columns of the whole year, in register order
+    private String registerSql(String tableName) {
+        return String.format("""
+            SELECT 
+                id,
+                admission_number,
+                date_of_admission,
+                student_name,
+                gender,
+                father_name,
+                mother_name,
+                phone_number,
+                standard,
+                section,
+                street_village,
+                place_pincode,
+                district,
+                state,
+                email_id,
+                bus_route_number,
+                date_of_birth,
+                emis,
+                aadhar_number,
+                school_id,
+                academic_year,
+                created_at,
+                updated_at
+            FROM %s 
+            WHERE school_id = ? AND academic_year = ?
+            ORDER BY standard, section, student_name
+        """, tableName);
+    }
+
     @Transactional(readOnly = true)
     public List<StudentRegisterReport> getStudentRegisterDataByStandard(String schoolId, String academicYear, String standard) {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
@@ -282,7 +297,13 @@ public class StudentReportService {
                 return List.of();
             }
 
-            String likeTerm = "%" + searchTerm + "%";
+            // The directory finds the matching students; only their rows are read
+            List<StudentRecord> matches = studentDirectory.search(schoolId, academicYear, searchTerm, 0);
+            if (matches.isEmpty()) {
+                log.info("✅ Found 0 students matching search term '{}'", searchTerm);
+                return List.of();
+            }
+            String ids = matches.stream().map(s -> String.valueOf(s.id())).collect(Collectors.joining(","));
             String sql = String.format("""
                 SELECT 
                     id,
@@ -309,22 +330,16 @@ public class StudentReportService {
                     created_at,
                     updated_at
                 FROM %s 
-                WHERE school_id = ? AND academic_year = ?
-                AND (admission_number LIKE ? 
-                     OR student_name LIKE ? 
-                     OR father_name LIKE ? 
-                     OR mother_name LIKE ?
-                     OR phone_number LIKE ?
-                     OR standard LIKE ?)
+                WHERE school_id = ? AND academic_year = ? AND id IN (%s)
                 ORDER BY standard, section, student_name
-            """, tableName);
+            """, tableName, ids);
 
             log.info("🔍 Searching student register data for term: {}, school: {}, academic year: {}",
                     searchTerm, schoolId, academicYear);
 
             List<StudentRegisterReport> students = jdbc.query(sql,
                     new StudentRegisterReportRowMapper(),
-                    schoolId, academicYear, likeTerm, likeTerm, likeTerm, likeTerm, likeTerm, likeTerm);
+                    schoolId, academicYear);
 
             log.info("✅ Found {} students matching search term '{}'", students.size(), searchTerm);
             return students;
@@ -432,11 +447,6 @@ public class StudentReportService {
     }
 
     private boolean tableExists(JdbcTemplate jdbc, String tableName) {
-        try {
-            jdbc.queryForObject("SELECT 1 FROM " + tableName + " LIMIT 1", Integer.class);
-            return true;
-        } catch (Exception e) {
-            return false;
-        }
+        return tableCatalog.tableExists(jdbc, tableName);
     }
 }
\ No newline at end of file
@@ -1,62 +1,63 @@
 package com.backend.school_erp.service.AdmissionMaster;
 
+import com.backend.school_erp.config.SchoolDataChangedEvent;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
+import com.backend.school_erp.config.TenantTableCatalog;
 import com.backend.school_erp.DTO.AdmissionMaster.ArrearFeeDTO;
+import com.backend.school_erp.DTO.AdmissionMaster.FeeHeadDuesDTO;
+import com.backend.school_erp.DTO.AdmissionMaster.StudentDuesDTO;
 import com.backend.school_erp.DTO.AdmissionMaster.StudentTCProfileDTO;
 import com.backend.school_erp.DTO.AdmissionMaster.TCRequestDTO;
 import com.backend.school_erp.DTO.DebitCardReport.TCListResponseDTO;
 import com.backend.school_erp.entity.AdmissionMaster.TransferCertificate;
+import com.backend.school_erp.service.Administration.FeeHeadRegistry;
+import com.backend.school_erp.service.Administration.FeeHeadTaxonomy;
+import com.backend.school_erp.service.Transaction.FeeBalanceService;
+import com.backend.school_erp.service.Transaction.FeeDemandService;
 import com.backend.school_erp.config.DatabaseConfig; // 1. Import your AWS Config
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import javax.sql.DataSource;
 import java.sql.Timestamp;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @Slf4j
 public class TCService {
 
+    private final TenantDataSourceRouter tenantDataSourceRouter;
+    private final TenantSchemaMigrator schemaMigrator;
+    private final TenantTableCatalog tableCatalog;
+    private final FeeDemandService feeDemandService;
+    private final FeeBalanceService feeBalanceService;
+    private final FeeHeadRegistry feeHeadRegistry;
+
     private final ArrearFeeService arrearFeeService;
     private final ObjectMapper objectMapper;
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
+    private final ApplicationEventPublisher eventPublisher;
 
-    public TCService(ArrearFeeService arrearFeeService) {
+    public TCService(ArrearFeeService arrearFeeService, TenantDataSourceRouter tenantDataSourceRouter, TenantSchemaMigrator schemaMigrator, TenantTableCatalog tableCatalog, FeeDemandService feeDemandService, FeeBalanceService feeBalanceService, FeeHeadRegistry feeHeadRegistry, ApplicationEventPublisher eventPublisher) {
+        this.tenantDataSourceRouter = tenantDataSourceRouter;
+        this.schemaMigrator = schemaMigrator;
         this.arrearFeeService = arrearFeeService;
+        this.tableCatalog = tableCatalog;
+        this.feeDemandService = feeDemandService;
+        this.feeBalanceService = feeBalanceService;
+        this.feeHeadRegistry = feeHeadRegistry;
+        this.eventPublisher = eventPublisher;
         this.objectMapper = new ObjectMapper();
         this.objectMapper.registerModule(new JavaTimeModule());
     }
 
     // --- Updated Dynamic AWS DB Connection ---
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        DataSource ds = dataSourceCache.computeIfAbsent(schoolId, id -> {
-            log.info("Initializing AWS RDS connection for school: {}", id);
-
-            HikariConfig config = new HikariConfig();
-
-            // 2. Using AWS DB Constants from DatabaseConfig
-            // Appends schoolId as the DB name to the base AWS URL
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName(DatabaseConfig.JDBC_DRIVER);
-
-            // Recommended pool settings for production
-            config.setMaximumPoolSize(10);
-            config.setMinimumIdle(2);
-            config.setIdleTimeout(30000);
-            config.setConnectionTimeout(10000);
-
-            return new HikariDataSource(config);
-        });
-        return new JdbcTemplate(ds);
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     // --- Helper Class for Calculation ---
@@ -215,26 +216,111 @@ public class TCService {
         return checkIfTCExists(jdbc, admissionNumber, safeYear);
     }
 
-    private StudentFeeCalc calculateDuesUsingBalanceList4Logic(JdbcTemplate jdbc, String admNo, String academicYear, String safeYear) {
-        StudentFeeCalc calc = new StudentFeeCalc();
-        String[] fixedTables = {"tuition_fees_" + safeYear, "hostel_fees_" + safeYear, "transport_fees_" + safeYear};
+    /**
+     * Dues of every student of a standard (and section, when given) from three queries: the
+     * students, their TCs and their fee heads. For screens that list a class, such as promotion
+     * candidates and defaulters, instead of a {@link #getStudentTCProfile} per student.
+     *
+     * @param pendingOnly only the students who still owe something
+     */
+    public List<StudentDuesDTO> getClassDues(String schoolId, String academicYear, String standard, String section, boolean pendingOnly) {
+        JdbcTemplate jdbc = getJdbcTemplate(schoolId);
+        String safeYear = academicYear.replaceAll("[^a-zA-Z0-9]", "_");
+        String admissionTable = "admissions_" + safeYear;
+        if (!tableExists(jdbc, admissionTable)) throw new RuntimeException("Table " + admissionTable + " does not exist.");
 
-        for (String table : fixedTables) {
-            if (tableExists(jdbc, table)) {
-                boolean isTransTable = table.contains("transport");
-                String sql = "SELECT fee_heading, amount FROM " + table + " WHERE admission_number = ?";
-                try {
-                    jdbc.query(sql, rs -> {
-                        String head = rs.getString("fee_heading");
-                        double amt = rs.getDouble("amount");
-                        calc.existingFixedHeads.add(head);
-                        calc.demandMap.merge(head, amt, Double::sum);
-                        if (isTransTable) calc.transFixed += amt;
-                        else calc.acadFixed += amt;
-                    }, admNo);
-                } catch (Exception e) {}
+        String classFilter = " WHERE standard = ?";
+        List<Object> params = new ArrayList<>(List.of(standard));
+        if (section != null && !section.isEmpty()) {
+            classFilter += " AND section = ?";
+            params.add(section);
+        }
+
+        Map<String, StudentDuesDTO> students = new LinkedHashMap<>();
+        jdbc.query("SELECT admission_number, student_name, standard, section FROM " + admissionTable + classFilter +
+                " ORDER BY student_name ASC", rs -> {
+            students.put(rs.getString("admission_number"), StudentDuesDTO.builder()
+                    .admissionNumber(rs.getString("admission_number"))
+                    .studentName(rs.getString("student_name"))
+                    .standard(rs.getString("standard"))
+                    .section(rs.getString("section"))
+                    .feeHeads(new ArrayList<>())
+                    .build());
+        }, params.toArray());
+        if (students.isEmpty()) return new ArrayList<>();
+
+        String tcTable = "TC_" + safeYear;
+        if (tableExists(jdbc, tcTable)) {
+            jdbc.query("SELECT admission_number FROM " + tcTable + " WHERE admission_number IN (SELECT admission_number FROM " +
+                    admissionTable + classFilter + ")", rs -> {
+                StudentDuesDTO student = students.get(rs.getString("admission_number"));
+                if (student != null) student.setTcIssued(true);
+            }, params.toArray());
+        }
+
+        FeeHeadTaxonomy feeHeads = feeHeadRegistry.forYear(schoolId, academicYear);
+        Map<String, StudentFeeCalc> calcs = new HashMap<>();
+        for (Map<String, Object> row : feeBalanceService.getHeadBalances(jdbc, academicYear, students.keySet())) {
+            String admNo = (String) row.get("admission_number");
+            String head = (String) row.get("fee_head");
+            double paid = ((Number) row.get("paid")).doubleValue();
+            double conc = ((Number) row.get("concession")).doubleValue();
+            double demand = ((Number) row.get("demand")).doubleValue();
+            // Collected without a demand: counts as demanded at what was collected, as in the profile
+            double fixed = demand > 0 ? demand : paid + conc;
+            boolean isTransport = feeHeads.isTransport(head);
+
+            StudentFeeCalc calc = calcs.computeIfAbsent(admNo, k -> new StudentFeeCalc());
+            if (isTransport) {
+                calc.transFixed += fixed;
+                calc.transPaid += paid;
+                calc.transConc += conc;
+            } else {
+                calc.acadFixed += fixed;
+                calc.acadPaid += paid;
+                calc.acadConc += conc;
+            }
+            students.get(admNo).getFeeHeads().add(FeeHeadDuesDTO.builder()
+                    .feeHead(head)
+                    .accountHead(isTransport ? "Transport" : "General")
+                    .demand(fixed)
+                    .paid(paid)
+                    .concession(conc)
+                    .pending(Math.max(0, fixed - (paid + conc)))
+                    .build());
+        }
+
+        List<StudentDuesDTO> result = new ArrayList<>();
+        for (StudentDuesDTO student : students.values()) {
+            StudentFeeCalc calc = calcs.getOrDefault(student.getAdmissionNumber(), new StudentFeeCalc());
+            double acadBal = Math.max(0, calc.acadFixed - (calc.acadPaid + calc.acadConc));
+            double transBal = Math.max(0, calc.transFixed - (calc.transPaid + calc.transConc));
+            student.setAcademicFixed(calc.acadFixed);
+            student.setAcademicPaid(calc.acadPaid + calc.acadConc);
+            student.setAcademicBalance(acadBal);
+            student.setTransportFixed(calc.transFixed);
+            student.setTransportPaid(calc.transPaid + calc.transConc);
+            student.setTransportBalance(transBal);
+            student.setTotalFixed(calc.acadFixed + calc.transFixed);
+            student.setTotalPaid(calc.acadPaid + calc.transPaid + calc.acadConc + calc.transConc);
+            student.setTotalPendingBalance(acadBal + transBal);
+            if (!pendingOnly || acadBal + transBal > 0.01) {
+                result.add(student);
             }
         }
+        return result;
+    }
+
+    private StudentFeeCalc calculateDuesUsingBalanceList4Logic(JdbcTemplate jdbc, String admNo, String academicYear, String safeYear) {
+        StudentFeeCalc calc = new StudentFeeCalc();
+        for (Map<String, Object> row : feeDemandService.getStudentDemand(jdbc, safeYear, admNo)) {
+            String head = (String) row.get("fee_heading");
+            double amt = ((Number) row.get("amount")).doubleValue();
+            calc.existingFixedHeads.add(head);
+            calc.demandMap.merge(head, amt, Double::sum);
+            if (FeeDemandService.isTransport((String) row.get("fee_type"))) calc.transFixed += amt;
+            else calc.acadFixed += amt;
+        }
 
         if (tableExists(jdbc, "individual_fees")) {
             try {
@@ -334,6 +420,8 @@ public class TCService {
                 request.getStandard(), request.getSection(), request.getDateOfLeaving(),
                 request.getReasonForLeaving(), request.getConduct(), totalPending,
                 schoolId, academicYear, jsonData);
+        // Every year: the balance carried out as arrears shows up outside the TC's own year
+        eventPublisher.publishEvent(new SchoolDataChangedEvent(schoolId, null, "TC"));
 
         return TransferCertificate.builder()
                 .tcNumber(request.getTcNumber())
@@ -357,19 +445,18 @@ public class TCService {
     }
 
     private void ensureTCTableExists(JdbcTemplate jdbc, String safeYear) {
-        String sql = "CREATE TABLE IF NOT EXISTS TC_" + safeYear + " (" +
-                "id BIGINT AUTO_INCREMENT PRIMARY KEY, tc_number VARCHAR(100), admission_number VARCHAR(50), " +
-                "student_name VARCHAR(255), standard VARCHAR(50), section VARCHAR(50), date_of_leaving DATE, " +
-                "reason TEXT, conduct VARCHAR(100), fee_balance_shifted DECIMAL(12,2) DEFAULT 0, " +
-                "tc_data_json TEXT, school_id VARCHAR(50), academic_year VARCHAR(50), created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)";
-        jdbc.execute(sql);
+        schemaMigrator.migrate(jdbc, "TCService:" + safeYear, 1, () -> {
+            String sql = "CREATE TABLE IF NOT EXISTS TC_" + safeYear + " (" +
+                    "id BIGINT AUTO_INCREMENT PRIMARY KEY, tc_number VARCHAR(100), admission_number VARCHAR(50), " +
+                    "student_name VARCHAR(255), standard VARCHAR(50), section VARCHAR(50), date_of_leaving DATE, " +
+                    "reason TEXT, conduct VARCHAR(100), fee_balance_shifted DECIMAL(12,2) DEFAULT 0, " +
+                    "tc_data_json TEXT, school_id VARCHAR(50), academic_year VARCHAR(50), created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)";
+            jdbc.execute(sql);
+        });
     }
 
     private boolean tableExists(JdbcTemplate jdbc, String tableName) {
-        try {
-            Integer count = jdbc.queryForObject("SELECT COUNT(*) FROM information_schema.tables WHERE table_schema = DATABASE() AND table_name = ?", Integer.class, tableName);
-            return count != null && count > 0;
-        } catch (Exception e) { return false; }
+        return tableCatalog.tableExists(jdbc, tableName);
     }
 
     public List<TCListResponseDTO> getGeneratedTCs(String schoolId, String academicYear, String standard, String section, String search) {
@@ -1,76 +1,63 @@
 package com.backend.school_erp.service.Collection;
 
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
+import com.backend.school_erp.service.ReportJob.ReportJobProgress;
+import com.backend.school_erp.service.Transaction.CollectionRollupService;
+import com.backend.school_erp.service.Transaction.FeeBalanceService;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import javax.sql.DataSource;
 import java.sql.Timestamp;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 
 @Service
 @Slf4j
 public class TutionReportService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
-
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            log.info("🔗 Creating HikariCP DataSource for tuition reports - school: {}", id);
-            HikariConfig config = new HikariConfig();
-
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
 
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
 
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-
-            config.setMaximumPoolSize(10);
-            config.setMinimumIdle(2);
-            config.setIdleTimeout(30000);
-            config.setMaxLifetime(1800000);
-            config.setConnectionTimeout(10000);
-
-            return new HikariDataSource(config);
-        });
-    }
+    @Autowired
+    private CollectionRollupService collectionRollupService;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     private void ensureTablesExist(JdbcTemplate jdbc) {
-        try {
-            // Check if Daily Fee Collection tables exist (they should from the DailyFeeCollectionService)
-            String[] checkTables = {
-                    "daily_fee_collection",
-                    "dfcpaidamount",
-                    "dfcconcession",
-                    "day_book"
-            };
-
-            for (String table : checkTables) {
-                try {
-                    jdbc.execute("SELECT 1 FROM " + table + " LIMIT 0");
-                    log.debug("✅ Table {} exists", table);
-                } catch (Exception e) {
-                    log.warn("⚠️ Table {} does not exist or is inaccessible: {}", table, e.getMessage());
-                    // The tables should be created by DailyFeeCollectionService
-                    // We'll create a fallback view if needed
+        schemaMigrator.migrate(jdbc, "TutionReportService", 1, () -> {
+            try {
+                // Check if Daily Fee Collection tables exist (they should from the DailyFeeCollectionService)
+                String[] checkTables = {
+                        "daily_fee_collection",
+                        "dfcpaidamount",
+                        "dfcconcession",
+                        "day_book"
+                };
+
+                for (String table : checkTables) {
+                    try {
+                        jdbc.execute("SELECT 1 FROM " + table + " LIMIT 0");
+                        log.debug("✅ Table {} exists", table);
+                    } catch (Exception e) {
+                        log.warn("⚠️ Table {} does not exist or is inaccessible: {}", table, e.getMessage());
+                        // The tables should be created by DailyFeeCollectionService
+                        // We'll create a fallback view if needed
+                    }
                 }
+            } catch (Exception e) {
+                log.error("❌ Error checking tables: {}", e.getMessage());
             }
-        } catch (Exception e) {
-            log.error("❌ Error checking tables: {}", e.getMessage());
-        }
+        });
     }
 
     // Get day collection report from daily_fee_collection table
@@ -117,12 +104,12 @@ public class TutionReportService {
                     AND dfc.fee_head = db.ledger
                 WHERE dfc.school_id = ? 
                 AND dfc.academic_year = ?
-                AND DATE(dfc.bill_date) = ?
+                AND dfc.bill_date >= ? AND dfc.bill_date < ?
                 ORDER BY dfc.admission_number, dfc.bill_date, dfc.fee_head
             """;
 
             List<Map<String, Object>> results = jdbc.queryForList(
-                    sql, schoolId, academicYear, reportDate
+                    sql, schoolId, academicYear, reportDate, reportDate.plusDays(1)
             );
 
             List<Map<String, Object>> collections = new ArrayList<>();
@@ -252,12 +239,12 @@ public class TutionReportService {
                 FROM day_book 
                 WHERE school_id = ? 
                 AND academic_year = ?
-                AND DATE(br_date) = ?
+                AND br_date >= ? AND br_date < ?
                 ORDER BY admission_number, br_date
             """;
 
             List<Map<String, Object>> results = jdbc.queryForList(
-                    sql, schoolId, academicYear, reportDate
+                    sql, schoolId, academicYear, reportDate, reportDate.plusDays(1)
             );
 
             List<Map<String, Object>> collections = new ArrayList<>();
@@ -357,12 +344,12 @@ public class TutionReportService {
                 FROM daily_fee_collection dfc
                 WHERE dfc.school_id = ? 
                 AND dfc.academic_year = ?
-                AND DATE(dfc.bill_date) BETWEEN ? AND ?
+                AND dfc.bill_date >= ? AND dfc.bill_date < ?
                 ORDER BY DATE(dfc.bill_date), dfc.admission_number, dfc.bill_date
             """;
 
             List<Map<String, Object>> results = jdbc.queryForList(
-                    sql, schoolId, academicYear, start, end
+                    sql, schoolId, academicYear, start, end.plusDays(1)
             );
 
             List<Map<String, Object>> collections = new ArrayList<>();
@@ -372,7 +359,9 @@ public class TutionReportService {
             // Group by date for better organization
             Map<String, List<Map<String, Object>>> dateGroups = new LinkedHashMap<>();
 
+            int done = 0;
             for (Map<String, Object> row : results) {
+                ReportJobProgress.update(++done, results.size());
                 String collectionDate = ((java.sql.Date) row.get("collection_date")).toString();
 
                 Map<String, Object> collection = new HashMap<>();
@@ -490,26 +479,9 @@ public class TutionReportService {
             LocalDate endDate = LocalDate.now();
             LocalDate startDate = endDate.minusDays(days - 1);
 
-            String sql = """
-                SELECT 
-                    DATE(bill_date) as collection_date,
-                    COUNT(DISTINCT bill_number) as transaction_count,
-                    COUNT(*) as fee_item_count,
-                    SUM(paid_amount) as daily_paid_total,
-                    SUM(concession_amount) as daily_concession_total,
-                    SUM(net_paid_amount) as daily_net_total,
-                    COUNT(DISTINCT admission_number) as unique_students
-                FROM daily_fee_collection 
-                WHERE school_id = ? 
-                AND academic_year = ?
-                AND DATE(bill_date) BETWEEN ? AND ?
-                GROUP BY DATE(bill_date)
-                ORDER BY collection_date DESC
-            """;
-
-            List<Map<String, Object>> summary = jdbc.queryForList(
-                    sql, schoolId, academicYear, startDate, endDate
-            );
+            // Pre-summed per day by the collection rollup
+            List<Map<String, Object>> summary = collectionRollupService.getDailyTotals(
+                    jdbc, FeeBalanceService.DAILY, academicYear, startDate, endDate);
 
             // Calculate totals
             double totalPaid = 0.0;
@@ -566,62 +538,16 @@ public class TutionReportService {
             JdbcTemplate jdbc = getJdbcTemplate(schoolId);
             ensureTablesExist(jdbc);
 
-            // Get current academic year statistics
-            String sql = """
-                SELECT 
-                    COUNT(DISTINCT bill_number) as total_transactions,
-                    COUNT(*) as total_fee_items,
-                    SUM(paid_amount) as total_collection,
-                    SUM(concession_amount) as total_concession,
-                    SUM(net_paid_amount) as total_net_collection,
-                    AVG(paid_amount) as average_transaction,
-                    MAX(paid_amount) as max_transaction,
-                    MIN(paid_amount) as min_transaction,
-                    COUNT(DISTINCT admission_number) as unique_students,
-                    COUNT(DISTINCT DATE(bill_date)) as collection_days
-                FROM daily_fee_collection 
-                WHERE school_id = ? 
-                AND academic_year = ?
-            """;
-
-            Map<String, Object> stats = jdbc.queryForMap(sql, schoolId, academicYear);
+            // Read from the collection rollup instead of aggregating every fee row of the year
+            Map<String, Object> stats = collectionRollupService.getYearTotals(jdbc, FeeBalanceService.DAILY, academicYear);
 
             // Get payment mode distribution
-            String paymentModeSql = """
-                SELECT 
-                    payment_mode,
-                    COUNT(*) as transaction_count,
-                    SUM(paid_amount) as total_paid,
-                    SUM(concession_amount) as total_concession
-                FROM daily_fee_collection 
-                WHERE school_id = ? 
-                AND academic_year = ?
-                GROUP BY payment_mode
-                ORDER BY total_paid DESC
-            """;
-
-            List<Map<String, Object>> paymentModes = jdbc.queryForList(
-                    paymentModeSql, schoolId, academicYear
-            );
+            List<Map<String, Object>> paymentModes = collectionRollupService.getYearTotalsBy(
+                    jdbc, FeeBalanceService.DAILY, academicYear, "payment_mode", 0);
 
             // Get top fee heads
-            String feeHeadSql = """
-                SELECT 
-                    fee_head,
-                    COUNT(*) as transaction_count,
-                    SUM(paid_amount) as total_paid,
-                    SUM(concession_amount) as total_concession
-                FROM daily_fee_collection 
-                WHERE school_id = ? 
-                AND academic_year = ?
-                GROUP BY fee_head
-                ORDER BY total_paid DESC
-                LIMIT 10
-            """;
-
-            List<Map<String, Object>> topFeeHeads = jdbc.queryForList(
-                    feeHeadSql, schoolId, academicYear
-            );
+            List<Map<String, Object>> topFeeHeads = collectionRollupService.getYearTotalsBy(
+                    jdbc, FeeBalanceService.DAILY, academicYear, "fee_head", 10);
 
             // Calculate daily averages
             Double totalCollection = convertToDouble(stats.get("total_collection"));
@@ -705,18 +631,7 @@ public class TutionReportService {
             LocalDate start = LocalDate.parse(startDate);
             LocalDate end = LocalDate.parse(endDate);
 
-            String sql = """
-                SELECT SUM(paid_amount) as total_collection
-                FROM daily_fee_collection 
-                WHERE school_id = ? 
-                AND academic_year = ?
-                AND DATE(bill_date) BETWEEN ? AND ?
-            """;
-
-            Double totalCollection = jdbc.queryForObject(sql, Double.class,
-                    schoolId, academicYear, start, end);
-
-            return totalCollection != null ? totalCollection : 0.0;
+            return collectionRollupService.getPaidTotal(jdbc, FeeBalanceService.DAILY, academicYear, start, end);
 
         } catch (Exception e) {
             log.error("Error calculating total collection for school {} from {} to {}: {}",
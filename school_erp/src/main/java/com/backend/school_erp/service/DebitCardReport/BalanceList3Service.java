@@ -1,98 +1,66 @@
 package com.backend.school_erp.service.DebitCardReport;
 
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantTableCatalog;
 import com.backend.school_erp.DTO.DebitCardReport.BalanceList3DTO;
 import com.backend.school_erp.config.DatabaseConfig; // 1. Import AWS Config
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
+import com.backend.school_erp.service.Administration.FeeHeadRegistry;
+import com.backend.school_erp.service.Administration.FeeHeadTaxonomy;
+import com.backend.school_erp.service.Transaction.FeeDemandService;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import javax.sql.DataSource;
 import java.sql.SQLException;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 @Service
 public class BalanceList3Service {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private TenantTableCatalog tableCatalog;
+
+    @Autowired
+    private FeeDemandService feeDemandService;
+
+    @Autowired
+    private ReportResultCache reportResultCache;
+
+    @Autowired
+    private FeeHeadRegistry feeHeadRegistry;
 
     // --- Updated Dynamic AWS DB Connection ---
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        DataSource ds = dataSourceCache.computeIfAbsent(schoolId, id -> {
-            HikariConfig config = new HikariConfig();
-
-            // 2. Use AWS DB Constants from DatabaseConfig
-            // Appends the schoolId as the specific database name
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName(DatabaseConfig.JDBC_DRIVER);
-
-            // Pool performance settings for complex report generation
-            config.setMaximumPoolSize(10);
-            config.setMinimumIdle(2);
-            config.setIdleTimeout(30000);
-            config.setMaxLifetime(1800000);
-            config.setConnectionTimeout(10000);
-
-            return new HikariDataSource(config);
-        });
-        return new JdbcTemplate(ds);
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     // --- Fetch Grouped Fee Heads ---
     public Map<String, List<String>> getGroupedFeeHeads(String schoolId, String academicYear, boolean includeMisc) {
-        JdbcTemplate jdbc = getJdbcTemplate(schoolId);
-        String safeYear = academicYear.replaceAll("[^a-zA-Z0-9]", "_");
+        FeeHeadTaxonomy feeHeads = feeHeadRegistry.forYear(schoolId, academicYear);
         Map<String, List<String>> result = new HashMap<>();
-        List<String> dayFC = new ArrayList<>();
-        List<String> missOth = new ArrayList<>();
-
-        // 1. Standard Heads (DayFC)
-        String[] tables = {"tuition_fees_" + safeYear, "transport_fees_" + safeYear, "hostel_fees_" + safeYear};
-        for (String tbl : tables) {
-            if (tableExists(jdbc, tbl)) {
-                try {
-                    dayFC.addAll(jdbc.queryForList("SELECT DISTINCT fee_heading FROM " + tbl, String.class));
-                } catch (Exception e) {}
-            }
-        }
-
-        // 2. Misc/Individual Heads (Miss/Oth)
-        if (includeMisc) {
-            if (tableExists(jdbc, "individual_fees")) {
-                try {
-                    missOth.addAll(jdbc.queryForList("SELECT DISTINCT fee_head FROM individual_fees WHERE academic_year = ?", String.class, academicYear));
-                } catch (Exception e) {}
-            }
-            if (tableExists(jdbc, "miscellaneous_fee_collection")) {
-                try {
-                    missOth.addAll(jdbc.queryForList("SELECT DISTINCT fee_head FROM miscellaneous_fee_collection WHERE academic_year = ?", String.class, academicYear));
-                } catch (Exception e) {}
-            }
-        }
-
-        // Deduplicate and Sort
-        result.put("DayFC", dayFC.stream().distinct().sorted().collect(Collectors.toList()));
-        result.put("MissOth", missOth.stream().distinct().sorted().collect(Collectors.toList()));
-
+        result.put("DayFC", new ArrayList<>(feeHeads.billedHeads()));
+        result.put("MissOth", includeMisc ? new ArrayList<>(feeHeads.miscHeads()) : new ArrayList<>());
         return result;
     }
 
     public List<BalanceList3DTO> generateBalanceList3(String schoolId, String academicYear, List<String> feeHeadsFilter, boolean includeMisc) {
+        return reportResultCache.get(schoolId, academicYear, "balance-list-3", Arrays.asList(feeHeadsFilter, includeMisc),
+                () -> buildBalanceList3(schoolId, academicYear, feeHeadsFilter, includeMisc));
+    }
+
+    private List<BalanceList3DTO> buildBalanceList3(String schoolId, String academicYear, List<String> feeHeadsFilter, boolean includeMisc) {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
         String safeYear = academicYear.replaceAll("[^a-zA-Z0-9]", "_");
 
         Map<String, ClassData> classMap = new HashMap<>();
+        FeeHeadTaxonomy feeHeads = feeHeadRegistry.forYear(schoolId, academicYear);
 
         // 1. FETCH FIXED DEMAND (Tuition, Hostel, Transport)
-        String[] acadTables = {"tuition_fees_" + safeYear, "hostel_fees_" + safeYear};
-        String[] transTables = {"transport_fees_" + safeYear};
-
-        fetchAndAggregateFixed(jdbc, acadTables, feeHeadsFilter, classMap, true);
-        fetchAndAggregateFixed(jdbc, transTables, feeHeadsFilter, classMap, false);
+        fetchAndAggregateFixed(jdbc, academicYear, feeHeadsFilter, classMap);
 
         // 2. FETCH INDIVIDUAL FIXED DEMAND (If Misc Included)
         if (includeMisc && tableExists(jdbc, "individual_fees")) {
@@ -115,7 +83,7 @@ public class BalanceList3Service {
 
                         ClassData data = classMap.computeIfAbsent(key, k -> new ClassData(String.valueOf(row.get("standard")), String.valueOf(row.get("section"))));
 
-                        if (head.toLowerCase().contains("transp")) {
+                        if (feeHeads.isTransport(head)) {
                             data.transFixed += amt;
                             data.transFixedMap.merge(head, amt, Double::sum);
                         } else {
@@ -140,7 +108,7 @@ public class BalanceList3Service {
 
         jdbc.query(dailySql, rs -> {
             try {
-                processCollectionRow(rs, classMap, transTables, jdbc);
+                processCollectionRow(rs, classMap, feeHeads);
             } catch (SQLException e) {
                 throw new RuntimeException("Error processing daily fee row", e);
             }
@@ -158,7 +126,7 @@ public class BalanceList3Service {
 
             jdbc.query(miscSql, rs -> {
                 try {
-                    processCollectionRow(rs, classMap, transTables, jdbc);
+                    processCollectionRow(rs, classMap, feeHeads);
                 } catch (SQLException e) {
                     throw new RuntimeException(e);
                 }
@@ -202,7 +170,7 @@ public class BalanceList3Service {
         return results;
     }
 
-    private void processCollectionRow(java.sql.ResultSet rs, Map<String, ClassData> classMap, String[] transTables, JdbcTemplate jdbc) throws SQLException {
+    private void processCollectionRow(java.sql.ResultSet rs, Map<String, ClassData> classMap, FeeHeadTaxonomy feeHeads) throws SQLException {
         String key = rs.getString("standard") + "-" + rs.getString("section");
         String head = rs.getString("fee_head");
         Double paid = rs.getDouble("paid");
@@ -222,7 +190,7 @@ public class BalanceList3Service {
             data.concessionMap.merge(head, conc, Double::sum);
         }
 
-        boolean isTransport = (head != null && head.toLowerCase().contains("transp")) || checkTableForHead(jdbc, transTables, head);
+        boolean isTransport = feeHeads.isTransport(head);
 
         if (isTransport) {
             data.transPaid += paid;
@@ -243,40 +211,23 @@ public class BalanceList3Service {
         }
     }
 
-    private void fetchAndAggregateFixed(JdbcTemplate jdbc, String[] tables, List<String> feeHeadsFilter, Map<String, ClassData> map, boolean isAcad) {
-        for (String tbl : tables) {
-            if (!tableExists(jdbc, tbl)) continue;
-            String sql = "SELECT standard, section, fee_heading, SUM(amount) as amt FROM " + tbl;
-            if (feeHeadsFilter != null && !feeHeadsFilter.isEmpty()) {
-                sql += " WHERE fee_heading IN (" + buildInClause(feeHeadsFilter) + ")";
+    private void fetchAndAggregateFixed(JdbcTemplate jdbc, String academicYear, List<String> feeHeadsFilter, Map<String, ClassData> map) {
+        for (Map<String, Object> row : feeDemandService.getClassDemand(jdbc, academicYear, feeHeadsFilter)) {
+            String standard = (String) row.get("standard");
+            String section = (String) row.get("section");
+            String key = standard + "-" + section;
+            Double amt = ((Number) row.get("total")).doubleValue();
+            String head = (String) row.get("fee_heading");
+
+            ClassData d = map.computeIfAbsent(key, k -> new ClassData(standard, section));
+
+            if (FeeDemandService.isTransport((String) row.get("fee_type"))) {
+                d.transFixed += amt;
+                d.transFixedMap.merge(head, amt, Double::sum);
+            } else {
+                d.acadFixed += amt;
+                d.acadFixedMap.merge(head, amt, Double::sum);
             }
-            sql += " GROUP BY standard, section, fee_heading";
-
-            jdbc.query(sql, rs -> {
-                try {
-                    String key = rs.getString("standard") + "-" + rs.getString("section");
-                    Double amt = rs.getDouble("amt");
-                    String head = rs.getString("fee_heading");
-
-                    ClassData d = map.computeIfAbsent(key, k -> {
-                        try {
-                            return new ClassData(rs.getString("standard"), rs.getString("section"));
-                        } catch (SQLException e) {
-                            throw new RuntimeException(e);
-                        }
-                    });
-
-                    if (isAcad) {
-                        d.acadFixed += amt;
-                        d.acadFixedMap.merge(head, amt, Double::sum);
-                    } else {
-                        d.transFixed += amt;
-                        d.transFixedMap.merge(head, amt, Double::sum);
-                    }
-                } catch (SQLException e) {
-                    throw new RuntimeException("Error fetching fixed fee data", e);
-                }
-            });
         }
     }
 
@@ -285,12 +236,7 @@ public class BalanceList3Service {
     }
 
     private String getAdmissionColumn(JdbcTemplate jdbc, String tableName) {
-        try {
-            jdbc.queryForObject("SELECT admission_no FROM " + tableName + " LIMIT 1", Object.class);
-            return "admission_no";
-        } catch (Exception e) {
-            return "admission_number";
-        }
+        return tableCatalog.resolveColumn(jdbc, tableName, "admission_no", "admission_number");
     }
 
     private String formatMap(Map<String, Double> map) {
@@ -310,15 +256,8 @@ public class BalanceList3Service {
                 .collect(Collectors.joining(", "));
     }
 
-    private boolean checkTableForHead(JdbcTemplate jdbc, String[] tables, String head) {
-        return head != null && head.toLowerCase().contains("transp");
-    }
-
     private boolean tableExists(JdbcTemplate jdbc, String tableName) {
-        try {
-            jdbc.queryForObject("SELECT 1 FROM " + tableName + " LIMIT 1", Integer.class);
-            return true;
-        } catch (Exception e) { return false; }
+        return tableCatalog.tableExists(jdbc, tableName);
     }
 
     private static class ClassData {
@@ -1,82 +1,62 @@
 package com.backend.school_erp.service.DebitCardReport;
 
 import com.backend.school_erp.DTO.DebitCardReport.BalanceList4DTO;
-import com.backend.school_erp.config.DatabaseConfig;
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantTableCatalog;
+import com.backend.school_erp.service.Administration.FeeHeadRegistry;
+import com.backend.school_erp.service.Administration.FeeHeadTaxonomy;
+import com.backend.school_erp.service.ReportJob.ReportJobProgress;
+import com.backend.school_erp.service.Transaction.FeeDemandService;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import javax.sql.DataSource;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Service
 public class BalanceList4Service {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private TenantTableCatalog tableCatalog;
+
+    @Autowired
+    private FeeDemandService feeDemandService;
+
+    @Autowired
+    private ReportQueryExecutor reportQueryExecutor;
+
+    @Autowired
+    private ReportResultCache reportResultCache;
+
+    @Autowired
+    private FeeHeadRegistry feeHeadRegistry;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        DataSource ds = dataSourceCache.computeIfAbsent(schoolId, id -> {
-            HikariConfig config = new HikariConfig();
-
-            // 2. Use AWS DB Constants from DatabaseConfig
-            // Appends the schoolId as the specific database name
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName(DatabaseConfig.JDBC_DRIVER);
-
-            // Pool performance settings for complex report generation
-            config.setMaximumPoolSize(10);
-            config.setMinimumIdle(2);
-            config.setIdleTimeout(30000);
-            config.setMaxLifetime(1800000);
-            config.setConnectionTimeout(10000);
-
-            return new HikariDataSource(config);
-        });
-        return new JdbcTemplate(ds);
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     // --- Fetch Grouped Fee Heads ---
     public Map<String, List<String>> getGroupedFeeHeads(String schoolId, String academicYear, boolean includeMisc) {
-        JdbcTemplate jdbc = getJdbcTemplate(schoolId);
-        String safeYear = academicYear.replaceAll("[^a-zA-Z0-9]", "_");
+        FeeHeadTaxonomy feeHeads = feeHeadRegistry.forYear(schoolId, academicYear);
         Map<String, List<String>> result = new HashMap<>();
-        List<String> dayFC = new ArrayList<>();
-        List<String> missOth = new ArrayList<>();
-
-        String[] tables = {"tuition_fees_" + safeYear, "transport_fees_" + safeYear, "hostel_fees_" + safeYear};
-        for (String tbl : tables) {
-            if (tableExists(jdbc, tbl)) {
-                try {
-                    dayFC.addAll(jdbc.queryForList("SELECT DISTINCT fee_heading FROM " + tbl, String.class));
-                } catch (Exception e) {}
-            }
-        }
-
-        if (includeMisc) {
-            if (tableExists(jdbc, "individual_fees")) {
-                try {
-                    missOth.addAll(jdbc.queryForList("SELECT DISTINCT fee_head FROM individual_fees WHERE academic_year = ?", String.class, academicYear));
-                } catch (Exception e) {}
-            }
-            if (tableExists(jdbc, "miscellaneous_fee_collection")) {
-                try {
-                    missOth.addAll(jdbc.queryForList("SELECT DISTINCT fee_head FROM miscellaneous_fee_collection WHERE academic_year = ?", String.class, academicYear));
-                } catch (Exception e) {}
-            }
-        }
-
-        result.put("DayFC", dayFC.stream().distinct().sorted().collect(Collectors.toList()));
-        result.put("MissOth", missOth.stream().distinct().sorted().collect(Collectors.toList()));
+        result.put("DayFC", new ArrayList<>(feeHeads.billedHeads()));
+        result.put("MissOth", includeMisc ? new ArrayList<>(feeHeads.miscHeads()) : new ArrayList<>());
         return result;
     }
 
     public List<BalanceList4DTO> generateBalanceList4(String schoolId, String academicYear,
                                                       List<String> feeHeadsFilter, boolean includeMisc) {
+        return reportResultCache.get(schoolId, academicYear, "balance-list-4", Arrays.asList(feeHeadsFilter, includeMisc),
+                () -> buildBalanceList4(schoolId, academicYear, feeHeadsFilter, includeMisc));
+    }
+
+    private List<BalanceList4DTO> buildBalanceList4(String schoolId, String academicYear,
+                                                    List<String> feeHeadsFilter, boolean includeMisc) {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
         String safeYear = academicYear.replaceAll("[^a-zA-Z0-9]", "_");
         Map<String, StudentData> studentMap = new HashMap<>();
@@ -89,32 +69,55 @@ public class BalanceList4Service {
                 "FROM " + studentTable + " " +
                 "ORDER BY standard, section, student_name";
 
-        jdbc.query(studentSql, rs -> {
-            String admNo = rs.getString("admission_number");
+        // The queries are independent, so fetch them side by side. They are merged in order below
+        // because spot fees depend on which heads already have a fixed demand.
+        List<Map<String, Object>> students;
+        List<Map<String, Object>> demandRows;
+        List<Map<String, Object>> individualRows;
+        List<Map<String, Object>> dailyRows;
+        List<Map<String, Object>> miscRows;
+        FeeHeadTaxonomy feeHeads;
+        try (ReportQueryExecutor.Scope scope = reportQueryExecutor.open()) {
+            Supplier<List<Map<String, Object>>> studentQuery = scope.fork(() -> jdbc.queryForList(studentSql));
+            Supplier<List<Map<String, Object>>> demandQuery = scope.fork(() -> feeDemandService.getYearDemand(jdbc, safeYear, feeHeadsFilter));
+            Supplier<List<Map<String, Object>>> individualQuery = scope.fork(() -> includeMisc ? fetchIndividualFees(jdbc, safeYear, feeHeadsFilter) : List.of());
+            Supplier<List<Map<String, Object>>> dailyQuery = scope.fork(() -> fetchCollectionRows(jdbc, schoolId, academicYear, feeHeadsFilter, "daily_fee_collection"));
+            Supplier<List<Map<String, Object>>> miscQuery = scope.fork(() -> includeMisc ? fetchCollectionRows(jdbc, schoolId, academicYear, feeHeadsFilter, "miscellaneous_fee_collection") : List.of());
+            Supplier<FeeHeadTaxonomy> headsQuery = scope.fork(() -> feeHeadRegistry.forYear(schoolId, academicYear));
+            scope.join();
+            students = studentQuery.get();
+            demandRows = demandQuery.get();
+            individualRows = individualQuery.get();
+            dailyRows = dailyQuery.get();
+            miscRows = miscQuery.get();
+            feeHeads = headsQuery.get();
+        }
+
+        for (Map<String, Object> row : students) {
+            String admNo = (String) row.get("admission_number");
             StudentData data = new StudentData();
             data.admissionNo = admNo;
-            data.studentName = rs.getString("student_name");
-            data.fatherName = rs.getString("father_name");
-            data.standard = rs.getString("standard");
-            data.section = rs.getString("section");
-            data.boardingPoint = rs.getString("boarding_point");
+            data.studentName = (String) row.get("student_name");
+            data.fatherName = (String) row.get("father_name");
+            data.standard = (String) row.get("standard");
+            data.section = (String) row.get("section");
+            data.boardingPoint = (String) row.get("boarding_point");
             studentMap.put(admNo, data);
-        });
+        }
 
-        // 2. FETCH FIXED DEMAND (Tuition, Hostel, Transport, Individual)
-        fetchFixedDemands(jdbc, safeYear, feeHeadsFilter, studentMap, includeMisc);
+        // 2. APPLY FIXED DEMAND (Tuition, Hostel, Transport, Individual)
+        applyFixedDemands(demandRows, individualRows, studentMap);
 
-        // 3. FETCH COLLECTIONS (Daily & Misc)
+        // 3. APPLY COLLECTIONS (Daily & Misc)
         // This is where the logic to add Virtual Fixed amounts for Spot Fees resides
-        fetchCollections(jdbc, schoolId, academicYear, feeHeadsFilter, studentMap, "daily_fee_collection");
-
-        if (includeMisc) {
-            fetchCollections(jdbc, schoolId, academicYear, feeHeadsFilter, studentMap, "miscellaneous_fee_collection");
-        }
+        applyCollections(dailyRows, studentMap, feeHeads);
+        applyCollections(miscRows, studentMap, feeHeads);
 
         // 4. CONVERT TO DTO
         List<BalanceList4DTO> results = new ArrayList<>();
+        int done = 0;
         for (StudentData data : studentMap.values()) {
+            ReportJobProgress.update(++done, studentMap.size());
             double totalConc = data.acadConc + data.transConc;
 
             if (data.acadFixed == 0 && data.acadPaid == 0 && data.transFixed == 0 && data.transPaid == 0 && totalConc == 0) continue;
@@ -171,70 +174,20 @@ public class BalanceList4Service {
 
     // --- Helpers ---
 
-    private void fetchFixedDemands(JdbcTemplate jdbc, String safeYear, List<String> feeHeadsFilter,
-                                   Map<String, StudentData> studentMap, boolean includeMisc) {
-        String tuitionTable = "tuition_fees_" + safeYear;
-        if (tableExists(jdbc, tuitionTable)) fetchFromFixedTable(jdbc, tuitionTable, "admission_number", "fee_heading", feeHeadsFilter, studentMap, true);
-
-        String hostelTable = "hostel_fees_" + safeYear;
-        if (tableExists(jdbc, hostelTable)) fetchFromFixedTable(jdbc, hostelTable, "admission_number", "fee_heading", feeHeadsFilter, studentMap, true);
-
-        String transportTable = "transport_fees_" + safeYear;
-        if (tableExists(jdbc, transportTable)) fetchFromFixedTable(jdbc, transportTable, "admission_number", "fee_heading", feeHeadsFilter, studentMap, false);
-
-        if (includeMisc && tableExists(jdbc, "individual_fees")) {
-            String indSql = "SELECT admission_number, fee_head, amount FROM individual_fees WHERE academic_year = ?";
-            if (feeHeadsFilter != null && !feeHeadsFilter.isEmpty()) indSql += " AND fee_head IN (" + buildInClause(feeHeadsFilter) + ")";
-            try {
-                jdbc.query(indSql, rs -> {
-                    String admNo = rs.getString("admission_number");
-                    StudentData data = studentMap.get(admNo);
-                    if (data != null) {
-                        double amt = rs.getDouble("amount");
-                        String head = rs.getString("fee_head");
-
-                        // TRACKING: This head has a real fixed amount
-                        data.existingFixedHeads.add(head);
-
-                        data.acadFixed += amt;
-                        data.acadFixedDetails.append(head).append(": ").append(amt).append("\n");
-                    }
-                }, safeYear.replace("_", "-"));
-            } catch (Exception e) {}
-        }
-    }
-
-    private void fetchFromFixedTable(JdbcTemplate jdbc, String table, String admCol, String headCol,
-                                     List<String> feeHeadsFilter, Map<String, StudentData> studentMap, boolean isAcademic) {
-        String sql = "SELECT " + admCol + ", " + headCol + ", amount FROM " + table;
-        if (feeHeadsFilter != null && !feeHeadsFilter.isEmpty()) sql += " WHERE " + headCol + " IN (" + buildInClause(feeHeadsFilter) + ")";
-
+    private List<Map<String, Object>> fetchIndividualFees(JdbcTemplate jdbc, String safeYear, List<String> feeHeadsFilter) {
+        if (!tableExists(jdbc, "individual_fees")) return List.of();
+        String indSql = "SELECT admission_number, fee_head, amount FROM individual_fees WHERE academic_year = ?";
+        if (feeHeadsFilter != null && !feeHeadsFilter.isEmpty()) indSql += " AND fee_head IN (" + buildInClause(feeHeadsFilter) + ")";
         try {
-            jdbc.query(sql, rs -> {
-                String admNo = rs.getString(admCol);
-                StudentData data = studentMap.get(admNo);
-                if (data != null) {
-                    double amt = rs.getDouble("amount");
-                    String head = rs.getString(headCol);
-
-                    // TRACKING: This head has a real fixed amount
-                    data.existingFixedHeads.add(head);
-
-                    if (isAcademic) {
-                        data.acadFixed += amt;
-                        data.acadFixedDetails.append(head).append(": ").append(amt).append("\n");
-                    } else {
-                        data.transFixed += amt;
-                        data.transFixedDetails.append(head).append(": ").append(amt).append("\n");
-                    }
-                }
-            });
-        } catch (Exception e) {}
+            return jdbc.queryForList(indSql, safeYear.replace("_", "-"));
+        } catch (Exception e) {
+            return List.of();
+        }
     }
 
-    private void fetchCollections(JdbcTemplate jdbc, String schoolId, String academicYear,
-                                  List<String> feeHeadsFilter, Map<String, StudentData> studentMap, String collectionTable) {
-        if (!tableExists(jdbc, collectionTable)) return;
+    private List<Map<String, Object>> fetchCollectionRows(JdbcTemplate jdbc, String schoolId, String academicYear,
+                                                          List<String> feeHeadsFilter, String collectionTable) {
+        if (!tableExists(jdbc, collectionTable)) return List.of();
 
         // Group by fee_head to align payments with fixed heads
         String sql = "SELECT admission_number, fee_head, SUM(paid_amount) as paid, SUM(concession_amount) as conc, MAX(transaction_narrative) as narr " +
@@ -244,65 +197,111 @@ public class BalanceList4Service {
         sql += " GROUP BY admission_number, fee_head";
 
         try {
-            jdbc.query(sql, rs -> {
-                String admNo = rs.getString("admission_number");
-                String head = rs.getString("fee_head");
-                Double paid = rs.getDouble("paid");
-                Double conc = rs.getDouble("conc");
-                String narr = rs.getString("narr");
-
-                StudentData data = studentMap.get(admNo);
-                if (data == null) return;
-
-                if (narr != null && !narr.isEmpty()) data.narrative = narr;
-
-                // 2. Calculate Virtual Fixed Amount (Spot Fee Logic)
-                double virtualDemand = paid + conc;
-
-                // FIX: Use "transp" to catch variations like "Transprt"
-                boolean isTransport = head != null && head.toLowerCase().contains("transp");
-
-                // 3. Process Payments & Apply Virtual Fixed if needed
-                if (isTransport) {
-                    // Update Transport Concession
-                    if (conc > 0) {
-                        data.transConc += conc;
-                        data.concessionDetails.append(head).append(": ").append(conc).append("\n");
-                    }
-
-                    if (paid > 0) {
-                        data.transPaid += paid;
-                        data.transPaidDetails.append(head).append(": ").append(paid).append("\n");
-                    }
-
-                    // IF SPOT FEE (Head was not in Fixed Table), Add Virtual Demand
-                    if (!data.existingFixedHeads.contains(head)) {
-                        data.transFixed += virtualDemand;
-                        data.transFixedDetails.append(head).append(": ").append(virtualDemand).append("\n");
-                        data.existingFixedHeads.add(head); // Prevent double counting
-                    }
+            return jdbc.queryForList(sql, schoolId, academicYear);
+        } catch (Exception e) {
+            return List.of();
+        }
+    }
+
+    private void applyFixedDemands(List<Map<String, Object>> demandRows, List<Map<String, Object>> individualRows,
+                                   Map<String, StudentData> studentMap) {
+        for (Map<String, Object> row : demandRows) {
+            StudentData data = studentMap.get((String) row.get("admission_number"));
+            if (data != null) {
+                double amt = ((Number) row.get("amount")).doubleValue();
+                String head = (String) row.get("fee_heading");
+
+                // TRACKING: This head has a real fixed amount
+                data.existingFixedHeads.add(head);
 
+                if (FeeDemandService.isTransport((String) row.get("fee_type"))) {
+                    data.transFixed += amt;
+                    data.transFixedDetails.append(head).append(": ").append(amt).append("\n");
                 } else {
-                    // Update Academic Concession
-                    if (conc > 0) {
-                        data.acadConc += conc;
-                        data.concessionDetails.append(head).append(": ").append(conc).append("\n");
-                    }
-
-                    if (paid > 0) {
-                        data.acadPaid += paid;
-                        data.acadPaidDetails.append(head).append(": ").append(paid).append("\n");
-                    }
-
-                    // IF SPOT FEE (Head was not in Fixed Table), Add Virtual Demand
-                    if (!data.existingFixedHeads.contains(head)) {
-                        data.acadFixed += virtualDemand;
-                        data.acadFixedDetails.append(head).append(": ").append(virtualDemand).append("\n");
-                        data.existingFixedHeads.add(head); // Prevent double counting
-                    }
+                    data.acadFixed += amt;
+                    data.acadFixedDetails.append(head).append(": ").append(amt).append("\n");
                 }
-            }, schoolId, academicYear);
-        } catch (Exception e) {}
+            }
+        }
+
+        for (Map<String, Object> row : individualRows) {
+            StudentData data = studentMap.get((String) row.get("admission_number"));
+            if (data != null) {
+                double amt = toDouble(row.get("amount"));
+                String head = (String) row.get("fee_head");
+
+                // TRACKING: This head has a real fixed amount
+                data.existingFixedHeads.add(head);
+
+                data.acadFixed += amt;
+                data.acadFixedDetails.append(head).append(": ").append(amt).append("\n");
+            }
+        }
+    }
+
+    private void applyCollections(List<Map<String, Object>> collectionRows, Map<String, StudentData> studentMap,
+                                  FeeHeadTaxonomy feeHeads) {
+        for (Map<String, Object> row : collectionRows) {
+            String admNo = (String) row.get("admission_number");
+            String head = (String) row.get("fee_head");
+            Double paid = toDouble(row.get("paid"));
+            Double conc = toDouble(row.get("conc"));
+            String narr = (String) row.get("narr");
+
+            StudentData data = studentMap.get(admNo);
+            if (data == null) continue;
+
+            if (narr != null && !narr.isEmpty()) data.narrative = narr;
+
+            // 2. Calculate Virtual Fixed Amount (Spot Fee Logic)
+            double virtualDemand = paid + conc;
+
+            boolean isTransport = feeHeads.isTransport(head);
+
+            // 3. Process Payments & Apply Virtual Fixed if needed
+            if (isTransport) {
+                // Update Transport Concession
+                if (conc > 0) {
+                    data.transConc += conc;
+                    data.concessionDetails.append(head).append(": ").append(conc).append("\n");
+                }
+
+                if (paid > 0) {
+                    data.transPaid += paid;
+                    data.transPaidDetails.append(head).append(": ").append(paid).append("\n");
+                }
+
+                // IF SPOT FEE (Head was not in Fixed Table), Add Virtual Demand
+                if (!data.existingFixedHeads.contains(head)) {
+                    data.transFixed += virtualDemand;
+                    data.transFixedDetails.append(head).append(": ").append(virtualDemand).append("\n");
+                    data.existingFixedHeads.add(head); // Prevent double counting
+                }
+
+            } else {
+                // Update Academic Concession
+                if (conc > 0) {
+                    data.acadConc += conc;
+                    data.concessionDetails.append(head).append(": ").append(conc).append("\n");
+                }
+
+                if (paid > 0) {
+                    data.acadPaid += paid;
+                    data.acadPaidDetails.append(head).append(": ").append(paid).append("\n");
+                }
+
+                // IF SPOT FEE (Head was not in Fixed Table), Add Virtual Demand
+                if (!data.existingFixedHeads.contains(head)) {
+                    data.acadFixed += virtualDemand;
+                    data.acadFixedDetails.append(head).append(": ").append(virtualDemand).append("\n");
+                    data.existingFixedHeads.add(head); // Prevent double counting
+                }
+            }
+        }
+    }
+
+    private double toDouble(Object value) {
+        return value instanceof Number number ? number.doubleValue() : 0.0;
     }
 
     private String buildInClause(List<String> heads) {
@@ -310,10 +309,7 @@ public class BalanceList4Service {
     }
 
     private boolean tableExists(JdbcTemplate jdbc, String tableName) {
-        try {
-            Integer count = jdbc.queryForObject("SELECT COUNT(*) FROM information_schema.tables WHERE table_schema = DATABASE() AND table_name = ?", Integer.class, tableName);
-            return count != null && count > 0;
-        } catch (Exception e) { return false; }
+        return tableCatalog.tableExists(jdbc, tableName);
     }
 
     private static class StudentData {
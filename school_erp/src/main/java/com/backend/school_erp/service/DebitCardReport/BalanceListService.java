@@ -2,194 +2,137 @@ package com.backend.school_erp.service.DebitCardReport;
 
 import com.backend.school_erp.DTO.DebitCardReport.BalanceList2DTO;
 import com.backend.school_erp.DTO.DebitCardReport.BalanceListDTO;
-import com.backend.school_erp.config.DatabaseConfig;
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantTableCatalog;
+import com.backend.school_erp.service.Administration.FeeHeadRegistry;
+import com.backend.school_erp.service.Administration.FeeHeadTaxonomy;
+import com.backend.school_erp.service.Export.ExportWriter;
+import com.backend.school_erp.service.Export.ReportExportService;
+import com.backend.school_erp.service.Transaction.FeeBalanceService;
+import com.backend.school_erp.service.Transaction.FeeDemandService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ColumnMapRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
 
-import javax.sql.DataSource;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 @Service
+@Slf4j
 public class BalanceListService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private TenantTableCatalog tableCatalog;
+
+    @Autowired
+    private FeeDemandService feeDemandService;
+
+    @Autowired
+    private FeeBalanceService feeBalanceService;
+
+    @Autowired
+    private ReportQueryExecutor reportQueryExecutor;
+
+    @Autowired
+    private ReportExportService reportExportService;
+
+    @Autowired
+    private ReportResultCache reportResultCache;
+
+    @Autowired
+    private FeeHeadRegistry feeHeadRegistry;
+
+    private static final List<String> BALANCE_LIST_2_COLUMNS = List.of(
+            "Admission No", "Student Name", "Father Name", "Class", "Boarding Point",
+            "Academic Fixed", "Academic Paid", "Academic Balance",
+            "Transport Fixed", "Transport Paid", "Transport Balance", "Concession",
+            "Total Fixed", "Actual Paid", "Total Paid", "Total Balance", "Narrative");
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        DataSource ds = dataSourceCache.computeIfAbsent(schoolId, id -> {
-            HikariConfig config = new HikariConfig();
-
-            // 2. Use AWS DB Constants from DatabaseConfig
-            // Appends the schoolId as the specific database name
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName(DatabaseConfig.JDBC_DRIVER);
-
-            // Pool performance settings for complex report generation
-            config.setMaximumPoolSize(10);
-            config.setMinimumIdle(2);
-            config.setIdleTimeout(30000);
-            config.setMaxLifetime(1800000);
-            config.setConnectionTimeout(10000);
-
-            return new HikariDataSource(config);
-        });
-        return new JdbcTemplate(ds);
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
-    // Helper: Get distinct fee headings from a table
-    private Set<String> getDistinctFeeHeads(JdbcTemplate jdbc, String tableName) {
-        Set<String> heads = new HashSet<>();
-        if (tableExists(jdbc, tableName)) {
-            try {
-                jdbc.query("SELECT DISTINCT fee_heading FROM " + tableName, rs -> {
-                    heads.add(rs.getString("fee_heading"));
-                });
-            } catch (Exception e) {
-                // ignore
-            }
-        }
-        return heads;
+    // Helper: Fee head filter as a list for the demand queries
+    private List<String> headFilter(String feeHeadFilter) {
+        return feeHeadFilter != null && !feeHeadFilter.isEmpty() ? List.of(feeHeadFilter) : null;
     }
 
     // New Method: Fetch Distinct Fee Heads for Dropdown
     public List<String> getFeeHeads(String schoolId, String academicYear) {
-        JdbcTemplate jdbc = getJdbcTemplate(schoolId);
-        String safeYear = academicYear.replaceAll("[^a-zA-Z0-9]", "_");
-        Set<String> heads = new HashSet<>();
-
-        heads.addAll(getDistinctFeeHeads(jdbc, "tuition_fees_" + safeYear));
-        heads.addAll(getDistinctFeeHeads(jdbc, "hostel_fees_" + safeYear));
-        heads.addAll(getDistinctFeeHeads(jdbc, "transport_fees_" + safeYear));
-
-        List<String> sortedHeads = new ArrayList<>(heads);
-        Collections.sort(sortedHeads);
-        return sortedHeads;
+        return new ArrayList<>(feeHeadRegistry.forYear(schoolId, academicYear).billedHeads());
     }
 
     // --- REPORT 1: SUMMARY (Class Wise) ---
     public List<BalanceListDTO> generateBalanceList1(String schoolId, String academicYear, String feeHeadFilter) {
+        return reportResultCache.get(schoolId, academicYear, "balance-list-1", feeHeadFilter,
+                () -> buildBalanceList1(schoolId, academicYear, feeHeadFilter));
+    }
+
+    private List<BalanceListDTO> buildBalanceList1(String schoolId, String academicYear, String feeHeadFilter) {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
-        String safeYear = academicYear.replaceAll("[^a-zA-Z0-9]", "_");
 
         Map<String, BalanceListDTO> reportMap = new HashMap<>();
 
-        // 1. ACADEMIC Demand (Tuition + Hostel)
-        String[] acadTables = {"tuition_fees_" + safeYear, "hostel_fees_" + safeYear};
-        for (String table : acadTables) {
-            if (tableExists(jdbc, table)) {
-                try {
-                    String sql = "SELECT standard, section, SUM(amount) as total FROM " + table;
-                    List<Object> params = new ArrayList<>();
-
-                    if (feeHeadFilter != null && !feeHeadFilter.isEmpty()) {
-                        sql += " WHERE fee_heading = ?";
-                        params.add(feeHeadFilter);
-                    }
-
-                    sql += " GROUP BY standard, section";
-
-                    jdbc.query(sql, rs -> {
-                        String key = rs.getString("standard") + "-" + rs.getString("section");
-                        BalanceListDTO dto = reportMap.getOrDefault(key, new BalanceListDTO(
-                                rs.getString("standard"), rs.getString("section"), 0.0,0.0,0.0,0.0,0.0,0.0,0.0,0.0,0.0,0.0,0.0
-                        ));
-                        dto.setAcademicFixed(dto.getAcademicFixed() + rs.getDouble("total"));
-                        reportMap.put(key, dto);
-                    }, params.toArray());
-                } catch (Exception e) {}
-            }
+        // Demand, fee head categories and payments are independent, fetch them side by side
+        List<Map<String, Object>> classDemand;
+        FeeHeadTaxonomy feeHeads;
+        List<Map<String, Object>> balances;
+        try (ReportQueryExecutor.Scope scope = reportQueryExecutor.open()) {
+            Supplier<List<Map<String, Object>>> demandQuery = scope.fork(() -> feeDemandService.getClassDemand(jdbc, academicYear, headFilter(feeHeadFilter)));
+            Supplier<FeeHeadTaxonomy> headsQuery = scope.fork(() -> feeHeadRegistry.forYear(schoolId, academicYear));
+            Supplier<List<Map<String, Object>>> balanceQuery = scope.fork(() -> feeBalanceService.getYearBalances(jdbc, academicYear, FeeBalanceService.DAILY, feeHeadFilter));
+            scope.join();
+            classDemand = demandQuery.get();
+            feeHeads = headsQuery.get();
+            balances = balanceQuery.get();
         }
 
-        // 2. TRANSPORT Demand
-        String[] transTables = {"transport_fees_" + safeYear};
-        for (String table : transTables) {
-            if (tableExists(jdbc, table)) {
-                try {
-                    String sql = "SELECT standard, section, SUM(amount) as total FROM " + table;
-                    List<Object> params = new ArrayList<>();
-
-                    if (feeHeadFilter != null && !feeHeadFilter.isEmpty()) {
-                        sql += " WHERE fee_heading = ?";
-                        params.add(feeHeadFilter);
-                    }
-
-                    sql += " GROUP BY standard, section";
-
-                    jdbc.query(sql, rs -> {
-                        String key = rs.getString("standard") + "-" + rs.getString("section");
-                        BalanceListDTO dto = reportMap.getOrDefault(key, new BalanceListDTO(
-                                rs.getString("standard"), rs.getString("section"), 0.0,0.0,0.0,0.0,0.0,0.0,0.0,0.0,0.0,0.0,0.0
-                        ));
-                        dto.setTransportFixed(dto.getTransportFixed() + rs.getDouble("total"));
-                        reportMap.put(key, dto);
-                    }, params.toArray());
-                } catch (Exception e) {}
+        // 1. Demand per class: ACADEMIC (Tuition + Hostel) and TRANSPORT
+        for (Map<String, Object> row : classDemand) {
+            String standard = (String) row.get("standard");
+            String section = (String) row.get("section");
+            double total = ((Number) row.get("total")).doubleValue();
+            String key = standard + "-" + section;
+            BalanceListDTO dto = reportMap.getOrDefault(key, new BalanceListDTO(
+                    standard, section, 0.0,0.0,0.0,0.0,0.0,0.0,0.0,0.0,0.0,0.0,0.0
+            ));
+            if (FeeDemandService.isTransport((String) row.get("fee_type"))) {
+                dto.setTransportFixed(dto.getTransportFixed() + total);
+            } else {
+                dto.setAcademicFixed(dto.getAcademicFixed() + total);
             }
+            reportMap.put(key, dto);
         }
 
-        // 3. PAYMENTS
-        StringBuilder paymentSql = new StringBuilder("""
-            SELECT 
-                standard, 
-                section,
-                fee_head,
-                SUM(paid_amount) as paid_amt,
-                SUM(concession_amount) as concession_amt
-            FROM daily_fee_collection 
-            WHERE school_id = ? AND academic_year = ?
-        """);
-
-        List<Object> params = new ArrayList<>();
-        params.add(schoolId);
-        params.add(academicYear);
-
-        if (feeHeadFilter != null && !feeHeadFilter.isEmpty()) {
-            paymentSql.append(" AND fee_head = ?");
-            params.add(feeHeadFilter);
-        }
-
-        paymentSql.append(" GROUP BY standard, section, fee_head");
-
-        // Helper sets to categorize if not filtered
-        Set<String> academicFeeHeads = new HashSet<>();
-        academicFeeHeads.addAll(getDistinctFeeHeads(jdbc, "tuition_fees_" + safeYear));
-        academicFeeHeads.addAll(getDistinctFeeHeads(jdbc, "hostel_fees_" + safeYear));
-
-        Set<String> transportFeeHeads = new HashSet<>();
-        transportFeeHeads.addAll(getDistinctFeeHeads(jdbc, "transport_fees_" + safeYear));
-
-        jdbc.query(paymentSql.toString(), rs -> {
-            String std = rs.getString("standard");
-            String sec = rs.getString("section");
-            String feeHead = rs.getString("fee_head");
-            Double paid = rs.getDouble("paid_amt");
-            Double conc = rs.getDouble("concession_amt");
+        // 2. PAYMENTS (running totals from the balance ledger)
+        for (Map<String, Object> row : balances) {
+            String std = (String) row.get("standard");
+            String sec = (String) row.get("section");
+            String feeHead = (String) row.get("fee_head");
+            Double paid = ((Number) row.get("paid")).doubleValue();
+            Double conc = ((Number) row.get("concession")).doubleValue();
+            if (paid == 0 && conc == 0) continue;
 
             String key = std + "-" + sec;
             BalanceListDTO dto = reportMap.getOrDefault(key, new BalanceListDTO(
                     std, sec, 0.0,0.0,0.0,0.0,0.0,0.0,0.0,0.0,0.0,0.0,0.0
             ));
 
-            if (academicFeeHeads.contains(feeHead)) {
-                dto.setAcademicPaid(dto.getAcademicPaid() + paid);
-            } else if (transportFeeHeads.contains(feeHead)) {
+            if (feeHeads.isTransport(feeHead)) {
                 dto.setTransportPaid(dto.getTransportPaid() + paid);
             } else {
-                if (feeHead.toLowerCase().contains("transport")) {
-                    dto.setTransportPaid(dto.getTransportPaid() + paid);
-                } else {
-                    dto.setAcademicPaid(dto.getAcademicPaid() + paid);
-                }
+                dto.setAcademicPaid(dto.getAcademicPaid() + paid);
             }
 
             dto.setConcession(dto.getConcession() + conc);
             reportMap.put(key, dto);
-        }, params.toArray());
+        }
 
         // Summarize
         List<BalanceListDTO> finalReport = new ArrayList<>(reportMap.values());
@@ -213,6 +156,11 @@ public class BalanceListService {
 
     // --- REPORT 2: DETAILED (Student Wise) ---
     public List<BalanceList2DTO> generateBalanceList2(String schoolId, String academicYear, String feeHeadFilter) {
+        return reportResultCache.get(schoolId, academicYear, "balance-list-2", feeHeadFilter,
+                () -> buildBalanceList2(schoolId, academicYear, feeHeadFilter));
+    }
+
+    private List<BalanceList2DTO> buildBalanceList2(String schoolId, String academicYear, String feeHeadFilter) {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
         String safeYear = academicYear.replaceAll("[^a-zA-Z0-9]", "_");
 
@@ -221,196 +169,160 @@ public class BalanceListService {
         String studentTable = "admissions_" + safeYear;
         if (!tableExists(jdbc, studentTable)) return reportList;
 
-        String studentSql = "SELECT admission_no as admission_number, student_name, father_name, standard, section, boarding_point FROM " + studentTable + " ORDER BY standard, section, student_name";
+        String studentSql = balanceList2StudentSql(jdbc, studentTable);
+
+        // Students, demand, fee head categories and payments are independent, fetch them side by side
         List<Map<String, Object>> students;
-        try {
-            students = jdbc.queryForList(studentSql);
-        } catch (Exception e) {
-            // Fallback
-            students = jdbc.queryForList("SELECT admission_number, student_name, father_name, standard, section, boarding_point FROM " + studentTable + " ORDER BY standard, section, student_name");
+        BalanceList2Totals totals;
+        try (ReportQueryExecutor.Scope scope = reportQueryExecutor.open()) {
+            Supplier<List<Map<String, Object>>> studentQuery = scope.fork(() -> jdbc.queryForList(studentSql));
+            Supplier<BalanceList2Totals> totalsQuery = forkBalanceList2Totals(scope, jdbc, schoolId, academicYear, feeHeadFilter);
+            scope.join();
+            students = studentQuery.get();
+            totals = totalsQuery.get();
         }
 
-        // Fetch Demands with Filter
-        Map<String, Double> academicDemandMap = new HashMap<>();
-        Map<String, Double> transportDemandMap = new HashMap<>();
-
-        String[] acadTables = {"tuition_fees_" + safeYear, "hostel_fees_" + safeYear};
-        for (String table : acadTables) {
-            if (tableExists(jdbc, table)) {
-                try {
-                    String sql = "SELECT admission_number, SUM(amount) as total FROM " + table;
-                    List<Object> params = new ArrayList<>();
-                    if (feeHeadFilter != null && !feeHeadFilter.isEmpty()) {
-                        sql += " WHERE fee_heading = ?";
-                        params.add(feeHeadFilter);
-                    }
-                    sql += " GROUP BY admission_number";
-
-                    jdbc.query(sql, rs -> {
-                        academicDemandMap.merge(rs.getString("admission_number"), rs.getDouble("total"), Double::sum);
-                    }, params.toArray());
-                } catch (Exception e) {
-                    // Try fallback column name
-                    try {
-                        String sql = "SELECT admission_no, SUM(amount) as total FROM " + table;
-                        List<Object> params = new ArrayList<>();
-                        if (feeHeadFilter != null && !feeHeadFilter.isEmpty()) {
-                            sql += " WHERE fee_heading = ?";
-                            params.add(feeHeadFilter);
-                        }
-                        sql += " GROUP BY admission_no";
-                        jdbc.query(sql, rs -> {
-                            academicDemandMap.merge(rs.getString("admission_no"), rs.getDouble("total"), Double::sum);
-                        }, params.toArray());
-                    } catch(Exception ex) {}
-                }
+        for (Map<String, Object> s : students) {
+            BalanceList2DTO dto = toBalanceList2Row(s, totals, feeHeadFilter);
+            if (dto != null) {
+                reportList.add(dto);
             }
         }
 
-        String[] transTables = {"transport_fees_" + safeYear};
-        for (String table : transTables) {
-            if (tableExists(jdbc, table)) {
-                try {
-                    String sql = "SELECT admission_number, SUM(amount) as total FROM " + table;
-                    List<Object> params = new ArrayList<>();
-                    if (feeHeadFilter != null && !feeHeadFilter.isEmpty()) {
-                        sql += " WHERE fee_heading = ?";
-                        params.add(feeHeadFilter);
-                    }
-                    sql += " GROUP BY admission_number";
-                    jdbc.query(sql, rs -> {
-                        transportDemandMap.merge(rs.getString("admission_number"), rs.getDouble("total"), Double::sum);
-                    }, params.toArray());
-                } catch (Exception e) {
-                    try {
-                        String sql = "SELECT admission_no, SUM(amount) as total FROM " + table;
-                        List<Object> params = new ArrayList<>();
-                        if (feeHeadFilter != null && !feeHeadFilter.isEmpty()) {
-                            sql += " WHERE fee_heading = ?";
-                            params.add(feeHeadFilter);
-                        }
-                        sql += " GROUP BY admission_no";
-                        jdbc.query(sql, rs -> {
-                            transportDemandMap.merge(rs.getString("admission_no"), rs.getDouble("total"), Double::sum);
-                        }, params.toArray());
-                    } catch(Exception ex) {}
-                }
-            }
-        }
+        return reportList;
+    }
 
-        // Fetch Payments with Filter
-        StringBuilder paymentSql = new StringBuilder("""
-            SELECT 
-                admission_number, 
-                fee_head,
-                SUM(paid_amount) as paid, 
-                SUM(concession_amount) as conc,
-                MAX(transaction_narrative) as narrative
-            FROM daily_fee_collection 
-            WHERE school_id = ? AND academic_year = ?
-        """);
-
-        List<Object> params = new ArrayList<>();
-        params.add(schoolId);
-        params.add(academicYear);
+    /**
+     * Balance List 2 as an export file. Demand and payment totals are loaded first, then the
+     * students are streamed from the cursor and written one row at a time.
+     */
+    public void exportBalanceList2(String schoolId, String academicYear, String feeHeadFilter, ExportWriter writer) {
+        JdbcTemplate jdbc = getJdbcTemplate(schoolId);
+        String safeYear = academicYear.replaceAll("[^a-zA-Z0-9]", "_");
 
-        if (feeHeadFilter != null && !feeHeadFilter.isEmpty()) {
-            paymentSql.append(" AND fee_head = ?");
-            params.add(feeHeadFilter);
+        writer.writeHeader(BALANCE_LIST_2_COLUMNS);
+
+        String studentTable = "admissions_" + safeYear;
+        if (!tableExists(jdbc, studentTable)) return;
+
+        String studentSql = balanceList2StudentSql(jdbc, studentTable);
+
+        BalanceList2Totals totals;
+        try (ReportQueryExecutor.Scope scope = reportQueryExecutor.open()) {
+            Supplier<BalanceList2Totals> totalsQuery = forkBalanceList2Totals(scope, jdbc, schoolId, academicYear, feeHeadFilter);
+            scope.join();
+            totals = totalsQuery.get();
         }
 
-        paymentSql.append(" GROUP BY admission_number, fee_head");
+        ColumnMapRowMapper studentMapper = new ColumnMapRowMapper();
+        reportExportService.streamRows(schoolId, studentSql, rs -> {
+            BalanceList2DTO dto = toBalanceList2Row(studentMapper.mapRow(rs, 0), totals, feeHeadFilter);
+            if (dto != null) {
+                writer.writeRow(dto.getAdmissionNumber(), dto.getStudentName(), dto.getFatherName(), dto.getGrade(),
+                        dto.getBoardingPoint(), dto.getAcademicFixed(), dto.getAcademicPaid(), dto.getAcademicBalance(),
+                        dto.getTransportFixed(), dto.getTransportPaid(), dto.getTransportBalance(), dto.getConcession(),
+                        dto.getTotalFixed(), dto.getActualPaid(), dto.getTotalPaid(), dto.getTotalBalance(), dto.getNarrative());
+            }
+        });
+    }
 
-        Map<String, PaymentData> paymentMap = new HashMap<>();
+    private String balanceList2StudentSql(JdbcTemplate jdbc, String studentTable) {
+        String studentAdmissionColumn = tableCatalog.resolveColumn(jdbc, studentTable, "admission_no", "admission_number");
+        return "SELECT " + studentAdmissionColumn + " as admission_number, student_name, father_name, standard, section, boarding_point FROM " + studentTable + " ORDER BY standard, section, student_name";
+    }
+
+    // Demand, fee head categories and payments of the year, forked on the caller's scope
+    private Supplier<BalanceList2Totals> forkBalanceList2Totals(ReportQueryExecutor.Scope scope, JdbcTemplate jdbc, String schoolId, String academicYear, String feeHeadFilter) {
+        Supplier<List<Map<String, Object>>> demandQuery = scope.fork(() -> feeDemandService.getYearDemand(jdbc, academicYear, headFilter(feeHeadFilter)));
+        Supplier<FeeHeadTaxonomy> headsQuery = scope.fork(() -> feeHeadRegistry.forYear(schoolId, academicYear));
+        Supplier<List<Map<String, Object>>> balanceQuery = scope.fork(() -> feeBalanceService.getYearBalances(jdbc, academicYear, FeeBalanceService.DAILY, feeHeadFilter));
+        return () -> balanceList2Totals(demandQuery.get(), headsQuery.get(), balanceQuery.get());
+    }
 
-        Set<String> academicFeeHeads = new HashSet<>();
-        academicFeeHeads.addAll(getDistinctFeeHeads(jdbc, "tuition_fees_" + safeYear));
-        academicFeeHeads.addAll(getDistinctFeeHeads(jdbc, "hostel_fees_" + safeYear));
-        Set<String> transportFeeHeads = new HashSet<>();
-        transportFeeHeads.addAll(getDistinctFeeHeads(jdbc, "transport_fees_" + safeYear));
+    private BalanceList2Totals balanceList2Totals(List<Map<String, Object>> yearDemand, FeeHeadTaxonomy feeHeads, List<Map<String, Object>> balances) {
+        // Fetch Demands with Filter
+        Map<String, Double> academicDemandMap = new HashMap<>();
+        Map<String, Double> transportDemandMap = new HashMap<>();
 
-        jdbc.query(paymentSql.toString(), rs -> {
-            String admNo = rs.getString("admission_number");
-            String feeHead = rs.getString("fee_head");
-            Double paid = rs.getDouble("paid");
-            Double conc = rs.getDouble("conc");
-            String narr = rs.getString("narrative");
+        for (Map<String, Object> row : yearDemand) {
+            Map<String, Double> demandMap = FeeDemandService.isTransport((String) row.get("fee_type"))
+                    ? transportDemandMap : academicDemandMap;
+            demandMap.merge((String) row.get("admission_number"), ((Number) row.get("amount")).doubleValue(), Double::sum);
+        }
+
+        // Fetch Payments with Filter (running totals from the balance ledger)
+        Map<String, PaymentData> paymentMap = new HashMap<>();
+
+        for (Map<String, Object> row : balances) {
+            String admNo = (String) row.get("admission_number");
+            String feeHead = (String) row.get("fee_head");
+            Double paid = ((Number) row.get("paid")).doubleValue();
+            Double conc = ((Number) row.get("concession")).doubleValue();
+            String narr = (String) row.get("last_narrative");
 
             PaymentData data = paymentMap.getOrDefault(admNo, new PaymentData());
 
-            if (academicFeeHeads.contains(feeHead)) {
-                data.acadPaid += paid;
-            } else if (transportFeeHeads.contains(feeHead)) {
+            if (feeHeads.isTransport(feeHead)) {
                 data.transPaid += paid;
             } else {
-                if (feeHead != null && feeHead.toLowerCase().contains("transport")) {
-                    data.transPaid += paid;
-                } else {
-                    data.acadPaid += paid;
-                }
+                data.acadPaid += paid;
             }
 
             data.totalConc += conc;
             if (narr != null && !narr.isEmpty()) data.narrative = narr;
 
             paymentMap.put(admNo, data);
-        }, params.toArray());
+        }
 
-        for (Map<String, Object> s : students) {
-            String admNo = (String) s.get("admission_number");
-
-            Double acadFix = academicDemandMap.getOrDefault(admNo, 0.0);
-            Double transFix = transportDemandMap.getOrDefault(admNo, 0.0);
-
-            // Important: Only add to report if there is demand OR payment (skip empty rows if filtered)
-            if (feeHeadFilter != null && !feeHeadFilter.isEmpty()) {
-                PaymentData pd = paymentMap.get(admNo);
-                boolean hasPayment = (pd != null && (pd.acadPaid > 0 || pd.transPaid > 0));
-                if (acadFix == 0 && transFix == 0 && !hasPayment) {
-                    continue;
-                }
-            }
+        return new BalanceList2Totals(academicDemandMap, transportDemandMap, paymentMap);
+    }
+
+    // One student's row, or null when a fee head filter leaves the student with nothing to show
+    private BalanceList2DTO toBalanceList2Row(Map<String, Object> s, BalanceList2Totals totals, String feeHeadFilter) {
+        String admNo = (String) s.get("admission_number");
 
-            PaymentData pData = paymentMap.getOrDefault(admNo, new PaymentData());
+        Double acadFix = totals.academicDemand().getOrDefault(admNo, 0.0);
+        Double transFix = totals.transportDemand().getOrDefault(admNo, 0.0);
 
-            BalanceList2DTO dto = new BalanceList2DTO();
-            dto.setAdmissionNumber(admNo);
-            dto.setStudentName((String) s.get("student_name"));
-            dto.setFatherName((String) s.get("father_name"));
-            dto.setGrade(s.get("standard") + " " + s.get("section"));
-            dto.setBoardingPoint((String) s.get("boarding_point"));
+        // Important: Only add to report if there is demand OR payment (skip empty rows if filtered)
+        if (feeHeadFilter != null && !feeHeadFilter.isEmpty()) {
+            PaymentData pd = totals.payments().get(admNo);
+            boolean hasPayment = (pd != null && (pd.acadPaid > 0 || pd.transPaid > 0));
+            if (acadFix == 0 && transFix == 0 && !hasPayment) {
+                return null;
+            }
+        }
 
-            dto.setAcademicFixed(acadFix);
-            dto.setAcademicPaid(pData.acadPaid);
-            dto.setAcademicBalance(Math.max(0, acadFix - pData.acadPaid));
+        PaymentData pData = totals.payments().getOrDefault(admNo, new PaymentData());
 
-            dto.setTransportFixed(transFix);
-            dto.setTransportPaid(pData.transPaid);
-            dto.setTransportBalance(Math.max(0, transFix - pData.transPaid));
+        BalanceList2DTO dto = new BalanceList2DTO();
+        dto.setAdmissionNumber(admNo);
+        dto.setStudentName((String) s.get("student_name"));
+        dto.setFatherName((String) s.get("father_name"));
+        dto.setGrade(s.get("standard") + " " + s.get("section"));
+        dto.setBoardingPoint((String) s.get("boarding_point"));
 
-            dto.setConcession(pData.totalConc);
-            dto.setNarrative(pData.narrative != null ? pData.narrative : "");
+        dto.setAcademicFixed(acadFix);
+        dto.setAcademicPaid(pData.acadPaid);
+        dto.setAcademicBalance(Math.max(0, acadFix - pData.acadPaid));
 
-            dto.setTotalFixed(acadFix + transFix);
-            dto.setActualPaid(pData.acadPaid + pData.transPaid);
-            dto.setTotalPaid(dto.getActualPaid() + dto.getConcession());
-            dto.setTotalBalance(Math.max(0, dto.getTotalFixed() - dto.getTotalPaid()));
+        dto.setTransportFixed(transFix);
+        dto.setTransportPaid(pData.transPaid);
+        dto.setTransportBalance(Math.max(0, transFix - pData.transPaid));
 
-            reportList.add(dto);
-        }
+        dto.setConcession(pData.totalConc);
+        dto.setNarrative(pData.narrative != null ? pData.narrative : "");
 
-        return reportList;
+        dto.setTotalFixed(acadFix + transFix);
+        dto.setActualPaid(pData.acadPaid + pData.transPaid);
+        dto.setTotalPaid(dto.getActualPaid() + dto.getConcession());
+        dto.setTotalBalance(Math.max(0, dto.getTotalFixed() - dto.getTotalPaid()));
+
+        return dto;
     }
 
     private boolean tableExists(JdbcTemplate jdbc, String tableName) {
-        try {
-            Integer count = jdbc.queryForObject(
-                    "SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?",
-                    Integer.class, tableName);
-            return count != null && count > 0;
-        } catch (Exception e) {
-            return false;
-        }
+        return tableCatalog.tableExists(jdbc, tableName);
     }
 
     private static class PaymentData {
@@ -419,4 +331,8 @@ public class BalanceListService {
         double totalConc = 0;
         String narrative = "";
     }
+
+    private record BalanceList2Totals(Map<String, Double> academicDemand, Map<String, Double> transportDemand,
+                                      Map<String, PaymentData> payments) {
+    }
 }
\ No newline at end of file
@@ -1,56 +1,44 @@
 package com.backend.school_erp.service.DebitCardReport;
 
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantTableCatalog;
 import com.backend.school_erp.DTO.DebitCardReport.ConsolidatedStrengthDTO;
 import com.backend.school_erp.config.DatabaseConfig; // 1. Import your AWS Config
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import javax.sql.DataSource;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @Slf4j
 public class ConsolidatedStrengthService {
 
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private TenantTableCatalog tableCatalog;
+
+    @Autowired
+    private ReportResultCache reportResultCache;
+
     // Cache for multi-tenant data sources
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
-
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            log.info("Initializing AWS RDS connection pool for school: {}", id);
-
-            HikariConfig config = new HikariConfig();
-
-            // 2. Using AWS DB Constants from DatabaseConfig
-            // The URL is constructed by appending the schoolId to the base AWS URL
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName(DatabaseConfig.JDBC_DRIVER);
-
-            // Pool settings optimized for reporting
-            config.setMaximumPoolSize(5);
-            config.setMinimumIdle(2);
-            config.setIdleTimeout(30000);
-            config.setMaxLifetime(1800000);
-            config.setConnectionTimeout(10000);
-
-            return new HikariDataSource(config);
-        });
-    }
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     public List<ConsolidatedStrengthDTO> getConsolidatedStrength(String schoolId, String academicYear) {
+        return reportResultCache.get(schoolId, academicYear, "consolidated-strength", null,
+                () -> buildConsolidatedStrength(schoolId, academicYear));
+    }
+
+    private List<ConsolidatedStrengthDTO> buildConsolidatedStrength(String schoolId, String academicYear) {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
         String safeYear = academicYear.replaceAll("[^a-zA-Z0-9]", "_");
 
@@ -132,13 +120,6 @@ public class ConsolidatedStrengthService {
     }
 
     private boolean tableExists(JdbcTemplate jdbc, String tableName) {
-        try {
-            Integer count = jdbc.queryForObject(
-                    "SELECT COUNT(*) FROM information_schema.tables WHERE table_schema = DATABASE() AND table_name = ?",
-                    Integer.class, tableName);
-            return count != null && count > 0;
-        } catch (Exception e) {
-            return false;
-        }
+        return tableCatalog.tableExists(jdbc, tableName);
     }
 }
\ No newline at end of file
@@ -1,74 +1,52 @@
 package com.backend.school_erp.service.DebitCardReport;
 
 import com.backend.school_erp.DTO.DebitCardReport.LedgerReportDTO;
-import com.backend.school_erp.config.DatabaseConfig;
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.service.Transaction.DayBookBalanceService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import javax.sql.DataSource;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class DebitCardReportService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
+    private final TenantDataSourceRouter tenantDataSourceRouter;
+    private final DayBookBalanceService dayBookBalanceService;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        DataSource ds = dataSourceCache.computeIfAbsent(schoolId, id -> {
-            HikariConfig config = new HikariConfig();
-
-            // 2. Use AWS DB Constants from DatabaseConfig
-            // Appends the schoolId as the specific database name
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName(DatabaseConfig.JDBC_DRIVER);
-
-            // Pool performance settings for complex report generation
-            config.setMaximumPoolSize(10);
-            config.setMinimumIdle(2);
-            config.setIdleTimeout(30000);
-            config.setMaxLifetime(1800000);
-            config.setConnectionTimeout(10000);
-
-            return new HikariDataSource(config);
-        });
-        return new JdbcTemplate(ds);
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     private String getTableName(String type) {
-        return "MISC".equalsIgnoreCase(type) ? "day_book_mfc" : "day_book";
+        return "MISC".equalsIgnoreCase(type) ? DayBookBalanceService.MISC_DAY_BOOK : DayBookBalanceService.DAY_BOOK;
     }
 
     // Original Logic for Day Ledger
-    public List<LedgerReportDTO> getDayLedger(String schoolId, String date, String academicYear, String type) {
+    public List<LedgerReportDTO> getDayLedger(String schoolId, LocalDate day, String academicYear, String type) {
         String tableName = getTableName(type);
         JdbcTemplate jdbcTemplate = getJdbcTemplate(schoolId);
 
         // FILTER OPENING BALANCE ALSO BY ACADEMIC YEAR (Isolate calculations per year)
-        String openingSql = String.format("SELECT SUM(credit) - SUM(debit) FROM %s WHERE school_id = ? AND academic_year = ? AND DATE(br_date) < ?", tableName);
-        Double openingBalanceVal = jdbcTemplate.queryForObject(openingSql, Double.class, schoolId, academicYear, date);
-        if (openingBalanceVal == null) openingBalanceVal = 0.0;
+        // Closing of the previous day from the daily snapshots instead of summing the whole book
+        Double openingBalanceVal = dayBookBalanceService.openingBalance(jdbcTemplate, tableName, schoolId, academicYear, day);
 
         String sql = String.format("""
             SELECT id, br_number as brNumber, admission_number as admissionNumber, name, 
                    br_date as date, description, ledger, credit, debit, mode, operator_name as operatorName
             FROM %s 
-            WHERE school_id = ? AND academic_year = ? AND DATE(br_date) = ?
+            WHERE school_id = ? AND academic_year = ? AND br_date >= ? AND br_date < ?
             ORDER BY br_date ASC
         """, tableName);
 
-        List<LedgerReportDTO> rawTransactions = jdbcTemplate.query(sql, new BeanPropertyRowMapper<>(LedgerReportDTO.class), schoolId, academicYear, date);
+        List<LedgerReportDTO> rawTransactions = jdbcTemplate.query(sql, new BeanPropertyRowMapper<>(LedgerReportDTO.class), schoolId, academicYear, day, day.plusDays(1));
 
         List<LedgerReportDTO> bankGroup = new ArrayList<>();
         List<LedgerReportDTO> cashGroup = new ArrayList<>();
@@ -123,14 +101,13 @@ public class DebitCardReportService {
         return finalReport;
     }
 
-    public List<LedgerReportDTO> getPeriodLedger(String schoolId, String from, String to, String head, String academicYear, String type) {
+    public List<LedgerReportDTO> getPeriodLedger(String schoolId, LocalDate fromDate, LocalDate toDate, String head, String academicYear, String type) {
         String tableName = getTableName(type);
         JdbcTemplate jdbcTemplate = getJdbcTemplate(schoolId);
         List<LedgerReportDTO> finalReport = new ArrayList<>();
 
-        String openingSql = String.format("SELECT SUM(credit) - SUM(debit) FROM %s WHERE school_id = ? AND academic_year = ? AND DATE(br_date) < ?", tableName);
-        Double openingBalanceVal = jdbcTemplate.queryForObject(openingSql, Double.class, schoolId, academicYear, from);
-        if (openingBalanceVal == null) openingBalanceVal = 0.0;
+
+        Double openingBalanceVal = dayBookBalanceService.openingBalance(jdbcTemplate, tableName, schoolId, academicYear, fromDate);
 
         LedgerReportDTO openingRow = new LedgerReportDTO();
         openingRow.setLedger("Opening Balance");
@@ -148,14 +125,14 @@ public class DebitCardReportService {
             SELECT id, br_number as brNumber, admission_number as admissionNumber, name, 
                    br_date as date, description, ledger, credit, debit, mode, operator_name as operatorName
             FROM %s 
-            WHERE school_id = ? AND academic_year = ? AND DATE(br_date) BETWEEN ? AND ?
+            WHERE school_id = ? AND academic_year = ? AND br_date >= ? AND br_date < ?
         """, tableName));
 
         List<Object> params = new ArrayList<>();
         params.add(schoolId);
         params.add(academicYear); // Added academicYear param
-        params.add(from);
-        params.add(to);
+        params.add(fromDate);
+        params.add(toDate.plusDays(1));
 
         if (head != null && !head.isEmpty()) {
             sql.append(" AND ledger = ?");
@@ -171,24 +148,16 @@ public class DebitCardReportService {
     }
 
     // *** UPGRADED BANK LEDGER: Includes Opening Balance & Chronological Sort ***
-    public List<LedgerReportDTO> getBankLedger(String schoolId, String from, String to, String head, String academicYear, String type) {
+    public List<LedgerReportDTO> getBankLedger(String schoolId, LocalDate fromDate, LocalDate toDate, String head, String academicYear, String type) {
         String tableName = getTableName(type);
         JdbcTemplate jdbcTemplate = getJdbcTemplate(schoolId);
         List<LedgerReportDTO> finalReport = new ArrayList<>();
 
+
         // 1. Calculate Bank Opening Balance (Credit - Debit for all Non-Cash modes prior to 'from' date)
         // Note: For Assets, usually Debit - Credit, but your system uses Credit for Receipts.
         // We will stick to your system's convention: (Receipts - Payments)
-        String openingSql = String.format("""
-            SELECT SUM(credit) - SUM(debit) 
-            FROM %s 
-            WHERE school_id = ? AND academic_year = ? 
-            AND DATE(br_date) < ?
-            AND LOWER(mode) NOT IN ('cash')
-        """, tableName);
-
-        Double openingBalanceVal = jdbcTemplate.queryForObject(openingSql, Double.class, schoolId, academicYear, from);
-        if (openingBalanceVal == null) openingBalanceVal = 0.0;
+        Double openingBalanceVal = dayBookBalanceService.bankOpeningBalance(jdbcTemplate, tableName, schoolId, academicYear, fromDate);
 
         // 2. Add Opening Row
         LedgerReportDTO openingRow = new LedgerReportDTO();
@@ -205,15 +174,15 @@ public class DebitCardReportService {
             SELECT id, br_number as brNumber, admission_number as admissionNumber, name, 
                    br_date as date, description, ledger, credit, debit, mode, operator_name as operatorName
             FROM %s 
-            WHERE school_id = ? AND academic_year = ? AND DATE(br_date) BETWEEN ? AND ? 
+            WHERE school_id = ? AND academic_year = ? AND br_date >= ? AND br_date < ? 
             AND LOWER(mode) NOT IN ('cash')
         """, tableName));
 
         List<Object> params = new ArrayList<>();
         params.add(schoolId);
         params.add(academicYear); // Added academicYear param
-        params.add(from);
-        params.add(to);
+        params.add(fromDate);
+        params.add(toDate.plusDays(1));
 
         if (head != null && !head.isEmpty()) {
             sql.append(" AND ledger = ?");
@@ -229,21 +198,21 @@ public class DebitCardReportService {
         return finalReport;
     }
 
-    public List<LedgerReportDTO> getExpenses(String schoolId, String from, String to, String modeType, String academicYear, String type) {
+    public List<LedgerReportDTO> getExpenses(String schoolId, LocalDate fromDate, LocalDate toDate, String modeType, String academicYear, String type) {
         String tableName = getTableName(type);
         StringBuilder sql = new StringBuilder(String.format("""
             SELECT id, br_number as brNumber, admission_number as admissionNumber, name, 
                    br_date as date, description, ledger, credit, debit, mode, operator_name as operatorName
             FROM %s 
-            WHERE school_id = ? AND academic_year = ? AND DATE(br_date) BETWEEN ? AND ? 
+            WHERE school_id = ? AND academic_year = ? AND br_date >= ? AND br_date < ? 
             AND debit > 0
         """, tableName));
 
         List<Object> params = new ArrayList<>();
         params.add(schoolId);
         params.add(academicYear); // Added academicYear param
-        params.add(from);
-        params.add(to);
+        params.add(fromDate);
+        params.add(toDate.plusDays(1));
 
         if ("CASH".equalsIgnoreCase(modeType)) {
             sql.append(" AND LOWER(mode) = 'cash'");
@@ -1,64 +1,78 @@
 package com.backend.school_erp.service.DebitCardReport;
 
-import com.backend.school_erp.DTO.AdmissionMaster.StudentTCProfileDTO;
+import com.backend.school_erp.DTO.AdmissionMaster.StudentDuesDTO;
 import com.backend.school_erp.DTO.DebitCardReport.PromotionCandidateDTO;
 import com.backend.school_erp.DTO.DebitCardReport.PromotionRequestDTO;
-import com.backend.school_erp.config.DatabaseConfig;
-import com.backend.school_erp.entity.AdmissionMaster.Admission;
+import com.backend.school_erp.config.SchoolDataChangedEvent;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
+import com.backend.school_erp.config.TenantTableCatalog;
+import com.backend.school_erp.service.Administration.FeeHeadCategory;
+import com.backend.school_erp.service.Administration.FeeHeadRegistry;
+import com.backend.school_erp.service.Administration.FeeHeadTaxonomy;
+import com.backend.school_erp.service.AdmissionMaster.StudentDirectory;
 import com.backend.school_erp.service.AdmissionMaster.TCService;
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
+import com.backend.school_erp.service.Media.MediaStore;
+import com.backend.school_erp.service.ReportJob.ReportJobProgress;
+import com.backend.school_erp.service.Transaction.FeeBalanceService;
+import com.backend.school_erp.service.Transaction.FeeDemandService;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import javax.sql.DataSource;
-import java.math.BigDecimal;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.*;
 import java.util.stream.Collectors;
 
 @Service
 @Slf4j
 public class PromotionService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
+    private static final String FEE_COLUMNS = "admission_number, student_name, standard, section, father_name, mother_name, " +
+            "fee_heading, account_head, amount, status, academic_year, school_id, aadhar_number, course, mother_tongue, blood_group";
+    private static final String TRANSPORT_FEE_COLUMNS = "admission_number, student_name, standard, section, father_name, mother_name, " +
+            "fee_heading, account_head, amount, status, academic_year, school_id, aadhar_number, boarding_point, bus_route_number, " +
+            "course, mother_tongue, blood_group";
+
+    private final TenantDataSourceRouter tenantDataSourceRouter;
+    private final TenantSchemaMigrator schemaMigrator;
+    private final TenantTableCatalog tableCatalog;
+    private final FeeDemandService feeDemandService;
+    private final FeeBalanceService feeBalanceService;
+    private final MediaStore mediaStore;
+    private final FeeHeadRegistry feeHeadRegistry;
+    private final StudentDirectory studentDirectory;
+
     private final TCService tcService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${promotion.chunk-size:500}")
+    private int chunkSize;
 
-    public PromotionService(TCService tcService) {
+    public PromotionService(TCService tcService, TenantDataSourceRouter tenantDataSourceRouter, TenantSchemaMigrator schemaMigrator, TenantTableCatalog tableCatalog, FeeDemandService feeDemandService, FeeBalanceService feeBalanceService, MediaStore mediaStore, FeeHeadRegistry feeHeadRegistry, StudentDirectory studentDirectory, ApplicationEventPublisher eventPublisher) {
+        this.tenantDataSourceRouter = tenantDataSourceRouter;
+        this.schemaMigrator = schemaMigrator;
         this.tcService = tcService;
+        this.tableCatalog = tableCatalog;
+        this.feeDemandService = feeDemandService;
+        this.feeBalanceService = feeBalanceService;
+        this.mediaStore = mediaStore;
+        this.feeHeadRegistry = feeHeadRegistry;
+        this.studentDirectory = studentDirectory;
+        this.eventPublisher = eventPublisher;
     }
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        DataSource ds = dataSourceCache.computeIfAbsent(schoolId, id -> {
-            HikariConfig config = new HikariConfig();
-
-            // 2. Use AWS DB Constants from DatabaseConfig
-            // Appends the schoolId as the specific database name
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName(DatabaseConfig.JDBC_DRIVER);
-
-            // Pool performance settings for complex report generation
-            config.setMaximumPoolSize(10);
-            config.setMinimumIdle(2);
-            config.setIdleTimeout(30000);
-            config.setMaxLifetime(1800000);
-            config.setConnectionTimeout(10000);
-
-            return new HikariDataSource(config);
-        });
-        return new JdbcTemplate(ds);
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     // Fetch list of academic years
     public List<String> getAcademicYears(String schoolId) {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
-        jdbc.execute("CREATE TABLE IF NOT EXISTS academic_years (yearId INT AUTO_INCREMENT PRIMARY KEY, year VARCHAR(20), createdAt TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+        schemaMigrator.migrate(jdbc, "PromotionService", 1, () ->
+                jdbc.execute("CREATE TABLE IF NOT EXISTS academic_years (yearId INT AUTO_INCREMENT PRIMARY KEY, year VARCHAR(20), createdAt TIMESTAMP DEFAULT CURRENT_TIMESTAMP)"));
         return jdbc.queryForList("SELECT year FROM academic_years ORDER BY yearId DESC", String.class);
     }
 
@@ -69,273 +83,310 @@ public class PromotionService {
 
         ensureTableExists(jdbc, admissionTable);
 
-        String sql = "SELECT * FROM " + admissionTable + " WHERE standard = ? AND section = ? ORDER BY student_name ASC";
-        List<Admission> students = jdbc.query(sql, new BeanPropertyRowMapper<>(Admission.class), standard, section);
+        // TC status and pending amount of the whole class in one pass
+        List<StudentDuesDTO> students = tcService.getClassDues(schoolId, academicYear, standard, section, false);
 
-        // Prepare Target Table check if target year is provided
-        String targetTableTemp = null;
+        // Students of the class already in the target year, if one is given
+        Set<String> promoted = new HashSet<>();
         if (targetAcademicYear != null && !targetAcademicYear.isEmpty()) {
             String safeTarget = targetAcademicYear.replaceAll("[^a-zA-Z0-9]", "_");
-            String tbl = "admissions_" + safeTarget;
-            if (tableExists(jdbc, tbl)) {
-                targetTableTemp = tbl;
+            String targetTable = "admissions_" + safeTarget;
+            if (tableExists(jdbc, targetTable)) {
+                promoted.addAll(jdbc.queryForList("SELECT admission_number FROM " + targetTable + " WHERE admission_number IN " +
+                        "(SELECT admission_number FROM " + admissionTable + " WHERE standard = ? AND section = ?)",
+                        String.class, standard, section));
             }
         }
-        final String targetTable = targetTableTemp;
-
-        return students.stream().map(student -> {
-            boolean isTcIssued = tcService.checkIfTCExists(schoolId, student.getAdmissionNumber(), academicYear);
-            StudentTCProfileDTO profile = tcService.getStudentTCProfile(schoolId, student.getAdmissionNumber(), academicYear);
-
-            boolean isPromoted = false;
-            if (targetTable != null) {
-                Integer count = jdbc.queryForObject("SELECT COUNT(*) FROM " + targetTable + " WHERE admission_number = ?", Integer.class, student.getAdmissionNumber());
-                isPromoted = count != null && count > 0;
-            }
 
-            return PromotionCandidateDTO.builder()
-                    .admissionNumber(student.getAdmissionNumber())
-                    .studentName(student.getStudentName())
-                    .status(isTcIssued ? "TC Issued" : "Active")
-                    .pendingAmount(profile.getTotalPendingBalance())
-                    .promoted(isPromoted)
-                    .build();
-        }).collect(Collectors.toList());
+        return students.stream().map(student -> PromotionCandidateDTO.builder()
+                .admissionNumber(student.getAdmissionNumber())
+                .studentName(student.getStudentName())
+                .status(student.isTcIssued() ? "TC Issued" : "Active")
+                .pendingAmount(student.getTotalPendingBalance())
+                .promoted(promoted.contains(student.getAdmissionNumber()))
+                .build()).collect(Collectors.toList());
     }
 
-    @Transactional(rollbackFor = Exception.class)
+    /**
+     * Promotes the requested students, or every student of the source class without a TC, into
+     * the target year: copies their admission rows, carries their unpaid fee heads over as
+     * arrears and assigns the new class's fees.
+     *
+     * Students are promoted {@code promotion.chunk-size} at a time, each chunk with a handful of
+     * set-based statements in a transaction of its own, so a school's rollover neither runs
+     * dozens of queries per student nor holds one transaction for minutes. Students already in
+     * the target year are skipped, so a run that failed part way can simply be repeated.
+     */
     public int promoteStudents(PromotionRequestDTO request) {
-        JdbcTemplate jdbc = getJdbcTemplate(request.getSchoolId());
-
-        String sourceSafeYear = request.getSourceAcademicYear().replaceAll("[^a-zA-Z0-9]", "_");
-        String targetSafeYear = request.getTargetAcademicYear().replaceAll("[^a-zA-Z0-9]", "_");
+        String schoolId = request.getSchoolId();
+        JdbcTemplate jdbc = getJdbcTemplate(schoolId);
 
         // Standard string formats for column values (e.g. "2026-2027")
-        String standardTargetYear = request.getTargetAcademicYear().replace("_", "-");
         String standardSourceYear = request.getSourceAcademicYear().replace("_", "-");
+        String standardTargetYear = request.getTargetAcademicYear().replace("_", "-");
+        String sourceSafeYear = FeeDemandService.yearKey(standardSourceYear);
+        String targetSafeYear = FeeDemandService.yearKey(standardTargetYear);
 
         String sourceTable = "admissions_" + sourceSafeYear;
         String targetTable = "admissions_" + targetSafeYear;
 
-        // 1. Ensure Target Tables Exist
+        ensureTableExists(jdbc, sourceTable);
         ensureTargetTables(jdbc, targetSafeYear);
+        ensureTableExists(jdbc, targetTable);
+        if (tableCatalog.hasColumn(jdbc, sourceTable, "student_photo") && !tableCatalog.hasColumn(jdbc, sourceTable, "student_photo_ref")) {
+            mediaStore.ensureReferenceColumn(jdbc, sourceTable, "student_photo");
+        }
+
+        List<String> candidates = selectCandidates(jdbc, request, sourceTable, sourceSafeYear);
+        if (candidates.isEmpty()) {
+            return 0;
+        }
+
+        Rollover rollover = new Rollover(schoolId, standardSourceYear, standardTargetYear, sourceTable, targetTable,
+                request.getTargetStandard(), request.getTargetSection(), feeHeadRegistry.forYear(schoolId, standardSourceYear));
+        TransactionTemplate transaction = tenantDataSourceRouter.getTransactionTemplate(schoolId);
 
         int count = 0;
-        for (String admNo : request.getStudentAdmissionNumbers()) {
-            // A. Check for existing student in target year
-            Integer exists = jdbc.queryForObject(
-                    "SELECT COUNT(*) FROM " + targetTable + " WHERE admission_number = ?",
-                    Integer.class, admNo
-            );
-
-            if (exists != null && exists > 0) {
-                log.warn("Student {} already exists in target year. Skipping.", admNo);
-                continue;
-            }
+        for (int from = 0; from < candidates.size(); from += chunkSize) {
+            List<String> chunk = candidates.subList(from, Math.min(from + chunkSize, candidates.size()));
+            Integer promoted = transaction.execute(status -> promoteChunk(jdbc, rollover, chunk));
+            count += promoted != null ? promoted : 0;
+            ReportJobProgress.update(from + chunk.size(), candidates.size());
+            log.info("🎓 Promoted {} of {} students of school {} to {} {} ({})", count, candidates.size(), schoolId,
+                    request.getTargetStandard(), request.getTargetSection(), standardTargetYear);
+        }
+        if (count > 0) {
+            studentDirectory.invalidate(schoolId, request.getTargetAcademicYear());
+            eventPublisher.publishEvent(new SchoolDataChangedEvent(schoolId, request.getTargetAcademicYear(), "promotion"));
+        }
+        return count;
+    }
 
-            // B. Fetch Student Data from Source (Grade 1 Data)
-            Map<String, Object> studentData = jdbc.queryForMap("SELECT * FROM " + sourceTable + " WHERE admission_number = ?", admNo);
+    // Source and target of one promotion run, shared by its chunks
+    private record Rollover(String schoolId, String sourceYear, String targetYear, String sourceTable, String targetTable,
+                            String targetStandard, String targetSection, FeeHeadTaxonomy feeHeads) {
+    }
 
-            // C. PREPARE DATA FOR TARGET TABLE
-            studentData.remove("id"); // Remove old ID to auto-generate new one
-            studentData.put("standard", request.getTargetStandard());
-            studentData.put("section", request.getTargetSection());
-            studentData.put("academic_year", standardTargetYear);
+    private List<String> selectCandidates(JdbcTemplate jdbc, PromotionRequestDTO request, String sourceTable, String sourceSafeYear) {
+        List<String> requested = request.getStudentAdmissionNumbers();
+        if (requested != null && !requested.isEmpty()) {
+            return requested.stream().filter(Objects::nonNull).distinct().toList();
+        }
+        if (request.getSourceStandard() == null || request.getSourceStandard().isEmpty()
+                || request.getSourceSection() == null || request.getSourceSection().isEmpty()) {
+            throw new IllegalArgumentException("Select the students to promote, or the source standard and section");
+        }
 
-            // Re-fetch clean data to be safe against map modification issues
-            Map<String, Object> cleanSourceData = jdbc.queryForMap("SELECT standard, student_type, student_category, mother_tongue, blood_group FROM " + sourceTable + " WHERE admission_number = ?", admNo);
+        String sql = "SELECT admission_number FROM " + sourceTable + " WHERE standard = ? AND section = ?";
+        String tcTable = "TC_" + sourceSafeYear;
+        if (tableExists(jdbc, tcTable)) {
+            sql += " AND admission_number NOT IN (SELECT admission_number FROM " + tcTable + " WHERE admission_number IS NOT NULL)";
+        }
+        return jdbc.queryForList(sql + " ORDER BY student_name ASC", String.class,
+                request.getSourceStandard(), request.getSourceSection());
+    }
 
-            studentData.put("class_last_studied", cleanSourceData.get("standard"));
+    private int promoteChunk(JdbcTemplate jdbc, Rollover rollover, List<String> chunk) {
+        List<String> existing = jdbc.queryForList(
+                "SELECT admission_number FROM " + rollover.targetTable() + " WHERE admission_number IN (" + placeholders(chunk) + ")",
+                String.class, chunk.toArray());
+        List<String> students = new ArrayList<>(chunk);
+        if (!existing.isEmpty()) {
+            log.warn("{} students already exist in target year. Skipping: {}", existing.size(), existing);
+            students.removeAll(new HashSet<>(existing));
+        }
+        if (students.isEmpty()) {
+            return 0;
+        }
 
-            // Update Student Type
-            String currentType = (String) cleanSourceData.getOrDefault("student_type", "");
-            if ("New".equalsIgnoreCase(currentType)) {
-                studentData.put("student_type", "Existing");
-            }
+        moveSourcePhotos(jdbc, rollover, students);
+        int promoted = copyAdmissions(jdbc, rollover, students);
+
+        // Bio data as now stored in the target year, keyed by admission number
+        Map<String, Map<String, Object>> bioData = new HashMap<>();
+        for (Map<String, Object> row : jdbc.queryForList(
+                "SELECT admission_number, student_name, father_name, mother_name, standard, section, aadhar_number, mother_tongue, " +
+                        "blood_group, boarding_point, bus_route_number FROM " + rollover.targetTable() +
+                        " WHERE admission_number IN (" + placeholders(students) + ")", students.toArray())) {
+            bioData.put((String) row.get("admission_number"), row);
+        }
+        if (bioData.isEmpty()) {
+            // None of them is in the source year
+            return promoted;
+        }
 
-            // Extract Boarding Point and Route from Source Data (FIX STEP 1)
-            String boardingPoint = (String) studentData.get("boarding_point");
-            String busRouteNumber = (String) studentData.get("bus_route_number");
+        // D. SHIFT PENDING FEES (Old Year Arrears -> New Year Segregated Tables)
+        shiftPendingFees(jdbc, rollover, bioData);
 
-            // Insert Student into Target Admission Table
-            insertStudentMap(jdbc, targetTable, studentData);
+        // E. ASSIGN NEW YEAR FEES (Tuition, Hostel, Transport)
+        assignNewYearFees(jdbc, rollover, bioData);
 
-            // D. SHIFT PENDING FEES (Old Year Arrears -> New Year Segregated Tables)
-            shiftPendingFees(jdbc, request.getSchoolId(), admNo, standardSourceYear, standardTargetYear, targetSafeYear);
+        feeDemandService.refreshStudents(jdbc, rollover.targetYear(), bioData.keySet());
+        return promoted;
+    }
 
-            // E. ASSIGN NEW YEAR FEES (Tuition, Hostel, Transport)
-            // Passing source data boarding point/route to ensure transport fee is added
-            assignNewYearFees(jdbc, request.getSchoolId(), admNo, sourceSafeYear, targetSafeYear,
-                    standardTargetYear, request.getTargetStandard(), request.getTargetSection(),
-                    studentData, boardingPoint, busRouteNumber);
+    // The photo is not copied: both years' rows reference the same file in the media store
+    private void moveSourcePhotos(JdbcTemplate jdbc, Rollover rollover, List<String> students) {
+        if (!tableCatalog.hasColumn(jdbc, rollover.sourceTable(), "student_photo")) {
+            return;
+        }
+        List<Object[]> refs = new ArrayList<>();
+        jdbc.query("SELECT admission_number, student_photo FROM " + rollover.sourceTable() +
+                " WHERE admission_number IN (" + placeholders(students) + ") AND student_photo_ref IS NULL AND student_photo IS NOT NULL", rs -> {
+            byte[] photo = rs.getBytes("student_photo");
+            if (photo != null && photo.length > 0) {
+                refs.add(new Object[]{mediaStore.put(rollover.schoolId(), photo), rs.getString("admission_number")});
+            }
+        }, students.toArray());
+        if (!refs.isEmpty()) {
+            jdbc.batchUpdate("UPDATE " + rollover.sourceTable() + " SET student_photo_ref = ? WHERE admission_number = ? AND student_photo_ref IS NULL", refs);
+        }
+    }
 
-            count++;
+    // Copies the admission rows in one INSERT ... SELECT, moved to the new class and year
+    private int copyAdmissions(JdbcTemplate jdbc, Rollover rollover, List<String> students) {
+        Set<String> sourceColumns = new HashSet<>(tableCatalog.columnsOf(jdbc, rollover.sourceTable()));
+        List<String> columns = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        List<Object> params = new ArrayList<>();
+        for (String column : tableCatalog.columnsOf(jdbc, rollover.targetTable())) {
+            // id is generated; student_photo stays in the source row, the ref is copied
+            if (column.equals("id") || column.equals("student_photo") || !sourceColumns.contains(column)) {
+                continue;
+            }
+            columns.add(column);
+            switch (column) {
+                case "standard" -> {
+                    values.add("?");
+                    params.add(rollover.targetStandard());
+                }
+                case "section" -> {
+                    values.add("?");
+                    params.add(rollover.targetSection());
+                }
+                case "academic_year" -> {
+                    values.add("?");
+                    params.add(rollover.targetYear());
+                }
+                case "class_last_studied" -> values.add("standard");
+                case "student_type" -> values.add("CASE WHEN LOWER(student_type) = 'new' THEN 'Existing' ELSE student_type END");
+                default -> values.add(column);
+            }
         }
-        return count;
+        params.addAll(students);
+        return jdbc.update("INSERT INTO " + rollover.targetTable() + " (" + String.join(", ", columns) + ") SELECT " +
+                String.join(", ", values) + " FROM " + rollover.sourceTable() +
+                " WHERE admission_number IN (" + placeholders(students) + ")", params.toArray());
     }
 
     /**
      * Segregates Pending Fees into Tuition, Hostel, and Transport tables in the NEW year.
      */
-    private void shiftPendingFees(JdbcTemplate jdbc, String schoolId, String admNo, String sourceYear, String targetYear, String targetSafeYear) {
-        StudentTCProfileDTO profile = tcService.getStudentTCProfile(schoolId, admNo, sourceYear);
-
-        if (profile.getIndividualArrears() == null || profile.getIndividualArrears().isEmpty()) {
+    private void shiftPendingFees(JdbcTemplate jdbc, Rollover rollover, Map<String, Map<String, Object>> bioData) {
+        List<Map<String, Object>> pending = feeBalanceService.getPendingHeads(jdbc, rollover.sourceYear(), bioData.keySet());
+        if (pending.isEmpty()) {
             return;
         }
+        String targetSafeYear = FeeDemandService.yearKey(rollover.targetYear());
+        FeeHeadTaxonomy feeHeads = rollover.feeHeads();
 
-        // Fetch fresh student details from TARGET table for insertion
-        Map<String, Object> student = jdbc.queryForMap(
-                "SELECT student_name, father_name, mother_name, standard, section, aadhar_number, mother_tongue, blood_group FROM admissions_" + targetSafeYear + " WHERE admission_number = ?",
-                admNo
-        );
-
-        for (var arrear : profile.getIndividualArrears()) {
-            String feeHeadName = arrear.getFeeHead();
-            String lowerFeeHead = feeHeadName.toLowerCase();
+        List<Object[]> tuitionRows = new ArrayList<>();
+        List<Object[]> hostelRows = new ArrayList<>();
+        List<Object[]> transportRows = new ArrayList<>();
+        for (Map<String, Object> arrear : pending) {
+            Map<String, Object> student = bioData.get((String) arrear.get("admission_number"));
+            String feeHeadName = (String) arrear.get("fee_head");
 
             // Renaming fee head to indicate it's an arrear from previous year
-            String newFeeHeadName = feeHeadName + " (" + sourceYear + ")";
-            String accountHead = arrear.getAccountHead() != null ? arrear.getAccountHead() : "Arrears";
-
-            String targetFeeTable;
-            boolean isTransport = false;
-
-            // 1. Logic to Determine Target Table
-            if (lowerFeeHead.contains("transport") || lowerFeeHead.contains("bus") || lowerFeeHead.contains("van")) {
-                targetFeeTable = "transport_fees_" + targetSafeYear;
-                isTransport = true;
-            } else if (lowerFeeHead.contains("hostel") || lowerFeeHead.contains("mess") || lowerFeeHead.contains("room")) {
-                targetFeeTable = "hostel_fees_" + targetSafeYear;
-            } else {
-                // Default everything else to Tuition Fees (includes Book fee, Term fee, etc.)
-                targetFeeTable = "tuition_fees_" + targetSafeYear;
-            }
-
-            // 2. Insert into the determined table
-            String sql;
-            if (isTransport) {
-                sql = "INSERT INTO " + targetFeeTable +
-                        " (admission_number, student_name, standard, section, father_name, mother_name, fee_heading, account_head, amount, status, academic_year, school_id, aadhar_number, boarding_point, bus_route_number, course, mother_tongue, blood_group) " +
-                        " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+            String newFeeHeadName = feeHeadName + " (" + rollover.sourceYear() + ")";
 
+            // The category the head had in the source year decides the target table
+            if (feeHeads.isTransport(feeHeadName)) {
                 // For arrears, we default route to 'Arrear' to preserve financial data
-                jdbc.update(sql, admNo, student.get("student_name"), student.get("standard"), student.get("section"),
-                        student.get("father_name"), student.get("mother_name"),
-                        newFeeHeadName, accountHead, arrear.getAmount(), "pending", targetYear, schoolId, student.get("aadhar_number"),
-                        "Arrear", "Arrear", student.get("standard"), student.get("mother_tongue"), student.get("blood_group"));
+                transportRows.add(new Object[]{student.get("admission_number"), student.get("student_name"), student.get("standard"),
+                        student.get("section"), student.get("father_name"), student.get("mother_name"), newFeeHeadName, "Transport",
+                        arrear.get("balance"), "pending", rollover.targetYear(), rollover.schoolId(), student.get("aadhar_number"),
+                        "Arrear", "Arrear", student.get("standard"), student.get("mother_tongue"), student.get("blood_group")});
             } else {
-                sql = "INSERT INTO " + targetFeeTable +
-                        " (admission_number, student_name, standard, section, father_name, mother_name, fee_heading, account_head, amount, status, academic_year, school_id, aadhar_number, course, mother_tongue, blood_group) " +
-                        " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-
-                jdbc.update(sql, admNo, student.get("student_name"), student.get("standard"), student.get("section"),
-                        student.get("father_name"), student.get("mother_name"),
-                        newFeeHeadName, accountHead, arrear.getAmount(), "pending", targetYear, schoolId, student.get("aadhar_number"),
-                        student.get("standard"), student.get("mother_tongue"), student.get("blood_group"));
+                Object[] row = {student.get("admission_number"), student.get("student_name"), student.get("standard"),
+                        student.get("section"), student.get("father_name"), student.get("mother_name"), newFeeHeadName, "General",
+                        arrear.get("balance"), "pending", rollover.targetYear(), rollover.schoolId(), student.get("aadhar_number"),
+                        student.get("standard"), student.get("mother_tongue"), student.get("blood_group")};
+                // Everything but hostel heads goes to Tuition Fees (includes Book fee, Term fee, etc.)
+                if (feeHeads.categoryOf(FeeHeadTaxonomy.baseHead(feeHeadName)) == FeeHeadCategory.HOSTEL) {
+                    hostelRows.add(row);
+                } else {
+                    tuitionRows.add(row);
+                }
             }
         }
-        log.info("Shifted {} arrears for student {} to year {} segregated tables.", profile.getIndividualArrears().size(), admNo, targetYear);
+        insertFeeRows(jdbc, "tuition_fees_" + targetSafeYear, FEE_COLUMNS, tuitionRows);
+        insertFeeRows(jdbc, "hostel_fees_" + targetSafeYear, FEE_COLUMNS, hostelRows);
+        insertFeeRows(jdbc, "transport_fees_" + targetSafeYear, TRANSPORT_FEE_COLUMNS, transportRows);
+        log.info("Shifted {} arrears of {} students to year {} segregated tables.", pending.size(), bioData.size(), rollover.targetYear());
     }
 
-    private void assignNewYearFees(JdbcTemplate jdbc, String schoolId, String admNo, String sourceSafeYear, String targetSafeYear,
-                                   String standardTargetYear, String targetStandard, String targetSection, Map<String, Object> bioData,
-                                   String sourceBoardingPoint, String sourceRouteNumber) {
+    private void assignNewYearFees(JdbcTemplate jdbc, Rollover rollover, Map<String, Map<String, Object>> bioData) {
+        String sourceSafeYear = FeeDemandService.yearKey(rollover.sourceYear());
+        String targetSafeYear = FeeDemandService.yearKey(rollover.targetYear());
+        List<String> students = new ArrayList<>(bioData.keySet());
         try {
-            String studentCategory = (String) bioData.getOrDefault("student_category", "General");
-
             // 1. TUITION FEES: Always Assign for the New Class
-            assignFeesFromMasterTable(jdbc,
-                    "tuition_fees", // Master Table
-                    "tuition_fees_" + targetSafeYear, // Target Ledger
-                    schoolId, standardTargetYear, targetStandard, studentCategory, admNo, bioData);
-
-            // 2. HOSTEL FEES: Check if student had hostel in source year
-            if (hasFeeInSource(jdbc, "hostel_fees_" + sourceSafeYear, admNo)) {
-                assignFeesFromMasterTable(jdbc,
-                        "hostel_fees", // Master Table
-                        "hostel_fees_" + targetSafeYear, // Target Ledger
-                        schoolId, standardTargetYear, targetStandard, studentCategory, admNo, bioData);
-            }
+            assignFeesFromMasterTable(jdbc, rollover, "tuition_fees", "tuition_fees_" + targetSafeYear, students, null);
 
-            // 3. TRANSPORT FEES: FIX - Use Bio Data from Grade 1 to determine requirement
-            boolean hasTransportInBio = sourceBoardingPoint != null && !sourceBoardingPoint.isEmpty()
-                    && sourceRouteNumber != null && !sourceRouteNumber.isEmpty();
-
-            if (hasTransportInBio) {
-                assignTransportFeesFromMaster(jdbc,
-                        "bus_fees", // Master Table (to get New Amount)
-                        "transport_fees_" + targetSafeYear, // New Ledger (to insert)
-                        schoolId, standardTargetYear, targetStandard, admNo, bioData,
-                        sourceBoardingPoint, sourceRouteNumber); // Pass specific route info
-            } else {
-                log.info("No transport route found in bio-data for student {}, skipping transport fee.", admNo);
+            // 2. HOSTEL FEES: Only students who had hostel in source year
+            String sourceHostelTable = "hostel_fees_" + sourceSafeYear;
+            if (tableExists(jdbc, sourceHostelTable)) {
+                assignFeesFromMasterTable(jdbc, rollover, "hostel_fees", "hostel_fees_" + targetSafeYear, students, sourceHostelTable);
             }
 
-            log.info("Assigned new year fees for student {} in Class {}.", admNo, targetStandard);
+            // 3. TRANSPORT FEES: Use the boarding point and route of the bio data to determine requirement
+            assignTransportFeesFromMaster(jdbc, rollover, "bus_fees", "transport_fees_" + targetSafeYear, bioData.values());
+
+            log.info("Assigned new year fees for {} students in Class {}.", students.size(), rollover.targetStandard());
 
         } catch (Exception e) {
             log.error("Error assigning fees for new year: " + e.getMessage(), e);
+            // Roll the chunk back: its students would otherwise be promoted without fees, and a re-run skips them
+            throw new RuntimeException("Failed to assign new year fees: " + e.getMessage(), e);
         }
     }
 
-    private void assignFeesFromMasterTable(JdbcTemplate jdbc, String masterTable, String targetTable,
-                                           String schoolId, String academicYear, String standard, String studentCategory,
-                                           String admNo, Map<String, Object> bioData) {
+    /**
+     * Copies the new class's fee structure to every student in one INSERT ... SELECT. A student
+     * gets the rows of their own category, or every row of the class when the class has none for
+     * it. With {@code sourceFeeTable}, only students who had a (non-arrear) fee there get them.
+     */
+    private void assignFeesFromMasterTable(JdbcTemplate jdbc, Rollover rollover, String masterTable, String targetTable,
+                                           List<String> students, String sourceFeeTable) {
 
         if (!tableExists(jdbc, masterTable)) {
             log.warn("Master table {} does not exist. Cannot assign fees.", masterTable);
             return;
         }
 
-        // Query Master Table
-        String selectSql = "SELECT fee_heading, account_head, fee_amount FROM " + masterTable +
-                " WHERE school_id = ? AND academic_year = ? AND standard = ? AND student_category = ?";
-
-        List<Map<String, Object>> feeStructure = jdbc.queryForList(selectSql, schoolId, academicYear, standard, studentCategory);
-
-        // Fallback if no specific category found
-        if (feeStructure.isEmpty()) {
-            feeStructure = jdbc.queryForList("SELECT fee_heading, account_head, fee_amount FROM " + masterTable +
-                    " WHERE school_id = ? AND academic_year = ? AND standard = ?", schoolId, academicYear, standard);
-        }
-
-        if (feeStructure.isEmpty()) return;
-
-        String insertSql = "INSERT INTO " + targetTable +
-                " (admission_number, student_name, standard, section, father_name, mother_name, fee_heading, account_head, amount, status, academic_year, school_id, aadhar_number, course, mother_tongue, blood_group) " +
-                " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-
-        for (Map<String, Object> fee : feeStructure) {
-            // FIX: Safely convert Amount
-            BigDecimal amount = convertToBigDecimal(fee.get("fee_amount"));
-
-            jdbc.update(insertSql,
-                    admNo,
-                    bioData.get("student_name"),
-                    standard,
-                    bioData.get("section"),
-                    bioData.get("father_name"),
-                    bioData.get("mother_name"),
-                    fee.get("fee_heading"),
-                    fee.get("account_head"),
-                    amount,
-                    "pending",
-                    academicYear,
-                    schoolId,
-                    bioData.get("aadhar_number"),
-                    standard,
-                    bioData.get("mother_tongue"),
-                    bioData.get("blood_group")
-            );
+        List<Object> params = new ArrayList<>(List.of(rollover.targetYear(), rollover.schoolId(),
+                rollover.schoolId(), rollover.targetYear(), rollover.targetStandard()));
+        params.addAll(students);
+        String sql = "INSERT INTO " + targetTable + " (" + FEE_COLUMNS + ") " +
+                "SELECT s.admission_number, s.student_name, s.standard, s.section, s.father_name, s.mother_name, " +
+                "m.fee_heading, m.account_head, m.fee_amount, 'pending', ?, ?, s.aadhar_number, s.standard, s.mother_tongue, s.blood_group " +
+                "FROM " + rollover.targetTable() + " s JOIN " + masterTable + " m " +
+                "ON m.school_id = ? AND m.academic_year = ? AND m.standard = ? " +
+                "AND (m.student_category = s.student_category OR NOT EXISTS (SELECT 1 FROM " + masterTable + " c " +
+                "WHERE c.school_id = m.school_id AND c.academic_year = m.academic_year AND c.standard = m.standard " +
+                "AND c.student_category = s.student_category)) " +
+                "WHERE s.admission_number IN (" + placeholders(students) + ")";
+        if (sourceFeeTable != null) {
+            sql += " AND EXISTS (SELECT 1 FROM " + sourceFeeTable + " f WHERE f.admission_number = s.admission_number AND f.fee_heading NOT LIKE '%Arrear%')";
         }
+        int rows = jdbc.update(sql, params.toArray());
+        log.info("Assigned {} {} rows for year {}.", rows, masterTable, rollover.targetYear());
     }
 
-    // FIX: Method now includes FALLBACK MECHANISM if Route Name changes between years
-    private void assignTransportFeesFromMaster(JdbcTemplate jdbc, String masterBusTable, String newLedgerTable,
-                                               String schoolId, String academicYear, String standard,
-                                               String admNo, Map<String, Object> bioData,
-                                               String boardingPoint, String routeNumber) {
+    // FIX: Includes FALLBACK MECHANISM if Route Name changes between years
+    private void assignTransportFeesFromMaster(JdbcTemplate jdbc, Rollover rollover, String masterBusTable, String newLedgerTable,
+                                               Collection<Map<String, Object>> students) {
 
         // 1. Validate Master Table Exists
         if (!tableExists(jdbc, masterBusTable)) {
@@ -343,134 +394,79 @@ public class PromotionService {
             return;
         }
 
-        log.info("Fetching transport fee for BP: {} Route: {} Year: {}", boardingPoint, routeNumber, academicYear);
-
-        // 2. Get Fee Amount from MASTER 'bus_fees'
-        // Attempt 1: Exact Match
-        String feeSql = "SELECT fee_heading, account_head, fee FROM " + masterBusTable +
-                " WHERE school_id = ? AND academic_year = ? AND boarding_point = ? AND route_number = ?";
-
-        List<Map<String, Object>> busFees = jdbc.queryForList(feeSql, schoolId, academicYear, boardingPoint, routeNumber);
-
-        // Attempt 2: Fallback (Match only Boarding Point if Route ID changed/mismatched)
-        if (busFees.isEmpty()) {
-            log.warn("Exact match not found for BP: {} Route: {}. Attempting fallback to Boarding Point only.", boardingPoint, routeNumber);
-            String fallbackSql = "SELECT fee_heading, account_head, fee FROM " + masterBusTable +
-                    " WHERE school_id = ? AND academic_year = ? AND boarding_point = ? LIMIT 1";
-            busFees = jdbc.queryForList(fallbackSql, schoolId, academicYear, boardingPoint);
+        // 2. Fee definitions of the new year from MASTER 'bus_fees': by boarding point and route,
+        // and the first of each boarding point for routes that changed between years
+        Map<List<String>, List<Map<String, Object>>> byRoute = new HashMap<>();
+        Map<String, Map<String, Object>> byBoardingPoint = new HashMap<>();
+        for (Map<String, Object> fee : jdbc.queryForList("SELECT boarding_point, route_number, fee_heading, account_head, fee FROM " +
+                masterBusTable + " WHERE school_id = ? AND academic_year = ?", rollover.schoolId(), rollover.targetYear())) {
+            String boardingPoint = (String) fee.get("boarding_point");
+            byRoute.computeIfAbsent(Arrays.asList(boardingPoint, (String) fee.get("route_number")), key -> new ArrayList<>()).add(fee);
+            byBoardingPoint.putIfAbsent(boardingPoint, fee);
         }
 
-        if (busFees.isEmpty()) {
-            log.warn("No transport fee definition found in master 'bus_fees' for {} in year {}. Manual entry required.", boardingPoint, academicYear);
-            return;
-        }
+        List<Object[]> rows = new ArrayList<>();
+        for (Map<String, Object> student : students) {
+            String boardingPoint = (String) student.get("boarding_point");
+            String routeNumber = (String) student.get("bus_route_number");
+            if (boardingPoint == null || boardingPoint.isEmpty() || routeNumber == null || routeNumber.isEmpty()) {
+                continue;
+            }
 
-        String insertSql = "INSERT INTO " + newLedgerTable +
-                " (admission_number, student_name, standard, section, father_name, mother_name, fee_heading, account_head, amount, status, academic_year, school_id, aadhar_number, boarding_point, bus_route_number, course, mother_tongue, blood_group) " +
-                " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-
-        for (Map<String, Object> fee : busFees) {
-            // FIX: Safely convert Amount (Fixes the ClassCastException Double -> BigDecimal)
-            BigDecimal amount = convertToBigDecimal(fee.get("fee"));
-
-            jdbc.update(insertSql,
-                    admNo,
-                    bioData.get("student_name"),
-                    standard,
-                    bioData.get("section"),
-                    bioData.get("father_name"),
-                    bioData.get("mother_name"),
-                    fee.get("fee_heading"),
-                    fee.get("account_head"),
-                    amount,
-                    "pending",
-                    academicYear,
-                    schoolId,
-                    bioData.get("aadhar_number"),
-                    boardingPoint,
-                    routeNumber,
-                    standard,
-                    bioData.get("mother_tongue"),
-                    bioData.get("blood_group")
-            );
-            log.info("Successfully added transport fee for student {} via logic.", admNo);
-        }
-    }
+            List<Map<String, Object>> busFees = byRoute.get(Arrays.asList(boardingPoint, routeNumber));
+            if (busFees == null) {
+                Map<String, Object> fallback = byBoardingPoint.get(boardingPoint);
+                if (fallback == null) {
+                    log.warn("No transport fee definition found in master 'bus_fees' for {} in year {}. Manual entry required for {}.",
+                            boardingPoint, rollover.targetYear(), student.get("admission_number"));
+                    continue;
+                }
+                busFees = List.of(fallback);
+            }
 
-    /**
-     * Helper method to safely convert database numerical values to BigDecimal.
-     * Handles Double, Float, Integer, Long, and BigDecimal types.
-     */
-    private BigDecimal convertToBigDecimal(Object value) {
-        if (value == null) {
-            return BigDecimal.ZERO;
-        }
-        if (value instanceof BigDecimal) {
-            return (BigDecimal) value;
-        }
-        if (value instanceof Double) {
-            return BigDecimal.valueOf((Double) value);
-        }
-        if (value instanceof Float) {
-            return BigDecimal.valueOf((Float) value);
-        }
-        if (value instanceof Number) {
-            // For Integer, Long, etc.
-            return new BigDecimal(value.toString());
-        }
-        try {
-            // Try string parsing as last resort
-            return new BigDecimal(value.toString());
-        } catch (Exception e) {
-            log.error("Failed to convert value to BigDecimal: {}", value);
-            return BigDecimal.ZERO;
+            for (Map<String, Object> fee : busFees) {
+                rows.add(new Object[]{student.get("admission_number"), student.get("student_name"), student.get("standard"),
+                        student.get("section"), student.get("father_name"), student.get("mother_name"),
+                        fee.get("fee_heading"), fee.get("account_head"), fee.get("fee"), "pending", rollover.targetYear(),
+                        rollover.schoolId(), student.get("aadhar_number"), boardingPoint, routeNumber,
+                        student.get("standard"), student.get("mother_tongue"), student.get("blood_group")});
+            }
         }
+        insertFeeRows(jdbc, newLedgerTable, TRANSPORT_FEE_COLUMNS, rows);
     }
 
-    private boolean hasFeeInSource(JdbcTemplate jdbc, String tableName, String admNo) {
-        if (!tableExists(jdbc, tableName)) return false;
-        Integer count = jdbc.queryForObject(
-                "SELECT COUNT(*) FROM " + tableName + " WHERE admission_number = ? AND fee_heading NOT LIKE '%Arrear%'",
-                Integer.class, admNo
-        );
-        return count != null && count > 0;
-    }
-
-    private void insertStudentMap(JdbcTemplate jdbc, String tableName, Map<String, Object> data) {
-        StringBuilder cols = new StringBuilder();
-        StringBuilder vals = new StringBuilder();
-        List<Object> values = new java.util.ArrayList<>();
-
-        for (Map.Entry<String, Object> entry : data.entrySet()) {
-            if (cols.length() > 0) {
-                cols.append(", ");
-                vals.append(", ");
-            }
-            cols.append(entry.getKey());
-            vals.append("?");
-            values.add(entry.getValue());
+    private void insertFeeRows(JdbcTemplate jdbc, String table, String columns, List<Object[]> rows) {
+        if (rows.isEmpty()) {
+            return;
         }
+        String values = placeholders(Arrays.asList(columns.split(",")));
+        jdbc.batchUpdate("INSERT INTO " + table + " (" + columns + ") VALUES (" + values + ")", rows);
+    }
 
-        String sql = "INSERT INTO " + tableName + " (" + cols + ") VALUES (" + vals + ")";
-        jdbc.update(sql, values.toArray());
+    private static String placeholders(Collection<?> values) {
+        return String.join(", ", Collections.nCopies(values.size(), "?"));
     }
 
     private void ensureTargetTables(JdbcTemplate jdbc, String safeYear) {
-        String admTable = "admissions_" + safeYear;
-        if (!tableExists(jdbc, admTable)) {
-            String prevYearPart = safeYear.split("_")[0];
-            try {
-                int prevYearStart = Integer.parseInt(prevYearPart) - 1;
-                String prevYearFull = prevYearStart + "_" + (prevYearStart + 1);
-                String sqlClone = "CREATE TABLE IF NOT EXISTS " + admTable + " LIKE admissions_" + prevYearFull;
-                jdbc.execute(sqlClone);
-            } catch(Exception e) {
-                log.warn("Could not clone table structure. Ensure manual creation or check previous year tables.");
+        schemaMigrator.migrate(jdbc, "PromotionService:" + safeYear, 2, () -> {
+            String admTable = "admissions_" + safeYear;
+            if (!tableExists(jdbc, admTable)) {
+                String prevYearPart = safeYear.split("_")[0];
+                try {
+                    int prevYearStart = Integer.parseInt(prevYearPart) - 1;
+                    String prevYearFull = prevYearStart + "_" + (prevYearStart + 1);
+                    String sqlClone = "CREATE TABLE IF NOT EXISTS " + admTable + " LIKE admissions_" + prevYearFull;
+                    jdbc.execute(sqlClone);
+                } catch(Exception e) {
+                    log.warn("Could not clone table structure. Ensure manual creation or check previous year tables.");
+                }
             }
-        }
-        createFeeTableIfNotExists(jdbc, "tuition_fees_" + safeYear);
-        createFeeTableIfNotExists(jdbc, "hostel_fees_" + safeYear);
-        createFeeTableIfNotExists(jdbc, "transport_fees_" + safeYear);
+            // Cloned from a year created before the media store
+            mediaStore.ensureReferenceColumn(jdbc, admTable, "student_photo");
+            createFeeTableIfNotExists(jdbc, "tuition_fees_" + safeYear);
+            createFeeTableIfNotExists(jdbc, "hostel_fees_" + safeYear);
+            createFeeTableIfNotExists(jdbc, "transport_fees_" + safeYear);
+        });
     }
 
     private void createFeeTableIfNotExists(JdbcTemplate jdbc, String tableName) {
@@ -485,10 +481,7 @@ public class PromotionService {
     }
 
     private boolean tableExists(JdbcTemplate jdbc, String tableName) {
-        try {
-            List<String> tables = jdbc.queryForList("SHOW TABLES LIKE '" + tableName + "'", String.class);
-            return !tables.isEmpty();
-        } catch (Exception e) { return false; }
+        return tableCatalog.tableExists(jdbc, tableName);
     }
 
     private void ensureTableExists(JdbcTemplate jdbc, String tableName) {
@@ -0,0 +1,137 @@
+package com.backend.school_erp.service.DebitCardReport;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Runs the independent read queries of one report side by side on virtual threads.
+ *
+ * A report opens a {@link Scope}, forks each query, joins, and then reads the results:
+ *
+ * <pre>
+ * try (ReportQueryExecutor.Scope scope = reportQueryExecutor.open()) {
+ *     Supplier&lt;List&lt;...&gt;&gt; demand = scope.fork(() -&gt; ...);
+ *     Supplier&lt;List&lt;...&gt;&gt; payments = scope.fork(() -&gt; ...);
+ *     scope.join();
+ *     ... demand.get(), payments.get()
+ * }
+ * </pre>
+ *
+ * At most {@code report.query.max-concurrency} queries of a scope run at once, so one report
+ * cannot take the school's whole share of the tenant pool. The first failing query cancels the
+ * others and is rethrown from {@link #join}; leaving the scope cancels whatever is still running.
+ *
+ * Forked queries run outside the caller's thread, so they must be plain reads that do not rely
+ * on a transaction bound to the calling thread.
+ */
+@Service
+@Slf4j
+public class ReportQueryExecutor {
+
+    @Value("${report.query.max-concurrency:4}")
+    private int maxConcurrency;
+
+    @Value("${report.query.timeout-ms:120000}")
+    private long timeoutMs;
+
+    public Scope open() {
+        return new Scope();
+    }
+
+    public final class Scope implements AutoCloseable {
+
+        private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        private final Semaphore permits = new Semaphore(maxConcurrency);
+        // Appended by the caller, cancelled from whichever thread fails first
+        private final List<Future<?>> futures = new CopyOnWriteArrayList<>();
+        private volatile Throwable failure;
+
+        private Scope() {
+        }
+
+        /**
+         * Starts a query; the returned supplier yields its result after {@link #join}.
+         */
+        public <T> Supplier<T> fork(Callable<T> query) {
+            Future<T> future = executor.submit(() -> {
+                permits.acquire();
+                try {
+                    return query.call();
+                } catch (Exception e) {
+                    fail(e);
+                    throw e;
+                } finally {
+                    permits.release();
+                }
+            });
+            futures.add(future);
+            return future::resultNow;
+        }
+
+        /**
+         * Waits for every forked query, rethrowing the first failure.
+         */
+        public void join() {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            try {
+                for (Future<?> future : futures) {
+                    try {
+                        future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    } catch (ExecutionException e) {
+                        fail(e.getCause());
+                        break;
+                    } catch (CancellationException e) {
+                        // Cancelled because a sibling failed, reported below
+                        break;
+                    }
+                }
+            } catch (TimeoutException e) {
+                cancelAll();
+                throw new RuntimeException("Report queries did not finish within " + timeoutMs + " ms", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancelAll();
+                throw new RuntimeException("Interrupted while waiting for report queries", e);
+            }
+
+            Throwable error = failure;
+            if (error instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (error instanceof Error fatal) {
+                throw fatal;
+            }
+            if (error != null) {
+                throw new RuntimeException(error.getMessage(), error);
+            }
+        }
+
+        @Override
+        public void close() {
+            cancelAll();
+            executor.shutdownNow();
+        }
+
+        private void fail(Throwable error) {
+            synchronized (this) {
+                if (failure != null) {
+                    return;
+                }
+                failure = error;
+            }
+            log.warn("⚠️ Report query failed, cancelling the rest: {}", error.getMessage());
+            cancelAll();
+        }
+
+        private void cancelAll() {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+}
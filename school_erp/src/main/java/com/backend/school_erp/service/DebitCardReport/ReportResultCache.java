@@ -0,0 +1,126 @@
+package com.backend.school_erp.service.DebitCardReport;
+
+import com.backend.school_erp.config.SchoolDataChangedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Results of the heavy class- and student-wise reports, kept per (school, academic year, report,
+ * filter) so repeated views with the same parameters skip the aggregation.
+ *
+ * The cache is bounded by the total number of report rows it holds
+ * ({@code report.cache.max-rows}); the least recently viewed reports are dropped first. Writes
+ * that change report data publish a {@link SchoolDataChangedEvent}, and the school's entries for
+ * that year are dropped when the publishing transaction completes (right away when there is
+ * none). A report that was being computed while the data changed is returned but not kept, so
+ * an entry never predates the last change. {@code report.cache.ttl-seconds} bounds the age of an
+ * entry for changes this instance does not see, such as writes made through another instance.
+ */
+@Service
+@Slf4j
+public class ReportResultCache {
+
+    @Value("${report.cache.max-rows:200000}")
+    private long maxRows;
+
+    @Value("${report.cache.ttl-seconds:600}")
+    private long ttlSeconds;
+
+    // Access order, so iteration starts at the least recently viewed entry. Guarded by this.
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    // Bumped on every change of a school. Guarded by this.
+    private final Map<String, Long> generations = new HashMap<>();
+    private long rows;
+
+    /**
+     * The cached result of the report, or the loader's result, which is kept for the next call.
+     *
+     * @param filter every other parameter of the report; compared with equals, so use values
+     *               such as strings, lists or records
+     */
+    public <T> List<T> get(String schoolId, String academicYear, String report, Object filter, Supplier<List<T>> loader) {
+        Key key = new Key(schoolId, yearKey(academicYear), report, filter);
+        long generation;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt() > System.currentTimeMillis()) {
+                @SuppressWarnings("unchecked")
+                List<T> value = (List<T>) entry.value();
+                return value;
+            }
+            if (entry != null) {
+                remove(key);
+            }
+            generation = generations.getOrDefault(schoolId, 0L);
+        }
+
+        List<T> value = Collections.unmodifiableList(new ArrayList<>(loader.get()));
+        synchronized (this) {
+            if (generation == generations.getOrDefault(schoolId, 0L) && value.size() <= maxRows) {
+                remove(key);
+                entries.put(key, new Entry(value, System.currentTimeMillis() + ttlSeconds * 1000));
+                rows += value.size();
+                evict();
+            }
+        }
+        return value;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMPLETION, fallbackExecution = true)
+    public void onSchoolDataChanged(SchoolDataChangedEvent event) {
+        invalidate(event.schoolId(), event.academicYear());
+        log.debug("🧹 Report cache cleared for {} {} after {}", event.schoolId(), event.academicYear(), event.source());
+    }
+
+    /**
+     * Drops the school's cached reports of one year, or of every year when {@code academicYear} is null.
+     */
+    public synchronized void invalidate(String schoolId, String academicYear) {
+        if (schoolId == null) {
+            return;
+        }
+        generations.merge(schoolId, 1L, Long::sum);
+        String year = academicYear != null ? yearKey(academicYear) : null;
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Entry> entry = it.next();
+            Key key = entry.getKey();
+            if (key.schoolId().equals(schoolId) && (year == null || year.equals(key.academicYear()))) {
+                rows -= entry.getValue().value().size();
+                it.remove();
+            }
+        }
+    }
+
+    private void remove(Key key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            rows -= entry.value().size();
+        }
+    }
+
+    private void evict() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (rows > maxRows && it.hasNext()) {
+            rows -= it.next().value().size();
+            it.remove();
+        }
+    }
+
+    // "2025-2026" and "2025_2026" name the same year
+    private static String yearKey(String academicYear) {
+        return academicYear.replaceAll("[^a-zA-Z0-9]", "_");
+    }
+
+    private record Key(String schoolId, String academicYear, String report, Object filter) {
+    }
+
+    private record Entry(List<?> value, long expiresAt) {
+    }
+}
@@ -1,51 +1,30 @@
 package com.backend.school_erp.service.DebitCardReport;
 
+import com.backend.school_erp.config.TenantDataSourceRouter;
 import com.backend.school_erp.config.DatabaseConfig; // 1. Import AWS Config
+import com.backend.school_erp.service.Transaction.DayBookBalanceService;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
-import com.zaxxer.hikari.HikariDataSource;
-import com.zaxxer.hikari.HikariConfig;
 
-import javax.sql.DataSource;
 import java.time.LocalDate;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @Slf4j
 public class ReportService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
 
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            log.info("Initializing HikariCP for school: {} on AWS RDS", id);
-
-            HikariConfig config = new HikariConfig();
-
-            // 2. Using AWS DB Constants from DatabaseConfig
-            // Appends the schoolId as the specific database name
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName(DatabaseConfig.JDBC_DRIVER);
-
-            // Performance and Stability settings for reporting
-            config.setMaximumPoolSize(10);
-            config.setMinimumIdle(2);
-            config.setIdleTimeout(30000);
-            config.setMaxLifetime(1800000);
-            config.setConnectionTimeout(10000);
-
-            return new HikariDataSource(config);
-        });
-    }
+    @Autowired
+    private DayBookBalanceService dayBookBalanceService;
 
     // --- TRIAL BALANCE GENERATOR ---
     public List<Map<String, Object>> getTrialBalance(String schoolId, LocalDate fromDate, LocalDate toDate, String academicYear, String type) {
-        JdbcTemplate jdbc = new JdbcTemplate(getDataSource(schoolId));
-        String tableName = type.equalsIgnoreCase("MISC") ? "day_book_mfc" : "day_book";
+        JdbcTemplate jdbc = tenantDataSourceRouter.getJdbcTemplate(schoolId);
+        String tableName = type.equalsIgnoreCase("MISC") ? DayBookBalanceService.MISC_DAY_BOOK : DayBookBalanceService.DAY_BOOK;
 
         // SQL: Group by Ledger
         String sql = String.format("""
@@ -54,26 +33,20 @@ public class ReportService {
                 SUM(credit) as totalReceipt,
                 SUM(debit) as totalPayment
             FROM %s 
-            WHERE academic_year = ? AND DATE(br_date) BETWEEN ? AND ?
+            WHERE academic_year = ? AND br_date >= ? AND br_date < ?
             GROUP BY ledger
             ORDER BY ledger
         """, tableName);
 
         try {
-            List<Map<String, Object>> rows = jdbc.queryForList(sql, academicYear, fromDate, toDate);
+            List<Map<String, Object>> rows = jdbc.queryForList(sql, academicYear, fromDate, toDate.plusDays(1));
 
             // Separate lists to enforce "By" first, then "To"
             List<Map<String, Object>> byList = new ArrayList<>();
             List<Map<String, Object>> toList = new ArrayList<>();
 
-            // 1. Calculate Opening Balance
-            String openingSql = String.format("""
-                SELECT COALESCE(SUM(credit) - SUM(debit), 0) 
-                FROM %s 
-                WHERE academic_year = ? AND DATE(br_date) < ?
-            """, tableName);
-
-            Double openingBal = jdbc.queryForObject(openingSql, Double.class, academicYear, fromDate);
+            // 1. Calculate Opening Balance (closing of the day before, from the daily snapshots)
+            Double openingBal = dayBookBalanceService.openingBalance(jdbc, tableName, schoolId, academicYear, fromDate);
 
             // 2. Add Actual Rows to specific lists
             for (Map<String, Object> row : rows) {
@@ -0,0 +1,48 @@
+package com.backend.school_erp.service.Export;
+
+import java.io.OutputStream;
+import java.util.Locale;
+
+/**
+ * File formats the report exports can be downloaded in ({@code ?format=csv|xlsx}).
+ */
+public enum ExportFormat {
+
+    CSV("csv", "text/csv; charset=UTF-8"),
+    XLSX("xlsx", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+
+    private final String extension;
+    private final String contentType;
+
+    ExportFormat(String extension, String contentType) {
+        this.extension = extension;
+        this.contentType = contentType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public ExportWriter open(OutputStream out, String sheetName) {
+        return switch (this) {
+            case CSV -> new CsvExportWriter(out);
+            case XLSX -> new XlsxExportWriter(out, sheetName);
+        };
+    }
+
+    // Missing format means CSV
+    public static ExportFormat of(String format) {
+        if (format == null || format.isBlank()) {
+            return CSV;
+        }
+        try {
+            return valueOf(format.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unsupported export format: " + format + " (use csv or xlsx)");
+        }
+    }
+}
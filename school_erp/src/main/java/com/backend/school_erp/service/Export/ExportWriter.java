@@ -0,0 +1,58 @@
+package com.backend.school_erp.service.Export;
+
+import java.io.Closeable;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Writes one export file row by row. Rows go straight to the response through a fixed size
+ * buffer, so nothing of the report is kept once a row is written.
+ *
+ * Write failures (usually the client going away) are thrown as {@link java.io.UncheckedIOException}
+ * so rows can be written from JDBC row callbacks. {@link #close} finishes the file but leaves the
+ * underlying stream open.
+ */
+public interface ExportWriter extends Closeable {
+
+    DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    void writeHeader(List<String> columns);
+
+    void writeRow(Object... values);
+
+    @Override
+    void close();
+
+    /**
+     * Text of a cell value: dates as yyyy-MM-dd, timestamps as yyyy-MM-dd HH:mm:ss, null as empty.
+     */
+    static String text(Object value) {
+        if (value == null) {
+            return "";
+        }
+        if (value instanceof Timestamp timestamp) {
+            return timestamp.toLocalDateTime().format(DATE_TIME);
+        }
+        if (value instanceof LocalDateTime dateTime) {
+            return dateTime.format(DATE_TIME);
+        }
+        if (value instanceof BigDecimal decimal) {
+            return decimal.toPlainString();
+        }
+        return value.toString();
+    }
+
+    // Numbers Excel can store as numeric cells (NaN and infinities are written as text)
+    static boolean isNumeric(Object value) {
+        if (value instanceof Double d) {
+            return Double.isFinite(d);
+        }
+        if (value instanceof Float f) {
+            return Float.isFinite(f);
+        }
+        return value instanceof Number;
+    }
+}
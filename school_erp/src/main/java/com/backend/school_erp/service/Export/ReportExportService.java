@@ -0,0 +1,129 @@
+package com.backend.school_erp.service.Export;
+
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Streams report rows from the JDBC cursor straight into a CSV or XLSX download.
+ *
+ * Rows are read with a bounded fetch size and written through fixed size buffers as they
+ * arrive, so a full-school register or a year of collections exports in the same memory as a
+ * single page. On MySQL, Connector/J ignores positive fetch sizes unless cursor fetch is enabled
+ * for the whole connection, so export queries there use its row-by-row streaming mode instead.
+ */
+@Service
+@Slf4j
+public class ReportExportService {
+
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Value("${export.fetch-size:500}")
+    private int fetchSize;
+
+    /**
+     * Download response for an export; {@code body} runs once the client starts reading and
+     * writes its rows to the writer it is given.
+     */
+    public ResponseEntity<StreamingResponseBody> download(String fileName, ExportFormat format, Consumer<ExportWriter> body) {
+        StreamingResponseBody stream = out -> {
+            try (ExportWriter writer = format.open(out, fileName)) {
+                body.accept(writer);
+            } catch (RuntimeException e) {
+                // Headers are already sent, the client sees a truncated file
+                log.error("❌ Export {} failed mid-stream: {}", fileName, e.getMessage(), e);
+                throw e;
+            }
+        };
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(fileName + "." + format.getExtension(), StandardCharsets.UTF_8)
+                        .build()
+                        .toString())
+                .contentType(MediaType.parseMediaType(format.getContentType()))
+                .body(stream);
+    }
+
+    /**
+     * Writes the query result as a table: a header of the column labels, then one line per row.
+     * Binary columns (photos, documents) are left out.
+     */
+    public long exportQuery(String schoolId, String sql, ExportWriter writer, Object... params) {
+        long rows = stream(schoolId, sql, params, rs -> {
+            ResultSetMetaData meta = rs.getMetaData();
+            List<Integer> columns = new ArrayList<>();
+            List<String> labels = new ArrayList<>();
+            for (int i = 1; i <= meta.getColumnCount(); i++) {
+                if (!isBinary(meta.getColumnType(i))) {
+                    columns.add(i);
+                    labels.add(JdbcUtils.lookupColumnName(meta, i));
+                }
+            }
+            writer.writeHeader(labels);
+
+            Object[] values = new Object[columns.size()];
+            long count = 0;
+            while (rs.next()) {
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = JdbcUtils.getResultSetValue(rs, columns.get(i));
+                }
+                writer.writeRow(values);
+                count++;
+            }
+            return count;
+        });
+        log.info("📤 Exported {} rows for school {}", rows, schoolId);
+        return rows;
+    }
+
+    /**
+     * Hands every row of the query to {@code handler} while it is read from the cursor.
+     */
+    public void streamRows(String schoolId, String sql, RowCallbackHandler handler, Object... params) {
+        stream(schoolId, sql, params, rs -> {
+            while (rs.next()) {
+                handler.processRow(rs);
+            }
+            return null;
+        });
+    }
+
+    private <T> T stream(String schoolId, String sql, Object[] params, ResultSetExtractor<T> extractor) {
+        JdbcTemplate jdbc = tenantDataSourceRouter.getJdbcTemplate(schoolId);
+        return jdbc.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(isMySql(con) ? Integer.MIN_VALUE : fetchSize);
+            new ArgumentPreparedStatementSetter(params).setValues(ps);
+            return ps;
+        }, extractor);
+    }
+
+    private static boolean isMySql(Connection con) throws SQLException {
+        String url = con.getMetaData().getURL();
+        return url != null && url.startsWith("jdbc:mysql:");
+    }
+
+    private static boolean isBinary(int sqlType) {
+        return sqlType == Types.BINARY || sqlType == Types.VARBINARY
+                || sqlType == Types.LONGVARBINARY || sqlType == Types.BLOB;
+    }
+}
@@ -0,0 +1,203 @@
+package com.backend.school_erp.service.Export;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Single sheet .xlsx written as it goes.
+ *
+ * An xlsx file is a zip of XML parts. Everything except the sheet is a few fixed lines, and the
+ * sheet is written row by row with inline strings (no shared string table), so memory stays the
+ * same whatever the row count. The header row is bold; numbers are stored as numeric cells and
+ * everything else as text.
+ */
+public class XlsxExportWriter implements ExportWriter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String CONTENT_TYPES = """
+            <?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+            <Types xmlns="http://schemas.openxmlformats.org/package/2006/content-types">\
+            <Default Extension="rels" ContentType="application/vnd.openxmlformats-package.relationships+xml"/>\
+            <Default Extension="xml" ContentType="application/xml"/>\
+            <Override PartName="/xl/workbook.xml" ContentType="application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml"/>\
+            <Override PartName="/xl/worksheets/sheet1.xml" ContentType="application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml"/>\
+            <Override PartName="/xl/styles.xml" ContentType="application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml"/>\
+            </Types>""";
+
+    private static final String ROOT_RELS = """
+            <?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+            <Relationships xmlns="http://schemas.openxmlformats.org/package/2006/relationships">\
+            <Relationship Id="rId1" Type="http://schemas.openxmlformats.org/officeDocument/2006/relationships/officeDocument" Target="xl/workbook.xml"/>\
+            </Relationships>""";
+
+    private static final String WORKBOOK = """
+            <?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+            <workbook xmlns="http://schemas.openxmlformats.org/spreadsheetml/2006/main" \
+            xmlns:r="http://schemas.openxmlformats.org/officeDocument/2006/relationships">\
+            <sheets><sheet name="%s" sheetId="1" r:id="rId1"/></sheets>\
+            </workbook>""";
+
+    private static final String WORKBOOK_RELS = """
+            <?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+            <Relationships xmlns="http://schemas.openxmlformats.org/package/2006/relationships">\
+            <Relationship Id="rId1" Type="http://schemas.openxmlformats.org/officeDocument/2006/relationships/worksheet" Target="worksheets/sheet1.xml"/>\
+            <Relationship Id="rId2" Type="http://schemas.openxmlformats.org/officeDocument/2006/relationships/styles" Target="styles.xml"/>\
+            </Relationships>""";
+
+    // Style 0 is the default, style 1 the bold header
+    private static final String STYLES = """
+            <?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+            <styleSheet xmlns="http://schemas.openxmlformats.org/spreadsheetml/2006/main">\
+            <fonts count="2"><font><sz val="11"/><name val="Calibri"/></font><font><b/><sz val="11"/><name val="Calibri"/></font></fonts>\
+            <fills count="2"><fill><patternFill patternType="none"/></fill><fill><patternFill patternType="gray125"/></fill></fills>\
+            <borders count="1"><border><left/><right/><top/><bottom/><diagonal/></border></borders>\
+            <cellStyleXfs count="1"><xf numFmtId="0" fontId="0" fillId="0" borderId="0"/></cellStyleXfs>\
+            <cellXfs count="2"><xf numFmtId="0" fontId="0" fillId="0" borderId="0" xfId="0"/>\
+            <xf numFmtId="0" fontId="1" fillId="0" borderId="0" xfId="0" applyFont="1"/></cellXfs>\
+            </styleSheet>""";
+
+    private static final String SHEET_START = """
+            <?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+            <worksheet xmlns="http://schemas.openxmlformats.org/spreadsheetml/2006/main"><sheetData>""";
+
+    private static final String SHEET_END = "</sheetData></worksheet>";
+
+    private final ZipOutputStream zip;
+    private final Writer sheet;
+    private final List<String> columnNames = new ArrayList<>();
+    private final StringBuilder row = new StringBuilder(512);
+    private int rowNumber;
+
+    XlsxExportWriter(OutputStream out, String sheetName) {
+        try {
+            zip = new ZipOutputStream(new BufferedOutputStream(out, BUFFER_SIZE), StandardCharsets.UTF_8);
+            writePart("[Content_Types].xml", CONTENT_TYPES);
+            writePart("_rels/.rels", ROOT_RELS);
+            writePart("xl/workbook.xml", String.format(WORKBOOK, escape(sheetTitle(sheetName))));
+            writePart("xl/_rels/workbook.xml.rels", WORKBOOK_RELS);
+            writePart("xl/styles.xml", STYLES);
+            zip.putNextEntry(new ZipEntry("xl/worksheets/sheet1.xml"));
+            // Not closed: closing it would close the zip before its directory is written
+            sheet = new BufferedWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8), BUFFER_SIZE);
+            sheet.write(SHEET_START);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void writeHeader(List<String> columns) {
+        writeCells(columns.toArray(), true);
+    }
+
+    @Override
+    public void writeRow(Object... values) {
+        writeCells(values, false);
+    }
+
+    @Override
+    public void close() {
+        try {
+            sheet.write(SHEET_END);
+            sheet.flush();
+            zip.closeEntry();
+            zip.finish();
+            zip.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeCells(Object[] values, boolean header) {
+        rowNumber++;
+        row.setLength(0);
+        row.append("<row r=\"").append(rowNumber).append("\">");
+        for (int i = 0; i < values.length; i++) {
+            Object value = values[i];
+            if (value == null) {
+                continue;
+            }
+            row.append("<c r=\"").append(columnName(i)).append(rowNumber).append('"');
+            if (header) {
+                row.append(" s=\"1\"");
+            }
+            if (ExportWriter.isNumeric(value)) {
+                row.append("><v>").append(ExportWriter.text(value)).append("</v></c>");
+            } else {
+                String text = ExportWriter.text(value);
+                row.append(" t=\"inlineStr\"><is><t");
+                if (!text.isEmpty() && (Character.isWhitespace(text.charAt(0)) || Character.isWhitespace(text.charAt(text.length() - 1)))) {
+                    row.append(" xml:space=\"preserve\"");
+                }
+                row.append('>').append(escape(text)).append("</t></is></c>");
+            }
+        }
+        row.append("</row>");
+        try {
+            sheet.write(row.toString());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writePart(String name, String content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content.getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+    }
+
+    // A, B, ..., Z, AA, AB, ... computed once per column
+    private String columnName(int index) {
+        while (columnNames.size() <= index) {
+            int n = columnNames.size() + 1;
+            StringBuilder name = new StringBuilder();
+            while (n > 0) {
+                n--;
+                name.insert(0, (char) ('A' + n % 26));
+                n /= 26;
+            }
+            columnNames.add(name.toString());
+        }
+        return columnNames.get(index);
+    }
+
+    // Excel sheet names: at most 31 characters, none of []:*?/\
+    private static String sheetTitle(String name) {
+        String title = name == null ? "" : name.replaceAll("[\\[\\]:*?/\\\\]", " ").trim();
+        if (title.isEmpty()) {
+            return "Sheet1";
+        }
+        return title.length() > 31 ? title.substring(0, 31) : title;
+    }
+
+    // Escapes markup and drops control characters XML 1.0 cannot carry
+    private static String escape(String text) {
+        StringBuilder escaped = null;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            String replacement = switch (c) {
+                case '&' -> "&amp;";
+                case '<' -> "&lt;";
+                case '>' -> "&gt;";
+                case '"' -> "&quot;";
+                default -> c < 0x20 && c != '\t' && c != '\n' && c != '\r' ? "" : null;
+            };
+            if (replacement != null && escaped == null) {
+                escaped = new StringBuilder(text.length() + 16).append(text, 0, i);
+            }
+            if (escaped != null) {
+                if (replacement != null) {
+                    escaped.append(replacement);
+                } else {
+                    escaped.append(c);
+                }
+            }
+        }
+        return escaped == null ? text : escaped.toString();
+    }
+}
@@ -0,0 +1,94 @@
+package com.backend.school_erp.service.Import;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RFC 4180 CSV in UTF-8, with or without a byte order mark (as Excel saves it). Quoted fields
+ * may hold commas, doubled quotes and line breaks.
+ */
+public class CsvImportReader implements ImportReader {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Reader in;
+    private int rowNumber;
+    private boolean finished;
+
+    CsvImportReader(InputStream in) {
+        this.in = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE);
+        try {
+            this.in.mark(1);
+            if (this.in.read() != '\uFEFF') {
+                this.in.reset();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public ImportRow next() {
+        if (finished) {
+            return null;
+        }
+        try {
+            List<String> cells = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            boolean any = false;
+            int c;
+            while ((c = in.read()) != -1) {
+                any = true;
+                if (quoted) {
+                    if (c != '"') {
+                        field.append((char) c);
+                        continue;
+                    }
+                    in.mark(1);
+                    if (in.read() == '"') {
+                        field.append('"');
+                    } else {
+                        in.reset();
+                        quoted = false;
+                    }
+                } else if (c == '"' && field.isEmpty()) {
+                    quoted = true;
+                } else if (c == ',') {
+                    cells.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\r' || c == '\n') {
+                    if (c == '\r') {
+                        in.mark(1);
+                        if (in.read() != '\n') {
+                            in.reset();
+                        }
+                    }
+                    cells.add(field.toString());
+                    return new ImportRow(++rowNumber, cells);
+                } else {
+                    field.append((char) c);
+                }
+            }
+            finished = true;
+            if (!any) {
+                return null;
+            }
+            cells.add(field.toString());
+            return new ImportRow(++rowNumber, cells);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            in.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
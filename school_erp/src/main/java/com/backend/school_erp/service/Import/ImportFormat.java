@@ -0,0 +1,31 @@
+package com.backend.school_erp.service.Import;
+
+import java.io.InputStream;
+import java.util.Locale;
+
+/**
+ * File formats sheets can be uploaded in, told apart by the file name's extension.
+ */
+public enum ImportFormat {
+
+    CSV,
+    XLSX;
+
+    public ImportReader open(InputStream in) {
+        return switch (this) {
+            case CSV -> new CsvImportReader(in);
+            case XLSX -> new XlsxImportReader(in);
+        };
+    }
+
+    public static ImportFormat of(String fileName) {
+        String name = fileName == null ? "" : fileName.trim().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".csv")) {
+            return CSV;
+        }
+        if (name.endsWith(".xlsx")) {
+            return XLSX;
+        }
+        throw new IllegalArgumentException("Unsupported import file: " + fileName + " (use .csv or .xlsx)");
+    }
+}
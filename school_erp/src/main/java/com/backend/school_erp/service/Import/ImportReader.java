@@ -0,0 +1,20 @@
+package com.backend.school_erp.service.Import;
+
+import java.io.Closeable;
+
+/**
+ * Reads an uploaded sheet row by row, so only the current row is held whatever the file's size.
+ *
+ * Read failures are thrown as {@link java.io.UncheckedIOException}, and a file that is not what
+ * its format says as {@link IllegalArgumentException}.
+ */
+public interface ImportReader extends Closeable {
+
+    /**
+     * The next row (the header first), or null after the last one.
+     */
+    ImportRow next();
+
+    @Override
+    void close();
+}
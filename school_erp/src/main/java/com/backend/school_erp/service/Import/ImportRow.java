@@ -0,0 +1,23 @@
+package com.backend.school_erp.service.Import;
+
+import java.util.List;
+
+/**
+ * One row of an uploaded sheet.
+ *
+ * @param number the row's number as the user sees it in the sheet, the header being row 1
+ */
+public record ImportRow(int number, List<String> cells) {
+
+    // Trimmed text of the cell, empty when the row is shorter
+    public String cell(int index) {
+        if (index < 0 || index >= cells.size() || cells.get(index) == null) {
+            return "";
+        }
+        return cells.get(index).trim();
+    }
+
+    public boolean isBlank() {
+        return cells.stream().allMatch(cell -> cell == null || cell.isBlank());
+    }
+}
@@ -0,0 +1,336 @@
+package com.backend.school_erp.service.Import;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import static javax.xml.stream.XMLStreamConstants.END_ELEMENT;
+import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
+
+/**
+ * First sheet of an .xlsx file.
+ *
+ * An xlsx file is a zip of XML parts, and the sheet's text cells point into a shared string table
+ * that may come after the sheet in the zip. The upload is therefore copied to a temporary file,
+ * the shared strings and styles are read whole, and the sheet is then read row by row. Cells
+ * formatted as dates come out as yyyy-MM-dd and other numbers in plain notation, so phone and
+ * Aadhaar numbers read back as typed.
+ */
+public class XlsxImportReader implements ImportReader {
+
+    private static final String RELATIONSHIPS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final LocalDate EXCEL_EPOCH = LocalDate.of(1899, 12, 30);
+    private static final XMLInputFactory XML = XMLInputFactory.newInstance();
+
+    static {
+        XML.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        XML.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private final Path file;
+    private ZipFile zip;
+    private InputStream sheetStream;
+    private XMLStreamReader sheet;
+    private List<String> sharedStrings;
+    private List<Boolean> dateStyles;
+    private int lastRow;
+
+    XlsxImportReader(InputStream in) {
+        try {
+            file = Files.createTempFile("import", ".xlsx");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+            zip = new ZipFile(file.toFile());
+            sharedStrings = readSharedStrings();
+            dateStyles = readDateStyles();
+            ZipEntry entry = zip.getEntry(firstSheet());
+            if (entry == null) {
+                throw new IllegalArgumentException("The workbook has no sheet");
+            }
+            sheetStream = zip.getInputStream(entry);
+            sheet = XML.createXMLStreamReader(sheetStream);
+        } catch (ZipException | XMLStreamException e) {
+            close();
+            throw new IllegalArgumentException("Not a valid .xlsx file: " + e.getMessage(), e);
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public ImportRow next() {
+        try {
+            while (sheet.hasNext()) {
+                if (sheet.next() == START_ELEMENT && "row".equals(sheet.getLocalName())) {
+                    return readRow();
+                }
+            }
+            return null;
+        } catch (XMLStreamException e) {
+            throw new IllegalArgumentException("Not a valid .xlsx file: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (sheet != null) {
+                sheet.close();
+            }
+            if (sheetStream != null) {
+                sheetStream.close();
+            }
+            if (zip != null) {
+                zip.close();
+            }
+            Files.deleteIfExists(file);
+        } catch (IOException | XMLStreamException e) {
+            throw new IllegalStateException("Could not remove the uploaded sheet: " + e.getMessage(), e);
+        }
+    }
+
+    private ImportRow readRow() throws XMLStreamException {
+        lastRow = parseInt(sheet.getAttributeValue(null, "r"), lastRow + 1);
+        List<String> cells = new ArrayList<>();
+        while (sheet.hasNext()) {
+            int event = sheet.next();
+            if (event == START_ELEMENT && "c".equals(sheet.getLocalName())) {
+                int column = columnIndex(sheet.getAttributeValue(null, "r"), cells.size());
+                String value = readCell();
+                while (cells.size() < column) {
+                    cells.add("");
+                }
+                cells.add(value);
+            } else if (event == END_ELEMENT && "row".equals(sheet.getLocalName())) {
+                break;
+            }
+        }
+        return new ImportRow(lastRow, cells);
+    }
+
+    private String readCell() throws XMLStreamException {
+        String type = sheet.getAttributeValue(null, "t");
+        String style = sheet.getAttributeValue(null, "s");
+        String value = null;
+        StringBuilder inline = new StringBuilder();
+        int phonetic = 0;
+        while (sheet.hasNext()) {
+            int event = sheet.next();
+            if (event == START_ELEMENT) {
+                switch (sheet.getLocalName()) {
+                    case "v" -> value = sheet.getElementText();
+                    case "rPh" -> phonetic++;
+                    case "t" -> {
+                        String text = sheet.getElementText();
+                        if (phonetic == 0) {
+                            inline.append(text);
+                        }
+                    }
+                    default -> {
+                    }
+                }
+            } else if (event == END_ELEMENT) {
+                if ("rPh".equals(sheet.getLocalName())) {
+                    phonetic--;
+                } else if ("c".equals(sheet.getLocalName())) {
+                    break;
+                }
+            }
+        }
+
+        if ("inlineStr".equals(type)) {
+            return inline.toString();
+        }
+        if (value == null) {
+            return "";
+        }
+        return switch (type == null ? "n" : type) {
+            case "s" -> {
+                int index = parseInt(value.trim(), -1);
+                yield index >= 0 && index < sharedStrings.size() ? sharedStrings.get(index) : "";
+            }
+            case "b" -> "1".equals(value.trim()) ? "TRUE" : "FALSE";
+            case "n" -> number(value.trim(), parseInt(style, 0));
+            default -> value;
+        };
+    }
+
+    private String number(String value, int style) {
+        try {
+            if (style < dateStyles.size() && dateStyles.get(style)) {
+                return EXCEL_EPOCH.plusDays((long) Math.floor(Double.parseDouble(value))).toString();
+            }
+            return new BigDecimal(value).stripTrailingZeros().toPlainString();
+        } catch (NumberFormatException e) {
+            return value;
+        }
+    }
+
+    private List<String> readSharedStrings() throws IOException, XMLStreamException {
+        List<String> strings = new ArrayList<>();
+        ZipEntry entry = zip.getEntry("xl/sharedStrings.xml");
+        if (entry == null) {
+            return strings;
+        }
+        try (InputStream in = zip.getInputStream(entry)) {
+            XMLStreamReader xml = XML.createXMLStreamReader(in);
+            StringBuilder text = null;
+            int phonetic = 0;
+            while (xml.hasNext()) {
+                int event = xml.next();
+                if (event == START_ELEMENT) {
+                    switch (xml.getLocalName()) {
+                        case "si" -> text = new StringBuilder();
+                        case "rPh" -> phonetic++;
+                        case "t" -> {
+                            String t = xml.getElementText();
+                            if (text != null && phonetic == 0) {
+                                text.append(t);
+                            }
+                        }
+                        default -> {
+                        }
+                    }
+                } else if (event == END_ELEMENT) {
+                    if ("rPh".equals(xml.getLocalName())) {
+                        phonetic--;
+                    } else if ("si".equals(xml.getLocalName()) && text != null) {
+                        strings.add(text.toString());
+                        text = null;
+                    }
+                }
+            }
+            xml.close();
+        }
+        return strings;
+    }
+
+    // Whether each cell style (by its index in cellXfs) shows numbers as dates
+    private List<Boolean> readDateStyles() throws IOException, XMLStreamException {
+        List<Boolean> dates = new ArrayList<>();
+        ZipEntry entry = zip.getEntry("xl/styles.xml");
+        if (entry == null) {
+            return dates;
+        }
+        Map<Integer, String> formats = new HashMap<>();
+        try (InputStream in = zip.getInputStream(entry)) {
+            XMLStreamReader xml = XML.createXMLStreamReader(in);
+            boolean cellXfs = false;
+            while (xml.hasNext()) {
+                int event = xml.next();
+                if (event == START_ELEMENT) {
+                    switch (xml.getLocalName()) {
+                        case "numFmt" -> formats.put(parseInt(xml.getAttributeValue(null, "numFmtId"), -1),
+                                xml.getAttributeValue(null, "formatCode"));
+                        case "cellXfs" -> cellXfs = true;
+                        case "xf" -> {
+                            if (cellXfs) {
+                                int format = parseInt(xml.getAttributeValue(null, "numFmtId"), 0);
+                                dates.add(isDateFormat(format, formats.get(format)));
+                            }
+                        }
+                        default -> {
+                        }
+                    }
+                } else if (event == END_ELEMENT && "cellXfs".equals(xml.getLocalName())) {
+                    cellXfs = false;
+                }
+            }
+            xml.close();
+        }
+        return dates;
+    }
+
+    // Built-in formats 14-17 and 22 are dates; custom ones are when they show a day or year
+    private static boolean isDateFormat(int format, String code) {
+        if ((format >= 14 && format <= 17) || format == 22) {
+            return true;
+        }
+        if (code == null) {
+            return false;
+        }
+        String shown = code.replaceAll("\"[^\"]*\"|\\[[^]]*]|\\\\.", "").toLowerCase(Locale.ROOT);
+        return shown.contains("d") || shown.contains("y");
+    }
+
+    // The part of the workbook's first sheet, by way of the workbook's relationships
+    private String firstSheet() throws IOException, XMLStreamException {
+        String fallback = "xl/worksheets/sheet1.xml";
+        String id = firstAttribute("xl/workbook.xml", "sheet", RELATIONSHIPS, "id", null);
+        if (id == null) {
+            return fallback;
+        }
+        String target = firstAttribute("xl/_rels/workbook.xml.rels", "Relationship", null, "Target", id);
+        if (target == null) {
+            return fallback;
+        }
+        return target.startsWith("/") ? target.substring(1) : "xl/" + target;
+    }
+
+    // The attribute of the first such element of the part (with that Id, when one is given)
+    private String firstAttribute(String part, String element, String namespace, String attribute, String withId)
+            throws IOException, XMLStreamException {
+        ZipEntry entry = zip.getEntry(part);
+        if (entry == null) {
+            return null;
+        }
+        try (InputStream in = zip.getInputStream(entry)) {
+            XMLStreamReader xml = XML.createXMLStreamReader(in);
+            try {
+                while (xml.hasNext()) {
+                    if (xml.next() == START_ELEMENT && element.equals(xml.getLocalName())
+                            && (withId == null || withId.equals(xml.getAttributeValue(null, "Id")))) {
+                        return xml.getAttributeValue(namespace, attribute);
+                    }
+                }
+                return null;
+            } finally {
+                xml.close();
+            }
+        }
+    }
+
+    // Zero-based column of a cell reference such as "AB12"
+    private static int columnIndex(String reference, int fallback) {
+        if (reference == null) {
+            return fallback;
+        }
+        int column = 0;
+        int i = 0;
+        while (i < reference.length() && Character.isLetter(reference.charAt(i))) {
+            column = column * 26 + (Character.toUpperCase(reference.charAt(i)) - 'A' + 1);
+            i++;
+        }
+        return i == 0 ? fallback : column - 1;
+    }
+
+    private static int parseInt(String value, int fallback) {
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+}
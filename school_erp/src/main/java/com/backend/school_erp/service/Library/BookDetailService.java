@@ -1,103 +1,116 @@
 package com.backend.school_erp.service.Library;
 
+import com.backend.school_erp.DTO.KeysetPage;
 import com.backend.school_erp.DTO.Library.BookDetailDTO;
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
 import com.backend.school_erp.entity.Library.BookDetail;
+import com.backend.school_erp.service.Media.MediaFile;
+import com.backend.school_erp.service.Media.MediaStore;
+import com.backend.school_erp.service.Paging.KeysetQuery;
+import com.backend.school_erp.service.Paging.KeysetSort;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import javax.sql.DataSource;
 import java.math.BigDecimal;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.Map;
-
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
+import java.util.Optional;
 
 @Service
 @Slf4j
 public class BookDetailService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
-
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            log.info("🔗 Creating HikariCP DataSource for school: {}", id);
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-            config.setMaximumPoolSize(10);
-            config.setMinimumIdle(2);
-            config.setIdleTimeout(30000);
-            config.setMaxLifetime(1800000);
-            config.setConnectionTimeout(10000);
-            return new HikariDataSource(config);
-        });
-    }
+    // Paged list rows: every column but the cover photo
+    private static final String BOOK_LIST_COLUMNS = """
+            id, book_id, isbn, book_cover_photo_ref, book_title, author_name, category, edition, publisher, total_copies,
+            available_copies, book_status, school_id, academic_year, language, pages, published_date,
+            description, purchase_rate, selling_rate, mrp""";
+
+    // "recent" follows insertion order, like created_at DESC in getAllBooks
+    private static final KeysetSort RECENT = KeysetSort.desc("recent", "id");
+    private static final Map<String, KeysetSort> BOOK_SORTS = Map.of(
+            "recent", RECENT,
+            "title", KeysetSort.asc("title", "book_title"),
+            "bookId", KeysetSort.asc("bookId", "book_id"));
+
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
+
+    @Autowired
+    private MediaStore mediaStore;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     private void ensureTableExists(JdbcTemplate jdbc) {
-        jdbc.execute("""
-            CREATE TABLE IF NOT EXISTS book_details (
-                id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                book_id VARCHAR(50) NOT NULL,
-                isbn VARCHAR(20),
-                book_cover_photo MEDIUMBLOB,
-                book_title VARCHAR(255) NOT NULL,
-                author_name VARCHAR(100) NOT NULL,
-                category VARCHAR(50),
-                edition VARCHAR(50),
-                publisher VARCHAR(100),
-                total_copies INT NOT NULL,
-                available_copies INT NOT NULL,
-                book_status VARCHAR(50),
-                school_id VARCHAR(50) NOT NULL,
-                academic_year VARCHAR(50) NOT NULL,
-                language VARCHAR(50),
-                pages INT,
-                published_date VARCHAR(20),
-                description TEXT,
+        schemaMigrator.migrate(jdbc, "BookDetailService", 2, () -> {
+            jdbc.execute("""
+                CREATE TABLE IF NOT EXISTS book_details (
+                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    book_id VARCHAR(50) NOT NULL,
+                    isbn VARCHAR(20),
+                    book_cover_photo MEDIUMBLOB,
+                    book_cover_photo_ref CHAR(64),
+                    book_title VARCHAR(255) NOT NULL,
+                    author_name VARCHAR(100) NOT NULL,
+                    category VARCHAR(50),
+                    edition VARCHAR(50),
+                    publisher VARCHAR(100),
+                    total_copies INT NOT NULL,
+                    available_copies INT NOT NULL,
+                    book_status VARCHAR(50),
+                    school_id VARCHAR(50) NOT NULL,
+                    academic_year VARCHAR(50) NOT NULL,
+                    language VARCHAR(50),
+                    pages INT,
+                    published_date VARCHAR(20),
+                    description TEXT,
                 
-                -- New pricing columns
-                purchase_rate DECIMAL(10, 2),
-                selling_rate DECIMAL(10, 2),
-                mrp DECIMAL(10, 2),
+                    -- New pricing columns
+                    purchase_rate DECIMAL(10, 2),
+                    selling_rate DECIMAL(10, 2),
+                    mrp DECIMAL(10, 2),
                 
-                created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                UNIQUE KEY unique_book (book_id, school_id, academic_year)
-            )
-        """);
-
-        // Add new columns if they don't exist
-        try {
-            jdbc.execute("ALTER TABLE book_details ADD COLUMN IF NOT EXISTS purchase_rate DECIMAL(10, 2)");
-            jdbc.execute("ALTER TABLE book_details ADD COLUMN IF NOT EXISTS selling_rate DECIMAL(10, 2)");
-            jdbc.execute("ALTER TABLE book_details ADD COLUMN IF NOT EXISTS mrp DECIMAL(10, 2)");
-            log.info("Ensured pricing columns exist in book_details table");
-        } catch (Exception e) {
-            log.warn("Could not add pricing columns: {}", e.getMessage());
-        }
-
-        try {
-            jdbc.execute("""
-                ALTER TABLE book_details MODIFY COLUMN book_cover_photo MEDIUMBLOB
+                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    UNIQUE KEY unique_book (book_id, school_id, academic_year)
+                )
             """);
-            log.info("Ensured book_cover_photo column is MEDIUMBLOB");
-        } catch (Exception e) {
-            log.warn("Could not modify book_cover_photo column to MEDIUMBLOB: {}", e.getMessage());
-        }
+
+            // Add new columns if they don't exist
+            try {
+                jdbc.execute("ALTER TABLE book_details ADD COLUMN IF NOT EXISTS purchase_rate DECIMAL(10, 2)");
+                jdbc.execute("ALTER TABLE book_details ADD COLUMN IF NOT EXISTS selling_rate DECIMAL(10, 2)");
+                jdbc.execute("ALTER TABLE book_details ADD COLUMN IF NOT EXISTS mrp DECIMAL(10, 2)");
+                log.info("Ensured pricing columns exist in book_details table");
+            } catch (Exception e) {
+                log.warn("Could not add pricing columns: {}", e.getMessage());
+            }
+
+            try {
+                jdbc.execute("""
+                    ALTER TABLE book_details MODIFY COLUMN book_cover_photo MEDIUMBLOB
+                """);
+                log.info("Ensured book_cover_photo column is MEDIUMBLOB");
+            } catch (Exception e) {
+                log.warn("Could not modify book_cover_photo column to MEDIUMBLOB: {}", e.getMessage());
+            }
+
+            mediaStore.ensureReferenceColumn(jdbc, "book_details", "book_cover_photo");
+        });
     }
 
     // Method to generate auto Book ID WITHOUT XPO
@@ -182,14 +195,22 @@ public class BookDetailService {
         }
     }
 
-    private static class BookDetailRowMapper implements RowMapper<BookDetail> {
+    private class BookDetailRowMapper implements RowMapper<BookDetail> {
+        // School whose covers are loaded; null for list pages, which do not select the cover photo
+        private final String coverSchoolId;
+
+        BookDetailRowMapper(String coverSchoolId) {
+            this.coverSchoolId = coverSchoolId;
+        }
+
         @Override
         public BookDetail mapRow(ResultSet rs, int rowNum) throws SQLException {
             return BookDetail.builder()
                     .id(rs.getLong("id"))
                     .bookId(rs.getString("book_id"))
                     .isbn(rs.getString("isbn"))
-                    .bookCoverPhoto(rs.getBytes("book_cover_photo"))
+                    .bookCoverPhoto(coverSchoolId != null ? coverPhoto(rs) : null)
+                    .bookCoverPhotoRef(rs.getString("book_cover_photo_ref"))
                     .bookTitle(rs.getString("book_title"))
                     .authorName(rs.getString("author_name"))
                     .category(rs.getString("category"))
@@ -212,6 +233,12 @@ public class BookDetailService {
 
                     .build();
         }
+
+        // Covers saved before the media store are still in the row
+        private byte[] coverPhoto(ResultSet rs) throws SQLException {
+            byte[] blob = rs.getBytes("book_cover_photo");
+            return blob != null ? blob : mediaStore.read(coverSchoolId, rs.getString("book_cover_photo_ref"));
+        }
     }
 
     public BookDetail addBookDetail(String schoolId, BookDetailDTO dto, byte[] coverPhoto) {
@@ -252,7 +279,7 @@ public class BookDetailService {
         // Insert the book
         String sql = """
             INSERT INTO book_details (
-                book_id, isbn, book_cover_photo, book_title, author_name, 
+                book_id, isbn, book_cover_photo_ref, book_title, author_name, 
                 category, edition, publisher, total_copies, available_copies, 
                 book_status, school_id, academic_year, language, pages, 
                 published_date, description, purchase_rate, selling_rate, mrp
@@ -260,7 +287,8 @@ public class BookDetailService {
             """;
 
         int rows = jdbc.update(sql,
-                dto.getBookId(), dto.getIsbn(), coverPhoto, dto.getBookTitle(), dto.getAuthorName(),
+                dto.getBookId(), dto.getIsbn(), coverPhoto != null && coverPhoto.length > 0 ? mediaStore.put(schoolId, coverPhoto) : null,
+                dto.getBookTitle(), dto.getAuthorName(),
                 dto.getCategory(), dto.getEdition(), dto.getPublisher(), dto.getTotalCopies(),
                 dto.getAvailableCopies(), dto.getBookStatus(), schoolId, dto.getAcademicYear(),
                 dto.getLanguage(), dto.getPages(), dto.getPublishedDate(), dto.getDescription(),
@@ -281,7 +309,40 @@ public class BookDetailService {
         ensureTableExists(jdbc);
 
         String sql = "SELECT * FROM book_details WHERE school_id = ? AND academic_year = ? ORDER BY created_at DESC";
-        return jdbc.query(sql, new BookDetailRowMapper(), schoolId, academicYear);
+        return jdbc.query(sql, new BookDetailRowMapper(schoolId), schoolId, academicYear);
+    }
+
+    /**
+     * One page of the year's books without cover photos, optionally filtered by category and
+     * status and a search term. Covers come from findBookCoverPhoto.
+     */
+    public KeysetPage<BookDetail> getBooksPage(String schoolId, String academicYear, String search, String category,
+                                               String bookStatus, String sort, String cursor, Integer limit) {
+        JdbcTemplate jdbc = getJdbcTemplate(schoolId);
+        ensureTableExists(jdbc);
+
+        return new KeysetQuery(BOOK_LIST_COLUMNS, "book_details")
+                .where("school_id = ? AND academic_year = ?", schoolId, academicYear)
+                .whereEquals("category", category)
+                .whereEquals("book_status", bookStatus)
+                .search(search, "book_title", "author_name", "isbn", "publisher", "book_id")
+                .page(jdbc, KeysetSort.resolve(BOOK_SORTS, sort, RECENT), cursor, limit, new BookDetailRowMapper(null));
+    }
+
+    /**
+     * The book's cover (or its list-view thumbnail) in the media store; a cover still kept in the
+     * row from before the store is moved there on this first read. Empty when there is no cover.
+     */
+    public Optional<MediaFile> findBookCoverPhoto(String schoolId, Long id, boolean thumbnail) {
+        JdbcTemplate jdbc = getJdbcTemplate(schoolId);
+        ensureTableExists(jdbc);
+
+        Integer count = jdbc.queryForObject("SELECT COUNT(*) FROM book_details WHERE id = ? AND school_id = ?",
+                Integer.class, id, schoolId);
+        if (count == null || count == 0) {
+            throw new RuntimeException("Book not found with id: " + id);
+        }
+        return mediaStore.findForRow(jdbc, schoolId, "book_details", "book_cover_photo", null, id, thumbnail);
     }
 
     public BookDetail getBookById(String schoolId, Long id) {
@@ -289,7 +350,7 @@ public class BookDetailService {
         ensureTableExists(jdbc);
 
         String sql = "SELECT * FROM book_details WHERE id = ? AND school_id = ?";
-        List<BookDetail> results = jdbc.query(sql, new BookDetailRowMapper(), id, schoolId);
+        List<BookDetail> results = jdbc.query(sql, new BookDetailRowMapper(schoolId), id, schoolId);
 
         if (results.isEmpty()) {
             throw new RuntimeException("Book not found with id: " + id);
@@ -302,7 +363,7 @@ public class BookDetailService {
         ensureTableExists(jdbc);
 
         // Check if book exists
-        BookDetail existing = getBookById(schoolId, id);
+        getBookById(schoolId, id);
 
         // Validate Book ID doesn't contain XPO
         if (dto.getBookId().toUpperCase().contains("XPO")) {
@@ -329,27 +390,32 @@ public class BookDetailService {
             }
         }
 
-        // Use existing photo if no new photo provided
-        byte[] photoToUse = (coverPhoto != null && coverPhoto.length > 0) ? coverPhoto : existing.getBookCoverPhoto();
+        // A new cover goes to the media store; without one the current cover is left as it is
+        boolean newCover = coverPhoto != null && coverPhoto.length > 0;
 
-        String sql = """
+        String sql = String.format("""
             UPDATE book_details 
-            SET book_id = ?, isbn = ?, book_cover_photo = ?, book_title = ?, 
+            SET book_id = ?, isbn = ?, %s book_title = ?, 
                 author_name = ?, category = ?, edition = ?, publisher = ?, 
                 total_copies = ?, available_copies = ?, book_status = ?, 
                 language = ?, pages = ?, published_date = ?, description = ?,
                 purchase_rate = ?, selling_rate = ?, mrp = ?
             WHERE id = ? AND school_id = ?
-        """;
+        """, newCover ? "book_cover_photo = NULL, book_cover_photo_ref = ?," : "");
 
-        int rows = jdbc.update(sql,
-                dto.getBookId(), dto.getIsbn(), photoToUse, dto.getBookTitle(),
+        List<Object> params = new ArrayList<>(Arrays.asList(dto.getBookId(), dto.getIsbn()));
+        if (newCover) {
+            params.add(mediaStore.put(schoolId, coverPhoto));
+        }
+        params.addAll(Arrays.asList(dto.getBookTitle(),
                 dto.getAuthorName(), dto.getCategory(), dto.getEdition(), dto.getPublisher(),
                 dto.getTotalCopies(), dto.getAvailableCopies(), dto.getBookStatus(),
                 dto.getLanguage(), dto.getPages(), dto.getPublishedDate(), dto.getDescription(),
                 dto.getPurchaseRate(), dto.getSellingRate(), dto.getMrp(),
                 id, schoolId
-        );
+        ));
+
+        int rows = jdbc.update(sql, params.toArray());
 
         if (rows == 0) {
             throw new RuntimeException("Failed to update book with id: " + id);
@@ -385,7 +451,7 @@ public class BookDetailService {
         """;
 
         String searchPattern = "%" + searchTerm + "%";
-        return jdbc.query(sql, new BookDetailRowMapper(),
+        return jdbc.query(sql, new BookDetailRowMapper(schoolId),
                 schoolId, academicYear, searchPattern, searchPattern, searchPattern,
                 searchPattern, searchPattern, searchPattern);
     }
@@ -3,50 +3,42 @@ package com.backend.school_erp.service.Library;
 import com.backend.school_erp.DTO.Library.BookIssueDTO;
 import com.backend.school_erp.DTO.Library.MemberDTO;
 import com.backend.school_erp.DTO.Library.MemberInfoDTO;
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
 import com.backend.school_erp.entity.Library.LibraryIssueReturn;
+import com.backend.school_erp.service.AdmissionMaster.StudentDirectory;
+import com.backend.school_erp.service.AdmissionMaster.StudentRecord;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import javax.sql.DataSource;
 import java.time.LocalDate;
 import java.time.Period;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 
 @Service
 @Slf4j
 public class BookIssueService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
+
+    @Autowired
+    private StudentDirectory studentDirectory;
+
     private static final int MAX_BOOKS_STUDENT = 3;
     private static final int MAX_BOOKS_STAFF = 5;
     private static final int MAX_ISSUE_DAYS = 14;
     private static final double DAILY_FINE = 5.0;
 
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-            config.setMaximumPoolSize(10);
-            config.setConnectionTimeout(30000);
-            config.setIdleTimeout(600000);
-            config.setMaxLifetime(1800000);
-            return new HikariDataSource(config);
-        });
-    }
-
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     private String getStudentTableName(String academicYear) {
@@ -56,60 +48,62 @@ public class BookIssueService {
     }
 
     private void ensureTablesExist(JdbcTemplate jdbc) {
-        // Library issue/return table
-        jdbc.execute("""
-            CREATE TABLE IF NOT EXISTS library_issue_returns (
-                id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                issue_no VARCHAR(100) NOT NULL UNIQUE,
-                member_name VARCHAR(200),
-                member_code VARCHAR(100),
-                member_type VARCHAR(50),
-                book_qr_code VARCHAR(200) NOT NULL,
-                book_code VARCHAR(100),
-                book_name VARCHAR(500),
-                department_name VARCHAR(200),
-                publisher_name VARCHAR(300),
-                author_name VARCHAR(300),
-                issue_date DATE,
-                max_return_date DATE,
-                actual_return_date DATE,
-                status VARCHAR(50) DEFAULT 'ISSUED',
-                fine_amount DECIMAL(10,2) DEFAULT 0.00,
-                fine_paid DECIMAL(10,2) DEFAULT 0.00,
-                remarks TEXT,
-                school_id VARCHAR(100),
-                academic_year VARCHAR(50),
-                created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
-                INDEX idx_issue_no (issue_no),
-                INDEX idx_member_code (member_code),
-                INDEX idx_qr (book_qr_code),
-                INDEX idx_status (status),
-                INDEX idx_member_issue (member_code, status)
-            ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
-        """);
-
-        // Sequence table
-        jdbc.execute("""
-            CREATE TABLE IF NOT EXISTS issue_sequence (
-                id INT AUTO_INCREMENT PRIMARY KEY,
-                school_id VARCHAR(100) UNIQUE,
-                last_num INT DEFAULT 0,
-                updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
-            )
-        """);
-
-        // Fine configuration table
-        jdbc.execute("""
-            CREATE TABLE IF NOT EXISTS library_fine_config (
-                id INT AUTO_INCREMENT PRIMARY KEY,
-                school_id VARCHAR(100),
-                daily_fine DECIMAL(10,2) DEFAULT 5.00,
-                grace_days INT DEFAULT 3,
-                max_fine DECIMAL(10,2) DEFAULT 500.00,
-                UNIQUE KEY uk_school (school_id)
-            )
-        """);
+        schemaMigrator.migrate(jdbc, "BookIssueService", 1, () -> {
+            // Library issue/return table
+            jdbc.execute("""
+                CREATE TABLE IF NOT EXISTS library_issue_returns (
+                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    issue_no VARCHAR(100) NOT NULL UNIQUE,
+                    member_name VARCHAR(200),
+                    member_code VARCHAR(100),
+                    member_type VARCHAR(50),
+                    book_qr_code VARCHAR(200) NOT NULL,
+                    book_code VARCHAR(100),
+                    book_name VARCHAR(500),
+                    department_name VARCHAR(200),
+                    publisher_name VARCHAR(300),
+                    author_name VARCHAR(300),
+                    issue_date DATE,
+                    max_return_date DATE,
+                    actual_return_date DATE,
+                    status VARCHAR(50) DEFAULT 'ISSUED',
+                    fine_amount DECIMAL(10,2) DEFAULT 0.00,
+                    fine_paid DECIMAL(10,2) DEFAULT 0.00,
+                    remarks TEXT,
+                    school_id VARCHAR(100),
+                    academic_year VARCHAR(50),
+                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+                    INDEX idx_issue_no (issue_no),
+                    INDEX idx_member_code (member_code),
+                    INDEX idx_qr (book_qr_code),
+                    INDEX idx_status (status),
+                    INDEX idx_member_issue (member_code, status)
+                ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
+            """);
+
+            // Sequence table
+            jdbc.execute("""
+                CREATE TABLE IF NOT EXISTS issue_sequence (
+                    id INT AUTO_INCREMENT PRIMARY KEY,
+                    school_id VARCHAR(100) UNIQUE,
+                    last_num INT DEFAULT 0,
+                    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+                )
+            """);
+
+            // Fine configuration table
+            jdbc.execute("""
+                CREATE TABLE IF NOT EXISTS library_fine_config (
+                    id INT AUTO_INCREMENT PRIMARY KEY,
+                    school_id VARCHAR(100),
+                    daily_fine DECIMAL(10,2) DEFAULT 5.00,
+                    grace_days INT DEFAULT 3,
+                    max_fine DECIMAL(10,2) DEFAULT 500.00,
+                    UNIQUE KEY uk_school (school_id)
+                )
+            """);
+        });
     }
 
     // --- 1. IMPROVED MEMBER SEARCH ---
@@ -121,27 +115,15 @@ public class BookIssueService {
         // Search Students
         if (memberType == null || "STUDENT".equalsIgnoreCase(memberType)) {
             try {
-                String studentTable = getStudentTableName(academicYear);
-                String checkTable = "SELECT COUNT(*) FROM information_schema.tables WHERE table_schema = ? AND table_name = ?";
-                Integer exists = jdbc.queryForObject(checkTable, Integer.class, schoolId, studentTable);
-
-                if (exists != null && exists > 0) {
-                    String studentSql = """
-                        SELECT admission_number, student_name, standard, section 
-                        FROM """ + studentTable + """
-                        WHERE (admission_number LIKE ? OR student_name LIKE ?) 
-                        AND is_active = 'Y'
-                        LIMIT 20
-                    """;
-
-                    List<Map<String, Object>> students = jdbc.queryForList(studentSql, term, term);
-                    for (Map<String, Object> row : students) {
+                // Library cards are for this year's admissions; there is no directory without a year
+                if (academicYear != null) {
+                    for (StudentRecord student : studentDirectory.search(schoolId, academicYear, searchTerm, 20)) {
                         results.add(MemberDTO.builder()
-                                .memberCode((String) row.get("admission_number"))
-                                .memberName((String) row.get("student_name"))
+                                .memberCode(student.admissionNumber())
+                                .memberName(student.studentName())
                                 .memberType("STUDENT")
-                                .className((String) row.get("standard"))
-                                .section((String) row.get("section"))
+                                .className(student.standard())
+                                .section(student.section())
                                 .build());
                     }
                 }
@@ -186,15 +168,23 @@ public class BookIssueService {
 
         // Get basic member info
         if ("STUDENT".equals(memberType)) {
-            String studentTable = getStudentTableName(academicYear);
-            String studentSql = "SELECT admission_number, student_name, standard, section FROM " + studentTable + " WHERE admission_number = ?";
-            Map<String, Object> student = jdbc.queryForMap(studentSql, memberCode);
+            Optional<StudentRecord> record = academicYear == null ? Optional.empty()
+                    : studentDirectory.find(schoolId, academicYear, memberCode);
+            if (record.isPresent()) {
+                info.setMemberName(record.get().studentName());
+                info.setClassName(record.get().standard());
+                info.setSection(record.get().section());
+            } else {
+                String studentTable = getStudentTableName(academicYear);
+                String studentSql = "SELECT admission_number, student_name, standard, section FROM " + studentTable + " WHERE admission_number = ?";
+                Map<String, Object> student = jdbc.queryForMap(studentSql, memberCode);
+                info.setMemberName((String) student.get("student_name"));
+                info.setClassName((String) student.get("standard"));
+                info.setSection((String) student.get("section"));
+            }
 
             info.setMemberCode(memberCode);
-            info.setMemberName((String) student.get("student_name"));
             info.setMemberType("STUDENT");
-            info.setClassName((String) student.get("standard"));
-            info.setSection((String) student.get("section"));
             info.setMaxBooksAllowed(MAX_BOOKS_STUDENT);
 
         } else if ("STAFF".equals(memberType)) {
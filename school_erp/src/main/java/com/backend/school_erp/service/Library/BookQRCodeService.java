@@ -1,109 +1,103 @@
 package com.backend.school_erp.service.Library;
 
 import com.backend.school_erp.DTO.Library.BookQRCodeDTO;
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
+import com.backend.school_erp.service.Transaction.TenantSequenceAllocator;
 import com.backend.school_erp.entity.Library.LibraryStock;
 import com.backend.school_erp.entity.Library.ItemPurchase;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import javax.sql.DataSource;
 import java.math.BigDecimal;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.Map;
-
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 
 @Service
 @Slf4j
 public class BookQRCodeService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
-
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-            config.setMaximumPoolSize(10);
-            return new HikariDataSource(config);
-        });
-    }
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
+
+    @Autowired
+    private TenantSequenceAllocator sequenceAllocator;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     private void ensureTablesExist(JdbcTemplate jdbc) {
-        try {
-            // 1. Library Stocks (Unique by QR Code, allows duplicate Book Codes)
-            jdbc.execute("""
-                CREATE TABLE IF NOT EXISTS library_stocks (
-                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                    qr_code_no VARCHAR(200) NOT NULL,
-                    book_code VARCHAR(100) NOT NULL,
-                    book_name VARCHAR(500) NOT NULL,
-                    mrp_rate DECIMAL(15,2) DEFAULT 0.00,
-                    purchase_rate DECIMAL(15,2) DEFAULT 0.00,
-                    selling_rate DECIMAL(15,2) DEFAULT 0.00,
-                    department_name VARCHAR(200),
-                    quantity INT DEFAULT 0,
-                    publisher_name VARCHAR(300),
-                    author_name VARCHAR(300),
-                    language VARCHAR(100),
-                    supplier_name VARCHAR(300),
-                    remarks TEXT,
-                    qr_code_image LONGTEXT,
-                    school_id VARCHAR(100) NOT NULL,
-                    academic_year VARCHAR(50) NOT NULL,
-                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
-                    INDEX idx_book_code (book_code),
-                    UNIQUE KEY uk_school_qr (school_id, qr_code_no)
-                ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
-            """);
-
-            // 2. Item Purchases
-            jdbc.execute("""
-                CREATE TABLE IF NOT EXISTS item_purchases (
-                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                    purchase_id VARCHAR(100),
-                    qr_code_no VARCHAR(200) NOT NULL,
-                    book_code VARCHAR(100) NOT NULL,
-                    book_name VARCHAR(500),
-                    mrp_rate DECIMAL(15,2) DEFAULT 0.00,
-                    purchase_rate DECIMAL(15,2) DEFAULT 0.00,
-                    selling_rate DECIMAL(15,2) DEFAULT 0.00,
-                    department_name VARCHAR(200),
-                    quantity INT NOT NULL,
-                    publisher_name VARCHAR(300),
-                    author_name VARCHAR(300),
-                    language VARCHAR(100),
-                    supplier_name VARCHAR(300),
-                    remarks TEXT,
-                    total_amount DECIMAL(15,2) DEFAULT 0.00,
-                    qr_code_image LONGTEXT,
-                    school_id VARCHAR(100) NOT NULL,
-                    academic_year VARCHAR(50) NOT NULL,
-                    purchase_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                    UNIQUE KEY uk_qr_code (qr_code_no, school_id)
-                ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
-            """);
-
-            // 3. Sequences
-            jdbc.execute("CREATE TABLE IF NOT EXISTS qr_sequence (id INT AUTO_INCREMENT PRIMARY KEY, school_id VARCHAR(100) UNIQUE NOT NULL, last_qr_number INT DEFAULT 0, last_updated TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP) ENGINE=InnoDB");
-            jdbc.execute("CREATE TABLE IF NOT EXISTS book_sequence (id INT AUTO_INCREMENT PRIMARY KEY, school_id VARCHAR(100) UNIQUE NOT NULL, last_number INT DEFAULT 1, last_updated TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP) ENGINE=InnoDB");
-
-        } catch (Exception e) {
-            log.error("Table check failed", e);
-        }
+        schemaMigrator.migrate(jdbc, "BookQRCodeService", 1, () -> {
+            try {
+                // 1. Library Stocks (Unique by QR Code, allows duplicate Book Codes)
+                jdbc.execute("""
+                    CREATE TABLE IF NOT EXISTS library_stocks (
+                        id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                        qr_code_no VARCHAR(200) NOT NULL,
+                        book_code VARCHAR(100) NOT NULL,
+                        book_name VARCHAR(500) NOT NULL,
+                        mrp_rate DECIMAL(15,2) DEFAULT 0.00,
+                        purchase_rate DECIMAL(15,2) DEFAULT 0.00,
+                        selling_rate DECIMAL(15,2) DEFAULT 0.00,
+                        department_name VARCHAR(200),
+                        quantity INT DEFAULT 0,
+                        publisher_name VARCHAR(300),
+                        author_name VARCHAR(300),
+                        language VARCHAR(100),
+                        supplier_name VARCHAR(300),
+                        remarks TEXT,
+                        qr_code_image LONGTEXT,
+                        school_id VARCHAR(100) NOT NULL,
+                        academic_year VARCHAR(50) NOT NULL,
+                        created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                        updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+                        INDEX idx_book_code (book_code),
+                        UNIQUE KEY uk_school_qr (school_id, qr_code_no)
+                    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
+                """);
+
+                // 2. Item Purchases
+                jdbc.execute("""
+                    CREATE TABLE IF NOT EXISTS item_purchases (
+                        id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                        purchase_id VARCHAR(100),
+                        qr_code_no VARCHAR(200) NOT NULL,
+                        book_code VARCHAR(100) NOT NULL,
+                        book_name VARCHAR(500),
+                        mrp_rate DECIMAL(15,2) DEFAULT 0.00,
+                        purchase_rate DECIMAL(15,2) DEFAULT 0.00,
+                        selling_rate DECIMAL(15,2) DEFAULT 0.00,
+                        department_name VARCHAR(200),
+                        quantity INT NOT NULL,
+                        publisher_name VARCHAR(300),
+                        author_name VARCHAR(300),
+                        language VARCHAR(100),
+                        supplier_name VARCHAR(300),
+                        remarks TEXT,
+                        total_amount DECIMAL(15,2) DEFAULT 0.00,
+                        qr_code_image LONGTEXT,
+                        school_id VARCHAR(100) NOT NULL,
+                        academic_year VARCHAR(50) NOT NULL,
+                        purchase_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                        UNIQUE KEY uk_qr_code (qr_code_no, school_id)
+                    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
+                """);
+
+                // 3. Sequences
+                jdbc.execute("CREATE TABLE IF NOT EXISTS qr_sequence (id INT AUTO_INCREMENT PRIMARY KEY, school_id VARCHAR(100) UNIQUE NOT NULL, last_qr_number INT DEFAULT 0, last_updated TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP) ENGINE=InnoDB");
+                jdbc.execute("CREATE TABLE IF NOT EXISTS book_sequence (id INT AUTO_INCREMENT PRIMARY KEY, school_id VARCHAR(100) UNIQUE NOT NULL, last_number INT DEFAULT 1, last_updated TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP) ENGINE=InnoDB");
+
+            } catch (Exception e) {
+                log.error("Table check failed", e);
+            }
+        });
     }
 
     // --- GENERATORS ---
@@ -114,12 +108,9 @@ public class BookQRCodeService {
         String schoolPrefix = schoolId.length() >= 3 ? schoolId.substring(0, 3).toUpperCase() : "SCH";
         String yearSuffix = academicYear.length() >= 2 ? academicYear.substring(academicYear.length()-2) : "24";
 
-        Integer last = null;
-        try { last = jdbc.queryForObject("SELECT last_qr_number FROM qr_sequence WHERE school_id = ? FOR UPDATE", Integer.class, schoolId); } catch(Exception e){}
-
-        int next = (last == null) ? 1 : last + 1;
-        if(last == null) jdbc.update("INSERT INTO qr_sequence (school_id, last_qr_number) VALUES (?, ?)", schoolId, next);
-        else jdbc.update("UPDATE qr_sequence SET last_qr_number = ? WHERE school_id = ?", next, schoolId);
+        // qr_sequence only seeds the shared sequence now
+        long next = sequenceAllocator.next(jdbc, "qr_code", TenantSequenceAllocator.ALL_YEARS,
+                () -> lastSequenceValue(jdbc, "SELECT last_qr_number FROM qr_sequence WHERE school_id = ?", schoolId));
 
         return String.format("QR%s%s%05d", schoolPrefix, yearSuffix, next);
     }
@@ -128,16 +119,17 @@ public class BookQRCodeService {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
         ensureTablesExist(jdbc);
         String year = String.valueOf(java.time.LocalDate.now().getYear());
-        Integer last = null;
-        try { last = jdbc.queryForObject("SELECT last_number FROM book_sequence WHERE school_id = ?", Integer.class, schoolId); } catch(Exception e){}
-
-        int next = (last == null) ? 1 : last + 1;
-        if(last == null) jdbc.update("INSERT INTO book_sequence (school_id, last_number) VALUES (?, ?)", schoolId, next);
-        else jdbc.update("UPDATE book_sequence SET last_number = ? WHERE school_id = ?", next, schoolId);
+        long next = sequenceAllocator.next(jdbc, "book_code", TenantSequenceAllocator.ALL_YEARS,
+                () -> lastSequenceValue(jdbc, "SELECT last_number FROM book_sequence WHERE school_id = ?", schoolId));
 
         return String.format("BK-%s-%04d", year, next);
     }
 
+    private long lastSequenceValue(JdbcTemplate jdbc, String sql, String schoolId) {
+        List<Long> last = jdbc.queryForList(sql, Long.class, schoolId);
+        return last.isEmpty() || last.get(0) == null ? 0 : last.get(0);
+    }
+
     // --- SAVE LOGIC ---
 
     @Transactional
@@ -1,72 +1,59 @@
 package com.backend.school_erp.service.Library;
 
 import com.backend.school_erp.DTO.Administration.StaffStudentDTO;
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
 import com.backend.school_erp.entity.Administration.StaffStudent;
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import javax.sql.DataSource;
 import java.time.LocalDateTime;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @Slf4j
 public class StaffStudentService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
-
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-            config.setMaximumPoolSize(10);
-            config.setMinimumIdle(2);
-            config.setIdleTimeout(30000);
-            config.setMaxLifetime(1800000);
-            config.setConnectionTimeout(10000);
-            return new HikariDataSource(config);
-        });
-    }
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     private void ensureTableExists(JdbcTemplate jdbc) {
-        jdbc.execute("CREATE TABLE IF NOT EXISTS staff_student (" +
-                "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
-                "record_code VARCHAR(100) NOT NULL, " +
-                "full_name VARCHAR(255) NOT NULL, " +
-                "number_street_name VARCHAR(500), " +
-                "place_pin_code VARCHAR(100), " +
-                "state_id VARCHAR(50), " +
-                "state VARCHAR(100), " +
-                "district_id VARCHAR(50), " +
-                "district VARCHAR(100), " +
-                "phone_number VARCHAR(20), " +
-                "email VARCHAR(150), " +
-                "contact_person VARCHAR(150), " +
-                "record_type VARCHAR(20) NOT NULL, " +  // STAFF or STUDENT
-                "original_id VARCHAR(100), " +          // Staff Code or Admission Number
-                "school_id VARCHAR(50) NOT NULL, " +
-                "academic_year VARCHAR(20) NOT NULL, " +
-                "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
-                "updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP, " +
-                "UNIQUE KEY unique_record (record_code, school_id, academic_year)" +
-                ")");
-
-        log.info("✅ staff_student table ensured");
+        schemaMigrator.migrate(jdbc, "StaffStudentService", 1, () -> {
+            jdbc.execute("CREATE TABLE IF NOT EXISTS staff_student (" +
+                    "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                    "record_code VARCHAR(100) NOT NULL, " +
+                    "full_name VARCHAR(255) NOT NULL, " +
+                    "number_street_name VARCHAR(500), " +
+                    "place_pin_code VARCHAR(100), " +
+                    "state_id VARCHAR(50), " +
+                    "state VARCHAR(100), " +
+                    "district_id VARCHAR(50), " +
+                    "district VARCHAR(100), " +
+                    "phone_number VARCHAR(20), " +
+                    "email VARCHAR(150), " +
+                    "contact_person VARCHAR(150), " +
+                    "record_type VARCHAR(20) NOT NULL, " +  // STAFF or STUDENT
+                    "original_id VARCHAR(100), " +          // Staff Code or Admission Number
+                    "school_id VARCHAR(50) NOT NULL, " +
+                    "academic_year VARCHAR(20) NOT NULL, " +
+                    "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
+                    "updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP, " +
+                    "UNIQUE KEY unique_record (record_code, school_id, academic_year)" +
+                    ")");
+
+            log.info("✅ staff_student table ensured");
+        });
     }
 
     public List<StaffStudent> getAll(String schoolId, String academicYear) {
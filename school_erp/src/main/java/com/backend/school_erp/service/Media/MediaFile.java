@@ -0,0 +1,10 @@
+package com.backend.school_erp.service.Media;
+
+import java.nio.file.Path;
+
+/**
+ * An image in the media store, ready to be sent: the file on disk, its size, the ETag it is
+ * served with and its content type.
+ */
+public record MediaFile(Path path, long size, String etag, String contentType) {
+}
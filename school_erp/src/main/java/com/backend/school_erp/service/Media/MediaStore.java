@@ -0,0 +1,308 @@
+package com.backend.school_erp.service.Media;
+
+import com.backend.school_erp.config.TenantTableCatalog;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Content-addressed store for student photos and book covers on local disk.
+ *
+ * An image is written once under {@code media.store.root/<school>/<aa>/<sha-256>}, next to a
+ * small JPEG thumbnail made at upload time, and the row keeps only the 64 character hash in a
+ * {@code <column>_ref} column beside the old BLOB column. Storing the same image again (an
+ * enquiry photo carried into its admission, a student promoted into the next year) keeps one
+ * file, and since a stored file never changes its hash doubles as its ETag.
+ *
+ * Rows written before the store existed still hold the image in the BLOB column; it is copied
+ * into the store the first time the row's image is read. The BLOB is kept, so the rows can be
+ * copied again into a store that was lost.
+ *
+ * {@code media.store.root} must be an absolute path on storage that outlives the application
+ * (a mounted volume, not the container's own disk); the application does not start without it.
+ */
+@Service
+@Slf4j
+public class MediaStore {
+
+    private static final String THUMBNAIL_SUFFIX = ".thumb.jpg";
+    private static final String THUMBNAIL_CONTENT_TYPE = "image/jpeg";
+    // Book covers have no content type column and were always served as JPEG
+    private static final String DEFAULT_CONTENT_TYPE = "image/jpeg";
+
+    private static final Pattern SCHOOL_ID = Pattern.compile("[A-Za-z0-9_-]+");
+    private static final Pattern REF = Pattern.compile("[0-9a-f]{64}");
+
+    // Tomcat writes the file itself after the servlet returns when these request attributes are set
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    @Autowired
+    private TenantTableCatalog tableCatalog;
+
+    @Value("${media.store.root:}")
+    private String root;
+
+    @Value("${media.thumbnail.max-size:160}")
+    private int thumbnailSize;
+
+    @PostConstruct
+    void checkRoot() {
+        if (root == null || root.isBlank()) {
+            throw new IllegalStateException("media.store.root is not set; point it at a mounted directory for student photos and book covers");
+        }
+        Path path = Path.of(root);
+        if (!path.isAbsolute()) {
+            throw new IllegalStateException("media.store.root must be an absolute path, got: " + root);
+        }
+        try {
+            Files.createDirectories(path);
+            Files.deleteIfExists(Files.createTempFile(path, "write-check", ".tmp"));
+        } catch (IOException e) {
+            throw new IllegalStateException("media.store.root " + root + " is not writable: " + e.getMessage(), e);
+        }
+        log.info("🖼️ Media store at {}", path);
+    }
+
+    /**
+     * Stores the image (once per distinct content) with its thumbnail and returns its reference.
+     */
+    public String put(String schoolId, byte[] content) {
+        String ref = sha256(content);
+        Path file = pathOf(schoolId, ref);
+        try {
+            if (!Files.exists(file)) {
+                write(file, content);
+                log.info("🖼️ Stored image {} for school {} ({} bytes)", ref, schoolId, content.length);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to store image: " + e.getMessage(), e);
+        }
+
+        Path thumbnail = thumbnailOf(file);
+        if (!Files.exists(thumbnail)) {
+            try {
+                writeThumbnail(content, thumbnail);
+            } catch (IOException | RuntimeException e) {
+                // The full image is still served in its place
+                log.warn("Could not make a thumbnail of image {}: {}", ref, e.getMessage());
+            }
+        }
+        return ref;
+    }
+
+    /**
+     * The stored image, or its thumbnail when asked for and the image could be decoded.
+     * Empty when {@code ref} is null or the file is gone.
+     */
+    public Optional<MediaFile> find(String schoolId, String ref, String contentType, boolean thumbnail) {
+        if (ref == null) {
+            return Optional.empty();
+        }
+        Path file = pathOf(schoolId, ref);
+        try {
+            if (!Files.isRegularFile(file)) {
+                log.warn("Image {} of school {} is missing from the media store", ref, schoolId);
+                return Optional.empty();
+            }
+            Path thumbnailFile = thumbnailOf(file);
+            if (thumbnail && Files.isRegularFile(thumbnailFile)) {
+                return Optional.of(new MediaFile(thumbnailFile, Files.size(thumbnailFile),
+                        "\"" + ref + "-thumb\"", THUMBNAIL_CONTENT_TYPE));
+            }
+            return Optional.of(new MediaFile(file, Files.size(file), "\"" + ref + "\"",
+                    contentType != null ? contentType : DEFAULT_CONTENT_TYPE));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read image: " + e.getMessage(), e);
+        }
+    }
+
+    // Whole image in memory, for the responses that still embed it (null when there is none)
+    public byte[] read(String schoolId, String ref) {
+        Optional<MediaFile> media = find(schoolId, ref, null, false);
+        if (media.isEmpty()) {
+            return null;
+        }
+        try {
+            return Files.readAllBytes(media.get().path());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read image: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * The image of one row, looked up by its {@code <column>_ref}. A row that still has the image
+     * only in the BLOB column, or whose file is missing from the store, is copied into the store
+     * first. Empty when the row or image does not exist.
+     *
+     * @param contentTypeColumn column holding the image's content type, or null for JPEG
+     */
+    public Optional<MediaFile> findForRow(JdbcTemplate jdbc, String schoolId, String table, String column,
+                                          String contentTypeColumn, Long id, boolean thumbnail) {
+        List<RowImage> rows = jdbc.query(String.format(
+                        "SELECT %s_ref, %s, %s IS NOT NULL FROM %s WHERE id = ? AND school_id = ?",
+                        column, contentTypeColumn != null ? contentTypeColumn : "NULL", column, table),
+                (rs, rowNum) -> new RowImage(rs.getString(1), rs.getString(2), rs.getBoolean(3)),
+                id, schoolId);
+        if (rows.isEmpty()) {
+            return Optional.empty();
+        }
+        RowImage row = rows.get(0);
+        String ref = row.ref();
+        if (row.hasBlob() && (ref == null || !Files.isRegularFile(pathOf(schoolId, ref)))) {
+            // Not copied yet, or the file was lost with the store it was copied into
+            String copied = externalize(jdbc, schoolId, table, column, id);
+            ref = ref != null ? ref : copied;
+        }
+        return find(schoolId, ref, row.contentType(), thumbnail);
+    }
+
+    /**
+     * Adds {@code <column>_ref} to a table that has an image BLOB column. Run it from the table's
+     * schema module after its CREATE TABLE, so tables created before the store (or cloned from
+     * an older year) get the column too.
+     */
+    public void ensureReferenceColumn(JdbcTemplate jdbc, String table, String column) {
+        // Another instance may have just added it
+        tableCatalog.invalidate(jdbc);
+        if (tableCatalog.tableExists(jdbc, table) && !tableCatalog.hasColumn(jdbc, table, column + "_ref")) {
+            jdbc.execute(String.format("ALTER TABLE %s ADD COLUMN %s_ref CHAR(64)", table, column));
+            tableCatalog.invalidate(jdbc);
+            log.info("🛠️ Added {}_ref to {}", column, table);
+        }
+    }
+
+    /**
+     * Sends the image, or answers 304 when the client's If-None-Match already names this version.
+     * The bytes go from the file to the socket without passing through the heap: through Tomcat's
+     * sendfile when the connector supports it, through FileChannel.transferTo otherwise.
+     */
+    public void send(MediaFile media, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        // The URL names a row, not an image, so clients revalidate each time; unchanged images cost a 304
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
+        if (new ServletWebRequest(request, response).checkNotModified(media.etag())) {
+            return;
+        }
+
+        response.setContentType(media.contentType());
+        response.setContentLengthLong(media.size());
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, media.path().toRealPath().toString());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, media.size());
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(media.path(), StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = 0;
+            while (position < media.size()) {
+                position += channel.transferTo(position, media.size() - position, out);
+            }
+        }
+    }
+
+    // Copies a row's BLOB into the store and records its reference; the BLOB stays as the backup
+    private String externalize(JdbcTemplate jdbc, String schoolId, String table, String column, Long id) {
+        List<byte[]> blobs = jdbc.query(String.format("SELECT %s FROM %s WHERE id = ? AND school_id = ?", column, table),
+                (rs, rowNum) -> rs.getBytes(1), id, schoolId);
+        if (blobs.isEmpty() || blobs.get(0) == null || blobs.get(0).length == 0) {
+            return null;
+        }
+        String ref = put(schoolId, blobs.get(0));
+        // Unless a new image was saved in the meantime
+        jdbc.update(String.format("UPDATE %s SET %s_ref = ? WHERE id = ? AND school_id = ? AND %s_ref IS NULL",
+                table, column, column), ref, id, schoolId);
+        log.info("🖼️ Copied {}.{} of row {} into the media store", table, column, id);
+        return ref;
+    }
+
+    private Path pathOf(String schoolId, String ref) {
+        if (!SCHOOL_ID.matcher(schoolId).matches() || !REF.matcher(ref).matches()) {
+            throw new IllegalArgumentException("Invalid image reference: " + schoolId + "/" + ref);
+        }
+        return Path.of(root, schoolId, ref.substring(0, 2), ref);
+    }
+
+    private static Path thumbnailOf(Path file) {
+        return file.resolveSibling(file.getFileName() + THUMBNAIL_SUFFIX);
+    }
+
+    private void writeThumbnail(byte[] content, Path target) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(content));
+        if (image == null) {
+            log.warn("No thumbnail for {}: not a readable image", target.getFileName());
+            return;
+        }
+        double scale = Math.min(1.0, (double) thumbnailSize / Math.max(image.getWidth(), image.getHeight()));
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+
+        // JPEG has no alpha channel, so transparent areas become white
+        BufferedImage thumbnail = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = thumbnail.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.drawImage(image.getScaledInstance(width, height, Image.SCALE_SMOOTH), 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(thumbnail, "jpg", out);
+        write(target, out.toByteArray());
+    }
+
+    // Written to a temporary file and renamed into place, so a half-written image is never served
+    private static void write(Path target, byte[] content) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, content);
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static String sha256(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record RowImage(String ref, String contentType, boolean hasBlob) {
+    }
+}
@@ -0,0 +1,139 @@
+package com.backend.school_erp.service.Paging;
+
+import com.backend.school_erp.DTO.KeysetPage;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Keyset ("seek") pagination over one table.
+ *
+ * Instead of OFFSET, each page continues after the last row of the previous one
+ * ({@code WHERE (col, id) > (?, ?)}), so every page costs the same however deep the client
+ * scrolls, and rows inserted meanwhile do not shift pages. The cursor handed to the client is
+ * the sort key plus the sort value and id of the last row, base64 encoded.
+ *
+ * <pre>
+ * new KeysetQuery("id, student_name, ...", "enquiries")
+ *         .where("school_id = ? AND academic_year = ?", schoolId, academicYear)
+ *         .whereEquals("standard", standard)
+ *         .search(term, "student_name", "phone_number")
+ *         .page(jdbc, sort, cursor, limit, mapper);
+ * </pre>
+ *
+ * The columns must include {@code id} and the sort column.
+ */
+public class KeysetQuery {
+
+    public static final int DEFAULT_LIMIT = 50;
+    public static final int MAX_LIMIT = 200;
+
+    private final String columns;
+    private final String table;
+    private final List<String> conditions = new ArrayList<>();
+    private final List<Object> params = new ArrayList<>();
+
+    public KeysetQuery(String columns, String table) {
+        this.columns = columns;
+        this.table = table;
+    }
+
+    public KeysetQuery where(String condition, Object... values) {
+        conditions.add(condition);
+        params.addAll(List.of(values));
+        return this;
+    }
+
+    // Exact match filter, skipped when no value was given
+    public KeysetQuery whereEquals(String column, String value) {
+        if (value != null && !value.isBlank()) {
+            where(column + " = ?", value.trim());
+        }
+        return this;
+    }
+
+    // Substring match on any of the columns, skipped when no term was given
+    public KeysetQuery search(String term, String... searchColumns) {
+        if (term != null && !term.isBlank()) {
+            String like = "%" + term.trim() + "%";
+            List<String> matches = new ArrayList<>();
+            for (String column : searchColumns) {
+                matches.add(column + " LIKE ?");
+                params.add(like);
+            }
+            conditions.add("(" + String.join(" OR ", matches) + ")");
+        }
+        return this;
+    }
+
+    public <T> KeysetPage<T> page(JdbcTemplate jdbc, KeysetSort sort, String cursor, Integer limit, RowMapper<T> mapper) {
+        int pageSize = limit == null ? DEFAULT_LIMIT : Math.max(1, Math.min(limit, MAX_LIMIT));
+
+        List<String> where = new ArrayList<>(conditions);
+        List<Object> args = new ArrayList<>(params);
+        String op = sort.ascending() ? ">" : "<";
+        if (cursor != null && !cursor.isBlank()) {
+            Cursor after = Cursor.decode(cursor, sort);
+            if (sort.byId()) {
+                where.add("id " + op + " ?");
+                args.add(after.id());
+            } else {
+                where.add("(" + sort.column() + " " + op + " ? OR (" + sort.column() + " = ? AND id " + op + " ?))");
+                args.add(after.value());
+                args.add(after.value());
+                args.add(after.id());
+            }
+        }
+
+        String direction = sort.ascending() ? "ASC" : "DESC";
+        StringBuilder sql = new StringBuilder("SELECT ").append(columns).append(" FROM ").append(table);
+        if (!where.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", where));
+        }
+        sql.append(" ORDER BY ");
+        if (!sort.byId()) {
+            sql.append(sort.column()).append(' ').append(direction).append(", ");
+        }
+        sql.append("id ").append(direction).append(" LIMIT ?");
+        // One extra row tells whether there is a next page
+        args.add(pageSize + 1);
+
+        List<Cursor> positions = new ArrayList<>();
+        List<T> items = jdbc.query(sql.toString(), (rs, rowNum) -> {
+            positions.add(new Cursor(sort.byId() ? null : rs.getString(sort.column()), rs.getLong("id")));
+            return mapper.mapRow(rs, rowNum);
+        }, args.toArray());
+
+        boolean hasMore = items.size() > pageSize;
+        if (hasMore) {
+            items = new ArrayList<>(items.subList(0, pageSize));
+        }
+        String nextCursor = hasMore ? positions.get(pageSize - 1).encode(sort) : null;
+        return new KeysetPage<>(items, nextCursor, hasMore);
+    }
+
+    private record Cursor(String value, long id) {
+
+        String encode(KeysetSort sort) {
+            String raw = sort.key() + "\n" + id + "\n" + (value == null ? "" : value);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String cursor, KeysetSort sort) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8);
+                String[] parts = raw.split("\n", 3);
+                if (parts.length != 3 || !parts[0].equals(sort.key())) {
+                    throw new IllegalArgumentException("Cursor does not belong to sort " + sort.key());
+                }
+                return new Cursor(parts[2], Long.parseLong(parts[1]));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.backend.school_erp.service.Paging;
+
+import java.util.Map;
+
+/**
+ * A sort order a list can be paged by: one NOT NULL column, with the id as tie-breaker in the
+ * same direction. {@code key} is the name clients pass as {@code ?sort=}.
+ */
+public record KeysetSort(String key, String column, boolean ascending) {
+
+    public static KeysetSort asc(String key, String column) {
+        return new KeysetSort(key, column, true);
+    }
+
+    public static KeysetSort desc(String key, String column) {
+        return new KeysetSort(key, column, false);
+    }
+
+    /**
+     * The sort named {@code key} among {@code sorts}, or {@code fallback} when no sort was asked for.
+     */
+    public static KeysetSort resolve(Map<String, KeysetSort> sorts, String key, KeysetSort fallback) {
+        if (key == null || key.isBlank()) {
+            return fallback;
+        }
+        KeysetSort sort = sorts.get(key.trim());
+        if (sort == null) {
+            throw new IllegalArgumentException("Unsupported sort: " + key + " (use one of " + sorts.keySet() + ")");
+        }
+        return sort;
+    }
+
+    boolean byId() {
+        return "id".equals(column);
+    }
+}
@@ -0,0 +1,34 @@
+package com.backend.school_erp.service.ReportJob;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One submitted report run, as returned by the status endpoint. Once the job has finished it is
+ * also written next to its result file, so the status outlives a restart.
+ */
+@Data
+@NoArgsConstructor
+public class ReportJob {
+
+    // Updated by the worker while the status endpoint reads them
+    private volatile String id;
+    private volatile String schoolId;
+    private volatile String report;
+    private volatile Map<String, List<String>> params;
+    private volatile ReportJobStatus status;
+    // 0 to 100; reports that do not report their progress jump to 90 when their result is ready
+    private volatile int progress;
+    private volatile Instant submittedAt;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    // Number of rows when the report is a list, null otherwise
+    private volatile Integer rows;
+    // Size of the compressed result
+    private volatile Long resultBytes;
+    private volatile String error;
+}
@@ -0,0 +1,32 @@
+package com.backend.school_erp.service.ReportJob;
+
+/**
+ * Lets a report tell the job it runs under how far its main pass has got. Outside a job the
+ * calls do nothing, so the reports' synchronous endpoints are unaffected.
+ */
+public final class ReportJobProgress {
+
+    private static final ThreadLocal<ReportJob> CURRENT = new ThreadLocal<>();
+
+    private ReportJobProgress() {
+    }
+
+    /**
+     * {@code done} of {@code total} items processed. Reported as 10 to 90 percent; the queries
+     * before and the result file after take the rest.
+     */
+    public static void update(long done, long total) {
+        ReportJob job = CURRENT.get();
+        if (job != null && total > 0) {
+            job.setProgress((int) (10 + Math.min(done, total) * 80 / total));
+        }
+    }
+
+    static void bind(ReportJob job) {
+        CURRENT.set(job);
+    }
+
+    static void clear() {
+        CURRENT.remove();
+    }
+}
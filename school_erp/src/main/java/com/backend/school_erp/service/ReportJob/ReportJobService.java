@@ -0,0 +1,421 @@
+package com.backend.school_erp.service.ReportJob;
+
+import com.backend.school_erp.DTO.DebitCardReport.PromotionRequestDTO;
+import com.backend.school_erp.service.Administration.FeeReapplicationService;
+import com.backend.school_erp.service.Collection.TutionReportService;
+import com.backend.school_erp.service.DebitCardReport.BalanceList4Service;
+import com.backend.school_erp.service.DebitCardReport.PromotionService;
+import com.backend.school_erp.service.DebitCardReport.ReportService;
+import com.backend.school_erp.service.Store.StockReportService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Runs the heavy reports in the background: a submit returns a job id straight away, the
+ * client polls the job's status and downloads the result once it is done, so a full-year
+ * report no longer holds a request thread (and the proxy in front of it) for minutes.
+ *
+ * Jobs run on {@code report.jobs.workers} threads, at most {@code report.jobs.max-per-school} of
+ * one school at a time so one school's year-end run cannot hold every worker; the rest wait in
+ * submission order. Each result is written as gzipped JSON, in the same shape as the report's
+ * synchronous endpoint, to {@code report.jobs.root/<school>/<job id>.json.gz} with the job's
+ * final status beside it, and both are deleted after {@code report.jobs.retention-hours}.
+ *
+ * A whole-class promotion runs the same way ({@code promotion}), with the number of promoted
+ * students as its result, and so does re-applying a changed fee setup to the students' fees
+ * ({@code fee-reapplication}, only counting the changes with {@code preview=true}).
+ */
+@Service
+@Slf4j
+public class ReportJobService {
+
+    private static final Pattern SCHOOL_ID = Pattern.compile("[A-Za-z0-9_-]+");
+    private static final Pattern JOB_ID = Pattern.compile("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+    private static final String RESULT_SUFFIX = ".json.gz";
+    private static final String STATUS_SUFFIX = ".job.json";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Autowired
+    private BalanceList4Service balanceList4Service;
+
+    @Autowired
+    private StockReportService stockReportService;
+
+    @Autowired
+    private TutionReportService tutionReportService;
+
+    @Autowired
+    private ReportService reportService;
+
+    @Autowired
+    private PromotionService promotionService;
+
+    @Autowired
+    private FeeReapplicationService feeReapplicationService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${report.jobs.root:report-jobs}")
+    private String root;
+
+    @Value("${report.jobs.workers:4}")
+    private int workers;
+
+    @Value("${report.jobs.max-per-school:2}")
+    private int maxPerSchool;
+
+    @Value("${report.jobs.max-queued:100}")
+    private int maxQueued;
+
+    @Value("${report.jobs.retention-hours:24}")
+    private long retentionHours;
+
+    private final Map<String, ReportTask> reports = new LinkedHashMap<>();
+    private final Map<String, ReportJob> jobs = new ConcurrentHashMap<>();
+    // Guarded by this
+    private final List<Pending> queue = new LinkedList<>();
+    private final Map<String, Integer> runningPerSchool = new HashMap<>();
+    private int running;
+    private ExecutorService executor;
+
+    /**
+     * Checks a report's parameters when the job is submitted and returns the call that runs it.
+     */
+    @FunctionalInterface
+    private interface ReportTask {
+        Callable<?> bind(String schoolId, Params params);
+    }
+
+    private record Pending(ReportJob job, Callable<?> call) {
+    }
+
+    @PostConstruct
+    public void init() {
+        executor = Executors.newFixedThreadPool(workers, Thread.ofPlatform().name("report-job-", 1).daemon(true).factory());
+
+        reports.put("balance-list-4", (schoolId, params) -> {
+            String academicYear = params.required("academicYear");
+            List<String> feeHeads = params.list("feeHead");
+            boolean includeMisc = params.bool("includeMisc");
+            return () -> balanceList4Service.generateBalanceList4(schoolId, academicYear, feeHeads, includeMisc);
+        });
+        reports.put("stock-report", (schoolId, params) -> {
+            LocalDate startDate = params.date("startDate");
+            LocalDate endDate = params.date("endDate");
+            String itemName = params.optional("itemName");
+            return () -> stockReportService.generateStockReport(schoolId, startDate, endDate, itemName);
+        });
+        reports.put("periodical-collection", (schoolId, params) -> {
+            String startDate = params.requiredDate("startDate").toString();
+            String endDate = params.requiredDate("endDate").toString();
+            String academicYear = params.required("academicYear");
+            return () -> tutionReportService.getPeriodicalCollectionReport(startDate, endDate, schoolId, academicYear);
+        });
+        reports.put("trial-balance", (schoolId, params) -> {
+            LocalDate fromDate = params.requiredDate("fromDate");
+            LocalDate toDate = params.requiredDate("toDate");
+            String academicYear = params.required("academicYear");
+            String type = params.required("type");
+            return () -> reportService.getTrialBalance(schoolId, fromDate, toDate, academicYear, type);
+        });
+        reports.put("promotion", (schoolId, params) -> {
+            PromotionRequestDTO request = new PromotionRequestDTO();
+            request.setSchoolId(schoolId);
+            request.setSourceAcademicYear(params.required("sourceAcademicYear"));
+            request.setTargetAcademicYear(params.required("targetAcademicYear"));
+            request.setTargetStandard(params.required("targetStandard"));
+            request.setTargetSection(params.required("targetSection"));
+            request.setStudentAdmissionNumbers(params.list("admissionNumber"));
+            if (request.getStudentAdmissionNumbers() == null) {
+                request.setSourceStandard(params.required("sourceStandard"));
+                request.setSourceSection(params.required("sourceSection"));
+            }
+            return () -> Map.of("promotedCount", promotionService.promoteStudents(request));
+        });
+        reports.put("fee-reapplication", (schoolId, params) -> {
+            String academicYear = params.required("academicYear");
+            String feeType = FeeReapplicationService.feeType(params.required("feeType"));
+            String standard = params.optional("standard");
+            String studentCategory = params.optional("studentCategory");
+            String boardingPoint = params.optional("boardingPoint");
+            if (params.bool("preview")) {
+                return () -> feeReapplicationService.preview(schoolId, academicYear, feeType, standard, studentCategory, boardingPoint);
+            }
+            return () -> feeReapplicationService.apply(schoolId, academicYear, feeType, standard, studentCategory, boardingPoint);
+        });
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queues a run of {@code report}. Throws IllegalArgumentException for an unknown report or a
+     * missing or malformed parameter, and IllegalStateException when too many jobs are waiting.
+     */
+    public ReportJob submit(String schoolId, String report, Map<String, List<String>> params) {
+        checkSchoolId(schoolId);
+        ReportTask task = reports.get(report);
+        if (task == null) {
+            throw new IllegalArgumentException("Unknown report " + report + ", expected one of " + reports.keySet());
+        }
+        Callable<?> call = task.bind(schoolId, new Params(params));
+
+        ReportJob job = new ReportJob();
+        job.setId(UUID.randomUUID().toString());
+        job.setSchoolId(schoolId);
+        job.setReport(report);
+        job.setParams(params);
+        job.setStatus(ReportJobStatus.QUEUED);
+        job.setSubmittedAt(Instant.now());
+
+        removeExpired(schoolId);
+        synchronized (this) {
+            if (queue.size() >= maxQueued) {
+                throw new IllegalStateException("Too many reports are waiting to run, try again in a few minutes");
+            }
+            jobs.put(job.getId(), job);
+            queue.add(new Pending(job, call));
+            dispatch();
+        }
+        log.info("📥 Queued report job {} ({}) for school {}", job.getId(), report, schoolId);
+        return job;
+    }
+
+    /**
+     * The job, while this instance remembers it or its status file is kept. Empty for unknown,
+     * expired or other schools' jobs.
+     */
+    public Optional<ReportJob> find(String schoolId, String jobId) {
+        checkSchoolId(schoolId);
+        if (!JOB_ID.matcher(jobId).matches()) {
+            return Optional.empty();
+        }
+        ReportJob job = jobs.get(jobId);
+        if (job != null) {
+            return job.getSchoolId().equals(schoolId) ? Optional.of(job) : Optional.empty();
+        }
+        Path statusFile = fileOf(schoolId, jobId, STATUS_SUFFIX);
+        if (!Files.isRegularFile(statusFile)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(objectMapper.readValue(statusFile.toFile(), ReportJob.class));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read report job " + jobId + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * The school's jobs this instance remembers, newest first.
+     */
+    public List<ReportJob> list(String schoolId) {
+        checkSchoolId(schoolId);
+        return jobs.values().stream()
+                .filter(job -> job.getSchoolId().equals(schoolId))
+                .sorted(Comparator.comparing(ReportJob::getSubmittedAt).reversed())
+                .toList();
+    }
+
+    /**
+     * Download response for a finished job's result. The stored gzip is sent as is to clients
+     * that accept it, and unpacked on the fly for the others.
+     */
+    public ResponseEntity<StreamingResponseBody> download(ReportJob job, String acceptEncoding) {
+        Path file = fileOf(job.getSchoolId(), job.getId(), RESULT_SUFFIX);
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase(Locale.ROOT).contains("gzip");
+        StreamingResponseBody body = out -> {
+            try (InputStream in = gzip
+                    ? Files.newInputStream(file)
+                    : new GZIPInputStream(Files.newInputStream(file), BUFFER_SIZE)) {
+                in.transferTo(out);
+            }
+        };
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+            if (job.getResultBytes() != null) {
+                response.contentLength(job.getResultBytes());
+            }
+        }
+        return response.body(body);
+    }
+
+    // Starts queued jobs, oldest first, while workers and the schools' shares allow
+    private synchronized void dispatch() {
+        Iterator<Pending> it = queue.iterator();
+        while (running < workers && it.hasNext()) {
+            Pending pending = it.next();
+            String schoolId = pending.job().getSchoolId();
+            if (runningPerSchool.getOrDefault(schoolId, 0) >= maxPerSchool) {
+                continue;
+            }
+            it.remove();
+            running++;
+            runningPerSchool.merge(schoolId, 1, Integer::sum);
+            executor.execute(() -> execute(pending.job(), pending.call()));
+        }
+    }
+
+    private void execute(ReportJob job, Callable<?> call) {
+        job.setStatus(ReportJobStatus.RUNNING);
+        job.setStartedAt(Instant.now());
+        ReportJobProgress.bind(job);
+        try {
+            Object result = call.call();
+            job.setProgress(90);
+            writeResult(job, result);
+            job.setProgress(100);
+            job.setStatus(ReportJobStatus.DONE);
+            log.info("✅ Report job {} ({}) for school {} done in {} ms, {} bytes", job.getId(), job.getReport(),
+                    job.getSchoolId(), ChronoUnit.MILLIS.between(job.getStartedAt(), Instant.now()), job.getResultBytes());
+        } catch (Exception e) {
+            job.setError(e.getMessage());
+            job.setStatus(ReportJobStatus.FAILED);
+            log.error("❌ Report job {} ({}) for school {} failed: {}", job.getId(), job.getReport(), job.getSchoolId(), e.getMessage(), e);
+        } finally {
+            ReportJobProgress.clear();
+            job.setFinishedAt(Instant.now());
+            writeStatus(job);
+            synchronized (this) {
+                running--;
+                runningPerSchool.merge(job.getSchoolId(), -1, (count, one) -> count + one == 0 ? null : count + one);
+                dispatch();
+            }
+        }
+    }
+
+    private void writeResult(ReportJob job, Object result) throws IOException {
+        Path file = fileOf(job.getSchoolId(), job.getId(), RESULT_SUFFIX);
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE), BUFFER_SIZE)) {
+            objectMapper.writeValue(out, result);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        job.setRows(result instanceof Collection<?> rows ? rows.size() : null);
+        job.setResultBytes(Files.size(file));
+    }
+
+    private void writeStatus(ReportJob job) {
+        Path file = fileOf(job.getSchoolId(), job.getId(), STATUS_SUFFIX);
+        try {
+            Files.createDirectories(file.getParent());
+            objectMapper.writeValue(file.toFile(), job);
+        } catch (IOException e) {
+            // The job is still served from memory until this instance restarts
+            log.warn("Could not write the status of report job {}: {}", job.getId(), e.getMessage());
+        }
+    }
+
+    // Forgets finished jobs past the retention and deletes the school's old files
+    private void removeExpired(String schoolId) {
+        Instant cutoff = Instant.now().minus(retentionHours, ChronoUnit.HOURS);
+        jobs.values().removeIf(job -> job.getFinishedAt() != null && job.getFinishedAt().isBefore(cutoff));
+
+        Path dir = Path.of(root, schoolId);
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (Files.getLastModifiedTime(file).toInstant().isBefore(cutoff)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not remove old report job files of school {}: {}", schoolId, e.getMessage());
+        }
+    }
+
+    private Path fileOf(String schoolId, String jobId, String suffix) {
+        return Path.of(root, schoolId, jobId + suffix);
+    }
+
+    private static void checkSchoolId(String schoolId) {
+        if (schoolId == null || !SCHOOL_ID.matcher(schoolId).matches()) {
+            throw new IllegalArgumentException("Invalid school id: " + schoolId);
+        }
+    }
+
+    // Request parameters of a submitted job, as given to the report's synchronous endpoint
+    private record Params(Map<String, List<String>> values) {
+
+        String optional(String name) {
+            List<String> value = values.get(name);
+            if (value == null || value.isEmpty() || value.get(0) == null || value.get(0).isBlank()) {
+                return null;
+            }
+            return value.get(0).trim();
+        }
+
+        String required(String name) {
+            String value = optional(name);
+            if (value == null) {
+                throw new IllegalArgumentException(name + " is required");
+            }
+            return value;
+        }
+
+        LocalDate date(String name) {
+            String value = optional(name);
+            try {
+                return value != null ? LocalDate.parse(value) : null;
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException(name + " must be a date (YYYY-MM-DD): " + value);
+            }
+        }
+
+        LocalDate requiredDate(String name) {
+            required(name);
+            return date(name);
+        }
+
+        // Repeated or comma separated, as Spring binds a List parameter; null when absent
+        List<String> list(String name) {
+            List<String> value = values.getOrDefault(name, List.of()).stream()
+                    .filter(Objects::nonNull)
+                    .flatMap(item -> Arrays.stream(item.split(",")))
+                    .map(String::trim)
+                    .filter(item -> !item.isEmpty())
+                    .toList();
+            return value.isEmpty() ? null : value;
+        }
+
+        boolean bool(String name) {
+            return Boolean.parseBoolean(optional(name));
+        }
+    }
+}
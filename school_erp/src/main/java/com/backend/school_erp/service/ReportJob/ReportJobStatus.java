@@ -0,0 +1,10 @@
+package com.backend.school_erp.service.ReportJob;
+
+public enum ReportJobStatus {
+    // Waiting for a worker, or for one of the school's running jobs to finish
+    QUEUED,
+    RUNNING,
+    // The result file can be downloaded
+    DONE,
+    FAILED
+}
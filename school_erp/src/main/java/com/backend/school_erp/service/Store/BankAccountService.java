@@ -1,52 +1,44 @@
 package com.backend.school_erp.service.Store;
 
 import com.backend.school_erp.DTO.Store.BankAccountDTO;
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
 import com.backend.school_erp.entity.Store.BankAccount;
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import javax.sql.DataSource;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class BankAccountService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
 
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-            return new HikariDataSource(config);
-        });
-    }
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     private void ensureTableExists(JdbcTemplate jdbc) {
-        String sql = "CREATE TABLE IF NOT EXISTS bank_accounts (" +
-                "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
-                "bank_name VARCHAR(255), " +
-                "account_name VARCHAR(255), " +
-                "account_number VARCHAR(50), " +
-                "ifsc_code VARCHAR(50), " +
-                "branch_name VARCHAR(100), " +
-                "account_type VARCHAR(50), " +
-                "school_id VARCHAR(50), " +
-                "academic_year VARCHAR(20)" +
-                ")";
-        jdbc.execute(sql);
+        schemaMigrator.migrate(jdbc, "BankAccountService", 1, () -> {
+            String sql = "CREATE TABLE IF NOT EXISTS bank_accounts (" +
+                    "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                    "bank_name VARCHAR(255), " +
+                    "account_name VARCHAR(255), " +
+                    "account_number VARCHAR(50), " +
+                    "ifsc_code VARCHAR(50), " +
+                    "branch_name VARCHAR(100), " +
+                    "account_type VARCHAR(50), " +
+                    "school_id VARCHAR(50), " +
+                    "academic_year VARCHAR(20)" +
+                    ")";
+            jdbc.execute(sql);
+        });
     }
 
     public List<BankAccount> getAllAccounts(String schoolId) {
@@ -1,123 +1,114 @@
 package com.backend.school_erp.service.Store;
 
 import com.backend.school_erp.DTO.Store.BookDistributionDTO;
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
+import com.backend.school_erp.service.Transaction.TenantSequenceAllocator;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import javax.sql.DataSource;
 import java.time.LocalTime;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 
 @Service
 @Slf4j
 public class BookDistributeService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
 
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            try {
-                HikariConfig config = new HikariConfig();
-                config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-                config.setUsername(DatabaseConfig.AWS_DB_USER);
-                config.setPassword(DatabaseConfig.AWS_DB_PASS);
-                config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-                return new HikariDataSource(config);
-            } catch (Exception e) {
-                log.error("Error creating DataSource for schoolId: " + id, e);
-                throw new RuntimeException("Database connection failed for school: " + id);
-            }
-        });
-    }
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
+
+    @Autowired
+    private TenantSequenceAllocator sequenceAllocator;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     /**
      * Ensures all necessary tables exist with proper payment mode columns.
      */
     private void ensureTablesExist(JdbcTemplate jdbc) {
-        // 1. Notebook Table (Main Transaction Table) - UPDATED with payment mode columns
-        jdbc.execute("CREATE TABLE IF NOT EXISTS notebook (" +
-                "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
-                "bill_no VARCHAR(50), " +
-                "bill_num VARCHAR(50), " +
-                "fee_date DATE, " +
-                "quantity INT, " +
-                "total_amount DOUBLE, " +
-                "admission_no VARCHAR(50), " +
-                "operator_no VARCHAR(50), " +
-                "description_name VARCHAR(255), " +
-                "student_name VARCHAR(255), " +
-                "standard VARCHAR(50), " +
-                "section VARCHAR(50), " +
-                "paymode VARCHAR(50), " +  // NEW: Store payment mode for each item
-                "ddcheck_no VARCHAR(100), " + // NEW: Store cheque/DD number
-                "bank_account_id BIGINT, " + // NEW: Store bank account ID
-                "bank_name VARCHAR(255), " + // NEW: Store bank name
-                "account_number VARCHAR(50), " + // NEW: Store account number
-                "ifsc_code VARCHAR(50), " + // NEW: Store IFSC code
-                "school_id VARCHAR(50), " +
-                "academic_year VARCHAR(20))");
-
-        // 2. Notebook PayDetails (Payment Summary) - UPDATED with all payment details
-        jdbc.execute("CREATE TABLE IF NOT EXISTS notebook_paydetails (" +
-                "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
-                "total_amount_paid DOUBLE, " +
-                "concession_amount DOUBLE, " +
-                "admission_no VARCHAR(50), " +
-                "bill_no VARCHAR(50), " +
-                "student_name VARCHAR(255), " +
-                "standard VARCHAR(50), " +
-                "section VARCHAR(50), " +
-                "paymode VARCHAR(50), " +
-                "ddcheck_no VARCHAR(100), " +
-                "bill_date DATE, " +
-                "bill_time TIME, " +
-                "bank_account_id BIGINT, " + // NEW: Store bank account ID
-                "bank_name VARCHAR(255), " + // NEW: Store bank name
-                "account_number VARCHAR(50), " + // NEW: Store account number
-                "ifsc_code VARCHAR(50), " + // NEW: Store IFSC code
-                "account_type VARCHAR(50), " + // NEW: Store account type
-                "branch_name VARCHAR(100), " + // NEW: Store branch name
-                "school_id VARCHAR(50), " +
-                "academic_year VARCHAR(20))");
-
-        // 3. Stock Report Table
-        jdbc.execute("CREATE TABLE IF NOT EXISTS stock_report (" +
-                "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
-                "description_name VARCHAR(255), " +
-                "date DATE, " +
-                "quantity INT, " +
-                "standard VARCHAR(50), " +
-                "school_id VARCHAR(50), " +
-                "academic_year VARCHAR(20))");
-
-        // 4. Bank Payment Details Table (for separate tracking if needed)
-        jdbc.execute("CREATE TABLE IF NOT EXISTS bank_payment_details (" +
-                "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
-                "bill_no VARCHAR(50), " +
-                "bank_account_id BIGINT, " +
-                "bank_name VARCHAR(255), " +
-                "account_number VARCHAR(50), " +
-                "ifsc_code VARCHAR(50), " +
-                "account_type VARCHAR(50), " +
-                "branch_name VARCHAR(100), " +
-                "transaction_date DATE, " +
-                "transaction_time TIME, " +
-                "amount DOUBLE, " +
-                "status VARCHAR(20) DEFAULT 'COMPLETED', " +
-                "school_id VARCHAR(50), " +
-                "academic_year VARCHAR(20))");
+        schemaMigrator.migrate(jdbc, "BookDistributeService", 1, () -> {
+            // 1. Notebook Table (Main Transaction Table) - UPDATED with payment mode columns
+            jdbc.execute("CREATE TABLE IF NOT EXISTS notebook (" +
+                    "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                    "bill_no VARCHAR(50), " +
+                    "bill_num VARCHAR(50), " +
+                    "fee_date DATE, " +
+                    "quantity INT, " +
+                    "total_amount DOUBLE, " +
+                    "admission_no VARCHAR(50), " +
+                    "operator_no VARCHAR(50), " +
+                    "description_name VARCHAR(255), " +
+                    "student_name VARCHAR(255), " +
+                    "standard VARCHAR(50), " +
+                    "section VARCHAR(50), " +
+                    "paymode VARCHAR(50), " +  // NEW: Store payment mode for each item
+                    "ddcheck_no VARCHAR(100), " + // NEW: Store cheque/DD number
+                    "bank_account_id BIGINT, " + // NEW: Store bank account ID
+                    "bank_name VARCHAR(255), " + // NEW: Store bank name
+                    "account_number VARCHAR(50), " + // NEW: Store account number
+                    "ifsc_code VARCHAR(50), " + // NEW: Store IFSC code
+                    "school_id VARCHAR(50), " +
+                    "academic_year VARCHAR(20))");
+
+            // 2. Notebook PayDetails (Payment Summary) - UPDATED with all payment details
+            jdbc.execute("CREATE TABLE IF NOT EXISTS notebook_paydetails (" +
+                    "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                    "total_amount_paid DOUBLE, " +
+                    "concession_amount DOUBLE, " +
+                    "admission_no VARCHAR(50), " +
+                    "bill_no VARCHAR(50), " +
+                    "student_name VARCHAR(255), " +
+                    "standard VARCHAR(50), " +
+                    "section VARCHAR(50), " +
+                    "paymode VARCHAR(50), " +
+                    "ddcheck_no VARCHAR(100), " +
+                    "bill_date DATE, " +
+                    "bill_time TIME, " +
+                    "bank_account_id BIGINT, " + // NEW: Store bank account ID
+                    "bank_name VARCHAR(255), " + // NEW: Store bank name
+                    "account_number VARCHAR(50), " + // NEW: Store account number
+                    "ifsc_code VARCHAR(50), " + // NEW: Store IFSC code
+                    "account_type VARCHAR(50), " + // NEW: Store account type
+                    "branch_name VARCHAR(100), " + // NEW: Store branch name
+                    "school_id VARCHAR(50), " +
+                    "academic_year VARCHAR(20))");
+
+            // 3. Stock Report Table
+            jdbc.execute("CREATE TABLE IF NOT EXISTS stock_report (" +
+                    "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                    "description_name VARCHAR(255), " +
+                    "date DATE, " +
+                    "quantity INT, " +
+                    "standard VARCHAR(50), " +
+                    "school_id VARCHAR(50), " +
+                    "academic_year VARCHAR(20))");
+
+            // 4. Bank Payment Details Table (for separate tracking if needed)
+            jdbc.execute("CREATE TABLE IF NOT EXISTS bank_payment_details (" +
+                    "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                    "bill_no VARCHAR(50), " +
+                    "bank_account_id BIGINT, " +
+                    "bank_name VARCHAR(255), " +
+                    "account_number VARCHAR(50), " +
+                    "ifsc_code VARCHAR(50), " +
+                    "account_type VARCHAR(50), " +
+                    "branch_name VARCHAR(100), " +
+                    "transaction_date DATE, " +
+                    "transaction_time TIME, " +
+                    "amount DOUBLE, " +
+                    "status VARCHAR(20) DEFAULT 'COMPLETED', " +
+                    "school_id VARCHAR(50), " +
+                    "academic_year VARCHAR(20))");
+        });
     }
 
     // --- Grid 1: Get Setup Items (What the student SHOULD have) ---
@@ -144,8 +135,12 @@ public class BookDistributeService {
     }
 
     private String generateBillNo(JdbcTemplate jdbc) {
-        Integer count = jdbc.queryForObject("SELECT COUNT(*) FROM notebook_paydetails", Integer.class);
-        return "NB-" + (count != null ? count + 1 : 1);
+        long next = sequenceAllocator.next(jdbc, "notebook_bill", TenantSequenceAllocator.ALL_YEARS, () -> {
+            Long maxId = jdbc.queryForObject(
+                    "SELECT MAX(CAST(SUBSTRING(bill_no, 4) AS UNSIGNED)) FROM notebook_paydetails WHERE bill_no LIKE 'NB-%'", Long.class);
+            return maxId == null ? 0 : maxId;
+        });
+        return "NB-" + next;
     }
 
     @Transactional
@@ -1,51 +1,43 @@
 package com.backend.school_erp.service.Store;
 
 import com.backend.school_erp.DTO.Store.BookDTO;
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
 import com.backend.school_erp.entity.Store.Book;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import javax.sql.DataSource;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.Map;
-
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 
 @Service
 @Slf4j
 public class BookService {
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
-
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-            return new HikariDataSource(config);
-        });
-    }
+
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     private void ensureTableExists(JdbcTemplate jdbc) {
-        jdbc.execute("CREATE TABLE IF NOT EXISTS books (" +
-                "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
-                "book_code VARCHAR(50), " +
-                "book_name VARCHAR(255) NOT NULL, " +
-                "school_id VARCHAR(50), " +
-                "academic_year VARCHAR(20), " +
-                "UNIQUE(book_name, school_id))");
+        schemaMigrator.migrate(jdbc, "BookService", 1, () -> {
+            jdbc.execute("CREATE TABLE IF NOT EXISTS books (" +
+                    "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                    "book_code VARCHAR(50), " +
+                    "book_name VARCHAR(255) NOT NULL, " +
+                    "school_id VARCHAR(50), " +
+                    "academic_year VARCHAR(20), " +
+                    "UNIQUE(book_name, school_id))");
+        });
     }
 
     // ✅ NEW: Generate Next Code (e.g., BK-001)
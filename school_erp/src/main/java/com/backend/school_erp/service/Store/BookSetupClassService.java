@@ -1,54 +1,46 @@
 package com.backend.school_erp.service.Store;
 
 import com.backend.school_erp.DTO.Store.BookSetupClassDTO;
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
 import com.backend.school_erp.entity.Store.BookSetupClass;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import javax.sql.DataSource;
 import java.time.LocalDate;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.Map;
-
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 
 @Service
 @Slf4j
 public class BookSetupClassService {
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
-
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-            return new HikariDataSource(config);
-        });
-    }
+
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     private void ensureTableExists(JdbcTemplate jdbc) {
-        // Ensure Book Setup Table Exists
-        jdbc.execute("CREATE TABLE IF NOT EXISTS book_setup_classes (" +
-                "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
-                "standard VARCHAR(50), " +
-                "book_id VARCHAR(255), " +
-                "quantity INT, " +
-                "amount DOUBLE, " +
-                "entry_date DATE, " +
-                "school_id VARCHAR(50), " +
-                "academic_year VARCHAR(20))");
+        schemaMigrator.migrate(jdbc, "BookSetupClassService", 1, () -> {
+            // Ensure Book Setup Table Exists
+            jdbc.execute("CREATE TABLE IF NOT EXISTS book_setup_classes (" +
+                    "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                    "standard VARCHAR(50), " +
+                    "book_id VARCHAR(255), " +
+                    "quantity INT, " +
+                    "amount DOUBLE, " +
+                    "entry_date DATE, " +
+                    "school_id VARCHAR(50), " +
+                    "academic_year VARCHAR(20))");
+        });
     }
 
     @Transactional
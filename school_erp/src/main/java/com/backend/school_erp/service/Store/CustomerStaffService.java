@@ -1,62 +1,54 @@
 package com.backend.school_erp.service.Store;
 
 import com.backend.school_erp.DTO.Store.CustomerStaffDTO;
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
 import com.backend.school_erp.entity.Store.CustomerStaff;
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import javax.sql.DataSource;
 import java.time.LocalDateTime;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @Slf4j
 public class CustomerStaffService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
 
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-            return new HikariDataSource(config);
-        });
-    }
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     private void ensureTableExists(JdbcTemplate jdbc) {
-        jdbc.execute("CREATE TABLE IF NOT EXISTS customer_staff (" +
-                "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
-                "customer_staff_code VARCHAR(50), " +
-                "customer_staff_name VARCHAR(100), " +
-                "number_street_name VARCHAR(255), " +
-                "place_pin_code VARCHAR(100), " +
-                "state_id VARCHAR(50), " +
-                "state VARCHAR(100), " +
-                "district_id VARCHAR(50), " +
-                "district VARCHAR(100), " +
-                "phone_number VARCHAR(20), " +
-                "email VARCHAR(100), " +
-                "contact_person VARCHAR(100), " +
-                "school_id VARCHAR(50), " +
-                "academic_year VARCHAR(20), " +
-                "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
-                "updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP" +
-                ")");
+        schemaMigrator.migrate(jdbc, "CustomerStaffService", 1, () -> {
+            jdbc.execute("CREATE TABLE IF NOT EXISTS customer_staff (" +
+                    "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                    "customer_staff_code VARCHAR(50), " +
+                    "customer_staff_name VARCHAR(100), " +
+                    "number_street_name VARCHAR(255), " +
+                    "place_pin_code VARCHAR(100), " +
+                    "state_id VARCHAR(50), " +
+                    "state VARCHAR(100), " +
+                    "district_id VARCHAR(50), " +
+                    "district VARCHAR(100), " +
+                    "phone_number VARCHAR(20), " +
+                    "email VARCHAR(100), " +
+                    "contact_person VARCHAR(100), " +
+                    "school_id VARCHAR(50), " +
+                    "academic_year VARCHAR(20), " +
+                    "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
+                    "updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP" +
+                    ")");
+        });
     }
 
     public List<CustomerStaff> getAll(String schoolId, String academicYear) {
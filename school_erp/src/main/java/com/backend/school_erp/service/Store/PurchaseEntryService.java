@@ -1,89 +1,100 @@
 package com.backend.school_erp.service.Store;
 
 import com.backend.school_erp.DTO.Store.PurchaseEntryDTO;
-import com.backend.school_erp.config.DatabaseConfig;
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
+import com.backend.school_erp.service.Transaction.TenantSequenceAllocator;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import javax.sql.DataSource;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class PurchaseEntryService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
+    private static final String ENTRY_SERIES = "purchase_entry";
 
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-            return new HikariDataSource(config);
-        });
-    }
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
+
+    @Autowired
+    private TenantSequenceAllocator sequenceAllocator;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     private void ensureTablesExist(JdbcTemplate jdbc) {
-        // 1. TabPurchase Table
-        jdbc.execute("CREATE TABLE IF NOT EXISTS tab_purchase (" +
-                "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
-                "entry_no VARCHAR(50), " +
-                "supplier_code VARCHAR(50), " +
-                "supplier_name VARCHAR(255), " +
-                "tin VARCHAR(50), " +
-                "invoice_no VARCHAR(50), " +
-                "invoice_date DATE, " +
-                "purchase_date DATE, " +
-                "gross_amount DOUBLE, " +
-                "credit DOUBLE, " +
-                "debit DOUBLE, " +
-                "narrative TEXT, " +
-                "payment_mode VARCHAR(50), " +
-                "gst_amount DOUBLE, " +
-                "others DOUBLE, " +
-                "school_id VARCHAR(50), " +
-                "academic_year VARCHAR(20))");
-
-        // 2. SpPayment Table
-        jdbc.execute("CREATE TABLE IF NOT EXISTS sp_payment (" +
-                "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
-                "bill_date DATE, " +
-                "supplier_code VARCHAR(50), " +
-                "supplier_name VARCHAR(255), " +
-                "bill_number VARCHAR(50), " +
-                "payment_amount DOUBLE, " +
-                "balance_amount DOUBLE, " +
-                "amount_paid DOUBLE, " +
-                "status VARCHAR(50), " +
-                "invoice_number VARCHAR(50), " +
-                "school_id VARCHAR(50), " +
-                "academic_year VARCHAR(20))");
+        schemaMigrator.migrate(jdbc, "PurchaseEntryService", 1, () -> {
+            // 1. TabPurchase Table
+            jdbc.execute("CREATE TABLE IF NOT EXISTS tab_purchase (" +
+                    "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                    "entry_no VARCHAR(50), " +
+                    "supplier_code VARCHAR(50), " +
+                    "supplier_name VARCHAR(255), " +
+                    "tin VARCHAR(50), " +
+                    "invoice_no VARCHAR(50), " +
+                    "invoice_date DATE, " +
+                    "purchase_date DATE, " +
+                    "gross_amount DOUBLE, " +
+                    "credit DOUBLE, " +
+                    "debit DOUBLE, " +
+                    "narrative TEXT, " +
+                    "payment_mode VARCHAR(50), " +
+                    "gst_amount DOUBLE, " +
+                    "others DOUBLE, " +
+                    "school_id VARCHAR(50), " +
+                    "academic_year VARCHAR(20))");
+
+            // 2. SpPayment Table
+            jdbc.execute("CREATE TABLE IF NOT EXISTS sp_payment (" +
+                    "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                    "bill_date DATE, " +
+                    "supplier_code VARCHAR(50), " +
+                    "supplier_name VARCHAR(255), " +
+                    "bill_number VARCHAR(50), " +
+                    "payment_amount DOUBLE, " +
+                    "balance_amount DOUBLE, " +
+                    "amount_paid DOUBLE, " +
+                    "status VARCHAR(50), " +
+                    "invoice_number VARCHAR(50), " +
+                    "school_id VARCHAR(50), " +
+                    "academic_year VARCHAR(20))");
+        });
     }
 
+    // Upcoming number for the form; savePurchaseEntry takes the number itself
     public String generateEntryNo(String schoolId) {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
         ensureTablesExist(jdbc);
+        return formatEntryNo(sequenceAllocator.peek(jdbc, ENTRY_SERIES, TenantSequenceAllocator.ALL_YEARS, () -> lastEntryId(jdbc, schoolId)));
+    }
+
+    private String nextEntryNo(JdbcTemplate jdbc, String schoolId) {
+        return formatEntryNo(sequenceAllocator.next(jdbc, ENTRY_SERIES, TenantSequenceAllocator.ALL_YEARS, () -> lastEntryId(jdbc, schoolId)));
+    }
+
+    private String formatEntryNo(long id) {
+        return "PUR-ENT-" + String.format("%04d", id);
+    }
+
+    // Only used to seed the sequence
+    private long lastEntryId(JdbcTemplate jdbc, String schoolId) {
         String sql = "SELECT MAX(CAST(SUBSTRING_INDEX(entry_no, '-', -1) AS UNSIGNED)) FROM tab_purchase WHERE school_id = ?";
-        Integer maxId;
-        try { maxId = jdbc.queryForObject(sql, Integer.class, schoolId); } catch (Exception e) { maxId = 0; }
-        int nextId = (maxId == null) ? 1 : maxId + 1;
-        return "PUR-ENT-" + String.format("%04d", nextId);
+        Long maxId;
+        try { maxId = jdbc.queryForObject(sql, Long.class, schoolId); } catch (Exception e) { maxId = 0L; }
+        return maxId == null ? 0 : maxId;
     }
 
     @Transactional
     public String savePurchaseEntry(String schoolId, String year, PurchaseEntryDTO dto) {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
         ensureTablesExist(jdbc);
-        String entryNo = generateEntryNo(schoolId);
+        String entryNo = nextEntryNo(jdbc, schoolId);
 
         // --- CALCULATIONS ---
         // 1. Taxable (Others) = Base Amount - Discount
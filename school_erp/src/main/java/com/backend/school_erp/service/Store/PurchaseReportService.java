@@ -1,38 +1,32 @@
 package com.backend.school_erp.service.Store;
 
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
 import com.backend.school_erp.entity.Store.TabPurchase;
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
+import com.backend.school_erp.service.Export.ExportWriter;
+import com.backend.school_erp.service.Export.ReportExportService;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import javax.sql.DataSource;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class PurchaseReportService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
-
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-            return new HikariDataSource(config);
-        });
-    }
+    private static final String ALL_PURCHASES_SQL = "SELECT * FROM tab_purchase WHERE tin = 'Purchase' ORDER BY purchase_date ASC, entry_no ASC";
+
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private ReportExportService reportExportService;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     // 1. Get Distinct Suppliers ONLY from 'Purchase' entries
@@ -90,8 +84,11 @@ public class PurchaseReportService {
     public List<TabPurchase> getAllPurchases(String schoolId) {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
 
-        String sql = "SELECT * FROM tab_purchase WHERE tin = 'Purchase' ORDER BY purchase_date ASC, entry_no ASC";
+        return jdbc.query(ALL_PURCHASES_SQL, new BeanPropertyRowMapper<>(TabPurchase.class));
+    }
 
-        return jdbc.query(sql.toString(), new BeanPropertyRowMapper<>(TabPurchase.class));
+    // 5. Export all purchases, streamed row by row
+    public void exportAllPurchases(String schoolId, ExportWriter writer) {
+        reportExportService.exportQuery(schoolId, ALL_PURCHASES_SQL, writer);
     }
 }
\ No newline at end of file
@@ -1,61 +1,58 @@
 package com.backend.school_erp.service.Store;
 
 import com.backend.school_erp.DTO.Store.PurchaseTransactionDTO;
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
+import com.backend.school_erp.service.Transaction.TenantSequenceAllocator;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import javax.sql.DataSource;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 
 @Service
 @Slf4j
 public class PurchaseService {
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
-
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-            return new HikariDataSource(config);
-        });
-    }
+
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
+
+    @Autowired
+    private TenantSequenceAllocator sequenceAllocator;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     private void ensureTablesExist(JdbcTemplate jdbc) {
-        // 1. Purchase Header
-        jdbc.execute("CREATE TABLE IF NOT EXISTS purchase_header (" +
-                "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
-                "bill_number VARCHAR(50), entry_number VARCHAR(50), entry_date DATE, " +
-                "supplier_code VARCHAR(50), supplier_name VARCHAR(100), month VARCHAR(20), " +
-                "total_amount DOUBLE, school_id VARCHAR(50), academic_year VARCHAR(20))");
-
-        // 2. Purchase Daily
-        jdbc.execute("CREATE TABLE IF NOT EXISTS purchase_daily (" +
-                "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
-                "bill_number VARCHAR(50), entry_date DATE, month VARCHAR(20), supplier_code VARCHAR(50), " +
-                "item_code VARCHAR(50), description VARCHAR(255), head VARCHAR(50), " +
-                "standard VARCHAR(50), unit VARCHAR(20), quantity INT, rate DOUBLE, " +
-                "gst_percent DOUBLE, line_total DOUBLE, school_id VARCHAR(50), academic_year VARCHAR(20))");
-
-        // 3. Stock
-        jdbc.execute("CREATE TABLE IF NOT EXISTS stock (" +
-                "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
-                "item_code VARCHAR(50) UNIQUE, item_name VARCHAR(255), total_quantity INT, " +
-                "purchase_rate DOUBLE, head VARCHAR(50), unit VARCHAR(20), gst_percent DOUBLE, " +
-                "school_id VARCHAR(50))");
+        schemaMigrator.migrate(jdbc, "PurchaseService", 1, () -> {
+            // 1. Purchase Header
+            jdbc.execute("CREATE TABLE IF NOT EXISTS purchase_header (" +
+                    "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                    "bill_number VARCHAR(50), entry_number VARCHAR(50), entry_date DATE, " +
+                    "supplier_code VARCHAR(50), supplier_name VARCHAR(100), month VARCHAR(20), " +
+                    "total_amount DOUBLE, school_id VARCHAR(50), academic_year VARCHAR(20))");
+
+            // 2. Purchase Daily
+            jdbc.execute("CREATE TABLE IF NOT EXISTS purchase_daily (" +
+                    "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                    "bill_number VARCHAR(50), entry_date DATE, month VARCHAR(20), supplier_code VARCHAR(50), " +
+                    "item_code VARCHAR(50), description VARCHAR(255), head VARCHAR(50), " +
+                    "standard VARCHAR(50), unit VARCHAR(20), quantity INT, rate DOUBLE, " +
+                    "gst_percent DOUBLE, line_total DOUBLE, school_id VARCHAR(50), academic_year VARCHAR(20))");
+
+            // 3. Stock
+            jdbc.execute("CREATE TABLE IF NOT EXISTS stock (" +
+                    "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                    "item_code VARCHAR(50) UNIQUE, item_name VARCHAR(255), total_quantity INT, " +
+                    "purchase_rate DOUBLE, head VARCHAR(50), unit VARCHAR(20), gst_percent DOUBLE, " +
+                    "school_id VARCHAR(50))");
+        });
     }
 
     @Transactional
@@ -121,7 +118,12 @@ public class PurchaseService {
     public String generateEntryNumber(String schoolId) {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
         ensureTablesExist(jdbc);
-        Integer count = jdbc.queryForObject("SELECT COUNT(*) FROM purchase_header", Integer.class);
-        return "Bill" + String.format("%06d", (count != null ? count : 0) + 1);
+        // The form saves with this number, so it is taken here rather than in savePurchase
+        long next = sequenceAllocator.next(jdbc, "purchase_header", TenantSequenceAllocator.ALL_YEARS, () -> {
+            Long maxId = jdbc.queryForObject(
+                    "SELECT MAX(CAST(SUBSTRING(entry_number, 5) AS UNSIGNED)) FROM purchase_header WHERE entry_number LIKE 'Bill%'", Long.class);
+            return maxId == null ? 0 : maxId;
+        });
+        return "Bill" + String.format("%06d", next);
     }
 }
\ No newline at end of file
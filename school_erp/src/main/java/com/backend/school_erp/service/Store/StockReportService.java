@@ -1,35 +1,32 @@
 package com.backend.school_erp.service.Store;
 
 import com.backend.school_erp.DTO.Store.StockReportDTO;
-import com.backend.school_erp.config.DatabaseConfig;
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
+import com.backend.school_erp.service.DebitCardReport.ReportQueryExecutor;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantTableCatalog;
+import com.backend.school_erp.service.ReportJob.ReportJobProgress;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import javax.sql.DataSource;
 import java.time.LocalDate;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 @Service
 public class StockReportService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
 
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-            return new HikariDataSource(config);
-        });
-    }
+    @Autowired
+    private TenantTableCatalog tableCatalog;
+
+    @Autowired
+    private ReportQueryExecutor reportQueryExecutor;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     public List<String> getAllItemNames(String schoolId) {
@@ -49,276 +46,104 @@ public class StockReportService {
         boolean isDateRangeReport = (startDate != null && endDate != null);
         boolean isSingleDateReport = (startDate != null && endDate == null); // Legacy support
 
-        // For backward compatibility
-        LocalDate reportDate = isSingleDateReport ? startDate : null;
-
-        // Map to store report data
-        Map<String, StockReportDTO> reportMap = new HashMap<>();
-
-        // 👇 1. GET ALL ITEMS (from both purchase and issue tables)
-        Set<String> allItems = new HashSet<>();
-
-        // Get items from purchase_daily
-        StringBuilder itemsSql = new StringBuilder(
-                "SELECT DISTINCT description FROM purchase_daily WHERE school_id = ? ");
-        List<Object> itemsParams = new ArrayList<>();
-        itemsParams.add(schoolId);
-
+        // Window of each report type:
+        //   Overall     - opening 0, movement = all time
+        //   Date range  - opening = before start, movement = start..end
+        //   Single date - opening = before date, movement and closing = up to date
+        LocalDate openingBefore = null;
+        LocalDate periodFrom = null;
+        LocalDate periodTo = null;
         if (isDateRangeReport) {
-            itemsSql.append("AND entry_date BETWEEN ? AND ? ");
-            itemsParams.add(startDate);
-            itemsParams.add(endDate);
-        } else if (reportDate != null) {
-            itemsSql.append("AND entry_date <= ? ");
-            itemsParams.add(reportDate);
+            openingBefore = startDate;
+            periodFrom = startDate;
+            periodTo = endDate;
+        } else if (isSingleDateReport) {
+            openingBefore = startDate;
+            periodTo = startDate;
         }
 
-        if (itemName != null && !itemName.isEmpty() && !itemName.equals("Select Item") && !itemName.equals("Select Item (Optional)")) {
-            itemsSql.append("AND description = ? ");
-            itemsParams.add(itemName);
+        String itemFilter = (itemName != null && !itemName.isEmpty() && !itemName.equals("Select Item") && !itemName.equals("Select Item (Optional)"))
+                ? itemName : null;
+
+        // 👇 1. AGGREGATE MOVEMENTS: one grouped query per source table, plus the latest purchase details
+        Map<String, Movement> purchases;
+        Map<String, Movement> issues;
+        Map<String, Map<String, Object>> latestPurchase;
+        LocalDate opening = openingBefore, from = periodFrom, to = periodTo;
+        try (ReportQueryExecutor.Scope scope = reportQueryExecutor.open()) {
+            Supplier<Map<String, Movement>> purchaseQuery = scope.fork(() ->
+                    aggregateMovements(jdbc, schoolId, "purchase_daily", "description", "entry_date", opening, from, to, itemFilter));
+            // stock_report might not exist
+            Supplier<Map<String, Movement>> issueQuery = scope.fork(() -> tableCatalog.tableExists(jdbc, "stock_report")
+                    ? aggregateMovements(jdbc, schoolId, "stock_report", "description_name", "date", opening, from, to, itemFilter)
+                    : Map.of());
+            Supplier<Map<String, Map<String, Object>>> detailQuery = scope.fork(() -> getLatestPurchaseDetails(jdbc, schoolId, itemFilter));
+            scope.join();
+            purchases = purchaseQuery.get();
+            issues = issueQuery.get();
+            latestPurchase = detailQuery.get();
         }
 
-        List<String> purchaseItems = jdbc.queryForList(itemsSql.toString(), itemsParams.toArray(), String.class);
-        allItems.addAll(purchaseItems);
-
-        // Get items from stock_report
-        try {
-            StringBuilder issuedItemsSql = new StringBuilder(
-                    "SELECT DISTINCT description_name FROM stock_report WHERE school_id = ? ");
-            List<Object> issuedItemsParams = new ArrayList<>();
-            issuedItemsParams.add(schoolId);
-
-            if (isDateRangeReport) {
-                issuedItemsSql.append("AND date BETWEEN ? AND ? ");
-                issuedItemsParams.add(startDate);
-                issuedItemsParams.add(endDate);
-            } else if (reportDate != null) {
-                issuedItemsSql.append("AND date <= ? ");
-                issuedItemsParams.add(reportDate);
-            }
-
-            if (itemName != null && !itemName.isEmpty() && !itemName.equals("Select Item") && !itemName.equals("Select Item (Optional)")) {
-                issuedItemsSql.append("AND description_name = ? ");
-                issuedItemsParams.add(itemName);
-            }
+        // Items that moved within the report window, in either table
+        Set<String> allItems = new HashSet<>();
+        purchases.forEach((item, movement) -> { if (movement.periodRows() > 0) allItems.add(item); });
+        issues.forEach((item, movement) -> { if (movement.periodRows() > 0) allItems.add(item); });
 
-            List<String> issuedItems = jdbc.queryForList(issuedItemsSql.toString(), issuedItemsParams.toArray(), String.class);
-            allItems.addAll(issuedItems);
-        } catch (Exception e) {
-            // stock_report table might not exist
+        // Items never purchased fall back to the stock master for their details
+        Map<String, Map<String, Object>> stockDetails = new HashMap<>();
+        if (!latestPurchase.keySet().containsAll(allItems)) {
+            stockDetails = getStockDetails(jdbc, schoolId);
         }
 
-        // 👇 2. CALCULATE OPENING BALANCE for each item
-        Map<String, Long> openingBalances = new HashMap<>();
-        Map<String, Long> closingBalances = new HashMap<>();
-
+        // 👇 2. MERGE: opening, purchase, issue and closing per item
+        List<StockReportDTO> finalReport = new ArrayList<>();
+        int done = 0;
         for (String item : allItems) {
-            long openingBalance = 0L;
-            long closingBalance = 0L;
+            ReportJobProgress.update(++done, allItems.size());
+            Movement purchase = purchases.getOrDefault(item, Movement.NONE);
+            Movement issue = issues.getOrDefault(item, Movement.NONE);
 
-            if (isOverallReport) {
-                // Overall Report: Opening = 0, Closing = Total Purchase - Total Issue (all time)
-                Long totalPurchase = jdbc.queryForObject(
-                        "SELECT COALESCE(SUM(quantity), 0) FROM purchase_daily WHERE school_id = ? AND description = ?",
-                        Long.class, schoolId, item
-                );
-
-                Long totalIssued = 0L;
-                try {
-                    totalIssued = jdbc.queryForObject(
-                            "SELECT COALESCE(SUM(quantity), 0) FROM stock_report WHERE school_id = ? AND description_name = ?",
-                            Long.class, schoolId, item
-                    );
-                } catch (Exception e) {
-                    totalIssued = 0L;
-                }
-
-                openingBalance = 0L;
-                closingBalance = (totalPurchase != null ? totalPurchase : 0L) - (totalIssued != null ? totalIssued : 0L);
-
-            } else if (isDateRangeReport) {
-                // Date Range Report
-                // Opening Balance = Balance BEFORE start date
-                Long purchaseBefore = jdbc.queryForObject(
-                        "SELECT COALESCE(SUM(quantity), 0) FROM purchase_daily WHERE school_id = ? AND description = ? AND entry_date < ?",
-                        Long.class, schoolId, item, startDate
-                );
-
-                Long issuedBefore = 0L;
-                try {
-                    issuedBefore = jdbc.queryForObject(
-                            "SELECT COALESCE(SUM(quantity), 0) FROM stock_report WHERE school_id = ? AND description_name = ? AND date < ?",
-                            Long.class, schoolId, item, startDate
-                    );
-                } catch (Exception e) {
-                    issuedBefore = 0L;
-                }
-
-                openingBalance = (purchaseBefore != null ? purchaseBefore : 0L) - (issuedBefore != null ? issuedBefore : 0L);
-
-                // Closing Balance = Opening + Purchase during period - Issued during period
-                Long purchaseDuring = jdbc.queryForObject(
-                        "SELECT COALESCE(SUM(quantity), 0) FROM purchase_daily WHERE school_id = ? AND description = ? AND entry_date BETWEEN ? AND ?",
-                        Long.class, schoolId, item, startDate, endDate
-                );
-
-                Long issuedDuring = 0L;
-                try {
-                    issuedDuring = jdbc.queryForObject(
-                            "SELECT COALESCE(SUM(quantity), 0) FROM stock_report WHERE school_id = ? AND description_name = ? AND date BETWEEN ? AND ?",
-                            Long.class, schoolId, item, startDate, endDate
-                    );
-                } catch (Exception e) {
-                    issuedDuring = 0L;
-                }
-
-                closingBalance = openingBalance +
-                        (purchaseDuring != null ? purchaseDuring : 0L) -
-                        (issuedDuring != null ? issuedDuring : 0L);
-
-            } else if (isSingleDateReport) {
-                // Single Date Report (Legacy)
-                // Opening = Balance BEFORE report date
-                Long purchaseBefore = jdbc.queryForObject(
-                        "SELECT COALESCE(SUM(quantity), 0) FROM purchase_daily WHERE school_id = ? AND description = ? AND entry_date < ?",
-                        Long.class, schoolId, item, reportDate
-                );
-
-                Long issuedBefore = 0L;
-                try {
-                    issuedBefore = jdbc.queryForObject(
-                            "SELECT COALESCE(SUM(quantity), 0) FROM stock_report WHERE school_id = ? AND description_name = ? AND date < ?",
-                            Long.class, schoolId, item, reportDate
-                    );
-                } catch (Exception e) {
-                    issuedBefore = 0L;
-                }
-
-                openingBalance = (purchaseBefore != null ? purchaseBefore : 0L) - (issuedBefore != null ? issuedBefore : 0L);
-
-                // Purchase and Issued ON the report date
-                Long purchaseOnDate = jdbc.queryForObject(
-                        "SELECT COALESCE(SUM(quantity), 0) FROM purchase_daily WHERE school_id = ? AND description = ? AND entry_date = ?",
-                        Long.class, schoolId, item, reportDate
-                );
-
-                Long issuedOnDate = 0L;
-                try {
-                    issuedOnDate = jdbc.queryForObject(
-                            "SELECT COALESCE(SUM(quantity), 0) FROM stock_report WHERE school_id = ? AND description_name = ? AND date = ?",
-                            Long.class, schoolId, item, reportDate
-                    );
-                } catch (Exception e) {
-                    issuedOnDate = 0L;
-                }
-
-                Long purchaseDuring = jdbc.queryForObject(
-                        "SELECT COALESCE(SUM(quantity), 0) FROM purchase_daily WHERE school_id = ? AND description = ? AND entry_date <= ?",
-                        Long.class, schoolId, item, reportDate
-                );
-
-                Long issuedDuring = 0L;
-                try {
-                    issuedDuring = jdbc.queryForObject(
-                            "SELECT COALESCE(SUM(quantity), 0) FROM stock_report WHERE school_id = ? AND description_name = ? AND date <= ?",
-                            Long.class, schoolId, item, reportDate
-                    );
-                } catch (Exception e) {
-                    issuedDuring = 0L;
-                }
-
-                closingBalance = (purchaseDuring != null ? purchaseDuring : 0L) - (issuedDuring != null ? issuedDuring : 0L);
-            }
-
-            openingBalances.put(item, openingBalance);
-            closingBalances.put(item, closingBalance);
-        }
-
-        // 👇 3. GET ITEM DETAILS (Unit, Category, Standard)
-        for (String item : allItems) {
             StockReportDTO dto = new StockReportDTO();
             dto.setDescription(item);
-            dto.setOpeningBalance(openingBalances.get(item));
-            dto.setClosingBalance(closingBalances.get(item));
-
-            // Get purchase quantity during period
-            Long purchaseQty = 0L;
-            if (isOverallReport) {
-                purchaseQty = jdbc.queryForObject(
-                        "SELECT COALESCE(SUM(quantity), 0) FROM purchase_daily WHERE school_id = ? AND description = ?",
-                        Long.class, schoolId, item
-                );
-            } else if (isDateRangeReport) {
-                purchaseQty = jdbc.queryForObject(
-                        "SELECT COALESCE(SUM(quantity), 0) FROM purchase_daily WHERE school_id = ? AND description = ? AND entry_date BETWEEN ? AND ?",
-                        Long.class, schoolId, item, startDate, endDate
-                );
-            } else if (isSingleDateReport) {
-                purchaseQty = jdbc.queryForObject(
-                        "SELECT COALESCE(SUM(quantity), 0) FROM purchase_daily WHERE school_id = ? AND description = ? AND entry_date <= ?",
-                        Long.class, schoolId, item, reportDate
-                );
-            }
-            dto.setPurchaseQty(purchaseQty != null ? purchaseQty : 0L);
-
-            // Get issued quantity during period
-            Long issuedQty = 0L;
-            try {
-                if (isOverallReport) {
-                    issuedQty = jdbc.queryForObject(
-                            "SELECT COALESCE(SUM(quantity), 0) FROM stock_report WHERE school_id = ? AND description_name = ?",
-                            Long.class, schoolId, item
-                    );
-                } else if (isDateRangeReport) {
-                    issuedQty = jdbc.queryForObject(
-                            "SELECT COALESCE(SUM(quantity), 0) FROM stock_report WHERE school_id = ? AND description_name = ? AND date BETWEEN ? AND ?",
-                            Long.class, schoolId, item, startDate, endDate
-                    );
-                } else if (isSingleDateReport) {
-                    issuedQty = jdbc.queryForObject(
-                            "SELECT COALESCE(SUM(quantity), 0) FROM stock_report WHERE school_id = ? AND description_name = ? AND date <= ?",
-                            Long.class, schoolId, item, reportDate
-                    );
-                }
-            } catch (Exception e) {
-                issuedQty = 0L;
+
+            long openingBalance = 0L;
+            long closingBalance = 0L;
+            long purchaseQty = 0L;
+            long issuedQty = 0L;
+            if (isOverallReport || isDateRangeReport || isSingleDateReport) {
+                openingBalance = purchase.opening() - issue.opening();
+                purchaseQty = purchase.period();
+                issuedQty = issue.period();
+                // Single date closing counts everything up to the date, the period already does
+                closingBalance = (isSingleDateReport ? 0L : openingBalance) + purchaseQty - issuedQty;
             }
-            dto.setIssuedQty(issuedQty != null ? issuedQty : 0L);
+            dto.setOpeningBalance(openingBalance);
+            dto.setClosingBalance(closingBalance);
+            dto.setPurchaseQty(purchaseQty);
+            dto.setIssuedQty(issuedQty);
 
             // Calculate period balance
             dto.setBalanceQty(dto.getPurchaseQty() - dto.getIssuedQty());
 
-            // Get item details from purchase_daily (latest record)
-            try {
-                Map<String, Object> itemDetails = jdbc.queryForMap(
-                        "SELECT unit, head, standard FROM purchase_daily WHERE school_id = ? AND description = ? ORDER BY entry_date DESC LIMIT 1",
-                        schoolId, item
-                );
-                dto.setUnit((String) itemDetails.get("unit"));
-                dto.setCategory((String) itemDetails.get("head"));
-                dto.setStandard((String) itemDetails.get("standard"));
-            } catch (Exception e) {
-                // Try stock table as fallback
-                try {
-                    Map<String, Object> stockDetails = jdbc.queryForMap(
-                            "SELECT unit, head, standard FROM stock WHERE school_id = ? AND item_name = ? LIMIT 1",
-                            schoolId, item
-                    );
-                    dto.setUnit((String) stockDetails.get("unit"));
-                    dto.setCategory((String) stockDetails.get("head"));
-                    dto.setStandard((String) stockDetails.get("standard"));
-                } catch (Exception ex) {
-                    dto.setUnit("-");
-                    dto.setCategory("-");
-                    dto.setStandard("-");
-                }
+            // 👇 3. ITEM DETAILS (Unit, Category, Standard) from the latest purchase, else the stock master
+            Map<String, Object> details = latestPurchase.get(item);
+            if (details == null) {
+                details = stockDetails.get(item);
+            }
+            if (details != null) {
+                dto.setUnit((String) details.get("unit"));
+                dto.setCategory((String) details.get("head"));
+                dto.setStandard((String) details.get("standard"));
+            } else {
+                dto.setUnit("-");
+                dto.setCategory("-");
+                dto.setStandard("-");
             }
 
-            reportMap.put(item, dto);
+            finalReport.add(dto);
         }
 
-        // 👇 4. CONVERT TO LIST AND SORT
-        List<StockReportDTO> finalReport = new ArrayList<>(reportMap.values());
+        // 👇 4. SORT
 
         // Filter out items with zero balances in all categories for Overall Report
         if (isOverallReport) {
@@ -350,6 +175,95 @@ public class StockReportService {
         return finalReport;
     }
 
+    /**
+     * Quantity moved per item in one table: before {@code openingBefore} (0 when null), within
+     * {@code periodFrom}..{@code periodTo} (either end open when null) and the number of rows in
+     * that period. One grouped pass over the table, whatever the number of items.
+     */
+    private Map<String, Movement> aggregateMovements(JdbcTemplate jdbc, String schoolId, String table, String itemColumn,
+                                                     String dateColumn, LocalDate openingBefore, LocalDate periodFrom,
+                                                     LocalDate periodTo, String itemFilter) {
+        List<Object> params = new ArrayList<>();
+
+        String openingSum = "0";
+        if (openingBefore != null) {
+            openingSum = "SUM(CASE WHEN " + dateColumn + " < ? THEN quantity ELSE 0 END)";
+            params.add(openingBefore);
+        }
+
+        List<String> periodConditions = new ArrayList<>();
+        List<Object> periodParams = new ArrayList<>();
+        if (periodFrom != null) {
+            periodConditions.add(dateColumn + " >= ?");
+            periodParams.add(periodFrom);
+        }
+        if (periodTo != null) {
+            periodConditions.add(dateColumn + " <= ?");
+            periodParams.add(periodTo);
+        }
+        String inPeriod = periodConditions.isEmpty() ? "1 = 1" : String.join(" AND ", periodConditions);
+        params.addAll(periodParams);
+        params.addAll(periodParams);
+
+        String sql = "SELECT " + itemColumn + " AS item, " +
+                "COALESCE(" + openingSum + ", 0) AS opening_qty, " +
+                "COALESCE(SUM(CASE WHEN " + inPeriod + " THEN quantity ELSE 0 END), 0) AS period_qty, " +
+                "COUNT(CASE WHEN " + inPeriod + " THEN 1 END) AS period_rows " +
+                "FROM " + table + " WHERE school_id = ? AND " + itemColumn + " IS NOT NULL";
+        params.add(schoolId);
+        if (itemFilter != null) {
+            sql += " AND " + itemColumn + " = ?";
+            params.add(itemFilter);
+        }
+        sql += " GROUP BY " + itemColumn;
+
+        Map<String, Movement> movements = new HashMap<>();
+        jdbc.query(sql, rs -> {
+            movements.put(rs.getString("item"), new Movement(
+                    rs.getLong("opening_qty"), rs.getLong("period_qty"), rs.getLong("period_rows")));
+        }, params.toArray());
+        return movements;
+    }
+
+    // Unit, head and standard of each item's most recent purchase
+    private Map<String, Map<String, Object>> getLatestPurchaseDetails(JdbcTemplate jdbc, String schoolId, String itemFilter) {
+        List<Object> params = new ArrayList<>();
+        params.add(schoolId);
+        String filter = "";
+        if (itemFilter != null) {
+            filter = " AND description = ?";
+            params.add(itemFilter);
+        }
+        String sql = "SELECT description, unit, head, standard FROM (" +
+                "SELECT description, unit, head, standard, " +
+                "ROW_NUMBER() OVER (PARTITION BY description ORDER BY entry_date DESC, id DESC) AS rn " +
+                "FROM purchase_daily WHERE school_id = ? AND description IS NOT NULL" + filter +
+                ") latest WHERE rn = 1";
+
+        Map<String, Map<String, Object>> details = new HashMap<>();
+        for (Map<String, Object> row : jdbc.queryForList(sql, params.toArray())) {
+            details.put((String) row.get("description"), row);
+        }
+        return details;
+    }
+
+    private Map<String, Map<String, Object>> getStockDetails(JdbcTemplate jdbc, String schoolId) {
+        Map<String, Map<String, Object>> details = new HashMap<>();
+        try {
+            for (Map<String, Object> row : jdbc.queryForList(
+                    "SELECT item_name, unit, head, standard FROM stock WHERE school_id = ?", schoolId)) {
+                details.putIfAbsent((String) row.get("item_name"), row);
+            }
+        } catch (Exception e) {
+            // stock table might not exist
+        }
+        return details;
+    }
+
+    private record Movement(long opening, long period, long periodRows) {
+        static final Movement NONE = new Movement(0L, 0L, 0L);
+    }
+
     // 👇 NEW: Get grouped report by Standard
     public Map<String, List<StockReportDTO>> getGroupedStockReport(String schoolId, LocalDate startDate, LocalDate endDate, String itemName) {
         List<StockReportDTO> report = generateStockReport(schoolId, startDate, endDate, itemName);
@@ -1,46 +1,39 @@
 package com.backend.school_erp.service.Store;
 
 import com.backend.school_erp.DTO.Store.StoreUnitDTO;
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
 import com.backend.school_erp.entity.Store.StoreUnit;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 
-import javax.sql.DataSource;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @Slf4j
 public class StoreUnitService {
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
 
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-            return new HikariDataSource(config);
-        });
-    }
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     private void ensureTableExists(JdbcTemplate jdbc) {
-        jdbc.execute("CREATE TABLE IF NOT EXISTS store_units (" +
-                "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
-                "unit_name VARCHAR(255) NOT NULL, " +
-                "school_id VARCHAR(50), " +
-                "academic_year VARCHAR(20))");
+        schemaMigrator.migrate(jdbc, "StoreUnitService", 1, () -> {
+            jdbc.execute("CREATE TABLE IF NOT EXISTS store_units (" +
+                    "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                    "unit_name VARCHAR(255) NOT NULL, " +
+                    "school_id VARCHAR(50), " +
+                    "academic_year VARCHAR(20))");
+        });
     }
 
     public List<StoreUnit> getUnits(String schoolId, String year) {
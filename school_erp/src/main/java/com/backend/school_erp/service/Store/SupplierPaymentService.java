@@ -1,89 +1,101 @@
 package com.backend.school_erp.service.Store;
 
 import com.backend.school_erp.DTO.Store.SupplierPaymentDTO;
-import com.backend.school_erp.config.DatabaseConfig;
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
+import com.backend.school_erp.service.Transaction.TenantSequenceAllocator;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import javax.sql.DataSource;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class SupplierPaymentService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
+    private static final String ENTRY_SERIES = "supplier_payment";
 
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-            return new HikariDataSource(config);
-        });
-    }
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
+
+    @Autowired
+    private TenantSequenceAllocator sequenceAllocator;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     // 0. Ensure Tables & Columns Exist
     private void ensureTablesExist(JdbcTemplate jdbc) {
-        // 1. Master Payment Table
-        jdbc.execute("CREATE TABLE IF NOT EXISTS sp_payment (" +
-                "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
-                "bill_date DATE, " +
-                "supplier_code VARCHAR(50), " +
-                "supplier_name VARCHAR(255), " +
-                "bill_number VARCHAR(50), " +
-                "payment_amount DOUBLE, " +
-                "balance_amount DOUBLE, " +
-                "amount_paid DOUBLE, " +
-                "status VARCHAR(50), " +
-                "invoice_number VARCHAR(50), " +
-                "school_id VARCHAR(50), " +
-                "academic_year VARCHAR(20))");
-
-        // 2. Individual History Table
-        jdbc.execute("CREATE TABLE IF NOT EXISTS sp_payment_individual (" +
-                "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
-                "payment_date DATE, " +
-                "entry_no VARCHAR(50), " +
-                "invoice_number VARCHAR(50), " +
-                "supplier_code VARCHAR(50), " +
-                "gross_amount DOUBLE, " +
-                "settlement_amount DOUBLE, " +
-                "discount_amount DOUBLE, " +
-                "net_cash_paid DOUBLE, " +
-                "payment_mode VARCHAR(50), " +
-                "school_id VARCHAR(50), " +
-                "academic_year VARCHAR(20))");
-
-        // --- AUTO-FIX: Add missing columns if tables existed before ---
-        try {
-            jdbc.execute("ALTER TABLE sp_payment_individual ADD COLUMN gross_amount DOUBLE");
-        } catch (Exception ignored) { /* Column likely exists */ }
-
-        try {
-            jdbc.execute("ALTER TABLE tab_purchase ADD COLUMN purchase_narrative TEXT");
-        } catch (Exception ignored) { /* Column likely exists */ }
+        schemaMigrator.migrate(jdbc, "SupplierPaymentService", 1, () -> {
+            // 1. Master Payment Table
+            jdbc.execute("CREATE TABLE IF NOT EXISTS sp_payment (" +
+                    "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                    "bill_date DATE, " +
+                    "supplier_code VARCHAR(50), " +
+                    "supplier_name VARCHAR(255), " +
+                    "bill_number VARCHAR(50), " +
+                    "payment_amount DOUBLE, " +
+                    "balance_amount DOUBLE, " +
+                    "amount_paid DOUBLE, " +
+                    "status VARCHAR(50), " +
+                    "invoice_number VARCHAR(50), " +
+                    "school_id VARCHAR(50), " +
+                    "academic_year VARCHAR(20))");
+
+            // 2. Individual History Table
+            jdbc.execute("CREATE TABLE IF NOT EXISTS sp_payment_individual (" +
+                    "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                    "payment_date DATE, " +
+                    "entry_no VARCHAR(50), " +
+                    "invoice_number VARCHAR(50), " +
+                    "supplier_code VARCHAR(50), " +
+                    "gross_amount DOUBLE, " +
+                    "settlement_amount DOUBLE, " +
+                    "discount_amount DOUBLE, " +
+                    "net_cash_paid DOUBLE, " +
+                    "payment_mode VARCHAR(50), " +
+                    "school_id VARCHAR(50), " +
+                    "academic_year VARCHAR(20))");
+
+            // --- AUTO-FIX: Add missing columns if tables existed before ---
+            try {
+                jdbc.execute("ALTER TABLE sp_payment_individual ADD COLUMN gross_amount DOUBLE");
+            } catch (Exception ignored) { /* Column likely exists */ }
+
+            try {
+                jdbc.execute("ALTER TABLE tab_purchase ADD COLUMN purchase_narrative TEXT");
+            } catch (Exception ignored) { /* Column likely exists */ }
+        });
     }
 
+    // Upcoming number for the form; savePayment takes the number itself
     public String generateEntryNo(String schoolId) {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
         ensureTablesExist(jdbc);
+        return formatEntryNo(sequenceAllocator.peek(jdbc, ENTRY_SERIES, TenantSequenceAllocator.ALL_YEARS, () -> lastEntryId(jdbc, schoolId)));
+    }
+
+    private String nextEntryNo(JdbcTemplate jdbc, String schoolId) {
+        return formatEntryNo(sequenceAllocator.next(jdbc, ENTRY_SERIES, TenantSequenceAllocator.ALL_YEARS, () -> lastEntryId(jdbc, schoolId)));
+    }
+
+    private String formatEntryNo(long id) {
+        return "SUP-PAY-" + String.format("%04d", id);
+    }
+
+    // Only used to seed the sequence
+    private long lastEntryId(JdbcTemplate jdbc, String schoolId) {
         String sql = "SELECT MAX(CAST(SUBSTRING_INDEX(entry_no, '-', -1) AS UNSIGNED)) FROM tab_purchase WHERE tin = 'Supplier Payment' AND school_id = ?";
-        Integer maxId;
-        try { maxId = jdbc.queryForObject(sql, Integer.class, schoolId); } catch (Exception e) { maxId = 0; }
-        int nextId = (maxId == null) ? 1 : maxId + 1;
-        return "SUP-PAY-" + String.format("%04d", nextId);
+        Long maxId;
+        try { maxId = jdbc.queryForObject(sql, Long.class, schoolId); } catch (Exception e) { maxId = 0L; }
+        return maxId == null ? 0 : maxId;
     }
 
     public List<Map<String, Object>> getPendingSuppliers(String schoolId) {
@@ -107,7 +119,7 @@ public class SupplierPaymentService {
     public String savePayment(String schoolId, String year, SupplierPaymentDTO dto) {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
         ensureTablesExist(jdbc);
-        String entryNo = generateEntryNo(schoolId);
+        String entryNo = nextEntryNo(jdbc, schoolId);
 
         // 1. TabPurchase (Journal Entry)
         String sqlJournal = "INSERT INTO tab_purchase (entry_no, supplier_code, supplier_name, tin, invoice_no, invoice_date, purchase_date, gross_amount, credit, debit, narrative, purchase_narrative, payment_mode, gst_amount, others, school_id, academic_year) VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
@@ -1,66 +1,52 @@
 package com.backend.school_erp.service.Store;
 
 import com.backend.school_erp.DTO.Store.SupplierDTO;
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
 import com.backend.school_erp.entity.Store.Supplier;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import javax.sql.DataSource;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.Map;
-
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 
 @Service
 @Slf4j
 public class SupplierService {
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
-
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            log.info("Creating HikariCP DataSource for school: {}", id);
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-            config.setMaximumPoolSize(10);
-            config.setMinimumIdle(2);
-            config.setIdleTimeout(30000);
-            config.setMaxLifetime(1800000);
-            config.setConnectionTimeout(10000);
-            return new HikariDataSource(config);
-        });
-    }
+
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     private void ensureTableExists(JdbcTemplate jdbc) {
-        jdbc.execute("""
-            CREATE TABLE IF NOT EXISTS suppliers (
-                id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                supplier_code VARCHAR(50) NOT NULL,
-                supplier_name VARCHAR(100) NOT NULL,
-                address VARCHAR(255),
-                phone_number VARCHAR(20),
-                email VARCHAR(100),
-                contact_person VARCHAR(100),
-                gst VARCHAR(50),
-                other_details TEXT,
-                school_id VARCHAR(50) NOT NULL,
-                academic_year VARCHAR(50) NOT NULL,
-                created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                UNIQUE KEY unique_supplier (supplier_code, school_id, academic_year)
-            )
-        """);
+        schemaMigrator.migrate(jdbc, "SupplierService", 1, () -> {
+            jdbc.execute("""
+                CREATE TABLE IF NOT EXISTS suppliers (
+                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    supplier_code VARCHAR(50) NOT NULL,
+                    supplier_name VARCHAR(100) NOT NULL,
+                    address VARCHAR(255),
+                    phone_number VARCHAR(20),
+                    email VARCHAR(100),
+                    contact_person VARCHAR(100),
+                    gst VARCHAR(50),
+                    other_details TEXT,
+                    school_id VARCHAR(50) NOT NULL,
+                    academic_year VARCHAR(50) NOT NULL,
+                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    UNIQUE KEY unique_supplier (supplier_code, school_id, academic_year)
+                )
+            """);
+        });
     }
 
     public List<Supplier> getSuppliers(String schoolId, String academicYear) {
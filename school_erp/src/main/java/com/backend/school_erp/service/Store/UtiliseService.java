@@ -1,114 +1,113 @@
 package com.backend.school_erp.service.Store;
 
 import com.backend.school_erp.DTO.Store.MaterialIssueDTO;
-import com.backend.school_erp.config.DatabaseConfig;
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
+import com.backend.school_erp.service.Transaction.TenantSequenceAllocator;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import javax.sql.DataSource;
 import java.time.LocalTime;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @Slf4j
 public class UtiliseService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
+    private static final String BILL_SERIES = "material_issue";
 
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-            return new HikariDataSource(config);
-        });
-    }
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
+
+    @Autowired
+    private TenantSequenceAllocator sequenceAllocator;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     private void ensureTablesExist(JdbcTemplate jdbc) {
-        // 1. SP Sales Daily (Staff/Material Issue Log) - UPDATED with bank details
-        jdbc.execute("CREATE TABLE IF NOT EXISTS sp_sales_daily (" +
-                "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
-                "bill_no VARCHAR(50), " +
-                "bill_num VARCHAR(50), " +
-                "customer_name VARCHAR(255), " +
-                "address VARCHAR(255), " +
-                "rate DOUBLE, " +
-                "quantity INT, " +
-                "total_amount DOUBLE, " +
-                "issue_date DATE, " +
-                "gst_amount DOUBLE, " +
-                "item_name VARCHAR(255), " +
-                "item_code VARCHAR(50), " +
-                "bill_time TIME, " +
-                "month VARCHAR(20), " +
-                "customer_code VARCHAR(50), " +
-                "payment_mode VARCHAR(50), " +
-                "transaction_ref_no VARCHAR(100), " + // NEW: For Cheque/DD/Online reference
-                "bank_account_id BIGINT, " + // NEW: Bank account ID
-                "bank_name VARCHAR(255), " + // NEW: Bank name
-                "account_number VARCHAR(50), " + // NEW: Account number
-                "ifsc_code VARCHAR(50), " + // NEW: IFSC code
-                "school_id VARCHAR(50), " +
-                "academic_year VARCHAR(20))");
-
-        // 2. SPR Sales (Reporting Table) - UPDATED with bank details
-        jdbc.execute("CREATE TABLE IF NOT EXISTS spr_sales (" +
-                "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
-                "bill_no VARCHAR(50), " +
-                "bill_num VARCHAR(50), " +
-                "customer_name VARCHAR(255), " +
-                "address VARCHAR(255), " +
-                "rate DOUBLE, " +
-                "quantity INT, " +
-                "total_amount DOUBLE, " +
-                "issue_date DATE, " +
-                "item_name VARCHAR(255), " +
-                "bill_time TIME, " +
-                "month VARCHAR(20), " +
-                "payment_mode VARCHAR(50), " + // NEW
-                "transaction_ref_no VARCHAR(100), " + // NEW
-                "bank_name VARCHAR(255), " + // NEW
-                "school_id VARCHAR(50), " +
-                "academic_year VARCHAR(20))");
-
-        // 3. Stock Report
-        jdbc.execute("CREATE TABLE IF NOT EXISTS stock_report (" +
-                "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
-                "description_name VARCHAR(255), " +
-                "date DATE, " +
-                "quantity INT, " +
-                "standard VARCHAR(50), " +
-                "school_id VARCHAR(50), " +
-                "academic_year VARCHAR(20))");
-
-        // 4. Material Bank Payment Details (NEW)
-        jdbc.execute("CREATE TABLE IF NOT EXISTS material_bank_payments (" +
-                "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
-                "bill_no VARCHAR(50), " +
-                "bank_account_id BIGINT, " +
-                "bank_name VARCHAR(255), " +
-                "account_number VARCHAR(50), " +
-                "ifsc_code VARCHAR(50), " +
-                "account_type VARCHAR(50), " +
-                "branch_name VARCHAR(100), " +
-                "transaction_date DATE, " +
-                "transaction_time TIME, " +
-                "amount DOUBLE, " +
-                "customer_name VARCHAR(255), " +
-                "status VARCHAR(20) DEFAULT 'COMPLETED', " +
-                "school_id VARCHAR(50), " +
-                "academic_year VARCHAR(20))");
+        schemaMigrator.migrate(jdbc, "UtiliseService", 1, () -> {
+            // 1. SP Sales Daily (Staff/Material Issue Log) - UPDATED with bank details
+            jdbc.execute("CREATE TABLE IF NOT EXISTS sp_sales_daily (" +
+                    "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                    "bill_no VARCHAR(50), " +
+                    "bill_num VARCHAR(50), " +
+                    "customer_name VARCHAR(255), " +
+                    "address VARCHAR(255), " +
+                    "rate DOUBLE, " +
+                    "quantity INT, " +
+                    "total_amount DOUBLE, " +
+                    "issue_date DATE, " +
+                    "gst_amount DOUBLE, " +
+                    "item_name VARCHAR(255), " +
+                    "item_code VARCHAR(50), " +
+                    "bill_time TIME, " +
+                    "month VARCHAR(20), " +
+                    "customer_code VARCHAR(50), " +
+                    "payment_mode VARCHAR(50), " +
+                    "transaction_ref_no VARCHAR(100), " + // NEW: For Cheque/DD/Online reference
+                    "bank_account_id BIGINT, " + // NEW: Bank account ID
+                    "bank_name VARCHAR(255), " + // NEW: Bank name
+                    "account_number VARCHAR(50), " + // NEW: Account number
+                    "ifsc_code VARCHAR(50), " + // NEW: IFSC code
+                    "school_id VARCHAR(50), " +
+                    "academic_year VARCHAR(20))");
+
+            // 2. SPR Sales (Reporting Table) - UPDATED with bank details
+            jdbc.execute("CREATE TABLE IF NOT EXISTS spr_sales (" +
+                    "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                    "bill_no VARCHAR(50), " +
+                    "bill_num VARCHAR(50), " +
+                    "customer_name VARCHAR(255), " +
+                    "address VARCHAR(255), " +
+                    "rate DOUBLE, " +
+                    "quantity INT, " +
+                    "total_amount DOUBLE, " +
+                    "issue_date DATE, " +
+                    "item_name VARCHAR(255), " +
+                    "bill_time TIME, " +
+                    "month VARCHAR(20), " +
+                    "payment_mode VARCHAR(50), " + // NEW
+                    "transaction_ref_no VARCHAR(100), " + // NEW
+                    "bank_name VARCHAR(255), " + // NEW
+                    "school_id VARCHAR(50), " +
+                    "academic_year VARCHAR(20))");
+
+            // 3. Stock Report
+            jdbc.execute("CREATE TABLE IF NOT EXISTS stock_report (" +
+                    "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                    "description_name VARCHAR(255), " +
+                    "date DATE, " +
+                    "quantity INT, " +
+                    "standard VARCHAR(50), " +
+                    "school_id VARCHAR(50), " +
+                    "academic_year VARCHAR(20))");
+
+            // 4. Material Bank Payment Details (NEW)
+            jdbc.execute("CREATE TABLE IF NOT EXISTS material_bank_payments (" +
+                    "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                    "bill_no VARCHAR(50), " +
+                    "bank_account_id BIGINT, " +
+                    "bank_name VARCHAR(255), " +
+                    "account_number VARCHAR(50), " +
+                    "ifsc_code VARCHAR(50), " +
+                    "account_type VARCHAR(50), " +
+                    "branch_name VARCHAR(100), " +
+                    "transaction_date DATE, " +
+                    "transaction_time TIME, " +
+                    "amount DOUBLE, " +
+                    "customer_name VARCHAR(255), " +
+                    "status VARCHAR(20) DEFAULT 'COMPLETED', " +
+                    "school_id VARCHAR(50), " +
+                    "academic_year VARCHAR(20))");
+        });
     }
 
     // List items for dropdown that have stock > 0
@@ -122,23 +121,34 @@ public class UtiliseService {
         }
     }
 
+    // Upcoming number for the form; saveMaterialIssue takes the number itself
     public String generateBillNo(String schoolId) {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
         try {
             ensureTablesExist(jdbc);
-            Integer count = jdbc.queryForObject("SELECT COUNT(*) FROM sp_sales_daily", Integer.class);
-            return "MAT-" + (count != null ? count + 1 : 1);
+            return "MAT-" + sequenceAllocator.peek(jdbc, BILL_SERIES, TenantSequenceAllocator.ALL_YEARS, () -> lastBillId(jdbc));
         } catch (Exception e) {
             return "MAT-1";
         }
     }
 
+    private String nextBillNo(JdbcTemplate jdbc) {
+        return "MAT-" + sequenceAllocator.next(jdbc, BILL_SERIES, TenantSequenceAllocator.ALL_YEARS, () -> lastBillId(jdbc));
+    }
+
+    // Only used to seed the sequence
+    private long lastBillId(JdbcTemplate jdbc) {
+        Long maxId = jdbc.queryForObject(
+                "SELECT MAX(CAST(SUBSTRING(bill_no, 5) AS UNSIGNED)) FROM sp_sales_daily WHERE bill_no LIKE 'MAT-%'", Long.class);
+        return maxId == null ? 0 : maxId;
+    }
+
     @Transactional
     public String saveMaterialIssue(String schoolId, String year, MaterialIssueDTO dto) {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
         ensureTablesExist(jdbc);
 
-        String billNo = generateBillNo(schoolId);
+        String billNo = nextBillNo(jdbc);
         LocalTime nowTime = LocalTime.now();
         String currentMonth = dto.getIssueDate().getMonth().toString();
 
@@ -1,7 +1,8 @@
 package com.backend.school_erp.service.Teacher.Academic;
 
 // 1. Import the Centralized Config
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
 
 import com.backend.school_erp.DTO.Teacher.Academic.AcademicYearDTO;
 import com.backend.school_erp.DTO.Teacher.Academic.ActiveSessionDTO;
@@ -9,94 +10,76 @@ import com.backend.school_erp.DTO.Teacher.Academic.TermDTO;
 import com.backend.school_erp.entity.Teacher.Academic.AcademicYear;
 import com.backend.school_erp.entity.Teacher.Academic.Section;
 import com.backend.school_erp.entity.Teacher.Academic.Term;
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import javax.sql.DataSource;
 import java.time.LocalDate;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @Slf4j
 public class AcademicYearService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
 
-    private DataSource getDataSource(String schoolId) {
-        if (!schoolId.matches("^[a-zA-Z0-9_]+$")) {
-            throw new IllegalArgumentException("Invalid School ID format");
-        }
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            HikariConfig config = new HikariConfig();
-
-            // 2. Swapped local hardcoded strings for Centralized AWS Constants
-            // DatabaseConfig.DB_PARAMS handles SSL, Timezone, and PublicKeyRetrieval
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName(DatabaseConfig.JDBC_DRIVER);
-
-            // Pool settings
-            config.setMaximumPoolSize(10);
-            return new HikariDataSource(config);
-        });
-    }
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     public void ensureTableStructure(String schoolId) {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
+        schemaMigrator.migrate(jdbc, "AcademicYearService", 1, () -> {
+            jdbc.execute("""
+                CREATE TABLE IF NOT EXISTS academic_years (
+                    yearId BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    year VARCHAR(20) NOT NULL UNIQUE,
+                    createdAt TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+                )
+            """);
+
+            jdbc.execute("""
+                CREATE TABLE IF NOT EXISTS terms (
+                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    academic_year VARCHAR(20) NOT NULL,
+                    name VARCHAR(100) NOT NULL,
+                    start_date DATE NOT NULL,
+                    end_date DATE NOT NULL,
+                    status VARCHAR(20) DEFAULT 'inactive',
+                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    UNIQUE KEY unique_term_year (academic_year, name)
+                )
+            """);
+
+            jdbc.execute("""
+                CREATE TABLE IF NOT EXISTS active_academicyear (
+                    id INT PRIMARY KEY DEFAULT 1,
+                    active_year VARCHAR(20),
+                    active_term_id BIGINT,
+                    active_section_id BIGINT
+                )
+            """);
 
-        jdbc.execute("""
-            CREATE TABLE IF NOT EXISTS academic_years (
-                yearId BIGINT AUTO_INCREMENT PRIMARY KEY,
-                year VARCHAR(20) NOT NULL UNIQUE,
-                createdAt TIMESTAMP DEFAULT CURRENT_TIMESTAMP
-            )
-        """);
-
-        jdbc.execute("""
-            CREATE TABLE IF NOT EXISTS terms (
-                id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                academic_year VARCHAR(20) NOT NULL,
-                name VARCHAR(100) NOT NULL,
-                start_date DATE NOT NULL,
-                end_date DATE NOT NULL,
-                status VARCHAR(20) DEFAULT 'inactive',
-                created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                UNIQUE KEY unique_term_year (academic_year, name)
-            )
-        """);
-
-        jdbc.execute("""
-            CREATE TABLE IF NOT EXISTS active_academicyear (
-                id INT PRIMARY KEY DEFAULT 1,
-                active_year VARCHAR(20),
-                active_term_id BIGINT,
-                active_section_id BIGINT
-            )
-        """);
-
-        try {
-            jdbc.execute("ALTER TABLE active_academicyear ADD COLUMN active_section_id BIGINT");
-        } catch (Exception e) {
-            // Column likely exists
-        }
+            try {
+                jdbc.execute("ALTER TABLE active_academicyear ADD COLUMN active_section_id BIGINT");
+            } catch (Exception e) {
+                // Column likely exists
+            }
 
-        Integer yearCount = jdbc.queryForObject("SELECT COUNT(*) FROM academic_years", Integer.class);
-        if (yearCount == 0) {
-            int currentYear = LocalDate.now().getYear();
-            for (int i = -2; i <= 2; i++) {
-                String year = (currentYear + i) + "-" + (currentYear + i + 1);
-                jdbc.update("INSERT IGNORE INTO academic_years (year) VALUES (?)", year);
+            Integer yearCount = jdbc.queryForObject("SELECT COUNT(*) FROM academic_years", Integer.class);
+            if (yearCount == 0) {
+                int currentYear = LocalDate.now().getYear();
+                for (int i = -2; i <= 2; i++) {
+                    String year = (currentYear + i) + "-" + (currentYear + i + 1);
+                    jdbc.update("INSERT IGNORE INTO academic_years (year) VALUES (?)", year);
+                }
             }
-        }
+        });
     }
 
     public List<AcademicYear> getAllAcademicYears(String schoolId) {
@@ -1,74 +1,55 @@
 package com.backend.school_erp.service.Teacher.Academic;
 
 // 1. Import the Centralized Config
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
 
 import com.backend.school_erp.DTO.Teacher.Academic.SubjectEnrollmentDTO;
 import com.backend.school_erp.entity.Teacher.Academic.SubjectEnrollmentEntity;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import javax.sql.DataSource;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.ArrayList;
 
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
-
 @Service
 @Slf4j
 public class SubjectEnrollmentService {
 
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
+
     /** Cache of DataSources per school */
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
-
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            log.info("🔗 Creating HikariCP DataSource for school: {}", id);
-            HikariConfig config = new HikariConfig();
-
-            // 2. Updated to use centralized AWS RDS constants
-            // DatabaseConfig.DB_PARAMS includes SSL and Timezone settings
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName(DatabaseConfig.JDBC_DRIVER);
-
-            // Pool settings
-            config.setMaximumPoolSize(10);
-            config.setMinimumIdle(2);
-            config.setIdleTimeout(30000);
-            config.setConnectionTimeout(10000);
-
-            return new HikariDataSource(config);
-        });
-    }
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     /**
      * Creates the normalized table.
      */
     private void ensureTableExists(JdbcTemplate jdbc) {
-        jdbc.execute("""
-            CREATE TABLE IF NOT EXISTS subject_enrollment (
-                id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                school_id VARCHAR(50) NOT NULL,
-                academic_year VARCHAR(50) NOT NULL,
-                term VARCHAR(50) NOT NULL,
-                standard VARCHAR(50) NOT NULL,
-                section VARCHAR(50),
-                subject_name VARCHAR(100) NOT NULL,
-                created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                UNIQUE KEY unique_subject_entry (school_id, academic_year, term, standard, section, subject_name)
-            )
-        """);
+        schemaMigrator.migrate(jdbc, "SubjectEnrollmentService", 1, () -> {
+            jdbc.execute("""
+                CREATE TABLE IF NOT EXISTS subject_enrollment (
+                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    school_id VARCHAR(50) NOT NULL,
+                    academic_year VARCHAR(50) NOT NULL,
+                    term VARCHAR(50) NOT NULL,
+                    standard VARCHAR(50) NOT NULL,
+                    section VARCHAR(50),
+                    subject_name VARCHAR(100) NOT NULL,
+                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    UNIQUE KEY unique_subject_entry (school_id, academic_year, term, standard, section, subject_name)
+                )
+            """);
+        });
     }
 
     /**
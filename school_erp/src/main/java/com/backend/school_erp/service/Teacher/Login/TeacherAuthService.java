@@ -1,7 +1,8 @@
 package com.backend.school_erp.service.Teacher.Login;
 
 // 1. Import the Centralized Config
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantTableCatalog;
 
 import com.backend.school_erp.DTO.Teacher.Login.TeacherLoginRequestDTO;
 import com.backend.school_erp.DTO.Teacher.Login.TeacherLoginResponseDTO;
@@ -14,9 +15,7 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
 
-import javax.sql.DataSource;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @Slf4j
@@ -25,13 +24,15 @@ public class TeacherAuthService {
     private final TeacherSchoolService schoolService;
     private final BCryptPasswordEncoder passwordEncoder;
     private final ObjectMapper objectMapper;
-    private final Map<String, DataSource> dataSourceCache;
+    private final TenantDataSourceRouter tenantDataSourceRouter;
+    private final TenantTableCatalog tableCatalog;
 
-    public TeacherAuthService(TeacherSchoolService schoolService) {
+    public TeacherAuthService(TeacherSchoolService schoolService, TenantDataSourceRouter tenantDataSourceRouter, TenantTableCatalog tableCatalog) {
         this.schoolService = schoolService;
+        this.tableCatalog = tableCatalog;
         this.passwordEncoder = new BCryptPasswordEncoder();
         this.objectMapper = new ObjectMapper();
-        this.dataSourceCache = new ConcurrentHashMap<>();
+        this.tenantDataSourceRouter = tenantDataSourceRouter;
     }
 
     public TeacherLoginResponseDTO teacherLogin(TeacherLoginRequestDTO loginRequest) {
@@ -123,32 +124,7 @@ public class TeacherAuthService {
     }
 
     private JdbcTemplate getJdbcTemplateForSchool(String schoolId) {
-        DataSource dataSource = dataSourceCache.computeIfAbsent(schoolId, id -> {
-            // Create datasource for school-specific database
-            return createDataSourceForSchool(id);
-        });
-        return new JdbcTemplate(dataSource);
-    }
-
-    private DataSource createDataSourceForSchool(String schoolId) {
-        // 2. Updated to use centralized AWS RDS constants
-        com.zaxxer.hikari.HikariConfig config = new com.zaxxer.hikari.HikariConfig();
-
-        config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + schoolId + DatabaseConfig.DB_PARAMS);
-        config.setUsername(DatabaseConfig.AWS_DB_USER);
-        config.setPassword(DatabaseConfig.AWS_DB_PASS);
-        config.setDriverClassName(DatabaseConfig.JDBC_DRIVER);
-
-        // --- Pool tuning ---
-        config.setMaximumPoolSize(20);
-        config.setMinimumIdle(5);
-        config.setIdleTimeout(60000);
-        config.setMaxLifetime(1800000);
-        config.setConnectionTimeout(15000);
-        config.setLeakDetectionThreshold(60000);
-        config.setConnectionTestQuery("SELECT 1");
-
-        return new com.zaxxer.hikari.HikariDataSource(config);
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     private String getTeacherTableName(String academicYear) {
@@ -157,12 +133,7 @@ public class TeacherAuthService {
     }
 
     private boolean tableExists(JdbcTemplate jdbcTemplate, String tableName) {
-        try {
-            jdbcTemplate.queryForObject("SELECT 1 FROM " + tableName + " LIMIT 1", Integer.class);
-            return true;
-        } catch (Exception e) {
-            return false;
-        }
+        return tableCatalog.tableExists(jdbcTemplate, tableName);
     }
 
     @SuppressWarnings("unchecked")
@@ -1,51 +1,34 @@
 package com.backend.school_erp.service.Transaction;
 
 import com.backend.school_erp.DTO.Transaction.*;
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantTableCatalog;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import javax.sql.DataSource;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
-
 @Service
 @Slf4j
 public class AttendanceEntryService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
-    private final Set<String> tableExistenceCache = ConcurrentHashMap.newKeySet();
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
 
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            log.info("🔗 Creating Optimized DataSource for school: {}", id);
-
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-            config.setMaximumPoolSize(5);
-            config.setMinimumIdle(1);
-            config.setIdleTimeout(60000);
-            config.setMaxLifetime(1800000);
-            config.setConnectionTimeout(5000);
-            config.setPoolName("HikariPool-" + id);
-
-            return new HikariDataSource(config);
-        });
-    }
+    @Autowired
+    private TenantTableCatalog tableCatalog;
+
+    private final Set<String> tableExistenceCache = ConcurrentHashMap.newKeySet();
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     private String getTableName(String academicYear) {
@@ -80,6 +63,7 @@ public class AttendanceEntryService {
 
         try {
             jdbc.execute(createTableSQL);
+            tableCatalog.invalidate(jdbc);
             tableExistenceCache.add(cacheKey);
         } catch (Exception e) {
             log.error("Failed to create table for {}", cacheKey, e);
@@ -151,13 +135,8 @@ public class AttendanceEntryService {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
         String tableName = getTableName(academicYear);
 
-        if (!tableExistenceCache.contains(schoolId + "_" + academicYear)) {
-            try {
-                jdbc.queryForObject("SELECT 1 FROM " + tableName + " LIMIT 1", Integer.class);
-                tableExistenceCache.add(schoolId + "_" + academicYear);
-            } catch (Exception e) {
-                return new ArrayList<>();
-            }
+        if (!tableCatalog.tableExists(jdbc, tableName)) {
+            return new ArrayList<>();
         }
 
         // Dynamic SQL Generation
@@ -220,13 +199,8 @@ public class AttendanceEntryService {
 
         try {
             // Need to verify table exists first
-            if (!tableExistenceCache.contains(schoolId + "_" + academicYear)) {
-                try {
-                    jdbc.queryForObject("SELECT 1 FROM " + tableName + " LIMIT 1", Integer.class);
-                    tableExistenceCache.add(schoolId + "_" + academicYear);
-                } catch (Exception e) {
-                    return Map.of("totalWorkingDays", 0);
-                }
+            if (!tableCatalog.tableExists(jdbc, tableName)) {
+                return Map.of("totalWorkingDays", 0);
             }
 
             // Updated Query to get counts for P, L, H, A individually
@@ -0,0 +1,384 @@
+package com.backend.school_erp.service.Transaction;
+
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
+import com.backend.school_erp.config.TenantTableCatalog;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Pre-summed fee collections: one {@code collection_rollup} row per
+ * (ledger, academic_year, collection_date, fee_head, payment_mode, standard, section, operator_name)
+ * with the number of fee items, paid, concession and net amounts and the largest and smallest
+ * paid amount. Ledgers are the collection tables, as in {@link FeeBalanceService}:
+ * {@link FeeBalanceService#DAILY} (daily_fee_collection) and {@link FeeBalanceService#MISC}
+ * (miscellaneous_fee_collection).
+ *
+ * Three counters make the distinct counts of the reports additive. Each counts a collection row
+ * only when it is the first one (lowest id) of its group:
+ * {@code bills} per (academic_year, bill_number), {@code students} per (academic_year,
+ * admission_number, day) and {@code new_students} per (academic_year, admission_number).
+ * A bill is never split over days, modes, classes or operators, so summing {@code bills} over
+ * any bucket that does not split fee heads gives the bill count, and likewise for the others.
+ *
+ * Years are stored as {@link FeeDemandService#yearKey} ("2025_2026"), like the student balances,
+ * while the collection tables are read under both the "2025_2026" and "2025-2026" spellings.
+ *
+ * Every write to a collection table goes through {@link #track}, which diffs the bill's rows
+ * before and after the write. A year is rebuilt from history on first touch, and
+ * {@link #rebuildYear} can be run again at any time. Callers must call {@link #ensureYear}
+ * before writing, so the first rebuild does not count the new bill twice.
+ */
+@Service
+@Slf4j
+public class CollectionRollupService {
+
+    private static final String TABLE = "collection_rollup";
+
+    private static final Map<String, String> COLLECTION_TABLES = Map.of(
+            FeeBalanceService.DAILY, "daily_fee_collection",
+            FeeBalanceService.MISC, "miscellaneous_fee_collection");
+
+    private static final String UPSERT_SQL = "INSERT INTO " + TABLE +
+            " (ledger, academic_year, collection_date, fee_head, payment_mode, standard, section, operator_name, " +
+            "items, bills, students, new_students, paid, concession, net_paid, max_paid, min_paid) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE items = items + VALUES(items), bills = bills + VALUES(bills), " +
+            "students = students + VALUES(students), new_students = new_students + VALUES(new_students), " +
+            "paid = paid + VALUES(paid), concession = concession + VALUES(concession), net_paid = net_paid + VALUES(net_paid), " +
+            "max_paid = COALESCE(GREATEST(max_paid, VALUES(max_paid)), max_paid, VALUES(max_paid)), " +
+            "min_paid = COALESCE(LEAST(min_paid, VALUES(min_paid)), min_paid, VALUES(min_paid))";
+
+    private static final String ITEM_SELECT = "SELECT id, academic_year, bill_number, admission_number, DATE(bill_date), " +
+            "COALESCE(fee_head, ''), COALESCE(payment_mode, ''), COALESCE(standard, ''), COALESCE(section, ''), " +
+            "COALESCE(operator_name, ''), COALESCE(paid_amount, 0), COALESCE(concession_amount, 0), " +
+            "COALESCE(net_paid_amount, 0) FROM ";
+
+    private final TenantSchemaMigrator schemaMigrator;
+    private final TenantTableCatalog tableCatalog;
+    private final TenantDataSourceRouter tenantDataSourceRouter;
+
+    public CollectionRollupService(TenantSchemaMigrator schemaMigrator, TenantTableCatalog tableCatalog,
+                                   TenantDataSourceRouter tenantDataSourceRouter) {
+        this.schemaMigrator = schemaMigrator;
+        this.tableCatalog = tableCatalog;
+        this.tenantDataSourceRouter = tenantDataSourceRouter;
+    }
+
+    // --- Maintenance ---
+
+    public void ensureYear(JdbcTemplate jdbc, String academicYear) {
+        schemaMigrator.migrate(jdbc, "CollectionRollupService", 1, () -> jdbc.execute("""
+            CREATE TABLE IF NOT EXISTS collection_rollup (
+                ledger VARCHAR(10) NOT NULL,
+                academic_year VARCHAR(50) NOT NULL,
+                collection_date DATE NOT NULL,
+                fee_head VARCHAR(255) NOT NULL,
+                payment_mode VARCHAR(50) NOT NULL,
+                standard VARCHAR(50) NOT NULL,
+                section VARCHAR(50) NOT NULL,
+                operator_name VARCHAR(255) NOT NULL,
+                items INT NOT NULL DEFAULT 0,
+                bills INT NOT NULL DEFAULT 0,
+                students INT NOT NULL DEFAULT 0,
+                new_students INT NOT NULL DEFAULT 0,
+                paid DECIMAL(14,2) NOT NULL DEFAULT 0,
+                concession DECIMAL(14,2) NOT NULL DEFAULT 0,
+                net_paid DECIMAL(14,2) NOT NULL DEFAULT 0,
+                max_paid DECIMAL(12,2),
+                min_paid DECIMAL(12,2),
+                PRIMARY KEY (ledger, academic_year, collection_date, fee_head, payment_mode, standard, section, operator_name)
+            )
+        """));
+
+        String year = FeeDemandService.yearKey(academicYear);
+        // v2: years stored by their key, rows of either spelling counted
+        schemaMigrator.migrate(jdbc, "CollectionRollupService:" + year, 2, () -> rebuildYear(jdbc, academicYear));
+    }
+
+    /**
+     * Recomputes a whole year from both collection tables.
+     */
+    public void rebuildYear(JdbcTemplate jdbc, String academicYear) {
+        Object[] spellings = yearSpellings(academicYear);
+        jdbc.update("DELETE FROM " + TABLE + " WHERE academic_year IN (?, ?)", spellings);
+        List<Object[]> rows = new ArrayList<>();
+        COLLECTION_TABLES.forEach((ledger, collectionTable) -> {
+            if (!tableCatalog.tableExists(jdbc, collectionTable)) {
+                return;
+            }
+            // In id order, so the first row of each bill and student is the one seen first
+            Set<String> bills = new HashSet<>();
+            Set<List<Object>> studentDays = new HashSet<>();
+            Set<String> studentYears = new HashSet<>();
+            Map<Bucket, Movement> movements = new TreeMap<>();
+            jdbc.query(ITEM_SELECT + collectionTable + " WHERE academic_year IN (?, ?) ORDER BY id", rs -> {
+                Item item = itemOf(rs);
+                String student = item.admissionNumber();
+                Movement movement = new Movement(1,
+                        bills.add(item.billNumber()) ? 1 : 0,
+                        student != null && studentDays.add(List.of(student, item.bucket().date())) ? 1 : 0,
+                        student != null && studentYears.add(student) ? 1 : 0,
+                        item.paid(), item.concession(), item.netPaid(), item.paid(), item.paid());
+                movements.merge(item.bucket(), movement, Movement::plus);
+            }, spellings);
+            movements.forEach((bucket, movement) -> rows.add(rowOf(ledger, bucket, movement)));
+        });
+        jdbc.batchUpdate(UPSERT_SQL, rows);
+        log.info("📊 Rebuilt collection rollup for {}: {} rows", academicYear, rows.size());
+    }
+
+    // --- Posting ---
+
+    /**
+     * Runs a write to the rows of one bill and adds what it changed to the rollup, in one
+     * transaction on the school's database (joining the caller's, if any).
+     */
+    public void track(JdbcTemplate jdbc, String ledger, String schoolId, String billNumber, Runnable write) {
+        String collectionTable = COLLECTION_TABLES.get(ledger);
+        tenantDataSourceRouter.getTransactionTemplate(schoolId).executeWithoutResult(status -> {
+            Map<Long, Item> before = itemsOf(jdbc, collectionTable, billNumber);
+            write.run();
+            Map<Long, Item> after = itemsOf(jdbc, collectionTable, billNumber);
+
+            Firsts firsts = firstRows(jdbc, collectionTable, after.values());
+            // Sorted so concurrent bills lock rollup rows in the same order
+            Map<Bucket, Movement> movements = new TreeMap<>();
+            after.forEach((id, item) -> {
+                if (!item.equals(before.get(id))) {
+                    movements.merge(item.bucket(), Movement.of(item, firsts, 1), Movement::plus);
+                }
+            });
+            before.forEach((id, item) -> {
+                if (!item.equals(after.get(id))) {
+                    movements.merge(item.bucket(), Movement.of(item, firsts, -1), Movement::plus);
+                }
+            });
+
+            List<Object[]> rows = new ArrayList<>();
+            movements.forEach((bucket, movement) -> {
+                if (!movement.isZero()) {
+                    rows.add(rowOf(ledger, bucket, movement));
+                }
+            });
+            if (!rows.isEmpty()) {
+                jdbc.batchUpdate(UPSERT_SQL, rows);
+            }
+        });
+    }
+
+    // --- Reads ---
+
+    /**
+     * One row per collection day between {@code from} and {@code to} (inclusive), latest first:
+     * collection_date, transaction_count, fee_item_count, daily_paid_total, daily_concession_total,
+     * daily_net_total and unique_students.
+     */
+    public List<Map<String, Object>> getDailyTotals(JdbcTemplate jdbc, String ledger, String academicYear,
+                                                    LocalDate from, LocalDate to) {
+        ensureYear(jdbc, academicYear);
+        return jdbc.queryForList("""
+                SELECT
+                    collection_date,
+                    SUM(bills) AS transaction_count,
+                    SUM(items) AS fee_item_count,
+                    SUM(paid) AS daily_paid_total,
+                    SUM(concession) AS daily_concession_total,
+                    SUM(net_paid) AS daily_net_total,
+                    SUM(students) AS unique_students
+                FROM collection_rollup
+                WHERE ledger = ? AND academic_year = ? AND collection_date BETWEEN ? AND ?
+                GROUP BY collection_date
+                ORDER BY collection_date DESC
+            """, ledger, FeeDemandService.yearKey(academicYear), Date.valueOf(from), Date.valueOf(to));
+    }
+
+    /**
+     * Totals of a whole year: total_transactions, total_fee_items, total_collection,
+     * total_concession, total_net_collection, average_transaction, max_transaction,
+     * min_transaction, unique_students and collection_days.
+     */
+    public Map<String, Object> getYearTotals(JdbcTemplate jdbc, String ledger, String academicYear) {
+        ensureYear(jdbc, academicYear);
+        return jdbc.queryForMap("""
+                SELECT
+                    SUM(bills) AS total_transactions,
+                    SUM(items) AS total_fee_items,
+                    SUM(paid) AS total_collection,
+                    SUM(concession) AS total_concession,
+                    SUM(net_paid) AS total_net_collection,
+                    SUM(paid) / NULLIF(SUM(items), 0) AS average_transaction,
+                    MAX(max_paid) AS max_transaction,
+                    MIN(min_paid) AS min_transaction,
+                    SUM(new_students) AS unique_students,
+                    COUNT(DISTINCT collection_date) AS collection_days
+                FROM collection_rollup
+                WHERE ledger = ? AND academic_year = ?
+            """, ledger, FeeDemandService.yearKey(academicYear));
+    }
+
+    /**
+     * Year totals per value of one dimension, largest paid first: {@code dimension},
+     * transaction_count (fee items), total_paid and total_concession.
+     *
+     * @param dimension payment_mode, fee_head, standard, section or operator_name
+     * @param limit     at most this many rows, or 0 for all
+     */
+    public List<Map<String, Object>> getYearTotalsBy(JdbcTemplate jdbc, String ledger, String academicYear,
+                                                     String dimension, int limit) {
+        if (!Set.of("payment_mode", "fee_head", "standard", "section", "operator_name").contains(dimension)) {
+            throw new IllegalArgumentException("Unknown rollup dimension: " + dimension);
+        }
+        ensureYear(jdbc, academicYear);
+        return jdbc.queryForList(String.format("""
+                SELECT
+                    %1$s,
+                    SUM(items) AS transaction_count,
+                    SUM(paid) AS total_paid,
+                    SUM(concession) AS total_concession
+                FROM collection_rollup
+                WHERE ledger = ? AND academic_year = ?
+                GROUP BY %1$s
+                ORDER BY total_paid DESC
+            """, dimension) + (limit > 0 ? " LIMIT " + limit : ""), ledger, FeeDemandService.yearKey(academicYear));
+    }
+
+    /**
+     * Paid amount collected between {@code from} and {@code to} (inclusive).
+     */
+    public double getPaidTotal(JdbcTemplate jdbc, String ledger, String academicYear, LocalDate from, LocalDate to) {
+        ensureYear(jdbc, academicYear);
+        BigDecimal paid = jdbc.queryForObject("SELECT SUM(paid) FROM " + TABLE +
+                        " WHERE ledger = ? AND academic_year = ? AND collection_date BETWEEN ? AND ?",
+                BigDecimal.class, ledger, FeeDemandService.yearKey(academicYear), Date.valueOf(from), Date.valueOf(to));
+        return paid != null ? paid.doubleValue() : 0.0;
+    }
+
+    // --- Helpers ---
+
+    private Map<Long, Item> itemsOf(JdbcTemplate jdbc, String collectionTable, String billNumber) {
+        Map<Long, Item> items = new HashMap<>();
+        jdbc.query(ITEM_SELECT + collectionTable + " WHERE bill_number = ?", rs -> {
+            Item item = itemOf(rs);
+            items.put(item.id(), item);
+        }, billNumber);
+        return items;
+    }
+
+    private static Item itemOf(ResultSet rs) throws SQLException {
+        Bucket bucket = new Bucket(FeeDemandService.yearKey(rs.getString(2)), rs.getDate(5).toLocalDate(), rs.getString(6), rs.getString(7),
+                rs.getString(8), rs.getString(9), rs.getString(10));
+        return new Item(rs.getLong(1), rs.getString(3), rs.getString(4), bucket,
+                rs.getBigDecimal(11), rs.getBigDecimal(12), rs.getBigDecimal(13));
+    }
+
+    private static Object[] rowOf(String ledger, Bucket bucket, Movement movement) {
+        return new Object[]{ledger, bucket.academicYear(), Date.valueOf(bucket.date()), bucket.feeHead(),
+                bucket.paymentMode(), bucket.standard(), bucket.section(), bucket.operatorName(),
+                movement.items(), movement.bills(), movement.students(), movement.newStudents(),
+                movement.paid(), movement.concession(), movement.netPaid(), movement.maxPaid(), movement.minPaid()};
+    }
+
+    // Which of the bill's rows are the first (lowest id) of their bill, student-day and student-year;
+    // one query per student of the bill, not per row
+    private Firsts firstRows(JdbcTemplate jdbc, String collectionTable, Collection<Item> items) {
+        Map<List<String>, Long> bills = new HashMap<>();
+        Map<List<String>, Set<LocalDate>> studentDays = new HashMap<>();
+        for (Item item : items) {
+            String year = item.bucket().academicYear();
+            bills.merge(List.of(year, item.billNumber()), item.id(), Math::min);
+            if (item.admissionNumber() != null) {
+                studentDays.computeIfAbsent(List.of(year, item.admissionNumber()), key -> new HashSet<>())
+                        .add(item.bucket().date());
+            }
+        }
+
+        Set<Long> firstOfDay = new HashSet<>();
+        Set<Long> firstOfYear = new HashSet<>();
+        studentDays.forEach((student, days) -> {
+            Object[] spellings = yearSpellings(student.get(0));
+            Map<LocalDate, Long> dayFirsts = new HashMap<>();
+            jdbc.query("SELECT DATE(bill_date), MIN(id) FROM " + collectionTable +
+                            " WHERE academic_year IN (?, ?) AND admission_number = ? GROUP BY DATE(bill_date)",
+                    rs -> {
+                        dayFirsts.put(rs.getDate(1).toLocalDate(), rs.getLong(2));
+                    }, spellings[0], spellings[1], student.get(1));
+            days.forEach(day -> {
+                Long first = dayFirsts.get(day);
+                if (first != null) {
+                    firstOfDay.add(first);
+                }
+            });
+            dayFirsts.values().stream().min(Long::compare).ifPresent(firstOfYear::add);
+        });
+        return new Firsts(Set.copyOf(bills.values()), firstOfDay, firstOfYear);
+    }
+
+    // The key spelling ("2025_2026") and the dashed one the screens send ("2025-2026")
+    private static Object[] yearSpellings(String academicYear) {
+        String key = FeeDemandService.yearKey(academicYear);
+        return new Object[]{key, key.replace('_', '-')};
+    }
+
+    private record Firsts(Set<Long> bills, Set<Long> students, Set<Long> newStudents) {
+    }
+
+    private record Bucket(String academicYear, LocalDate date, String feeHead, String paymentMode,
+                          String standard, String section, String operatorName) implements Comparable<Bucket> {
+        @Override
+        public int compareTo(Bucket other) {
+            return Comparator.comparing(Bucket::academicYear).thenComparing(Bucket::date)
+                    .thenComparing(Bucket::feeHead).thenComparing(Bucket::paymentMode)
+                    .thenComparing(Bucket::standard).thenComparing(Bucket::section)
+                    .thenComparing(Bucket::operatorName).compare(this, other);
+        }
+    }
+
+    private record Item(long id, String billNumber, String admissionNumber, Bucket bucket,
+                        BigDecimal paid, BigDecimal concession, BigDecimal netPaid) {
+    }
+
+    private record Movement(int items, int bills, int students, int newStudents,
+                            BigDecimal paid, BigDecimal concession, BigDecimal netPaid,
+                            BigDecimal maxPaid, BigDecimal minPaid) {
+
+        static Movement of(Item item, Firsts firsts, int sign) {
+            BigDecimal factor = BigDecimal.valueOf(sign);
+            // Removed amounts leave max/min alone
+            BigDecimal extreme = sign > 0 ? item.paid() : null;
+            return new Movement(sign,
+                    firsts.bills().contains(item.id()) ? sign : 0,
+                    firsts.students().contains(item.id()) ? sign : 0,
+                    firsts.newStudents().contains(item.id()) ? sign : 0,
+                    item.paid().multiply(factor), item.concession().multiply(factor), item.netPaid().multiply(factor),
+                    extreme, extreme);
+        }
+
+        Movement plus(Movement other) {
+            return new Movement(items + other.items, bills + other.bills, students + other.students,
+                    newStudents + other.newStudents, paid.add(other.paid), concession.add(other.concession),
+                    netPaid.add(other.netPaid), max(maxPaid, other.maxPaid), min(minPaid, other.minPaid));
+        }
+
+        boolean isZero() {
+            return items == 0 && bills == 0 && students == 0 && newStudents == 0 && paid.signum() == 0
+                    && concession.signum() == 0 && netPaid.signum() == 0 && maxPaid == null;
+        }
+
+        private static BigDecimal max(BigDecimal a, BigDecimal b) {
+            return a == null ? b : b == null ? a : a.max(b);
+        }
+
+        private static BigDecimal min(BigDecimal a, BigDecimal b) {
+            return a == null ? b : b == null ? a : a.min(b);
+        }
+    }
+}
@@ -1,178 +1,226 @@
 package com.backend.school_erp.service.Transaction;
 
 import com.backend.school_erp.DTO.Transaction.DailyFeeCollectionDTO;
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.SchoolDataChangedEvent;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
+import com.backend.school_erp.config.TenantTableCatalog;
 import com.backend.school_erp.entity.Transaction.DailyFeeCollection;
 import com.backend.school_erp.entity.Transaction.DFCPaidAmount;
 import com.backend.school_erp.entity.Transaction.DFCConcession;
 import com.backend.school_erp.entity.Transaction.DayBook;
+import com.backend.school_erp.service.AdmissionMaster.StudentDirectory;
+import com.backend.school_erp.service.AdmissionMaster.StudentRecord;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import javax.sql.DataSource;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 
 @Service
 @Slf4j
 public class DailyFeeCollectionService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private static final String INSERT_DAILY_FEE_SQL = """
+        INSERT INTO daily_fee_collection (
+            bill_number, admission_number, student_name, father_name, 
+            standard, section, emis_no, aadhar_no, boarding_point, bill_date, 
+            fee_head, account_head, paid_amount, concession_amount, net_paid_amount, 
+            payment_mode, payment_number, operator_name, transaction_narrative, 
+            transaction_date, route_number, school_id, academic_year
+        ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+        ON DUPLICATE KEY UPDATE
+            paid_amount = paid_amount + VALUES(paid_amount),
+            concession_amount = concession_amount + VALUES(concession_amount),
+            net_paid_amount = net_paid_amount + VALUES(net_paid_amount),
+            operator_name = VALUES(operator_name),
+            transaction_narrative = VALUES(transaction_narrative),
+            transaction_date = VALUES(transaction_date)
+    """;
+
+    private static final String INSERT_PAID_SQL = """
+        INSERT INTO dfcpaidamount (
+            bill_number, admission_number, amount, student_name, father_name, 
+            standard, section, school_id, aadhar_no, academic_year
+        ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+    """;
+
+    private static final String INSERT_CONCESSION_SQL = """
+        INSERT INTO dfcconcession (
+            bill_number, admission_number, concession_amount, school_id, student_name, 
+            father_name, standard, section, aadhar_no, academic_year
+        ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+    """;
+
+    // UPDATED FOR NEW SCHEMA
+    private static final String INSERT_DAY_BOOK_SQL = """
+        INSERT INTO day_book (
+            br_number, admission_number, name, br_date, description, 
+            ledger, credit, debit, mode, operator_name, school_id, academic_year
+        ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+    """;
+
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
+
+    @Autowired
+    private TenantTableCatalog tableCatalog;
+
+    @Autowired
+    private FeeDemandService feeDemandService;
+
+    @Autowired
+    private FeeBalanceService feeBalanceService;
+
+    @Autowired
+    private DayBookBalanceService dayBookBalanceService;
+
+    @Autowired
+    private CollectionRollupService collectionRollupService;
+
+    @Autowired
+    private StudentDirectory studentDirectory;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
 
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            log.info("🔗 Creating HikariCP DataSource for school: {}", id);
-            HikariConfig config = new HikariConfig();
-
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-
-            config.setMaximumPoolSize(15);
-            config.setMinimumIdle(5);
-            config.setIdleTimeout(30000);
-            config.setMaxLifetime(1800000);
-            config.setConnectionTimeout(30000);
-            config.setValidationTimeout(5000);
-            config.setLeakDetectionThreshold(10000);
-
-            return new HikariDataSource(config);
-        });
-    }
+    private final ObjectMapper objectMapper = new ObjectMapper();
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     private void ensureTablesExist(JdbcTemplate jdbc) {
-        try {
-            // 1. Create daily_fee_collection table (master table) - NO CHANGES
-            String createDailyFeeCollection = """
-                CREATE TABLE IF NOT EXISTS daily_fee_collection (
-                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                    bill_number VARCHAR(100) NOT NULL,
-                    admission_number VARCHAR(50) NOT NULL,
-                    student_name VARCHAR(255) NOT NULL,
-                    father_name VARCHAR(255),
-                    standard VARCHAR(50),
-                    section VARCHAR(50),
-                    emis_no VARCHAR(50),
-                    aadhar_no VARCHAR(50),
-                    boarding_point VARCHAR(255),
-                    bill_date TIMESTAMP NOT NULL,
-                    fee_head VARCHAR(255) NOT NULL,
-                    account_head VARCHAR(255) NOT NULL,
-                    paid_amount DECIMAL(12,2) DEFAULT 0.00,
-                    concession_amount DECIMAL(12,2) DEFAULT 0.00,
-                    net_paid_amount DECIMAL(12,2) DEFAULT 0.00,
-                    payment_mode VARCHAR(50) NOT NULL,
-                    payment_number VARCHAR(100),
-                    operator_name VARCHAR(255) NOT NULL,
-                    transaction_narrative TEXT,
-                    transaction_date TIMESTAMP,
-                    route_number VARCHAR(100),
-                    school_id VARCHAR(50) NOT NULL,
-                    academic_year VARCHAR(50) NOT NULL,
-                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                    UNIQUE KEY uk_bill_fee_admission (bill_number, fee_head, admission_number),
-                    INDEX idx_bill_number (bill_number),
-                    INDEX idx_admission_number (admission_number),
-                    INDEX idx_school_academic (school_id, academic_year),
-                    INDEX idx_bill_date (bill_date),
-                    INDEX idx_fee_head (fee_head),
-                    INDEX idx_student_name (student_name)
-                ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
-            """;
+        schemaMigrator.migrate(jdbc, "DailyFeeCollectionService", 1, () -> {
+            try {
+                // 1. Create daily_fee_collection table (master table) - NO CHANGES
+                String createDailyFeeCollection = """
+                    CREATE TABLE IF NOT EXISTS daily_fee_collection (
+                        id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                        bill_number VARCHAR(100) NOT NULL,
+                        admission_number VARCHAR(50) NOT NULL,
+                        student_name VARCHAR(255) NOT NULL,
+                        father_name VARCHAR(255),
+                        standard VARCHAR(50),
+                        section VARCHAR(50),
+                        emis_no VARCHAR(50),
+                        aadhar_no VARCHAR(50),
+                        boarding_point VARCHAR(255),
+                        bill_date TIMESTAMP NOT NULL,
+                        fee_head VARCHAR(255) NOT NULL,
+                        account_head VARCHAR(255) NOT NULL,
+                        paid_amount DECIMAL(12,2) DEFAULT 0.00,
+                        concession_amount DECIMAL(12,2) DEFAULT 0.00,
+                        net_paid_amount DECIMAL(12,2) DEFAULT 0.00,
+                        payment_mode VARCHAR(50) NOT NULL,
+                        payment_number VARCHAR(100),
+                        operator_name VARCHAR(255) NOT NULL,
+                        transaction_narrative TEXT,
+                        transaction_date TIMESTAMP,
+                        route_number VARCHAR(100),
+                        school_id VARCHAR(50) NOT NULL,
+                        academic_year VARCHAR(50) NOT NULL,
+                        created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                        UNIQUE KEY uk_bill_fee_admission (bill_number, fee_head, admission_number),
+                        INDEX idx_bill_number (bill_number),
+                        INDEX idx_admission_number (admission_number),
+                        INDEX idx_school_academic (school_id, academic_year),
+                        INDEX idx_bill_date (bill_date),
+                        INDEX idx_fee_head (fee_head),
+                        INDEX idx_student_name (student_name)
+                    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
+                """;
 
-            // 2. Create dfcpaidamount table - NO CHANGES
-            String createDFCPaidAmount = """
-                CREATE TABLE IF NOT EXISTS dfcpaidamount (
-                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                    bill_number VARCHAR(100) NOT NULL,
-                    admission_number VARCHAR(50) NOT NULL,
-                    amount DECIMAL(12,2) NOT NULL,
-                    student_name VARCHAR(255) NOT NULL,
-                    father_name VARCHAR(255),
-                    standard VARCHAR(50),
-                    section VARCHAR(50),
-                    school_id VARCHAR(50) NOT NULL,
-                    aadhar_no VARCHAR(50),
-                    academic_year VARCHAR(50) NOT NULL,
-                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                    INDEX idx_bill_number (bill_number),
-                    INDEX idx_admission_number (admission_number),
-                    INDEX idx_school_year (school_id, academic_year),
-                    INDEX idx_student_name (student_name)
-                ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
-            """;
+                // 2. Create dfcpaidamount table - NO CHANGES
+                String createDFCPaidAmount = """
+                    CREATE TABLE IF NOT EXISTS dfcpaidamount (
+                        id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                        bill_number VARCHAR(100) NOT NULL,
+                        admission_number VARCHAR(50) NOT NULL,
+                        amount DECIMAL(12,2) NOT NULL,
+                        student_name VARCHAR(255) NOT NULL,
+                        father_name VARCHAR(255),
+                        standard VARCHAR(50),
+                        section VARCHAR(50),
+                        school_id VARCHAR(50) NOT NULL,
+                        aadhar_no VARCHAR(50),
+                        academic_year VARCHAR(50) NOT NULL,
+                        created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                        INDEX idx_bill_number (bill_number),
+                        INDEX idx_admission_number (admission_number),
+                        INDEX idx_school_year (school_id, academic_year),
+                        INDEX idx_student_name (student_name)
+                    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
+                """;
 
-            // 3. Create dfcconcession table - NO CHANGES
-            String createDFCConcession = """
-                CREATE TABLE IF NOT EXISTS dfcconcession (
-                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                    bill_number VARCHAR(100) NOT NULL,
-                    admission_number VARCHAR(50) NOT NULL,
-                    concession_amount DECIMAL(12,2) NOT NULL,
-                    school_id VARCHAR(50) NOT NULL,
-                    student_name VARCHAR(255) NOT NULL,
-                    father_name VARCHAR(255),
-                    standard VARCHAR(50),
-                    section VARCHAR(50),
-                    aadhar_no VARCHAR(50),
-                    academic_year VARCHAR(50) NOT NULL,
-                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                    INDEX idx_bill_number (bill_number),
-                    INDEX idx_admission_number (admission_number),
-                    INDEX idx_school_year (school_id, academic_year),
-                    INDEX idx_student_name (student_name)
-                ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
-            """;
+                // 3. Create dfcconcession table - NO CHANGES
+                String createDFCConcession = """
+                    CREATE TABLE IF NOT EXISTS dfcconcession (
+                        id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                        bill_number VARCHAR(100) NOT NULL,
+                        admission_number VARCHAR(50) NOT NULL,
+                        concession_amount DECIMAL(12,2) NOT NULL,
+                        school_id VARCHAR(50) NOT NULL,
+                        student_name VARCHAR(255) NOT NULL,
+                        father_name VARCHAR(255),
+                        standard VARCHAR(50),
+                        section VARCHAR(50),
+                        aadhar_no VARCHAR(50),
+                        academic_year VARCHAR(50) NOT NULL,
+                        created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                        INDEX idx_bill_number (bill_number),
+                        INDEX idx_admission_number (admission_number),
+                        INDEX idx_school_year (school_id, academic_year),
+                        INDEX idx_student_name (student_name)
+                    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
+                """;
 
-            // 4. Create day_book table - UPDATED WITH NEW COLUMNS
-            String createDayBook = """
-                CREATE TABLE IF NOT EXISTS day_book (
-                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                    br_number VARCHAR(100) NOT NULL,  -- Changed from bill_number
-                    admission_number VARCHAR(50) NOT NULL,
-                    name VARCHAR(255) NOT NULL,
-                    br_date TIMESTAMP NOT NULL,  -- Changed from bill_date
-                    description VARCHAR(500),
-                    ledger VARCHAR(255),  -- NEW COLUMN: stores fee head
-                    credit DECIMAL(12,2) DEFAULT 0.00,
-                    debit DECIMAL(12,2) DEFAULT 0.00,
-                    mode VARCHAR(50) NOT NULL,
-                    operator_name VARCHAR(255) NOT NULL,
-                    school_id VARCHAR(50) NOT NULL,
-                    academic_year VARCHAR(50) NOT NULL,
-                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                    INDEX idx_br_number (br_number),
-                    INDEX idx_admission_number (admission_number),
-                    INDEX idx_school_academic (school_id, academic_year),
-                    INDEX idx_br_date (br_date),
-                    INDEX idx_name (name),
-                    INDEX idx_ledger (ledger)
-                ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
-            """;
+                // 4. Create day_book table - UPDATED WITH NEW COLUMNS
+                String createDayBook = """
+                    CREATE TABLE IF NOT EXISTS day_book (
+                        id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                        br_number VARCHAR(100) NOT NULL,  -- Changed from bill_number
+                        admission_number VARCHAR(50) NOT NULL,
+                        name VARCHAR(255) NOT NULL,
+                        br_date TIMESTAMP NOT NULL,  -- Changed from bill_date
+                        description VARCHAR(500),
+                        ledger VARCHAR(255),  -- NEW COLUMN: stores fee head
+                        credit DECIMAL(12,2) DEFAULT 0.00,
+                        debit DECIMAL(12,2) DEFAULT 0.00,
+                        mode VARCHAR(50) NOT NULL,
+                        operator_name VARCHAR(255) NOT NULL,
+                        school_id VARCHAR(50) NOT NULL,
+                        academic_year VARCHAR(50) NOT NULL,
+                        created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                        INDEX idx_br_number (br_number),
+                        INDEX idx_admission_number (admission_number),
+                        INDEX idx_school_academic (school_id, academic_year),
+                        INDEX idx_br_date (br_date),
+                        INDEX idx_name (name),
+                        INDEX idx_ledger (ledger)
+                    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
+                """;
 
-            jdbc.execute(createDailyFeeCollection);
-            jdbc.execute(createDFCPaidAmount);
-            jdbc.execute(createDFCConcession);
-            jdbc.execute(createDayBook);
+                jdbc.execute(createDailyFeeCollection);
+                jdbc.execute(createDFCPaidAmount);
+                jdbc.execute(createDFCConcession);
+                jdbc.execute(createDayBook);
 
-            log.info("✅ All 4 billing tables created or already exist for school");
-        } catch (Exception e) {
-            log.error("❌ Failed to create billing tables: {}", e.getMessage());
-            throw new RuntimeException("Database table creation failed: " + e.getMessage(), e);
-        }
+                log.info("✅ All 4 billing tables created or already exist for school");
+            } catch (Exception e) {
+                log.error("❌ Failed to create billing tables: {}", e.getMessage());
+                throw new RuntimeException("Database table creation failed: " + e.getMessage(), e);
+            }
+        });
     }
 
     // Get student fee details with proper payment history calculation
@@ -187,54 +235,25 @@ public class DailyFeeCollectionService {
             // Get student info
             Map<String, Object> studentInfo = getStudentInfo(jdbc, schoolId, admissionNumber, academicYear);
 
-            // Get all fee tables for the academic year
-            List<String> feeTables = Arrays.asList(
-                    "tuition_fees_" + academicYear.replaceAll("[^a-zA-Z0-9]", "_"),
-                    "hostel_fees_" + academicYear.replaceAll("[^a-zA-Z0-9]", "_"),
-                    "transport_fees_" + academicYear.replaceAll("[^a-zA-Z0-9]", "_")
-            );
-
-            // Collect all fees from different tables
-            for (String tableName : feeTables) {
-                if (tableExists(jdbc, tableName)) {
-                    String sql = String.format("""
-                        SELECT 
-                            fee_heading as heading,
-                            account_head as accountHead,
-                            amount as originalAmount,
-                            status,
-                            CASE 
-                                WHEN LOWER(?) LIKE '%%tuition%%' THEN 'Tuition'
-                                WHEN LOWER(?) LIKE '%%hostel%%' THEN 'Hostel'
-                                WHEN LOWER(?) LIKE '%%transport%%' THEN 'Transport'
-                                ELSE 'Academic'
-                            END as feeType,
-                            CASE 
-                                WHEN LOWER(?) LIKE '%%tuition%%' THEN 'Academic'
-                                WHEN LOWER(?) LIKE '%%hostel%%' THEN 'Hostel'
-                                WHEN LOWER(?) LIKE '%%transport%%' THEN 'Transport'
-                                ELSE 'Academic'
-                            END as type
-                        FROM %s 
-                        WHERE admission_number = ? AND school_id = ? 
-                        AND (status IS NULL OR status != 'settled')
-                    """, tableName);
-
-                    List<Map<String, Object>> fees = jdbc.queryForList(sql,
-                            tableName, tableName, tableName, tableName, tableName, tableName,
-                            admissionNumber, schoolId);
-
-                    for (Map<String, Object> fee : fees) {
-                        // Convert all numeric values properly
-                        fee.put("originalAmount", convertToDouble(fee.get("originalAmount")));
-                        fee.put("remainingBalance", convertToDouble(fee.get("originalAmount")));
-                        fee.put("previousPaid", 0.0);
-                        fee.put("previousConcession", 0.0);
-                        fee.put("aadharNo", studentInfo.getOrDefault("aadharNo", ""));
-                        fee.put("emisNo", studentInfo.getOrDefault("emisNo", ""));
-                        feeDetails.add(fee);
-                    }
+            // All unsettled fees of the student from the consolidated demand
+            for (Map<String, Object> demand : feeDemandService.getStudentDemand(jdbc, academicYear, admissionNumber)) {
+                if ("settled".equalsIgnoreCase((String) demand.get("status"))) {
+                    continue;
                 }
+                String feeType = (String) demand.get("fee_type");
+                Map<String, Object> fee = new HashMap<>();
+                fee.put("heading", demand.get("fee_heading"));
+                fee.put("accountHead", demand.get("account_head"));
+                fee.put("originalAmount", convertToDouble(demand.get("amount")));
+                fee.put("status", demand.get("status"));
+                fee.put("feeType", feeType);
+                fee.put("type", FeeDemandService.TUITION.equals(feeType) ? "Academic" : feeType);
+                fee.put("remainingBalance", convertToDouble(demand.get("amount")));
+                fee.put("previousPaid", 0.0);
+                fee.put("previousConcession", 0.0);
+                fee.put("aadharNo", studentInfo.getOrDefault("aadharNo", ""));
+                fee.put("emisNo", studentInfo.getOrDefault("emisNo", ""));
+                feeDetails.add(fee);
             }
 
             // Adjust balances with payment history
@@ -273,7 +292,19 @@ public class DailyFeeCollectionService {
         Map<String, Object> studentInfo = new HashMap<>();
 
         try {
-            // Try multiple table sources
+            Optional<StudentRecord> student = studentDirectory.find(schoolId, academicYear, admissionNumber);
+            if (student.isPresent()) {
+                studentInfo.put("aadhar_no", Objects.toString(student.get().aadharNumber(), ""));
+                studentInfo.put("emis_no", Objects.toString(student.get().emis(), ""));
+                studentInfo.put("student_name", Objects.toString(student.get().studentName(), ""));
+                studentInfo.put("father_name", Objects.toString(student.get().fatherName(), ""));
+                studentInfo.put("standard", Objects.toString(student.get().standard(), ""));
+                studentInfo.put("section", Objects.toString(student.get().section(), ""));
+                studentInfo.put("boarding_point", Objects.toString(student.get().boardingPoint(), ""));
+                return studentInfo;
+            }
+
+            // Not admitted this year: try the older student tables
             String[] possibleTables = {
                     "student_master",
                     "admissions_" + academicYear.replaceAll("-", "_"),
@@ -349,14 +380,7 @@ public class DailyFeeCollectionService {
 
     // Check if table exists
     private boolean tableExists(JdbcTemplate jdbc, String tableName) {
-        try {
-            String sql = "SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = LOWER(?)";
-            Integer count = jdbc.queryForObject(sql, Integer.class, tableName.toLowerCase());
-            return count != null && count > 0;
-        } catch (Exception e) {
-            log.debug("Table {} does not exist: {}", tableName, e.getMessage());
-            return false;
-        }
+        return tableCatalog.tableExists(jdbc, tableName);
     }
 
     // Adjust remaining balances based on payment history
@@ -365,29 +389,16 @@ public class DailyFeeCollectionService {
             String academicYear, List<Map<String, Object>> feeDetails) {
 
         try {
-            // Get all payments for this student
-            String paidSql = """
-                SELECT 
-                    fee_head, 
-                    SUM(COALESCE(paid_amount, 0)) as total_paid,
-                    SUM(COALESCE(concession_amount, 0)) as total_concession
-                FROM daily_fee_collection 
-                WHERE school_id = ? AND admission_number = ? AND academic_year = ?
-                GROUP BY fee_head
-            """;
+            // Running totals of this student from the balance ledger
+            Map<String, Map<String, Object>> balances =
+                    feeBalanceService.getStudentBalances(jdbc, academicYear, admissionNumber, FeeBalanceService.DAILY);
 
             Map<String, Map<String, Double>> feeTotals = new HashMap<>();
-            List<Map<String, Object>> paymentResults = jdbc.queryForList(paidSql, schoolId, admissionNumber, academicYear);
-
-            for (Map<String, Object> row : paymentResults) {
-                String feeHead = (String) row.get("fee_head");
-                Double totalPaid = convertToDouble(row.get("total_paid"));
-                Double totalConcession = convertToDouble(row.get("total_concession"));
-
+            for (Map.Entry<String, Map<String, Object>> entry : balances.entrySet()) {
                 Map<String, Double> totals = new HashMap<>();
-                totals.put("paid", totalPaid);
-                totals.put("concession", totalConcession);
-                feeTotals.put(feeHead, totals);
+                totals.put("paid", convertToDouble(entry.getValue().get("paid")));
+                totals.put("concession", convertToDouble(entry.getValue().get("concession")));
+                feeTotals.put(entry.getKey(), totals);
             }
 
             // Update fee details with payment history
@@ -436,6 +447,9 @@ public class DailyFeeCollectionService {
 
             // Validate required fields
             validatePaymentDTO(dto);
+            feeBalanceService.ensureYear(jdbc, dto.getAcademicYear());
+            dayBookBalanceService.ensure(jdbc, DayBookBalanceService.DAY_BOOK);
+            collectionRollupService.ensureYear(jdbc, dto.getAcademicYear());
 
             // Get student info for additional fields
             Map<String, Object> studentInfo = getStudentInfo(jdbc, schoolId, dto.getAdmissionNumber(), dto.getAcademicYear());
@@ -444,138 +458,118 @@ public class DailyFeeCollectionService {
             LocalDateTime billDate = dto.getBillDate() != null ? dto.getBillDate() : LocalDateTime.now();
             LocalDateTime transactionDate = dto.getTransactionDate() != null ? dto.getTransactionDate() : billDate;
 
-            // Process each fee payment
+            // Collect every row of the bill first, then write one batch per table
+            String descriptionWithClass = dto.getStandard() + "-" + dto.getSection();
+            List<Object[]> dailyFeeRows = new ArrayList<>();
+            List<Object[]> paidRows = new ArrayList<>();
+            List<Object[]> concessionRows = new ArrayList<>();
+            List<Object[]> dayBookRows = new ArrayList<>();
+            List<FeeBalanceService.Posting> postings = new ArrayList<>();
+            Set<String> feeHeads = new LinkedHashSet<>();
+
             for (DailyFeeCollectionDTO.FeePaymentDetailDTO feePayment : dto.getFeePayments()) {
-                try {
-                    // Calculate amounts
-                    Double paidAmount = feePayment.getPaidAmount() != null ? feePayment.getPaidAmount() : 0.0;
-                    Double concessionAmount = feePayment.getConcessionAmount() != null ? feePayment.getConcessionAmount() : 0.0;
-                    Double netPaidAmount = paidAmount + concessionAmount;
-
-                    // Insert into daily_fee_collection
-                    String insertDailyFeeSQL = """
-                        INSERT INTO daily_fee_collection (
-                            bill_number, admission_number, student_name, father_name, 
-                            standard, section, emis_no, aadhar_no, boarding_point, bill_date, 
-                            fee_head, account_head, paid_amount, concession_amount, net_paid_amount, 
-                            payment_mode, payment_number, operator_name, transaction_narrative, 
-                            transaction_date, route_number, school_id, academic_year
-                        ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
-                        ON DUPLICATE KEY UPDATE
-                            paid_amount = paid_amount + VALUES(paid_amount),
-                            concession_amount = concession_amount + VALUES(concession_amount),
-                            net_paid_amount = net_paid_amount + VALUES(net_paid_amount),
-                            operator_name = VALUES(operator_name),
-                            transaction_narrative = VALUES(transaction_narrative),
-                            transaction_date = VALUES(transaction_date)
-                    """;
-
-                    jdbc.update(insertDailyFeeSQL,
+                // Calculate amounts
+                Double paidAmount = feePayment.getPaidAmount() != null ? feePayment.getPaidAmount() : 0.0;
+                Double concessionAmount = feePayment.getConcessionAmount() != null ? feePayment.getConcessionAmount() : 0.0;
+                Double netPaidAmount = paidAmount + concessionAmount;
+
+                dailyFeeRows.add(new Object[]{
+                        dto.getBillNumber(),
+                        dto.getAdmissionNumber(),
+                        dto.getStudentName(),
+                        dto.getFatherName(),
+                        dto.getStandard(),
+                        dto.getSection(),
+                        studentInfo.get("emis_no"),
+                        studentInfo.get("aadhar_no"),
+                        dto.getBoardingPoint(),
+                        java.sql.Timestamp.valueOf(billDate),
+                        feePayment.getFeeHeading(),
+                        feePayment.getAccountHead(),
+                        paidAmount,
+                        concessionAmount,
+                        netPaidAmount,
+                        dto.getPaymentMode(),
+                        dto.getPaymentNumber(),
+                        dto.getOperatorName(),
+                        dto.getTransactionNarrative(),
+                        java.sql.Timestamp.valueOf(transactionDate),
+                        dto.getRouteNumber(),
+                        schoolId,
+                        dto.getAcademicYear()
+                });
+
+                // Paid amounts go to dfcpaidamount (if any paid amount)
+                if (paidAmount > 0) {
+                    paidRows.add(new Object[]{
                             dto.getBillNumber(),
                             dto.getAdmissionNumber(),
+                            paidAmount,
                             dto.getStudentName(),
                             dto.getFatherName(),
                             dto.getStandard(),
                             dto.getSection(),
-                            studentInfo.get("emis_no"),
-                            studentInfo.get("aadhar_no"),
-                            dto.getBoardingPoint(),
-                            java.sql.Timestamp.valueOf(billDate),
-                            feePayment.getFeeHeading(),
-                            feePayment.getAccountHead(),
-                            paidAmount,
-                            concessionAmount,
-                            netPaidAmount,
-                            dto.getPaymentMode(),
-                            dto.getPaymentNumber(),
-                            dto.getOperatorName(),
-                            dto.getTransactionNarrative(),
-                            java.sql.Timestamp.valueOf(transactionDate),
-                            dto.getRouteNumber(),
                             schoolId,
+                            studentInfo.get("aadhar_no"),
                             dto.getAcademicYear()
-                    );
-
-                    // Insert paid amounts into dfcpaidamount (if any paid amount)
-                    if (paidAmount > 0) {
-                        String insertPaidSQL = """
-                            INSERT INTO dfcpaidamount (
-                                bill_number, admission_number, amount, student_name, father_name, 
-                                standard, section, school_id, aadhar_no, academic_year
-                            ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
-                        """;
-
-                        jdbc.update(insertPaidSQL,
-                                dto.getBillNumber(),
-                                dto.getAdmissionNumber(),
-                                paidAmount,
-                                dto.getStudentName(),
-                                dto.getFatherName(),
-                                dto.getStandard(),
-                                dto.getSection(),
-                                schoolId,
-                                studentInfo.get("aadhar_no"),
-                                dto.getAcademicYear()
-                        );
-                    }
-
-                    // Insert concessions into dfcconcession (if any concession)
-                    if (concessionAmount > 0) {
-                        String insertConcessionSQL = """
-                            INSERT INTO dfcconcession (
-                                bill_number, admission_number, concession_amount, school_id, student_name, 
-                                father_name, standard, section, aadhar_no, academic_year
-                            ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
-                        """;
-
-                        jdbc.update(insertConcessionSQL,
-                                dto.getBillNumber(),
-                                dto.getAdmissionNumber(),
-                                concessionAmount,
-                                schoolId,
-                                dto.getStudentName(),
-                                dto.getFatherName(),
-                                dto.getStandard(),
-                                dto.getSection(),
-                                studentInfo.get("aadhar_no"),
-                                dto.getAcademicYear()
-                        );
-                    }
-
-                    // Insert into day_book - UPDATED FOR NEW SCHEMA
-                    String insertDayBookSQL = """
-                        INSERT INTO day_book (
-                            br_number, admission_number, name, br_date, description, 
-                            ledger, credit, debit, mode, operator_name, school_id, academic_year
-                        ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
-                    """;
-
-                    // Create description with standard and section
-                    String descriptionWithClass = dto.getStandard() + "-" + dto.getSection();
+                    });
+                }
 
-                    jdbc.update(insertDayBookSQL,
-                            dto.getBillNumber(),  // br_number (same as bill_number)
+                // Concessions go to dfcconcession (if any concession)
+                if (concessionAmount > 0) {
+                    concessionRows.add(new Object[]{
+                            dto.getBillNumber(),
                             dto.getAdmissionNumber(),
-                            dto.getStudentName(),
-                            java.sql.Timestamp.valueOf(billDate),  // br_date
-                            descriptionWithClass,  // description now stores standard-section
-                            feePayment.getFeeHeading(),  // ledger column stores fee head
-                            paidAmount,  // credit
-                            concessionAmount,  // debit
-                            dto.getPaymentMode(),
-                            dto.getOperatorName(),
+                            concessionAmount,
                             schoolId,
+                            dto.getStudentName(),
+                            dto.getFatherName(),
+                            dto.getStandard(),
+                            dto.getSection(),
+                            studentInfo.get("aadhar_no"),
                             dto.getAcademicYear()
-                    );
+                    });
+                }
 
-                    // Update fee table amount and status
-                    updateFeeTableAmountAndStatus(jdbc, schoolId, dto.getAdmissionNumber(), dto.getAcademicYear(), feePayment);
+                dayBookRows.add(new Object[]{
+                        dto.getBillNumber(),  // br_number (same as bill_number)
+                        dto.getAdmissionNumber(),
+                        dto.getStudentName(),
+                        java.sql.Timestamp.valueOf(billDate),  // br_date
+                        descriptionWithClass,  // description now stores standard-section
+                        feePayment.getFeeHeading(),  // ledger column stores fee head
+                        paidAmount,  // credit
+                        concessionAmount,  // debit
+                        dto.getPaymentMode(),
+                        dto.getOperatorName(),
+                        schoolId,
+                        dto.getAcademicYear()
+                });
+
+                postings.add(new FeeBalanceService.Posting(feePayment.getFeeHeading(), paidAmount, concessionAmount));
+                feeHeads.add(feePayment.getFeeHeading());
+            }
 
-                } catch (Exception feeError) {
-                    log.error("❌ Error processing fee payment {}: {}", feePayment.getFeeHeading(), feeError.getMessage());
-                    throw new RuntimeException("Failed to process fee payment for " + feePayment.getFeeHeading() + ": " + feeError.getMessage(), feeError);
+            // All tables of the bill commit together
+            JdbcTemplate billJdbc = jdbc;
+            tenantDataSourceRouter.getTransactionTemplate(schoolId).executeWithoutResult(status -> {
+                collectionRollupService.track(billJdbc, FeeBalanceService.DAILY, schoolId, dto.getBillNumber(),
+                        () -> billJdbc.batchUpdate(INSERT_DAILY_FEE_SQL, dailyFeeRows));
+                if (!paidRows.isEmpty()) {
+                    billJdbc.batchUpdate(INSERT_PAID_SQL, paidRows);
                 }
-            }
+                if (!concessionRows.isEmpty()) {
+                    billJdbc.batchUpdate(INSERT_CONCESSION_SQL, concessionRows);
+                }
+                dayBookBalanceService.track(billJdbc, DayBookBalanceService.DAY_BOOK, schoolId, dto.getBillNumber(),
+                        () -> billJdbc.batchUpdate(INSERT_DAY_BOOK_SQL, dayBookRows));
+                feeBalanceService.recordPayments(billJdbc, dto.getAcademicYear(), dto.getAdmissionNumber(),
+                        FeeBalanceService.DAILY, postings, dto.getStandard(), dto.getSection(), dto.getTransactionNarrative());
+            });
+            eventPublisher.publishEvent(new SchoolDataChangedEvent(schoolId, dto.getAcademicYear(), "fee posting"));
+
+            // Update fee table status for all heads of the bill
+            updateFeeTableStatuses(jdbc, schoolId, dto.getAdmissionNumber(), dto.getAcademicYear(), feeHeads);
 
             // Get the created daily fee collection entry
             String selectSQL = """
@@ -603,86 +597,75 @@ public class DailyFeeCollectionService {
     }
 
     // Update fee tables STATUS only - DOES NOT DEDUCT AMOUNT (Fixes double deduction bug)
-    private void updateFeeTableAmountAndStatus(JdbcTemplate jdbc, String schoolId, String admissionNumber,
-                                               String academicYear, DailyFeeCollectionDTO.FeePaymentDetailDTO feePayment) {
+    private void updateFeeTableStatuses(JdbcTemplate jdbc, String schoolId, String admissionNumber,
+                                        String academicYear, Set<String> feeHeads) {
 
         try {
-            String feeHead = feePayment.getFeeHeading();
+            // 1. The TOTAL amount paid so far per fee head, read once for the whole bill
+            Map<String, Map<String, Object>> balances =
+                    feeBalanceService.getStudentBalances(jdbc, academicYear, admissionNumber, FeeBalanceService.DAILY);
+
+            // The consolidated demand tells which ledger holds each fee head
+            for (Map<String, Object> demand : feeDemandService.getStudentDemand(jdbc, academicYear, admissionNumber)) {
+                String feeHead = (String) demand.get("fee_heading");
+                if (!feeHeads.contains(feeHead)) {
+                    continue;
+                }
+                Map<String, Object> balance = balances.get(feeHead);
+                Double totalPaidSoFar = balance != null
+                        ? convertToDouble(balance.get("paid")) + convertToDouble(balance.get("concession"))
+                        : 0.0;
 
-            // 1. Get the TOTAL amount paid so far for this fee head (from history)
-            Double totalPaidSoFar = getTotalPaidConcessionForFeeHead(jdbc, schoolId, admissionNumber, academicYear, feeHead);
+                log.info("🔄 Checking status for {}: Total Paid So Far={}", feeHead, totalPaidSoFar);
 
-            log.info("🔄 Checking status for {}: Total Paid So Far={}", feeHead, totalPaidSoFar);
+                String feeType = (String) demand.get("fee_type");
+                String table = FeeDemandService.sourceTable(feeType, academicYear);
+                Double originalTotalAmount = convertToDouble(demand.get("amount"));
+                String currentStatus = (String) demand.get("status");
 
-            // Update all fee tables that might contain this fee head
-            String[] feeTables = {
-                    "tuition_fees_" + academicYear.replaceAll("[^a-zA-Z0-9]", "_"),
-                    "hostel_fees_" + academicYear.replaceAll("[^a-zA-Z0-9]", "_"),
-                    "transport_fees_" + academicYear.replaceAll("[^a-zA-Z0-9]", "_")
-            };
+                log.info("📊 Fee record in {} - Amount: {}, Status: {}", table, originalTotalAmount, currentStatus);
 
-            for (String table : feeTables) {
-                if (tableExists(jdbc, table)) {
-                    try {
-                        // 2. Get the ORIGINAL TOTAL AMOUNT from the fee table
-                        String getFeeSQL = String.format("""
-                            SELECT amount, status FROM %s 
-                            WHERE school_id = ? AND admission_number = ? AND fee_heading = ?
-                            LIMIT 1
-                        """, table);
+                if (originalTotalAmount != null && originalTotalAmount > 0) {
 
-                        Map<String, Object> feeRecord = jdbc.queryForMap(getFeeSQL, schoolId, admissionNumber, feeHead);
-                        Double originalTotalAmount = convertToDouble(feeRecord.get("amount"));
-                        String currentStatus = (String) feeRecord.get("status");
+                    // 3. Calculate Real Balance: Original Amount - Total Paid History
+                    Double realBalance = originalTotalAmount - totalPaidSoFar;
 
-                        log.info("📊 Fee record in {} - Amount: {}, Status: {}", table, originalTotalAmount, currentStatus);
+                    // Determine new status based on real balance
+                    String newStatus = "pending";
+                    if (realBalance <= 0.01) { // Allow small rounding differences
+                        newStatus = "settled";
+                    }
 
-                        if (originalTotalAmount != null && originalTotalAmount > 0) {
+                    // 4. Update ONLY the status. DO NOT update the 'amount' column.
+                    if (!newStatus.equalsIgnoreCase(currentStatus)) {
+                        String updateSQL = String.format("""
+                            UPDATE %s 
+                            SET status = ? 
+                            WHERE school_id = ? AND admission_number = ? AND fee_heading = ?
+                        """, table);
 
-                            // 3. Calculate Real Balance: Original Amount - Total Paid History
-                            Double realBalance = originalTotalAmount - totalPaidSoFar;
+                        int updatedRows = jdbc.update(updateSQL,
+                                newStatus,
+                                schoolId,
+                                admissionNumber,
+                                feeHead);
 
-                            // Determine new status based on real balance
-                            String newStatus = "pending";
-                            if (realBalance <= 0.01) { // Allow small rounding differences
-                                newStatus = "settled";
-                            }
+                        if (updatedRows > 0) {
+                            feeDemandService.updateStatus(jdbc, academicYear, admissionNumber, feeType, feeHead, newStatus);
 
-                            // 4. Update ONLY the status. DO NOT update the 'amount' column.
-                            if (!newStatus.equalsIgnoreCase(currentStatus)) {
-                                String updateSQL = String.format("""
-                                    UPDATE %s 
-                                    SET status = ? 
-                                    WHERE school_id = ? AND admission_number = ? AND fee_heading = ?
-                                """, table);
-
-                                int updatedRows = jdbc.update(updateSQL,
-                                        newStatus,
-                                        schoolId,
-                                        admissionNumber,
-                                        feeHead);
-
-                                if (updatedRows > 0) {
-                                    log.info("✅ Updated Status to '{}' for {} in table {} (Original: {}, Paid: {}, Bal: {})",
-                                            newStatus, feeHead, table, originalTotalAmount, totalPaidSoFar, realBalance);
-
-                                    // Update remaining balance reference
-                                    updateRemainingBalanceInDailyFeeCollection(jdbc, schoolId, admissionNumber,
-                                            academicYear, feeHead, realBalance);
-                                }
-                            }
-                        }
+                            log.info("✅ Updated Status to '{}' for {} in table {} (Original: {}, Paid: {}, Bal: {})",
+                                    newStatus, feeHead, table, originalTotalAmount, totalPaidSoFar, realBalance);
 
-                    } catch (Exception e) {
-                        // Fee head not found in this table, continue to next
-                        log.debug("Fee head {} not found in table {}: {}", feeHead, table, e.getMessage());
-                        continue;
+                            // Update remaining balance reference
+                            updateRemainingBalanceInDailyFeeCollection(jdbc, schoolId, admissionNumber,
+                                    academicYear, feeHead, realBalance);
+                        }
                     }
                 }
             }
 
         } catch (Exception e) {
-            log.error("❌ Could not update fee table status for {}: {}", feePayment.getFeeHeading(), e.getMessage());
+            log.error("❌ Could not update fee table status for {}: {}", feeHeads, e.getMessage());
             log.error("Stack trace:", e);
         }
     }
@@ -710,22 +693,6 @@ public class DailyFeeCollectionService {
         }
     }
 
-    // Get total paid and concession for a fee head
-    private Double getTotalPaidConcessionForFeeHead(JdbcTemplate jdbc, String schoolId, String admissionNumber,
-                                                    String academicYear, String feeHeading) {
-        String sql = """
-            SELECT COALESCE(SUM(paid_amount + concession_amount), 0) as total
-            FROM daily_fee_collection 
-            WHERE school_id = ? AND admission_number = ? AND academic_year = ? AND fee_head = ?
-        """;
-        try {
-            Double total = jdbc.queryForObject(sql, Double.class, schoolId, admissionNumber, academicYear, feeHeading);
-            return total != null ? total : 0.0;
-        } catch (Exception e) {
-            return 0.0;
-        }
-    }
-
     // Validate payment DTO
     private void validatePaymentDTO(DailyFeeCollectionDTO dto) {
         if (dto.getBillNumber() == null || dto.getBillNumber().trim().isEmpty()) {
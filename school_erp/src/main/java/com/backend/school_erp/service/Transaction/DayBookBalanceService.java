@@ -0,0 +1,265 @@
+package com.backend.school_erp.service.Transaction;
+
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
+import com.backend.school_erp.config.TenantTableCatalog;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Daily closing balances of the day books: one {@code day_book_balance} row per
+ * (book, school_id, academic_year, ledger, mode, balance_date) holding that day's credit and debit
+ * and the closing balance (credit - debit of every earlier day plus this one).
+ *
+ * Besides the row of each ledger and mode, every posting also goes to the rollups
+ * ({@link #ALL}, mode) and ({@link #ALL}, {@link #ALL}), so an opening balance is a single-row
+ * lookup of the latest rollup before the date instead of a SUM over the whole book. Modes are kept
+ * in lower case, the way the reports compare them.
+ *
+ * Every write to a day book goes through {@link #track}, which diffs the entries of the
+ * br_number before and after the write and posts the difference. A back-dated entry moves the
+ * closing of every later day as well. A book is rebuilt from history on first touch, and
+ * {@link #rebuild} can be run again at any time.
+ */
+@Service
+@Slf4j
+public class DayBookBalanceService {
+
+    public static final String DAY_BOOK = "day_book";
+    public static final String MISC_DAY_BOOK = "day_book_mfc";
+
+    // Ledger / mode of the rollup rows
+    public static final String ALL = "*";
+    public static final String CASH = "cash";
+    // Bucket of the postings without a mode
+    public static final String NO_MODE = "";
+
+    private static final String TABLE = "day_book_balance";
+
+    private static final String KEY = "book = ? AND school_id = ? AND academic_year = ? AND ledger = ? AND mode = ?";
+
+    private static final String INSERT_SQL = "INSERT INTO " + TABLE +
+            " (book, school_id, academic_year, ledger, mode, balance_date, credit, debit, closing) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final TenantSchemaMigrator schemaMigrator;
+    private final TenantTableCatalog tableCatalog;
+    private final TenantDataSourceRouter tenantDataSourceRouter;
+
+    public DayBookBalanceService(TenantSchemaMigrator schemaMigrator, TenantTableCatalog tableCatalog,
+                                 TenantDataSourceRouter tenantDataSourceRouter) {
+        this.schemaMigrator = schemaMigrator;
+        this.tableCatalog = tableCatalog;
+        this.tenantDataSourceRouter = tenantDataSourceRouter;
+    }
+
+    // --- Maintenance ---
+
+    /**
+     * Creates the snapshot table and builds the book's snapshots on first touch. Runs DDL, so call
+     * it before opening a transaction that writes to the book.
+     */
+    public void ensure(JdbcTemplate jdbc, String book) {
+        schemaMigrator.migrate(jdbc, "DayBookBalanceService", 1, () -> jdbc.execute("""
+            CREATE TABLE IF NOT EXISTS day_book_balance (
+                book VARCHAR(20) NOT NULL,
+                school_id VARCHAR(50) NOT NULL,
+                academic_year VARCHAR(50) NOT NULL,
+                ledger VARCHAR(255) NOT NULL,
+                mode VARCHAR(50) NOT NULL,
+                balance_date DATE NOT NULL,
+                credit DECIMAL(14,2) NOT NULL DEFAULT 0,
+                debit DECIMAL(14,2) NOT NULL DEFAULT 0,
+                closing DECIMAL(14,2) NOT NULL DEFAULT 0,
+                PRIMARY KEY (book, school_id, academic_year, ledger, mode, balance_date)
+            )
+        """));
+
+        schemaMigrator.migrate(jdbc, "DayBookBalanceService:" + book, 1, () -> rebuild(jdbc, book));
+    }
+
+    /**
+     * Recomputes every snapshot of a book from its entries.
+     */
+    public void rebuild(JdbcTemplate jdbc, String book) {
+        jdbc.update("DELETE FROM " + TABLE + " WHERE book = ?", book);
+        if (!tableCatalog.tableExists(jdbc, book)) {
+            // Nothing written yet, every entry from now on is tracked
+            return;
+        }
+
+        Map<Key, TreeMap<LocalDate, Movement>> days = new TreeMap<>();
+        jdbc.query("SELECT school_id, academic_year, DATE(br_date), COALESCE(ledger, ''), COALESCE(LOWER(mode), ''), " +
+                "COALESCE(SUM(credit), 0), COALESCE(SUM(debit), 0) FROM " + book +
+                " GROUP BY school_id, academic_year, DATE(br_date), COALESCE(ledger, ''), COALESCE(LOWER(mode), '')", rs -> {
+            String schoolId = rs.getString(1);
+            String year = rs.getString(2);
+            LocalDate date = rs.getDate(3).toLocalDate();
+            Movement movement = new Movement(rs.getBigDecimal(6), rs.getBigDecimal(7));
+            for (Key key : keysOf(schoolId, year, rs.getString(4), rs.getString(5))) {
+                days.computeIfAbsent(key, k -> new TreeMap<>()).merge(date, movement, Movement::plus);
+            }
+        });
+
+        List<Object[]> rows = new ArrayList<>();
+        days.forEach((key, movements) -> {
+            BigDecimal closing = BigDecimal.ZERO;
+            for (Map.Entry<LocalDate, Movement> day : movements.entrySet()) {
+                Movement movement = day.getValue();
+                closing = closing.add(movement.net());
+                rows.add(new Object[]{book, key.schoolId(), key.academicYear(), key.ledger(), key.mode(),
+                        Date.valueOf(day.getKey()), movement.credit(), movement.debit(), closing});
+            }
+        });
+        jdbc.batchUpdate(INSERT_SQL, rows);
+        log.info("📊 Rebuilt {} balances: {} rows", book, rows.size());
+    }
+
+    // --- Posting ---
+
+    /**
+     * Runs a write to the entries of one br_number and posts what it changed, in one transaction
+     * on the school's database (joining the caller's, if any).
+     */
+    public void track(JdbcTemplate jdbc, String book, String schoolId, String brNumber, Runnable write) {
+        ensure(jdbc, book);
+        tenantDataSourceRouter.getTransactionTemplate(schoolId).executeWithoutResult(status -> {
+            Map<Posting, Movement> before = entriesOf(jdbc, book, brNumber);
+            write.run();
+            Map<Posting, Movement> after = entriesOf(jdbc, book, brNumber);
+
+            Map<Posting, Movement> changes = new HashMap<>(after);
+            before.forEach((posting, movement) -> changes.merge(posting, movement.negate(), Movement::plus));
+
+            // Sorted so concurrent writers lock snapshot rows in the same order
+            Map<Key, TreeMap<LocalDate, Movement>> movements = new TreeMap<>();
+            changes.forEach((posting, movement) -> {
+                if (!movement.isZero()) {
+                    for (Key key : keysOf(posting.schoolId(), posting.academicYear(), posting.ledger(), posting.mode())) {
+                        movements.computeIfAbsent(key, k -> new TreeMap<>()).merge(posting.date(), movement, Movement::plus);
+                    }
+                }
+            });
+            movements.forEach((key, days) -> days.forEach((date, movement) -> post(jdbc, book, key, date, movement)));
+        });
+    }
+
+    // Adds a movement to the key's day, and its net to the closing of every later day
+    private void post(JdbcTemplate jdbc, String book, Key key, LocalDate date, Movement movement) {
+        if (movement.isZero()) {
+            // e.g. the rollup of an entry that only moved between ledgers
+            return;
+        }
+        Date day = Date.valueOf(date);
+        String addToDay = "UPDATE " + TABLE + " SET credit = credit + ?, debit = debit + ?, closing = closing + ? " +
+                "WHERE " + KEY + " AND balance_date = ?";
+        Object[] addToDayParams = {movement.credit(), movement.debit(), movement.net(),
+                book, key.schoolId(), key.academicYear(), key.ledger(), key.mode(), day};
+
+        if (jdbc.update(addToDay, addToDayParams) == 0) {
+            BigDecimal closing = closingBefore(jdbc, book, key, date).add(movement.net());
+            try {
+                jdbc.update(INSERT_SQL, book, key.schoolId(), key.academicYear(), key.ledger(), key.mode(),
+                        day, movement.credit(), movement.debit(), closing);
+            } catch (DuplicateKeyException e) {
+                // Another writer opened the day first
+                jdbc.update(addToDay, addToDayParams);
+            }
+        }
+
+        if (movement.net().signum() != 0) {
+            jdbc.update("UPDATE " + TABLE + " SET closing = closing + ? WHERE " + KEY + " AND balance_date > ?",
+                    movement.net(), book, key.schoolId(), key.academicYear(), key.ledger(), key.mode(), day);
+        }
+    }
+
+    // --- Lookups ---
+
+    /**
+     * Closing balance of the last day before {@code date} with any entry, across all ledgers of
+     * {@code mode} ({@link #ALL} for every mode); 0 when there is none.
+     */
+    public double closingBefore(JdbcTemplate jdbc, String book, String schoolId, String academicYear, String mode, LocalDate date) {
+        ensure(jdbc, book);
+        return closingBefore(jdbc, book, new Key(schoolId, academicYear, ALL, mode), date).doubleValue();
+    }
+
+    /**
+     * Opening balance of {@code date}: everything posted to the book before it.
+     */
+    public double openingBalance(JdbcTemplate jdbc, String book, String schoolId, String academicYear, LocalDate date) {
+        return closingBefore(jdbc, book, schoolId, academicYear, ALL, date);
+    }
+
+    /**
+     * Opening balance of {@code date} for every mode except cash. Postings without a mode are
+     * left out too, as the bank ledger's {@code LOWER(mode) NOT IN ('cash')} drops them.
+     */
+    public double bankOpeningBalance(JdbcTemplate jdbc, String book, String schoolId, String academicYear, LocalDate date) {
+        return closingBefore(jdbc, book, schoolId, academicYear, ALL, date)
+                - closingBefore(jdbc, book, schoolId, academicYear, CASH, date)
+                - closingBefore(jdbc, book, schoolId, academicYear, NO_MODE, date);
+    }
+
+    private BigDecimal closingBefore(JdbcTemplate jdbc, String book, Key key, LocalDate date) {
+        List<BigDecimal> closing = jdbc.queryForList("SELECT closing FROM " + TABLE + " WHERE " + KEY +
+                        " AND balance_date < ? ORDER BY balance_date DESC LIMIT 1", BigDecimal.class,
+                book, key.schoolId(), key.academicYear(), key.ledger(), key.mode(), Date.valueOf(date));
+        return closing.isEmpty() ? BigDecimal.ZERO : closing.get(0);
+    }
+
+    // --- Helpers ---
+
+    private Map<Posting, Movement> entriesOf(JdbcTemplate jdbc, String book, String brNumber) {
+        Map<Posting, Movement> entries = new HashMap<>();
+        jdbc.query("SELECT school_id, academic_year, DATE(br_date), COALESCE(ledger, ''), COALESCE(LOWER(mode), ''), " +
+                "COALESCE(credit, 0), COALESCE(debit, 0) FROM " + book + " WHERE br_number = ?", rs -> {
+            Posting posting = new Posting(rs.getString(1), rs.getString(2), rs.getDate(3).toLocalDate(),
+                    rs.getString(4), rs.getString(5));
+            entries.merge(posting, new Movement(rs.getBigDecimal(6), rs.getBigDecimal(7)), Movement::plus);
+        }, brNumber);
+        return entries;
+    }
+
+    // The entry's own row and the two rollups it counts towards
+    private static List<Key> keysOf(String schoolId, String academicYear, String ledger, String mode) {
+        return List.of(new Key(schoolId, academicYear, ledger, mode),
+                new Key(schoolId, academicYear, ALL, mode),
+                new Key(schoolId, academicYear, ALL, ALL));
+    }
+
+    private record Key(String schoolId, String academicYear, String ledger, String mode) implements Comparable<Key> {
+        @Override
+        public int compareTo(Key other) {
+            return Comparator.comparing(Key::schoolId).thenComparing(Key::academicYear)
+                    .thenComparing(Key::ledger).thenComparing(Key::mode).compare(this, other);
+        }
+    }
+
+    private record Posting(String schoolId, String academicYear, LocalDate date, String ledger, String mode) {
+    }
+
+    private record Movement(BigDecimal credit, BigDecimal debit) {
+        Movement plus(Movement other) {
+            return new Movement(credit.add(other.credit), debit.add(other.debit));
+        }
+
+        Movement negate() {
+            return new Movement(credit.negate(), debit.negate());
+        }
+
+        BigDecimal net() {
+            return credit.subtract(debit);
+        }
+
+        boolean isZero() {
+            return credit.signum() == 0 && debit.signum() == 0;
+        }
+    }
+}
@@ -2,12 +2,10 @@ package com.backend.school_erp.service.Transaction;
 
 import com.backend.school_erp.DTO.Transaction.DailyFeeCollectionDTO;
 import com.backend.school_erp.DTO.Transaction.MiscellaneousFeeCollectionResponseDTO;
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
 import com.backend.school_erp.entity.Transaction.DailyFeeCollection;
 import com.backend.school_erp.entity.Transaction.MiscellaneousFeeCollection;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -22,44 +20,26 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @Slf4j
 public class DuplicateBillService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
+    private final TenantDataSourceRouter tenantDataSourceRouter;
+    private final FeeDemandService feeDemandService;
+
     private final ObjectMapper objectMapper;
 
-    public DuplicateBillService() {
+    public DuplicateBillService(TenantDataSourceRouter tenantDataSourceRouter, FeeDemandService feeDemandService) {
+        this.tenantDataSourceRouter = tenantDataSourceRouter;
+        this.feeDemandService = feeDemandService;
         this.objectMapper = new ObjectMapper();
     }
 
     // --- DataSource Management ---
 
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            log.info("🔗 Creating HikariCP DataSource for school: {}", id);
-            HikariConfig config = new HikariConfig();
-
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-
-            config.setMaximumPoolSize(10);
-            config.setMinimumIdle(2);
-            config.setIdleTimeout(30000);
-            config.setMaxLifetime(1800000);
-            config.setConnectionTimeout(10000);
-            config.setLeakDetectionThreshold(10000);
-
-            return new HikariDataSource(config);
-        });
-    }
-
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     // --- Main Search Methods ---
@@ -198,31 +178,7 @@ public class DuplicateBillService {
         Map<String, Object> result = new HashMap<>();
         try {
             // Get total fees for the student
-            String feesSql = """
-                SELECT 
-                    COALESCE(SUM(
-                        COALESCE(tf.amount, 0) + 
-                        COALESCE(hf.amount, 0) + 
-                        COALESCE(trf.amount, 0)
-                    ), 0) as total_fees
-                FROM (
-                    SELECT amount FROM tuition_fees_? WHERE admission_number = ? AND school_id = ?
-                    UNION ALL
-                    SELECT amount FROM hostel_fees_? WHERE admission_number = ? AND school_id = ?
-                    UNION ALL
-                    SELECT amount FROM transport_fees_? WHERE admission_number = ? AND school_id = ?
-                ) AS combined_fees
-            """;
-
-            // Replace year placeholders
-            String yearSuffix = academicYear.replaceAll("[^a-zA-Z0-9]", "_");
-            feesSql = feesSql.replace("?", yearSuffix);
-
-            Double totalFees = jdbc.queryForObject(feesSql, Double.class,
-                    admissionNumber, schoolId,
-                    admissionNumber, schoolId,
-                    admissionNumber, schoolId
-            );
+            Double totalFees = feeDemandService.getStudentTotal(jdbc, academicYear, admissionNumber);
 
             // Get total paid amount (excluding current bill)
             String paidSql = """
@@ -0,0 +1,354 @@
+package com.backend.school_erp.service.Transaction;
+
+import com.backend.school_erp.config.TenantSchemaMigrator;
+import com.backend.school_erp.config.TenantTableCatalog;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Running fee balance per student: one {@code fee_balance} row per
+ * (academic_year, admission_number, ledger, fee_head) with demand, paid, concession and remaining.
+ *
+ * Ledgers keep the collections apart the way the counters already do:
+ * {@link #DAILY} (daily_fee_collection against the consolidated fee demand),
+ * {@link #MISC} (miscellaneous_fee_collection against individual_fees) and
+ * {@link #BUS} (bus_bill_entries, paid and concession only).
+ *
+ * Payments add to paid/concession in the same call that records them, demand is pushed by
+ * {@link FeeDemandService} whenever a student's fee rows change, and {@code remaining} is a
+ * generated column. Counter lookups and balance lists read these rows instead of grouping the
+ * whole collection history. A year is rebuilt from history on first touch, and
+ * {@link #rebuildYear} can be run again at any time.
+ *
+ * Callers must call {@link #ensureYear} before inserting into a collection table, so the first
+ * rebuild does not count the new payment twice.
+ */
+@Service
+@Slf4j
+public class FeeBalanceService {
+
+    public static final String DAILY = "DAILY";
+    public static final String MISC = "MISC";
+    public static final String BUS = "BUS";
+
+    private static final String TABLE = "fee_balance";
+
+    private static final String RECORD_PAYMENT_SQL = "INSERT INTO " + TABLE +
+            " (academic_year, admission_number, ledger, fee_head, paid, concession, standard, section, last_narrative) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE paid = paid + VALUES(paid), concession = concession + VALUES(concession), " +
+            "standard = COALESCE(standard, VALUES(standard)), section = COALESCE(section, VALUES(section)), " +
+            "last_narrative = COALESCE(NULLIF(VALUES(last_narrative), ''), last_narrative)";
+
+    private final TenantSchemaMigrator schemaMigrator;
+    private final TenantTableCatalog tableCatalog;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public FeeBalanceService(TenantSchemaMigrator schemaMigrator, TenantTableCatalog tableCatalog) {
+        this.schemaMigrator = schemaMigrator;
+        this.tableCatalog = tableCatalog;
+    }
+
+    // --- Maintenance ---
+
+    public void ensureYear(JdbcTemplate jdbc, String academicYear) {
+        schemaMigrator.migrate(jdbc, "FeeBalanceService", 1, () -> jdbc.execute("""
+            CREATE TABLE IF NOT EXISTS fee_balance (
+                academic_year VARCHAR(50) NOT NULL,
+                admission_number VARCHAR(100) NOT NULL,
+                ledger VARCHAR(10) NOT NULL,
+                fee_head VARCHAR(255) NOT NULL,
+                demand DECIMAL(12,2) NOT NULL DEFAULT 0,
+                paid DECIMAL(12,2) NOT NULL DEFAULT 0,
+                concession DECIMAL(12,2) NOT NULL DEFAULT 0,
+                remaining DECIMAL(12,2) AS (GREATEST(demand - paid - concession, 0)) STORED,
+                standard VARCHAR(50),
+                section VARCHAR(50),
+                last_narrative TEXT,
+                updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+                PRIMARY KEY (academic_year, admission_number, ledger, fee_head),
+                INDEX idx_year_ledger_class (academic_year, ledger, standard, section)
+            )
+        """));
+
+        String year = FeeDemandService.yearKey(academicYear);
+        schemaMigrator.migrate(jdbc, "FeeBalanceService:" + year, 1, () -> rebuildYear(jdbc, academicYear));
+    }
+
+    /**
+     * Recomputes a whole year from fee_demand, individual_fees and the three collection tables.
+     */
+    public void rebuildYear(JdbcTemplate jdbc, String academicYear) {
+        String year = FeeDemandService.yearKey(academicYear);
+        jdbc.update("DELETE FROM " + TABLE + " WHERE academic_year = ?", year);
+
+        syncDemand(jdbc, academicYear, (Collection<String>) null);
+
+        syncMiscDemand(jdbc, academicYear, null);
+
+        addCollectionHistory(jdbc, "daily_fee_collection", DAILY, academicYear);
+        addCollectionHistory(jdbc, "miscellaneous_fee_collection", MISC, academicYear);
+        addBusHistory(jdbc, academicYear);
+
+        Integer rows = jdbc.queryForObject("SELECT COUNT(*) FROM " + TABLE + " WHERE academic_year = ?", Integer.class, year);
+        log.info("📊 Rebuilt fee balances for {}: {} rows", year, rows);
+    }
+
+    /**
+     * Copies the consolidated demand of one student (or of the whole year when
+     * {@code admissionNumber} is null) into the DAILY ledger.
+     */
+    public void syncDemand(JdbcTemplate jdbc, String academicYear, String admissionNumber) {
+        syncDemand(jdbc, academicYear, admissionNumber != null ? List.of(admissionNumber) : null);
+    }
+
+    /**
+     * {@link #syncDemand(JdbcTemplate, String, String)} for a set of students, or the whole year when null.
+     */
+    public void syncDemand(JdbcTemplate jdbc, String academicYear, Collection<String> admissionNumbers) {
+        if (!tableCatalog.tableExists(jdbc, TABLE) || !tableCatalog.tableExists(jdbc, "fee_demand")) {
+            // Picked up by the other side's rebuild
+            return;
+        }
+        String year = FeeDemandService.yearKey(academicYear);
+        List<Object> params = new ArrayList<>();
+        params.add(year);
+        String studentFilter = "";
+        if (admissionNumbers != null) {
+            studentFilter = " AND admission_number IN (" + String.join(", ", Collections.nCopies(admissionNumbers.size(), "?")) + ")";
+            params.addAll(admissionNumbers);
+        }
+
+        jdbc.update("INSERT INTO " + TABLE + " (academic_year, admission_number, ledger, fee_head, demand, standard, section) " +
+                "SELECT academic_year, admission_number, 'DAILY', fee_heading, SUM(amount), MAX(standard), MAX(section) " +
+                "FROM fee_demand WHERE academic_year = ?" + studentFilter +
+                " GROUP BY academic_year, admission_number, fee_heading " +
+                "ON DUPLICATE KEY UPDATE demand = VALUES(demand), standard = VALUES(standard), section = VALUES(section)",
+                params.toArray());
+
+        // Heads that were removed from the student's fees
+        List<Object> staleParams = new ArrayList<>(params);
+        staleParams.addAll(params);
+        jdbc.update("UPDATE " + TABLE + " b SET b.demand = 0 " +
+                "WHERE b.academic_year = ? AND b.ledger = 'DAILY' AND b.demand <> 0" + studentFilter.replace("admission_number", "b.admission_number") +
+                " AND NOT EXISTS (SELECT 1 FROM fee_demand d WHERE d.academic_year = ?" + studentFilter.replace("admission_number", "d.admission_number") +
+                " AND d.admission_number = b.admission_number AND d.fee_heading = b.fee_head)",
+                staleParams.toArray());
+    }
+
+    /**
+     * One collected fee head of a bill.
+     */
+    public record Posting(String feeHead, double paid, double concession) {}
+
+    /**
+     * Adds one collected fee head to the student's balance.
+     */
+    public void recordPayment(JdbcTemplate jdbc, String academicYear, String admissionNumber, String ledger,
+                              String feeHead, double paid, double concession,
+                              String standard, String section, String narrative) {
+        jdbc.update(RECORD_PAYMENT_SQL, FeeDemandService.yearKey(academicYear), admissionNumber, ledger, feeHead,
+                paid, concession, standard, section, narrative);
+    }
+
+    /**
+     * Adds every fee head of a bill to the student's balance in one batch.
+     */
+    public void recordPayments(JdbcTemplate jdbc, String academicYear, String admissionNumber, String ledger,
+                               List<Posting> postings, String standard, String section, String narrative) {
+        String year = FeeDemandService.yearKey(academicYear);
+        List<Object[]> batchArgs = new ArrayList<>();
+        for (Posting posting : postings) {
+            batchArgs.add(new Object[]{year, admissionNumber, ledger, posting.feeHead(),
+                    posting.paid(), posting.concession(), standard, section, narrative});
+        }
+        if (!batchArgs.isEmpty()) {
+            jdbc.batchUpdate(RECORD_PAYMENT_SQL, batchArgs);
+        }
+    }
+
+    /**
+     * Recomputes the MISC ledger demand of one student (or of the whole year when
+     * {@code admissionNumber} is null) from individual_fees.
+     */
+    public void syncMiscDemand(JdbcTemplate jdbc, String academicYear, String admissionNumber) {
+        if (!tableCatalog.tableExists(jdbc, TABLE) || !tableCatalog.tableExists(jdbc, "individual_fees")) {
+            return;
+        }
+        String year = FeeDemandService.yearKey(academicYear);
+        String studentFilter = admissionNumber != null ? " AND admission_number = ?" : "";
+
+        List<Object> resetParams = new ArrayList<>(List.of(year));
+        if (admissionNumber != null) resetParams.add(admissionNumber);
+        jdbc.update("UPDATE " + TABLE + " SET demand = 0 WHERE academic_year = ? AND ledger = 'MISC'" + studentFilter,
+                resetParams.toArray());
+
+        List<Object> params = new ArrayList<>(List.of(year, academicYear));
+        if (admissionNumber != null) params.add(admissionNumber);
+        jdbc.update("INSERT INTO " + TABLE + " (academic_year, admission_number, ledger, fee_head, demand) " +
+                "SELECT ?, admission_number, 'MISC', fee_head, SUM(amount) FROM individual_fees " +
+                "WHERE academic_year = ? AND admission_number IS NOT NULL AND fee_head IS NOT NULL" + studentFilter +
+                " GROUP BY admission_number, fee_head " +
+                "ON DUPLICATE KEY UPDATE demand = VALUES(demand)", params.toArray());
+    }
+
+    /**
+     * Bus bill payments as (feeHead, paid, concession) entries; reverses them when {@code sign} is -1.
+     */
+    public void recordBusPayments(JdbcTemplate jdbc, String academicYear, String admissionNumber,
+                                  List<Map<String, Object>> busFeePayments, int sign,
+                                  String standard, String section, String narrative) {
+        if (busFeePayments == null) {
+            return;
+        }
+        for (Map<String, Object> payment : busFeePayments) {
+            Object feeHead = payment.get("feeHead");
+            if (feeHead == null) {
+                continue;
+            }
+            recordPayment(jdbc, academicYear, admissionNumber, BUS, feeHead.toString(),
+                    sign * toDouble(payment.get("paidAmount")), sign * toDouble(payment.get("concessionAmount")),
+                    standard, section, narrative);
+        }
+    }
+
+    private void addCollectionHistory(JdbcTemplate jdbc, String collectionTable, String ledger, String academicYear) {
+        if (!tableCatalog.tableExists(jdbc, collectionTable)) {
+            return;
+        }
+        jdbc.update("INSERT INTO " + TABLE + " (academic_year, admission_number, ledger, fee_head, paid, concession, standard, section, last_narrative) " +
+                "SELECT ?, admission_number, ?, fee_head, SUM(COALESCE(paid_amount, 0)), SUM(COALESCE(concession_amount, 0)), " +
+                "MAX(standard), MAX(section), MAX(transaction_narrative) FROM " + collectionTable +
+                " WHERE academic_year = ? GROUP BY admission_number, fee_head " +
+                "ON DUPLICATE KEY UPDATE paid = VALUES(paid), concession = VALUES(concession), " +
+                "standard = COALESCE(standard, VALUES(standard)), section = COALESCE(section, VALUES(section)), " +
+                "last_narrative = VALUES(last_narrative)",
+                FeeDemandService.yearKey(academicYear), ledger, academicYear);
+    }
+
+    private void addBusHistory(JdbcTemplate jdbc, String academicYear) {
+        if (!tableCatalog.tableExists(jdbc, "bus_bill_entries")) {
+            return;
+        }
+        List<Map<String, Object>> bills = jdbc.queryForList(
+                "SELECT admission_number, standard, section, transaction_narrative, bus_fee_payments_json " +
+                        "FROM bus_bill_entries WHERE academic_year = ?", academicYear);
+        for (Map<String, Object> bill : bills) {
+            String json = (String) bill.get("bus_fee_payments_json");
+            if (json == null || json.isBlank()) {
+                continue;
+            }
+            String admissionNumber = (String) bill.get("admission_number");
+            try {
+                List<Map<String, Object>> payments = objectMapper.readValue(json,
+                        objectMapper.getTypeFactory().constructCollectionType(List.class, Map.class));
+                recordBusPayments(jdbc, academicYear, admissionNumber, payments, 1,
+                        (String) bill.get("standard"), (String) bill.get("section"), (String) bill.get("transaction_narrative"));
+            } catch (Exception e) {
+                log.warn("Skipping unreadable bus bill payments for {}: {}", admissionNumber, e.getMessage());
+            }
+        }
+    }
+
+    // --- Reads ---
+
+    /**
+     * A student's rows of one ledger keyed by fee head: demand, paid, concession, remaining.
+     */
+    public Map<String, Map<String, Object>> getStudentBalances(JdbcTemplate jdbc, String academicYear,
+                                                               String admissionNumber, String ledger) {
+        ensureYear(jdbc, academicYear);
+        Map<String, Map<String, Object>> balances = new LinkedHashMap<>();
+        for (Map<String, Object> row : jdbc.queryForList(
+                "SELECT fee_head, demand, paid, concession, remaining FROM " + TABLE +
+                        " WHERE academic_year = ? AND admission_number = ? AND ledger = ? ORDER BY fee_head",
+                FeeDemandService.yearKey(academicYear), admissionNumber, ledger)) {
+            balances.put((String) row.get("fee_head"), row);
+        }
+        return balances;
+    }
+
+    /**
+     * All rows of one ledger for a year, optionally limited to one fee head.
+     */
+    public List<Map<String, Object>> getYearBalances(JdbcTemplate jdbc, String academicYear, String ledger, String feeHead) {
+        ensureYear(jdbc, academicYear);
+        List<Object> params = new ArrayList<>(List.of(FeeDemandService.yearKey(academicYear), ledger));
+        String sql = "SELECT admission_number, fee_head, demand, paid, concession, remaining, standard, section, last_narrative FROM " + TABLE +
+                " WHERE academic_year = ? AND ledger = ?";
+        if (feeHead != null && !feeHead.isEmpty()) {
+            sql += " AND fee_head = ?";
+            params.add(feeHead);
+        }
+        return jdbc.queryForList(sql, params.toArray());
+    }
+
+    /**
+     * Fee heads of the given students, DAILY and MISC ledgers together the way the TC profile
+     * adds them up: admission_number, fee_head, demand, paid, concession and balance.
+     */
+    public List<Map<String, Object>> getHeadBalances(JdbcTemplate jdbc, String academicYear, Collection<String> admissionNumbers) {
+        return headBalances(jdbc, academicYear, admissionNumbers, "");
+    }
+
+    /**
+     * {@link #getHeadBalances} limited to the heads with more than 50 paise left.
+     */
+    public List<Map<String, Object>> getPendingHeads(JdbcTemplate jdbc, String academicYear, Collection<String> admissionNumbers) {
+        return headBalances(jdbc, academicYear, admissionNumbers, " HAVING SUM(demand) - SUM(paid) - SUM(concession) > 0.5");
+    }
+
+    /**
+     * Paid plus concession of the given students, every ledger together, keyed by admission
+     * number and then fee head.
+     */
+    public Map<String, Map<String, Double>> getCollected(JdbcTemplate jdbc, String academicYear, Collection<String> admissionNumbers) {
+        Map<String, Map<String, Double>> collected = new HashMap<>();
+        if (admissionNumbers.isEmpty()) {
+            return collected;
+        }
+        ensureYear(jdbc, academicYear);
+        List<Object> params = new ArrayList<>();
+        params.add(FeeDemandService.yearKey(academicYear));
+        params.addAll(admissionNumbers);
+        jdbc.query("SELECT admission_number, fee_head, SUM(paid) + SUM(concession) AS collected FROM " + TABLE +
+                " WHERE academic_year = ?" +
+                " AND admission_number IN (" + String.join(", ", Collections.nCopies(admissionNumbers.size(), "?")) + ")" +
+                " GROUP BY admission_number, fee_head", rs -> {
+            collected.computeIfAbsent(rs.getString("admission_number"), k -> new HashMap<>())
+                    .put(rs.getString("fee_head"), rs.getDouble("collected"));
+        }, params.toArray());
+        return collected;
+    }
+
+    private List<Map<String, Object>> headBalances(JdbcTemplate jdbc, String academicYear, Collection<String> admissionNumbers, String having) {
+        if (admissionNumbers.isEmpty()) {
+            return List.of();
+        }
+        ensureYear(jdbc, academicYear);
+        List<Object> params = new ArrayList<>();
+        params.add(FeeDemandService.yearKey(academicYear));
+        params.addAll(admissionNumbers);
+        return jdbc.queryForList("SELECT admission_number, fee_head, SUM(demand) AS demand, SUM(paid) AS paid, " +
+                "SUM(concession) AS concession, SUM(demand) - SUM(paid) - SUM(concession) AS balance FROM " + TABLE +
+                " WHERE academic_year = ? AND ledger IN ('" + DAILY + "', '" + MISC + "')" +
+                " AND admission_number IN (" + String.join(", ", Collections.nCopies(admissionNumbers.size(), "?")) + ")" +
+                " GROUP BY admission_number, fee_head" + having +
+                " ORDER BY admission_number, fee_head", params.toArray());
+    }
+
+    private double toDouble(Object value) {
+        if (value == null) {
+            return 0.0;
+        }
+        try {
+            return Double.parseDouble(value.toString());
+        } catch (NumberFormatException e) {
+            return 0.0;
+        }
+    }
+}
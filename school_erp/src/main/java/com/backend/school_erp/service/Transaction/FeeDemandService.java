@@ -0,0 +1,240 @@
+package com.backend.school_erp.service.Transaction;
+
+import com.backend.school_erp.config.TenantSchemaMigrator;
+import com.backend.school_erp.config.TenantTableCatalog;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Consolidated fee demand for a school: one {@code fee_demand} row per
+ * (academic_year, admission_number, fee_type, fee_heading).
+ *
+ * The per-year {@code tuition_fees_<year>}, {@code hostel_fees_<year>} and
+ * {@code transport_fees_<year>} tables stay the place fees are written to; this table is a
+ * projection of them. A year is backfilled on first touch, and every writer of those tables
+ * calls {@link #refreshStudent} afterwards, so readers get a student's or a class's demand
+ * with one indexed query instead of three table probes and three queries. Changes are pushed on
+ * to the DAILY ledger of {@link FeeBalanceService}.
+ *
+ * {@code academic_year} holds the sanitized year used in the per-year table names
+ * (e.g. {@code 2025_2026}), so "2025-2026" and "2025_2026" resolve to the same rows.
+ */
+@Service
+@Slf4j
+public class FeeDemandService {
+
+    public static final String TUITION = "Tuition";
+    public static final String HOSTEL = "Hostel";
+    public static final String TRANSPORT = "Transport";
+
+    private static final String TABLE = "fee_demand";
+    private static final String[] FEE_TYPES = {TUITION, HOSTEL, TRANSPORT};
+
+    private final TenantSchemaMigrator schemaMigrator;
+    private final TenantTableCatalog tableCatalog;
+    private final FeeBalanceService feeBalanceService;
+
+    public FeeDemandService(TenantSchemaMigrator schemaMigrator, TenantTableCatalog tableCatalog,
+                            FeeBalanceService feeBalanceService) {
+        this.schemaMigrator = schemaMigrator;
+        this.tableCatalog = tableCatalog;
+        this.feeBalanceService = feeBalanceService;
+    }
+
+    public static String yearKey(String academicYear) {
+        return academicYear.replaceAll("[^a-zA-Z0-9]", "_");
+    }
+
+    public static String sourceTable(String feeType, String academicYear) {
+        return feeType.toLowerCase() + "_fees_" + yearKey(academicYear);
+    }
+
+    public static boolean isTransport(String feeType) {
+        return TRANSPORT.equals(feeType);
+    }
+
+    // --- Maintenance ---
+
+    /**
+     * Creates the table and backfills {@code academicYear} from the per-year fee tables the first time.
+     */
+    public void ensureYear(JdbcTemplate jdbc, String academicYear) {
+        schemaMigrator.migrate(jdbc, "FeeDemandService", 1, () -> jdbc.execute("""
+            CREATE TABLE IF NOT EXISTS fee_demand (
+                academic_year VARCHAR(50) NOT NULL,
+                admission_number VARCHAR(100) NOT NULL,
+                fee_type VARCHAR(20) NOT NULL,
+                fee_heading VARCHAR(255) NOT NULL,
+                account_head VARCHAR(255),
+                amount DECIMAL(12,2) NOT NULL DEFAULT 0,
+                status VARCHAR(20) DEFAULT 'pending',
+                standard VARCHAR(50),
+                section VARCHAR(50),
+                updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+                PRIMARY KEY (academic_year, admission_number, fee_type, fee_heading),
+                INDEX idx_year_class (academic_year, standard, section, fee_type, fee_heading, amount),
+                INDEX idx_year_head (academic_year, fee_heading, fee_type)
+            )
+        """));
+
+        String year = yearKey(academicYear);
+        schemaMigrator.migrate(jdbc, "FeeDemandService:" + year, 1, () -> rebuildYear(jdbc, academicYear));
+    }
+
+    /**
+     * Re-projects every student of a year from the per-year fee tables.
+     */
+    public void rebuildYear(JdbcTemplate jdbc, String academicYear) {
+        String year = yearKey(academicYear);
+        jdbc.update("DELETE FROM " + TABLE + " WHERE academic_year = ?", year);
+        int rows = 0;
+        for (String feeType : FEE_TYPES) {
+            rows += project(jdbc, feeType, academicYear, null);
+        }
+        feeBalanceService.syncDemand(jdbc, academicYear, (Collection<String>) null);
+        log.info("📊 Rebuilt fee demand for {}: {} rows", year, rows);
+    }
+
+    /**
+     * Re-projects one student's demand. Call after inserting, updating or deleting rows in the
+     * student's per-year fee tables.
+     */
+    public void refreshStudent(JdbcTemplate jdbc, String academicYear, String admissionNumber) {
+        refreshStudents(jdbc, academicYear, List.of(admissionNumber));
+    }
+
+    /**
+     * {@link #refreshStudent} for many students at once, with one statement per fee type
+     * instead of one per student, e.g. after promoting a class.
+     */
+    public void refreshStudents(JdbcTemplate jdbc, String academicYear, Collection<String> admissionNumbers) {
+        if (admissionNumbers.isEmpty()) {
+            return;
+        }
+        ensureYear(jdbc, academicYear);
+        List<Object> params = new ArrayList<>();
+        params.add(yearKey(academicYear));
+        jdbc.update("DELETE FROM " + TABLE + " WHERE academic_year = ?" + studentFilter(admissionNumbers, params),
+                params.toArray());
+        for (String feeType : FEE_TYPES) {
+            project(jdbc, feeType, academicYear, admissionNumbers);
+        }
+        feeBalanceService.syncDemand(jdbc, academicYear, admissionNumbers);
+    }
+
+    public void updateStatus(JdbcTemplate jdbc, String academicYear, String admissionNumber,
+                             String feeType, String feeHeading, String status) {
+        jdbc.update("UPDATE " + TABLE + " SET status = ? " +
+                        "WHERE academic_year = ? AND admission_number = ? AND fee_type = ? AND fee_heading = ?",
+                status, yearKey(academicYear), admissionNumber, feeType, feeHeading);
+    }
+
+    private int project(JdbcTemplate jdbc, String feeType, String academicYear, Collection<String> admissionNumbers) {
+        String source = sourceTable(feeType, academicYear);
+        if (!tableCatalog.tableExists(jdbc, source)) {
+            return 0;
+        }
+
+        List<Object> params = new ArrayList<>();
+        params.add(yearKey(academicYear));
+        params.add(feeType);
+        String sql = "INSERT INTO " + TABLE + " (academic_year, admission_number, fee_type, fee_heading, account_head, amount, status, standard, section) " +
+                "SELECT ?, admission_number, ?, fee_heading, MAX(account_head), COALESCE(SUM(amount), 0), " +
+                "CASE WHEN SUM(status IS NULL OR status != 'settled') > 0 THEN 'pending' ELSE 'settled' END, " +
+                "MAX(standard), MAX(section) FROM " + source +
+                " WHERE admission_number IS NOT NULL AND fee_heading IS NOT NULL";
+        if (admissionNumbers != null) {
+            sql += studentFilter(admissionNumbers, params);
+        }
+        sql += " GROUP BY admission_number, fee_heading" +
+                " ON DUPLICATE KEY UPDATE account_head = VALUES(account_head), amount = VALUES(amount), " +
+                "status = VALUES(status), standard = VALUES(standard), section = VALUES(section)";
+        return jdbc.update(sql, params.toArray());
+    }
+
+    // --- Reads ---
+
+    /**
+     * One student's demand rows: fee_type, fee_heading, account_head, amount, status, standard, section.
+     */
+    public List<Map<String, Object>> getStudentDemand(JdbcTemplate jdbc, String academicYear, String admissionNumber) {
+        ensureYear(jdbc, academicYear);
+        return jdbc.queryForList(
+                "SELECT fee_type, fee_heading, account_head, amount, status, standard, section FROM " + TABLE +
+                        " WHERE academic_year = ? AND admission_number = ? ORDER BY FIELD(fee_type, 'Tuition', 'Hostel', 'Transport'), fee_heading",
+                yearKey(academicYear), admissionNumber);
+    }
+
+    public double getStudentTotal(JdbcTemplate jdbc, String academicYear, String admissionNumber) {
+        ensureYear(jdbc, academicYear);
+        Double total = jdbc.queryForObject(
+                "SELECT COALESCE(SUM(amount), 0) FROM " + TABLE + " WHERE academic_year = ? AND admission_number = ?",
+                Double.class, yearKey(academicYear), admissionNumber);
+        return total != null ? total : 0.0;
+    }
+
+    /**
+     * Demand of a whole year, one row per (admission_number, fee_type, fee_heading), optionally
+     * limited to {@code feeHeads}. Rows carry admission_number, fee_type, fee_heading, amount,
+     * standard and section.
+     */
+    public List<Map<String, Object>> getYearDemand(JdbcTemplate jdbc, String academicYear, Collection<String> feeHeads) {
+        ensureYear(jdbc, academicYear);
+        List<Object> params = new ArrayList<>();
+        params.add(yearKey(academicYear));
+        String sql = "SELECT admission_number, fee_type, fee_heading, amount, standard, section FROM " + TABLE +
+                " WHERE academic_year = ?" + headFilter(feeHeads, params);
+        return jdbc.queryForList(sql, params.toArray());
+    }
+
+    /**
+     * Class-wise demand: standard, section, fee_type, fee_heading, total.
+     */
+    public List<Map<String, Object>> getClassDemand(JdbcTemplate jdbc, String academicYear, Collection<String> feeHeads) {
+        ensureYear(jdbc, academicYear);
+        List<Object> params = new ArrayList<>();
+        params.add(yearKey(academicYear));
+        String sql = "SELECT standard, section, fee_type, fee_heading, SUM(amount) AS total FROM " + TABLE +
+                " WHERE academic_year = ?" + headFilter(feeHeads, params) +
+                " GROUP BY standard, section, fee_type, fee_heading";
+        return jdbc.queryForList(sql, params.toArray());
+    }
+
+    /**
+     * Distinct fee headings of a year grouped by fee type (Tuition, Hostel, Transport).
+     */
+    public Map<String, Set<String>> getFeeHeadsByType(JdbcTemplate jdbc, String academicYear) {
+        ensureYear(jdbc, academicYear);
+        Map<String, Set<String>> heads = new LinkedHashMap<>();
+        for (String feeType : FEE_TYPES) {
+            heads.put(feeType, new TreeSet<>());
+        }
+        jdbc.query("SELECT DISTINCT fee_type, fee_heading FROM " + TABLE + " WHERE academic_year = ?", rs -> {
+            heads.computeIfAbsent(rs.getString("fee_type"), t -> new TreeSet<>()).add(rs.getString("fee_heading"));
+        }, yearKey(academicYear));
+        return heads;
+    }
+
+    public Set<String> getAllFeeHeads(JdbcTemplate jdbc, String academicYear) {
+        return getFeeHeadsByType(jdbc, academicYear).values().stream()
+                .flatMap(Set::stream)
+                .collect(Collectors.toCollection(TreeSet::new));
+    }
+
+    private String studentFilter(Collection<String> admissionNumbers, List<Object> params) {
+        params.addAll(admissionNumbers);
+        return " AND admission_number IN (" + String.join(", ", Collections.nCopies(admissionNumbers.size(), "?")) + ")";
+    }
+
+    private String headFilter(Collection<String> feeHeads, List<Object> params) {
+        if (feeHeads == null || feeHeads.isEmpty()) {
+            return "";
+        }
+        params.addAll(feeHeads);
+        return " AND fee_heading IN (" + String.join(", ", Collections.nCopies(feeHeads.size(), "?")) + ")";
+    }
+}
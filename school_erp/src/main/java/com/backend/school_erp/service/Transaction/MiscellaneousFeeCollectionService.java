@@ -1,199 +1,205 @@
 package com.backend.school_erp.service.Transaction;
 
 import com.backend.school_erp.DTO.Transaction.MiscellaneousFeeCollectionDTO;
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.SchoolDataChangedEvent;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
+import com.backend.school_erp.config.TenantTableCatalog;
 import com.backend.school_erp.entity.Transaction.MiscellaneousFeeCollection;
 import com.backend.school_erp.entity.Transaction.MFCPaidAmount;
 import com.backend.school_erp.entity.Transaction.MFCConcession;
 import com.backend.school_erp.entity.Transaction.DayBookMFC;
+import com.backend.school_erp.service.AdmissionMaster.StudentDirectory;
+import com.backend.school_erp.service.AdmissionMaster.StudentRecord;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import javax.sql.DataSource;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 
 @Service
 @Slf4j
 public class MiscellaneousFeeCollectionService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
 
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            log.info("🔗 Creating HikariCP DataSource for school: {}", id);
-            HikariConfig config = new HikariConfig();
-
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-
-            config.setMaximumPoolSize(15);
-            config.setMinimumIdle(5);
-            config.setIdleTimeout(30000);
-            config.setMaxLifetime(1800000);
-            config.setConnectionTimeout(30000);
-            config.setValidationTimeout(5000);
-            config.setLeakDetectionThreshold(10000);
-
-            return new HikariDataSource(config);
-        });
-    }
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
+
+    @Autowired
+    private TenantTableCatalog tableCatalog;
+
+    @Autowired
+    private FeeBalanceService feeBalanceService;
+
+    @Autowired
+    private DayBookBalanceService dayBookBalanceService;
+
+    @Autowired
+    private CollectionRollupService collectionRollupService;
+
+    @Autowired
+    private StudentDirectory studentDirectory;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     private void ensureTablesExist(JdbcTemplate jdbc) {
-        try {
-            // 1. Create miscellaneous_fee_collection table
-            String createMiscellaneousFeeCollection = """
-                CREATE TABLE IF NOT EXISTS miscellaneous_fee_collection (
-                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                    bill_number VARCHAR(100) NOT NULL,
-                    admission_number VARCHAR(50) NOT NULL,
-                    student_name VARCHAR(255) NOT NULL,
-                    father_name VARCHAR(255),
-                    standard VARCHAR(50),
-                    section VARCHAR(50),
-                    emis_no VARCHAR(50),
-                    aadhar_no VARCHAR(50),
-                    boarding_point VARCHAR(255),
-                    bill_date TIMESTAMP NOT NULL,
-                    fee_head VARCHAR(255) NOT NULL,
-                    account_head VARCHAR(255) NOT NULL,
-                    paid_amount DECIMAL(12,2) DEFAULT 0.00,
-                    concession_amount DECIMAL(12,2) DEFAULT 0.00,
-                    net_paid_amount DECIMAL(12,2) DEFAULT 0.00,
-                    payment_mode VARCHAR(50) NOT NULL,
-                    payment_number VARCHAR(100),
-                    operator_name VARCHAR(255) NOT NULL,
-                    transaction_narrative TEXT,
-                    transaction_date TIMESTAMP,
-                    route_number VARCHAR(100),
-                    school_id VARCHAR(50) NOT NULL,
-                    academic_year VARCHAR(50) NOT NULL,
-                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                    UNIQUE KEY uk_bill_fee_admission (bill_number, fee_head, admission_number),
-                    INDEX idx_bill_number (bill_number),
-                    INDEX idx_admission_number (admission_number),
-                    INDEX idx_school_academic (school_id, academic_year),
-                    INDEX idx_bill_date (bill_date),
-                    INDEX idx_fee_head (fee_head),
-                    INDEX idx_student_name (student_name),
-                    INDEX idx_payment_number (payment_number)
-                ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
-            """;
+        schemaMigrator.migrate(jdbc, "MiscellaneousFeeCollectionService", 1, () -> {
+            try {
+                // 1. Create miscellaneous_fee_collection table
+                String createMiscellaneousFeeCollection = """
+                    CREATE TABLE IF NOT EXISTS miscellaneous_fee_collection (
+                        id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                        bill_number VARCHAR(100) NOT NULL,
+                        admission_number VARCHAR(50) NOT NULL,
+                        student_name VARCHAR(255) NOT NULL,
+                        father_name VARCHAR(255),
+                        standard VARCHAR(50),
+                        section VARCHAR(50),
+                        emis_no VARCHAR(50),
+                        aadhar_no VARCHAR(50),
+                        boarding_point VARCHAR(255),
+                        bill_date TIMESTAMP NOT NULL,
+                        fee_head VARCHAR(255) NOT NULL,
+                        account_head VARCHAR(255) NOT NULL,
+                        paid_amount DECIMAL(12,2) DEFAULT 0.00,
+                        concession_amount DECIMAL(12,2) DEFAULT 0.00,
+                        net_paid_amount DECIMAL(12,2) DEFAULT 0.00,
+                        payment_mode VARCHAR(50) NOT NULL,
+                        payment_number VARCHAR(100),
+                        operator_name VARCHAR(255) NOT NULL,
+                        transaction_narrative TEXT,
+                        transaction_date TIMESTAMP,
+                        route_number VARCHAR(100),
+                        school_id VARCHAR(50) NOT NULL,
+                        academic_year VARCHAR(50) NOT NULL,
+                        created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                        UNIQUE KEY uk_bill_fee_admission (bill_number, fee_head, admission_number),
+                        INDEX idx_bill_number (bill_number),
+                        INDEX idx_admission_number (admission_number),
+                        INDEX idx_school_academic (school_id, academic_year),
+                        INDEX idx_bill_date (bill_date),
+                        INDEX idx_fee_head (fee_head),
+                        INDEX idx_student_name (student_name),
+                        INDEX idx_payment_number (payment_number)
+                    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
+                """;
 
-            // 2. Create mfc_paidamount table
-            String createMFCPaidAmount = """
-                CREATE TABLE IF NOT EXISTS mfc_paidamount (
-                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                    bill_number VARCHAR(100) NOT NULL,
-                    admission_number VARCHAR(50) NOT NULL,
-                    amount DECIMAL(12,2) NOT NULL,
-                    student_name VARCHAR(255) NOT NULL,
-                    father_name VARCHAR(255),
-                    standard VARCHAR(50),
-                    section VARCHAR(50),
-                    school_id VARCHAR(50) NOT NULL,
-                    aadhar_no VARCHAR(50),
-                    academic_year VARCHAR(50) NOT NULL,
-                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                    INDEX idx_bill_number (bill_number),
-                    INDEX idx_admission_number (admission_number),
-                    INDEX idx_school_year (school_id, academic_year),
-                    INDEX idx_student_name (student_name)
-                ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
-            """;
+                // 2. Create mfc_paidamount table
+                String createMFCPaidAmount = """
+                    CREATE TABLE IF NOT EXISTS mfc_paidamount (
+                        id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                        bill_number VARCHAR(100) NOT NULL,
+                        admission_number VARCHAR(50) NOT NULL,
+                        amount DECIMAL(12,2) NOT NULL,
+                        student_name VARCHAR(255) NOT NULL,
+                        father_name VARCHAR(255),
+                        standard VARCHAR(50),
+                        section VARCHAR(50),
+                        school_id VARCHAR(50) NOT NULL,
+                        aadhar_no VARCHAR(50),
+                        academic_year VARCHAR(50) NOT NULL,
+                        created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                        INDEX idx_bill_number (bill_number),
+                        INDEX idx_admission_number (admission_number),
+                        INDEX idx_school_year (school_id, academic_year),
+                        INDEX idx_student_name (student_name)
+                    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
+                """;
 
-            // 3. Create mfc_concession table
-            String createMFCConcession = """
-                CREATE TABLE IF NOT EXISTS mfc_concession (
-                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                    bill_number VARCHAR(100) NOT NULL,
-                    admission_number VARCHAR(50) NOT NULL,
-                    concession_amount DECIMAL(12,2) NOT NULL,
-                    school_id VARCHAR(50) NOT NULL,
-                    student_name VARCHAR(255) NOT NULL,
-                    father_name VARCHAR(255),
-                    standard VARCHAR(50),
-                    section VARCHAR(50),
-                    aadhar_no VARCHAR(50),
-                    academic_year VARCHAR(50) NOT NULL,
-                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                    INDEX idx_bill_number (bill_number),
-                    INDEX idx_admission_number (admission_number),
-                    INDEX idx_school_year (school_id, academic_year),
-                    INDEX idx_student_name (student_name)
-                ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
-            """;
+                // 3. Create mfc_concession table
+                String createMFCConcession = """
+                    CREATE TABLE IF NOT EXISTS mfc_concession (
+                        id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                        bill_number VARCHAR(100) NOT NULL,
+                        admission_number VARCHAR(50) NOT NULL,
+                        concession_amount DECIMAL(12,2) NOT NULL,
+                        school_id VARCHAR(50) NOT NULL,
+                        student_name VARCHAR(255) NOT NULL,
+                        father_name VARCHAR(255),
+                        standard VARCHAR(50),
+                        section VARCHAR(50),
+                        aadhar_no VARCHAR(50),
+                        academic_year VARCHAR(50) NOT NULL,
+                        created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                        INDEX idx_bill_number (bill_number),
+                        INDEX idx_admission_number (admission_number),
+                        INDEX idx_school_year (school_id, academic_year),
+                        INDEX idx_student_name (student_name)
+                    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
+                """;
 
-            // 4. Create day_book_mfc table
-            String createDayBookMFC = """
-                CREATE TABLE IF NOT EXISTS day_book_mfc (
-                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                    br_number VARCHAR(100) NOT NULL,
-                    admission_number VARCHAR(50) NOT NULL,
-                    name VARCHAR(255) NOT NULL,
-                    br_date TIMESTAMP NOT NULL,
-                    description VARCHAR(500),
-                    ledger VARCHAR(255),
-                    credit DECIMAL(12,2) DEFAULT 0.00,
-                    debit DECIMAL(12,2) DEFAULT 0.00,
-                    mode VARCHAR(50) NOT NULL,
-                    operator_name VARCHAR(255) NOT NULL,
-                    school_id VARCHAR(50) NOT NULL,
-                    academic_year VARCHAR(50) NOT NULL,
-                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                    INDEX idx_br_number (br_number),
-                    INDEX idx_admission_number (admission_number),
-                    INDEX idx_school_academic (school_id, academic_year),
-                    INDEX idx_br_date (br_date),
-                    INDEX idx_name (name),
-                    INDEX idx_ledger (ledger)
-                ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
-            """;
+                // 4. Create day_book_mfc table
+                String createDayBookMFC = """
+                    CREATE TABLE IF NOT EXISTS day_book_mfc (
+                        id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                        br_number VARCHAR(100) NOT NULL,
+                        admission_number VARCHAR(50) NOT NULL,
+                        name VARCHAR(255) NOT NULL,
+                        br_date TIMESTAMP NOT NULL,
+                        description VARCHAR(500),
+                        ledger VARCHAR(255),
+                        credit DECIMAL(12,2) DEFAULT 0.00,
+                        debit DECIMAL(12,2) DEFAULT 0.00,
+                        mode VARCHAR(50) NOT NULL,
+                        operator_name VARCHAR(255) NOT NULL,
+                        school_id VARCHAR(50) NOT NULL,
+                        academic_year VARCHAR(50) NOT NULL,
+                        created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                        INDEX idx_br_number (br_number),
+                        INDEX idx_admission_number (admission_number),
+                        INDEX idx_school_academic (school_id, academic_year),
+                        INDEX idx_br_date (br_date),
+                        INDEX idx_name (name),
+                        INDEX idx_ledger (ledger)
+                    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
+                """;
 
-            // 5. Check if individual_fees table exists, if not create it
-            String createIndividualFees = """
-                CREATE TABLE IF NOT EXISTS individual_fees (
-                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                    admission_number VARCHAR(50) NOT NULL,
-                    student_name VARCHAR(255),
-                    fee_head VARCHAR(255),
-                    account_head VARCHAR(255),
-                    amount DECIMAL(10,2),
-                    school_id VARCHAR(50),
-                    academic_year VARCHAR(50),
-                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
-                    INDEX idx_admission_number (admission_number),
-                    INDEX idx_school_academic (school_id, academic_year),
-                    INDEX idx_fee_head (fee_head)
-                ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
-            """;
+                // 5. Check if individual_fees table exists, if not create it
+                String createIndividualFees = """
+                    CREATE TABLE IF NOT EXISTS individual_fees (
+                        id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                        admission_number VARCHAR(50) NOT NULL,
+                        student_name VARCHAR(255),
+                        fee_head VARCHAR(255),
+                        account_head VARCHAR(255),
+                        amount DECIMAL(10,2),
+                        school_id VARCHAR(50),
+                        academic_year VARCHAR(50),
+                        created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                        updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+                        INDEX idx_admission_number (admission_number),
+                        INDEX idx_school_academic (school_id, academic_year),
+                        INDEX idx_fee_head (fee_head)
+                    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
+                """;
 
-            jdbc.execute(createMiscellaneousFeeCollection);
-            jdbc.execute(createMFCPaidAmount);
-            jdbc.execute(createMFCConcession);
-            jdbc.execute(createDayBookMFC);
-            jdbc.execute(createIndividualFees);
+                jdbc.execute(createMiscellaneousFeeCollection);
+                jdbc.execute(createMFCPaidAmount);
+                jdbc.execute(createMFCConcession);
+                jdbc.execute(createDayBookMFC);
+                jdbc.execute(createIndividualFees);
 
-            log.info("✅ All 5 other fee billing tables created or already exist for school");
-        } catch (Exception e) {
-            log.error("❌ Failed to create other fee billing tables: {}", e.getMessage());
-            throw new RuntimeException("Database table creation failed: " + e.getMessage(), e);
-        }
+                log.info("✅ All 5 other fee billing tables created or already exist for school");
+            } catch (Exception e) {
+                log.error("❌ Failed to create other fee billing tables: {}", e.getMessage());
+                throw new RuntimeException("Database table creation failed: " + e.getMessage(), e);
+            }
+        });
     }
 
     // NEW METHOD: Get individual fees for a student with payment history calculation
@@ -226,47 +232,23 @@ public class MiscellaneousFeeCollectionService {
 
             List<Map<String, Object>> individualFees = jdbc.queryForList(sql, schoolId, admissionNumber, academicYear);
 
-            // Calculate payment history for each individual fee
+            // Payment history of each individual fee from the balance ledger
+            Map<String, Map<String, Object>> balances =
+                    feeBalanceService.getStudentBalances(jdbc, academicYear, admissionNumber, FeeBalanceService.MISC);
             for (Map<String, Object> fee : individualFees) {
                 String feeHead = (String) fee.get("fee_head");
                 Double originalAmount = convertToDouble(fee.get("amount"));
 
-                // Get payment history for this specific fee
-                String paymentSql = """
-                    SELECT 
-                        COALESCE(SUM(paid_amount), 0) as total_paid,
-                        COALESCE(SUM(concession_amount), 0) as total_concession
-                    FROM miscellaneous_fee_collection 
-                    WHERE school_id = ? AND admission_number = ? AND academic_year = ? 
-                    AND fee_head = ?
-                """;
+                Map<String, Object> balance = balances.get(feeHead);
+                Double totalPaid = balance != null ? convertToDouble(balance.get("paid")) : 0.0;
+                Double totalConcession = balance != null ? convertToDouble(balance.get("concession")) : 0.0;
+                Double remainingBalance = originalAmount - totalPaid - totalConcession;
 
-                try {
-                    Map<String, Object> paymentData = jdbc.queryForMap(
-                            paymentSql,
-                            schoolId,
-                            admissionNumber,
-                            academicYear,
-                            feeHead
-                    );
-
-                    Double totalPaid = convertToDouble(paymentData.get("total_paid"));
-                    Double totalConcession = convertToDouble(paymentData.get("total_concession"));
-                    Double remainingBalance = originalAmount - totalPaid - totalConcession;
-
-                    // Add payment history fields
-                    fee.put("paid_amount", totalPaid);
-                    fee.put("concession_amount", totalConcession);
-                    fee.put("remaining_balance", Math.max(0, remainingBalance));
-                    fee.put("is_fully_paid", remainingBalance <= 0.01);
-
-                } catch (Exception e) {
-                    // No payment history found
-                    fee.put("paid_amount", 0.0);
-                    fee.put("concession_amount", 0.0);
-                    fee.put("remaining_balance", originalAmount);
-                    fee.put("is_fully_paid", false);
-                }
+                // Add payment history fields
+                fee.put("paid_amount", totalPaid);
+                fee.put("concession_amount", totalConcession);
+                fee.put("remaining_balance", Math.max(0, remainingBalance));
+                fee.put("is_fully_paid", remainingBalance <= 0.01);
             }
 
             log.info("✅ Retrieved {} individual fees for admission number: {}", individualFees.size(), admissionNumber);
@@ -382,6 +364,19 @@ public class MiscellaneousFeeCollectionService {
         Map<String, Object> studentInfo = new HashMap<>();
 
         try {
+            Optional<StudentRecord> student = studentDirectory.find(schoolId, academicYear, admissionNumber);
+            if (student.isPresent()) {
+                studentInfo.put("aadhar_no", Objects.toString(student.get().aadharNumber(), ""));
+                studentInfo.put("emis_no", Objects.toString(student.get().emis(), ""));
+                studentInfo.put("student_name", Objects.toString(student.get().studentName(), ""));
+                studentInfo.put("father_name", Objects.toString(student.get().fatherName(), ""));
+                studentInfo.put("standard", Objects.toString(student.get().standard(), ""));
+                studentInfo.put("section", Objects.toString(student.get().section(), ""));
+                studentInfo.put("boarding_point", Objects.toString(student.get().boardingPoint(), ""));
+                return studentInfo;
+            }
+
+            // Not admitted this year: try the older student tables
             String[] possibleTables = {
                     "student_master",
                     "admissions_" + academicYear.replaceAll("-", "_"),
@@ -455,14 +450,7 @@ public class MiscellaneousFeeCollectionService {
 
     // Check if table exists
     private boolean tableExists(JdbcTemplate jdbc, String tableName) {
-        try {
-            String sql = "SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = LOWER(?)";
-            Integer count = jdbc.queryForObject(sql, Integer.class, tableName.toLowerCase());
-            return count != null && count > 0;
-        } catch (Exception e) {
-            log.debug("Table {} does not exist: {}", tableName, e.getMessage());
-            return false;
-        }
+        return tableCatalog.tableExists(jdbc, tableName);
     }
 
     // Adjust remaining balances based on payment history
@@ -471,28 +459,15 @@ public class MiscellaneousFeeCollectionService {
             String academicYear, List<Map<String, Object>> feeDetails) {
 
         try {
-            String paidSql = """
-                SELECT 
-                    fee_head, 
-                    SUM(COALESCE(paid_amount, 0)) as total_paid,
-                    SUM(COALESCE(concession_amount, 0)) as total_concession
-                FROM miscellaneous_fee_collection 
-                WHERE school_id = ? AND admission_number = ? AND academic_year = ?
-                GROUP BY fee_head
-            """;
+            Map<String, Map<String, Object>> balances =
+                    feeBalanceService.getStudentBalances(jdbc, academicYear, admissionNumber, FeeBalanceService.MISC);
 
             Map<String, Map<String, Double>> feeTotals = new HashMap<>();
-            List<Map<String, Object>> paymentResults = jdbc.queryForList(paidSql, schoolId, admissionNumber, academicYear);
-
-            for (Map<String, Object> row : paymentResults) {
-                String feeHead = (String) row.get("fee_head");
-                Double totalPaid = convertToDouble(row.get("total_paid"));
-                Double totalConcession = convertToDouble(row.get("total_concession"));
-
+            for (Map.Entry<String, Map<String, Object>> entry : balances.entrySet()) {
                 Map<String, Double> totals = new HashMap<>();
-                totals.put("paid", totalPaid);
-                totals.put("concession", totalConcession);
-                feeTotals.put(feeHead, totals);
+                totals.put("paid", convertToDouble(entry.getValue().get("paid")));
+                totals.put("concession", convertToDouble(entry.getValue().get("concession")));
+                feeTotals.put(entry.getKey(), totals);
             }
 
             // Update fee details with payment history
@@ -541,138 +516,153 @@ public class MiscellaneousFeeCollectionService {
             ensureTablesExist(jdbc);
 
             validatePaymentDTO(dto);
+            feeBalanceService.ensureYear(jdbc, dto.getAcademicYear());
+            dayBookBalanceService.ensure(jdbc, DayBookBalanceService.MISC_DAY_BOOK);
+            collectionRollupService.ensureYear(jdbc, dto.getAcademicYear());
+            // Effectively final copy for the bill's transaction below
+            JdbcTemplate billJdbc = jdbc;
 
             Map<String, Object> studentInfo = getStudentInfo(jdbc, schoolId, dto.getAdmissionNumber(), dto.getAcademicYear());
 
             LocalDateTime billDate = dto.getBillDate() != null ? dto.getBillDate() : LocalDateTime.now();
             LocalDateTime transactionDate = dto.getTransactionDate() != null ? dto.getTransactionDate() : billDate;
 
-            for (MiscellaneousFeeCollectionDTO.FeePaymentDetailDTO feePayment : dto.getFeePayments()) {
-                try {
-                    Double paidAmount = feePayment.getPaidAmount() != null ? feePayment.getPaidAmount() : 0.0;
-                    Double concessionAmount = feePayment.getConcessionAmount() != null ? feePayment.getConcessionAmount() : 0.0;
-                    Double netPaidAmount = paidAmount + concessionAmount;
-
-                    String insertMiscellaneousFeeSQL = """
-                        INSERT INTO miscellaneous_fee_collection (
-                            bill_number, admission_number, student_name, father_name, 
-                            standard, section, emis_no, aadhar_no, boarding_point, bill_date, 
-                            fee_head, account_head, paid_amount, concession_amount, net_paid_amount, 
-                            payment_mode, payment_number, operator_name, transaction_narrative, 
-                            transaction_date, route_number, school_id, academic_year
-                        ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
-                        ON DUPLICATE KEY UPDATE
-                            paid_amount = paid_amount + VALUES(paid_amount),
-                            concession_amount = concession_amount + VALUES(concession_amount),
-                            net_paid_amount = net_paid_amount + VALUES(net_paid_amount),
-                            operator_name = VALUES(operator_name),
-                            transaction_narrative = VALUES(transaction_narrative),
-                            transaction_date = VALUES(transaction_date),
-                            payment_number = VALUES(payment_number)
-                    """;
-
-                    jdbc.update(insertMiscellaneousFeeSQL,
-                            dto.getBillNumber(),
-                            dto.getAdmissionNumber(),
-                            dto.getStudentName(),
-                            dto.getFatherName(),
-                            dto.getStandard(),
-                            dto.getSection(),
-                            studentInfo.get("emis_no"),
-                            studentInfo.get("aadhar_no"),
-                            dto.getBoardingPoint(),
-                            java.sql.Timestamp.valueOf(billDate),
-                            feePayment.getFeeHeading(),
-                            feePayment.getAccountHead(),
-                            paidAmount,
-                            concessionAmount,
-                            netPaidAmount,
-                            dto.getPaymentMode(),
-                            dto.getPaymentNumber(),
-                            dto.getOperatorName(),
-                            dto.getTransactionNarrative(),
-                            java.sql.Timestamp.valueOf(transactionDate),
-                            dto.getRouteNumber(),
-                            schoolId,
-                            dto.getAcademicYear()
-                    );
-
-                    // Insert paid amounts into mfc_paidamount (if any paid amount)
-                    if (paidAmount > 0) {
-                        String insertPaidSQL = """
-                            INSERT INTO mfc_paidamount (
-                                bill_number, admission_number, amount, student_name, father_name, 
-                                standard, section, school_id, aadhar_no, academic_year
-                            ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            // All heads of the bill, their ledger rows and day book entries commit together
+            tenantDataSourceRouter.getTransactionTemplate(schoolId).executeWithoutResult(status -> {
+                for (MiscellaneousFeeCollectionDTO.FeePaymentDetailDTO feePayment : dto.getFeePayments()) {
+                    try {
+                        Double paidAmount = feePayment.getPaidAmount() != null ? feePayment.getPaidAmount() : 0.0;
+                        Double concessionAmount = feePayment.getConcessionAmount() != null ? feePayment.getConcessionAmount() : 0.0;
+                        Double netPaidAmount = paidAmount + concessionAmount;
+
+                        String insertMiscellaneousFeeSQL = """
+                            INSERT INTO miscellaneous_fee_collection (
+                                bill_number, admission_number, student_name, father_name, 
+                                standard, section, emis_no, aadhar_no, boarding_point, bill_date, 
+                                fee_head, account_head, paid_amount, concession_amount, net_paid_amount, 
+                                payment_mode, payment_number, operator_name, transaction_narrative, 
+                                transaction_date, route_number, school_id, academic_year
+                            ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+                            ON DUPLICATE KEY UPDATE
+                                paid_amount = paid_amount + VALUES(paid_amount),
+                                concession_amount = concession_amount + VALUES(concession_amount),
+                                net_paid_amount = net_paid_amount + VALUES(net_paid_amount),
+                                operator_name = VALUES(operator_name),
+                                transaction_narrative = VALUES(transaction_narrative),
+                                transaction_date = VALUES(transaction_date),
+                                payment_number = VALUES(payment_number)
                         """;
 
-                        jdbc.update(insertPaidSQL,
-                                dto.getBillNumber(),
-                                dto.getAdmissionNumber(),
-                                paidAmount,
-                                dto.getStudentName(),
-                                dto.getFatherName(),
-                                dto.getStandard(),
-                                dto.getSection(),
-                                schoolId,
-                                studentInfo.get("aadhar_no"),
-                                dto.getAcademicYear()
-                        );
-                    }
+                        collectionRollupService.track(billJdbc, FeeBalanceService.MISC, schoolId, dto.getBillNumber(),
+                                () -> billJdbc.update(insertMiscellaneousFeeSQL,
+                                        dto.getBillNumber(),
+                                        dto.getAdmissionNumber(),
+                                        dto.getStudentName(),
+                                        dto.getFatherName(),
+                                        dto.getStandard(),
+                                        dto.getSection(),
+                                        studentInfo.get("emis_no"),
+                                        studentInfo.get("aadhar_no"),
+                                        dto.getBoardingPoint(),
+                                        java.sql.Timestamp.valueOf(billDate),
+                                        feePayment.getFeeHeading(),
+                                        feePayment.getAccountHead(),
+                                        paidAmount,
+                                        concessionAmount,
+                                        netPaidAmount,
+                                        dto.getPaymentMode(),
+                                        dto.getPaymentNumber(),
+                                        dto.getOperatorName(),
+                                        dto.getTransactionNarrative(),
+                                        java.sql.Timestamp.valueOf(transactionDate),
+                                        dto.getRouteNumber(),
+                                        schoolId,
+                                        dto.getAcademicYear()
+                                ));
+
+                        feeBalanceService.recordPayment(billJdbc, dto.getAcademicYear(), dto.getAdmissionNumber(),
+                                FeeBalanceService.MISC, feePayment.getFeeHeading(), paidAmount, concessionAmount,
+                                dto.getStandard(), dto.getSection(), dto.getTransactionNarrative());
+
+                        // Insert paid amounts into mfc_paidamount (if any paid amount)
+                        if (paidAmount > 0) {
+                            String insertPaidSQL = """
+                                INSERT INTO mfc_paidamount (
+                                    bill_number, admission_number, amount, student_name, father_name, 
+                                    standard, section, school_id, aadhar_no, academic_year
+                                ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+                            """;
+
+                            billJdbc.update(insertPaidSQL,
+                                    dto.getBillNumber(),
+                                    dto.getAdmissionNumber(),
+                                    paidAmount,
+                                    dto.getStudentName(),
+                                    dto.getFatherName(),
+                                    dto.getStandard(),
+                                    dto.getSection(),
+                                    schoolId,
+                                    studentInfo.get("aadhar_no"),
+                                    dto.getAcademicYear()
+                            );
+                        }
+
+                        // Insert concessions into mfc_concession (if any concession)
+                        if (concessionAmount > 0) {
+                            String insertConcessionSQL = """
+                                INSERT INTO mfc_concession (
+                                    bill_number, admission_number, concession_amount, school_id, student_name, 
+                                    father_name, standard, section, aadhar_no, academic_year
+                                ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+                            """;
+
+                            billJdbc.update(insertConcessionSQL,
+                                    dto.getBillNumber(),
+                                    dto.getAdmissionNumber(),
+                                    concessionAmount,
+                                    schoolId,
+                                    dto.getStudentName(),
+                                    dto.getFatherName(),
+                                    dto.getStandard(),
+                                    dto.getSection(),
+                                    studentInfo.get("aadhar_no"),
+                                    dto.getAcademicYear()
+                            );
+                        }
 
-                    // Insert concessions into mfc_concession (if any concession)
-                    if (concessionAmount > 0) {
-                        String insertConcessionSQL = """
-                            INSERT INTO mfc_concession (
-                                bill_number, admission_number, concession_amount, school_id, student_name, 
-                                father_name, standard, section, aadhar_no, academic_year
-                            ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+                        // Insert into day_book_mfc
+                        String insertDayBookSQL = """
+                            INSERT INTO day_book_mfc (
+                                br_number, admission_number, name, br_date, description, 
+                                ledger, credit, debit, mode, operator_name, school_id, academic_year
+                            ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
                         """;
 
-                        jdbc.update(insertConcessionSQL,
-                                dto.getBillNumber(),
-                                dto.getAdmissionNumber(),
-                                concessionAmount,
-                                schoolId,
-                                dto.getStudentName(),
-                                dto.getFatherName(),
-                                dto.getStandard(),
-                                dto.getSection(),
-                                studentInfo.get("aadhar_no"),
-                                dto.getAcademicYear()
-                        );
+                        String descriptionWithClass = dto.getStandard() + "-" + dto.getSection();
+
+                        dayBookBalanceService.track(billJdbc, DayBookBalanceService.MISC_DAY_BOOK, schoolId, dto.getBillNumber(),
+                                () -> billJdbc.update(insertDayBookSQL,
+                                        dto.getBillNumber(),
+                                        dto.getAdmissionNumber(),
+                                        dto.getStudentName(),
+                                        java.sql.Timestamp.valueOf(billDate),
+                                        descriptionWithClass,
+                                        feePayment.getFeeHeading(),
+                                        paidAmount,
+                                        concessionAmount,
+                                        dto.getPaymentMode(),
+                                        dto.getOperatorName(),
+                                        schoolId,
+                                        dto.getAcademicYear()
+                                ));
+
+                    } catch (Exception feeError) {
+                        log.error("❌ Error processing fee payment {}: {}", feePayment.getFeeHeading(), feeError.getMessage());
+                        throw new RuntimeException("Failed to process fee payment for " + feePayment.getFeeHeading() + ": " + feeError.getMessage(), feeError);
                     }
-
-                    // Insert into day_book_mfc
-                    String insertDayBookSQL = """
-                        INSERT INTO day_book_mfc (
-                            br_number, admission_number, name, br_date, description, 
-                            ledger, credit, debit, mode, operator_name, school_id, academic_year
-                        ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
-                    """;
-
-                    String descriptionWithClass = dto.getStandard() + "-" + dto.getSection();
-
-                    jdbc.update(insertDayBookSQL,
-                            dto.getBillNumber(),
-                            dto.getAdmissionNumber(),
-                            dto.getStudentName(),
-                            java.sql.Timestamp.valueOf(billDate),
-                            descriptionWithClass,
-                            feePayment.getFeeHeading(),
-                            paidAmount,
-                            concessionAmount,
-                            dto.getPaymentMode(),
-                            dto.getOperatorName(),
-                            schoolId,
-                            dto.getAcademicYear()
-                    );
-
-                } catch (Exception feeError) {
-                    log.error("❌ Error processing fee payment {}: {}", feePayment.getFeeHeading(), feeError.getMessage());
-                    throw new RuntimeException("Failed to process fee payment for " + feePayment.getFeeHeading() + ": " + feeError.getMessage(), feeError);
                 }
-            }
+            });
+            eventPublisher.publishEvent(new SchoolDataChangedEvent(schoolId, dto.getAcademicYear(), "miscellaneous fee posting"));
 
             String selectSQL = """
                 SELECT * FROM miscellaneous_fee_collection 
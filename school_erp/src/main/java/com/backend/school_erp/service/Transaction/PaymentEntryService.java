@@ -1,156 +1,121 @@
 package com.backend.school_erp.service.Transaction;
 
 import com.backend.school_erp.DTO.Transaction.PaymentEntryDTO;
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
 import com.backend.school_erp.entity.Transaction.PaymentEntry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import javax.sql.DataSource;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 
 @Service
 @Slf4j
 public class PaymentEntryService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
-    private final DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
 
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            log.info("🔗 Creating HikariCP DataSource for school: {}", id);
-            HikariConfig config = new HikariConfig();
-
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-
-            config.setMaximumPoolSize(15);
-            config.setMinimumIdle(5);
-            config.setIdleTimeout(30000);
-            config.setMaxLifetime(1800000);
-            config.setConnectionTimeout(30000);
-            config.setValidationTimeout(5000);
-            config.setLeakDetectionThreshold(10000);
-
-            return new HikariDataSource(config);
-        });
-    }
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
+
+    @Autowired
+    private TenantSequenceAllocator sequenceAllocator;
+
+    @Autowired
+    private DayBookBalanceService dayBookBalanceService;
+
+    private final DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     private void ensureTablesExist(JdbcTemplate jdbc) {
-        try {
-            // REMOVED transaction_id
-            String createPaymentEntries = """
-                CREATE TABLE IF NOT EXISTS payment_entries (
-                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                    entry_no VARCHAR(10) NOT NULL,
-                    date DATE NOT NULL,
-                    expense_name VARCHAR(255) NOT NULL,
-                    account_head VARCHAR(255) NOT NULL,
-                    receiver_name VARCHAR(255) NOT NULL,
-                    description TEXT,
-                    payment_mode VARCHAR(50) NOT NULL,
-                    reference_id VARCHAR(255),
-                    amount DECIMAL(12,2) NOT NULL,
-                    school_id VARCHAR(50) NOT NULL,
-                    academic_year VARCHAR(50) NOT NULL,
-                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                    UNIQUE KEY unique_entry (entry_no, school_id, academic_year),
-                    INDEX idx_school_academic (school_id, academic_year),
-                    INDEX idx_entry_no (entry_no),
-                    INDEX idx_date (date),
-                    INDEX idx_receiver (receiver_name),
-                    INDEX idx_account_head (account_head)
-                ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
-            """;
+        schemaMigrator.migrate(jdbc, "PaymentEntryService", 1, () -> {
+            try {
+                // REMOVED transaction_id
+                String createPaymentEntries = """
+                    CREATE TABLE IF NOT EXISTS payment_entries (
+                        id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                        entry_no VARCHAR(10) NOT NULL,
+                        date DATE NOT NULL,
+                        expense_name VARCHAR(255) NOT NULL,
+                        account_head VARCHAR(255) NOT NULL,
+                        receiver_name VARCHAR(255) NOT NULL,
+                        description TEXT,
+                        payment_mode VARCHAR(50) NOT NULL,
+                        reference_id VARCHAR(255),
+                        amount DECIMAL(12,2) NOT NULL,
+                        school_id VARCHAR(50) NOT NULL,
+                        academic_year VARCHAR(50) NOT NULL,
+                        created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                        UNIQUE KEY unique_entry (entry_no, school_id, academic_year),
+                        INDEX idx_school_academic (school_id, academic_year),
+                        INDEX idx_entry_no (entry_no),
+                        INDEX idx_date (date),
+                        INDEX idx_receiver (receiver_name),
+                        INDEX idx_account_head (account_head)
+                    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
+                """;
 
-            String createDayBook = """
-                CREATE TABLE IF NOT EXISTS day_book (
-                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                    br_number VARCHAR(100) NOT NULL,
-                    admission_number VARCHAR(50) DEFAULT 'N/A',
-                    name VARCHAR(255) NOT NULL,
-                    br_date TIMESTAMP NOT NULL,
-                    description VARCHAR(500),
-                    ledger VARCHAR(255) NOT NULL,
-                    credit DECIMAL(12,2) DEFAULT 0.00,
-                    debit DECIMAL(12,2) DEFAULT 0.00,
-                    mode VARCHAR(50) NOT NULL,
-                    operator_name VARCHAR(255) NOT NULL,
-                    school_id VARCHAR(50) NOT NULL,
-                    academic_year VARCHAR(50) NOT NULL,
-                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                    INDEX idx_br_number (br_number),
-                    INDEX idx_school_academic (school_id, academic_year),
-                    INDEX idx_br_date (br_date),
-                    INDEX idx_name (name),
-                    INDEX idx_ledger (ledger)
-                ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
-            """;
+                String createDayBook = """
+                    CREATE TABLE IF NOT EXISTS day_book (
+                        id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                        br_number VARCHAR(100) NOT NULL,
+                        admission_number VARCHAR(50) DEFAULT 'N/A',
+                        name VARCHAR(255) NOT NULL,
+                        br_date TIMESTAMP NOT NULL,
+                        description VARCHAR(500),
+                        ledger VARCHAR(255) NOT NULL,
+                        credit DECIMAL(12,2) DEFAULT 0.00,
+                        debit DECIMAL(12,2) DEFAULT 0.00,
+                        mode VARCHAR(50) NOT NULL,
+                        operator_name VARCHAR(255) NOT NULL,
+                        school_id VARCHAR(50) NOT NULL,
+                        academic_year VARCHAR(50) NOT NULL,
+                        created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                        INDEX idx_br_number (br_number),
+                        INDEX idx_school_academic (school_id, academic_year),
+                        INDEX idx_br_date (br_date),
+                        INDEX idx_name (name),
+                        INDEX idx_ledger (ledger)
+                    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
+                """;
 
-            jdbc.execute(createPaymentEntries);
-            jdbc.execute(createDayBook);
+                jdbc.execute(createPaymentEntries);
+                jdbc.execute(createDayBook);
 
-            log.info("✅ Payment entry and day_book tables created or already exist");
-        } catch (Exception e) {
-            log.error("❌ Failed to create tables: {}", e.getMessage());
-            throw new RuntimeException("Database table creation failed: " + e.getMessage(), e);
-        }
+                log.info("✅ Payment entry and day_book tables created or already exist");
+            } catch (Exception e) {
+                log.error("❌ Failed to create tables: {}", e.getMessage());
+                throw new RuntimeException("Database table creation failed: " + e.getMessage(), e);
+            }
+        });
     }
 
     private String generateEntryNo(String schoolId, String academicYear) {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
+        ensureTablesExist(jdbc);
 
-        try {
-            String lastEntrySql = """
-                SELECT entry_no FROM payment_entries 
-                WHERE school_id = ? AND academic_year = ? 
-                ORDER BY CAST(entry_no AS UNSIGNED) DESC 
-                LIMIT 1
-            """;
-
-            String lastEntryNo = null;
-            try {
-                lastEntryNo = jdbc.queryForObject(lastEntrySql, String.class, schoolId, academicYear);
-            } catch (Exception e) {
-                log.debug("No previous entries found, starting from 0001");
-            }
-
-            int nextNumber;
-            if (lastEntryNo != null) {
-                nextNumber = Integer.parseInt(lastEntryNo);
-                nextNumber++;
-
-                if (nextNumber > 5000) {
-                    nextNumber = 1;
-                }
-            } else {
-                nextNumber = 1;
-            }
-
-            return String.format("%04d", nextNumber);
+        // Seeded once from the highest entry of the year, then allocated without scanning
+        long next = sequenceAllocator.next(jdbc, "payment_entries", academicYear,
+                () -> getLastEntryNo(schoolId, academicYear));
+        return String.format("%04d", TenantSequenceAllocator.wrap(next, 5000));
+    }
 
-        } catch (Exception e) {
-            log.error("Error generating entry number: {}", e.getMessage());
-            Integer count = getEntryCount(schoolId, academicYear);
-            int nextNumber = (count % 5000) + 1;
-            return String.format("%04d", nextNumber);
-        }
+    private boolean entryNoExists(JdbcTemplate jdbc, String entryNo, String schoolId, String academicYear) {
+        Integer existingCount = jdbc.queryForObject(
+                "SELECT COUNT(*) FROM payment_entries WHERE entry_no = ? AND school_id = ? AND academic_year = ?",
+                Integer.class, entryNo, schoolId, academicYear);
+        return existingCount != null && existingCount > 0;
     }
 
     public Integer getLastEntryNo(String schoolId, String academicYear) {
@@ -195,10 +160,20 @@ public class PaymentEntryService {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
         ensureTablesExist(jdbc);
 
-        String entryNo = dto.getEntryNo() != null ?
+        boolean clientNumber = dto.getEntryNo() != null;
+        String entryNo = clientNumber ?
                 String.format("%04d", dto.getEntryNo()) :
                 generateEntryNo(schoolId, dto.getAcademicYear());
 
+        // Numbers reserved by another instance, or sent by a client, may already be stored
+        for (int attempts = 0; entryNoExists(jdbc, entryNo, schoolId, dto.getAcademicYear()); attempts++) {
+            if (attempts >= 5000) {
+                throw new RuntimeException("No free entry number left for " + dto.getAcademicYear());
+            }
+            entryNo = generateEntryNo(schoolId, dto.getAcademicYear());
+            clientNumber = false;
+        }
+
         LocalDate paymentDate;
         try {
             paymentDate = LocalDate.parse(dto.getDate(), dateFormatter);
@@ -242,6 +217,11 @@ public class PaymentEntryService {
         if (rows == 0) {
             throw new RuntimeException("Failed to insert payment entry");
         }
+        if (clientNumber && dto.getEntryNo() >= 1 && dto.getEntryNo() <= 5000) {
+            // Not handed out by the sequence again
+            sequenceAllocator.advancePast(jdbc, "payment_entries", dto.getAcademicYear(), dto.getEntryNo(), 5000,
+                    () -> getLastEntryNo(schoolId, dto.getAcademicYear()));
+        }
 
         insertDayBookEntry(jdbc, schoolId, dto.getAcademicYear(), entryNo, paymentDate, dto, dto.getExpenseName());
 
@@ -283,20 +263,21 @@ public class PaymentEntryService {
             // This prevents the timezone offset from rolling it back to the 30th at midnight.
             java.sql.Timestamp dbTimestamp = java.sql.Timestamp.valueOf(paymentDate.atTime(java.time.LocalTime.now()));
 
-            jdbc.update(insertDayBookSQL,
-                    entryNo,
-                    "N/A",
-                    dto.getReceiverName(),
-                    dbTimestamp,
-                    brDescription,
-                    ledgerName,
-                    0.00,
-                    dto.getAmount(),
-                    dto.getPaymentMode(),
-                    operatorName,
-                    schoolId,
-                    academicYear
-            );
+            dayBookBalanceService.track(jdbc, DayBookBalanceService.DAY_BOOK, schoolId, entryNo,
+                    () -> jdbc.update(insertDayBookSQL,
+                            entryNo,
+                            "N/A",
+                            dto.getReceiverName(),
+                            dbTimestamp,
+                            brDescription,
+                            ledgerName,
+                            0.00,
+                            dto.getAmount(),
+                            dto.getPaymentMode(),
+                            operatorName,
+                            schoolId,
+                            academicYear
+                    ));
 
             log.info("✅ Day book entry created for payment: {}, Debit: {}, Ledger (MainHead): {}",
                     entryNo, dto.getAmount(), ledgerName);
@@ -391,7 +372,8 @@ public class PaymentEntryService {
 
             if (entryNo != null) {
                 String deleteDayBookSql = "DELETE FROM day_book WHERE br_number = ? AND school_id = ?";
-                jdbc.update(deleteDayBookSql, entryNo, schoolId);
+                dayBookBalanceService.track(jdbc, DayBookBalanceService.DAY_BOOK, schoolId, entryNo,
+                        () -> jdbc.update(deleteDayBookSql, entryNo, schoolId));
 
                 String deletePaymentSql = "DELETE FROM payment_entries WHERE id = ? AND school_id = ?";
                 int rows = jdbc.update(deletePaymentSql, id, schoolId);
@@ -468,15 +450,16 @@ public class PaymentEntryService {
         """;
 
         try {
-            jdbc.update(updateDayBookSQL,
-                    dto.getReceiverName(),
-                    dto.getDescription(),
-                    ledgerName,
-                    dto.getAmount(),
-                    dto.getPaymentMode(),
-                    entryNo,
-                    schoolId
-            );
+            dayBookBalanceService.track(jdbc, DayBookBalanceService.DAY_BOOK, schoolId, entryNo,
+                    () -> jdbc.update(updateDayBookSQL,
+                            dto.getReceiverName(),
+                            dto.getDescription(),
+                            ledgerName,
+                            dto.getAmount(),
+                            dto.getPaymentMode(),
+                            entryNo,
+                            schoolId
+                    ));
             log.info("✅ Updated day book entry for {}", entryNo);
         } catch (Exception e) {
             log.error("❌ Failed to update day book entry: {}", e.getMessage());
@@ -484,7 +467,7 @@ public class PaymentEntryService {
     }
 
     public List<Map<String, Object>> getDayBookSummary(String schoolId, String academicYear,
-                                                       String fromDate, String toDate) {
+                                                       LocalDate fromDate, LocalDate toDate) {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
         ensureTablesExist(jdbc);
 
@@ -508,14 +491,15 @@ public class PaymentEntryService {
         params.add(schoolId);
         params.add(academicYear);
 
-        if (fromDate != null && !fromDate.trim().isEmpty()) {
-            sql.append(" AND DATE(br_date) >= ?");
+        if (fromDate != null) {
+            // Plain range on br_date so idx_br_date is used
+            sql.append(" AND br_date >= ?");
             params.add(fromDate);
         }
 
-        if (toDate != null && !toDate.trim().isEmpty()) {
-            sql.append(" AND DATE(br_date) <= ?");
-            params.add(toDate);
+        if (toDate != null) {
+            sql.append(" AND br_date < ?");
+            params.add(toDate.plusDays(1));
         }
 
         sql.append(" ORDER BY br_date DESC, br_number DESC");
@@ -1,168 +1,164 @@
 package com.backend.school_erp.service.Transaction;
 
 import com.backend.school_erp.DTO.Transaction.ReceiptEntryDTO;
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
 import com.backend.school_erp.entity.Transaction.ReceiptEntry;
+import com.backend.school_erp.service.Export.ExportWriter;
+import com.backend.school_erp.service.Export.ReportExportService;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import javax.sql.DataSource;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 
 @Service
 @Slf4j
 public class ReceiptEntryService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
-    private final DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
 
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            log.info("🔗 Creating HikariCP DataSource for school: {}", id);
-            HikariConfig config = new HikariConfig();
-
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-
-            config.setMaximumPoolSize(15);
-            config.setMinimumIdle(5);
-            config.setIdleTimeout(30000);
-            config.setMaxLifetime(1800000);
-            config.setConnectionTimeout(30000);
-            config.setValidationTimeout(5000);
-            config.setLeakDetectionThreshold(10000);
-
-            return new HikariDataSource(config);
-        });
-    }
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
+
+    @Autowired
+    private TenantSequenceAllocator sequenceAllocator;
+
+    @Autowired
+    private DayBookBalanceService dayBookBalanceService;
+
+    @Autowired
+    private ReportExportService reportExportService;
+
+    private static final String RECEIPTS_WITH_DAY_BOOK_SQL = """
+            SELECT 
+                r.*,
+                d.br_number as day_book_ref,
+                d.br_date as day_book_date,
+                d.credit as day_book_amount
+            FROM receipt_entries r
+            LEFT JOIN day_book d ON d.br_number = r.receipt_no
+                AND d.school_id = r.school_id 
+                AND d.academic_year = r.academic_year
+            WHERE r.school_id = ? AND r.academic_year = ?
+            ORDER BY 
+                CASE 
+                    WHEN r.receipt_no REGEXP '^In[0-9]+$' 
+                    THEN CAST(SUBSTRING(r.receipt_no, 3) AS UNSIGNED)
+                    ELSE CAST(r.receipt_no AS UNSIGNED)
+                END DESC
+        """;
+
+    private final DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     private void ensureTablesExist(JdbcTemplate jdbc) {
-        try {
-            // REMOVED transaction_id
-            String createReceiptEntries = """
-                CREATE TABLE IF NOT EXISTS receipt_entries (
-                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                    receipt_no VARCHAR(10) NOT NULL,  -- Stores In0001-In5000 format
-                    date DATE NOT NULL,
-                    category VARCHAR(255) NOT NULL,      -- Main Head Name
-                    account_head VARCHAR(255) NOT NULL,  -- Sub Head Name
-                    person_name VARCHAR(255) NOT NULL,
-                    description TEXT,
-                    receipt_mode VARCHAR(50) NOT NULL,
-                    reference_id VARCHAR(255),
-                    amount DECIMAL(12,2) NOT NULL,
-                    school_id VARCHAR(50) NOT NULL,
-                    academic_year VARCHAR(50) NOT NULL,
-                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                    UNIQUE KEY unique_receipt (receipt_no, school_id, academic_year),
-                    INDEX idx_school_academic (school_id, academic_year),
-                    INDEX idx_receipt_no (receipt_no),
-                    INDEX idx_date (date),
-                    INDEX idx_person (person_name),
-                    INDEX idx_category (category),
-                    INDEX idx_account_head (account_head)
-                ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
-            """;
+        schemaMigrator.migrate(jdbc, "ReceiptEntryService", 1, () -> {
+            try {
+                // REMOVED transaction_id
+                String createReceiptEntries = """
+                    CREATE TABLE IF NOT EXISTS receipt_entries (
+                        id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                        receipt_no VARCHAR(10) NOT NULL,  -- Stores In0001-In5000 format
+                        date DATE NOT NULL,
+                        category VARCHAR(255) NOT NULL,      -- Main Head Name
+                        account_head VARCHAR(255) NOT NULL,  -- Sub Head Name
+                        person_name VARCHAR(255) NOT NULL,
+                        description TEXT,
+                        receipt_mode VARCHAR(50) NOT NULL,
+                        reference_id VARCHAR(255),
+                        amount DECIMAL(12,2) NOT NULL,
+                        school_id VARCHAR(50) NOT NULL,
+                        academic_year VARCHAR(50) NOT NULL,
+                        created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                        UNIQUE KEY unique_receipt (receipt_no, school_id, academic_year),
+                        INDEX idx_school_academic (school_id, academic_year),
+                        INDEX idx_receipt_no (receipt_no),
+                        INDEX idx_date (date),
+                        INDEX idx_person (person_name),
+                        INDEX idx_category (category),
+                        INDEX idx_account_head (account_head)
+                    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
+                """;
 
-            String createDayBook = """
-                CREATE TABLE IF NOT EXISTS day_book (
-                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                    br_number VARCHAR(100) NOT NULL,  
-                    admission_number VARCHAR(50) DEFAULT 'N/A',
-                    name VARCHAR(255) NOT NULL,
-                    br_date TIMESTAMP NOT NULL,
-                    description VARCHAR(500),
-                    ledger VARCHAR(255) NOT NULL,       -- Stores MAIN HEAD (Category)
-                    credit DECIMAL(12,2) DEFAULT 0.00,
-                    debit DECIMAL(12,2) DEFAULT 0.00,
-                    mode VARCHAR(50) NOT NULL,
-                    operator_name VARCHAR(255) NOT NULL,
-                    school_id VARCHAR(50) NOT NULL,
-                    academic_year VARCHAR(50) NOT NULL,
-                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                    INDEX idx_br_number (br_number),
-                    INDEX idx_school_academic (school_id, academic_year),
-                    INDEX idx_br_date (br_date),
-                    INDEX idx_name (name),
-                    INDEX idx_ledger (ledger)
-                ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
-            """;
+                String createDayBook = """
+                    CREATE TABLE IF NOT EXISTS day_book (
+                        id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                        br_number VARCHAR(100) NOT NULL,  
+                        admission_number VARCHAR(50) DEFAULT 'N/A',
+                        name VARCHAR(255) NOT NULL,
+                        br_date TIMESTAMP NOT NULL,
+                        description VARCHAR(500),
+                        ledger VARCHAR(255) NOT NULL,       -- Stores MAIN HEAD (Category)
+                        credit DECIMAL(12,2) DEFAULT 0.00,
+                        debit DECIMAL(12,2) DEFAULT 0.00,
+                        mode VARCHAR(50) NOT NULL,
+                        operator_name VARCHAR(255) NOT NULL,
+                        school_id VARCHAR(50) NOT NULL,
+                        academic_year VARCHAR(50) NOT NULL,
+                        created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                        INDEX idx_br_number (br_number),
+                        INDEX idx_school_academic (school_id, academic_year),
+                        INDEX idx_br_date (br_date),
+                        INDEX idx_name (name),
+                        INDEX idx_ledger (ledger)
+                    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
+                """;
 
-            jdbc.execute(createReceiptEntries);
-            jdbc.execute(createDayBook);
+                jdbc.execute(createReceiptEntries);
+                jdbc.execute(createDayBook);
 
-            log.info("✅ Receipt entry and day_book tables created or already exist");
-        } catch (Exception e) {
-            log.error("❌ Failed to create tables: {}", e.getMessage());
-            throw new RuntimeException("Database table creation failed: " + e.getMessage(), e);
-        }
+                log.info("✅ Receipt entry and day_book tables created or already exist");
+            } catch (Exception e) {
+                log.error("❌ Failed to create tables: {}", e.getMessage());
+                throw new RuntimeException("Database table creation failed: " + e.getMessage(), e);
+            }
+        });
     }
 
     private String generateReceiptNo(String schoolId, String academicYear) {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
         ensureTablesExist(jdbc);
 
-        try {
-            String lastReceiptSql = """
-                SELECT receipt_no FROM receipt_entries 
-                WHERE school_id = ? AND academic_year = ? 
-                ORDER BY 
-                    CASE 
-                        WHEN receipt_no REGEXP '^In[0-9]+$' 
-                        THEN CAST(SUBSTRING(receipt_no, 3) AS UNSIGNED)
-                        ELSE CAST(receipt_no AS UNSIGNED)
-                    END DESC 
-                LIMIT 1
-            """;
-
-            String lastReceiptNo = null;
-            try {
-                lastReceiptNo = jdbc.queryForObject(lastReceiptSql, String.class, schoolId, academicYear);
-            } catch (Exception e) {
-                log.debug("No previous receipts found, starting from In0001");
-            }
-
-            int nextNumber;
-            if (lastReceiptNo != null && lastReceiptNo.startsWith("In")) {
-                String numericPart = lastReceiptNo.substring(2);
-                try {
-                    nextNumber = Integer.parseInt(numericPart);
-                } catch (NumberFormatException e) {
-                    log.warn("Invalid receipt number format: {}, starting from 1", lastReceiptNo);
-                    nextNumber = 0;
-                }
-                nextNumber++;
+        // Seeded once from the highest receipt of the year, then allocated without scanning
+        long next = sequenceAllocator.next(jdbc, "receipt_entries", academicYear,
+                () -> parseReceiptNumber(getLastReceiptNo(schoolId, academicYear)));
+        return "In" + String.format("%04d", TenantSequenceAllocator.wrap(next, 5000));
+    }
 
-                if (nextNumber > 5000) {
-                    nextNumber = 1;
-                }
-            } else {
-                nextNumber = 1;
-            }
+    // A receipt number the client sent is not handed out by the sequence again
+    private void advanceReceiptNo(JdbcTemplate jdbc, String schoolId, String academicYear, String receiptNo) {
+        String digits = receiptNo.replaceAll("[^0-9]", "");
+        long number = digits.isEmpty() || digits.length() > 9 ? 0 : Long.parseLong(digits);
+        if (number >= 1 && number <= 5000) {
+            sequenceAllocator.advancePast(jdbc, "receipt_entries", academicYear, number, 5000,
+                    () -> parseReceiptNumber(getLastReceiptNo(schoolId, academicYear)));
+        }
+    }
 
-            return "In" + String.format("%04d", nextNumber);
+    private boolean receiptNoExists(JdbcTemplate jdbc, String receiptNo, String schoolId, String academicYear) {
+        Integer existingCount = jdbc.queryForObject(
+                "SELECT COUNT(*) FROM receipt_entries WHERE receipt_no = ? AND school_id = ? AND academic_year = ?",
+                Integer.class, receiptNo, schoolId, academicYear);
+        return existingCount != null && existingCount > 0;
+    }
 
-        } catch (Exception e) {
-            log.error("Error generating receipt number: {}", e.getMessage());
-            Integer count = getReceiptCount(schoolId, academicYear);
-            int nextNumber = (count % 5000) + 1;
-            return "In" + String.format("%04d", nextNumber);
+    private long parseReceiptNumber(String receiptNo) {
+        try {
+            return Long.parseLong(receiptNo.startsWith("In") ? receiptNo.substring(2) : receiptNo);
+        } catch (NumberFormatException e) {
+            log.warn("Invalid receipt number format: {}, starting from 1", receiptNo);
+            return 0;
         }
     }
 
@@ -239,7 +235,9 @@ public class ReceiptEntryService {
         log.info("Selected main head: {}, Auto-selected sub head: {}", dto.getCategory(), accountHead);
 
         String receiptNo;
+        boolean clientNumber = false;
         if (dto.getReceiptNo() != null && !dto.getReceiptNo().trim().isEmpty()) {
+            clientNumber = true;
             receiptNo = dto.getReceiptNo().trim();
             if (!receiptNo.toUpperCase().startsWith("IN")) {
                 try {
@@ -249,19 +247,24 @@ public class ReceiptEntryService {
                         receiptNo = "In" + String.format("%04d", num);
                     } else {
                         receiptNo = generateReceiptNo(schoolId, dto.getAcademicYear());
+                        clientNumber = false;
                     }
                 } catch (NumberFormatException e) {
                     receiptNo = generateReceiptNo(schoolId, dto.getAcademicYear());
+                    clientNumber = false;
                 }
             }
         } else {
             receiptNo = generateReceiptNo(schoolId, dto.getAcademicYear());
         }
 
-        String checkSql = "SELECT COUNT(*) FROM receipt_entries WHERE receipt_no = ? AND school_id = ? AND academic_year = ?";
-        Integer existingCount = jdbc.queryForObject(checkSql, Integer.class, receiptNo, schoolId, dto.getAcademicYear());
-        if (existingCount != null && existingCount > 0) {
+        // Numbers reserved by another instance, or sent by a client, may already be stored
+        for (int attempts = 0; receiptNoExists(jdbc, receiptNo, schoolId, dto.getAcademicYear()); attempts++) {
+            if (attempts >= 5000) {
+                throw new RuntimeException("No free receipt number left for " + dto.getAcademicYear());
+            }
             receiptNo = generateReceiptNo(schoolId, dto.getAcademicYear());
+            clientNumber = false;
         }
 
         LocalDate receiptDate;
@@ -297,6 +300,9 @@ public class ReceiptEntryService {
         if (rows == 0) {
             throw new RuntimeException("Failed to insert receipt entry");
         }
+        if (clientNumber) {
+            advanceReceiptNo(jdbc, schoolId, dto.getAcademicYear(), receiptNo);
+        }
 
         insertDayBookEntry(jdbc, schoolId, dto.getAcademicYear(), receiptNo, receiptDate, dto, dto.getCategory());
 
@@ -337,20 +343,21 @@ public class ReceiptEntryService {
             // FIX: Using atTime(LocalTime.now()) ensures the Date is correct (31st) and includes current time
             java.sql.Timestamp dbTimeStamp = java.sql.Timestamp.valueOf(receiptDate.atTime(java.time.LocalTime.now()));
 
-            jdbc.update(insertDayBookSQL,
-                    receiptNo,
-                    "N/A",
-                    dto.getPersonName(),
-                    dbTimeStamp, // Date + Current Time
-                    dto.getDescription(),
-                    ledgerName,
-                    dto.getAmount(),
-                    0.00,
-                    dto.getReceiptMode(),
-                    operatorName,
-                    schoolId,
-                    academicYear
-            );
+            dayBookBalanceService.track(jdbc, DayBookBalanceService.DAY_BOOK, schoolId, receiptNo,
+                    () -> jdbc.update(insertDayBookSQL,
+                            receiptNo,
+                            "N/A",
+                            dto.getPersonName(),
+                            dbTimeStamp, // Date + Current Time
+                            dto.getDescription(),
+                            ledgerName,
+                            dto.getAmount(),
+                            0.00,
+                            dto.getReceiptMode(),
+                            operatorName,
+                            schoolId,
+                            academicYear
+                    ));
 
             log.info("✅ Day book entry created for receipt: {}, Ledger (MainHead): {}", receiptNo, ledgerName);
         } catch (Exception e) {
@@ -448,26 +455,15 @@ public class ReceiptEntryService {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
         ensureTablesExist(jdbc);
 
-        String sql = """
-            SELECT 
-                r.*,
-                d.br_number as day_book_ref,
-                d.br_date as day_book_date,
-                d.credit as day_book_amount
-            FROM receipt_entries r
-            LEFT JOIN day_book d ON d.br_number = r.receipt_no
-                AND d.school_id = r.school_id 
-                AND d.academic_year = r.academic_year
-            WHERE r.school_id = ? AND r.academic_year = ?
-            ORDER BY 
-                CASE 
-                    WHEN r.receipt_no REGEXP '^In[0-9]+$' 
-                    THEN CAST(SUBSTRING(r.receipt_no, 3) AS UNSIGNED)
-                    ELSE CAST(r.receipt_no AS UNSIGNED)
-                END DESC
-        """;
+        return jdbc.queryForList(RECEIPTS_WITH_DAY_BOOK_SQL, schoolId, academicYear);
+    }
 
-        return jdbc.queryForList(sql, schoolId, academicYear);
+    /** Same rows as getAllReceiptsWithDayBook, streamed to an export file */
+    public void exportReceiptsWithDayBook(String schoolId, String academicYear, ExportWriter writer) {
+        JdbcTemplate jdbc = getJdbcTemplate(schoolId);
+        ensureTablesExist(jdbc);
+
+        reportExportService.exportQuery(schoolId, RECEIPTS_WITH_DAY_BOOK_SQL, writer, schoolId, academicYear);
     }
 
     @Transactional
@@ -481,7 +477,8 @@ public class ReceiptEntryService {
 
             if (receiptNo != null) {
                 String deleteDayBookSql = "DELETE FROM day_book WHERE br_number = ? AND school_id = ?";
-                jdbc.update(deleteDayBookSql, receiptNo, schoolId);
+                dayBookBalanceService.track(jdbc, DayBookBalanceService.DAY_BOOK, schoolId, receiptNo,
+                        () -> jdbc.update(deleteDayBookSql, receiptNo, schoolId));
 
                 String deleteReceiptSql = "DELETE FROM receipt_entries WHERE id = ? AND school_id = ?";
                 int rows = jdbc.update(deleteReceiptSql, id, schoolId);
@@ -550,15 +547,16 @@ public class ReceiptEntryService {
         """;
 
         try {
-            jdbc.update(updateDayBookSQL,
-                    dto.getPersonName(),
-                    dto.getDescription(),
-                    ledgerName,
-                    dto.getAmount(),
-                    dto.getReceiptMode(),
-                    receiptNo,
-                    schoolId
-            );
+            dayBookBalanceService.track(jdbc, DayBookBalanceService.DAY_BOOK, schoolId, receiptNo,
+                    () -> jdbc.update(updateDayBookSQL,
+                            dto.getPersonName(),
+                            dto.getDescription(),
+                            ledgerName,
+                            dto.getAmount(),
+                            dto.getReceiptMode(),
+                            receiptNo,
+                            schoolId
+                    ));
             log.info("✅ Updated day book entry for {}", receiptNo);
         } catch (Exception e) {
             log.error("❌ Failed to update day book entry: {}", e.getMessage());
@@ -566,7 +564,7 @@ public class ReceiptEntryService {
     }
 
     public List<Map<String, Object>> getDayBookSummary(String schoolId, String academicYear,
-                                                       String fromDate, String toDate) {
+                                                       LocalDate fromDate, LocalDate toDate) {
         JdbcTemplate jdbc = getJdbcTemplate(schoolId);
         ensureTablesExist(jdbc);
 
@@ -590,14 +588,15 @@ public class ReceiptEntryService {
         params.add(schoolId);
         params.add(academicYear);
 
-        if (fromDate != null && !fromDate.trim().isEmpty()) {
-            sql.append(" AND DATE(br_date) >= ?");
+        if (fromDate != null) {
+            // Plain range on br_date so idx_br_date is used
+            sql.append(" AND br_date >= ?");
             params.add(fromDate);
         }
 
-        if (toDate != null && !toDate.trim().isEmpty()) {
-            sql.append(" AND DATE(br_date) <= ?");
-            params.add(toDate);
+        if (toDate != null) {
+            sql.append(" AND br_date < ?");
+            params.add(toDate.plusDays(1));
         }
 
         sql.append(" ORDER BY br_date DESC, br_number DESC");
@@ -1,48 +1,33 @@
 package com.backend.school_erp.service.Transaction;
 
 import com.backend.school_erp.DTO.Transaction.StaffResponseDTO;
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
 import com.backend.school_erp.entity.Transaction.StaffUpdate;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
 import javax.sql.DataSource;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 
 @Service
 @Slf4j
 public class StaffPhoneService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
 
     /** Get pooled DataSource for a school */
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            log.info("🔗 Creating HikariCP DataSource for school: {}", id);
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-
-            config.setMaximumPoolSize(10);
-            config.setMinimumIdle(2);
-            config.setIdleTimeout(30000);
-            config.setMaxLifetime(1800000);
-            config.setConnectionTimeout(10000);
-
-            return new HikariDataSource(config);
-        });
-    }
 
     /** Get JdbcTemplate for a school */
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     /** Get staff list for dropdown */
@@ -191,21 +176,23 @@ public class StaffPhoneService {
         try {
             JdbcTemplate jdbc = getJdbcTemplate(schoolId);
 
-            // Create audit table if not exists
-            jdbc.execute("""
-                CREATE TABLE IF NOT EXISTS staff_phone_audit (
-                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                    staff_code VARCHAR(100) NOT NULL,
-                    old_phone_number VARCHAR(20),
-                    new_phone_number VARCHAR(20) NOT NULL,
-                    updated_by VARCHAR(100) NOT NULL,
-                    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                    school_id VARCHAR(50) NOT NULL,
-                    academic_year VARCHAR(50) NOT NULL,
-                    INDEX idx_staff_code (staff_code),
-                    INDEX idx_updated_at (updated_at)
-                )
-                """);
+            // Create audit table once per school
+            schemaMigrator.migrate(jdbc, "StaffPhoneService", 1, () -> {
+                jdbc.execute("""
+                    CREATE TABLE IF NOT EXISTS staff_phone_audit (
+                        id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                        staff_code VARCHAR(100) NOT NULL,
+                        old_phone_number VARCHAR(20),
+                        new_phone_number VARCHAR(20) NOT NULL,
+                        updated_by VARCHAR(100) NOT NULL,
+                        updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                        school_id VARCHAR(50) NOT NULL,
+                        academic_year VARCHAR(50) NOT NULL,
+                        INDEX idx_staff_code (staff_code),
+                        INDEX idx_updated_at (updated_at)
+                    )
+                    """);
+            });
 
             // Get old phone number for audit
             String oldPhoneSql = "SELECT mobile_number FROM staff WHERE school_id = ? AND academic_year = ? AND staff_code = ?";
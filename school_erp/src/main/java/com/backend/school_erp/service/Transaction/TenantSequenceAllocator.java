@@ -0,0 +1,200 @@
+package com.backend.school_erp.service.Transaction;
+
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Hands out bill, receipt, entry and QR numbers without scanning the tables they end up in.
+ *
+ * Every (series, scope) of a school has one row in the school's {@code number_sequence} table
+ * holding the next unreserved value. A block of values is reserved from that row with a single
+ * atomic UPDATE and then handed out from memory, so concurrent cashiers never get the same
+ * number and most numbers cost no round trip at all. Values not handed out before a restart are
+ * skipped.
+ *
+ * The row is seeded from the old scan the first time a series is used, so numbering carries on
+ * from the last number already stored. Values only ever grow; series that restart after 5000 map
+ * them back with {@link #wrap}.
+ */
+@Service
+@Slf4j
+public class TenantSequenceAllocator {
+
+    // Scope of series that are not split by academic year
+    public static final String ALL_YEARS = "*";
+
+    private static final String TABLE = "number_sequence";
+
+    private final TenantDataSourceRouter tenantDataSourceRouter;
+    private final TenantSchemaMigrator schemaMigrator;
+
+    // schoolId|series|scope -> values reserved but not handed out yet
+    private final Map<String, Block> blocks = new ConcurrentHashMap<>();
+
+    @Value("${tenant.sequence.block-size:20}")
+    private int blockSize;
+
+    public TenantSequenceAllocator(TenantDataSourceRouter tenantDataSourceRouter, TenantSchemaMigrator schemaMigrator) {
+        this.tenantDataSourceRouter = tenantDataSourceRouter;
+        this.schemaMigrator = schemaMigrator;
+    }
+
+    /**
+     * Takes the next value of a series. {@code lastUsed} returns the highest value already stored
+     * and is only called to seed a series that has no row yet.
+     */
+    public long next(JdbcTemplate jdbc, String series, String scope, LongSupplier lastUsed) {
+        Block block = blocks.computeIfAbsent(key(jdbc, series, scope), k -> new Block());
+        synchronized (block) {
+            if (block.next >= block.limit) {
+                block.next = reserve(jdbc, series, scope, lastUsed);
+                block.limit = block.next + blockSize;
+            }
+            return block.next++;
+        }
+    }
+
+    /**
+     * The value {@link #next} would return, without taking it. Meant for showing the upcoming
+     * number on a form; the saved number may differ if another counter saves first.
+     */
+    public long peek(JdbcTemplate jdbc, String series, String scope, LongSupplier lastUsed) {
+        Block block = blocks.get(key(jdbc, series, scope));
+        if (block != null) {
+            synchronized (block) {
+                if (block.next < block.limit) {
+                    return block.next;
+                }
+            }
+        }
+        ensureTable(jdbc);
+        List<Long> stored = jdbc.queryForList(
+                "SELECT next_value FROM " + TABLE + " WHERE series = ? AND scope = ?", Long.class, series, scope);
+        return stored.isEmpty() ? lastUsed.getAsLong() + 1 : stored.get(0);
+    }
+
+    /**
+     * Call after storing a value the series did not hand out, such as a number the client sent
+     * with its form. Moves the stored row past it, and this instance's reserved block when the
+     * block holds it, so the value is not handed out again. Blocks reserved by other instances
+     * can still hold it; callers check the number is free before saving.
+     *
+     * For a series that wraps, {@code used} is a wrapped value (1..{@code wrapAt}) and counts as
+     * ahead only when it lies within half a round of the next value; pass 0 as {@code wrapAt}
+     * for a series that does not wrap.
+     */
+    public void advancePast(JdbcTemplate jdbc, String series, String scope, long used, long wrapAt, LongSupplier lastUsed) {
+        ensureTable(jdbc);
+        seed(jdbc, series, scope, lastUsed);
+
+        Long current = jdbc.queryForObject(
+                "SELECT next_value FROM " + TABLE + " WHERE series = ? AND scope = ?", Long.class, series, scope);
+        long ahead = distance(current, used, wrapAt);
+        if (ahead >= 0) {
+            jdbc.update("UPDATE " + TABLE + " SET next_value = GREATEST(next_value, ?) WHERE series = ? AND scope = ?",
+                    current + ahead + 1, series, scope);
+        }
+
+        Block block = blocks.get(key(jdbc, series, scope));
+        if (block != null) {
+            synchronized (block) {
+                long inBlock = block.next < block.limit ? distance(block.next, used, wrapAt) : -1;
+                if (inBlock >= 0 && inBlock < block.limit - block.next) {
+                    block.next += inBlock + 1;
+                }
+            }
+        }
+    }
+
+    // Steps from the raw value next to the value used, or -1 when it is behind
+    private static long distance(long next, long used, long wrapAt) {
+        if (wrapAt <= 0) {
+            return used >= next ? used - next : -1;
+        }
+        long ahead = Math.floorMod(used - wrap(next, wrapAt), wrapAt);
+        return ahead < wrapAt / 2 ? ahead : -1;
+    }
+
+    /**
+     * Maps an ever-growing value onto 1..{@code wrapAt}, e.g. 5001 -> 1 for a 5000-wrap series.
+     */
+    public static long wrap(long value, long wrapAt) {
+        return ((value - 1) % wrapAt) + 1;
+    }
+
+    /**
+     * Forgets the reserved blocks of a school, e.g. after its sequences were reset by hand.
+     */
+    public void evict(String schoolId) {
+        blocks.keySet().removeIf(key -> key.startsWith(schoolId + "|"));
+    }
+
+    private long reserve(JdbcTemplate jdbc, String series, String scope, LongSupplier lastUsed) {
+        ensureTable(jdbc);
+        seed(jdbc, series, scope, lastUsed);
+
+        // LAST_INSERT_ID(expr) hands the old value back on this connection, so read it on the same one
+        Long first = jdbc.execute((ConnectionCallback<Long>) con -> {
+            try (PreparedStatement ps = con.prepareStatement(
+                    "UPDATE " + TABLE + " SET next_value = LAST_INSERT_ID(next_value) + ? WHERE series = ? AND scope = ?")) {
+                ps.setInt(1, blockSize);
+                ps.setString(2, series);
+                ps.setString(3, scope);
+                ps.executeUpdate();
+            }
+            try (Statement st = con.createStatement(); ResultSet rs = st.executeQuery("SELECT LAST_INSERT_ID()")) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        });
+        if (first == null) {
+            throw new IllegalStateException("Could not reserve numbers for sequence " + series);
+        }
+        return first;
+    }
+
+    private void seed(JdbcTemplate jdbc, String series, String scope, LongSupplier lastUsed) {
+        Integer rows = jdbc.queryForObject(
+                "SELECT COUNT(*) FROM " + TABLE + " WHERE series = ? AND scope = ?", Integer.class, series, scope);
+        if (rows == null || rows == 0) {
+            long seed = lastUsed.getAsLong() + 1;
+            // Another instance may seed at the same time, the first row wins
+            jdbc.update("INSERT IGNORE INTO " + TABLE + " (series, scope, next_value) VALUES (?, ?, ?)", series, scope, seed);
+            log.info("🔢 Seeded sequence {} [{}] at {}", series, scope, seed);
+        }
+    }
+
+    private void ensureTable(JdbcTemplate jdbc) {
+        schemaMigrator.migrate(jdbc, "TenantSequenceAllocator", 1, () -> jdbc.execute("""
+            CREATE TABLE IF NOT EXISTS number_sequence (
+                series VARCHAR(100) NOT NULL,
+                scope VARCHAR(50) NOT NULL,
+                next_value BIGINT NOT NULL,
+                updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+                PRIMARY KEY (series, scope)
+            )
+        """));
+    }
+
+    private String key(JdbcTemplate jdbc, String series, String scope) {
+        return tenantDataSourceRouter.getSchoolId(jdbc.getDataSource()) + "|" + series + "|" + scope;
+    }
+
+    private static class Block {
+        long next;
+        long limit;
+    }
+}
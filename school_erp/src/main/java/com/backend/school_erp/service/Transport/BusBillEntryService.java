@@ -1,160 +1,191 @@
 package com.backend.school_erp.service.Transport;
 
+import com.backend.school_erp.DTO.KeysetPage;
 import com.backend.school_erp.DTO.Transport.BusBillEntryDTO;
-import com.backend.school_erp.config.DatabaseConfig;
+import com.backend.school_erp.config.SchoolDataChangedEvent;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
 import com.backend.school_erp.entity.Transport.BusBillEntry;
+import com.backend.school_erp.service.Paging.KeysetQuery;
+import com.backend.school_erp.service.Paging.KeysetSort;
+import com.backend.school_erp.service.Transaction.FeeBalanceService;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
-import javax.sql.DataSource;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 
 @Service
 @Slf4j
 public class BusBillEntryService {
 
-    private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    // Paged list rows: every column but the per-head payment JSON
+    private static final String BUS_BILL_LIST_COLUMNS = """
+            id, bus_bill_number, admission_number, student_name, father_name, standard, section, boarding_point,
+            bus_bill_date, original_bus_amount, bus_paid_amount, remaining_balance, payment_mode, payment_number,
+            operator_name, transaction_narrative, transaction_date, route_number, school_id, academic_year,
+            total_bus_paid_amount, total_bus_concession_amount, student_id, bus_fee_amount, created_at, updated_at""";
 
-    private DataSource getDataSource(String schoolId) {
-        return dataSourceCache.computeIfAbsent(schoolId, id -> {
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DatabaseConfig.AWS_DB_BASE_URL + id + DatabaseConfig.DB_PARAMS);
-            config.setUsername(DatabaseConfig.AWS_DB_USER);
-            config.setPassword(DatabaseConfig.AWS_DB_PASS);
-            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
-            config.setMaximumPoolSize(10);
-            return new HikariDataSource(config);
-        });
-    }
+    private static final KeysetSort LATEST = KeysetSort.desc("latest", "bus_bill_date");
+    private static final Map<String, KeysetSort> BUS_BILL_SORTS = Map.of(
+            "latest", LATEST,
+            "billNumber", KeysetSort.asc("billNumber", "bus_bill_number"));
+
+    @Autowired
+    private TenantDataSourceRouter tenantDataSourceRouter;
+
+    @Autowired
+    private TenantSchemaMigrator schemaMigrator;
+
+    @Autowired
+    private FeeBalanceService feeBalanceService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
 
     private JdbcTemplate getJdbcTemplate(String schoolId) {
-        return new JdbcTemplate(getDataSource(schoolId));
+        return tenantDataSourceRouter.getJdbcTemplate(schoolId);
     }
 
     private void ensureTableExists(JdbcTemplate jdbc) {
-        try {
-            // Ensure Bus Table Exists
-            jdbc.execute("""
-                CREATE TABLE IF NOT EXISTS bus_bill_entries (
-                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                    bus_bill_number VARCHAR(100) NOT NULL UNIQUE,
-                    admission_number VARCHAR(50) NOT NULL,
-                    student_name VARCHAR(255) NOT NULL,
-                    father_name VARCHAR(255),
-                    standard VARCHAR(50),
-                    section VARCHAR(50),
-                    boarding_point VARCHAR(255),
-                    bus_bill_date TIMESTAMP NOT NULL,
-                    original_bus_amount DECIMAL(10,2) DEFAULT 0,
-                    bus_paid_amount DECIMAL(10,2) DEFAULT 0,
-                    remaining_balance DECIMAL(10,2) DEFAULT 0,
-                    payment_mode VARCHAR(50) NOT NULL,
-                    payment_number VARCHAR(100),
-                    operator_name VARCHAR(255) NOT NULL,
-                    transaction_narrative TEXT,
-                    transaction_date TIMESTAMP,
-                    route_number VARCHAR(100),
-                    school_id VARCHAR(50) NOT NULL,
-                    academic_year VARCHAR(50) NOT NULL,
-                    bus_fee_payments_json JSON,
-                    total_bus_paid_amount DECIMAL(10,2) DEFAULT 0,
-                    total_bus_concession_amount DECIMAL(10,2) DEFAULT 0,
-                    student_id BIGINT,
-                    bus_fee_amount DECIMAL(10,2) DEFAULT 0,
-                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
-                    INDEX idx_bus_bill_number (bus_bill_number),
-                    INDEX idx_admission_number (admission_number)
-                )
-            """);
-
-            // Ensure Billing Table Exists (for sync)
-            jdbc.execute("""
-                CREATE TABLE IF NOT EXISTS billing_entries (
-                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                    bill_number VARCHAR(100) NOT NULL UNIQUE,
-                    admission_number VARCHAR(50) NOT NULL,
-                    student_name VARCHAR(255) NOT NULL,
-                    father_name VARCHAR(255),
-                    standard VARCHAR(50),
-                    section VARCHAR(50),
-                    boarding_point VARCHAR(255),
-                    bill_date TIMESTAMP NOT NULL,
-                    remaining_balance DECIMAL(10,2) DEFAULT 0,
-                    paid_amount DECIMAL(10,2) DEFAULT 0,
-                    payment_mode VARCHAR(50) NOT NULL,
-                    payment_number VARCHAR(100),
-                    operator_name VARCHAR(255) NOT NULL,
-                    transaction_narrative TEXT,
-                    transaction_date TIMESTAMP,
-                    route_number VARCHAR(100),
-                    school_id VARCHAR(50) NOT NULL,
-                    academic_year VARCHAR(50) NOT NULL,
-                    fee_payments_json JSON,
-                    total_paid_amount DECIMAL(10,2) DEFAULT 0,
-                    total_concession_amount DECIMAL(10,2) DEFAULT 0,
-                    student_id BIGINT,
-                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
-                )
-            """);
-        } catch (Exception e) {
-            throw new RuntimeException("Database table creation failed", e);
-        }
+        schemaMigrator.migrate(jdbc, "BusBillEntryService", 1, () -> {
+            try {
+                // Ensure Bus Table Exists
+                jdbc.execute("""
+                    CREATE TABLE IF NOT EXISTS bus_bill_entries (
+                        id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                        bus_bill_number VARCHAR(100) NOT NULL UNIQUE,
+                        admission_number VARCHAR(50) NOT NULL,
+                        student_name VARCHAR(255) NOT NULL,
+                        father_name VARCHAR(255),
+                        standard VARCHAR(50),
+                        section VARCHAR(50),
+                        boarding_point VARCHAR(255),
+                        bus_bill_date TIMESTAMP NOT NULL,
+                        original_bus_amount DECIMAL(10,2) DEFAULT 0,
+                        bus_paid_amount DECIMAL(10,2) DEFAULT 0,
+                        remaining_balance DECIMAL(10,2) DEFAULT 0,
+                        payment_mode VARCHAR(50) NOT NULL,
+                        payment_number VARCHAR(100),
+                        operator_name VARCHAR(255) NOT NULL,
+                        transaction_narrative TEXT,
+                        transaction_date TIMESTAMP,
+                        route_number VARCHAR(100),
+                        school_id VARCHAR(50) NOT NULL,
+                        academic_year VARCHAR(50) NOT NULL,
+                        bus_fee_payments_json JSON,
+                        total_bus_paid_amount DECIMAL(10,2) DEFAULT 0,
+                        total_bus_concession_amount DECIMAL(10,2) DEFAULT 0,
+                        student_id BIGINT,
+                        bus_fee_amount DECIMAL(10,2) DEFAULT 0,
+                        created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                        updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+                        INDEX idx_bus_bill_number (bus_bill_number),
+                        INDEX idx_admission_number (admission_number)
+                    )
+                """);
+
+                // Ensure Billing Table Exists (for sync)
+                jdbc.execute("""
+                    CREATE TABLE IF NOT EXISTS billing_entries (
+                        id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                        bill_number VARCHAR(100) NOT NULL UNIQUE,
+                        admission_number VARCHAR(50) NOT NULL,
+                        student_name VARCHAR(255) NOT NULL,
+                        father_name VARCHAR(255),
+                        standard VARCHAR(50),
+                        section VARCHAR(50),
+                        boarding_point VARCHAR(255),
+                        bill_date TIMESTAMP NOT NULL,
+                        remaining_balance DECIMAL(10,2) DEFAULT 0,
+                        paid_amount DECIMAL(10,2) DEFAULT 0,
+                        payment_mode VARCHAR(50) NOT NULL,
+                        payment_number VARCHAR(100),
+                        operator_name VARCHAR(255) NOT NULL,
+                        transaction_narrative TEXT,
+                        transaction_date TIMESTAMP,
+                        route_number VARCHAR(100),
+                        school_id VARCHAR(50) NOT NULL,
+                        academic_year VARCHAR(50) NOT NULL,
+                        fee_payments_json JSON,
+                        total_paid_amount DECIMAL(10,2) DEFAULT 0,
+                        total_concession_amount DECIMAL(10,2) DEFAULT 0,
+                        student_id BIGINT,
+                        created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                        updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+                    )
+                """);
+            } catch (Exception e) {
+                throw new RuntimeException("Database table creation failed", e);
+            }
+        });
     }
 
-    @Transactional
     public BusBillEntry processBusPayment(String schoolId, BusBillEntryDTO dto) {
         try {
             JdbcTemplate jdbc = getJdbcTemplate(schoolId);
             ensureTableExists(jdbc);
+            if (dto.getAcademicYear() != null) {
+                feeBalanceService.ensureYear(jdbc, dto.getAcademicYear());
+            }
 
-            double totalBusPaidAmount = 0.0;
-            double totalBusConcessionAmount = 0.0;
+            double busPaid = 0.0;
+            double busConcession = 0.0;
             if (dto.getBusFeePayments() != null) {
                 for (Map<String, Object> payment : dto.getBusFeePayments()) {
-                    totalBusPaidAmount += Double.parseDouble(payment.get("paidAmount").toString());
-                    totalBusConcessionAmount += Double.parseDouble(payment.get("concessionAmount").toString());
+                    busPaid += Double.parseDouble(payment.get("paidAmount").toString());
+                    busConcession += Double.parseDouble(payment.get("concessionAmount").toString());
                 }
             }
+            double totalBusPaidAmount = busPaid;
+            double totalBusConcessionAmount = busConcession;
 
             String busFeePaymentsJson = objectMapper.writeValueAsString(dto.getBusFeePayments());
             Double remainingBalance = dto.getRemainingBalance();
 
-            // 1. Insert into BUS BILL TABLE
-            int rowsBus = jdbc.update(
-                    "INSERT INTO bus_bill_entries (bus_bill_number, admission_number, student_name, father_name, standard, section, boarding_point, bus_bill_date, original_bus_amount, bus_paid_amount, remaining_balance, payment_mode, payment_number, operator_name, transaction_narrative, transaction_date, route_number, school_id, academic_year, bus_fee_payments_json, total_bus_paid_amount, total_bus_concession_amount, student_id, bus_fee_amount) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
-                    dto.getBusBillNumber(), dto.getAdmissionNumber(), dto.getStudentName(), dto.getFatherName(), dto.getStandard(), dto.getSection(), dto.getBoardingPoint(),
-                    dto.getBusBillDate() != null ? dto.getBusBillDate() : LocalDateTime.now(),
-                    dto.getOriginalBusAmount(), totalBusPaidAmount, remainingBalance, dto.getPaymentMode(), dto.getPaymentNumber(), dto.getOperatorName(), dto.getTransactionNarrative(), dto.getTransactionDate(),
-                    dto.getRouteNumber(), schoolId, dto.getAcademicYear(), busFeePaymentsJson, totalBusPaidAmount, totalBusConcessionAmount, dto.getStudentId(), dto.getBusFeeAmount()
-            );
-
-            // 2. Sync to BILLING ENTRY TABLE
-            jdbc.update(
-                    "INSERT INTO billing_entries (bill_number, admission_number, student_name, father_name, standard, section, boarding_point, bill_date, remaining_balance, paid_amount, payment_mode, payment_number, operator_name, transaction_narrative, transaction_date, route_number, school_id, academic_year, fee_payments_json, total_paid_amount, total_concession_amount, student_id) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
-                    dto.getBusBillNumber(),
-                    dto.getAdmissionNumber(), dto.getStudentName(), dto.getFatherName(), dto.getStandard(), dto.getSection(), dto.getBoardingPoint(),
-                    dto.getBusBillDate() != null ? dto.getBusBillDate() : LocalDateTime.now(),
-                    remainingBalance,
-                    totalBusPaidAmount, dto.getPaymentMode(), dto.getPaymentNumber(), dto.getOperatorName(), dto.getTransactionNarrative(), dto.getTransactionDate(), dto.getRouteNumber(),
-                    schoolId, dto.getAcademicYear(),
-                    busFeePaymentsJson,
-                    totalBusPaidAmount, totalBusConcessionAmount, dto.getStudentId()
-            );
-
-            Long busBillEntryId = jdbc.queryForObject("SELECT LAST_INSERT_ID()", Long.class);
+            // Both bill rows and the student's running balance commit together on the tenant database
+            Long busBillEntryId = tenantDataSourceRouter.getTransactionTemplate(schoolId).execute(status -> {
+                // 1. Insert into BUS BILL TABLE
+                jdbc.update(
+                        "INSERT INTO bus_bill_entries (bus_bill_number, admission_number, student_name, father_name, standard, section, boarding_point, bus_bill_date, original_bus_amount, bus_paid_amount, remaining_balance, payment_mode, payment_number, operator_name, transaction_narrative, transaction_date, route_number, school_id, academic_year, bus_fee_payments_json, total_bus_paid_amount, total_bus_concession_amount, student_id, bus_fee_amount) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                        dto.getBusBillNumber(), dto.getAdmissionNumber(), dto.getStudentName(), dto.getFatherName(), dto.getStandard(), dto.getSection(), dto.getBoardingPoint(),
+                        dto.getBusBillDate() != null ? dto.getBusBillDate() : LocalDateTime.now(),
+                        dto.getOriginalBusAmount(), totalBusPaidAmount, remainingBalance, dto.getPaymentMode(), dto.getPaymentNumber(), dto.getOperatorName(), dto.getTransactionNarrative(), dto.getTransactionDate(),
+                        dto.getRouteNumber(), schoolId, dto.getAcademicYear(), busFeePaymentsJson, totalBusPaidAmount, totalBusConcessionAmount, dto.getStudentId(), dto.getBusFeeAmount()
+                );
+                // Read on the same connection, before the billing_entries insert moves it on
+                Long insertedId = jdbc.queryForObject("SELECT LAST_INSERT_ID()", Long.class);
+
+                // 2. Sync to BILLING ENTRY TABLE
+                jdbc.update(
+                        "INSERT INTO billing_entries (bill_number, admission_number, student_name, father_name, standard, section, boarding_point, bill_date, remaining_balance, paid_amount, payment_mode, payment_number, operator_name, transaction_narrative, transaction_date, route_number, school_id, academic_year, fee_payments_json, total_paid_amount, total_concession_amount, student_id) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                        dto.getBusBillNumber(),
+                        dto.getAdmissionNumber(), dto.getStudentName(), dto.getFatherName(), dto.getStandard(), dto.getSection(), dto.getBoardingPoint(),
+                        dto.getBusBillDate() != null ? dto.getBusBillDate() : LocalDateTime.now(),
+                        remainingBalance,
+                        totalBusPaidAmount, dto.getPaymentMode(), dto.getPaymentNumber(), dto.getOperatorName(), dto.getTransactionNarrative(), dto.getTransactionDate(), dto.getRouteNumber(),
+                        schoolId, dto.getAcademicYear(),
+                        busFeePaymentsJson,
+                        totalBusPaidAmount, totalBusConcessionAmount, dto.getStudentId()
+                );
+
+                // 3. Running balance of the student
+                if (dto.getAcademicYear() != null) {
+                    feeBalanceService.recordBusPayments(jdbc, dto.getAcademicYear(), dto.getAdmissionNumber(),
+                            dto.getBusFeePayments(), 1, dto.getStandard(), dto.getSection(), dto.getTransactionNarrative());
+                }
+                return insertedId;
+            });
+            eventPublisher.publishEvent(new SchoolDataChangedEvent(schoolId, dto.getAcademicYear(), "bus fee posting"));
+
             return jdbc.queryForObject("SELECT * FROM bus_bill_entries WHERE id = ?", new BeanPropertyRowMapper<>(BusBillEntry.class), busBillEntryId);
 
         } catch (Exception e) {
@@ -220,6 +251,27 @@ public class BusBillEntryService {
         } catch (Exception e) { return new ArrayList<>(); }
     }
 
+    /**
+     * One page of the school's bus bills, newest first by default. The per-head payment JSON is
+     * left out of list rows; getBusBillEntryById returns the full bill.
+     */
+    public KeysetPage<BusBillEntry> getBusBillEntriesPage(String schoolId, String academicYear, String search, String paymentMode,
+                                                          String routeNumber, String sort, String cursor, Integer limit) {
+        JdbcTemplate jdbc = getJdbcTemplate(schoolId);
+        ensureTableExists(jdbc);
+
+        KeysetQuery query = new KeysetQuery(BUS_BILL_LIST_COLUMNS, "bus_bill_entries")
+                .where("school_id = ?", schoolId);
+        if (academicYear != null) {
+            query.where("academic_year = ?", academicYear);
+        }
+        return query
+                .whereEquals("payment_mode", paymentMode)
+                .whereEquals("route_number", routeNumber)
+                .search(search, "student_name", "admission_number", "bus_bill_number")
+                .page(jdbc, KeysetSort.resolve(BUS_BILL_SORTS, sort, LATEST), cursor, limit, new BeanPropertyRowMapper<>(BusBillEntry.class));
+    }
+
     public List<BusBillEntry> getBusBillEntriesByAdmissionNumber(String schoolId, String admissionNumber, String academicYear) {
         try {
             JdbcTemplate jdbc = getJdbcTemplate(schoolId);
@@ -253,17 +305,44 @@ public class BusBillEntryService {
             JdbcTemplate jdbc = getJdbcTemplate(schoolId);
             ensureTableExists(jdbc);
 
-            // Try to get bill number first to delete from main table too
-            try {
-                BusBillEntry entry = jdbc.queryForObject("SELECT * FROM bus_bill_entries WHERE id = ? AND school_id = ?", new BeanPropertyRowMapper<>(BusBillEntry.class), id, schoolId);
-                if (entry != null) {
-                    jdbc.update("DELETE FROM billing_entries WHERE bill_number = ? AND school_id = ?", entry.getBusBillNumber(), schoolId);
+            // Get the bill first so its billing_entries row and balance go with it
+            List<BusBillEntry> found = jdbc.query("SELECT * FROM bus_bill_entries WHERE id = ? AND school_id = ?",
+                    new BeanPropertyRowMapper<>(BusBillEntry.class), id, schoolId);
+            BusBillEntry entry = found.isEmpty() ? null : found.get(0);
+            if (entry == null) return false;
+
+            if (entry.getAcademicYear() != null) {
+                feeBalanceService.ensureYear(jdbc, entry.getAcademicYear());
+            }
+            // The bill rows and the balance reversal commit or roll back together
+            boolean deleted = Boolean.TRUE.equals(tenantDataSourceRouter.getTransactionTemplate(schoolId).execute(status -> {
+                jdbc.update("DELETE FROM billing_entries WHERE bill_number = ? AND school_id = ?", entry.getBusBillNumber(), schoolId);
+                if (jdbc.update("DELETE FROM bus_bill_entries WHERE id = ? AND school_id = ?", id, schoolId) == 0) {
+                    return false;
                 }
-            } catch (Exception ex) {
-                // Ignore if fetch fails, just proceed to delete from bus table
+                if (entry.getAcademicYear() != null) {
+                    reverseBusBalance(jdbc, entry);
+                }
+                return true;
+            }));
+            if (deleted) {
+                eventPublisher.publishEvent(new SchoolDataChangedEvent(schoolId, entry.getAcademicYear(), "bus bill deletion"));
             }
-
-            return jdbc.update("DELETE FROM bus_bill_entries WHERE id = ? AND school_id = ?", id, schoolId) > 0;
+            return deleted;
         } catch (Exception e) { throw new RuntimeException("Delete failed", e); }
     }
-}
\ No newline at end of file
+
+    // Takes a deleted bill's payments back out of the student's running balance
+    private void reverseBusBalance(JdbcTemplate jdbc, BusBillEntry entry) {
+        String json = entry.getBusFeePaymentsJson();
+        if (json == null || json.isBlank()) return;
+        List<Map<String, Object>> payments;
+        try {
+            payments = objectMapper.readValue(json, objectMapper.getTypeFactory().constructCollectionType(List.class, Map.class));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unreadable fee payments on bus bill " + entry.getBusBillNumber(), e);
+        }
+        feeBalanceService.recordBusPayments(jdbc, entry.getAcademicYear(), entry.getAdmissionNumber(), payments, -1,
+                entry.getStandard(), entry.getSection(), null);
+    }
+}
@@ -0,0 +1,119 @@
+package com.backend.school_erp.service.Transaction;
+
+import com.backend.school_erp.DTO.Transaction.PaymentEntryDTO;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PaymentEntryServiceTest {
+
+    private static final String SCHOOL = "school1";
+    private static final String YEAR = "2025-2026";
+
+    private DataSource dataSource;
+    private JdbcTemplate jdbc;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=DATE,VALUE;DB_CLOSE_DELAY=-1");
+        jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("""
+            CREATE TABLE payment_entries (
+                id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                entry_no VARCHAR(10) NOT NULL,
+                date DATE NOT NULL,
+                expense_name VARCHAR(255) NOT NULL,
+                account_head VARCHAR(255) NOT NULL,
+                receiver_name VARCHAR(255) NOT NULL,
+                description TEXT,
+                payment_mode VARCHAR(50) NOT NULL,
+                reference_id VARCHAR(255),
+                amount DECIMAL(12,2) NOT NULL,
+                school_id VARCHAR(50) NOT NULL,
+                academic_year VARCHAR(50) NOT NULL,
+                created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                UNIQUE (entry_no, school_id, academic_year)
+            )
+        """);
+    }
+
+    @Test
+    void autoNumberAfterClientNumberSkipsIt() {
+        PaymentEntryService service = newInstance();
+
+        assertThat(service.savePayment(SCHOOL, payment(null)).getEntryNo()).isEqualTo(1);
+        // The form numbers the next entry itself from /last-entry
+        assertThat(service.savePayment(SCHOOL, payment(2)).getEntryNo()).isEqualTo(2);
+        assertThat(service.savePayment(SCHOOL, payment(null)).getEntryNo()).isEqualTo(3);
+    }
+
+    @Test
+    void storedClientNumberIsReplaced() {
+        PaymentEntryService first = newInstance();
+        PaymentEntryService second = newInstance();
+
+        assertThat(first.savePayment(SCHOOL, payment(null)).getEntryNo()).isEqualTo(1);
+        assertThat(second.savePayment(SCHOOL, payment(null)).getEntryNo()).isEqualTo(21);
+        assertThat(first.savePayment(SCHOOL, payment(22)).getEntryNo()).isEqualTo(22);
+        assertThat(first.savePayment(SCHOOL, payment(22)).getEntryNo()).isEqualTo(2);
+        // The second instance's reserved block still holds 22
+        assertThat(second.savePayment(SCHOOL, payment(null)).getEntryNo()).isEqualTo(23);
+
+        List<String> stored = jdbc.queryForList("SELECT entry_no FROM payment_entries", String.class);
+        assertThat(stored).doesNotHaveDuplicates().hasSize(5);
+    }
+
+    // One application instance: its own allocator, so its own reserved blocks
+    private PaymentEntryService newInstance() {
+        TenantDataSourceRouter router = mock(TenantDataSourceRouter.class);
+        when(router.getDataSource(SCHOOL)).thenReturn(dataSource);
+        when(router.getJdbcTemplate(SCHOOL)).thenReturn(jdbc);
+        when(router.getSchoolId(any())).thenReturn(SCHOOL);
+
+        // Only the sequence table is created from the services' DDL; the rest is H2 DDL above
+        TenantSchemaMigrator schemaMigrator = mock(TenantSchemaMigrator.class);
+        doAnswer(invocation -> {
+            if ("TenantSequenceAllocator".equals(invocation.getArgument(1))) {
+                invocation.<Runnable>getArgument(3).run();
+            }
+            return null;
+        }).when(schemaMigrator).migrate(any(), anyString(), anyInt(), any());
+
+        TenantSequenceAllocator allocator = new TenantSequenceAllocator(router, schemaMigrator);
+        ReflectionTestUtils.setField(allocator, "blockSize", 20);
+
+        PaymentEntryService service = new PaymentEntryService();
+        ReflectionTestUtils.setField(service, "tenantDataSourceRouter", router);
+        ReflectionTestUtils.setField(service, "schemaMigrator", schemaMigrator);
+        ReflectionTestUtils.setField(service, "sequenceAllocator", allocator);
+        ReflectionTestUtils.setField(service, "dayBookBalanceService", mock(DayBookBalanceService.class));
+        return service;
+    }
+
+    private static PaymentEntryDTO payment(Integer entryNo) {
+        return PaymentEntryDTO.builder()
+                .entryNo(entryNo)
+                .date("2025-06-02")
+                .expenseName("Maintenance")
+                .paymentSubHead("Repairs")
+                .receiverName("Vendor")
+                .paymentMode("cash")
+                .amount(500.0)
+                .schoolId(SCHOOL)
+                .academicYear(YEAR)
+                .build();
+    }
+}
@@ -0,0 +1,131 @@
+package com.backend.school_erp.service.Transaction;
+
+import com.backend.school_erp.DTO.Transaction.ReceiptEntryDTO;
+import com.backend.school_erp.config.TenantDataSourceRouter;
+import com.backend.school_erp.config.TenantSchemaMigrator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ReceiptEntryServiceTest {
+
+    private static final String SCHOOL = "school1";
+    private static final String YEAR = "2025-2026";
+
+    private DataSource dataSource;
+    private JdbcTemplate jdbc;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=DATE,VALUE;DB_CLOSE_DELAY=-1");
+        jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("""
+            CREATE TABLE receipt_entries (
+                id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                receipt_no VARCHAR(10) NOT NULL,
+                date DATE NOT NULL,
+                category VARCHAR(255) NOT NULL,
+                account_head VARCHAR(255) NOT NULL,
+                person_name VARCHAR(255) NOT NULL,
+                description TEXT,
+                receipt_mode VARCHAR(50) NOT NULL,
+                reference_id VARCHAR(255),
+                amount DECIMAL(12,2) NOT NULL,
+                school_id VARCHAR(50) NOT NULL,
+                academic_year VARCHAR(50) NOT NULL,
+                created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                UNIQUE (receipt_no, school_id, academic_year)
+            )
+        """);
+    }
+
+    @Test
+    void autoNumberAfterClientNumberSkipsIt() {
+        ReceiptEntryService service = newInstance();
+
+        assertThat(service.saveReceipt(SCHOOL, receipt(null)).getReceiptNo()).isEqualTo("In0001");
+        // The form numbers the next receipt itself from /last-receipt
+        assertThat(service.saveReceipt(SCHOOL, receipt("In0002")).getReceiptNo()).isEqualTo("In0002");
+        assertThat(service.saveReceipt(SCHOOL, receipt(null)).getReceiptNo()).isEqualTo("In0003");
+    }
+
+    @Test
+    void clientNumberAdvancesOtherInstances() {
+        ReceiptEntryService first = newInstance();
+        ReceiptEntryService second = newInstance();
+
+        assertThat(first.saveReceipt(SCHOOL, receipt(null)).getReceiptNo()).isEqualTo("In0001");
+        assertThat(second.saveReceipt(SCHOOL, receipt(null)).getReceiptNo()).isEqualTo("In0021");
+        assertThat(first.saveReceipt(SCHOOL, receipt("In0022")).getReceiptNo()).isEqualTo("In0022");
+        // The second instance's reserved block still holds 22
+        assertThat(second.saveReceipt(SCHOOL, receipt(null)).getReceiptNo()).isEqualTo("In0023");
+        // 22 was never in the first instance's block
+        assertThat(first.saveReceipt(SCHOOL, receipt(null)).getReceiptNo()).isEqualTo("In0002");
+        // Past everything reserved so far
+        assertThat(newInstance().saveReceipt(SCHOOL, receipt(null)).getReceiptNo()).isEqualTo("In0041");
+
+        List<String> stored = jdbc.queryForList("SELECT receipt_no FROM receipt_entries", String.class);
+        assertThat(stored).doesNotHaveDuplicates().hasSize(6);
+    }
+
+    @Test
+    void storedClientNumberIsReplaced() {
+        ReceiptEntryService service = newInstance();
+
+        service.saveReceipt(SCHOOL, receipt("In0001"));
+        service.saveReceipt(SCHOOL, receipt("In0002"));
+        assertThat(service.saveReceipt(SCHOOL, receipt("In0002")).getReceiptNo()).isEqualTo("In0003");
+        assertThat(service.saveReceipt(SCHOOL, receipt(null)).getReceiptNo()).isEqualTo("In0004");
+    }
+
+    // One application instance: its own allocator, so its own reserved blocks
+    private ReceiptEntryService newInstance() {
+        TenantDataSourceRouter router = mock(TenantDataSourceRouter.class);
+        when(router.getDataSource(SCHOOL)).thenReturn(dataSource);
+        when(router.getJdbcTemplate(SCHOOL)).thenReturn(jdbc);
+        when(router.getSchoolId(any())).thenReturn(SCHOOL);
+
+        // Only the sequence table is created from the services' DDL; the rest is H2 DDL above
+        TenantSchemaMigrator schemaMigrator = mock(TenantSchemaMigrator.class);
+        doAnswer(invocation -> {
+            if ("TenantSequenceAllocator".equals(invocation.getArgument(1))) {
+                invocation.<Runnable>getArgument(3).run();
+            }
+            return null;
+        }).when(schemaMigrator).migrate(any(), anyString(), anyInt(), any());
+
+        TenantSequenceAllocator allocator = new TenantSequenceAllocator(router, schemaMigrator);
+        ReflectionTestUtils.setField(allocator, "blockSize", 20);
+
+        ReceiptEntryService service = new ReceiptEntryService();
+        ReflectionTestUtils.setField(service, "tenantDataSourceRouter", router);
+        ReflectionTestUtils.setField(service, "schemaMigrator", schemaMigrator);
+        ReflectionTestUtils.setField(service, "sequenceAllocator", allocator);
+        ReflectionTestUtils.setField(service, "dayBookBalanceService", mock(DayBookBalanceService.class));
+        return service;
+    }
+
+    private static ReceiptEntryDTO receipt(String receiptNo) {
+        return ReceiptEntryDTO.builder()
+                .receiptNo(receiptNo)
+                .date("2025-06-02")
+                .category("Donation")
+                .personName("Parent")
+                .receiptMode("cash")
+                .amount(500.0)
+                .schoolId(SCHOOL)
+                .academicYear(YEAR)
+                .build();
+    }
+}